@@ -0,0 +1,176 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.runners.core.jmh;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.apache.beam.runners.core.InMemoryStateInternals;
+import org.apache.beam.runners.core.InMemoryTimerInternals;
+import org.apache.beam.runners.core.ReduceFnRunner;
+import org.apache.beam.runners.core.SystemReduceFn;
+import org.apache.beam.runners.core.TimerInternals.TimerData;
+import org.apache.beam.runners.core.triggers.AfterWatermarkStateMachine;
+import org.apache.beam.runners.core.triggers.DefaultTriggerStateMachine;
+import org.apache.beam.runners.core.triggers.ExecutableTriggerStateMachine;
+import org.apache.beam.runners.core.triggers.RepeatedlyStateMachine;
+import org.apache.beam.runners.core.triggers.TriggerStateMachine;
+import org.apache.beam.sdk.coders.StringUtf8Coder;
+import org.apache.beam.sdk.transforms.windowing.BoundedWindow;
+import org.apache.beam.sdk.transforms.windowing.FixedWindows;
+import org.apache.beam.sdk.transforms.windowing.IntervalWindow;
+import org.apache.beam.sdk.transforms.windowing.PaneInfo;
+import org.apache.beam.sdk.values.WindowedValue;
+import org.apache.beam.sdk.values.WindowedValues;
+import org.apache.beam.sdk.values.WindowingStrategy;
+import org.joda.time.Duration;
+import org.joda.time.Instant;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks grouping the elements of a key into fixed windows with a {@link ReduceFnRunner}.
+ *
+ * <p>The default trigger and {@link AfterWatermarkStateMachine#pastEndOfWindow()} are processed
+ * without running the trigger state machine for each element. Repeating the end-of-window trigger
+ * has the same behavior as the default trigger but runs the trigger state machine, so it serves as
+ * the baseline.
+ */
+public class ReduceFnRunnerBenchmark {
+  private static final int ELEMENTS = 1000;
+  private static final int WINDOWS = 10;
+  private static final Duration WINDOW_SIZE = Duration.standardMinutes(1);
+
+  /** The triggers to compare. */
+  public enum Trigger {
+    DEFAULT {
+      @Override
+      TriggerStateMachine create() {
+        return DefaultTriggerStateMachine.of();
+      }
+    },
+    AFTER_WATERMARK {
+      @Override
+      TriggerStateMachine create() {
+        return AfterWatermarkStateMachine.pastEndOfWindow();
+      }
+    },
+    REPEATEDLY_AFTER_WATERMARK {
+      @Override
+      TriggerStateMachine create() {
+        return RepeatedlyStateMachine.forever(AfterWatermarkStateMachine.pastEndOfWindow());
+      }
+    };
+
+    abstract TriggerStateMachine create();
+  }
+
+  @State(Scope.Benchmark)
+  public static class Elements {
+    @Param({"DEFAULT", "AFTER_WATERMARK", "REPEATEDLY_AFTER_WATERMARK"})
+    public Trigger trigger;
+
+    public WindowingStrategy<?, IntervalWindow> windowingStrategy;
+    public ExecutableTriggerStateMachine triggerStateMachine;
+    public SystemReduceFn<String, String, Iterable<String>, Iterable<String>, IntervalWindow>
+        reduceFn;
+    public List<WindowedValue<String>> elements;
+
+    @Setup(Level.Trial)
+    public void setup() {
+      windowingStrategy = WindowingStrategy.of(FixedWindows.of(WINDOW_SIZE));
+      triggerStateMachine = ExecutableTriggerStateMachine.create(trigger.create());
+      reduceFn = SystemReduceFn.buffering(StringUtf8Coder.of());
+      elements = new ArrayList<>(ELEMENTS);
+      for (int i = 0; i < ELEMENTS; ++i) {
+        Instant windowStart = new Instant(0).plus(WINDOW_SIZE.multipliedBy(i % WINDOWS));
+        elements.add(
+            WindowedValues.of(
+                String.format("element-%08d", i),
+                windowStart.plus(Duration.millis(i)),
+                Collections.singletonList(new IntervalWindow(windowStart, WINDOW_SIZE)),
+                PaneInfo.NO_FIRING));
+      }
+    }
+
+    ReduceFnRunner<String, String, Iterable<String>, IntervalWindow> createRunner(
+        InMemoryStateInternals<String> stateInternals,
+        InMemoryTimerInternals timerInternals,
+        Blackhole blackhole) {
+      return new ReduceFnRunner<>(
+          "key",
+          windowingStrategy,
+          triggerStateMachine,
+          stateInternals,
+          timerInternals,
+          output -> blackhole.consume(output),
+          null,
+          reduceFn,
+          null);
+    }
+  }
+
+  /** Processes a bundle of elements of a key, like for a bundle without any windows firing. */
+  @Benchmark
+  @BenchmarkMode(Mode.AverageTime)
+  @OutputTimeUnit(TimeUnit.NANOSECONDS)
+  @OperationsPerInvocation(ELEMENTS)
+  public InMemoryStateInternals<String> testProcessElements(Elements elements, Blackhole blackhole)
+      throws Exception {
+    InMemoryStateInternals<String> stateInternals = InMemoryStateInternals.forKey("key");
+    InMemoryTimerInternals timerInternals = new InMemoryTimerInternals();
+    ReduceFnRunner<String, String, Iterable<String>, IntervalWindow> runner =
+        elements.createRunner(stateInternals, timerInternals, blackhole);
+    runner.processElements(elements.elements);
+    return stateInternals;
+  }
+
+  /**
+   * Processes a bundle of elements of a key, then advances the watermark past the end of all
+   * windows and fires their end-of-window and garbage collection timers.
+   */
+  @Benchmark
+  @BenchmarkMode(Mode.AverageTime)
+  @OutputTimeUnit(TimeUnit.NANOSECONDS)
+  @OperationsPerInvocation(ELEMENTS)
+  public void testProcessElementsAndFire(Elements elements, Blackhole blackhole) throws Exception {
+    InMemoryStateInternals<String> stateInternals = InMemoryStateInternals.forKey("key");
+    InMemoryTimerInternals timerInternals = new InMemoryTimerInternals();
+    ReduceFnRunner<String, String, Iterable<String>, IntervalWindow> runner =
+        elements.createRunner(stateInternals, timerInternals, blackhole);
+    runner.processElements(elements.elements);
+
+    timerInternals.advanceInputWatermark(BoundedWindow.TIMESTAMP_MAX_VALUE);
+    List<TimerData> timers = new ArrayList<>();
+    TimerData timer;
+    while ((timer = timerInternals.removeNextEventTimer()) != null) {
+      timers.add(timer);
+    }
+    runner.onTimers(timers);
+  }
+}
@@ -0,0 +1,180 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.runners.core.jmh;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.apache.beam.runners.core.EncodedStateInternals;
+import org.apache.beam.runners.core.InMemoryStateInternals;
+import org.apache.beam.runners.core.InMemoryStateInternals.InMemoryState;
+import org.apache.beam.runners.core.StateInternals;
+import org.apache.beam.runners.core.StateNamespace;
+import org.apache.beam.runners.core.StateNamespaces;
+import org.apache.beam.runners.core.StateTag;
+import org.apache.beam.runners.core.StateTags;
+import org.apache.beam.sdk.coders.StringUtf8Coder;
+import org.apache.beam.sdk.state.BagState;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares the throughput and the retained heap of bag state kept by {@link
+ * InMemoryStateInternals} as Java objects with bag state kept by {@link EncodedStateInternals} in
+ * its encoded form.
+ *
+ * <p>Run {@link #testRetainedHeap} on its own with a single fork, as it measures the used heap
+ * after forcing garbage collections.
+ */
+public class StateInternalsBenchmark {
+  private static final int ELEMENTS = 1000;
+  private static final int KEYS = 1000;
+  private static final StateNamespace NAMESPACE = StateNamespaces.global();
+  private static final StateTag<BagState<String>> BAG = StateTags.bag("bag", StringUtf8Coder.of());
+
+  /** The {@link StateInternals} implementations to compare. */
+  public enum Backend {
+    IN_MEMORY {
+      @Override
+      StateInternals create(String key) {
+        return InMemoryStateInternals.forKey(key);
+      }
+    },
+    ENCODED {
+      @Override
+      StateInternals create(String key) {
+        return EncodedStateInternals.forKey(key);
+      }
+    };
+
+    abstract StateInternals create(String key);
+  }
+
+  @State(Scope.Benchmark)
+  public static class Elements {
+    @Param({"IN_MEMORY", "ENCODED"})
+    public Backend backend;
+
+    public String[] elements;
+
+    @Setup(Level.Trial)
+    public void setup() {
+      elements = new String[ELEMENTS];
+      for (int i = 0; i < ELEMENTS; ++i) {
+        elements[i] = element(i);
+      }
+    }
+
+    BagState<String> createBag(String key) {
+      BagState<String> bag = backend.create(key).state(NAMESPACE, BAG);
+      for (String element : elements) {
+        bag.add(element);
+      }
+      return bag;
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class FilledBag {
+    public BagState<String> bag;
+
+    @Setup(Level.Trial)
+    public void setup(Elements elements) {
+      bag = elements.createBag("key");
+    }
+  }
+
+  /** Reports the heap retained per element of bag state, in bytes. */
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  @State(Scope.Thread)
+  public static class Footprint {
+    public long retainedBytesPerElement;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+      retainedBytesPerElement = 0;
+    }
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.AverageTime)
+  @OutputTimeUnit(TimeUnit.NANOSECONDS)
+  @OperationsPerInvocation(ELEMENTS)
+  public BagState<String> testAdd(Elements elements) {
+    return elements.createBag("key");
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.AverageTime)
+  @OutputTimeUnit(TimeUnit.NANOSECONDS)
+  @OperationsPerInvocation(ELEMENTS)
+  public void testRead(FilledBag filledBag, Blackhole blackhole) {
+    for (String element : filledBag.bag.read()) {
+      blackhole.consume(element);
+    }
+  }
+
+  /** Copies a bag like the copy-on-access state of the DirectRunner does for each bundle. */
+  @Benchmark
+  @BenchmarkMode(Mode.AverageTime)
+  @OutputTimeUnit(TimeUnit.NANOSECONDS)
+  public Object testCopy(FilledBag filledBag) {
+    return ((InMemoryState<?>) filledBag.bag).copy();
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.SingleShotTime)
+  @OutputTimeUnit(TimeUnit.MILLISECONDS)
+  public List<BagState<String>> testRetainedHeap(Elements elements, Footprint footprint) {
+    long usedBefore = usedHeapAfterGc();
+    List<BagState<String>> bags = new ArrayList<>(KEYS);
+    for (int key = 0; key < KEYS; ++key) {
+      BagState<String> bag = elements.backend.create(Integer.toString(key)).state(NAMESPACE, BAG);
+      // Adds distinct element instances, like decoding the input elements of a bundle does.
+      for (int i = 0; i < ELEMENTS; ++i) {
+        bag.add(element(i));
+      }
+      bags.add(bag);
+    }
+    footprint.retainedBytesPerElement =
+        (usedHeapAfterGc() - usedBefore) / ((long) KEYS * ELEMENTS);
+    return bags;
+  }
+
+  private static String element(int i) {
+    return String.format("element-%08d", i);
+  }
+
+  private static long usedHeapAfterGc() {
+    Runtime runtime = Runtime.getRuntime();
+    for (int i = 0; i < 3; ++i) {
+      System.gc();
+    }
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+}
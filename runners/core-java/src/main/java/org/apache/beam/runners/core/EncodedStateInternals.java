@@ -0,0 +1,525 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.runners.core;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import javax.annotation.Nullable;
+import org.apache.beam.runners.core.InMemoryStateInternals.InMemoryState;
+import org.apache.beam.runners.core.InMemoryStateInternals.InMemoryStateBinder;
+import org.apache.beam.runners.core.StateTag.StateBinder;
+import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.coders.CoderException;
+import org.apache.beam.sdk.state.BagState;
+import org.apache.beam.sdk.state.MultimapState;
+import org.apache.beam.sdk.state.ReadableState;
+import org.apache.beam.sdk.state.State;
+import org.apache.beam.sdk.state.StateContext;
+import org.apache.beam.sdk.state.ValueState;
+import org.apache.beam.sdk.util.CoderUtils;
+import org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.collect.ImmutableList;
+import org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.collect.Iterables;
+
+/**
+ * In-memory implementation of {@link StateInternals} which keeps the contents of {@link
+ * ValueState}, {@link BagState} and {@link MultimapState} in their encoded form rather than as
+ * Java objects. Other kinds of state are kept like in {@link InMemoryStateInternals}.
+ *
+ * <p>Encoded elements are appended to compact byte arrays and decoded lazily whenever they are
+ * read, which retains a fraction of the heap of the decoded elements. All state implements {@link
+ * InMemoryState}. A {@link InMemoryState#copy()} shares the encoded contents of the state it copies
+ * until either of them is modified, rather than cloning each element.
+ */
+@SuppressWarnings({
+  "nullness" // TODO(https://github.com/apache/beam/issues/20497)
+})
+public class EncodedStateInternals<K> implements StateInternals {
+
+  public static <K> EncodedStateInternals<K> forKey(@Nullable K key) {
+    return new EncodedStateInternals<>(key);
+  }
+
+  private final @Nullable K key;
+
+  protected EncodedStateInternals(@Nullable K key) {
+    this.key = key;
+  }
+
+  @Override
+  public @Nullable K getKey() {
+    return key;
+  }
+
+  protected final StateTable encodedState =
+      new StateTable() {
+        @Override
+        protected StateBinder binderForNamespace(StateNamespace namespace, StateContext<?> c) {
+          return new EncodedStateBinder(c);
+        }
+      };
+
+  public void clear() {
+    encodedState.clear();
+  }
+
+  @Override
+  public <T extends State> T state(
+      StateNamespace namespace, StateTag<T> address, final StateContext<?> c) {
+    return encodedState.get(namespace, address, c);
+  }
+
+  /**
+   * A {@link StateBinder} that returns encoded {@link State} objects where available, and in-memory
+   * {@link State} objects otherwise.
+   */
+  public static class EncodedStateBinder extends InMemoryStateBinder {
+    public EncodedStateBinder(StateContext<?> c) {
+      super(c);
+    }
+
+    @Override
+    public <T> ValueState<T> bindValue(StateTag<ValueState<T>> address, Coder<T> coder) {
+      return new EncodedValue<>(coder);
+    }
+
+    @Override
+    public <T> BagState<T> bindBag(final StateTag<BagState<T>> address, Coder<T> elemCoder) {
+      return new EncodedBag<>(elemCoder);
+    }
+
+    @Override
+    public <KeyT, ValueT> MultimapState<KeyT, ValueT> bindMultimap(
+        StateTag<MultimapState<KeyT, ValueT>> spec,
+        Coder<KeyT> keyCoder,
+        Coder<ValueT> valueCoder) {
+      try {
+        keyCoder.verifyDeterministic();
+      } catch (Coder.NonDeterministicException e) {
+        // Equal keys may have different encodings, so compare them structurally instead.
+        return super.bindMultimap(spec, keyCoder, valueCoder);
+      }
+      return new EncodedMultimap<>(keyCoder, valueCoder);
+    }
+  }
+
+  /** An {@link InMemoryState} implementation of {@link ValueState} which stores encoded values. */
+  public static final class EncodedValue<T>
+      implements ValueState<T>, InMemoryState<EncodedValue<T>> {
+    private final Coder<T> coder;
+
+    private boolean isCleared = true;
+    // Null if the value is cleared or null.
+    private @Nullable byte[] encoded = null;
+
+    public EncodedValue(Coder<T> coder) {
+      this.coder = coder;
+    }
+
+    @Override
+    public void clear() {
+      encoded = null;
+      isCleared = true;
+    }
+
+    @Override
+    public EncodedValue<T> readLater() {
+      return this;
+    }
+
+    @Override
+    public T read() {
+      return encoded == null ? null : decode(coder, encoded);
+    }
+
+    @Override
+    public void write(T input) {
+      isCleared = false;
+      encoded = input == null ? null : encode(coder, input);
+    }
+
+    @Override
+    public EncodedValue<T> copy() {
+      // The encoded value is never modified, so it is shared by the copy.
+      EncodedValue<T> that = new EncodedValue<>(coder);
+      that.isCleared = this.isCleared;
+      that.encoded = this.encoded;
+      return that;
+    }
+
+    @Override
+    public boolean isCleared() {
+      return isCleared;
+    }
+  }
+
+  /** An {@link InMemoryState} implementation of {@link BagState} which stores encoded elements. */
+  public static final class EncodedBag<T> implements BagState<T>, InMemoryState<EncodedBag<T>> {
+    private final Coder<T> elemCoder;
+    private ByteArena contents = new ByteArena();
+
+    public EncodedBag(Coder<T> elemCoder) {
+      this.elemCoder = elemCoder;
+    }
+
+    @Override
+    public void clear() {
+      // Swap in a new arena rather than clearing the existing one, as the result of an earlier
+      // read must remain stable. See InMemoryBag#clear().
+      contents = new ByteArena();
+    }
+
+    @Override
+    public EncodedBag<T> readLater() {
+      return this;
+    }
+
+    @Override
+    public Iterable<T> read() {
+      return contents.read(elemCoder);
+    }
+
+    @Override
+    public void add(T input) {
+      contents.add(elemCoder, input);
+    }
+
+    @Override
+    public boolean isCleared() {
+      return contents.isEmpty();
+    }
+
+    @Override
+    public ReadableState<Boolean> isEmpty() {
+      return new ReadableState<Boolean>() {
+        @Override
+        public ReadableState<Boolean> readLater() {
+          return this;
+        }
+
+        @Override
+        public Boolean read() {
+          return contents.isEmpty();
+        }
+      };
+    }
+
+    @Override
+    public EncodedBag<T> copy() {
+      EncodedBag<T> that = new EncodedBag<>(elemCoder);
+      that.contents = this.contents.copy();
+      return that;
+    }
+  }
+
+  /**
+   * An {@link InMemoryState} implementation of {@link MultimapState} which stores encoded keys and
+   * values. Keys are compared by their encoded form, which requires a deterministic key coder.
+   * {@link EncodedStateBinder} binds an {@link InMemoryStateInternals.InMemoryMultimap} for other
+   * key coders.
+   */
+  public static final class EncodedMultimap<K, V>
+      implements MultimapState<K, V>, InMemoryState<EncodedMultimap<K, V>> {
+    private final Coder<K> keyCoder;
+    private final Coder<V> valueCoder;
+    private Map<EncodedKey, ByteArena> contents = new HashMap<>();
+    // Whether contents are shared with a copy, in which case they are copied before modifying them.
+    private boolean shared = false;
+
+    public EncodedMultimap(Coder<K> keyCoder, Coder<V> valueCoder) {
+      this.keyCoder = keyCoder;
+      this.valueCoder = valueCoder;
+    }
+
+    @Override
+    public void clear() {
+      contents = new HashMap<>();
+      shared = false;
+    }
+
+    @Override
+    public void put(K key, V value) {
+      ownContents();
+      contents
+          .computeIfAbsent(new EncodedKey(encode(keyCoder, key)), k -> new ByteArena())
+          .add(valueCoder, value);
+    }
+
+    @Override
+    public void remove(K key) {
+      ownContents();
+      contents.remove(new EncodedKey(encode(keyCoder, key)));
+    }
+
+    @Override
+    public ReadableState<Iterable<V>> get(K key) {
+      return new ReadableState<Iterable<V>>() {
+        @Override
+        public Iterable<V> read() {
+          ByteArena values = contents.get(new EncodedKey(encode(keyCoder, key)));
+          return values == null ? ImmutableList.of() : values.read(valueCoder);
+        }
+
+        @Override
+        public ReadableState<Iterable<V>> readLater() {
+          return this;
+        }
+      };
+    }
+
+    @Override
+    public ReadableState<Iterable<K>> keys() {
+      return new ReadableState<Iterable<K>>() {
+        @Override
+        public Iterable<K> read() {
+          return Iterables.transform(
+              ImmutableList.copyOf(contents.keySet()), key -> decode(keyCoder, key.bytes));
+        }
+
+        @Override
+        public ReadableState<Iterable<K>> readLater() {
+          return this;
+        }
+      };
+    }
+
+    @Override
+    public ReadableState<Iterable<Map.Entry<K, V>>> entries() {
+      return new ReadableState<Iterable<Map.Entry<K, V>>>() {
+        @Override
+        public Iterable<Map.Entry<K, V>> read() {
+          List<Map.Entry<EncodedKey, Iterable<V>>> snapshot = new ArrayList<>(contents.size());
+          for (Map.Entry<EncodedKey, ByteArena> entry : contents.entrySet()) {
+            snapshot.add(
+                new AbstractMap.SimpleEntry<>(entry.getKey(), entry.getValue().read(valueCoder)));
+          }
+          return Iterables.concat(
+              Iterables.transform(
+                  snapshot,
+                  entry -> {
+                    K key = decode(keyCoder, entry.getKey().bytes);
+                    return Iterables.transform(
+                        entry.getValue(), value -> new AbstractMap.SimpleEntry<>(key, value));
+                  }));
+        }
+
+        @Override
+        public ReadableState<Iterable<Map.Entry<K, V>>> readLater() {
+          return this;
+        }
+      };
+    }
+
+    @Override
+    public ReadableState<Boolean> containsKey(K key) {
+      return new ReadableState<Boolean>() {
+        @Override
+        public Boolean read() {
+          return contents.containsKey(new EncodedKey(encode(keyCoder, key)));
+        }
+
+        @Override
+        public ReadableState<Boolean> readLater() {
+          return this;
+        }
+      };
+    }
+
+    @Override
+    public ReadableState<Boolean> isEmpty() {
+      return new ReadableState<Boolean>() {
+        @Override
+        public Boolean read() {
+          return contents.isEmpty();
+        }
+
+        @Override
+        public ReadableState<Boolean> readLater() {
+          return this;
+        }
+      };
+    }
+
+    @Override
+    public boolean isCleared() {
+      return contents.isEmpty();
+    }
+
+    @Override
+    public EncodedMultimap<K, V> copy() {
+      EncodedMultimap<K, V> that = new EncodedMultimap<>(keyCoder, valueCoder);
+      that.contents = this.contents;
+      that.shared = true;
+      this.shared = true;
+      return that;
+    }
+
+    /** Copies the contents if they are shared with a copy, without copying any encoded bytes. */
+    private void ownContents() {
+      if (shared) {
+        Map<EncodedKey, ByteArena> owned = new HashMap<>();
+        for (Map.Entry<EncodedKey, ByteArena> entry : contents.entrySet()) {
+          owned.put(entry.getKey(), entry.getValue().copy());
+        }
+        contents = owned;
+        shared = false;
+      }
+    }
+  }
+
+  /** The encoded form of a key, which is equal to the encoded form of equal keys. */
+  private static final class EncodedKey {
+    private final byte[] bytes;
+    private final int hashCode;
+
+    private EncodedKey(byte[] bytes) {
+      this.bytes = bytes;
+      this.hashCode = Arrays.hashCode(bytes);
+    }
+
+    @Override
+    public boolean equals(@Nullable Object other) {
+      return other instanceof EncodedKey && Arrays.equals(bytes, ((EncodedKey) other).bytes);
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+  }
+
+  /**
+   * An append-only byte array of encoded elements.
+   *
+   * <p>Reads see the elements which were added before the read. A {@link #copy()} shares the byte
+   * array with this arena until either of them adds an element, which copies the array first.
+   */
+  private static final class ByteArena extends OutputStream {
+    private static final byte[] EMPTY = new byte[0];
+    private static final int MIN_CAPACITY = 64;
+
+    private byte[] bytes = EMPTY;
+    private int length = 0;
+    private int count = 0;
+    private boolean shared = false;
+
+    <T> void add(Coder<T> coder, T value) {
+      int start = length;
+      try {
+        coder.encode(value, this);
+      } catch (IOException e) {
+        length = start;
+        throw new RuntimeException(e);
+      }
+      count += 1;
+    }
+
+    <T> Iterable<T> read(Coder<T> coder) {
+      byte[] readBytes = bytes;
+      int readLength = length;
+      int readCount = count;
+      return () ->
+          new Iterator<T>() {
+            private final InputStream encoded = new ByteArrayInputStream(readBytes, 0, readLength);
+            private int remaining = readCount;
+
+            @Override
+            public boolean hasNext() {
+              return remaining > 0;
+            }
+
+            @Override
+            public T next() {
+              if (remaining <= 0) {
+                throw new NoSuchElementException();
+              }
+              remaining -= 1;
+              try {
+                return coder.decode(encoded);
+              } catch (IOException e) {
+                throw new RuntimeException(e);
+              }
+            }
+          };
+    }
+
+    boolean isEmpty() {
+      return count == 0;
+    }
+
+    ByteArena copy() {
+      ByteArena that = new ByteArena();
+      that.bytes = this.bytes;
+      that.length = this.length;
+      that.count = this.count;
+      that.shared = true;
+      this.shared = true;
+      return that;
+    }
+
+    @Override
+    public void write(int b) {
+      ensureCapacity(length + 1);
+      bytes[length] = (byte) b;
+      length += 1;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+      ensureCapacity(length + len);
+      System.arraycopy(b, off, bytes, length, len);
+      length += len;
+    }
+
+    private void ensureCapacity(int capacity) {
+      if (shared || capacity > bytes.length) {
+        int newCapacity = bytes.length;
+        if (capacity > newCapacity) {
+          newCapacity = Math.max(capacity, Math.max(MIN_CAPACITY, 2 * bytes.length));
+        }
+        bytes = Arrays.copyOf(bytes, newCapacity);
+        shared = false;
+      }
+    }
+  }
+
+  private static <T> byte[] encode(Coder<T> coder, T value) {
+    try {
+      return CoderUtils.encodeToByteArray(coder, value);
+    } catch (CoderException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private static <T> T decode(Coder<T> coder, byte[] encoded) {
+    try {
+      return CoderUtils.decodeFromByteArray(coder, encoded);
+    } catch (CoderException e) {
+      throw new RuntimeException(e);
+    }
+  }
+}
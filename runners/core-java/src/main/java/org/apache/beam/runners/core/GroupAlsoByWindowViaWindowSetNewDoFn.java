@@ -28,6 +28,7 @@ import org.apache.beam.sdk.util.construction.TriggerTranslation;
 import org.apache.beam.sdk.values.KV;
 import org.apache.beam.sdk.values.TupleTag;
 import org.apache.beam.sdk.values.WindowingStrategy;
+import org.checkerframework.checker.nullness.qual.Nullable;
 
 /**
  * A general {@link GroupAlsoByWindowsAggregators}. This delegates all of the logic to the {@link
@@ -40,6 +41,8 @@ public class GroupAlsoByWindowViaWindowSetNewDoFn<
 
   private static final long serialVersionUID = 1L;
   private final RunnerApi.Trigger triggerProto;
+  // The trigger state machine holds no per-key state, so it is shared by all ReduceFnRunners.
+  private transient @Nullable ExecutableTriggerStateMachine triggerStateMachine;
 
   public static <K, InputT, OutputT, W extends BoundedWindow>
       DoFn<KeyedWorkItem<K, InputT>, KV<K, OutputT>> create(
@@ -96,12 +99,17 @@ public class GroupAlsoByWindowViaWindowSetNewDoFn<
     StateInternals stateInternals = stateInternalsFactory.stateInternalsForKey(key);
     TimerInternals timerInternals = timerInternalsFactory.timerInternalsForKey(key);
 
+    if (triggerStateMachine == null) {
+      triggerStateMachine =
+          ExecutableTriggerStateMachine.create(
+              TriggerStateMachines.stateMachineForTrigger(triggerProto));
+    }
+
     ReduceFnRunner<K, InputT, OutputT, W> reduceFnRunner =
         new ReduceFnRunner<>(
             key,
             windowingStrategy,
-            ExecutableTriggerStateMachine.create(
-                TriggerStateMachines.stateMachineForTrigger(triggerProto)),
+            triggerStateMachine,
             stateInternals,
             timerInternals,
             windowedValue -> outputManager.output(mainTag, windowedValue),
@@ -0,0 +1,140 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.runners.core;
+
+import static org.apache.beam.sdk.util.Preconditions.checkStateNotNull;
+import static org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.base.Preconditions.checkArgument;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.beam.sdk.transforms.DoFn;
+import org.apache.beam.sdk.transforms.reflect.DoFnInvoker;
+import org.apache.beam.sdk.transforms.reflect.DoFnSignature;
+import org.apache.beam.sdk.transforms.windowing.BoundedWindow;
+import org.apache.beam.sdk.transforms.windowing.PaneInfo;
+import org.apache.beam.sdk.values.TimestampedValue;
+import org.apache.beam.sdk.values.WindowedValue;
+import org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.collect.Iterables;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Buffers contiguous input elements of a {@link DoFn} that has a {@link DoFn.ProcessBatch} method
+ * and invokes that method once per run of elements in the same window and pane.
+ *
+ * <p>Elements are added in input order. A batch is processed as soon as an element that cannot
+ * join it arrives, when it reaches the maximum batch size of the method, or when {@link #flush} is
+ * called, which runners must do before invoking the {@link DoFn.FinishBundle} method. Batches of a
+ * single element, and elements that are in more than one window, are passed to {@link
+ * Receiver#processElement} instead, so that they are processed by the {@link DoFn.ProcessElement}
+ * method.
+ */
+public class ProcessBatchBuffer<InputT, OutputT> {
+
+  /** Receives the elements and outputs of a {@link ProcessBatchBuffer}. */
+  public interface Receiver<InputT, OutputT> {
+    /** Processes an element on its own, with the {@link DoFn.ProcessElement} method. */
+    void processElement(WindowedValue<InputT> element);
+
+    /**
+     * Outputs the values returned by the {@link DoFn.ProcessBatch} method for a batch, in the
+     * window and pane of the batch.
+     *
+     * @param earliest the element of the batch with the earliest timestamp. Output timestamps are
+     *     subject to the same allowed skew as outputs of this element.
+     */
+    void outputBatch(WindowedValue<InputT> earliest, Iterable<TimestampedValue<OutputT>> outputs);
+  }
+
+  private final DoFnInvoker<InputT, OutputT> invoker;
+  private final int maxBatchSize;
+  private final Receiver<InputT, OutputT> receiver;
+  private final List<WindowedValue<InputT>> pending = new ArrayList<>();
+
+  // The window, pane and drain flag shared by the pending elements. Only valid when pending is not
+  // empty.
+  private @Nullable BoundedWindow window;
+  private @Nullable PaneInfo pane;
+  private boolean causedByDrain;
+
+  public ProcessBatchBuffer(
+      DoFnInvoker<InputT, OutputT> invoker,
+      DoFnSignature.ProcessBatchMethod processBatch,
+      Receiver<InputT, OutputT> receiver) {
+    checkArgument(processBatch.maxBatchSize() > 0, "maxBatchSize must be positive");
+    this.invoker = invoker;
+    this.maxBatchSize = processBatch.maxBatchSize();
+    this.receiver = receiver;
+  }
+
+  /** Adds the next input element, processing any batch that it cannot join. */
+  public void add(WindowedValue<InputT> element) {
+    if (element.getWindows().size() != 1) {
+      flush();
+      receiver.processElement(element);
+      return;
+    }
+    BoundedWindow elementWindow = Iterables.getOnlyElement(element.getWindows());
+    if (!pending.isEmpty()
+        && (!elementWindow.equals(window)
+            || !element.getPaneInfo().equals(pane)
+            || element.causedByDrain() != causedByDrain)) {
+      flush();
+    }
+    if (pending.isEmpty()) {
+      window = elementWindow;
+      pane = element.getPaneInfo();
+      causedByDrain = element.causedByDrain();
+    }
+    pending.add(element);
+    if (pending.size() >= maxBatchSize) {
+      flush();
+    }
+  }
+
+  /** Processes the buffered elements, if any. */
+  public void flush() {
+    if (pending.isEmpty()) {
+      return;
+    }
+    try {
+      if (pending.size() == 1) {
+        receiver.processElement(pending.get(0));
+        return;
+      }
+      List<TimestampedValue<InputT>> elements = new ArrayList<>(pending.size());
+      WindowedValue<InputT> earliest = pending.get(0);
+      for (WindowedValue<InputT> element : pending) {
+        elements.add(TimestampedValue.of(element.getValue(), element.getTimestamp()));
+        if (element.getTimestamp().isBefore(earliest.getTimestamp())) {
+          earliest = element;
+        }
+      }
+      receiver.outputBatch(
+          earliest, invoker.invokeProcessBatch(elements, checkStateNotNull(window)));
+    } finally {
+      clear();
+    }
+  }
+
+  /** Drops the buffered elements without processing them, e.g. when a bundle fails. */
+  public void clear() {
+    pending.clear();
+    window = null;
+    pane = null;
+  }
+}
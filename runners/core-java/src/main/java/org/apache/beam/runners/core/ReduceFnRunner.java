@@ -32,7 +32,10 @@ import org.apache.beam.runners.core.GroupByKeyViaGroupByKeyOnly.GroupByKeyOnly;
 import org.apache.beam.runners.core.ReduceFnContextFactory.StateStyle;
 import org.apache.beam.runners.core.StateNamespaces.WindowNamespace;
 import org.apache.beam.runners.core.TimerInternals.TimerData;
+import org.apache.beam.runners.core.triggers.AfterWatermarkStateMachine;
+import org.apache.beam.runners.core.triggers.DefaultTriggerStateMachine;
 import org.apache.beam.runners.core.triggers.ExecutableTriggerStateMachine;
+import org.apache.beam.runners.core.triggers.TriggerStateMachine;
 import org.apache.beam.runners.core.triggers.TriggerStateMachineContextFactory;
 import org.apache.beam.runners.core.triggers.TriggerStateMachineRunner;
 import org.apache.beam.sdk.metrics.Counter;
@@ -210,6 +213,13 @@ public class ReduceFnRunner<K, InputT, OutputT, W extends BoundedWindow> {
    */
   private final NonEmptyPanes<K, W> nonEmptyPanes;
 
+  /**
+   * Whether elements are processed without running {@link #triggerRunner}. This is the case when
+   * windows never merge and the trigger only fires once the input watermark passes the end of the
+   * window, such that processing an element only needs to set the end-of-window timer.
+   */
+  private final boolean isEndOfWindowTriggered;
+
   public ReduceFnRunner(
       K key,
       WindowingStrategy<?, W> windowingStrategy,
@@ -256,6 +266,18 @@ public class ReduceFnRunner<K, InputT, OutputT, W extends BoundedWindow> {
             triggerStateMachine,
             new TriggerStateMachineContextFactory<>(
                 windowingStrategy.getWindowFn(), stateInternals, activeWindows));
+    this.isEndOfWindowTriggered =
+        windowingStrategy.getWindowFn().isNonMerging()
+            && isEndOfWindowTrigger(triggerStateMachine.getSpec());
+  }
+
+  /**
+   * Returns whether the trigger fires exactly when the input watermark passes the end of the
+   * window, and only sets the end-of-window timer when processing an element.
+   */
+  private static boolean isEndOfWindowTrigger(TriggerStateMachine trigger) {
+    return trigger instanceof DefaultTriggerStateMachine
+        || trigger instanceof AfterWatermarkStateMachine.FromEndOfWindow;
   }
 
   private ActiveWindowSet<W> createActiveWindowSet() {
@@ -329,6 +351,11 @@ public class ReduceFnRunner<K, InputT, OutputT, W extends BoundedWindow> {
       return;
     }
 
+    if (isEndOfWindowTriggered) {
+      processElementsForEndOfWindowTrigger(values);
+      return;
+    }
+
     // Determine all the windows for elements.
     Set<W> windows = collectWindows(values);
     // If an incoming element introduces a new window, attempt to merge it into an existing
@@ -383,6 +410,88 @@ public class ReduceFnRunner<K, InputT, OutputT, W extends BoundedWindow> {
     activeWindows.cleanupTemporaryWindows();
   }
 
+  /**
+   * Incorporate {@code values} into the underlying reduce function when windows do not merge and
+   * the trigger is an end-of-window trigger.
+   *
+   * <p>Such a trigger has no state other than whether it is finished, sets the end-of-window timer
+   * for each element and only fires once the input watermark has passed the end of the window. So
+   * rather than running the trigger for each element, whether each window is open is read once,
+   * the end-of-window and garbage collection timers are set once per window, and only windows which
+   * received late data are checked for firing.
+   */
+  private void processElementsForEndOfWindowTrigger(Iterable<WindowedValue<InputT>> values)
+      throws Exception {
+    Set<W> windows = collectWindows(values);
+    for (W window : windows) {
+      triggerRunner.prefetchIsClosed(contextFactory.base(window, StateStyle.DIRECT).state());
+    }
+
+    Set<W> openWindows = new HashSet<>();
+    for (W window : windows) {
+      ReduceFn<K, InputT, OutputT, W>.Context directContext =
+          contextFactory.base(window, StateStyle.DIRECT);
+      if (triggerRunner.isClosed(directContext.state())) {
+        continue;
+      }
+      openWindows.add(window);
+      scheduleGarbageCollectionTimer(directContext);
+      if (!isEndOfWindowReached(window)) {
+        directContext.timers().setTimer(window.maxTimestamp(), TimeDomain.EVENT_TIME);
+      }
+    }
+
+    for (WindowedValue<InputT> value : values) {
+      for (BoundedWindow untypedWindow : value.getWindows()) {
+        @SuppressWarnings("unchecked")
+        W window = (W) untypedWindow;
+        if (!openWindows.contains(window)) {
+          droppedDueToClosedWindow.inc();
+          WindowTracing.debug(
+              "ReduceFnRunner.processElement: Dropping element at {} for key:{}; window:{} "
+                  + "since window is no longer active at inputWatermark:{}; outputWatermark:{}",
+              value.getTimestamp(),
+              key,
+              window,
+              timerInternals.currentInputWatermarkTime(),
+              timerInternals.currentOutputWatermarkTime());
+          continue;
+        }
+
+        ReduceFn<K, InputT, OutputT, W>.ProcessValueContext renamedContext =
+            contextFactory.forValue(
+                window, value.getValue(), value.getTimestamp(), StateStyle.RENAMED);
+        nonEmptyPanes.recordContent(renamedContext.state());
+        watermarkHold.addHolds(renamedContext);
+        reduceFn.processValue(renamedContext);
+      }
+    }
+
+    // Windows whose end has already been reached received late data and fire immediately.
+    List<W> windowsToFire = new ArrayList<>();
+    for (W window : openWindows) {
+      if (isEndOfWindowReached(window)) {
+        windowsToFire.add(window);
+      }
+    }
+    for (W window : windowsToFire) {
+      prefetchEmit(
+          contextFactory.base(window, StateStyle.DIRECT),
+          contextFactory.base(window, StateStyle.RENAMED));
+    }
+    for (W window : windowsToFire) {
+      emit(
+          contextFactory.base(window, StateStyle.DIRECT),
+          contextFactory.base(window, StateStyle.RENAMED));
+    }
+  }
+
+  /** Whether the input watermark has passed the end of the window. */
+  private boolean isEndOfWindowReached(W window) {
+    Instant inputWM = timerInternals.currentInputWatermarkTime();
+    return inputWM != null && inputWM.isAfter(window.maxTimestamp());
+  }
+
   public void persist() {
     activeWindows.persist();
   }
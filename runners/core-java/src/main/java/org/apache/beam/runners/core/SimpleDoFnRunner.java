@@ -59,6 +59,7 @@ import org.apache.beam.sdk.util.UserCodeException;
 import org.apache.beam.sdk.util.WindowedValueMultiReceiver;
 import org.apache.beam.sdk.values.PCollectionView;
 import org.apache.beam.sdk.values.Row;
+import org.apache.beam.sdk.values.TimestampedValue;
 import org.apache.beam.sdk.values.TupleTag;
 import org.apache.beam.sdk.values.WindowedValue;
 import org.apache.beam.sdk.values.WindowedValues;
@@ -120,6 +121,9 @@ public class SimpleDoFnRunner<InputT, OutputT> implements DoFnRunner<InputT, Out
 
   private final Map<String, PCollectionView<?>> sideInputMapping;
 
+  /** Buffers input for the {@link DoFn.ProcessBatch} method, if the {@link DoFn} has one. */
+  private final @Nullable ProcessBatchBuffer<InputT, OutputT> processBatchBuffer;
+
   /** Constructor. */
   public SimpleDoFnRunner(
       PipelineOptions options,
@@ -163,6 +167,11 @@ public class SimpleDoFnRunner<InputT, OutputT> implements DoFnRunner<InputT, Out
     this.allowedLateness = windowingStrategy.getAllowedLateness();
     this.doFnSchemaInformation = doFnSchemaInformation;
     this.sideInputMapping = sideInputMapping;
+    DoFnSignature.ProcessBatchMethod processBatch = signature.processBatch();
+    this.processBatchBuffer =
+        processBatch == null
+            ? null
+            : new ProcessBatchBuffer<>(invoker, processBatch, new BatchReceiver());
   }
 
   @Override
@@ -183,7 +192,15 @@ public class SimpleDoFnRunner<InputT, OutputT> implements DoFnRunner<InputT, Out
 
   @Override
   public void processElement(WindowedValue<InputT> compressedElem) {
-    if (observesWindow) {
+    if (processBatchBuffer != null) {
+      try {
+        for (WindowedValue<InputT> elem : compressedElem.explodeWindows()) {
+          processBatchBuffer.add(elem);
+        }
+      } catch (Exception ex) {
+        throw wrapUserCodeException(ex);
+      }
+    } else if (observesWindow) {
       for (WindowedValue<InputT> elem : compressedElem.explodeWindows()) {
         invokeProcessElement(elem);
       }
@@ -221,6 +238,9 @@ public class SimpleDoFnRunner<InputT, OutputT> implements DoFnRunner<InputT, Out
   public void finishBundle() {
     // This can contain user code. Wrap it in case it throws an exception.
     try {
+      if (processBatchBuffer != null) {
+        processBatchBuffer.flush();
+      }
       invoker.invokeFinishBundle(new DoFnFinishBundleArgumentProvider());
     } catch (Throwable t) {
       // Exception in user code.
@@ -278,6 +298,31 @@ public class SimpleDoFnRunner<InputT, OutputT> implements DoFnRunner<InputT, Out
     outputManager.output(tag, windowedElem);
   }
 
+  /** Processes and outputs the batches of a {@link DoFn.ProcessBatch} method. */
+  private class BatchReceiver implements ProcessBatchBuffer.Receiver<InputT, OutputT> {
+    @Override
+    public void processElement(WindowedValue<InputT> elem) {
+      invoker.invokeProcessElement(new DoFnProcessContext(elem));
+    }
+
+    @Override
+    public void outputBatch(
+        WindowedValue<InputT> earliest, Iterable<TimestampedValue<OutputT>> outputs) {
+      BoundedWindow window = Iterables.getOnlyElement(earliest.getWindows());
+      for (TimestampedValue<OutputT> output : outputs) {
+        checkTimestamp(earliest.getTimestamp(), output.getTimestamp());
+        outputWindowedValue(
+            mainOutputTag,
+            WindowedValues.of(
+                output.getValue(),
+                output.getTimestamp(),
+                window,
+                earliest.getPaneInfo(),
+                earliest.causedByDrain()));
+      }
+    }
+  }
+
   /** An {@link DoFnInvoker.ArgumentProvider} for {@link DoFn.StartBundle @StartBundle}. */
   private class DoFnStartBundleArgumentProvider
       extends DoFnInvoker.BaseArgumentProvider<InputT, OutputT> {
@@ -0,0 +1,194 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.runners.core;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.emptyIterable;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+import java.util.AbstractMap;
+import org.apache.beam.runners.core.EncodedStateInternals.EncodedBag;
+import org.apache.beam.runners.core.EncodedStateInternals.EncodedMultimap;
+import org.apache.beam.runners.core.EncodedStateInternals.EncodedValue;
+import org.apache.beam.runners.core.InMemoryStateInternals.InMemoryMultimap;
+import org.apache.beam.sdk.coders.DoubleCoder;
+import org.apache.beam.sdk.coders.StringUtf8Coder;
+import org.apache.beam.sdk.coders.VarIntCoder;
+import org.apache.beam.sdk.state.BagState;
+import org.apache.beam.sdk.state.MultimapState;
+import org.apache.beam.sdk.state.ValueState;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link EncodedStateInternals}. This is based on {@link StateInternalsTest}. */
+public class EncodedStateInternalsTest {
+
+  /** A standard StateInternals test. */
+  @RunWith(JUnit4.class)
+  public static class StandardStateInternalsTests extends StateInternalsTest {
+    @Override
+    protected StateInternals createStateInternals() {
+      return new EncodedStateInternals<>("dummyKey");
+    }
+  }
+
+  /** A specific test of EncodedStateInternals. */
+  @RunWith(JUnit4.class)
+  public static class OtherTests {
+
+    private static final StateNamespace NAMESPACE = new StateNamespaceForTest("ns");
+
+    private static final StateTag<ValueState<String>> STRING_VALUE_ADDR =
+        StateTags.value("stringValue", StringUtf8Coder.of());
+    private static final StateTag<BagState<String>> STRING_BAG_ADDR =
+        StateTags.bag("stringBag", StringUtf8Coder.of());
+    private static final StateTag<MultimapState<String, Integer>> STRING_MULTIMAP_ADDR =
+        StateTags.multimap("stringMultimap", StringUtf8Coder.of(), VarIntCoder.of());
+    private static final StateTag<MultimapState<Double, Integer>> DOUBLE_MULTIMAP_ADDR =
+        StateTags.multimap("doubleMultimap", DoubleCoder.of(), VarIntCoder.of());
+
+    StateInternals underTest = new EncodedStateInternals<>("dummyKey");
+
+    @Test
+    public void testValueCopyIsIndependent() {
+      EncodedValue<String> value =
+          (EncodedValue<String>) underTest.state(NAMESPACE, STRING_VALUE_ADDR);
+      value.write("hello");
+
+      EncodedValue<String> copy = value.copy();
+      copy.write("world");
+      assertThat(value.read(), equalTo("hello"));
+      assertThat(copy.read(), equalTo("world"));
+
+      value.clear();
+      assertThat(value.read(), nullValue());
+      assertThat(value.isCleared(), is(true));
+      assertThat(copy.isCleared(), is(false));
+    }
+
+    @Test
+    public void testBagReadIsStable() {
+      BagState<String> bag = underTest.state(NAMESPACE, STRING_BAG_ADDR);
+      bag.add("hello");
+      Iterable<String> beforeAdd = bag.read();
+      for (int i = 0; i < 100; ++i) {
+        bag.add(Integer.toString(i));
+      }
+      Iterable<String> beforeClear = bag.read();
+      bag.clear();
+
+      assertThat(beforeAdd, contains("hello"));
+      assertThat(beforeClear, contains(expectedElements("hello", 100)));
+      assertThat(bag.read(), emptyIterable());
+    }
+
+    @Test
+    public void testBagCopyIsIndependent() {
+      EncodedBag<String> bag = (EncodedBag<String>) underTest.state(NAMESPACE, STRING_BAG_ADDR);
+      bag.add("hello");
+
+      EncodedBag<String> copy = bag.copy();
+      Iterable<String> copyBeforeAdd = copy.read();
+      bag.add("world");
+      copy.add("there");
+
+      assertThat(bag.read(), contains("hello", "world"));
+      assertThat(copy.read(), contains("hello", "there"));
+      assertThat(copyBeforeAdd, contains("hello"));
+
+      copy.clear();
+      assertThat(bag.read(), contains("hello", "world"));
+      assertThat(copy.isCleared(), is(true));
+    }
+
+    @Test
+    public void testMultimap() {
+      MultimapState<String, Integer> multimap = underTest.state(NAMESPACE, STRING_MULTIMAP_ADDR);
+      assertThat(multimap.isEmpty().read(), is(true));
+
+      multimap.put("a", 1);
+      multimap.put("a", 2);
+      multimap.put("b", 3);
+      Iterable<Integer> aBeforeRemove = multimap.get("a").read();
+      multimap.remove("a");
+      multimap.put("a", 4);
+
+      assertThat(aBeforeRemove, contains(1, 2));
+      assertThat(multimap.get("a").read(), contains(4));
+      assertThat(multimap.get("c").read(), emptyIterable());
+      assertThat(multimap.keys().read(), containsInAnyOrder("a", "b"));
+      assertThat(
+          multimap.entries().read(),
+          containsInAnyOrder(
+              new AbstractMap.SimpleEntry<>("a", 4), new AbstractMap.SimpleEntry<>("b", 3)));
+      assertThat(multimap.containsKey("b").read(), is(true));
+      assertThat(multimap.containsKey("c").read(), is(false));
+
+      multimap.clear();
+      assertThat(multimap.isEmpty().read(), is(true));
+      assertThat(multimap.keys().read(), emptyIterable());
+    }
+
+    @Test
+    public void testMultimapCopyIsIndependent() {
+      EncodedMultimap<String, Integer> multimap =
+          (EncodedMultimap<String, Integer>) underTest.state(NAMESPACE, STRING_MULTIMAP_ADDR);
+      multimap.put("a", 1);
+
+      EncodedMultimap<String, Integer> copy = multimap.copy();
+      multimap.put("a", 2);
+      copy.put("a", 3);
+      copy.put("b", 4);
+
+      assertThat(multimap.get("a").read(), contains(1, 2));
+      assertThat(multimap.keys().read(), contains("a"));
+      assertThat(copy.get("a").read(), contains(1, 3));
+      assertThat(copy.keys().read(), containsInAnyOrder("a", "b"));
+
+      multimap.remove("a");
+      assertThat(multimap.isCleared(), is(true));
+      assertThat(copy.get("a").read(), contains(1, 3));
+    }
+
+    @Test
+    public void testMultimapWithNonDeterministicKeyCoder() {
+      MultimapState<Double, Integer> multimap = underTest.state(NAMESPACE, DOUBLE_MULTIMAP_ADDR);
+      assertThat(multimap, instanceOf(InMemoryMultimap.class));
+
+      multimap.put(1.5, 1);
+      multimap.put(1.5, 2);
+      assertThat(multimap.get(1.5).read(), contains(1, 2));
+      assertThat(multimap.keys().read(), contains(1.5));
+    }
+
+    private static String[] expectedElements(String first, int count) {
+      String[] expected = new String[count + 1];
+      expected[0] = first;
+      for (int i = 0; i < count; ++i) {
+        expected[i + 1] = Integer.toString(i);
+      }
+      return expected;
+    }
+  }
+}
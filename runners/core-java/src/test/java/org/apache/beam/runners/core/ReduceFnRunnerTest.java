@@ -399,6 +399,87 @@ public class ReduceFnRunnerTest {
         WindowMatchers.valueWithPaneInfo(PaneInfo.createPane(false, false, Timing.LATE, 1, 1)));
   }
 
+  /**
+   * Tests that late data arriving in a single bundle with the default trigger is emitted as a single
+   * LATE pane.
+   */
+  @Test
+  public void testDefaultTriggerLateBundleFiresOnce() throws Exception {
+    WindowingStrategy<?, IntervalWindow> strategy =
+        WindowingStrategy.of((WindowFn<?, IntervalWindow>) FixedWindows.of(Duration.millis(10)))
+            .withTrigger(DefaultTrigger.of())
+            .withMode(AccumulationMode.ACCUMULATING_FIRED_PANES)
+            .withAllowedLateness(Duration.millis(100));
+
+    ReduceFnTester<Integer, Integer, IntervalWindow> tester =
+        ReduceFnTester.combining(strategy, Sum.ofIntegers(), VarIntCoder.of());
+
+    tester.advanceInputWatermark(new Instant(0));
+    tester.injectElements(TimestampedValue.of(1, new Instant(1)));
+    assertEquals(new Instant(9), tester.getNextTimer(TimeDomain.EVENT_TIME));
+
+    tester.advanceInputWatermark(new Instant(10));
+    tester.injectElements(
+        TimestampedValue.of(2, new Instant(2)), TimestampedValue.of(3, new Instant(3)));
+
+    List<WindowedValue<Integer>> output = tester.extractOutput();
+    assertEquals(2, output.size());
+    assertThat(output.get(0), isWindowedValue(equalTo(1)));
+    assertThat(output.get(1), isWindowedValue(equalTo(6)));
+    assertThat(
+        output.get(1),
+        WindowMatchers.valueWithPaneInfo(PaneInfo.createPane(false, false, Timing.LATE, 1, 1)));
+  }
+
+  /**
+   * Tests that an {@link AfterWatermark#pastEndOfWindow()} trigger fires each window once when the
+   * watermark passes its end and drops data arriving afterwards.
+   */
+  @Test
+  public void testAfterWatermarkFiresOnceAndDropsLateData() throws Exception {
+    MetricsContainerImpl container = new MetricsContainerImpl("any");
+    MetricsEnvironment.setCurrentContainer(container);
+    WindowingStrategy<?, IntervalWindow> strategy =
+        WindowingStrategy.of((WindowFn<?, IntervalWindow>) FixedWindows.of(Duration.millis(10)))
+            .withTrigger(AfterWatermark.pastEndOfWindow())
+            .withMode(AccumulationMode.ACCUMULATING_FIRED_PANES)
+            .withAllowedLateness(Duration.millis(100));
+
+    ReduceFnTester<Integer, Integer, IntervalWindow> tester =
+        ReduceFnTester.combining(strategy, Sum.ofIntegers(), VarIntCoder.of());
+
+    tester.advanceInputWatermark(new Instant(0));
+    tester.injectElements(
+        TimestampedValue.of(1, new Instant(1)),
+        TimestampedValue.of(2, new Instant(2)),
+        TimestampedValue.of(3, new Instant(3)),
+        TimestampedValue.of(10, new Instant(10)));
+    assertEquals(new Instant(9), tester.getNextTimer(TimeDomain.EVENT_TIME));
+
+    tester.advanceInputWatermark(new Instant(10));
+    assertTrue(tester.isMarkedFinished(firstWindow));
+    tester.injectElements(TimestampedValue.of(4, new Instant(4)));
+    tester.advanceInputWatermark(new Instant(20));
+
+    List<WindowedValue<Integer>> output = tester.extractOutput();
+    assertThat(
+        output,
+        contains(
+            isSingleWindowedValue(equalTo(6), 9, 0, 10),
+            isSingleWindowedValue(equalTo(10), 19, 10, 20)));
+    assertThat(
+        output.get(0),
+        WindowMatchers.valueWithPaneInfo(PaneInfo.createPane(true, true, Timing.ON_TIME, 0, 0)));
+    assertEquals(
+        1,
+        (long)
+            container
+                .getCounter(
+                    MetricName.named(
+                        ReduceFnRunner.class, ReduceFnRunner.DROPPED_DUE_TO_CLOSED_WINDOW))
+                .getCumulative());
+  }
+
   @Test
   public void testOnElementCombiningDiscarding() throws Exception {
     // Test basic execution of a trigger using a non-combining window set and discarding mode.
@@ -41,12 +41,16 @@ import org.apache.beam.sdk.transforms.DoFn;
 import org.apache.beam.sdk.transforms.DoFnSchemaInformation;
 import org.apache.beam.sdk.transforms.reflect.DoFnSignature.TimerDeclaration;
 import org.apache.beam.sdk.transforms.windowing.BoundedWindow;
+import org.apache.beam.sdk.transforms.windowing.FixedWindows;
 import org.apache.beam.sdk.transforms.windowing.GlobalWindow;
 import org.apache.beam.sdk.transforms.windowing.GlobalWindows;
+import org.apache.beam.sdk.transforms.windowing.IntervalWindow;
+import org.apache.beam.sdk.transforms.windowing.PaneInfo;
 import org.apache.beam.sdk.transforms.windowing.WindowFn;
 import org.apache.beam.sdk.util.UserCodeException;
 import org.apache.beam.sdk.util.WindowedValueMultiReceiver;
 import org.apache.beam.sdk.values.KV;
+import org.apache.beam.sdk.values.TimestampedValue;
 import org.apache.beam.sdk.values.TupleTag;
 import org.apache.beam.sdk.values.WindowedValue;
 import org.apache.beam.sdk.values.WindowedValues;
@@ -641,6 +645,76 @@ public class SimpleDoFnRunnerTest {
                     PeriodFormat.getDefault().print(Duration.ZERO.toPeriod())))));
   }
 
+  /**
+   * Tests that contiguous elements of the same window are passed to the {@link DoFn.ProcessBatch}
+   * method, and that other elements are passed to the {@link DoFn.ProcessElement} method.
+   */
+  @Test
+  public void testProcessBatch() {
+    BatchingDoFn fn = new BatchingDoFn();
+    ListOutputManager outputManager = new ListOutputManager();
+    TupleTag<Integer> mainOutput = new TupleTag<>();
+    DoFnRunner<Integer, Integer> runner =
+        new SimpleDoFnRunner<>(
+            null,
+            fn,
+            NullSideInputReader.empty(),
+            outputManager,
+            mainOutput,
+            Collections.emptyList(),
+            mockStepContext,
+            null,
+            Collections.emptyMap(),
+            WindowingStrategy.of(FixedWindows.of(Duration.millis(10))),
+            DoFnSchemaInformation.create(),
+            Collections.emptyMap());
+    IntervalWindow first = new IntervalWindow(new Instant(0), new Instant(10));
+    IntervalWindow second = new IntervalWindow(new Instant(10), new Instant(20));
+
+    runner.startBundle();
+    runner.processElement(WindowedValues.of(1, new Instant(1), first, PaneInfo.NO_FIRING));
+    runner.processElement(WindowedValues.of(2, new Instant(2), first, PaneInfo.NO_FIRING));
+    runner.processElement(WindowedValues.of(3, new Instant(3), first, PaneInfo.NO_FIRING));
+    runner.processElement(WindowedValues.of(4, new Instant(14), second, PaneInfo.NO_FIRING));
+    runner.processElement(WindowedValues.of(5, new Instant(15), second, PaneInfo.NO_FIRING));
+    runner.finishBundle();
+
+    // The batches are limited to two elements, so the third element is processed on its own.
+    assertThat(fn.batchSizes, contains(2, 2));
+    assertThat(fn.processedElements, contains(3));
+    assertThat(
+        (List) outputManager.outputs.get(mainOutput),
+        contains(
+            WindowedValues.of(10, new Instant(1), first, PaneInfo.NO_FIRING),
+            WindowedValues.of(20, new Instant(2), first, PaneInfo.NO_FIRING),
+            WindowedValues.of(30, new Instant(3), first, PaneInfo.NO_FIRING),
+            WindowedValues.of(40, new Instant(14), second, PaneInfo.NO_FIRING),
+            WindowedValues.of(50, new Instant(15), second, PaneInfo.NO_FIRING)));
+  }
+
+  /** Multiplies its input by ten, one element at a time or in batches of at most two elements. */
+  static class BatchingDoFn extends DoFn<Integer, Integer> {
+    private final List<Integer> processedElements = new ArrayList<>();
+    private final List<Integer> batchSizes = new ArrayList<>();
+
+    @ProcessElement
+    public void processElement(@Element Integer element, OutputReceiver<Integer> receiver) {
+      processedElements.add(element);
+      receiver.output(element * 10);
+    }
+
+    @ProcessBatch(maxBatchSize = 2)
+    public List<TimestampedValue<Integer>> processBatch(
+        List<TimestampedValue<Integer>> elements, BoundedWindow window) {
+      batchSizes.add(elements.size());
+      List<TimestampedValue<Integer>> outputs = new ArrayList<>();
+      for (TimestampedValue<Integer> element : elements) {
+        outputs.add(TimestampedValue.of(element.getValue() * 10, element.getTimestamp()));
+      }
+      return outputs;
+    }
+  }
+
   static class ThrowingDoFn extends DoFn<String, String> {
     final Exception exceptionToThrow = new UnsupportedOperationException("Expected exception");
 
@@ -0,0 +1,170 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.runners.direct;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.apache.beam.runners.core.StateNamespaces;
+import org.apache.beam.runners.core.TimerInternals.TimerData;
+import org.apache.beam.runners.direct.WatermarkManager.AppliedPTransformInputWatermark;
+import org.apache.beam.runners.direct.WatermarkManager.TimerUpdate;
+import org.apache.beam.runners.direct.WatermarkManager.Watermark;
+import org.apache.beam.runners.direct.WatermarkManager.WatermarkUpdate;
+import org.apache.beam.runners.local.StructuralKey;
+import org.apache.beam.sdk.coders.VarIntCoder;
+import org.apache.beam.sdk.state.TimeDomain;
+import org.apache.beam.sdk.transforms.windowing.BoundedWindow;
+import org.joda.time.Instant;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks setting and firing {@value #TIMERS} event time timers with the timer bookkeeping of
+ * the {@link WatermarkManager}, spread over one key per timer or over fewer keys with many timers
+ * each.
+ *
+ * <p>The benchmarks are in the package of the {@link WatermarkManager} to access its
+ * package-private watermark implementations.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class WatermarkManagerBenchmark {
+  private static final int TIMERS = 1_000_000;
+  private static final int WATERMARK_ADVANCES = 100;
+
+  /** An input watermark which is advanced by the benchmark. */
+  private static class SettableWatermark implements Watermark {
+    private volatile Instant watermark = BoundedWindow.TIMESTAMP_MIN_VALUE;
+
+    @Override
+    public String getName() {
+      return "input";
+    }
+
+    @Override
+    public Instant get() {
+      return watermark;
+    }
+
+    @Override
+    public WatermarkUpdate refresh() {
+      return WatermarkUpdate.NO_CHANGE;
+    }
+  }
+
+  @State(Scope.Benchmark)
+  public static class Timers {
+    @Param({"1", "100"})
+    public int timersPerKey;
+
+    public StructuralKey<?>[] keys;
+    public TimerData[] timers;
+
+    @Setup(Level.Trial)
+    public void setup() {
+      keys = new StructuralKey<?>[TIMERS];
+      timers = new TimerData[TIMERS];
+      for (int i = 0; i < TIMERS; ++i) {
+        keys[i] = StructuralKey.of(i / timersPerKey, VarIntCoder.of());
+        // Spread the timestamps such that the timers are not set in timestamp order.
+        Instant timestamp = new Instant((i * 7919L) % TIMERS);
+        timers[i] =
+            TimerData.of(
+                Integer.toString(i % timersPerKey),
+                StateNamespaces.global(),
+                timestamp,
+                timestamp,
+                TimeDomain.EVENT_TIME,
+                TimerData.CausedByDrain.NORMAL);
+      }
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class EmptyWatermark {
+    public SettableWatermark input;
+    public AppliedPTransformInputWatermark watermark;
+
+    @Setup(Level.Invocation)
+    public void setup() {
+      input = new SettableWatermark();
+      watermark =
+          new AppliedPTransformInputWatermark(
+              "watermark", Collections.singletonList(input), timer -> {});
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class WatermarkWithTimers extends EmptyWatermark {
+    @Setup(Level.Invocation)
+    public void setTimers(Timers timers) {
+      setTimers(timers, this);
+    }
+  }
+
+  private static void setTimers(Timers timers, EmptyWatermark watermark) {
+    for (int i = 0; i < TIMERS; ++i) {
+      watermark.watermark.updateTimers(
+          TimerUpdate.builder(timers.keys[i]).setTimer(timers.timers[i]).build());
+    }
+  }
+
+  /**
+   * Sets each timer with a separate update, reading the earliest timer timestamp like refreshing
+   * the output watermark after each completed bundle does.
+   */
+  @Benchmark
+  @OperationsPerInvocation(TIMERS)
+  public void testSetTimers(Timers timers, EmptyWatermark watermark, Blackhole blackhole) {
+    for (int i = 0; i < TIMERS; ++i) {
+      watermark.watermark.updateTimers(
+          TimerUpdate.builder(timers.keys[i]).setTimer(timers.timers[i]).build());
+      blackhole.consume(watermark.watermark.getEarliestTimerTimestamp());
+    }
+  }
+
+  /**
+   * Advances the input watermark in {@value #WATERMARK_ADVANCES} steps, extracting and completing
+   * the fired timers after each advance.
+   */
+  @Benchmark
+  @OperationsPerInvocation(TIMERS)
+  public void testFireTimers(WatermarkWithTimers watermark, Blackhole blackhole) {
+    for (int i = 1; i <= WATERMARK_ADVANCES; ++i) {
+      watermark.input.watermark = new Instant((long) TIMERS * i / WATERMARK_ADVANCES);
+      watermark.watermark.refresh();
+      for (Map.Entry<StructuralKey<?>, List<TimerData>> fired :
+          watermark.watermark.extractFiredEventTimeTimers().entrySet()) {
+        watermark.watermark.updateTimers(
+            TimerUpdate.builder(fired.getKey()).withCompletedTimers(fired.getValue()).build());
+      }
+      blackhole.consume(watermark.watermark.getEarliestTimerTimestamp());
+    }
+  }
+}
@@ -79,12 +79,27 @@ class CopyOnAccessInMemoryStateInternals<K> implements StateInternals {
    */
   public static <K> CopyOnAccessInMemoryStateInternals withUnderlying(
       K key, @Nullable CopyOnAccessInMemoryStateInternals underlying) {
-    return new CopyOnAccessInMemoryStateInternals<>(key, underlying);
+    return withUnderlying(key, underlying, null);
   }
 
-  private CopyOnAccessInMemoryStateInternals(K key, CopyOnAccessInMemoryStateInternals underlying) {
+  /**
+   * Creates a new {@link CopyOnAccessInMemoryStateInternals} with the underlying (possibly null)
+   * StateInternals, which binds {@link BagState} to a {@link SpillingBag} if the provided {@link
+   * SpillStore} is not null.
+   */
+  public static <K> CopyOnAccessInMemoryStateInternals withUnderlying(
+      K key,
+      @Nullable CopyOnAccessInMemoryStateInternals underlying,
+      @Nullable SpillStore spillStore) {
+    return new CopyOnAccessInMemoryStateInternals<>(key, underlying, spillStore);
+  }
+
+  private CopyOnAccessInMemoryStateInternals(
+      K key, CopyOnAccessInMemoryStateInternals underlying, SpillStore spillStore) {
     this.key = key;
-    table = new CopyOnAccessInMemoryStateTable(underlying == null ? null : underlying.table);
+    table =
+        new CopyOnAccessInMemoryStateTable(
+            underlying == null ? null : underlying.table, spillStore);
   }
 
   /**
@@ -145,6 +160,9 @@ class CopyOnAccessInMemoryStateInternals<K> implements StateInternals {
   private static class CopyOnAccessInMemoryStateTable extends StateTable {
     private Optional<StateTable> underlying;
 
+    /** The store new {@link BagState} spills to, or null if it is kept on the heap. */
+    private final @Nullable SpillStore spillStore;
+
     /**
      * The StateBinderFactory currently in use by this {@link CopyOnAccessInMemoryStateTable}.
      *
@@ -169,9 +187,10 @@ class CopyOnAccessInMemoryStateInternals<K> implements StateInternals {
     /** The earliest watermark hold in this table. */
     private Optional<Instant> earliestWatermarkHold;
 
-    public CopyOnAccessInMemoryStateTable(StateTable underlying) {
+    public CopyOnAccessInMemoryStateTable(StateTable underlying, SpillStore spillStore) {
       this.underlying = Optional.ofNullable(underlying);
-      binderFactory = new CopyOnBindBinderFactory(this.underlying);
+      this.spillStore = spillStore;
+      binderFactory = new CopyOnBindBinderFactory(this.underlying, spillStore);
       earliestWatermarkHold = Optional.empty();
     }
 
@@ -200,7 +219,7 @@ class CopyOnAccessInMemoryStateInternals<K> implements StateInternals {
       }
       earliestWatermarkHold = Optional.of(earliestHold);
       clearEmpty();
-      binderFactory = new InMemoryStateBinderFactory();
+      binderFactory = new InMemoryStateBinderFactory(spillStore);
       underlying = Optional.empty();
     }
 
@@ -258,9 +277,12 @@ class CopyOnAccessInMemoryStateInternals<K> implements StateInternals {
      */
     private static class CopyOnBindBinderFactory implements StateBinderFactory {
       private final Optional<StateTable> underlying;
+      private final @Nullable SpillStore spillStore;
 
-      public CopyOnBindBinderFactory(Optional<StateTable> underlying) {
+      public CopyOnBindBinderFactory(
+          Optional<StateTable> underlying, @Nullable SpillStore spillStore) {
         this.underlying = underlying;
+        this.spillStore = spillStore;
       }
 
       private boolean containedInUnderlying(StateNamespace namespace, StateTag<?> tag) {
@@ -325,7 +347,7 @@ class CopyOnAccessInMemoryStateInternals<K> implements StateInternals {
                       underlying.get().get(namespace, address, c);
               return existingState.copy();
             } else {
-              return new InMemoryBag<>(elemCoder);
+              return newBag(elemCoder, spillStore);
             }
           }
 
@@ -503,13 +525,28 @@ class CopyOnAccessInMemoryStateInternals<K> implements StateInternals {
     }
 
     private static class InMemoryStateBinderFactory implements StateBinderFactory {
+      private final @Nullable SpillStore spillStore;
 
-      public InMemoryStateBinderFactory() {}
+      public InMemoryStateBinderFactory(@Nullable SpillStore spillStore) {
+        this.spillStore = spillStore;
+      }
 
       @Override
       public StateBinder forNamespace(StateNamespace namespace, StateContext<?> c) {
-        return new InMemoryStateBinder(c);
+        return new InMemoryStateBinder(c) {
+          @Override
+          public <T> BagState<T> bindBag(StateTag<BagState<T>> address, Coder<T> elemCoder) {
+            return newBag(elemCoder, spillStore);
+          }
+        };
+      }
+    }
+
+    private static <T> BagState<T> newBag(Coder<T> elemCoder, @Nullable SpillStore spillStore) {
+      if (spillStore == null) {
+        return new InMemoryBag<>(elemCoder);
       }
+      return new SpillingBag<>(elemCoder, spillStore);
     }
   }
 }
@@ -28,6 +28,7 @@ import org.apache.beam.runners.direct.WatermarkManager.TimerUpdate;
 import org.apache.beam.runners.direct.WatermarkManager.TransformWatermarks;
 import org.apache.beam.runners.local.StructuralKey;
 import org.apache.beam.sdk.transforms.DoFn.BundleFinalizer;
+import org.checkerframework.checker.nullness.qual.Nullable;
 
 /**
  * Execution Context for the {@link DirectRunner}.
@@ -45,17 +46,20 @@ class DirectExecutionContext {
   private final StructuralKey<?> key;
   private final CopyOnAccessInMemoryStateInternals existingState;
   private final TransformWatermarks watermarks;
+  private final @Nullable SpillStore spillStore;
   private Map<String, DirectStepContext> cachedStepContexts = new LinkedHashMap<>();
 
   public DirectExecutionContext(
       Clock clock,
       StructuralKey<?> key,
       CopyOnAccessInMemoryStateInternals existingState,
-      TransformWatermarks watermarks) {
+      TransformWatermarks watermarks,
+      @Nullable SpillStore spillStore) {
     this.clock = clock;
     this.key = key;
     this.existingState = existingState;
     this.watermarks = watermarks;
+    this.spillStore = spillStore;
   }
 
   private DirectStepContext createStepContext() {
@@ -78,7 +82,8 @@ class DirectExecutionContext {
     @Override
     public CopyOnAccessInMemoryStateInternals<?> stateInternals() {
       if (stateInternals == null) {
-        stateInternals = CopyOnAccessInMemoryStateInternals.withUnderlying(key, existingState);
+        stateInternals =
+            CopyOnAccessInMemoryStateInternals.withUnderlying(key, existingState, spillStore);
       }
       return stateInternals;
     }
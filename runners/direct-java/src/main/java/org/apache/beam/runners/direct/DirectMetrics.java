@@ -47,6 +47,7 @@ import org.apache.beam.sdk.metrics.MetricResults;
 import org.apache.beam.sdk.metrics.MetricsFilter;
 import org.apache.beam.sdk.metrics.StringSetResult;
 import org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.collect.ImmutableList;
+import org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.collect.Iterables;
 import org.checkerframework.checker.nullness.qual.Nullable;
 
 /** Implementation of {@link MetricResults} for the Direct Runner. */
@@ -391,4 +392,23 @@ class DirectMetrics extends MetricResults {
       boundedTrie.get(bTrie.getKey()).commitLogical(bundle, bTrie.getUpdate());
     }
   }
+
+  /**
+   * Returns the updates of both {@link MetricUpdates}, which must be for the metrics of different
+   * steps.
+   */
+  static MetricUpdates combine(MetricUpdates first, MetricUpdates second) {
+    if (first.isEmpty()) {
+      return second;
+    } else if (second.isEmpty()) {
+      return first;
+    }
+    return MetricUpdates.create(
+        Iterables.concat(first.counterUpdates(), second.counterUpdates()),
+        Iterables.concat(first.distributionUpdates(), second.distributionUpdates()),
+        Iterables.concat(first.gaugeUpdates(), second.gaugeUpdates()),
+        Iterables.concat(first.stringSetUpdates(), second.stringSetUpdates()),
+        Iterables.concat(first.boundedTrieUpdates(), second.boundedTrieUpdates()),
+        Iterables.concat(first.histogramsUpdates(), second.histogramsUpdates()));
+  }
 }
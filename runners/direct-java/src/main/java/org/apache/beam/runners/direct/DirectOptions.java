@@ -22,6 +22,7 @@ import org.apache.beam.sdk.options.Default;
 import org.apache.beam.sdk.options.DefaultValueFactory;
 import org.apache.beam.sdk.options.Description;
 import org.apache.beam.sdk.options.PipelineOptions;
+import org.checkerframework.checker.nullness.qual.Nullable;
 
 /**
  * Options that can be used to configure the {@link org.apache.beam.runners.direct.DirectRunner}.
@@ -54,6 +55,33 @@ public interface DirectOptions extends PipelineOptions, ApplicationNameOptions {
 
   void setEnforceEncodability(boolean test);
 
+  @Default.Boolean(false)
+  @Description(
+      "Controls whether the DirectRunner should execute a chain of element-wise ParDos within a "
+          + "single evaluator, passing elements directly from one DoFn to the next. The elements "
+          + "of the PCollections between fused ParDos are not committed to bundles, so they are "
+          + "not checked for immutability or encodability.")
+  boolean isFuseParDos();
+
+  void setFuseParDos(boolean fuse);
+
+  @Default.Integer(0)
+  @Description(
+      "The number of megabytes of bag state, which includes the values buffered by a GroupByKey, "
+          + "the DirectRunner keeps on the heap before spilling bag state to local disk. Bag state "
+          + "is never spilled if zero.")
+  int getStateMemoryBudgetMb();
+
+  void setStateMemoryBudgetMb(int budget);
+
+  @Description(
+      "The directory the DirectRunner spills bag state to when it exceeds the stateMemoryBudgetMb. "
+          + "Defaults to the default temporary-file directory.")
+  @Nullable
+  String getStateSpillDirectory();
+
+  void setStateSpillDirectory(@Nullable String directory);
+
   @Default.InstanceFactory(AvailableParallelismFactory.class)
   @Description(
       "Controls the amount of target parallelism the DirectRunner will use. Defaults to"
@@ -194,16 +194,25 @@ public class DirectRunner extends PipelineRunner<DirectPipelineResult> {
                   .setNameFormat("direct-metrics-counter-committer")
                   .build());
       DirectGraph graph = graphVisitor.getGraph();
+      SpillStore spillStore =
+          options.getStateMemoryBudgetMb() > 0
+              ? SpillStore.create(
+                  (long) options.getStateMemoryBudgetMb() << 20, options.getStateSpillDirectory())
+              : null;
       EvaluationContext context =
           EvaluationContext.create(
               clockSupplier.get(),
               Enforcement.bundleFactoryFor(enabledEnforcements, graph),
               graph,
               keyedPValueVisitor.getKeyedPValues(),
-              metricsPool);
+              metricsPool,
+              spillStore);
 
       TransformEvaluatorRegistry registry =
-          TransformEvaluatorRegistry.javaSdkNativeRegistry(context, options);
+          TransformEvaluatorRegistry.javaSdkNativeRegistry(
+              context,
+              options,
+              options.isFuseParDos() ? ParDoFusion.of(graph) : ParDoFusion.none());
       PipelineExecutor executor =
           ExecutorServiceParallelExecutor.create(
               options.getTargetParallelism(),
@@ -189,8 +189,12 @@ class DirectTransformExecutor<T> implements TransformExecutor {
       MetricsContainerImpl metricsContainer,
       Collection<ModelEnforcement<T>> enforcements)
       throws Exception {
-    TransformResult<T> result =
-        evaluator.finishBundle().withLogicalMetricUpdates(metricsContainer.getCumulative());
+    TransformResult<T> result = evaluator.finishBundle();
+    // The result contains the logical metric updates of any steps fused into this one.
+    result =
+        result.withLogicalMetricUpdates(
+            DirectMetrics.combine(
+                result.getLogicalMetricUpdates(), metricsContainer.getCumulative()));
     CommittedResult outputs = onComplete.handleResult(inputBundle, result);
     for (ModelEnforcement<T> enforcement : enforcements) {
       enforcement.afterFinish(inputBundle, result, outputs.getOutputs());
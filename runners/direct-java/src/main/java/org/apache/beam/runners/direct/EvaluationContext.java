@@ -19,6 +19,7 @@ package org.apache.beam.runners.direct;
 
 import static org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.base.Preconditions.checkNotNull;
 
+import java.io.IOException;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.EnumSet;
@@ -51,6 +52,7 @@ import org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.annotations.Vi
 import org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.collect.ImmutableList;
 import org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.collect.Iterables;
 import org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.util.concurrent.MoreExecutors;
+import org.checkerframework.checker.nullness.qual.Nullable;
 import org.joda.time.Instant;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -97,6 +99,9 @@ class EvaluationContext {
   private final ConcurrentMap<StepAndKey, CopyOnAccessInMemoryStateInternals>
       applicationStateInternals;
 
+  /** The store bag state spills to, or null if all state is kept on the heap. */
+  private final @Nullable SpillStore spillStore;
+
   private final SideInputContainer sideInputContainer;
 
   private final DirectMetrics metrics;
@@ -109,7 +114,18 @@ class EvaluationContext {
       DirectGraph graph,
       Set<PValue> keyedPValues,
       ExecutorService executorService) {
-    return new EvaluationContext(clock, bundleFactory, graph, keyedPValues, executorService);
+    return create(clock, bundleFactory, graph, keyedPValues, executorService, null);
+  }
+
+  public static EvaluationContext create(
+      Clock clock,
+      BundleFactory bundleFactory,
+      DirectGraph graph,
+      Set<PValue> keyedPValues,
+      ExecutorService executorService,
+      @Nullable SpillStore spillStore) {
+    return new EvaluationContext(
+        clock, bundleFactory, graph, keyedPValues, executorService, spillStore);
   }
 
   private EvaluationContext(
@@ -117,11 +133,13 @@ class EvaluationContext {
       BundleFactory bundleFactory,
       DirectGraph graph,
       Set<PValue> keyedPValues,
-      ExecutorService executorService) {
+      ExecutorService executorService,
+      @Nullable SpillStore spillStore) {
     this.clock = clock;
     this.bundleFactory = checkNotNull(bundleFactory);
     this.graph = checkNotNull(graph);
     this.keyedPValues = keyedPValues;
+    this.spillStore = spillStore;
 
     this.watermarkManager = WatermarkManager.create(clock, graph, AppliedPTransform::getFullName);
     this.sideInputContainer = SideInputContainer.create(this, graph.getViews());
@@ -347,7 +365,8 @@ class EvaluationContext {
         clock,
         key,
         (CopyOnAccessInMemoryStateInternals) applicationStateInternals.get(stepAndKey),
-        watermarkManager.getWatermarks(application));
+        watermarkManager.getWatermarks(application),
+        spillStore);
   }
 
   /** Get the Step Name for the provided application. */
@@ -379,6 +398,13 @@ class EvaluationContext {
     return metrics;
   }
 
+  /** Releases the resources held by the state of this pipeline after it has terminated. */
+  void cleanup() throws IOException {
+    if (spillStore != null) {
+      spillStore.close();
+    }
+  }
+
   @VisibleForTesting
   void forceRefresh() {
     watermarkManager.refreshAll();
@@ -348,6 +348,11 @@ final class ExecutorServiceParallelExecutor
     } catch (final Exception e) {
       errors.add(e);
     }
+    try {
+      evaluationContext.cleanup();
+    } catch (final Exception e) {
+      errors.add(e);
+    }
     pipelineState.compareAndSet(State.RUNNING, newState); // ensure we hit a terminal node
     if (!errors.isEmpty()) {
       final IllegalStateException exception =
@@ -18,19 +18,24 @@
 package org.apache.beam.runners.direct;
 
 import static org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.base.Preconditions.checkArgument;
+import static org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.base.Preconditions.checkState;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
 import org.apache.beam.runners.core.DoFnRunner;
 import org.apache.beam.runners.core.DoFnRunners;
+import org.apache.beam.runners.core.InMemoryBundleFinalizer;
 import org.apache.beam.runners.core.KeyedWorkItemCoder;
 import org.apache.beam.runners.core.PushbackSideInputDoFnRunner;
 import org.apache.beam.runners.core.ReadyCheckingSideInputReader;
 import org.apache.beam.runners.core.SimplePushbackSideInputDoFnRunner;
 import org.apache.beam.runners.core.StatefulDoFnRunner;
 import org.apache.beam.runners.core.TimerInternals.TimerData;
+import org.apache.beam.runners.core.metrics.MetricUpdates;
 import org.apache.beam.runners.direct.DirectExecutionContext.DirectStepContext;
 import org.apache.beam.runners.local.StructuralKey;
 import org.apache.beam.sdk.coders.Coder;
@@ -48,6 +53,7 @@ import org.apache.beam.sdk.values.TupleTag;
 import org.apache.beam.sdk.values.WindowedValue;
 import org.apache.beam.sdk.values.WindowingStrategy;
 import org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.collect.ImmutableList;
+import org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.collect.Iterables;
 
 @SuppressWarnings({
   "rawtypes", // TODO(https://github.com/apache/beam/issues/20447)
@@ -142,8 +148,50 @@ class ParDoEvaluator<InputT> implements TransformEvaluator<InputT> {
       DoFnSchemaInformation doFnSchemaInformation,
       Map<String, PCollectionView<?>> sideInputMapping,
       DoFnRunnerFactory<InputT, OutputT> runnerFactory) {
+    return create(
+        evaluationContext,
+        options,
+        stepContext,
+        application,
+        inputCoder,
+        windowingStrategy,
+        fn,
+        key,
+        sideInputs,
+        mainOutputTag,
+        additionalOutputTags,
+        outputs,
+        doFnSchemaInformation,
+        sideInputMapping,
+        runnerFactory,
+        Collections.emptyMap());
+  }
+
+  /**
+   * Creates a {@link ParDoEvaluator} which passes the elements output to each of the tags of the
+   * {@code fusedConsumers} directly to the evaluator of that tag instead of adding them to a
+   * bundle.
+   */
+  static <InputT, OutputT> ParDoEvaluator<InputT> create(
+      EvaluationContext evaluationContext,
+      PipelineOptions options,
+      DirectStepContext stepContext,
+      AppliedPTransform<?, ?, ?> application,
+      Coder<InputT> inputCoder,
+      WindowingStrategy<?, ? extends BoundedWindow> windowingStrategy,
+      DoFn<InputT, OutputT> fn,
+      StructuralKey<?> key,
+      List<PCollectionView<?>> sideInputs,
+      TupleTag<OutputT> mainOutputTag,
+      List<TupleTag<?>> additionalOutputTags,
+      Map<TupleTag<?>, PCollection<?>> outputs,
+      DoFnSchemaInformation doFnSchemaInformation,
+      Map<String, PCollectionView<?>> sideInputMapping,
+      DoFnRunnerFactory<InputT, OutputT> runnerFactory,
+      Map<TupleTag<?>, TransformEvaluator<?>> fusedConsumers) {
 
-    BundleOutputManager outputManager = createOutputManager(evaluationContext, key, outputs);
+    BundleOutputManager outputManager =
+        createOutputManager(evaluationContext, key, outputs, fusedConsumers);
 
     ReadyCheckingSideInputReader sideInputReader =
         evaluationContext.createSideInputReader(sideInputs);
@@ -183,8 +231,19 @@ class ParDoEvaluator<InputT> implements TransformEvaluator<InputT> {
       EvaluationContext evaluationContext,
       StructuralKey<?> key,
       Map<TupleTag<?>, PCollection<?>> outputs) {
+    return createOutputManager(evaluationContext, key, outputs, Collections.emptyMap());
+  }
+
+  static BundleOutputManager createOutputManager(
+      EvaluationContext evaluationContext,
+      StructuralKey<?> key,
+      Map<TupleTag<?>, PCollection<?>> outputs,
+      Map<TupleTag<?>, TransformEvaluator<?>> fusedConsumers) {
     Map<TupleTag<?>, UncommittedBundle<?>> outputBundles = new HashMap<>();
     for (Map.Entry<TupleTag<?>, PCollection<?>> outputEntry : outputs.entrySet()) {
+      if (fusedConsumers.containsKey(outputEntry.getKey())) {
+        continue;
+      }
       // Just trust the context's decision as to whether the output should be keyed.
       // The logic for whether this ParDo is key-preserving and whether the input
       // is keyed lives elsewhere.
@@ -196,7 +255,7 @@ class ParDoEvaluator<InputT> implements TransformEvaluator<InputT> {
             outputEntry.getKey(), evaluationContext.createBundle(outputEntry.getValue()));
       }
     }
-    return BundleOutputManager.create(outputBundles);
+    return new BundleOutputManager(outputBundles, fusedConsumers);
   }
 
   ////////////////////////////////////////////////////////////////////////////////////////////////
@@ -270,6 +329,29 @@ class ParDoEvaluator<InputT> implements TransformEvaluator<InputT> {
     } catch (Exception e) {
       throw UserCodeException.wrap(e);
     }
+    List<UncommittedBundle<?>> outputBundles = new ArrayList<>(outputManager.bundles.values());
+    List<InMemoryBundleFinalizer.Finalization> finalizations =
+        new ArrayList<>(stepContext.getAndClearFinalizations());
+    MetricUpdates fusedMetricUpdates = MetricUpdates.EMPTY;
+    for (Map.Entry<TupleTag<?>, TransformEvaluator<?>> fusedConsumer :
+        outputManager.fusedConsumers.entrySet()) {
+      TransformResult<?> fusedResult;
+      try {
+        fusedResult = fusedConsumer.getValue().finishBundle();
+      } catch (Exception e) {
+        throw UserCodeException.wrap(e);
+      }
+      checkState(
+          Iterables.isEmpty(fusedResult.getUnprocessedElements()),
+          "Fused %s for output %s did not process all of its input",
+          fusedResult.getTransform().getFullName(),
+          fusedConsumer.getKey());
+      Iterables.addAll(outputBundles, fusedResult.getOutputBundles());
+      finalizations.addAll(fusedResult.getBundleFinalizations());
+      fusedMetricUpdates =
+          DirectMetrics.combine(fusedMetricUpdates, fusedResult.getLogicalMetricUpdates());
+    }
+
     StepTransformResult.Builder<InputT> resultBuilder;
     CopyOnAccessInMemoryStateInternals state = stepContext.commitState();
     if (state != null) {
@@ -280,28 +362,43 @@ class ParDoEvaluator<InputT> implements TransformEvaluator<InputT> {
       resultBuilder = StepTransformResult.withoutHold(transform);
     }
     return resultBuilder
-        .addOutput(outputManager.bundles.values())
+        .addOutput(outputBundles)
         .withTimerUpdate(stepContext.getTimerUpdate())
         .addUnprocessedElements(unprocessedElements.build())
-        .withBundleFinalizations(stepContext.getAndClearFinalizations())
+        .withBundleFinalizations(finalizations)
+        .withMetricUpdates(fusedMetricUpdates)
         .build();
   }
 
   static class BundleOutputManager implements WindowedValueMultiReceiver {
     private final Map<TupleTag<?>, UncommittedBundle<?>> bundles;
+    private final Map<TupleTag<?>, TransformEvaluator<?>> fusedConsumers;
 
     public static BundleOutputManager create(Map<TupleTag<?>, UncommittedBundle<?>> outputBundles) {
-      return new BundleOutputManager(outputBundles);
+      return new BundleOutputManager(outputBundles, Collections.emptyMap());
     }
 
-    private BundleOutputManager(Map<TupleTag<?>, UncommittedBundle<?>> bundles) {
+    private BundleOutputManager(
+        Map<TupleTag<?>, UncommittedBundle<?>> bundles,
+        Map<TupleTag<?>, TransformEvaluator<?>> fusedConsumers) {
       this.bundles = bundles;
+      this.fusedConsumers = fusedConsumers;
     }
 
     @Override
     public <OutputT> void output(TupleTag<OutputT> tag, WindowedValue<OutputT> output) {
-      checkArgument(bundles.containsKey(tag), "Unknown output tag %s", tag);
-      (bundles.get(tag)).add((WindowedValue) output);
+      UncommittedBundle<?> bundle = bundles.get(tag);
+      if (bundle != null) {
+        bundle.add((WindowedValue) output);
+        return;
+      }
+      TransformEvaluator<?> fusedConsumer = fusedConsumers.get(tag);
+      checkArgument(fusedConsumer != null, "Unknown output tag %s", tag);
+      try {
+        ((TransformEvaluator) fusedConsumer).processElement(output);
+      } catch (Exception e) {
+        throw UserCodeException.wrap(e);
+      }
     }
   }
 }
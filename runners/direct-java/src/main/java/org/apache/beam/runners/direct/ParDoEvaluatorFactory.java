@@ -17,11 +17,16 @@
  */
 package org.apache.beam.runners.direct;
 
+import java.io.Closeable;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import org.apache.beam.runners.core.metrics.MetricsContainerImpl;
 import org.apache.beam.runners.direct.DirectExecutionContext.DirectStepContext;
 import org.apache.beam.runners.direct.ParDoEvaluator.DoFnRunnerFactory;
 import org.apache.beam.runners.local.StructuralKey;
+import org.apache.beam.sdk.metrics.MetricsEnvironment;
 import org.apache.beam.sdk.options.PipelineOptions;
 import org.apache.beam.sdk.runners.AppliedPTransform;
 import org.apache.beam.sdk.transforms.DoFn;
@@ -32,6 +37,7 @@ import org.apache.beam.sdk.values.PCollection;
 import org.apache.beam.sdk.values.PCollectionTuple;
 import org.apache.beam.sdk.values.PCollectionView;
 import org.apache.beam.sdk.values.TupleTag;
+import org.apache.beam.sdk.values.WindowedValue;
 import org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.cache.CacheBuilder;
 import org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.cache.CacheLoader;
 import org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.cache.LoadingCache;
@@ -49,15 +55,26 @@ final class ParDoEvaluatorFactory<InputT, OutputT> implements TransformEvaluator
   private final EvaluationContext evaluationContext;
   private final PipelineOptions options;
   private final ParDoEvaluator.DoFnRunnerFactory<InputT, OutputT> runnerFactory;
+  private final ParDoFusion fusion;
 
   ParDoEvaluatorFactory(
       EvaluationContext evaluationContext,
       DoFnRunnerFactory<InputT, OutputT> runnerFactory,
       CacheLoader<AppliedPTransform<?, ?, ?>, DoFnLifecycleManager> doFnCacheLoader,
       PipelineOptions options) {
+    this(evaluationContext, runnerFactory, doFnCacheLoader, options, ParDoFusion.none());
+  }
+
+  ParDoEvaluatorFactory(
+      EvaluationContext evaluationContext,
+      DoFnRunnerFactory<InputT, OutputT> runnerFactory,
+      CacheLoader<AppliedPTransform<?, ?, ?>, DoFnLifecycleManager> doFnCacheLoader,
+      PipelineOptions options,
+      ParDoFusion fusion) {
     this.evaluationContext = evaluationContext;
     this.options = options;
     this.runnerFactory = runnerFactory;
+    this.fusion = fusion;
     fnClones = CacheBuilder.newBuilder().build(doFnCacheLoader);
   }
 
@@ -74,22 +91,54 @@ final class ParDoEvaluatorFactory<InputT, OutputT> implements TransformEvaluator
   @Override
   public <T> TransformEvaluator<T> forApplication(
       AppliedPTransform<?, ?, ?> application, CommittedBundle<?> inputBundle) throws Exception {
+    return createEvaluator(
+        application, inputBundle.getPCollection(), inputBundle.getKey(), inputBundle);
+  }
 
+  /**
+   * Creates an evaluator for the {@link ParDo} application which processes elements of the {@code
+   * mainInput} that were produced while processing the {@code inputBundle}, together with
+   * evaluators for each {@link ParDo} fused into it.
+   */
+  private <T> TransformEvaluator<T> createEvaluator(
+      AppliedPTransform<?, ?, ?> application,
+      PCollection<?> mainInput,
+      StructuralKey<?> key,
+      CommittedBundle<?> inputBundle)
+      throws Exception {
     @SuppressWarnings({"unchecked", "rawtypes"})
     TransformEvaluator<T> evaluator =
         (TransformEvaluator<T>)
             createEvaluator(
                 (AppliedPTransform) application,
-                (PCollection<InputT>) inputBundle.getPCollection(),
-                inputBundle.getKey(),
+                (PCollection<InputT>) mainInput,
+                key,
                 ParDoTranslation.getSideInputs(application),
                 (TupleTag<OutputT>) ParDoTranslation.getMainOutputTag(application),
                 ParDoTranslation.getAdditionalOutputTags(application).getAll(),
                 ParDoTranslation.getSchemaInformation(application),
-                ParDoTranslation.getSideInputMapping(application));
+                ParDoTranslation.getSideInputMapping(application),
+                createFusedConsumers(application, inputBundle));
     return evaluator;
   }
 
+  /**
+   * Returns an evaluator for each output of the application which is consumed by a fused {@link
+   * ParDo}.
+   */
+  private Map<TupleTag<?>, TransformEvaluator<?>> createFusedConsumers(
+      AppliedPTransform<?, ?, ?> application, CommittedBundle<?> inputBundle) throws Exception {
+    Map<TupleTag<?>, TransformEvaluator<?>> fusedConsumers = new HashMap<>();
+    for (Map.Entry<TupleTag<?>, PCollection<?>> output : application.getOutputs().entrySet()) {
+      AppliedPTransform<?, ?, ?> consumer = fusion.getFusedConsumer(output.getValue());
+      if (consumer != null) {
+        fusedConsumers.put(
+            output.getKey(), new FusedParDoEvaluator<>(consumer, output.getValue(), inputBundle));
+      }
+    }
+    return fusedConsumers;
+  }
+
   @Override
   public void cleanup() throws Exception {
     DoFnLifecycleManagers.removeAllFromManagers(fnClones.asMap().values());
@@ -113,6 +162,30 @@ final class ParDoEvaluatorFactory<InputT, OutputT> implements TransformEvaluator
       DoFnSchemaInformation doFnSchemaInformation,
       Map<String, PCollectionView<?>> sideInputMapping)
       throws Exception {
+    return createEvaluator(
+        application,
+        mainInput,
+        inputBundleKey,
+        sideInputs,
+        mainOutputTag,
+        additionalOutputTags,
+        doFnSchemaInformation,
+        sideInputMapping,
+        Collections.emptyMap());
+  }
+
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  private DoFnLifecycleManagerRemovingTransformEvaluator<InputT> createEvaluator(
+      AppliedPTransform<PCollection<InputT>, PCollectionTuple, ?> application,
+      PCollection<InputT> mainInput,
+      StructuralKey<?> inputBundleKey,
+      List<PCollectionView<?>> sideInputs,
+      TupleTag<OutputT> mainOutputTag,
+      List<TupleTag<?>> additionalOutputTags,
+      DoFnSchemaInformation doFnSchemaInformation,
+      Map<String, PCollectionView<?>> sideInputMapping,
+      Map<TupleTag<?>, TransformEvaluator<?>> fusedConsumers)
+      throws Exception {
     String stepName = evaluationContext.getStepName(application);
     DirectStepContext stepContext =
         evaluationContext.getExecutionContext(application, inputBundleKey).getStepContext(stepName);
@@ -131,7 +204,8 @@ final class ParDoEvaluatorFactory<InputT, OutputT> implements TransformEvaluator
             fnManager.get(),
             doFnSchemaInformation,
             sideInputMapping,
-            fnManager),
+            fnManager,
+            fusedConsumers),
         fnManager);
   }
 
@@ -146,7 +220,8 @@ final class ParDoEvaluatorFactory<InputT, OutputT> implements TransformEvaluator
       DoFn<InputT, OutputT> fn,
       DoFnSchemaInformation doFnSchemaInformation,
       Map<String, PCollectionView<?>> sideInputMapping,
-      DoFnLifecycleManager fnManager)
+      DoFnLifecycleManager fnManager,
+      Map<TupleTag<?>, TransformEvaluator<?>> fusedConsumers)
       throws Exception {
     try {
       return ParDoEvaluator.create(
@@ -164,7 +239,8 @@ final class ParDoEvaluatorFactory<InputT, OutputT> implements TransformEvaluator
           application.getOutputs(),
           doFnSchemaInformation,
           sideInputMapping,
-          runnerFactory);
+          runnerFactory,
+          fusedConsumers);
     } catch (Exception e) {
       try {
         fnManager.remove();
@@ -177,4 +253,54 @@ final class ParDoEvaluatorFactory<InputT, OutputT> implements TransformEvaluator
       throw e;
     }
   }
+
+  /**
+   * Evaluates a fused {@link ParDo} with the elements output by the {@link ParDo} producing its
+   * input. The metrics of the fused {@link ParDo} are reported for its own step, and its physical
+   * metrics are committed with the bundle processed by the producing {@link ParDo}.
+   */
+  private class FusedParDoEvaluator<T> implements TransformEvaluator<T> {
+    private final CommittedBundle<?> inputBundle;
+    private final MetricsContainerImpl metricsContainer;
+    private final TransformEvaluator<T> evaluator;
+
+    FusedParDoEvaluator(
+        AppliedPTransform<?, ?, ?> application,
+        PCollection<?> mainInput,
+        CommittedBundle<?> inputBundle)
+        throws Exception {
+      this.inputBundle = inputBundle;
+      this.metricsContainer = new MetricsContainerImpl(application.getFullName());
+      // Fused outputs are only keyed if the outputs of the producing ParDo would be.
+      StructuralKey<?> key =
+          evaluationContext.isKeyed(mainInput) ? inputBundle.getKey() : StructuralKey.empty();
+      TransformEvaluator<T> parDoEvaluator;
+      try (Closeable metricsScope = MetricsEnvironment.scopedMetricsContainer(metricsContainer)) {
+        parDoEvaluator = createEvaluator(application, mainInput, key, inputBundle);
+      }
+      this.evaluator = parDoEvaluator;
+    }
+
+    @Override
+    public void processElement(WindowedValue<T> element) throws Exception {
+      try (Closeable metricsScope = MetricsEnvironment.scopedMetricsContainer(metricsContainer)) {
+        evaluator.processElement(element);
+      }
+    }
+
+    @Override
+    public TransformResult<T> finishBundle() throws Exception {
+      TransformResult<T> result;
+      try (Closeable metricsScope = MetricsEnvironment.scopedMetricsContainer(metricsContainer)) {
+        result = evaluator.finishBundle();
+      } finally {
+        evaluationContext
+            .getMetrics()
+            .commitPhysical(inputBundle, metricsContainer.getCumulative());
+      }
+      return result.withLogicalMetricUpdates(
+          DirectMetrics.combine(
+              result.getLogicalMetricUpdates(), metricsContainer.getCumulative()));
+    }
+  }
 }
@@ -0,0 +1,109 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.runners.direct;
+
+import static org.apache.beam.sdk.util.construction.PTransformTranslation.PAR_DO_TRANSFORM_URN;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.beam.sdk.runners.AppliedPTransform;
+import org.apache.beam.sdk.transforms.DoFn;
+import org.apache.beam.sdk.transforms.ParDo;
+import org.apache.beam.sdk.transforms.reflect.DoFnSignature;
+import org.apache.beam.sdk.transforms.reflect.DoFnSignatures;
+import org.apache.beam.sdk.util.construction.PTransformTranslation;
+import org.apache.beam.sdk.values.PCollection;
+import org.apache.beam.sdk.values.PValue;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Determines which {@link ParDo ParDos} are executed by the evaluator of the {@link ParDo} that
+ * produces their input when {@link DirectOptions#isFuseParDos()} is set.
+ *
+ * <p>A {@link ParDo} is fused into the {@link ParDo} producing its input if it is the only consumer
+ * of that {@link PCollection}, has no side inputs, and its {@link DoFn} does not use state or
+ * timers and does not require stable input. Elements of a fused {@link PCollection} are passed
+ * directly between the two {@link DoFn DoFns} without being committed to a bundle, so they are not
+ * checked by any model enforcement.
+ */
+class ParDoFusion {
+  private static final ParDoFusion NONE = new ParDoFusion(Collections.emptyMap());
+
+  private final Map<PCollection<?>, AppliedPTransform<?, ?, ?>> fusedConsumers;
+
+  /** Returns a {@link ParDoFusion} which does not fuse any {@link ParDo}. */
+  static ParDoFusion none() {
+    return NONE;
+  }
+
+  /** Returns a {@link ParDoFusion} which fuses all eligible {@link ParDo ParDos} of the graph. */
+  static ParDoFusion of(DirectGraph graph) {
+    Map<PCollection<?>, AppliedPTransform<?, ?, ?>> fusedConsumers = new HashMap<>();
+    for (AppliedPTransform<?, ?, ?> producer : graph.getExecutables()) {
+      if (!isParDo(producer)) {
+        continue;
+      }
+      for (PValue produced : graph.getProduced(producer)) {
+        List<AppliedPTransform<?, ?, ?>> consumers = graph.getPerElementConsumers(produced);
+        if (produced instanceof PCollection
+            && consumers.size() == 1
+            && graph.getPerElementInputs(consumers.get(0)).size() == 1
+            && isFusible(consumers.get(0))) {
+          fusedConsumers.put((PCollection<?>) produced, consumers.get(0));
+        }
+      }
+    }
+    return new ParDoFusion(fusedConsumers);
+  }
+
+  private ParDoFusion(Map<PCollection<?>, AppliedPTransform<?, ?, ?>> fusedConsumers) {
+    this.fusedConsumers = fusedConsumers;
+  }
+
+  /**
+   * Returns the {@link ParDo} which processes the elements of the {@link PCollection} as they are
+   * output, or {@code null} if the elements are committed to a bundle.
+   */
+  @Nullable
+  AppliedPTransform<?, ?, ?> getFusedConsumer(PCollection<?> pCollection) {
+    return fusedConsumers.get(pCollection);
+  }
+
+  private static boolean isParDo(AppliedPTransform<?, ?, ?> application) {
+    return application.getTransform() instanceof ParDo.MultiOutput
+        && PAR_DO_TRANSFORM_URN.equals(
+            PTransformTranslation.urnForTransformOrNull(application.getTransform()));
+  }
+
+  private static boolean isFusible(AppliedPTransform<?, ?, ?> consumer) {
+    if (!isParDo(consumer)) {
+      return false;
+    }
+    ParDo.MultiOutput<?, ?> parDo = (ParDo.MultiOutput<?, ?>) consumer.getTransform();
+    if (!parDo.getSideInputs().isEmpty()) {
+      return false;
+    }
+    DoFnSignature signature = DoFnSignatures.signatureForDoFn(parDo.getFn());
+    return !signature.usesState()
+        && !signature.usesTimers()
+        && !signature.isSplittable()
+        && !signature.processElement().requiresStableInput();
+  }
+}
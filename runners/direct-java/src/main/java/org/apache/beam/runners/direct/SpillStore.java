@@ -0,0 +1,378 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.runners.direct;
+
+import static org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.base.Preconditions.checkState;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.annotations.VisibleForTesting;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Tracks the bytes of state the {@link DirectRunner} keeps on the heap against a memory budget, and
+ * stores state spilled to local disk once that budget is exceeded.
+ *
+ * <p>When the budget is exceeded, the registered {@link Spillable} state is spilled largest first
+ * until the state on the heap is back under half of the budget, so that a single large bag is
+ * spilled in few large writes rather than every bag spilling a few elements at a time.
+ *
+ * <p>Spilled bytes are written to a single temporary file and are never modified while a {@link
+ * Segment} refers to them, so copies of state and readers of state may share them. Once a {@link
+ * Segment} is no longer reachable its bytes are reused by later writes. The file is deleted when
+ * the store is closed.
+ */
+@SuppressWarnings({
+  "nullness" // TODO(https://github.com/apache/beam/issues/20497)
+})
+class SpillStore implements AutoCloseable {
+  private static final String FILE_PREFIX = "direct-runner-state";
+  private static final String FILE_SUFFIX = ".spill";
+  private static final int READ_BUFFER_BYTES = 64 * 1024;
+
+  private final long memoryBudgetBytes;
+  private final @Nullable Path directory;
+  private final AtomicLong heapBytes;
+  // Guarded by itself. Weakly referenced, as state which is no longer used is simply dropped.
+  private final Set<Spillable> spillables = Collections.newSetFromMap(new WeakHashMap<>());
+  // Held while spilling, so that concurrent reservations don't all spill at once.
+  private final ReentrantLock spillLock = new ReentrantLock();
+  // Enqueues the references of segments which are no longer reachable.
+  private final ReferenceQueue<Segment> unreachableSegments = new ReferenceQueue<>();
+  // Guarded by this.
+  private @Nullable FileChannel channel;
+  private long fileBytes;
+  private boolean closed;
+  // Keeps the references of written segments reachable until they are enqueued.
+  private final Set<SegmentReference> segmentReferences = new HashSet<>();
+  // The unused ranges of the spill file, from their position to their length.
+  private final TreeMap<Long, Long> freeRanges = new TreeMap<>();
+
+  /**
+   * Creates a {@link SpillStore} which spills state to a file in the provided directory, or in the
+   * default temporary-file directory if it is {@code null}.
+   */
+  public static SpillStore create(long memoryBudgetBytes, @Nullable String directory) {
+    return new SpillStore(memoryBudgetBytes, directory == null ? null : Paths.get(directory));
+  }
+
+  private SpillStore(long memoryBudgetBytes, @Nullable Path directory) {
+    this.memoryBudgetBytes = memoryBudgetBytes;
+    this.directory = directory;
+    this.heapBytes = new AtomicLong();
+  }
+
+  /** Registers state which may be spilled to make room on the heap. */
+  public void register(Spillable spillable) {
+    synchronized (spillables) {
+      spillables.add(spillable);
+    }
+  }
+
+  /**
+   * Accounts for additional bytes of state kept on the heap. If the state on the heap exceeds the
+   * memory budget, spills the largest registered state until it no longer exceeds half of it.
+   *
+   * <p>Must not be called while holding the lock of a {@link Spillable}, as spilling acquires the
+   * locks of the spilled state.
+   */
+  public void reserve(long bytes) {
+    if (heapBytes.addAndGet(bytes) <= memoryBudgetBytes || !spillLock.tryLock()) {
+      // Either within the budget, or another caller is already spilling.
+      return;
+    }
+    try {
+      List<Spillable> candidates;
+      synchronized (spillables) {
+        candidates = new ArrayList<>(spillables);
+      }
+      // Snapshot the sizes, as they may change while sorting.
+      List<Map.Entry<Spillable, Long>> sized = new ArrayList<>(candidates.size());
+      for (Spillable candidate : candidates) {
+        long reserved = candidate.getReservedBytes();
+        if (reserved > 0) {
+          sized.add(new AbstractMap.SimpleImmutableEntry<>(candidate, reserved));
+        }
+      }
+      sized.sort(Map.Entry.<Spillable, Long>comparingByValue(Comparator.reverseOrder()));
+      long lowWatermark = memoryBudgetBytes / 2;
+      for (Map.Entry<Spillable, Long> candidate : sized) {
+        if (heapBytes.get() <= lowWatermark) {
+          break;
+        }
+        candidate.getKey().spill();
+      }
+    } finally {
+      spillLock.unlock();
+    }
+  }
+
+  /** Accounts for bytes of state which are no longer kept on the heap. */
+  public void release(long bytes) {
+    heapBytes.addAndGet(-bytes);
+  }
+
+  /** Returns the number of bytes of state currently accounted for on the heap. */
+  @VisibleForTesting
+  long getHeapBytes() {
+    return heapBytes.get();
+  }
+
+  /**
+   * Writes the first {@code length} bytes to the spill file, reusing the bytes of unreachable
+   * segments where possible.
+   */
+  public synchronized Segment write(byte[] bytes, int length) throws IOException {
+    checkState(!closed, "Can't spill state to a closed %s", getClass().getSimpleName());
+    if (channel == null) {
+      Path file =
+          directory == null
+              ? Files.createTempFile(FILE_PREFIX, FILE_SUFFIX)
+              : Files.createTempFile(directory, FILE_PREFIX, FILE_SUFFIX);
+      file.toFile().deleteOnExit();
+      channel =
+          FileChannel.open(
+              file,
+              StandardOpenOption.READ,
+              StandardOpenOption.WRITE,
+              StandardOpenOption.DELETE_ON_CLOSE);
+    }
+    reclaimUnreachableSegments();
+    long position = allocate(length);
+    ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, length);
+    long offset = position;
+    while (buffer.hasRemaining()) {
+      offset += channel.write(buffer, offset);
+    }
+    fileBytes = Math.max(fileBytes, offset);
+    Segment segment = new Segment(position, length);
+    if (length > 0) {
+      segmentReferences.add(new SegmentReference(segment, unreachableSegments));
+    }
+    return segment;
+  }
+
+  /** Returns the position of the first free range of at least {@code length} bytes. */
+  private long allocate(int length) {
+    if (length > 0) {
+      for (Map.Entry<Long, Long> range : freeRanges.entrySet()) {
+        if (range.getValue() >= length) {
+          long position = range.getKey();
+          freeRanges.remove(position);
+          if (range.getValue() > length) {
+            freeRanges.put(position + length, range.getValue() - length);
+          }
+          return position;
+        }
+      }
+    }
+    return fileBytes;
+  }
+
+  /** Frees the bytes of the segments which are no longer reachable. Returns their number. */
+  @VisibleForTesting
+  synchronized long reclaimUnreachableSegments() throws IOException {
+    long reclaimed = 0;
+    for (Reference<? extends Segment> reference = unreachableSegments.poll();
+        reference != null;
+        reference = unreachableSegments.poll()) {
+      SegmentReference segment = (SegmentReference) reference;
+      segmentReferences.remove(segment);
+      free(segment.position, segment.length);
+      reclaimed += segment.length;
+    }
+    if (reclaimed > 0 && channel != null) {
+      // Return a free range at the end of the file to the file system.
+      Map.Entry<Long, Long> last = freeRanges.lastEntry();
+      if (last != null && last.getKey() + last.getValue() == fileBytes) {
+        freeRanges.remove(last.getKey());
+        fileBytes = last.getKey();
+        channel.truncate(fileBytes);
+      }
+    }
+    return reclaimed;
+  }
+
+  /** Adds a range to the free ranges, merging it with adjacent free ranges. */
+  private void free(long position, long length) {
+    Long next = freeRanges.remove(position + length);
+    if (next != null) {
+      length += next;
+    }
+    Map.Entry<Long, Long> previous = freeRanges.floorEntry(position);
+    if (previous != null && previous.getKey() + previous.getValue() == position) {
+      position = previous.getKey();
+      length += previous.getValue();
+    }
+    freeRanges.put(position, length);
+  }
+
+  /** Returns the number of bytes of the spill file, including its free ranges. */
+  @VisibleForTesting
+  synchronized long getFileBytes() {
+    return fileBytes;
+  }
+
+  /** Returns a stream of the bytes of a {@link Segment} returned by {@link #write}. */
+  public InputStream read(Segment segment) {
+    return new SegmentInputStream(getChannel(), segment);
+  }
+
+  private synchronized FileChannel getChannel() {
+    checkState(!closed, "Can't read spilled state from a closed %s", getClass().getSimpleName());
+    return channel;
+  }
+
+  /** Deletes the spill file. Spilled state can't be read after the store is closed. */
+  @Override
+  public synchronized void close() throws IOException {
+    closed = true;
+    if (channel != null) {
+      channel.close();
+      channel = null;
+    }
+  }
+
+  /** State which keeps bytes on the heap that it can spill to a {@link SpillStore}. */
+  interface Spillable {
+    /** Returns the bytes this state reserved with {@link SpillStore#reserve}. */
+    long getReservedBytes();
+
+    /** Spills the state kept on the heap and releases its reserved bytes. */
+    void spill();
+  }
+
+  /**
+   * A range of bytes within the spill file. The bytes are reused once the segment is no longer
+   * reachable, so anything reading them must keep the segment reachable.
+   */
+  public static final class Segment {
+    private final long position;
+    private final int length;
+
+    private Segment(long position, int length) {
+      this.position = position;
+      this.length = length;
+    }
+  }
+
+  /** Refers to the range of a written {@link Segment} once the segment itself is unreachable. */
+  private static class SegmentReference extends PhantomReference<Segment> {
+    private final long position;
+    private final int length;
+
+    private SegmentReference(Segment segment, ReferenceQueue<Segment> queue) {
+      super(segment, queue);
+      this.position = segment.position;
+      this.length = segment.length;
+    }
+  }
+
+  /**
+   * An {@link InputStream} over a {@link Segment} which uses positional reads, so concurrent
+   * readers don't interfere with each other or with writers.
+   */
+  private static class SegmentInputStream extends InputStream {
+    private final FileChannel channel;
+    // Keeps the bytes being read from being reused.
+    @SuppressWarnings("unused")
+    private final Segment segment;
+
+    private final ByteBuffer buffer;
+    private long position;
+    private final long end;
+
+    private SegmentInputStream(FileChannel channel, Segment segment) {
+      this.channel = channel;
+      this.segment = segment;
+      this.buffer = ByteBuffer.allocate(Math.min(READ_BUFFER_BYTES, segment.length));
+      this.buffer.flip();
+      this.position = segment.position;
+      this.end = segment.position + segment.length;
+    }
+
+    @Override
+    public int read() throws IOException {
+      if (!fill()) {
+        return -1;
+      }
+      return buffer.get() & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (len == 0) {
+        return 0;
+      }
+      if (!fill()) {
+        return -1;
+      }
+      int read = Math.min(len, buffer.remaining());
+      buffer.get(b, off, read);
+      return read;
+    }
+
+    @Override
+    public int available() {
+      return (int) Math.min(Integer.MAX_VALUE, buffer.remaining() + end - position);
+    }
+
+    /** Reads more bytes of the segment if the buffer is exhausted. Returns false at its end. */
+    private boolean fill() throws IOException {
+      if (buffer.hasRemaining()) {
+        return true;
+      }
+      if (position >= end) {
+        return false;
+      }
+      buffer.clear();
+      buffer.limit((int) Math.min(buffer.capacity(), end - position));
+      while (buffer.hasRemaining()) {
+        int read = channel.read(buffer, position);
+        if (read < 0) {
+          throw new IOException(
+              String.format("Spill file ended %d bytes before the spilled state", end - position));
+        }
+        position += read;
+      }
+      buffer.flip();
+      return true;
+    }
+  }
+}
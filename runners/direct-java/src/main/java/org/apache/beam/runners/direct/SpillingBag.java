@@ -0,0 +1,235 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.runners.direct;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.Supplier;
+import org.apache.beam.runners.core.InMemoryStateInternals.InMemoryBag;
+import org.apache.beam.runners.core.InMemoryStateInternals.InMemoryState;
+import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.state.BagState;
+import org.apache.beam.sdk.state.ReadableState;
+import org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.collect.Iterables;
+
+/**
+ * A {@link BagState} which keeps added elements on the heap until the {@link SpillStore} spills
+ * them to disk to stay within its memory budget.
+ *
+ * <p>Unlike an {@link InMemoryBag}, elements are kept on the heap in their encoded form, so each
+ * element is encoded once when it is added and its encoding is both what is accounted for in the
+ * {@link SpillStore} and what is spilled. Elements are decoded lazily whenever the bag is read.
+ *
+ * <p>Spilled elements are shared rather than copied by {@link #copy()}. The copy takes over the
+ * reservation of the elements kept on the heap, as the {@link CopyOnAccessInMemoryStateInternals}
+ * discard the state they copy from when they are committed.
+ *
+ * <p>The bag may be spilled by any thread adding state to the same {@link SpillStore}, so all of
+ * its methods synchronize on it, and reads iterate over a snapshot of its contents.
+ */
+@SuppressWarnings({
+  "nullness" // TODO(https://github.com/apache/beam/issues/20497)
+})
+class SpillingBag<T> implements BagState<T>, InMemoryState<SpillingBag<T>>, SpillStore.Spillable {
+  private final Coder<T> elemCoder;
+  private final SpillStore spillStore;
+  // Guarded by this. Replaced rather than modified, so that earlier reads remain stable.
+  private List<SpilledElements> spilled = new ArrayList<>();
+  // Guarded by this. Only ever appended to until it is replaced.
+  private HeapElements contents = new HeapElements();
+  private long reservedBytes;
+
+  SpillingBag(Coder<T> elemCoder, SpillStore spillStore) {
+    this.elemCoder = elemCoder;
+    this.spillStore = spillStore;
+    spillStore.register(this);
+  }
+
+  @Override
+  public synchronized void clear() {
+    // Swap in new contents rather than clearing the existing ones, as the result of an earlier read
+    // must remain stable. See InMemoryBag#clear(). Spilled segments which are no longer read are
+    // reused by the SpillStore.
+    spillStore.release(reservedBytes);
+    spilled = new ArrayList<>();
+    contents = new HeapElements();
+    reservedBytes = 0;
+  }
+
+  @Override
+  public SpillingBag<T> readLater() {
+    return this;
+  }
+
+  @Override
+  public synchronized Iterable<T> read() {
+    List<SpilledElements> spilledView = spilled;
+    byte[] heapBytes = contents.buffer();
+    int heapLength = contents.size();
+    int heapElements = contents.elements;
+    return Iterables.concat(
+        Iterables.concat(
+            Iterables.transform(
+                spilledView,
+                elements ->
+                    decode(() -> spillStore.read(elements.segment), elements.count))),
+        decode(() -> new ByteArrayInputStream(heapBytes, 0, heapLength), heapElements));
+  }
+
+  @Override
+  public void add(T input) {
+    long bytes;
+    synchronized (this) {
+      int before = contents.size();
+      try {
+        elemCoder.encode(input, contents);
+      } catch (IOException e) {
+        contents.truncate(before);
+        throw new UncheckedIOException(e);
+      }
+      contents.elements += 1;
+      bytes = contents.size() - before;
+      reservedBytes += bytes;
+    }
+    // Reserved without holding the lock, as exceeding the budget spills other bags.
+    spillStore.reserve(bytes);
+  }
+
+  @Override
+  public synchronized boolean isCleared() {
+    return spilled.isEmpty() && contents.elements == 0;
+  }
+
+  @Override
+  public ReadableState<Boolean> isEmpty() {
+    return new ReadableState<Boolean>() {
+      @Override
+      public ReadableState<Boolean> readLater() {
+        return this;
+      }
+
+      @Override
+      public Boolean read() {
+        return isCleared();
+      }
+    };
+  }
+
+  @Override
+  public synchronized SpillingBag<T> copy() {
+    SpillingBag<T> that = new SpillingBag<>(elemCoder, spillStore);
+    that.spilled = spilled;
+    that.contents = contents.copy();
+    that.reservedBytes = reservedBytes;
+    reservedBytes = 0;
+    return that;
+  }
+
+  @Override
+  public synchronized long getReservedBytes() {
+    return reservedBytes;
+  }
+
+  /** Writes the elements kept on the heap to the {@link SpillStore}. */
+  @Override
+  public synchronized void spill() {
+    if (contents.elements == 0) {
+      return;
+    }
+    try {
+      SpillStore.Segment segment = spillStore.write(contents.buffer(), contents.size());
+      List<SpilledElements> newSpilled = new ArrayList<>(spilled.size() + 1);
+      newSpilled.addAll(spilled);
+      newSpilled.add(new SpilledElements(segment, contents.elements));
+      spilled = newSpilled;
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    spillStore.release(reservedBytes);
+    // Swapped rather than cleared for the same reason as in clear().
+    contents = new HeapElements();
+    reservedBytes = 0;
+  }
+
+  private Iterable<T> decode(Supplier<InputStream> encodedElements, int count) {
+    return () ->
+        new Iterator<T>() {
+          private final InputStream encoded = encodedElements.get();
+          private int remaining = count;
+
+          @Override
+          public boolean hasNext() {
+            return remaining > 0;
+          }
+
+          @Override
+          public T next() {
+            if (remaining <= 0) {
+              throw new NoSuchElementException();
+            }
+            remaining -= 1;
+            try {
+              return elemCoder.decode(encoded);
+            } catch (IOException e) {
+              throw new UncheckedIOException(e);
+            }
+          }
+        };
+  }
+
+  /** The encoded elements kept on the heap, which exposes its buffer to avoid copying it. */
+  private static class HeapElements extends ByteArrayOutputStream {
+    private int elements;
+
+    private byte[] buffer() {
+      return buf;
+    }
+
+    /** Discards the bytes written after the first {@code size} bytes. */
+    private void truncate(int size) {
+      count = size;
+    }
+
+    private HeapElements copy() {
+      HeapElements that = new HeapElements();
+      that.buf = Arrays.copyOf(buf, count);
+      that.count = count;
+      that.elements = elements;
+      return that;
+    }
+  }
+
+  /** A number of elements spilled to a {@link SpillStore.Segment}. */
+  private static class SpilledElements {
+    private final SpillStore.Segment segment;
+    private final int count;
+
+    private SpilledElements(SpillStore.Segment segment, int count) {
+      this.segment = segment;
+      this.count = count;
+    }
+  }
+}
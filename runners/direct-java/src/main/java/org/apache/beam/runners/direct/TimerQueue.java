@@ -0,0 +1,209 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.runners.direct;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import org.apache.beam.runners.core.TimerInternals.TimerData;
+import org.apache.beam.runners.local.StructuralKey;
+import org.apache.beam.sdk.transforms.windowing.BoundedWindow;
+import org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.collect.SortedMultiset;
+import org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.collect.TreeMultiset;
+import org.joda.time.Instant;
+
+/**
+ * The timers which have been set for the keys of a transform and have not yet been extracted to
+ * fire.
+ *
+ * <p>The timers of each key are ordered by their firing timestamp, and the keys are ordered in a
+ * binary min-heap by their earliest timer. Extracting the timers to fire therefore only visits the
+ * keys which have timers to fire, and the earliest output timestamp is tracked separately, so
+ * neither has to scan every key with pending timers.
+ *
+ * <p>A {@link TimerQueue} is not thread-safe.
+ */
+@SuppressWarnings({
+  "nullness" // TODO(https://github.com/apache/beam/issues/20497)
+})
+class TimerQueue {
+  private final Map<StructuralKey<?>, KeyTimers> keyTimers;
+  private final SortedMultiset<Instant> outputTimestamps;
+  private KeyTimers[] heap;
+  private int size;
+
+  TimerQueue() {
+    this.keyTimers = new HashMap<>();
+    this.outputTimestamps = TreeMultiset.create();
+    this.heap = new KeyTimers[16];
+  }
+
+  boolean isEmpty() {
+    return size == 0;
+  }
+
+  /** Adds the timer for the key. Returns {@code false} if the timer was already present. */
+  boolean add(StructuralKey<?> key, TimerData timer) {
+    KeyTimers timers = keyTimers.computeIfAbsent(key, KeyTimers::new);
+    boolean newKey = timers.timers.isEmpty();
+    if (!timers.timers.add(timer)) {
+      return false;
+    }
+    outputTimestamps.add(timer.getOutputTimestamp());
+    if (newKey) {
+      push(timers);
+    } else if (timers.timers.first() == timer) {
+      siftUp(timers.heapIndex);
+    }
+    return true;
+  }
+
+  /** Removes the timer for the key. Returns {@code false} if the timer was not present. */
+  boolean remove(StructuralKey<?> key, TimerData timer) {
+    KeyTimers timers = keyTimers.get(key);
+    if (timers == null) {
+      return false;
+    }
+    boolean wasEarliest = timers.timers.first().compareTo(timer) == 0;
+    if (!timers.timers.remove(timer)) {
+      return false;
+    }
+    outputTimestamps.remove(timer.getOutputTimestamp());
+    if (timers.timers.isEmpty()) {
+      keyTimers.remove(key);
+      removeAt(timers.heapIndex);
+    } else if (wasEarliest) {
+      siftDown(timers.heapIndex);
+    }
+    return true;
+  }
+
+  /**
+   * Returns the earliest output timestamp of all of the timers, or {@link
+   * BoundedWindow#TIMESTAMP_MAX_VALUE} if there are none.
+   */
+  Instant getEarliestOutputTimestamp() {
+    return outputTimestamps.isEmpty()
+        ? BoundedWindow.TIMESTAMP_MAX_VALUE
+        : outputTimestamps.firstEntry().getElement();
+  }
+
+  /**
+   * Removes all of the timers with a timestamp before {@code latestTime}, and returns them grouped
+   * by key. The timers of each key are ordered from earliest to latest.
+   */
+  Map<StructuralKey<?>, List<TimerData>> extractFiredTimers(Instant latestTime) {
+    Map<StructuralKey<?>, List<TimerData>> result = new HashMap<>();
+    while (size > 0 && heap[0].timers.first().getTimestamp().isBefore(latestTime)) {
+      KeyTimers timers = heap[0];
+      List<TimerData> keyFiredTimers = new ArrayList<>();
+      while (!timers.timers.isEmpty()
+          && timers.timers.first().getTimestamp().isBefore(latestTime)) {
+        TimerData timer = timers.timers.pollFirst();
+        outputTimestamps.remove(timer.getOutputTimestamp());
+        keyFiredTimers.add(timer);
+      }
+      result.put(timers.key, keyFiredTimers);
+      if (timers.timers.isEmpty()) {
+        keyTimers.remove(timers.key);
+        removeAt(0);
+      } else {
+        siftDown(0);
+      }
+    }
+    return result;
+  }
+
+  private void push(KeyTimers timers) {
+    if (size == heap.length) {
+      heap = Arrays.copyOf(heap, size * 2);
+    }
+    heap[size] = timers;
+    timers.heapIndex = size;
+    size += 1;
+    siftUp(size - 1);
+  }
+
+  private void removeAt(int index) {
+    size -= 1;
+    KeyTimers last = heap[size];
+    heap[size] = null;
+    if (index < size) {
+      place(last, index);
+      siftDown(index);
+      if (heap[index] == last) {
+        siftUp(index);
+      }
+    }
+  }
+
+  private void siftUp(int index) {
+    KeyTimers timers = heap[index];
+    while (index > 0) {
+      int parent = (index - 1) >>> 1;
+      if (compare(heap[parent], timers) <= 0) {
+        break;
+      }
+      place(heap[parent], index);
+      index = parent;
+    }
+    place(timers, index);
+  }
+
+  private void siftDown(int index) {
+    KeyTimers timers = heap[index];
+    int half = size >>> 1;
+    while (index < half) {
+      int child = 2 * index + 1;
+      if (child + 1 < size && compare(heap[child + 1], heap[child]) < 0) {
+        child += 1;
+      }
+      if (compare(timers, heap[child]) <= 0) {
+        break;
+      }
+      place(heap[child], index);
+      index = child;
+    }
+    place(timers, index);
+  }
+
+  private void place(KeyTimers timers, int index) {
+    heap[index] = timers;
+    timers.heapIndex = index;
+  }
+
+  private static int compare(KeyTimers first, KeyTimers second) {
+    return first.timers.first().compareTo(second.timers.first());
+  }
+
+  /** The timers of a single key, and the position of the key in the heap. */
+  private static class KeyTimers {
+    private final StructuralKey<?> key;
+    private final NavigableSet<TimerData> timers;
+    private int heapIndex;
+
+    private KeyTimers(StructuralKey<?> key) {
+      this.key = key;
+      this.timers = new TreeSet<>();
+    }
+  }
+}
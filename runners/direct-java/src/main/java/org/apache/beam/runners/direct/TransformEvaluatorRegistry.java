@@ -43,6 +43,7 @@ import org.apache.beam.sdk.Pipeline;
 import org.apache.beam.sdk.options.PipelineOptions;
 import org.apache.beam.sdk.runners.AppliedPTransform;
 import org.apache.beam.sdk.transforms.PTransform;
+import org.apache.beam.sdk.transforms.ParDo;
 import org.apache.beam.sdk.util.construction.PTransformTranslation;
 import org.apache.beam.sdk.util.construction.PTransformTranslation.TransformPayloadTranslator;
 import org.apache.beam.sdk.util.construction.TransformPayloadTranslatorRegistrar;
@@ -70,6 +71,16 @@ class TransformEvaluatorRegistry {
    */
   public static TransformEvaluatorRegistry javaSdkNativeRegistry(
       EvaluationContext ctxt, PipelineOptions options) {
+    return javaSdkNativeRegistry(ctxt, options, ParDoFusion.none());
+  }
+
+  /**
+   * Create the {@link TransformEvaluatorRegistry} that executes a {@link Pipeline} written with the
+   * Java SDK by directly invoking the classes of that SDK, executing the {@link ParDo ParDos}
+   * fused by the {@link ParDoFusion} within the evaluator of their producer.
+   */
+  static TransformEvaluatorRegistry javaSdkNativeRegistry(
+      EvaluationContext ctxt, PipelineOptions options, ParDoFusion fusion) {
     ImmutableMap<String, TransformEvaluatorFactory> primitives =
         ImmutableMap.<String, TransformEvaluatorFactory>builder()
             // Beam primitives
@@ -80,7 +91,8 @@ class TransformEvaluatorRegistry {
                     ctxt,
                     ParDoEvaluator.defaultRunnerFactory(),
                     ParDoEvaluatorFactory.basicDoFnCacheLoader(),
-                    options))
+                    options,
+                    fusion))
             .put(FLATTEN_TRANSFORM_URN, new FlattenEvaluatorFactory(ctxt))
             .put(ASSIGN_WINDOWS_TRANSFORM_URN, new WindowEvaluatorFactory(ctxt))
             .put(IMPULSE_TRANSFORM_URN, new ImpulseEvaluatorFactory(ctxt))
@@ -163,7 +163,7 @@ class WatermarkManager<ExecutableT, CollectionT> {
   }
 
   /** The result of computing a {@link Watermark}. */
-  private enum WatermarkUpdate {
+  enum WatermarkUpdate {
     /** The watermark is later than the value at the previous time it was computed. */
     ADVANCED(true),
     /** The watermark is equal to the value at the previous time it was computed. */
@@ -228,19 +228,22 @@ class WatermarkManager<ExecutableT, CollectionT> {
     private final Collection<? extends Watermark> inputWatermarks;
     private final SortedMultiset<Bundle<?, ?>> pendingElements;
 
-    // This tracks only the quantity of timers at each timestamp, for quickly getting the cross-key
-    // minimum
-    private final SortedMultiset<TimerData> pendingTimers;
+    // The timers which have been set and not completed, including timers which have fired
+    private final PendingTimers pendingTimers;
 
     // Entries in this table represent the authoritative timestamp for which
     // a per-key-and-StateNamespace timer is set.
     private final Map<StructuralKey<?>, Map<String, TimerData>> existingTimers;
 
-    // This per-key sorted set allows quick retrieval of timers that should fire for a key
-    private final Map<StructuralKey<?>, NavigableSet<TimerData>> objectTimers;
+    // The timers which have been set and not yet fired, indexed by key
+    private final TimerQueue eventTimeTimers;
 
     private final AtomicReference<Instant> currentWatermark;
 
+    // The earliest output timestamp of the pending timers, which is read when refreshing the output
+    // watermark without synchronizing with timer updates.
+    private volatile Instant earliestTimerTimestamp;
+
     private final Consumer<TimerData> timerUpdateNotification;
 
     public AppliedPTransformInputWatermark(
@@ -259,10 +262,11 @@ class WatermarkManager<ExecutableT, CollectionT> {
       Ordering<Bundle<?, ?>> pendingBundleComparator =
           new BundleByElementTimestampComparator().compound(Ordering.arbitrary());
       this.pendingElements = TreeMultiset.create(pendingBundleComparator);
-      this.pendingTimers = TreeMultiset.create();
-      this.objectTimers = new HashMap<>();
+      this.pendingTimers = new PendingTimers();
+      this.eventTimeTimers = new TimerQueue();
       this.existingTimers = new HashMap<>();
       this.currentWatermark = new AtomicReference<>(BoundedWindow.TIMESTAMP_MIN_VALUE);
+      this.earliestTimerTimestamp = BoundedWindow.TIMESTAMP_MAX_VALUE;
       this.timerUpdateNotification = timerUpdateNotification;
     }
 
@@ -316,28 +320,17 @@ class WatermarkManager<ExecutableT, CollectionT> {
       pendingElements.remove(completed);
     }
 
+    /**
+     * Returns the earliest output timestamp of the timers which have not been completed, or {@link
+     * BoundedWindow#TIMESTAMP_MAX_VALUE} if there are none.
+     */
     @VisibleForTesting
-    synchronized Instant getEarliestTimerTimestamp() {
-      if (pendingTimers.isEmpty()) {
-        return BoundedWindow.TIMESTAMP_MAX_VALUE;
-      } else {
-        return getMinimumOutputTimestamp(pendingTimers);
-      }
-    }
-
-    private Instant getMinimumOutputTimestamp(SortedMultiset<TimerData> timers) {
-      Instant minimumOutputTimestamp = timers.firstEntry().getElement().getOutputTimestamp();
-      for (TimerData timerData : timers) {
-        minimumOutputTimestamp =
-            INSTANT_ORDERING.min(timerData.getOutputTimestamp(), minimumOutputTimestamp);
-      }
-      return minimumOutputTimestamp;
+    Instant getEarliestTimerTimestamp() {
+      return earliestTimerTimestamp;
     }
 
     @VisibleForTesting
     synchronized void updateTimers(TimerUpdate update) {
-      NavigableSet<TimerData> keyTimers =
-          objectTimers.computeIfAbsent(update.key, k -> new TreeSet<>());
       Map<String, TimerData> existingTimersForKey =
           existingTimers.computeIfAbsent(update.key, k -> Maps.newHashMap());
 
@@ -346,18 +339,15 @@ class WatermarkManager<ExecutableT, CollectionT> {
         if (TimeDomain.EVENT_TIME.equals(timer.getDomain())) {
           newSetTimers.add(timer.stringKey());
           @Nullable TimerData existingTimer = existingTimersForKey.get(timer.stringKey());
-          if (existingTimer == null) {
-            pendingTimers.add(timer);
-            keyTimers.add(timer);
-          } else {
+          if (existingTimer != null) {
             // reinitialize the timer even if identical,
-            // because it might be removed from objectTimers
+            // because it might be removed from eventTimeTimers
             // by timer push back
             pendingTimers.remove(existingTimer);
-            keyTimers.remove(existingTimer);
-            pendingTimers.add(timer);
-            keyTimers.add(timer);
+            eventTimeTimers.remove(update.key, existingTimer);
           }
+          pendingTimers.add(timer);
+          eventTimeTimers.add(update.key, timer);
 
           existingTimersForKey.put(timer.stringKey(), timer);
         }
@@ -369,7 +359,7 @@ class WatermarkManager<ExecutableT, CollectionT> {
 
           if (existingTimer != null) {
             pendingTimers.remove(existingTimer);
-            keyTimers.remove(existingTimer);
+            eventTimeTimers.remove(update.key, existingTimer);
             existingTimersForKey.remove(existingTimer.stringKey());
           }
         }
@@ -378,12 +368,16 @@ class WatermarkManager<ExecutableT, CollectionT> {
       for (TimerData timer : update.getCompletedTimers()) {
         if (TimeDomain.EVENT_TIME.equals(timer.getDomain())) {
           if (!newSetTimers.contains(timer.stringKey())) {
-            keyTimers.remove(timer);
+            eventTimeTimers.remove(update.key, timer);
             pendingTimers.remove(timer);
             existingTimersForKey.remove(timer.stringKey());
           }
         }
       }
+      if (existingTimersForKey.isEmpty()) {
+        existingTimers.remove(update.key);
+      }
+      earliestTimerTimestamp = pendingTimers.getEarliestOutputTimestamp();
 
       if (!update.isEmpty()) {
         // notify of TimerData update
@@ -395,7 +389,7 @@ class WatermarkManager<ExecutableT, CollectionT> {
 
     @VisibleForTesting
     synchronized Map<StructuralKey<?>, List<TimerData>> extractFiredEventTimeTimers() {
-      return extractFiredTimers(currentWatermark.get(), objectTimers);
+      return eventTimeTimers.extractFiredTimers(currentWatermark.get());
     }
 
     @Override
@@ -507,14 +501,19 @@ class WatermarkManager<ExecutableT, CollectionT> {
 
     private final Collection<? extends Watermark> inputWms;
     private final Collection<Bundle<?, ?>> pendingBundles;
-    private final Map<StructuralKey<?>, NavigableSet<TimerData>> processingTimers;
-    private final Map<StructuralKey<?>, NavigableSet<TimerData>> synchronizedProcessingTimers;
+    private final TimerQueue processingTimers;
+    private final TimerQueue synchronizedProcessingTimers;
     private final Map<StructuralKey<?>, Map<String, TimerData>> existingTimers;
 
-    private final NavigableSet<TimerData> pendingTimers;
+    // The timers which have fired and not yet been completed
+    private final PendingTimers pendingTimers;
 
     private AtomicReference<Instant> earliestHold;
 
+    // The earliest output timestamp of all incomplete timers, which is read when refreshing the
+    // output watermark without synchronizing with timer updates.
+    private volatile Instant earliestTimerTimestamp;
+
     private final Consumer<TimerData> timerUpdateNotification;
 
     public SynchronizedProcessingTimeInputWatermark(
@@ -525,10 +524,11 @@ class WatermarkManager<ExecutableT, CollectionT> {
       this.name = name;
       this.inputWms = inputWms;
       this.pendingBundles = new HashSet<>();
-      this.processingTimers = new HashMap<>();
-      this.synchronizedProcessingTimers = new HashMap<>();
+      this.processingTimers = new TimerQueue();
+      this.synchronizedProcessingTimers = new TimerQueue();
       this.existingTimers = new HashMap<>();
-      this.pendingTimers = new TreeSet<>();
+      this.pendingTimers = new PendingTimers();
+      this.earliestTimerTimestamp = THE_END_OF_TIME.get();
       Instant initialHold = BoundedWindow.TIMESTAMP_MAX_VALUE;
       for (Watermark wm : inputWms) {
         initialHold = INSTANT_ORDERING.min(initialHold, wm.get());
@@ -591,31 +591,16 @@ class WatermarkManager<ExecutableT, CollectionT> {
      * either the earliest timestamp across timers that have not been completed, or the earliest
      * timestamp across timers that have been delivered but have not been completed.
      */
-    public synchronized Instant getEarliestTimerTimestamp() {
-      Instant earliest = THE_END_OF_TIME.get();
-      for (NavigableSet<TimerData> timers : processingTimers.values()) {
-        if (!timers.isEmpty()) {
-          earliest = INSTANT_ORDERING.min(getMinimumOutputTimestamp(timers), earliest);
-        }
-      }
-      for (NavigableSet<TimerData> timers : synchronizedProcessingTimers.values()) {
-        if (!timers.isEmpty()) {
-          earliest = INSTANT_ORDERING.min(getMinimumOutputTimestamp(timers), earliest);
-        }
-      }
-      if (!pendingTimers.isEmpty()) {
-        earliest = INSTANT_ORDERING.min(getMinimumOutputTimestamp(pendingTimers), earliest);
-      }
-      return earliest;
+    public Instant getEarliestTimerTimestamp() {
+      return earliestTimerTimestamp;
     }
 
-    private Instant getMinimumOutputTimestamp(NavigableSet<TimerData> timers) {
-      Instant minimumOutputTimestamp = timers.first().getOutputTimestamp();
-      for (TimerData timerData : timers) {
-        minimumOutputTimestamp =
-            INSTANT_ORDERING.min(timerData.getOutputTimestamp(), minimumOutputTimestamp);
-      }
-      return minimumOutputTimestamp;
+    private void updateEarliestTimerTimestamp() {
+      earliestTimerTimestamp =
+          INSTANT_ORDERING.min(
+              processingTimers.getEarliestOutputTimestamp(),
+              synchronizedProcessingTimers.getEarliestOutputTimestamp(),
+              pendingTimers.getEarliestOutputTimestamp());
     }
 
     private synchronized void updateTimers(TimerUpdate update) {
@@ -624,26 +609,24 @@ class WatermarkManager<ExecutableT, CollectionT> {
 
       HashSet<String> newSetTimers = Sets.newHashSet();
       for (TimerData addedTimer : update.setTimers.values()) {
-        NavigableSet<TimerData> timerQueue =
-            processQueueForDomain(update.key, addedTimer.getDomain());
+        @Nullable TimerQueue timerQueue = processQueueForDomain(addedTimer.getDomain());
         if (timerQueue == null) {
           continue;
         }
         newSetTimers.add(addedTimer.stringKey());
         @Nullable TimerData existingTimer = existingTimersForKey.get(addedTimer.stringKey());
         if (existingTimer == null) {
-          timerQueue.add(addedTimer);
+          timerQueue.add(update.key, addedTimer);
         } else if (!existingTimer.equals(addedTimer)) {
-          timerQueue.remove(existingTimer);
-          timerQueue.add(addedTimer);
+          timerQueue.remove(update.key, existingTimer);
+          timerQueue.add(update.key, addedTimer);
         } // else the timer is already set identically, so noop.
 
         existingTimersForKey.put(addedTimer.stringKey(), addedTimer);
       }
 
       for (TimerData deletedTimer : update.deletedTimers.values()) {
-        NavigableSet<TimerData> timerQueue =
-            processQueueForDomain(update.key, deletedTimer.getDomain());
+        @Nullable TimerQueue timerQueue = processQueueForDomain(deletedTimer.getDomain());
         if (timerQueue == null) {
           continue;
         }
@@ -651,7 +634,7 @@ class WatermarkManager<ExecutableT, CollectionT> {
         @Nullable TimerData existingTimer = existingTimersForKey.get(timerKey);
         if (existingTimer != null) {
           pendingTimers.remove(existingTimer);
-          timerQueue.remove(existingTimer);
+          timerQueue.remove(update.key, existingTimer);
           existingTimersForKey.remove(timerKey);
         }
       }
@@ -663,6 +646,10 @@ class WatermarkManager<ExecutableT, CollectionT> {
           existingTimersForKey.remove(timerKey);
         }
       }
+      if (existingTimersForKey.isEmpty()) {
+        existingTimers.remove(update.key);
+      }
+      updateEarliestTimerTimestamp();
 
       // notify of TimerData update
       Iterables.concat(
@@ -675,13 +662,12 @@ class WatermarkManager<ExecutableT, CollectionT> {
       Map<StructuralKey<?>, List<TimerData>> firedTimers;
       switch (domain) {
         case PROCESSING_TIME:
-          firedTimers = extractFiredTimers(firingTime, processingTimers);
+          firedTimers = processingTimers.extractFiredTimers(firingTime);
           break;
         case SYNCHRONIZED_PROCESSING_TIME:
           firedTimers =
-              extractFiredTimers(
-                  INSTANT_ORDERING.min(firingTime, earliestHold.get()),
-                  synchronizedProcessingTimers);
+              synchronizedProcessingTimers.extractFiredTimers(
+                  INSTANT_ORDERING.min(firingTime, earliestHold.get()));
           break;
         default:
           throw new IllegalArgumentException(
@@ -691,18 +677,22 @@ class WatermarkManager<ExecutableT, CollectionT> {
       }
       for (Map.Entry<StructuralKey<?>, ? extends Collection<TimerData>> firedTimer :
           firedTimers.entrySet()) {
-        pendingTimers.addAll(firedTimer.getValue());
+        for (TimerData timer : firedTimer.getValue()) {
+          if (!pendingTimers.contains(timer)) {
+            pendingTimers.add(timer);
+          }
+        }
       }
+      updateEarliestTimerTimestamp();
       return firedTimers;
     }
 
-    private @Nullable NavigableSet<TimerData> processQueueForDomain(
-        StructuralKey<?> key, TimeDomain timeDomain) {
+    private @Nullable TimerQueue processQueueForDomain(TimeDomain timeDomain) {
       switch (timeDomain) {
         case PROCESSING_TIME:
-          return processingTimers.computeIfAbsent(key, k -> new TreeSet<>());
+          return processingTimers;
         case SYNCHRONIZED_PROCESSING_TIME:
-          return synchronizedProcessingTimers.computeIfAbsent(key, k -> new TreeSet<>());
+          return synchronizedProcessingTimers;
         default:
           return null;
       }
@@ -830,36 +820,6 @@ class WatermarkManager<ExecutableT, CollectionT> {
 
   private static final Ordering<Instant> INSTANT_ORDERING = Ordering.natural();
 
-  /**
-   * For each (Object, NavigableSet) pair in the provided map, remove each Timer that is before the
-   * latestTime argument and put in the result with the same key, then remove all of the keys which
-   * have no more pending timers.
-   *
-   * <p>The result collection retains ordering of timers (from earliest to latest).
-   */
-  private static synchronized Map<StructuralKey<?>, List<TimerData>> extractFiredTimers(
-      Instant latestTime, Map<StructuralKey<?>, NavigableSet<TimerData>> objectTimers) {
-    Map<StructuralKey<?>, List<TimerData>> result = new HashMap<>();
-    Set<StructuralKey<?>> emptyKeys = new HashSet<>();
-    for (Map.Entry<StructuralKey<?>, NavigableSet<TimerData>> pendingTimers :
-        objectTimers.entrySet()) {
-      NavigableSet<TimerData> timers = pendingTimers.getValue();
-      if (!timers.isEmpty() && timers.first().getTimestamp().isBefore(latestTime)) {
-        ArrayList<TimerData> keyFiredTimers = new ArrayList<>();
-        result.put(pendingTimers.getKey(), keyFiredTimers);
-        while (!timers.isEmpty() && timers.first().getTimestamp().isBefore(latestTime)) {
-          keyFiredTimers.add(timers.first());
-          timers.remove(timers.first());
-        }
-      }
-      if (timers.isEmpty()) {
-        emptyKeys.add(pendingTimers.getKey());
-      }
-    }
-    objectTimers.keySet().removeAll(emptyKeys);
-    return result;
-  }
-
   ////////////////////////////////////////////////////////////////////////////////////////////////
 
   /**
@@ -1347,6 +1307,45 @@ class WatermarkManager<ExecutableT, CollectionT> {
     }
   }
 
+  /**
+   * The timers which have been set or fired but not yet completed, indexed by their output
+   * timestamps so that the earliest output timestamp is available without scanning the timers.
+   */
+  private static class PendingTimers {
+    private final SortedMultiset<TimerData> timers;
+    private final SortedMultiset<Instant> outputTimestamps;
+
+    private PendingTimers() {
+      this.timers = TreeMultiset.create();
+      this.outputTimestamps = TreeMultiset.create();
+    }
+
+    private boolean contains(TimerData timer) {
+      return timers.contains(timer);
+    }
+
+    private void add(TimerData timer) {
+      timers.add(timer);
+      outputTimestamps.add(timer.getOutputTimestamp());
+    }
+
+    private void remove(TimerData timer) {
+      if (timers.remove(timer)) {
+        outputTimestamps.remove(timer.getOutputTimestamp());
+      }
+    }
+
+    /**
+     * Returns the earliest output timestamp of the timers, or THE_END_OF_TIME if there are no
+     * timers.
+     */
+    private Instant getEarliestOutputTimestamp() {
+      return outputTimestamps.isEmpty()
+          ? THE_END_OF_TIME.get()
+          : outputTimestamps.firstEntry().getElement();
+    }
+  }
+
   private static class PerKeyHolds {
     private final Map<Object, KeyedHold> keyedHolds;
     private final NavigableSet<KeyedHold> allHolds;
@@ -27,10 +27,12 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.fail;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
@@ -68,6 +70,12 @@ import org.apache.beam.sdk.io.CountingSource;
 import org.apache.beam.sdk.io.GenerateSequence;
 import org.apache.beam.sdk.io.Read;
 import org.apache.beam.sdk.io.UnboundedSource;
+import org.apache.beam.sdk.metrics.Counter;
+import org.apache.beam.sdk.metrics.MetricNameFilter;
+import org.apache.beam.sdk.metrics.MetricQueryResults;
+import org.apache.beam.sdk.metrics.MetricResult;
+import org.apache.beam.sdk.metrics.Metrics;
+import org.apache.beam.sdk.metrics.MetricsFilter;
 import org.apache.beam.sdk.options.Default;
 import org.apache.beam.sdk.options.PipelineOptions;
 import org.apache.beam.sdk.options.PipelineOptionsFactory;
@@ -77,6 +85,7 @@ import org.apache.beam.sdk.transforms.Count;
 import org.apache.beam.sdk.transforms.Create;
 import org.apache.beam.sdk.transforms.DoFn;
 import org.apache.beam.sdk.transforms.Flatten;
+import org.apache.beam.sdk.transforms.GroupByKey;
 import org.apache.beam.sdk.transforms.Impulse;
 import org.apache.beam.sdk.transforms.MapElements;
 import org.apache.beam.sdk.transforms.PTransform;
@@ -100,6 +109,7 @@ import org.apache.beam.sdk.values.TypeDescriptor;
 import org.apache.beam.sdk.values.TypeDescriptors;
 import org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.base.Preconditions;
 import org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.collect.ImmutableMap;
+import org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.collect.Iterables;
 import org.checkerframework.checker.nullness.qual.Nullable;
 import org.hamcrest.Matchers;
 import org.joda.time.Duration;
@@ -108,6 +118,7 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.internal.matchers.ThrowableMessageMatcher;
 import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
 
@@ -118,6 +129,7 @@ import org.junit.runners.JUnit4;
 })
 public class DirectRunnerTest implements Serializable {
   @Rule public transient ExpectedException thrown = ExpectedException.none();
+  @Rule public transient TemporaryFolder temporaryFolder = new TemporaryFolder();
 
   private Pipeline getPipeline() {
     return getPipeline(true);
@@ -487,6 +499,98 @@ public class DirectRunnerTest implements Serializable {
     pipeline.run();
   }
 
+  private static class AddFn extends DoFn<Integer, Integer> {
+    private final Counter elements = Metrics.counter(AddFn.class, "elements");
+    private final int increment;
+
+    private AddFn(int increment) {
+      this.increment = increment;
+    }
+
+    @ProcessElement
+    public void processElement(@Element Integer element, OutputReceiver<Integer> receiver) {
+      elements.inc();
+      receiver.output(element + increment);
+    }
+  }
+
+  /**
+   * Tests that a chain of {@link ParDo ParDos} fused by {@link DirectOptions#isFuseParDos()}
+   * produces the same output and reports the metrics of each fused step.
+   */
+  @Test
+  public void testFusedParDosSucceed() throws Exception {
+    PipelineOptions options = PipelineOptionsFactory.create();
+    options.setRunner(DirectRunner.class);
+    options.as(DirectOptions.class).setFuseParDos(true);
+    Pipeline pipeline = Pipeline.create(options);
+
+    PCollection<Integer> added =
+        pipeline
+            .apply(Create.of(1, 2, 3))
+            .apply("AddOne", ParDo.of(new AddFn(1)))
+            .apply("AddTwo", ParDo.of(new AddFn(2)));
+    PAssert.that(added).containsInAnyOrder(4, 5, 6);
+    PAssert.thatSingleton(added.apply(Sum.integersGlobally())).isEqualTo(15);
+
+    PipelineResult result = pipeline.run();
+    for (String step : Arrays.asList("AddOne", "AddTwo")) {
+      MetricQueryResults metrics =
+          result
+              .metrics()
+              .queryMetrics(
+                  MetricsFilter.builder()
+                      .addNameFilter(MetricNameFilter.named(AddFn.class, "elements"))
+                      .addStep(step)
+                      .build());
+      MetricResult<Long> counter = Iterables.getOnlyElement(metrics.getCounters());
+      assertEquals(3L, (long) counter.getCommitted());
+      assertEquals(3L, (long) counter.getAttempted());
+    }
+  }
+
+  @Test
+  public void testGroupByKeyWithStateMemoryBudgetSucceeds() throws Exception {
+    PipelineOptions options = PipelineOptionsFactory.create();
+    options.setRunner(DirectRunner.class);
+    options.as(DirectOptions.class).setStateMemoryBudgetMb(1);
+    String spillDirectory = temporaryFolder.getRoot().getAbsolutePath();
+    options.as(DirectOptions.class).setStateSpillDirectory(spillDirectory);
+    Pipeline pipeline = Pipeline.create(options);
+
+    // About 2 MB of values, so that the buffered values exceed the budget and are spilled.
+    List<KV<Integer, String>> elements = new ArrayList<>();
+    for (int i = 0; i < 20_000; ++i) {
+      elements.add(KV.of(i % 10, String.format("%0100d", i)));
+    }
+    PCollection<KV<Integer, Integer>> sizes =
+        pipeline
+            .apply(Create.of(elements))
+            .apply(GroupByKey.create())
+            .apply(
+                MapElements.via(
+                    new SimpleFunction<KV<Integer, Iterable<String>>, KV<Integer, Integer>>() {
+                      @Override
+                      public KV<Integer, Integer> apply(KV<Integer, Iterable<String>> input) {
+                        // The spill file is created by the first spill.
+                        checkState(
+                            new File(spillDirectory).list().length == 1,
+                            "Expected the buffered values to be spilled to %s",
+                            spillDirectory);
+                        return KV.of(input.getKey(), Iterables.size(input.getValue()));
+                      }
+                    }));
+    List<KV<Integer, Integer>> expected = new ArrayList<>();
+    for (int key = 0; key < 10; ++key) {
+      expected.add(KV.of(key, 2000));
+    }
+    PAssert.that(sizes).containsInAnyOrder(expected);
+
+    pipeline.run();
+    // The spill file is deleted once the pipeline is done.
+    assertEquals(0, temporaryFolder.getRoot().list().length);
+  }
+
   /**
    * Tests that a {@link DoFn} that mutates an output with a good equals() fails in the {@link
    * DirectRunner}.
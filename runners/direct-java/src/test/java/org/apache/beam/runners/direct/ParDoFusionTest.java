@@ -0,0 +1,132 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.runners.direct;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+
+import java.io.Serializable;
+import java.util.List;
+import org.apache.beam.sdk.coders.KvCoder;
+import org.apache.beam.sdk.coders.StringUtf8Coder;
+import org.apache.beam.sdk.coders.VarIntCoder;
+import org.apache.beam.sdk.state.StateSpec;
+import org.apache.beam.sdk.state.StateSpecs;
+import org.apache.beam.sdk.state.ValueState;
+import org.apache.beam.sdk.testing.TestPipeline;
+import org.apache.beam.sdk.transforms.Create;
+import org.apache.beam.sdk.transforms.DoFn;
+import org.apache.beam.sdk.transforms.Impulse;
+import org.apache.beam.sdk.transforms.ParDo;
+import org.apache.beam.sdk.transforms.View;
+import org.apache.beam.sdk.values.KV;
+import org.apache.beam.sdk.values.PCollection;
+import org.apache.beam.sdk.values.PCollectionView;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link ParDoFusion}. */
+@RunWith(JUnit4.class)
+public class ParDoFusionTest implements Serializable {
+  @Rule
+  public transient TestPipeline p = TestPipeline.create().enableAbandonedNodeEnforcement(false);
+
+  private static class ImpulseFn extends DoFn<byte[], KV<String, Integer>> {
+    @ProcessElement
+    public void processElement(OutputReceiver<KV<String, Integer>> receiver) {
+      receiver.output(KV.of("foo", 1));
+    }
+  }
+
+  private static class IdentityFn<T> extends DoFn<T, T> {
+    @ProcessElement
+    public void processElement(@Element T element, OutputReceiver<T> receiver) {
+      receiver.output(element);
+    }
+  }
+
+  private PCollection<KV<String, Integer>> impulse() {
+    return p.apply(Impulse.create())
+        .apply(ParDo.of(new ImpulseFn()))
+        .setCoder(KvCoder.of(StringUtf8Coder.of(), VarIntCoder.of()));
+  }
+
+  @Test
+  public void fusesChainOfParDos() {
+    PCollection<KV<String, Integer>> first = impulse().apply("First", ParDo.of(new IdentityFn<>()));
+    PCollection<KV<String, Integer>> second = first.apply("Second", ParDo.of(new IdentityFn<>()));
+    PCollection<KV<String, Integer>> third = second.apply("Third", ParDo.of(new IdentityFn<>()));
+
+    DirectGraph graph = DirectGraphs.getGraph(p);
+    ParDoFusion fusion = ParDoFusion.of(graph);
+
+    assertThat(fusion.getFusedConsumer(first), equalTo(graph.getProducer(second)));
+    assertThat(fusion.getFusedConsumer(second), equalTo(graph.getProducer(third)));
+    assertThat(fusion.getFusedConsumer(third), nullValue());
+  }
+
+  @Test
+  public void doesNotFuseOutputOfNonParDo() {
+    PCollection<byte[]> impulse = p.apply(Impulse.create());
+    impulse.apply(ParDo.of(new IdentityFn<>()));
+
+    assertThat(ParDoFusion.of(DirectGraphs.getGraph(p)).getFusedConsumer(impulse), nullValue());
+  }
+
+  @Test
+  public void doesNotFuseMultipleConsumers() {
+    PCollection<KV<String, Integer>> input = impulse();
+    input.apply("First", ParDo.of(new IdentityFn<>()));
+    input.apply("Second", ParDo.of(new IdentityFn<>()));
+
+    assertThat(ParDoFusion.of(DirectGraphs.getGraph(p)).getFusedConsumer(input), nullValue());
+  }
+
+  @Test
+  public void doesNotFuseParDoWithSideInputs() {
+    PCollectionView<List<String>> view = p.apply(Create.of("foo")).apply(View.asList());
+    PCollection<KV<String, Integer>> input = impulse();
+    input.apply(ParDo.of(new IdentityFn<KV<String, Integer>>()).withSideInputs(view));
+
+    assertThat(ParDoFusion.of(DirectGraphs.getGraph(p)).getFusedConsumer(input), nullValue());
+  }
+
+  @Test
+  public void doesNotFuseStatefulParDo() {
+    PCollection<KV<String, Integer>> input = impulse();
+    input.apply(
+        ParDo.of(
+            new DoFn<KV<String, Integer>, Integer>() {
+              @StateId("count")
+              private final StateSpec<ValueState<Integer>> countSpec = StateSpecs.value();
+
+              @ProcessElement
+              public void processElement(
+                  @Element KV<String, Integer> element,
+                  @StateId("count") ValueState<Integer> count,
+                  OutputReceiver<Integer> receiver) {
+                receiver.output(element.getValue());
+              }
+            }));
+
+    assertThat(ParDoFusion.of(DirectGraphs.getGraph(p)).getFusedConsumer(input), nullValue());
+  }
+}
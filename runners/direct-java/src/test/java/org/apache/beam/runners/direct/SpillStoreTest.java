@@ -0,0 +1,169 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.runners.direct;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import org.apache.beam.runners.direct.SpillStore.Segment;
+import org.apache.beam.runners.direct.SpillStore.Spillable;
+import org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.io.ByteStreams;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link SpillStore}. */
+@RunWith(JUnit4.class)
+public class SpillStoreTest {
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  /** A {@link Spillable} which reserves bytes without keeping any state. */
+  private static class FakeSpillable implements Spillable {
+    private final SpillStore spillStore;
+    private long reservedBytes;
+    private int spills;
+
+    private FakeSpillable(SpillStore spillStore) {
+      this.spillStore = spillStore;
+      spillStore.register(this);
+    }
+
+    private void add(long bytes) {
+      reservedBytes += bytes;
+      spillStore.reserve(bytes);
+    }
+
+    @Override
+    public long getReservedBytes() {
+      return reservedBytes;
+    }
+
+    @Override
+    public void spill() {
+      spillStore.release(reservedBytes);
+      reservedBytes = 0;
+      spills += 1;
+    }
+  }
+
+  @Test
+  public void testReserveSpillsLargestFirstToLowWatermark() throws IOException {
+    try (SpillStore spillStore = SpillStore.create(100, null)) {
+      FakeSpillable small = new FakeSpillable(spillStore);
+      FakeSpillable medium = new FakeSpillable(spillStore);
+      FakeSpillable large = new FakeSpillable(spillStore);
+      small.add(20);
+      medium.add(30);
+      large.add(50);
+      assertEquals(100, spillStore.getHeapBytes());
+      assertEquals(0, small.spills + medium.spills + large.spills);
+
+      // Exceeds the budget, so the largest state is spilled, which leaves 51 bytes on the heap, and
+      // then the next largest, which brings the heap below the low watermark of 50 bytes.
+      small.add(1);
+      assertEquals(1, large.spills);
+      assertEquals(1, medium.spills);
+      assertEquals(0, small.spills);
+      assertEquals(21, spillStore.getHeapBytes());
+    }
+  }
+
+  @Test
+  public void testReusesUnreachableSegments() throws Exception {
+    try (SpillStore spillStore =
+        SpillStore.create(0, temporaryFolder.getRoot().getAbsolutePath())) {
+      writeUnreachable(spillStore, 100);
+      Segment retained = spillStore.write(new byte[] {1, 2, 3}, 3);
+      assertEquals(103, spillStore.getFileBytes());
+
+      long reclaimed = 0;
+      for (int i = 0; i < 100 && reclaimed == 0; ++i) {
+        System.gc();
+        Thread.sleep(10);
+        reclaimed = spillStore.reclaimUnreachableSegments();
+      }
+      assertEquals(100, reclaimed);
+
+      // Written to the range of the unreachable segment rather than appended.
+      Segment reused = spillStore.write("foobar".getBytes(StandardCharsets.UTF_8), 6);
+      assertEquals(103, spillStore.getFileBytes());
+      assertArrayEquals(
+          "foobar".getBytes(StandardCharsets.UTF_8),
+          ByteStreams.toByteArray(spillStore.read(reused)));
+      assertArrayEquals(new byte[] {1, 2, 3}, ByteStreams.toByteArray(spillStore.read(retained)));
+    }
+  }
+
+  @Test
+  public void testTruncatesUnreachableSegmentsAtTheEnd() throws Exception {
+    try (SpillStore spillStore =
+        SpillStore.create(0, temporaryFolder.getRoot().getAbsolutePath())) {
+      writeUnreachable(spillStore, 100);
+      long reclaimed = 0;
+      for (int i = 0; i < 100 && reclaimed == 0; ++i) {
+        System.gc();
+        Thread.sleep(10);
+        reclaimed = spillStore.reclaimUnreachableSegments();
+      }
+      assertEquals(100, reclaimed);
+      assertEquals(0, spillStore.getFileBytes());
+      assertEquals(0, temporaryFolder.getRoot().listFiles()[0].length());
+    }
+  }
+
+  private static void writeUnreachable(SpillStore spillStore, int length) throws IOException {
+    spillStore.write(new byte[length], length);
+  }
+
+  @Test
+  public void testReadsWrittenSegments() throws IOException {
+    byte[] large = new byte[200_000];
+    new Random(0).nextBytes(large);
+    try (SpillStore spillStore =
+        SpillStore.create(0, temporaryFolder.getRoot().getAbsolutePath())) {
+      Segment first = spillStore.write("foobar".getBytes(StandardCharsets.UTF_8), 3);
+      Segment second = spillStore.write(large, large.length);
+      Segment empty = spillStore.write(new byte[0], 0);
+
+      assertArrayEquals(
+          "foo".getBytes(StandardCharsets.UTF_8),
+          ByteStreams.toByteArray(spillStore.read(first)));
+      assertArrayEquals(large, ByteStreams.toByteArray(spillStore.read(second)));
+      assertEquals(0, ByteStreams.toByteArray(spillStore.read(empty)).length);
+    }
+  }
+
+  @Test
+  public void testCloseDeletesSpillFile() throws IOException {
+    File directory = temporaryFolder.getRoot();
+    SpillStore spillStore = SpillStore.create(0, directory.getAbsolutePath());
+    Segment segment = spillStore.write(new byte[] {1, 2, 3}, 3);
+    assertEquals(1, directory.listFiles().length);
+
+    spillStore.close();
+    assertEquals(0, directory.listFiles().length);
+    assertThrows(IllegalStateException.class, () -> spillStore.read(segment));
+  }
+}
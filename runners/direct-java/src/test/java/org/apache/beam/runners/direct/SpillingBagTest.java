@@ -0,0 +1,122 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.runners.direct;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.emptyIterable;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import org.apache.beam.sdk.coders.StringUtf8Coder;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link SpillingBag}. */
+@RunWith(JUnit4.class)
+public class SpillingBagTest {
+  private final SpillStore spillStore = SpillStore.create(16, null);
+
+  @After
+  public void teardown() throws IOException {
+    spillStore.close();
+  }
+
+  @Test
+  public void testReadReturnsSpilledAndHeapElementsInOrder() {
+    SpillingBag<String> bag = new SpillingBag<>(StringUtf8Coder.of(), spillStore);
+    assertThat(bag.read(), emptyIterable());
+    assertTrue(bag.isEmpty().read());
+
+    bag.add("foo");
+    bag.add("bar");
+    assertEquals(8, spillStore.getHeapBytes());
+    // Exceeds the budget of 16 bytes, which spills all of the elements in the bag to get below the
+    // low watermark of 8 bytes.
+    bag.add("a longer element");
+    assertEquals(0, spillStore.getHeapBytes());
+    bag.add("baz");
+
+    assertThat(bag.read(), contains("foo", "bar", "a longer element", "baz"));
+    assertFalse(bag.isEmpty().read());
+    assertFalse(bag.isCleared());
+  }
+
+  @Test
+  public void testReadIsStable() {
+    SpillingBag<String> bag = new SpillingBag<>(StringUtf8Coder.of(), spillStore);
+    bag.add("foo");
+    Iterable<String> beforeSpill = bag.read();
+    bag.add("a longer element");
+    Iterable<String> afterSpill = bag.read();
+    bag.add("bar");
+    bag.clear();
+
+    assertThat(beforeSpill, contains("foo"));
+    assertThat(afterSpill, contains("foo", "a longer element"));
+    assertThat(bag.read(), emptyIterable());
+    assertTrue(bag.isCleared());
+  }
+
+  @Test
+  public void testClearReleasesHeapBytes() {
+    SpillingBag<String> bag = new SpillingBag<>(StringUtf8Coder.of(), spillStore);
+    bag.add("foo");
+    bag.add("bar");
+    bag.clear();
+    assertEquals(0, spillStore.getHeapBytes());
+  }
+
+  @Test
+  public void testSpillsLargestBagsFirst() {
+    SpillingBag<String> small = new SpillingBag<>(StringUtf8Coder.of(), spillStore);
+    SpillingBag<String> large = new SpillingBag<>(StringUtf8Coder.of(), spillStore);
+    small.add("foo");
+    small.add("bar");
+    // Exceeds the budget with 17 bytes. Spilling the larger bag alone reaches the low watermark.
+    large.add("a longer");
+
+    assertEquals(8, small.getReservedBytes());
+    assertEquals(0, large.getReservedBytes());
+    assertEquals(8, spillStore.getHeapBytes());
+    assertThat(small.read(), contains("foo", "bar"));
+    assertThat(large.read(), contains("a longer"));
+  }
+
+  @Test
+  public void testCopyIsIndependent() {
+    SpillingBag<String> bag = new SpillingBag<>(StringUtf8Coder.of(), spillStore);
+    bag.add("a longer element");
+    bag.add("foo");
+
+    SpillingBag<String> copy = bag.copy();
+    // The copy takes over the reservation of the elements on the heap.
+    assertEquals(0, bag.getReservedBytes());
+    assertEquals(4, copy.getReservedBytes());
+    copy.add("bar");
+    bag.clear();
+
+    assertEquals(8, spillStore.getHeapBytes());
+    assertThat(bag.read(), emptyIterable());
+    assertThat(copy.read(), contains("a longer element", "foo", "bar"));
+  }
+}
@@ -0,0 +1,150 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.runners.direct;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.apache.beam.runners.core.StateNamespaces;
+import org.apache.beam.runners.core.TimerInternals.TimerData;
+import org.apache.beam.runners.local.StructuralKey;
+import org.apache.beam.sdk.coders.VarIntCoder;
+import org.apache.beam.sdk.state.TimeDomain;
+import org.apache.beam.sdk.transforms.windowing.BoundedWindow;
+import org.joda.time.Instant;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link TimerQueue}. */
+@RunWith(JUnit4.class)
+public class TimerQueueTest {
+  private static StructuralKey<Integer> key(int key) {
+    return StructuralKey.of(key, VarIntCoder.of());
+  }
+
+  private static TimerData timer(String id, long timestamp, long outputTimestamp) {
+    return TimerData.of(
+        id,
+        StateNamespaces.global(),
+        new Instant(timestamp),
+        new Instant(outputTimestamp),
+        TimeDomain.EVENT_TIME,
+        TimerData.CausedByDrain.NORMAL);
+  }
+
+  @Test
+  public void extractsTimersBeforeTimestampInOrder() {
+    TimerQueue queue = new TimerQueue();
+    TimerData first = timer("a", 10, 10);
+    TimerData second = timer("b", 20, 20);
+    TimerData third = timer("c", 30, 30);
+    TimerData other = timer("a", 15, 15);
+    queue.add(key(1), third);
+    queue.add(key(1), first);
+    queue.add(key(1), second);
+    queue.add(key(2), other);
+
+    Map<StructuralKey<?>, List<TimerData>> fired = queue.extractFiredTimers(new Instant(30));
+    assertEquals(2, fired.size());
+    assertThat(fired.get(key(1)), contains(first, second));
+    assertThat(fired.get(key(2)), contains(other));
+    assertFalse(queue.isEmpty());
+
+    fired = queue.extractFiredTimers(new Instant(31));
+    assertThat(fired.get(key(1)), contains(third));
+    assertTrue(queue.isEmpty());
+  }
+
+  @Test
+  public void removedTimersDoNotFire() {
+    TimerQueue queue = new TimerQueue();
+    TimerData first = timer("a", 10, 10);
+    TimerData second = timer("b", 20, 20);
+    queue.add(key(1), first);
+    queue.add(key(2), second);
+
+    assertTrue(queue.remove(key(1), first));
+    assertFalse(queue.remove(key(1), first));
+    assertFalse(queue.remove(key(2), first));
+
+    Map<StructuralKey<?>, List<TimerData>> fired = queue.extractFiredTimers(new Instant(100));
+    assertEquals(1, fired.size());
+    assertThat(fired.get(key(2)), contains(second));
+  }
+
+  @Test
+  public void tracksEarliestOutputTimestamp() {
+    TimerQueue queue = new TimerQueue();
+    assertEquals(BoundedWindow.TIMESTAMP_MAX_VALUE, queue.getEarliestOutputTimestamp());
+
+    TimerData first = timer("a", 10, 5);
+    TimerData second = timer("b", 20, 1);
+    queue.add(key(1), first);
+    assertFalse(queue.add(key(1), first));
+    queue.add(key(2), second);
+    assertEquals(new Instant(1), queue.getEarliestOutputTimestamp());
+
+    queue.extractFiredTimers(new Instant(15));
+    assertEquals(new Instant(1), queue.getEarliestOutputTimestamp());
+    queue.remove(key(2), second);
+    assertEquals(BoundedWindow.TIMESTAMP_MAX_VALUE, queue.getEarliestOutputTimestamp());
+  }
+
+  @Test
+  public void extractsTimersOfManyKeysInTimestampOrder() {
+    TimerQueue queue = new TimerQueue();
+    Random random = new Random(42);
+    List<TimerData> removed = new ArrayList<>();
+    for (int i = 0; i < 10_000; ++i) {
+      long timestamp = random.nextInt(1_000_000);
+      TimerData timer = timer(Integer.toString(i), timestamp, timestamp);
+      queue.add(key(i % 1000), timer);
+      if (i % 7 == 0) {
+        queue.remove(key(i % 1000), timer);
+        removed.add(timer);
+      }
+    }
+
+    int firedTimers = 0;
+    long latestTime = 0;
+    while (!queue.isEmpty()) {
+      latestTime += 10_000;
+      for (Map.Entry<StructuralKey<?>, List<TimerData>> keyTimers :
+          queue.extractFiredTimers(new Instant(latestTime)).entrySet()) {
+        Instant previous = BoundedWindow.TIMESTAMP_MIN_VALUE;
+        for (TimerData timer : keyTimers.getValue()) {
+          assertTrue(timer.getTimestamp().isBefore(new Instant(latestTime)));
+          assertFalse(timer.getTimestamp().isBefore(new Instant(latestTime - 10_000)));
+          assertFalse(timer.getTimestamp().isBefore(previous));
+          assertFalse(removed.contains(timer));
+          previous = timer.getTimestamp();
+          firedTimers += 1;
+        }
+      }
+    }
+    assertEquals(10_000 - removed.size(), firedTimers);
+  }
+}
@@ -692,6 +692,8 @@ public class DefaultJobBundleFactory implements JobBundleFactory {
     provisionInfo.setControlEndpoint(controlServer.getApiServiceDescriptor());
     provisionInfo.addRunnerCapabilities(
         BeamUrns.getUrn(StandardRunnerProtocols.Enum.CONTROL_RESPONSE_ELEMENTS_EMBEDDING));
+    provisionInfo.addRunnerCapabilities(
+        BeamUrns.getUrn(StandardRunnerProtocols.Enum.STATE_MUTATION_BATCHING));
     GrpcFnServer<StaticGrpcProvisionService> provisioningServer =
         GrpcFnServer.allocatePortAndCreateFor(
             StaticGrpcProvisionService.create(
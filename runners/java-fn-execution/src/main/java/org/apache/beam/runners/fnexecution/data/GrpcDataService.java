@@ -18,6 +18,8 @@
 package org.apache.beam.runners.fnexecution.data;
 
 import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.LinkedBlockingQueue;
@@ -30,6 +32,7 @@ import org.apache.beam.model.fnexecution.v1.BeamFnDataGrpc;
 import org.apache.beam.sdk.fn.data.BeamFnDataGrpcMultiplexer;
 import org.apache.beam.sdk.fn.data.BeamFnDataOutboundAggregator;
 import org.apache.beam.sdk.fn.data.CloseableFnDataReceiver;
+import org.apache.beam.sdk.fn.data.SharedMemoryDataChannel;
 import org.apache.beam.sdk.fn.server.FnService;
 import org.apache.beam.sdk.fn.stream.OutboundObserverFactory;
 import org.apache.beam.sdk.options.PipelineOptions;
@@ -45,6 +48,10 @@ import org.slf4j.LoggerFactory;
  *
  * <p>This service transmits all outgoing {@link BeamFnApi.Elements} messages to the first client
  * that connects.
+ *
+ * <p>SDK harnesses on the same host may offer a {@link SharedMemoryDataChannel}, which this
+ * service accepts whenever it can open the offered ring buffers. Elements are then exchanged
+ * through the ring buffers instead of the gRPC stream.
  */
 @SuppressWarnings({
   "nullness" // TODO(https://github.com/apache/beam/issues/20497)
@@ -69,6 +76,8 @@ public class GrpcDataService extends BeamFnDataGrpc.BeamFnDataImplBase
    * closed {@link GrpcDataService} are closed with that {@link GrpcDataService}.
    */
   private final Queue<BeamFnDataGrpcMultiplexer> additionalMultiplexers;
+  /** The accepted shared memory channels of the connected clients, closed with this service. */
+  private final Set<SharedMemoryDataChannel> sharedMemoryChannels;
 
   private final PipelineOptions options;
   private final ExecutorService executor;
@@ -80,6 +89,7 @@ public class GrpcDataService extends BeamFnDataGrpc.BeamFnDataImplBase
       OutboundObserverFactory outboundObserverFactory) {
     this.connectedClient = SettableFuture.create();
     this.additionalMultiplexers = new LinkedBlockingQueue<>();
+    this.sharedMemoryChannels = ConcurrentHashMap.newKeySet();
     this.options = options;
     this.executor = executor;
     this.outboundObserverFactory = outboundObserverFactory;
@@ -90,6 +100,7 @@ public class GrpcDataService extends BeamFnDataGrpc.BeamFnDataImplBase
   public GrpcDataService() {
     this.connectedClient = null;
     this.additionalMultiplexers = null;
+    this.sharedMemoryChannels = null;
     this.options = null;
     this.executor = null;
     this.outboundObserverFactory = null;
@@ -99,9 +110,19 @@ public class GrpcDataService extends BeamFnDataGrpc.BeamFnDataImplBase
   public StreamObserver<BeamFnApi.Elements> data(
       final StreamObserver<BeamFnApi.Elements> outboundElementObserver) {
     LOG.info("Beam Fn Data client connected.");
+    SharedMemoryDataChannel sharedMemory = SharedMemoryDataChannel.acceptOffer();
+    if (sharedMemory != null) {
+      // Channels close themselves once their stream completed.
+      sharedMemoryChannels.removeIf(SharedMemoryDataChannel::isClosed);
+      sharedMemoryChannels.add(sharedMemory);
+    }
     BeamFnDataGrpcMultiplexer multiplexer =
         new BeamFnDataGrpcMultiplexer(
-            null, outboundObserverFactory, inbound -> outboundElementObserver);
+            null,
+            outboundObserverFactory,
+            sharedMemory == null
+                ? inbound -> outboundElementObserver
+                : inbound -> sharedMemory.outboundObserver(outboundElementObserver));
     // First client that connects completes this future.
     if (!connectedClient.set(multiplexer)) {
       additionalMultiplexers.offer(multiplexer);
@@ -109,8 +130,13 @@ public class GrpcDataService extends BeamFnDataGrpc.BeamFnDataImplBase
     try {
       // We specifically return the connected clients inbound observer so that all
       // incoming messages are sent to the single multiplexer instance.
-      return connectedClient.get().getInboundObserver();
+      StreamObserver<BeamFnApi.Elements> inboundObserver =
+          connectedClient.get().getInboundObserver();
+      return sharedMemory == null ? inboundObserver : sharedMemory.inboundObserver(inboundObserver);
     } catch (InterruptedException | ExecutionException e) {
+      if (sharedMemory != null) {
+        sharedMemory.close();
+      }
       throw new RuntimeException(e);
     }
   }
@@ -120,6 +146,9 @@ public class GrpcDataService extends BeamFnDataGrpc.BeamFnDataImplBase
     // Cancel anything blocking on a client connecting to this service. This doesn't shut down the
     // Multiplexer, but if there isn't any multiplexer it prevents callers blocking forever.
     connectedClient.cancel(true);
+    for (SharedMemoryDataChannel sharedMemory : sharedMemoryChannels) {
+      sharedMemory.close();
+    }
     // Close any other open connections
     for (BeamFnDataGrpcMultiplexer additional : additionalMultiplexers) {
       try {
@@ -20,7 +20,6 @@ package org.apache.beam.runners.fnexecution.environment;
 import static org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.base.Preconditions.checkArgument;
 
 import java.time.Duration;
-import java.util.Collections;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
@@ -45,6 +44,7 @@ import org.apache.beam.sdk.fn.server.ServerFactory;
 import org.apache.beam.sdk.fn.stream.OutboundObserverFactory;
 import org.apache.beam.sdk.options.PipelineOptions;
 import org.apache.beam.sdk.util.construction.BeamUrns;
+import org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.collect.ImmutableSet;
 import org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -110,10 +110,12 @@ public class EmbeddedEnvironmentFactory implements EnvironmentFactory {
                 FnHarness.main(
                     workerId,
                     options,
-                    Collections.singleton(
+                    ImmutableSet.of(
+                        BeamUrns.getUrn(
+                            StandardRunnerProtocols.Enum.CONTROL_RESPONSE_ELEMENTS_EMBEDDING),
                         BeamUrns.getUrn(
                             StandardRunnerProtocols.Enum
-                                .CONTROL_RESPONSE_ELEMENTS_EMBEDDING)), // Runner capabilities.
+                                .STATE_MUTATION_BATCHING)), // Runner capabilities.
                     loggingServer.getApiServiceDescriptor(),
                     controlServer.getApiServiceDescriptor(),
                     null,
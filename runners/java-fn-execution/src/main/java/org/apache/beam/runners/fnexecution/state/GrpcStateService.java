@@ -24,6 +24,8 @@ import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
+import org.apache.beam.model.fnexecution.v1.BeamFnApi.StateMutationBatchRequest;
+import org.apache.beam.model.fnexecution.v1.BeamFnApi.StateMutationBatchResponse;
 import org.apache.beam.model.fnexecution.v1.BeamFnApi.StateRequest;
 import org.apache.beam.model.fnexecution.v1.BeamFnApi.StateResponse;
 import org.apache.beam.model.fnexecution.v1.BeamFnStateGrpc;
@@ -127,7 +129,10 @@ public class GrpcStateService extends BeamFnStateGrpc.BeamFnStateImplBase
       StateRequestHandler handler =
           requestHandlers.getOrDefault(request.getInstructionId(), this::handlerNotFound);
       try {
-        CompletionStage<StateResponse.Builder> result = handler.handle(request);
+        CompletionStage<StateResponse.Builder> result =
+            request.hasMutationBatch()
+                ? handleMutationBatch(handler, request.getMutationBatch())
+                : handler.handle(request);
         result.whenComplete(
             (StateResponse.Builder responseBuilder, Throwable t) ->
                 // note that this is threadsafe if and only if outboundObserver is threadsafe.
@@ -150,6 +155,51 @@ public class GrpcStateService extends BeamFnStateGrpc.BeamFnStateImplBase
       outboundObserver.onCompleted();
     }
 
+    /**
+     * Applies the requests of the batch in order. Completes once all of them have been applied, or
+     * with the error of the first request that failed.
+     */
+    private CompletionStage<StateResponse.Builder> handleMutationBatch(
+        StateRequestHandler handler, StateMutationBatchRequest batch) {
+      CompletionStage<StateResponse.Builder> result =
+          CompletableFuture.completedFuture(
+              StateResponse.newBuilder()
+                  .setMutationBatch(StateMutationBatchResponse.getDefaultInstance()));
+      for (StateRequest request : batch.getRequestsList()) {
+        result =
+            result.thenCompose(
+                batchResponse -> {
+                  if (!batchResponse.getError().isEmpty()) {
+                    return CompletableFuture.completedFuture(batchResponse);
+                  }
+                  switch (request.getRequestCase()) {
+                    case APPEND:
+                    case CLEAR:
+                      break;
+                    default:
+                      throw new IllegalArgumentException(
+                          String.format(
+                              "Only append and clear requests may be batched, got %s.",
+                              request.getRequestCase()));
+                  }
+                  try {
+                    return handler
+                        .handle(request)
+                        .thenApply(
+                            response ->
+                                response.getError().isEmpty()
+                                    ? batchResponse
+                                    : StateResponse.newBuilder().setError(response.getError()));
+                  } catch (Exception e) {
+                    CompletableFuture<StateResponse.Builder> failed = new CompletableFuture<>();
+                    failed.completeExceptionally(e);
+                    return failed;
+                  }
+                });
+      }
+      return result;
+    }
+
     private CompletionStage<StateResponse.Builder> handlerNotFound(StateRequest request) {
       CompletableFuture<StateResponse.Builder> result = new CompletableFuture<>();
       result.complete(
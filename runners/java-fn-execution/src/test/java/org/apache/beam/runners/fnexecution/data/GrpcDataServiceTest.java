@@ -18,16 +18,22 @@
 package org.apache.beam.runners.fnexecution.data;
 
 import static org.apache.beam.sdk.util.CoderUtils.encodeToByteArray;
+import static org.apache.beam.sdk.util.Preconditions.checkStateNotNull;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.containsInAnyOrder;
 import static org.hamcrest.Matchers.empty;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
 
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -44,6 +50,8 @@ import org.apache.beam.sdk.fn.data.BeamFnDataInboundObserver;
 import org.apache.beam.sdk.fn.data.BeamFnDataOutboundAggregator;
 import org.apache.beam.sdk.fn.data.DataEndpoint;
 import org.apache.beam.sdk.fn.data.FnDataReceiver;
+import org.apache.beam.sdk.fn.data.SharedMemoryDataChannel;
+import org.apache.beam.sdk.fn.data.SharedMemoryRingBuffer;
 import org.apache.beam.sdk.fn.server.GrpcFnServer;
 import org.apache.beam.sdk.fn.server.InProcessServerFactory;
 import org.apache.beam.sdk.fn.stream.OutboundObserverFactory;
@@ -53,7 +61,12 @@ import org.apache.beam.sdk.values.WindowedValue;
 import org.apache.beam.sdk.values.WindowedValues;
 import org.apache.beam.vendor.grpc.v1p69p0.com.google.protobuf.ByteString;
 import org.apache.beam.vendor.grpc.v1p69p0.io.grpc.ManagedChannel;
+import org.apache.beam.vendor.grpc.v1p69p0.io.grpc.Server;
+import org.apache.beam.vendor.grpc.v1p69p0.io.grpc.ServerInterceptors;
+import org.apache.beam.vendor.grpc.v1p69p0.io.grpc.StatusRuntimeException;
 import org.apache.beam.vendor.grpc.v1p69p0.io.grpc.inprocess.InProcessChannelBuilder;
+import org.apache.beam.vendor.grpc.v1p69p0.io.grpc.inprocess.InProcessServerBuilder;
+import org.apache.beam.vendor.grpc.v1p69p0.io.grpc.stub.CallStreamObserver;
 import org.apache.beam.vendor.grpc.v1p69p0.io.grpc.stub.StreamObserver;
 import org.junit.Rule;
 import org.junit.Test;
@@ -184,6 +197,266 @@ public class GrpcDataServiceTest {
     }
   }
 
+  @Test
+  public void testSharedMemoryDataChannel() throws Exception {
+    final LinkedBlockingQueue<Elements> clientInboundElements = new LinkedBlockingQueue<>();
+    GrpcDataService service =
+        GrpcDataService.create(
+            PipelineOptionsFactory.create(),
+            Executors.newCachedThreadPool(),
+            OutboundObserverFactory.serverDirect());
+    try (GrpcFnServer<GrpcDataService> server =
+            GrpcFnServer.allocatePortAndCreateFor(service, InProcessServerFactory.create());
+        SharedMemoryDataChannel sharedMemory =
+            SharedMemoryDataChannel.create(SharedMemoryRingBuffer.MIN_CAPACITY)) {
+      ManagedChannel channel =
+          InProcessChannelBuilder.forName(server.getApiServiceDescriptor().getUrl()).build();
+      StreamObserver<Elements> clientInboundObserver =
+          TestStreams.withOnNext(clientInboundElements::add).build();
+      CallStreamObserver<Elements> grpcOutboundObserver =
+          (CallStreamObserver<Elements>)
+              BeamFnDataGrpc.newStub(channel)
+                  .withInterceptors(sharedMemory.offer())
+                  .data(sharedMemory.inboundObserver(clientInboundObserver));
+      assertTrue(sharedMemory.awaitAccepted(Duration.ofMinutes(1)));
+      StreamObserver<Elements> outboundObserver =
+          sharedMemory.connect(grpcOutboundObserver);
+
+      Collection<WindowedValue<String>> serverInboundValues = new ArrayList<>();
+      BeamFnDataInboundObserver inboundObserver =
+          BeamFnDataInboundObserver.forConsumers(
+              Arrays.asList(DataEndpoint.create(TRANSFORM_ID, CODER, serverInboundValues::add)),
+              Collections.emptyList());
+      service.registerReceiver("0", inboundObserver);
+      outboundObserver.onNext(elementsWithData("0"));
+      inboundObserver.awaitCompletion();
+      assertThat(
+          serverInboundValues,
+          contains(
+              WindowedValues.valueInGlobalWindow("A0"),
+              WindowedValues.valueInGlobalWindow("B0"),
+              WindowedValues.valueInGlobalWindow("C0")));
+
+      BeamFnDataOutboundAggregator aggregator = service.createOutboundAggregator(() -> "1", false);
+      aggregator.start();
+      FnDataReceiver<WindowedValue<String>> consumer =
+          aggregator.registerOutputDataLocation(TRANSFORM_ID, CODER);
+      consumer.accept(WindowedValues.valueInGlobalWindow("A1"));
+      consumer.accept(WindowedValues.valueInGlobalWindow("B1"));
+      consumer.accept(WindowedValues.valueInGlobalWindow("C1"));
+      aggregator.sendOrCollectBufferedDataAndFinishOutboundStreams();
+      assertEquals(elementsWithData("1"), clientInboundElements.take());
+
+      outboundObserver.onCompleted();
+      channel.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testSharedMemoryDataChannelConnect() throws Exception {
+    final LinkedBlockingQueue<Elements> clientInboundElements = new LinkedBlockingQueue<>();
+    GrpcDataService service =
+        GrpcDataService.create(
+            PipelineOptionsFactory.create(),
+            Executors.newCachedThreadPool(),
+            OutboundObserverFactory.serverDirect());
+    try (GrpcFnServer<GrpcDataService> server =
+            GrpcFnServer.allocatePortAndCreateFor(service, InProcessServerFactory.create());
+        SharedMemoryDataChannel sharedMemory =
+            SharedMemoryDataChannel.create(SharedMemoryRingBuffer.MIN_CAPACITY)) {
+      ManagedChannel channel =
+          InProcessChannelBuilder.forName(server.getApiServiceDescriptor().getUrl()).build();
+      StreamObserver<Elements> clientInboundObserver =
+          TestStreams.withOnNext(clientInboundElements::add).build();
+      CallStreamObserver<Elements> grpcOutboundObserver =
+          (CallStreamObserver<Elements>)
+              BeamFnDataGrpc.newStub(channel)
+                  .withInterceptors(sharedMemory.offer())
+                  .data(sharedMemory.inboundObserver(clientInboundObserver));
+      // Connecting does not wait for the runner to answer the offer, so the first element may be
+      // sent on the gRPC stream and the second one through the ring buffer.
+      CallStreamObserver<Elements> outboundObserver =
+          sharedMemory.connect(grpcOutboundObserver);
+      Collection<WindowedValue<String>> serverInboundValues = new ArrayList<>();
+      BeamFnDataInboundObserver inboundObserver =
+          BeamFnDataInboundObserver.forConsumers(
+              Arrays.asList(DataEndpoint.create(TRANSFORM_ID, CODER, serverInboundValues::add)),
+              Collections.emptyList());
+      service.registerReceiver("0", inboundObserver);
+      outboundObserver.onNext(elementsWithData("0"));
+      inboundObserver.awaitCompletion();
+      assertTrue(sharedMemory.awaitAccepted(Duration.ofMinutes(1)));
+
+      BeamFnDataInboundObserver switchedInboundObserver =
+          BeamFnDataInboundObserver.forConsumers(
+              Arrays.asList(DataEndpoint.create(TRANSFORM_ID, CODER, serverInboundValues::add)),
+              Collections.emptyList());
+      service.registerReceiver("2", switchedInboundObserver);
+      outboundObserver.onNext(elementsWithData("2"));
+      switchedInboundObserver.awaitCompletion();
+      assertThat(
+          serverInboundValues,
+          contains(
+              WindowedValues.valueInGlobalWindow("A0"),
+              WindowedValues.valueInGlobalWindow("B0"),
+              WindowedValues.valueInGlobalWindow("C0"),
+              WindowedValues.valueInGlobalWindow("A2"),
+              WindowedValues.valueInGlobalWindow("B2"),
+              WindowedValues.valueInGlobalWindow("C2")));
+
+      BeamFnDataOutboundAggregator aggregator = service.createOutboundAggregator(() -> "1", false);
+      aggregator.start();
+      FnDataReceiver<WindowedValue<String>> consumer =
+          aggregator.registerOutputDataLocation(TRANSFORM_ID, CODER);
+      consumer.accept(WindowedValues.valueInGlobalWindow("A1"));
+      consumer.accept(WindowedValues.valueInGlobalWindow("B1"));
+      consumer.accept(WindowedValues.valueInGlobalWindow("C1"));
+      aggregator.sendOrCollectBufferedDataAndFinishOutboundStreams();
+      assertEquals(elementsWithData("1"), clientInboundElements.take());
+
+      outboundObserver.onCompleted();
+      channel.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testSharedMemoryDataChannelCompletingOutboundKeepsInbound() throws Exception {
+    final LinkedBlockingQueue<Elements> clientInboundElements = new LinkedBlockingQueue<>();
+    GrpcDataService service =
+        GrpcDataService.create(
+            PipelineOptionsFactory.create(),
+            Executors.newCachedThreadPool(),
+            OutboundObserverFactory.serverDirect());
+    try (GrpcFnServer<GrpcDataService> server =
+            GrpcFnServer.allocatePortAndCreateFor(service, InProcessServerFactory.create());
+        SharedMemoryDataChannel sharedMemory =
+            SharedMemoryDataChannel.create(SharedMemoryRingBuffer.MIN_CAPACITY)) {
+      ManagedChannel channel =
+          InProcessChannelBuilder.forName(server.getApiServiceDescriptor().getUrl()).build();
+      StreamObserver<Elements> clientInboundObserver =
+          TestStreams.withOnNext(clientInboundElements::add).build();
+      CallStreamObserver<Elements> grpcOutboundObserver =
+          (CallStreamObserver<Elements>)
+              BeamFnDataGrpc.newStub(channel)
+                  .withInterceptors(sharedMemory.offer())
+                  .data(sharedMemory.inboundObserver(clientInboundObserver));
+      assertTrue(sharedMemory.awaitAccepted(Duration.ofMinutes(1)));
+      StreamObserver<Elements> outboundObserver =
+          sharedMemory.connect(grpcOutboundObserver);
+
+      BeamFnDataInboundObserver inboundObserver =
+          BeamFnDataInboundObserver.forConsumers(
+              Arrays.asList(DataEndpoint.create(TRANSFORM_ID, CODER, value -> {})),
+              Collections.emptyList());
+      service.registerReceiver("0", inboundObserver);
+      outboundObserver.onNext(elementsWithData("0"));
+      inboundObserver.awaitCompletion();
+      // Only the client's outbound direction is finished.
+      outboundObserver.onCompleted();
+
+      BeamFnDataOutboundAggregator aggregator = service.createOutboundAggregator(() -> "1", false);
+      aggregator.start();
+      FnDataReceiver<WindowedValue<String>> consumer =
+          aggregator.registerOutputDataLocation(TRANSFORM_ID, CODER);
+      consumer.accept(WindowedValues.valueInGlobalWindow("A1"));
+      consumer.accept(WindowedValues.valueInGlobalWindow("B1"));
+      consumer.accept(WindowedValues.valueInGlobalWindow("C1"));
+      aggregator.sendOrCollectBufferedDataAndFinishOutboundStreams();
+      assertEquals(elementsWithData("1"), clientInboundElements.take());
+
+      channel.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testSharedMemoryDataChannelCompletesAfterRingBufferElements() throws Exception {
+    List<Elements> expected = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      expected.add(elementsWithData(Integer.toString(i)));
+    }
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    String name = InProcessServerBuilder.generateName();
+    Server server =
+        InProcessServerBuilder.forName(name)
+            .addService(
+                ServerInterceptors.intercept(
+                    new BeamFnDataGrpc.BeamFnDataImplBase() {
+                      @Override
+                      public StreamObserver<Elements> data(
+                          StreamObserver<Elements> outboundElementObserver) {
+                        SharedMemoryDataChannel runnerChannel =
+                            checkStateNotNull(SharedMemoryDataChannel.acceptOffer());
+                        StreamObserver<Elements> ringObserver =
+                            runnerChannel.outboundObserver(outboundElementObserver);
+                        // Completing right after the last element lets the completion of the
+                        // call overtake the elements that are still in the ring buffer.
+                        executor.execute(
+                            () -> {
+                              expected.forEach(ringObserver::onNext);
+                              ringObserver.onCompleted();
+                            });
+                        return runnerChannel.inboundObserver(
+                            TestStreams.<Elements>withOnNext(value -> {}).build());
+                      }
+                    },
+                    SharedMemoryDataChannel.serverInterceptor()))
+            .build()
+            .start();
+    ManagedChannel channel = InProcessChannelBuilder.forName(name).build();
+    try (SharedMemoryDataChannel sharedMemory =
+        SharedMemoryDataChannel.create(SharedMemoryRingBuffer.MIN_CAPACITY)) {
+      List<Elements> clientInboundElements = Collections.synchronizedList(new ArrayList<>());
+      CompletableFuture<List<Elements>> completedWith = new CompletableFuture<>();
+      StreamObserver<Elements> clientInboundObserver =
+          TestStreams.withOnNext(clientInboundElements::add)
+              .withOnCompleted(
+                  () -> completedWith.complete(new ArrayList<>(clientInboundElements)))
+              .build();
+      sharedMemory.connect(
+          (CallStreamObserver<Elements>)
+              BeamFnDataGrpc.newStub(channel)
+                  .withInterceptors(sharedMemory.offer())
+                  .data(sharedMemory.inboundObserver(clientInboundObserver)));
+
+      assertEquals(expected, completedWith.get());
+    } finally {
+      channel.shutdownNow();
+      server.shutdownNow();
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testClosingServiceClosesSharedMemoryDataChannel() throws Exception {
+    GrpcDataService service =
+        GrpcDataService.create(
+            PipelineOptionsFactory.create(),
+            Executors.newCachedThreadPool(),
+            OutboundObserverFactory.serverDirect());
+    try (GrpcFnServer<GrpcDataService> server =
+            GrpcFnServer.allocatePortAndCreateFor(service, InProcessServerFactory.create());
+        SharedMemoryDataChannel sharedMemory =
+            SharedMemoryDataChannel.create(SharedMemoryRingBuffer.MIN_CAPACITY)) {
+      ManagedChannel channel =
+          InProcessChannelBuilder.forName(server.getApiServiceDescriptor().getUrl()).build();
+      StreamObserver<Elements> clientInboundObserver = TestStreams.withOnNext(value -> {}).build();
+      CallStreamObserver<Elements> grpcOutboundObserver =
+          (CallStreamObserver<Elements>)
+              BeamFnDataGrpc.newStub(channel)
+                  .withInterceptors(sharedMemory.offer())
+                  .data(sharedMemory.inboundObserver(clientInboundObserver));
+      assertTrue(sharedMemory.awaitAccepted(Duration.ofMinutes(1)));
+      StreamObserver<Elements> outboundObserver =
+          sharedMemory.connect(grpcOutboundObserver);
+
+      service.close();
+      // The runner closed both ring buffers, so the client can no longer send through them.
+      assertThrows(
+          StatusRuntimeException.class, () -> outboundObserver.onNext(elementsWithData("0")));
+      channel.shutdownNow();
+    }
+  }
+
   private BeamFnApi.Elements elementsWithData(String id) throws CoderException {
     return BeamFnApi.Elements.newBuilder()
         .addData(
@@ -25,6 +25,9 @@ import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.BlockingDeque;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.LinkedBlockingDeque;
@@ -131,4 +134,73 @@ public class GrpcStateServiceTest {
     verify(recordingResponseObserver, never()).onError(any());
     assertThat(response.getGet().getData(), equalTo(expectedResponseData));
   }
+
+  @Test
+  public void testMutationBatchAppliedInOrder() throws Exception {
+    String bundleInstructionId = "EXPECTED_BUNDLE_INSTRUCTION_ID";
+    List<BeamFnApi.StateRequest> handledRequests = new ArrayList<>();
+    StateRequestHandler recordingHandler =
+        request -> {
+          handledRequests.add(request);
+          BeamFnApi.StateResponse.Builder response = BeamFnApi.StateResponse.newBuilder();
+          if (request.hasClear() && request.getStateKey().getBagUserState().getKey().isEmpty()) {
+            response.setError("EXPECTED_ERROR");
+          }
+          return CompletableFuture.completedFuture(response);
+        };
+    BlockingDeque<BeamFnApi.StateResponse> responses = new LinkedBlockingDeque<>();
+    stateService.registerForProcessBundleInstructionId(bundleInstructionId, recordingHandler);
+    StreamObserver<BeamFnApi.StateRequest> requestObserver =
+        stateService.state(TestStreams.withOnNext(responses::add).build());
+
+    BeamFnApi.StateRequest clear =
+        BeamFnApi.StateRequest.newBuilder()
+            .setInstructionId(bundleInstructionId)
+            .setStateKey(
+                BeamFnApi.StateKey.newBuilder()
+                    .setBagUserState(
+                        BeamFnApi.StateKey.BagUserState.newBuilder()
+                            .setKey(ByteString.copyFromUtf8("key"))))
+            .setClear(BeamFnApi.StateClearRequest.getDefaultInstance())
+            .build();
+    BeamFnApi.StateRequest append =
+        clear
+            .toBuilder()
+            .setAppend(
+                BeamFnApi.StateAppendRequest.newBuilder().setData(ByteString.copyFromUtf8("A")))
+            .build();
+    requestObserver.onNext(
+        BeamFnApi.StateRequest.newBuilder()
+            .setId("batch")
+            .setInstructionId(bundleInstructionId)
+            .setMutationBatch(
+                BeamFnApi.StateMutationBatchRequest.newBuilder()
+                    .addRequests(clear)
+                    .addRequests(append))
+            .build());
+
+    BeamFnApi.StateResponse response = responses.poll(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+    assertThat(response.getId(), equalTo("batch"));
+    assertThat(response.getError(), equalTo(""));
+    assertThat(response.hasMutationBatch(), equalTo(true));
+    assertThat(handledRequests, equalTo(Arrays.asList(clear, append)));
+
+    // The requests following a failed request are not applied.
+    BeamFnApi.StateRequest failingClear = clear.toBuilder().clearStateKey().build();
+    handledRequests.clear();
+    requestObserver.onNext(
+        BeamFnApi.StateRequest.newBuilder()
+            .setId("failingBatch")
+            .setInstructionId(bundleInstructionId)
+            .setMutationBatch(
+                BeamFnApi.StateMutationBatchRequest.newBuilder()
+                    .addRequests(failingClear)
+                    .addRequests(append))
+            .build());
+
+    response = responses.poll(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+    assertThat(response.getId(), equalTo("failingBatch"));
+    assertThat(response.getError(), equalTo("EXPECTED_ERROR"));
+    assertThat(handledRequests, equalTo(Arrays.asList(failingClear)));
+  }
 }
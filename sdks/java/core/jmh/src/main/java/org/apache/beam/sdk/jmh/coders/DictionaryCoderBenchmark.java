@@ -0,0 +1,148 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.jmh.coders;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.coders.DictionaryIterableCoder;
+import org.apache.beam.sdk.coders.IterableCoder;
+import org.apache.beam.sdk.coders.RowBatchCoder;
+import org.apache.beam.sdk.coders.SnappyCoder;
+import org.apache.beam.sdk.coders.StringUtf8Coder;
+import org.apache.beam.sdk.coders.ZstdCoder;
+import org.apache.beam.sdk.schemas.Schema;
+import org.apache.beam.sdk.util.CoderUtils;
+import org.apache.beam.sdk.values.Row;
+import org.apache.beam.sdk.values.RowBatch;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmarks for {@link DictionaryIterableCoder} and {@link RowBatchCoder#withStringDictionary}
+ * against the plain and block compressed encodings of the same repetitive values.
+ */
+public class DictionaryCoderBenchmark {
+  private static final int NUM_ELEMENTS = 4096;
+
+  private static String[] distinctValues(int count) {
+    String[] values = new String[count];
+    for (int i = 0; i < count; ++i) {
+      values[i] = "category-value-" + i;
+    }
+    return values;
+  }
+
+  /** Iterables of strings drawn from a small set of distinct values. */
+  @State(Scope.Benchmark)
+  public static class IterableState {
+    @Param({"plain", "dictionary", "snappy", "zstd"})
+    String encoding;
+
+    @Param({"16", "1024"})
+    int distinctValues;
+
+    Coder<Iterable<String>> coder;
+    List<String> values;
+    byte[] encoded;
+
+    @Setup
+    public void setup() throws IOException {
+      Coder<Iterable<String>> plain = IterableCoder.of(StringUtf8Coder.of());
+      switch (encoding) {
+        case "plain":
+          coder = plain;
+          break;
+        case "dictionary":
+          coder = DictionaryIterableCoder.of(StringUtf8Coder.of());
+          break;
+        case "snappy":
+          coder = SnappyCoder.of(plain);
+          break;
+        case "zstd":
+          coder = ZstdCoder.of(plain);
+          break;
+        default:
+          throw new IllegalArgumentException("Unknown encoding " + encoding);
+      }
+      String[] distinct = distinctValues(distinctValues);
+      Random random = new Random(314159);
+      values = new ArrayList<>(NUM_ELEMENTS);
+      for (int i = 0; i < NUM_ELEMENTS; ++i) {
+        values.add(distinct[random.nextInt(distinct.length)]);
+      }
+      encoded = CoderUtils.encodeToByteArray(coder, values);
+    }
+  }
+
+  /** Row batches with a repetitive string field and a unique numeric field. */
+  @State(Scope.Benchmark)
+  public static class RowBatchState {
+    @Param({"false", "true"})
+    boolean stringDictionary;
+
+    RowBatchCoder coder;
+    RowBatch batch;
+    byte[] encoded;
+
+    @Setup
+    public void setup() throws IOException {
+      Schema schema = Schema.builder().addStringField("status").addInt64Field("id").build();
+      coder = RowBatchCoder.of(schema);
+      if (stringDictionary) {
+        coder = coder.withStringDictionary();
+      }
+      String[] distinct = distinctValues(16);
+      Random random = new Random(314159);
+      List<Row> rows = new ArrayList<>(NUM_ELEMENTS);
+      for (int i = 0; i < NUM_ELEMENTS; ++i) {
+        rows.add(
+            Row.withSchema(schema)
+                .addValues(distinct[random.nextInt(distinct.length)], (long) i)
+                .build());
+      }
+      batch = RowBatch.of(schema, rows);
+      encoded = CoderUtils.encodeToByteArray(coder, batch);
+    }
+  }
+
+  @Benchmark
+  public byte[] encodeIterable(IterableState state) throws IOException {
+    return CoderUtils.encodeToByteArray(state.coder, state.values);
+  }
+
+  @Benchmark
+  public Iterable<String> decodeIterable(IterableState state) throws IOException {
+    return CoderUtils.decodeFromByteArray(state.coder, state.encoded);
+  }
+
+  @Benchmark
+  public byte[] encodeRowBatch(RowBatchState state) throws IOException {
+    return CoderUtils.encodeToByteArray(state.coder, state.batch);
+  }
+
+  @Benchmark
+  public RowBatch decodeRowBatch(RowBatchState state) throws IOException {
+    return CoderUtils.decodeFromByteArray(state.coder, state.encoded);
+  }
+}
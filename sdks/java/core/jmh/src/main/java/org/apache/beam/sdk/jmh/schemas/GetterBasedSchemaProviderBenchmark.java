@@ -17,6 +17,8 @@
  */
 package org.apache.beam.sdk.jmh.schemas;
 
+import java.io.IOException;
+import org.apache.beam.sdk.coders.RowCoder;
 import org.apache.beam.sdk.jmh.schemas.RowBundles.ArrayOfNestedStringBundle;
 import org.apache.beam.sdk.jmh.schemas.RowBundles.ArrayOfStringBundle;
 import org.apache.beam.sdk.jmh.schemas.RowBundles.ByteBufferBundle;
@@ -30,9 +32,18 @@ import org.apache.beam.sdk.jmh.schemas.RowBundles.NestedIntBundle;
 import org.apache.beam.sdk.jmh.schemas.RowBundles.StringBuilderBundle;
 import org.apache.beam.sdk.jmh.schemas.RowBundles.StringBundle;
 import org.apache.beam.sdk.schemas.GetterBasedSchemaProvider;
+import org.apache.beam.sdk.schemas.JavaFieldSchema;
+import org.apache.beam.sdk.schemas.NoSuchSchemaException;
+import org.apache.beam.sdk.schemas.SchemaCoder;
+import org.apache.beam.sdk.schemas.SchemaRegistry;
+import org.apache.beam.sdk.schemas.annotations.DefaultSchema;
+import org.apache.beam.sdk.util.ByteStringOutputStream;
+import org.apache.beam.sdk.util.CoderUtils;
 import org.apache.beam.sdk.values.RowWithGetters;
 import org.apache.beam.sdk.values.TypeDescriptor;
 import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
 import org.openjdk.jmh.annotations.State;
 import org.openjdk.jmh.infra.Blackhole;
 
@@ -56,6 +67,10 @@ import org.openjdk.jmh.infra.Blackhole;
  *       different benchmarks: nested structures are read recursively and collections / maps are
  *       iterated through.
  * </ul>
+ *
+ * <p>The {@code *PrimitivePojo*} benchmarks measure encoding and decoding a POJO with primitive
+ * fields with its {@link SchemaCoder}, which works on the object directly, against converting it to
+ * and from a {@link org.apache.beam.sdk.values.Row} encoded with {@link RowCoder}.
  */
 public class GetterBasedSchemaProviderBenchmark {
   @Benchmark
@@ -117,4 +132,67 @@ public class GetterBasedSchemaProviderBenchmark {
   public void processMapOfNestedIntField(MapOfNestedIntBundle state, Blackhole bh) {
     state.processRows(bh);
   }
+
+  @Benchmark
+  public void encodePrimitivePojo(PrimitivePojoState state, Blackhole bh) throws IOException {
+    state.coder.encode(state.pojo, state.output);
+    bh.consume(state.output.toByteStringAndReset());
+  }
+
+  @Benchmark
+  public void encodePrimitivePojoViaRow(PrimitivePojoState state, Blackhole bh)
+      throws IOException {
+    state.rowCoder.encode(state.coder.getToRowFunction().apply(state.pojo), state.output);
+    bh.consume(state.output.toByteStringAndReset());
+  }
+
+  @Benchmark
+  public PrimitivePojo decodePrimitivePojo(PrimitivePojoState state) throws IOException {
+    return CoderUtils.decodeFromByteArray(state.coder, state.encoded);
+  }
+
+  @Benchmark
+  public PrimitivePojo decodePrimitivePojoViaRow(PrimitivePojoState state) throws IOException {
+    return state
+        .coder
+        .getFromRowFunction()
+        .apply(CoderUtils.decodeFromByteArray(state.rowCoder, state.encoded));
+  }
+
+  /** A POJO with only primitive fields and a string. */
+  @DefaultSchema(JavaFieldSchema.class)
+  public static class PrimitivePojo {
+    public int intField;
+    public long longField;
+    public double doubleField;
+    public float floatField;
+    public boolean booleanField;
+    public short shortField;
+    public String stringField;
+  }
+
+  /** A {@link PrimitivePojo} with its {@link SchemaCoder} and encoded form. */
+  @State(Scope.Thread)
+  public static class PrimitivePojoState {
+    final ByteStringOutputStream output = new ByteStringOutputStream();
+    SchemaCoder<PrimitivePojo> coder;
+    RowCoder rowCoder;
+    PrimitivePojo pojo;
+    byte[] encoded;
+
+    @Setup
+    public void setup() throws NoSuchSchemaException, IOException {
+      coder = SchemaRegistry.createDefault().getSchemaCoder(PrimitivePojo.class);
+      rowCoder = RowCoder.of(coder.getSchema());
+      pojo = new PrimitivePojo();
+      pojo.intField = 123456;
+      pojo.longField = 1234567890123L;
+      pojo.doubleField = 3.25;
+      pojo.floatField = 1.5f;
+      pojo.booleanField = true;
+      pojo.shortField = 42;
+      pojo.stringField = "string";
+      encoded = CoderUtils.encodeToByteArray(coder, pojo);
+    }
+  }
 }
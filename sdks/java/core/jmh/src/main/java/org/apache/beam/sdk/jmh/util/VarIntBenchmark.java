@@ -17,10 +17,15 @@
  */
 package org.apache.beam.sdk.jmh.util;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.util.Random;
+import org.apache.beam.sdk.coders.VarLongCoder;
 import org.apache.beam.sdk.util.ByteStringOutputStream;
+import org.apache.beam.sdk.util.VarInt;
 import org.openjdk.jmh.annotations.Benchmark;
 import org.openjdk.jmh.annotations.Level;
 import org.openjdk.jmh.annotations.OperationsPerInvocation;
@@ -100,7 +105,11 @@ public class VarIntBenchmark {
 
     @Setup
     public void setup() {
-      values = new long[VALUES_PER_INVOCATION];
+      values = randomLongs();
+    }
+
+    static long[] randomLongs() {
+      long[] values = new long[VALUES_PER_INVOCATION];
 
       for (int i = 0; i < VALUES_PER_INVOCATION; i++) {
         // This gaussian random is used to determine the encoded output size of the sample.
@@ -118,6 +127,35 @@ public class VarIntBenchmark {
 
         values[i] = (RNG.nextLong() & mask) | low;
       }
+      return values;
+    }
+  }
+
+  /** Input from the VarInt encoding of randomly generated longs. */
+  @State(Scope.Benchmark)
+  public static class EncodedLongs {
+    byte[] bytes = new byte[0];
+
+    @Setup
+    public void setup() throws IOException {
+      ByteStringOutputStream stream = new ByteStringOutputStream();
+      for (long l : Longs.randomLongs()) {
+        VarInt.encode(l, stream);
+      }
+      bytes = stream.toByteString().toByteArray();
+    }
+  }
+
+  /** Output to a heap {@link ByteBuffer} that is large enough for any input. */
+  @State(Scope.Thread)
+  public static class ByteBufferOutput {
+    // A long takes at most 10 bytes.
+    final ByteBuffer buffer = ByteBuffer.allocate(VALUES_PER_INVOCATION * 10);
+
+    @TearDown(Level.Invocation)
+    public void tearDown(Blackhole bh) {
+      bh.consume(buffer.position());
+      buffer.clear();
     }
   }
 
@@ -300,4 +338,52 @@ public class VarIntBenchmark {
       encodeUnrolled(l, output.stream);
     }
   }
+
+  @Benchmark
+  public void encodeVarIntByteString(Longs input, ByteStringOutput output) throws IOException {
+    for (long l : input.values) {
+      VarInt.encode(l, output.stream);
+    }
+  }
+
+  @Benchmark
+  public void encodeVarIntByteBuffer(Longs input, ByteBufferOutput output) {
+    for (long l : input.values) {
+      VarInt.encode(l, output.buffer);
+    }
+  }
+
+  @Benchmark
+  public void encodeVarLongCoderByteString(Longs input, ByteStringOutput output)
+      throws IOException {
+    VarLongCoder coder = VarLongCoder.of();
+    for (long l : input.values) {
+      coder.encode(l, output.stream);
+    }
+  }
+
+  @Benchmark
+  public void encodeVarLongCoderByteBuffer(Longs input, ByteBufferOutput output)
+      throws IOException {
+    VarLongCoder coder = VarLongCoder.of();
+    for (long l : input.values) {
+      coder.encode(l, output.buffer);
+    }
+  }
+
+  @Benchmark
+  public void decodeVarIntStream(EncodedLongs input, Blackhole bh) throws IOException {
+    InputStream stream = new ByteArrayInputStream(input.bytes);
+    for (int i = 0; i < VALUES_PER_INVOCATION; i++) {
+      bh.consume(VarInt.decodeLong(stream));
+    }
+  }
+
+  @Benchmark
+  public void decodeVarIntByteBuffer(EncodedLongs input, Blackhole bh) throws IOException {
+    ByteBuffer buffer = ByteBuffer.wrap(input.bytes);
+    for (int i = 0; i < VALUES_PER_INVOCATION; i++) {
+      bh.consume(VarInt.decodeLong(buffer));
+    }
+  }
 }
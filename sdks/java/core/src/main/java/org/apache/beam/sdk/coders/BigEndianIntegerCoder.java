@@ -22,10 +22,12 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.UTFDataFormatException;
+import java.nio.ByteBuffer;
 import org.apache.beam.sdk.values.TypeDescriptor;
 
 /** A {@link BigEndianIntegerCoder} encodes {@link Integer Integers} in 4 bytes, big-endian. */
-public class BigEndianIntegerCoder extends AtomicCoder<Integer> {
+public class BigEndianIntegerCoder extends AtomicCoder<Integer>
+    implements ByteBufferCoder<Integer> {
 
   public static BigEndianIntegerCoder of() {
     return INSTANCE;
@@ -57,6 +59,19 @@ public class BigEndianIntegerCoder extends AtomicCoder<Integer> {
     }
   }
 
+  @Override
+  public void encode(Integer value, ByteBuffer buffer) throws CoderException {
+    if (value == null) {
+      throw new CoderException("cannot encode a null Integer");
+    }
+    buffer.putInt(value);
+  }
+
+  @Override
+  public Integer decode(ByteBuffer buffer) {
+    return buffer.getInt();
+  }
+
   @Override
   public void verifyDeterministic() {}
 
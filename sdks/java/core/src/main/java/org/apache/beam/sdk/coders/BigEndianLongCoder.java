@@ -22,10 +22,11 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.UTFDataFormatException;
+import java.nio.ByteBuffer;
 import org.apache.beam.sdk.values.TypeDescriptor;
 
 /** A {@link BigEndianLongCoder} encodes {@link Long Longs} in 8 bytes, big-endian. */
-public class BigEndianLongCoder extends AtomicCoder<Long> {
+public class BigEndianLongCoder extends AtomicCoder<Long> implements ByteBufferCoder<Long> {
 
   public static BigEndianLongCoder of() {
     return INSTANCE;
@@ -57,6 +58,19 @@ public class BigEndianLongCoder extends AtomicCoder<Long> {
     }
   }
 
+  @Override
+  public void encode(Long value, ByteBuffer buffer) throws CoderException {
+    if (value == null) {
+      throw new CoderException("cannot encode a null Long");
+    }
+    buffer.putLong(value);
+  }
+
+  @Override
+  public Long decode(ByteBuffer buffer) {
+    return buffer.getLong();
+  }
+
   @Override
   public void verifyDeterministic() {}
 
@@ -22,10 +22,11 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.UTFDataFormatException;
+import java.nio.ByteBuffer;
 import org.apache.beam.sdk.values.TypeDescriptor;
 
 /** A {@link BigEndianShortCoder} encodes {@link Short Shorts} in 2 bytes, big-endian. */
-public class BigEndianShortCoder extends AtomicCoder<Short> {
+public class BigEndianShortCoder extends AtomicCoder<Short> implements ByteBufferCoder<Short> {
 
   public static BigEndianShortCoder of() {
     return INSTANCE;
@@ -57,6 +58,19 @@ public class BigEndianShortCoder extends AtomicCoder<Short> {
     }
   }
 
+  @Override
+  public void encode(Short value, ByteBuffer buffer) throws CoderException {
+    if (value == null) {
+      throw new CoderException("cannot encode a null Short");
+    }
+    buffer.putShort(value);
+  }
+
+  @Override
+  public Short decode(ByteBuffer buffer) {
+    return buffer.getShort();
+  }
+
   @Override
   public void verifyDeterministic() {}
 
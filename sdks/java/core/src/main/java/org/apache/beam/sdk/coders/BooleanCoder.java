@@ -20,9 +20,10 @@ package org.apache.beam.sdk.coders;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 
 /** A {@link Coder} for {@link Boolean}. */
-public class BooleanCoder extends AtomicCoder<Boolean> {
+public class BooleanCoder extends AtomicCoder<Boolean> implements ByteBufferCoder<Boolean> {
   private static final ByteCoder BYTE_CODER = ByteCoder.of();
 
   private static final BooleanCoder INSTANCE = new BooleanCoder();
@@ -48,6 +49,22 @@ public class BooleanCoder extends AtomicCoder<Boolean> {
     throw new IOException(String.format("Expected 0 or 1, got %d", value));
   }
 
+  @Override
+  public void encode(Boolean value, ByteBuffer buffer) {
+    buffer.put(value ? (byte) 1 : 0);
+  }
+
+  @Override
+  public Boolean decode(ByteBuffer buffer) throws IOException {
+    byte value = buffer.get();
+    if (value == 0) {
+      return false;
+    } else if (value == 1) {
+      return true;
+    }
+    throw new IOException(String.format("Expected 0 or 1, got %d", value));
+  }
+
   @Override
   public boolean consistentWithEquals() {
     return true;
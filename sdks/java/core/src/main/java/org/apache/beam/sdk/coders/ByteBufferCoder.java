@@ -0,0 +1,51 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.coders;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A {@link Coder} that can also encode directly into and decode directly from a {@link ByteBuffer}.
+ *
+ * <p>The bytes produced are identical to those written by {@link Coder#encode(Object,
+ * java.io.OutputStream)}, i.e. the nested encoding. Working on a buffer avoids the per-byte virtual
+ * calls and the stream wrappers of the stream based API, and lets primitive values be written with
+ * bulk puts and gets.
+ *
+ * <p>Buffers must use {@link java.nio.ByteOrder#BIG_ENDIAN}, the default for {@link ByteBuffer}.
+ * Encoding starts at the buffer's position and advances it past the written bytes; decoding does
+ * the same for the bytes read. Encoding throws {@link java.nio.BufferOverflowException} if the
+ * buffer does not have enough space remaining, in which case the buffer's position is undefined.
+ * Decoding throws {@link java.nio.BufferUnderflowException} if the buffer is truncated.
+ *
+ * <p>Callers that hold an arbitrary {@link Coder} should use {@link
+ * org.apache.beam.sdk.util.CoderUtils#encodeToByteBuffer} and {@link
+ * org.apache.beam.sdk.util.CoderUtils#decodeFromByteBuffer}, which use this interface when it is
+ * implemented and fall back to the stream based API otherwise.
+ *
+ * @param <T> the type of values being encoded and decoded
+ */
+public interface ByteBufferCoder<T> {
+
+  /** Encodes {@code value} into {@code buffer} at its current position. */
+  void encode(T value, ByteBuffer buffer) throws IOException;
+
+  /** Decodes a value from {@code buffer} starting at its current position. */
+  T decode(ByteBuffer buffer) throws IOException;
+}
@@ -22,10 +22,11 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.UTFDataFormatException;
+import java.nio.ByteBuffer;
 import org.apache.beam.sdk.values.TypeDescriptor;
 
 /** A {@link ByteCoder} encodes {@link Byte} values in 1 byte using Java serialization. */
-public class ByteCoder extends AtomicCoder<Byte> {
+public class ByteCoder extends AtomicCoder<Byte> implements ByteBufferCoder<Byte> {
 
   public static ByteCoder of() {
     return INSTANCE;
@@ -62,6 +63,19 @@ public class ByteCoder extends AtomicCoder<Byte> {
     }
   }
 
+  @Override
+  public void encode(Byte value, ByteBuffer buffer) throws CoderException {
+    if (value == null) {
+      throw new CoderException("cannot encode a null Byte");
+    }
+    buffer.put(value);
+  }
+
+  @Override
+  public Byte decode(ByteBuffer buffer) {
+    return buffer.get();
+  }
+
   /**
    * {@inheritDoc}
    *
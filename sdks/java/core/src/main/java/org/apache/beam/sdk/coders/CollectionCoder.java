@@ -26,7 +26,8 @@ import org.apache.beam.sdk.values.TypeParameter;
  * A {@link CollectionCoder} encodes {@link Collection Collections} in the format of {@link
  * IterableLikeCoder}.
  */
-public class CollectionCoder<T> extends IterableLikeCoder<T, Collection<T>> {
+public class CollectionCoder<T> extends IterableLikeCoder<T, Collection<T>>
+    implements ByteBufferCoder<Collection<T>> {
 
   public static <T> CollectionCoder<T> of(Coder<T> elemCoder) {
     return new CollectionCoder<>(elemCoder);
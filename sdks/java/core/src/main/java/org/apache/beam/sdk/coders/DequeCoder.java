@@ -29,7 +29,8 @@ import org.checkerframework.checker.nullness.qual.NonNull;
  *
  * @param <T> the type of the elements of the Deques being transcoded
  */
-public class DequeCoder<T extends @NonNull Object> extends IterableLikeCoder<T, Deque<T>> {
+public class DequeCoder<T extends @NonNull Object> extends IterableLikeCoder<T, Deque<T>>
+    implements ByteBufferCoder<Deque<T>> {
 
   public static <T extends @NonNull Object> DequeCoder<T> of(Coder<T> elemCoder) {
     return new DequeCoder<>(elemCoder);
@@ -0,0 +1,118 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.coders;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.beam.sdk.util.VarInt;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * The dictionary encoding shared by {@link DictionaryIterableCoder} and {@link RowBatchCoder}. It
+ * replaces values already written within one encoded value with back-references.
+ *
+ * <p>Each dictionary encoded value is preceded by a varint tag:
+ *
+ * <ul>
+ *   <li>{@link #LITERAL}: the value follows and is assigned the next dictionary id.
+ *   <li>{@link #UNINDEXED_LITERAL}: the value follows, but the dictionary is full so it is not
+ *       assigned an id.
+ *   <li>{@link #FIRST_REFERENCE} plus an id: the value is the one that was assigned that id.
+ * </ul>
+ *
+ * <p>Whether a literal was added to the dictionary is part of the encoding, so the decoder does not
+ * need to know the maximum dictionary size the encoder used. Tag {@link #END} is left to the
+ * enclosing format, e.g. to terminate a sequence of values.
+ */
+class DictionaryEncoding {
+  static final int END = 0;
+  static final int LITERAL = 1;
+  static final int UNINDEXED_LITERAL = 2;
+  static final int FIRST_REFERENCE = 3;
+
+  private DictionaryEncoding() {}
+
+  /** Assigns ids to the distinct values written so far, up to a maximum number of values. */
+  static class Writer {
+    private final Map<@Nullable Object, Integer> ids = new HashMap<>();
+    private final int maxSize;
+
+    Writer(int maxSize) {
+      this.maxSize = maxSize;
+    }
+
+    /**
+     * Writes the tag for a value identified by {@code key}. Returns true if a back-reference was
+     * written, and false if a literal tag was written, in which case the caller must write the
+     * value next.
+     *
+     * <p>Keys must be equal exactly when the encodings of their values are equal.
+     */
+    boolean writeTag(@Nullable Object key, OutputStream outStream) throws IOException {
+      @Nullable Integer id = ids.get(key);
+      if (id != null) {
+        VarInt.encode(FIRST_REFERENCE + id, outStream);
+        return true;
+      }
+      if (ids.size() < maxSize) {
+        ids.put(key, ids.size());
+        VarInt.encode(LITERAL, outStream);
+      } else {
+        VarInt.encode(UNINDEXED_LITERAL, outStream);
+      }
+      return false;
+    }
+  }
+
+  /** Resolves the tags written by a {@link Writer}. */
+  static class Reader<T> {
+    private final List<T> values = new ArrayList<>();
+
+    /** Reads the next tag. */
+    int readTag(InputStream inStream) throws IOException {
+      int tag = VarInt.decodeInt(inStream);
+      if (tag < 0) {
+        throw new CoderException("Invalid dictionary tag " + tag);
+      }
+      return tag;
+    }
+
+    /** Returns the value referenced by a tag of at least {@link #FIRST_REFERENCE}. */
+    T lookup(int tag) throws CoderException {
+      int id = tag - FIRST_REFERENCE;
+      if (id >= values.size()) {
+        throw new CoderException(
+            "Dictionary reference " + id + " out of range, dictionary has " + values.size());
+      }
+      return values.get(id);
+    }
+
+    /** Records the value that followed a literal tag, adding it to the dictionary if indexed. */
+    T literal(int tag, T value) {
+      if (tag == LITERAL) {
+        values.add(value);
+      }
+      return value;
+    }
+  }
+}
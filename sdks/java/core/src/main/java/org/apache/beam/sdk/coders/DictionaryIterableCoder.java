@@ -0,0 +1,229 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.coders;
+
+import static org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.base.Preconditions.checkArgument;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import org.apache.beam.sdk.util.CoderUtils;
+import org.apache.beam.sdk.util.VarInt;
+import org.apache.beam.sdk.values.TypeDescriptor;
+import org.apache.beam.sdk.values.TypeParameter;
+import org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.collect.ImmutableSet;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * A {@link Coder} for {@link Iterable}s whose elements repeat a small set of values, such as the
+ * grouped values of a shuffle that carry the same country or status strings over and over.
+ *
+ * <p>The first occurrence of each distinct element within an iterable is encoded with the element
+ * coder and assigned a dictionary id; later occurrences are encoded as a varint back-reference to
+ * that id. The dictionary is scoped to a single encoded iterable, so each iterable can be decoded
+ * on its own. Once the dictionary holds {@code maxDictionarySize} values, new distinct elements are
+ * encoded in full without being added to it, which bounds the memory used by both the encoder and
+ * the decoder.
+ *
+ * <p>Elements are compared by value if the element coder is {@link Coder#consistentWithEquals()
+ * consistent with equals}, and by their encoded bytes otherwise.
+ *
+ * <p>Back-references decode to the same instance as the literal they refer to only if the element
+ * coder is known to decode immutable values, such as {@link StringUtf8Coder}. Otherwise each
+ * back-reference is decoded again from the encoding of the literal, so that mutating one decoded
+ * element does not change the others.
+ *
+ * <p>The encoding is not compatible with {@link IterableCoder}.
+ *
+ * @param <T> the type of the elements of the iterables being transcoded
+ */
+public class DictionaryIterableCoder<T> extends StructuredCoder<Iterable<T>> {
+  /** The default maximum number of distinct values in the dictionary of an encoded iterable. */
+  public static final int DEFAULT_MAX_DICTIONARY_SIZE = 4096;
+
+  // Coders whose decoded values are immutable, so that repeated elements may share an instance.
+  private static final ImmutableSet<Class<?>> IMMUTABLE_VALUE_CODERS =
+      ImmutableSet.of(
+          BigDecimalCoder.class,
+          BigEndianIntegerCoder.class,
+          BigEndianLongCoder.class,
+          BigEndianShortCoder.class,
+          BigIntegerCoder.class,
+          BooleanCoder.class,
+          ByteCoder.class,
+          DoubleCoder.class,
+          DurationCoder.class,
+          FloatCoder.class,
+          InstantCoder.class,
+          StringUtf8Coder.class,
+          VarIntCoder.class,
+          VarLongCoder.class);
+
+  public static <T> DictionaryIterableCoder<T> of(Coder<T> elemCoder) {
+    return of(elemCoder, DEFAULT_MAX_DICTIONARY_SIZE);
+  }
+
+  public static <T> DictionaryIterableCoder<T> of(Coder<T> elemCoder, int maxDictionarySize) {
+    checkArgument(
+        maxDictionarySize >= 0, "maxDictionarySize must be non-negative: %s", maxDictionarySize);
+    return new DictionaryIterableCoder<>(elemCoder, maxDictionarySize);
+  }
+
+  private final Coder<T> elemCoder;
+  private final int maxDictionarySize;
+  private final boolean sharesDecodedValues;
+
+  private DictionaryIterableCoder(Coder<T> elemCoder, int maxDictionarySize) {
+    this.elemCoder = elemCoder;
+    this.maxDictionarySize = maxDictionarySize;
+    Coder<?> valueCoder =
+        elemCoder instanceof NullableCoder
+            ? ((NullableCoder<?>) elemCoder).getValueCoder()
+            : elemCoder;
+    this.sharesDecodedValues = IMMUTABLE_VALUE_CODERS.contains(valueCoder.getClass());
+  }
+
+  public Coder<T> getElemCoder() {
+    return elemCoder;
+  }
+
+  public int getMaxDictionarySize() {
+    return maxDictionarySize;
+  }
+
+  @Override
+  public void encode(Iterable<T> iterable, OutputStream outStream)
+      throws IOException, CoderException {
+    if (iterable == null) {
+      throw new CoderException("cannot encode a null Iterable");
+    }
+    DictionaryEncoding.Writer dictionary = new DictionaryEncoding.Writer(maxDictionarySize);
+    boolean compareByValue = elemCoder.consistentWithEquals();
+    for (T elem : iterable) {
+      if (compareByValue) {
+        if (!dictionary.writeTag(elem, outStream)) {
+          elemCoder.encode(elem, outStream);
+        }
+      } else {
+        // The encoded bytes are needed as the dictionary key anyway, so write them out directly.
+        byte[] encoded = CoderUtils.encodeToByteArray(elemCoder, elem, Context.NESTED);
+        if (!dictionary.writeTag(new StructuralByteArray(encoded), outStream)) {
+          outStream.write(encoded);
+        }
+      }
+    }
+    VarInt.encode(DictionaryEncoding.END, outStream);
+  }
+
+  @Override
+  public Iterable<T> decode(InputStream inStream) throws IOException, CoderException {
+    if (!sharesDecodedValues) {
+      return decodeCopies(inStream);
+    }
+    DictionaryEncoding.Reader<T> dictionary = new DictionaryEncoding.Reader<>();
+    List<T> elements = new ArrayList<>();
+    for (int tag = dictionary.readTag(inStream);
+        tag != DictionaryEncoding.END;
+        tag = dictionary.readTag(inStream)) {
+      if (tag >= DictionaryEncoding.FIRST_REFERENCE) {
+        elements.add(dictionary.lookup(tag));
+      } else {
+        elements.add(dictionary.literal(tag, elemCoder.decode(inStream)));
+      }
+    }
+    return elements;
+  }
+
+  /**
+   * Decodes an iterable whose elements may be mutable. The dictionary holds the encodings of the
+   * literals, and each back-reference is decoded into a new instance.
+   */
+  private Iterable<T> decodeCopies(InputStream inStream) throws IOException, CoderException {
+    DictionaryEncoding.Reader<byte[]> dictionary = new DictionaryEncoding.Reader<>();
+    List<T> elements = new ArrayList<>();
+    for (int tag = dictionary.readTag(inStream);
+        tag != DictionaryEncoding.END;
+        tag = dictionary.readTag(inStream)) {
+      if (tag >= DictionaryEncoding.FIRST_REFERENCE) {
+        elements.add(
+            CoderUtils.decodeFromByteArray(elemCoder, dictionary.lookup(tag), Context.NESTED));
+      } else {
+        T elem = elemCoder.decode(inStream);
+        if (tag == DictionaryEncoding.LITERAL) {
+          dictionary.literal(tag, CoderUtils.encodeToByteArray(elemCoder, elem, Context.NESTED));
+        }
+        elements.add(elem);
+      }
+    }
+    return elements;
+  }
+
+  @Override
+  public List<? extends Coder<?>> getCoderArguments() {
+    return Collections.singletonList(elemCoder);
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * @throws NonDeterministicException always. Encoding is not deterministic for the same reasons
+   *     as for {@link IterableCoder}.
+   */
+  @Override
+  public void verifyDeterministic() throws NonDeterministicException {
+    throw new NonDeterministicException(
+        this, "DictionaryIterableCoder can not guarantee deterministic ordering.");
+  }
+
+  @Override
+  public Object structuralValue(Iterable<T> value) {
+    ArrayList<Object> result = new ArrayList<>();
+    for (T elem : value) {
+      result.add(elemCoder.structuralValue(elem));
+    }
+    return result;
+  }
+
+  @Override
+  public boolean equals(@Nullable Object o) {
+    if (!(o instanceof DictionaryIterableCoder) || !super.equals(o)) {
+      return false;
+    }
+    return maxDictionarySize == ((DictionaryIterableCoder<?>) o).maxDictionarySize;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(super.hashCode(), maxDictionarySize);
+  }
+
+  @Override
+  public String toString() {
+    return "DictionaryIterableCoder(" + elemCoder + ", " + maxDictionarySize + ")";
+  }
+
+  @Override
+  public TypeDescriptor<Iterable<T>> getEncodedTypeDescriptor() {
+    return new TypeDescriptor<Iterable<T>>() {}.where(
+        new TypeParameter<T>() {}, elemCoder.getEncodedTypeDescriptor());
+  }
+}
@@ -23,10 +23,11 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.UTFDataFormatException;
+import java.nio.ByteBuffer;
 import org.apache.beam.sdk.values.TypeDescriptor;
 
 /** A {@link DoubleCoder} encodes {@link Double} values in 8 bytes using Java serialization. */
-public class DoubleCoder extends AtomicCoder<Double> {
+public class DoubleCoder extends AtomicCoder<Double> implements ByteBufferCoder<Double> {
 
   public static DoubleCoder of() {
     return INSTANCE;
@@ -58,6 +59,19 @@ public class DoubleCoder extends AtomicCoder<Double> {
     }
   }
 
+  @Override
+  public void encode(Double value, ByteBuffer buffer) throws CoderException {
+    if (value == null) {
+      throw new CoderException("cannot encode a null Double");
+    }
+    buffer.putDouble(value);
+  }
+
+  @Override
+  public Double decode(ByteBuffer buffer) {
+    return buffer.getDouble();
+  }
+
   /**
    * {@inheritDoc}
    *
@@ -23,10 +23,11 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.UTFDataFormatException;
+import java.nio.ByteBuffer;
 import org.apache.beam.sdk.values.TypeDescriptor;
 
 /** A {@link FloatCoder} encodes {@link Float} values in 4 bytes using Java serialization. */
-public class FloatCoder extends AtomicCoder<Float> {
+public class FloatCoder extends AtomicCoder<Float> implements ByteBufferCoder<Float> {
 
   public static FloatCoder of() {
     return INSTANCE;
@@ -58,6 +59,19 @@ public class FloatCoder extends AtomicCoder<Float> {
     }
   }
 
+  @Override
+  public void encode(Float value, ByteBuffer buffer) throws CoderException {
+    if (value == null) {
+      throw new CoderException("cannot encode a null Float");
+    }
+    buffer.putFloat(value);
+  }
+
+  @Override
+  public Float decode(ByteBuffer buffer) {
+    return buffer.getFloat();
+  }
+
   /**
    * {@inheritDoc}
    *
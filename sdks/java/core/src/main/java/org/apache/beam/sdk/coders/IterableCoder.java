@@ -27,7 +27,8 @@ import org.apache.beam.sdk.values.TypeParameter;
  *
  * @param <T> the type of the elements of the iterables being transcoded
  */
-public class IterableCoder<T> extends IterableLikeCoder<T, Iterable<T>> {
+public class IterableCoder<T> extends IterableLikeCoder<T, Iterable<T>>
+    implements ByteBufferCoder<Iterable<T>> {
 
   public static <T> IterableCoder<T> of(Coder<T> elemCoder) {
     return new IterableCoder<>(elemCoder);
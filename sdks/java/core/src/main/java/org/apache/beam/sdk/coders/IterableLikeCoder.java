@@ -22,6 +22,7 @@ import static org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.base.Pr
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -29,6 +30,7 @@ import java.util.List;
 import java.util.Observable;
 import java.util.Observer;
 import org.apache.beam.sdk.util.BufferedElementCountingOutputStream;
+import org.apache.beam.sdk.util.CoderUtils;
 import org.apache.beam.sdk.util.VarInt;
 import org.apache.beam.sdk.util.common.ElementByteSizeObservableIterable;
 import org.apache.beam.sdk.util.common.ElementByteSizeObserver;
@@ -153,6 +155,58 @@ public abstract class IterableLikeCoder<T, IterableT extends Iterable<T>>
     }
   }
 
+  /**
+   * Encodes {@code iterable} into {@code buffer}, producing the same bytes as {@link
+   * #encode(Iterable, OutputStream)}. Subclasses that do not override the stream based encoding can
+   * implement {@link ByteBufferCoder} with this method.
+   */
+  public void encode(IterableT iterable, ByteBuffer buffer) throws IOException, CoderException {
+    if (iterable == null) {
+      throw new CoderException("cannot encode a null " + iterableName);
+    }
+    if (iterable instanceof Collection) {
+      Collection<T> collection = (Collection<T>) iterable;
+      buffer.putInt(collection.size());
+      for (T elem : collection) {
+        CoderUtils.encodeToByteBuffer(elementCoder, elem, buffer);
+      }
+    } else {
+      // The block counts are only known once the elements are buffered, so reuse the stream
+      // encoding.
+      encode(iterable, CoderUtils.asOutputStream(buffer));
+    }
+  }
+
+  /**
+   * Decodes an iterable from {@code buffer}, reading the format written by {@link
+   * #encode(Iterable, OutputStream)}. Subclasses that do not override the stream based decoding can
+   * implement {@link ByteBufferCoder} with this method.
+   */
+  public IterableT decode(ByteBuffer buffer) throws IOException, CoderException {
+    int size = buffer.getInt();
+    if (size >= 0) {
+      List<T> elements = new ArrayList<>(size);
+      for (int i = 0; i < size; i++) {
+        elements.add(CoderUtils.decodeFromByteBuffer(elementCoder, buffer));
+      }
+      return decodeToIterable(elements);
+    }
+    List<T> elements = new ArrayList<>();
+    long count = VarInt.decodeLong(buffer);
+    while (count > 0L) {
+      elements.add(CoderUtils.decodeFromByteBuffer(elementCoder, buffer));
+      --count;
+      if (count == 0L) {
+        count = VarInt.decodeLong(buffer);
+      }
+    }
+    if (count == 0) {
+      return decodeToIterable(elements);
+    } else {
+      return decodeToIterable(elements, count, CoderUtils.asInputStream(buffer));
+    }
+  }
+
   @Override
   public List<? extends Coder<?>> getCoderArguments() {
     return Arrays.asList(elementCoder);
@@ -229,6 +283,27 @@ public abstract class IterableLikeCoder<T, IterableT extends Iterable<T>>
     }
   }
 
+  /**
+   * Overridden to short-circuit the default {@code StructuredCoder} behavior of encoding and
+   * counting the bytes when {@code iterable} is a {@link Collection}. The size is then known to be
+   * the size of the leading element count plus the sizes of the encoded elements. Other iterables
+   * are encoded in blocks whose boundaries depend on the encoded bytes, so they are encoded and
+   * counted.
+   *
+   * <p>{@inheritDoc}
+   */
+  @Override
+  protected long getEncodedElementByteSize(IterableT iterable) throws Exception {
+    if (!(iterable instanceof Collection)) {
+      return super.getEncodedElementByteSize(iterable);
+    }
+    long size = 4L;
+    for (T elem : (Collection<T>) iterable) {
+      size += elementCoder.getEncodedElementByteSize(elem);
+    }
+    return size;
+  }
+
   /**
    * An observer that gets notified when an observable iterator returns a new value. This observer
    * just notifies an outerObserver about this event. Additionally, the outerObserver is notified
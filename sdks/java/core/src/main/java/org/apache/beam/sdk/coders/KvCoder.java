@@ -20,8 +20,10 @@ package org.apache.beam.sdk.coders;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.List;
+import org.apache.beam.sdk.util.CoderUtils;
 import org.apache.beam.sdk.util.common.ElementByteSizeObserver;
 import org.apache.beam.sdk.values.KV;
 import org.apache.beam.sdk.values.TypeDescriptor;
@@ -35,7 +37,7 @@ import org.checkerframework.checker.nullness.qual.Nullable;
  * @param <V> the type of the values of the KVs being transcoded
  */
 public class KvCoder<K extends @Nullable Object, V extends @Nullable Object>
-    extends StructuredCoder<KV<K, V>> {
+    extends StructuredCoder<KV<K, V>> implements ByteBufferCoder<KV<K, V>> {
   public static <K, V> KvCoder<K, V> of(Coder<K> keyCoder, Coder<V> valueCoder) {
     return new KvCoder<>(keyCoder, valueCoder);
   }
@@ -85,6 +87,22 @@ public class KvCoder<K extends @Nullable Object, V extends @Nullable Object>
     return KV.of(key, value);
   }
 
+  @Override
+  public void encode(KV<K, V> kv, ByteBuffer buffer) throws IOException {
+    if (kv == null) {
+      throw new CoderException("cannot encode a null KV");
+    }
+    CoderUtils.encodeToByteBuffer(keyCoder, kv.getKey(), buffer);
+    CoderUtils.encodeToByteBuffer(valueCoder, kv.getValue(), buffer);
+  }
+
+  @Override
+  public KV<K, V> decode(ByteBuffer buffer) throws IOException {
+    K key = CoderUtils.decodeFromByteBuffer(keyCoder, buffer);
+    V value = CoderUtils.decodeFromByteBuffer(valueCoder, buffer);
+    return KV.of(key, value);
+  }
+
   @Override
   public List<? extends Coder<?>> getCoderArguments() {
     return Arrays.asList(keyCoder, valueCoder);
@@ -130,6 +148,21 @@ public class KvCoder<K extends @Nullable Object, V extends @Nullable Object>
     valueCoder.registerByteSizeObserver(kv.getValue(), observer);
   }
 
+  /**
+   * Overridden to short-circuit the default {@code StructuredCoder} behavior of encoding and
+   * counting the bytes. The size is the size of the encoded key plus the size of the encoded value.
+   *
+   * <p>{@inheritDoc}
+   */
+  @Override
+  protected long getEncodedElementByteSize(KV<K, V> kv) throws Exception {
+    if (kv == null) {
+      throw new CoderException("cannot encode a null KV");
+    }
+    return keyCoder.getEncodedElementByteSize(kv.getKey())
+        + valueCoder.getEncodedElementByteSize(kv.getValue());
+  }
+
   @Override
   public TypeDescriptor<KV<K, V>> getEncodedTypeDescriptor() {
     return new TypeDescriptor<KV<K, V>>() {}.where(
@@ -0,0 +1,224 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.coders;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Map;
+import org.apache.beam.sdk.schemas.Schema;
+import org.apache.beam.sdk.schemas.SchemaCoder;
+import org.apache.beam.sdk.util.VarInt;
+import org.apache.beam.sdk.values.LazyRow;
+import org.apache.beam.sdk.values.Row;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Decodes rows in the {@link RowCoder} format into {@link LazyRow}s.
+ *
+ * <p>Decoding scans the encoded row once to record the offset of each field. Fields with a fixed
+ * width or a length prefix are skipped without being decoded. Other fields (nested rows,
+ * collections, maps and logical types) have no cheap way of finding their end, so they are decoded
+ * during the scan and the decoded value is kept in the row.
+ */
+@SuppressWarnings({
+  "nullness", // TODO(https://github.com/apache/beam/issues/20497)
+  "rawtypes"
+})
+class LazyRowDecoder {
+  private static final BitSetCoder NULL_LIST_CODER = BitSetCoder.of();
+
+  /** How a field can be stepped over in the encoded stream. */
+  private enum SkipKind {
+    FIXED_WIDTH,
+    VAR_INT,
+    LENGTH_PREFIXED,
+    DECIMAL,
+    DECODE
+  }
+
+  private final Schema schema;
+  // Indexed by encoding position.
+  private final int[] encodingPosToRowIndex;
+  private final SkipKind[] skipKinds;
+  private final int[] fixedWidths;
+  // Indexed by row index.
+  private final Coder[] fieldCoders;
+
+  LazyRowDecoder(Schema schema) {
+    this.schema = schema;
+    int fieldCount = schema.getFieldCount();
+    this.encodingPosToRowIndex = new int[fieldCount];
+    this.skipKinds = new SkipKind[fieldCount];
+    this.fixedWidths = new int[fieldCount];
+    this.fieldCoders = new Coder[fieldCount];
+
+    Map<String, Integer> encodingPositions = RowCoderGenerator.getEncodingPositions(schema);
+    for (int rowIndex = 0; rowIndex < fieldCount; ++rowIndex) {
+      Schema.Field field = schema.getField(rowIndex);
+      int encodingPos = encodingPositions.get(field.getName());
+      encodingPosToRowIndex[encodingPos] = rowIndex;
+      // Nulls are handled by the null bitmap, as in RowCoderGenerator.
+      fieldCoders[rowIndex] = SchemaCoder.coderForFieldType(field.getType().withNullable(false));
+      switch (field.getType().getTypeName()) {
+        case BYTE:
+        case BOOLEAN:
+          skipKinds[encodingPos] = SkipKind.FIXED_WIDTH;
+          fixedWidths[encodingPos] = 1;
+          break;
+        case INT16:
+          skipKinds[encodingPos] = SkipKind.FIXED_WIDTH;
+          fixedWidths[encodingPos] = 2;
+          break;
+        case FLOAT:
+          skipKinds[encodingPos] = SkipKind.FIXED_WIDTH;
+          fixedWidths[encodingPos] = 4;
+          break;
+        case DOUBLE:
+        case DATETIME:
+          skipKinds[encodingPos] = SkipKind.FIXED_WIDTH;
+          fixedWidths[encodingPos] = 8;
+          break;
+        case INT32:
+        case INT64:
+          skipKinds[encodingPos] = SkipKind.VAR_INT;
+          break;
+        case STRING:
+        case BYTES:
+          skipKinds[encodingPos] = SkipKind.LENGTH_PREFIXED;
+          break;
+        case DECIMAL:
+          skipKinds[encodingPos] = SkipKind.DECIMAL;
+          break;
+        default:
+          skipKinds[encodingPos] = SkipKind.DECODE;
+      }
+    }
+  }
+
+  Row decode(InputStream inStream) throws IOException {
+    RecordingInputStream in = new RecordingInputStream(inStream);
+    int encodedFieldCount = VarInt.decodeInt(in);
+    BitSet nullFields = NULL_LIST_CODER.decode(in);
+
+    int fieldCount = encodingPosToRowIndex.length;
+    int[] fieldOffsets = new int[fieldCount];
+    Arrays.fill(fieldOffsets, LazyRow.NULL_OFFSET);
+    @Nullable Object[] values = new Object[fieldCount];
+    // In the case of a schema change going backwards, the encoded field count might be larger than
+    // the schema's, in which case we drop the extra fields. If the schema was evolved to contain
+    // more fields, the missing ones are null. Either way the bytes no longer match the schema.
+    int scannedFields = Math.min(encodedFieldCount, fieldCount);
+    for (int encodingPos = 0; encodingPos < scannedFields; ++encodingPos) {
+      if (nullFields.get(encodingPos)) {
+        continue;
+      }
+      int rowIndex = encodingPosToRowIndex[encodingPos];
+      fieldOffsets[rowIndex] = in.size();
+      switch (skipKinds[encodingPos]) {
+        case FIXED_WIDTH:
+          in.copy(fixedWidths[encodingPos]);
+          break;
+        case VAR_INT:
+          VarInt.decodeLong(in);
+          break;
+        case LENGTH_PREFIXED:
+          in.copy(VarInt.decodeInt(in));
+          break;
+        case DECIMAL:
+          // Scale followed by the length-prefixed unscaled value.
+          VarInt.decodeInt(in);
+          in.copy(VarInt.decodeInt(in));
+          break;
+        default:
+          values[rowIndex] = fieldCoders[rowIndex].decode(in);
+      }
+    }
+    return new LazyRow(
+        schema,
+        in.toByteArray(),
+        fieldOffsets,
+        fieldCoders,
+        values,
+        encodedFieldCount == fieldCount);
+  }
+
+  /** An {@link InputStream} that keeps a copy of every byte read through it. */
+  private static class RecordingInputStream extends InputStream {
+    private final InputStream delegate;
+    private byte[] buffer = new byte[64];
+    private int size = 0;
+
+    RecordingInputStream(InputStream delegate) {
+      this.delegate = delegate;
+    }
+
+    int size() {
+      return size;
+    }
+
+    byte[] toByteArray() {
+      return Arrays.copyOf(buffer, size);
+    }
+
+    private void ensureCapacity(int additional) {
+      if (size + additional > buffer.length) {
+        buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + additional));
+      }
+    }
+
+    /** Copies exactly {@code length} bytes from the underlying stream. */
+    void copy(int length) throws IOException {
+      if (length < 0) {
+        throw new CoderException("Invalid field length " + length);
+      }
+      ensureCapacity(length);
+      int end = size + length;
+      while (size < end) {
+        int read = delegate.read(buffer, size, end - size);
+        if (read < 0) {
+          throw new EOFException("Unexpected end of stream while reading row");
+        }
+        size += read;
+      }
+    }
+
+    @Override
+    public int read() throws IOException {
+      int b = delegate.read();
+      if (b >= 0) {
+        ensureCapacity(1);
+        buffer[size++] = (byte) b;
+      }
+      return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      int read = delegate.read(b, off, len);
+      if (read > 0) {
+        ensureCapacity(read);
+        System.arraycopy(b, off, buffer, size, read);
+        size += read;
+      }
+      return read;
+    }
+  }
+}
@@ -27,6 +27,7 @@ import java.util.List;
 import org.apache.beam.sdk.util.VarInt;
 import org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.collect.ImmutableList;
 import org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.io.ByteStreams;
+import org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.io.CountingOutputStream;
 
 /**
  * A {@link Coder} which is able to take any existing coder and wrap it such that it is only invoked
@@ -44,6 +45,23 @@ public class LengthPrefixCoder<T> extends StructuredCoder<T> {
 
   /////////////////////////////////////////////////////////////////////////////
 
+  // Whether a coder class encodes values the same way in every context, which holds unless it
+  // overrides the context-aware encode method inherited from Coder.
+  private static final ClassValue<Boolean> ENCODES_INDEPENDENT_OF_CONTEXT =
+      new ClassValue<Boolean>() {
+        @Override
+        protected Boolean computeValue(Class<?> coderClass) {
+          try {
+            return Coder.class.equals(
+                coderClass
+                    .getMethod("encode", Object.class, OutputStream.class, Context.class)
+                    .getDeclaringClass());
+          } catch (NoSuchMethodException e) {
+            return false;
+          }
+        }
+      };
+
   private final Coder<T> valueCoder;
 
   private LengthPrefixCoder(Coder<T> valueCoder) {
@@ -99,21 +117,34 @@ public class LengthPrefixCoder<T> extends StructuredCoder<T> {
    * counting the bytes. The size is known to be the size of the value plus the number of bytes
    * required to prefix the length.
    *
+   * <p>The value is encoded in the outer context, while the value coder sizes it in the nested
+   * context. Its size is therefore only used if the value coder encodes values the same way in
+   * both contexts. Otherwise, or if the value coder cannot size {@code value} cheaply, the value is
+   * encoded in the outer context and its bytes are counted.
+   *
    * <p>{@inheritDoc}
    */
   @Override
   protected long getEncodedElementByteSize(T value) throws Exception {
-    long valueSize = valueCoder.getEncodedElementByteSize(value);
-    return VarInt.getLength(valueSize) + valueSize;
+    if (isRegisterByteSizeObserverCheap(value)) {
+      long valueSize = valueCoder.getEncodedElementByteSize(value);
+      return VarInt.getLength(valueSize) + valueSize;
+    }
+    try (CountingOutputStream os = new CountingOutputStream(ByteStreams.nullOutputStream())) {
+      valueCoder.encode(value, os, Context.OUTER);
+      return VarInt.getLength(os.getCount()) + os.getCount();
+    }
   }
 
   /**
-   * {@code LengthPrefixCoder} is cheap if {@code valueCoder} is cheap.
+   * {@code LengthPrefixCoder} is cheap if {@code valueCoder} is cheap and encodes values the same
+   * way in the outer and the nested context.
    *
    * <p>{@inheritDoc}
    */
   @Override
   public boolean isRegisterByteSizeObserverCheap(T value) {
-    return valueCoder.isRegisterByteSizeObserverCheap(value);
+    return ENCODES_INDEPENDENT_OF_CONTEXT.get(valueCoder.getClass())
+        && valueCoder.isRegisterByteSizeObserverCheap(value);
   }
 }
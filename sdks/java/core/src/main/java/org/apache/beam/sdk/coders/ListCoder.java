@@ -27,7 +27,8 @@ import org.apache.beam.sdk.values.TypeParameter;
  *
  * @param <T> the type of the elements of the Lists being transcoded
  */
-public class ListCoder<T> extends IterableLikeCoder<T, List<T>> {
+public class ListCoder<T> extends IterableLikeCoder<T, List<T>>
+    implements ByteBufferCoder<List<T>> {
 
   public static <T> ListCoder<T> of(Coder<T> elemCoder) {
     return new ListCoder<>(elemCoder);
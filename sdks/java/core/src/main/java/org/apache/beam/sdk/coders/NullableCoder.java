@@ -156,15 +156,9 @@ public class NullableCoder<T> extends StructuredCoder<@Nullable T> {
       return 1;
     }
 
-    if (valueCoder instanceof StructuredCoder) {
-      // If valueCoder is a StructuredCoder then we can ask it directly for the encoded size of
-      // the value, adding 1 byte to count the null indicator.
-      return 1 + ((StructuredCoder<T>) valueCoder).getEncodedElementByteSize(value);
-    }
-
-    // If value is not a StructuredCoder then fall back to the default StructuredCoder behavior
-    // of encoding and counting the bytes. The encoding will include the null indicator byte.
-    return super.getEncodedElementByteSize(value);
+    // Ask valueCoder directly for the encoded size of the value, adding 1 byte to count the null
+    // indicator. Coders that cannot compute the size any cheaper fall back to encoding the value.
+    return 1 + valueCoder.getEncodedElementByteSize(value);
   }
 
   /**
@@ -0,0 +1,627 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.coders;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.apache.beam.sdk.util.CoderUtils;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.joda.time.Instant;
+
+/**
+ * A {@link Coder} whose encoding preserves the order of the values it encodes: comparing the
+ * encodings of two values lexicographically as unsigned bytes gives the same result as comparing
+ * the values themselves.
+ *
+ * <p>Runners and transforms that order elements by their encoded form, such as the sorter
+ * extension's {@code SortValues}, produce the natural order of the values when their keys use one
+ * of these coders, without having to decode the keys.
+ *
+ * <p>All encodings are self-delimiting, and no encoding is a proper prefix of another. Nested and
+ * outer encodings are therefore identical, and concatenating the encodings of several values (as
+ * done by {@link KvCoder} or {@link OrderedRowCoder}) orders the tuples lexicographically.
+ *
+ * <p>The encodings are:
+ *
+ * <ul>
+ *   <li>Integral types: fixed width big-endian two's complement with the sign bit flipped.
+ *   <li>{@link Float} and {@link Double}: the IEEE 754 bits in big-endian order, with the sign bit
+ *       flipped for positive values and all bits flipped for negative values. The resulting order
+ *       is the one of {@link Double#compare}: {@code -0.0} sorts before {@code 0.0} and {@code NaN}
+ *       sorts after positive infinity.
+ *   <li>{@code byte[]} and {@link String}: the bytes (UTF-8 for strings) with each {@code 0x00}
+ *       escaped as {@code 0x00 0xFF}, terminated by {@code 0x00 0x01}. UTF-8 orders strings by
+ *       Unicode code point, which differs from {@link String#compareTo} only for strings containing
+ *       supplementary characters.
+ *   <li>{@link Instant}: its millis since the epoch as an ordered {@link Long}. This is the same
+ *       encoding as {@link InstantCoder}.
+ *   <li>{@link #nullable}: a {@code 0x00} for null, otherwise {@code 0x01} followed by the value,
+ *       so nulls sort first.
+ *   <li>{@link #lists}: each element preceded by {@code 0x01}, terminated by {@code 0x00}.
+ *   <li>{@link #descending}: every byte of the wrapped coder's encoding complemented.
+ * </ul>
+ *
+ * @param <T> the type of values being encoded and decoded
+ */
+@SuppressWarnings({
+  "nullness" // TODO(https://github.com/apache/beam/issues/20497)
+})
+public abstract class OrderedCoder<T> extends CustomCoder<T> {
+
+  /** Returns an {@link OrderedCoder} for {@link Byte} values. */
+  public static OrderedCoder<Byte> bytes() {
+    return ByteOrderedCoder.INSTANCE;
+  }
+
+  /** Returns an {@link OrderedCoder} for {@link Short} values. */
+  public static OrderedCoder<Short> shorts() {
+    return ShortOrderedCoder.INSTANCE;
+  }
+
+  /** Returns an {@link OrderedCoder} for {@link Integer} values. */
+  public static OrderedCoder<Integer> integers() {
+    return IntegerOrderedCoder.INSTANCE;
+  }
+
+  /** Returns an {@link OrderedCoder} for {@link Long} values. */
+  public static OrderedCoder<Long> longs() {
+    return LongOrderedCoder.INSTANCE;
+  }
+
+  /** Returns an {@link OrderedCoder} for {@link Float} values. */
+  public static OrderedCoder<Float> floats() {
+    return FloatOrderedCoder.INSTANCE;
+  }
+
+  /** Returns an {@link OrderedCoder} for {@link Double} values. */
+  public static OrderedCoder<Double> doubles() {
+    return DoubleOrderedCoder.INSTANCE;
+  }
+
+  /** Returns an {@link OrderedCoder} for {@link Boolean} values, with {@code false} first. */
+  public static OrderedCoder<Boolean> booleans() {
+    return BooleanOrderedCoder.INSTANCE;
+  }
+
+  /** Returns an {@link OrderedCoder} for {@code byte[]} values. */
+  public static OrderedCoder<byte[]> byteArrays() {
+    return ByteArrayOrderedCoder.INSTANCE;
+  }
+
+  /** Returns an {@link OrderedCoder} for {@link String} values, ordered by code point. */
+  public static OrderedCoder<String> strings() {
+    return StringOrderedCoder.INSTANCE;
+  }
+
+  /** Returns an {@link OrderedCoder} for {@link Instant} values. */
+  public static OrderedCoder<Instant> instants() {
+    return InstantOrderedCoder.INSTANCE;
+  }
+
+  /** Returns an {@link OrderedCoder} that also accepts null values, which sort first. */
+  public static <T> OrderedCoder<@Nullable T> nullable(OrderedCoder<T> valueCoder) {
+    return new NullableOrderedCoder<>(valueCoder);
+  }
+
+  /** Returns an {@link OrderedCoder} for lists, ordered lexicographically by their elements. */
+  public static <T> OrderedCoder<List<T>> lists(OrderedCoder<T> elementCoder) {
+    return new ListOrderedCoder<>(elementCoder);
+  }
+
+  /** Returns an {@link OrderedCoder} that encodes values in the reverse order of this coder. */
+  public OrderedCoder<T> descending() {
+    return new DescendingOrderedCoder<>(this);
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>Does nothing. An order-preserving encoding is necessarily deterministic.
+   */
+  @Override
+  public void verifyDeterministic() {}
+
+  @Override
+  public boolean equals(@Nullable Object other) {
+    return other != null && getClass().equals(other.getClass());
+  }
+
+  @Override
+  public int hashCode() {
+    return getClass().hashCode();
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName();
+  }
+
+  /////////////////////////////////////////////////////////////////////////////
+
+  private static final int ESCAPE = 0x00;
+  private static final int ESCAPED_ZERO = 0xFF;
+  private static final int TERMINATOR = 0x01;
+
+  private static int readByte(InputStream in) throws IOException {
+    int b = in.read();
+    if (b < 0) {
+      throw new EOFException();
+    }
+    return b;
+  }
+
+  private static void writeEscaped(byte[] value, OutputStream out) throws IOException {
+    int start = 0;
+    for (int i = 0; i < value.length; ++i) {
+      if (value[i] == ESCAPE) {
+        out.write(value, start, i + 1 - start);
+        out.write(ESCAPED_ZERO);
+        start = i + 1;
+      }
+    }
+    out.write(value, start, value.length - start);
+    out.write(ESCAPE);
+    out.write(TERMINATOR);
+  }
+
+  private static byte[] readEscaped(InputStream in) throws IOException {
+    ByteArrayOutputStream result = new ByteArrayOutputStream();
+    while (true) {
+      int b = readByte(in);
+      if (b != ESCAPE) {
+        result.write(b);
+        continue;
+      }
+      int next = readByte(in);
+      if (next == TERMINATOR) {
+        return result.toByteArray();
+      } else if (next == ESCAPED_ZERO) {
+        result.write(ESCAPE);
+      } else {
+        throw new CoderException("Invalid escape sequence 0x00 0x" + Integer.toHexString(next));
+      }
+    }
+  }
+
+  /** Base class for the coders of primitive values, all of which have a fixed width. */
+  private abstract static class FixedWidthOrderedCoder<T> extends OrderedCoder<T> {
+    private final int width;
+
+    FixedWidthOrderedCoder(int width) {
+      this.width = width;
+    }
+
+    @Override
+    public boolean consistentWithEquals() {
+      return true;
+    }
+
+    @Override
+    public boolean isRegisterByteSizeObserverCheap(T value) {
+      return true;
+    }
+
+    @Override
+    protected long getEncodedElementByteSize(T value) throws Exception {
+      if (value == null) {
+        throw new CoderException("cannot encode a null " + getClass().getSimpleName() + " value");
+      }
+      return width;
+    }
+  }
+
+  private static class ByteOrderedCoder extends FixedWidthOrderedCoder<Byte> {
+    private static final ByteOrderedCoder INSTANCE = new ByteOrderedCoder();
+
+    private ByteOrderedCoder() {
+      super(1);
+    }
+
+    @Override
+    public void encode(Byte value, OutputStream outStream) throws IOException {
+      outStream.write(value ^ Byte.MIN_VALUE);
+    }
+
+    @Override
+    public Byte decode(InputStream inStream) throws IOException {
+      return (byte) (readByte(inStream) ^ Byte.MIN_VALUE);
+    }
+  }
+
+  private static class ShortOrderedCoder extends FixedWidthOrderedCoder<Short> {
+    private static final ShortOrderedCoder INSTANCE = new ShortOrderedCoder();
+
+    private ShortOrderedCoder() {
+      super(2);
+    }
+
+    @Override
+    public void encode(Short value, OutputStream outStream) throws IOException {
+      BitConverters.writeBigEndianShort((short) (value ^ Short.MIN_VALUE), outStream);
+    }
+
+    @Override
+    public Short decode(InputStream inStream) throws IOException {
+      return (short) (BitConverters.readBigEndianShort(inStream) ^ Short.MIN_VALUE);
+    }
+  }
+
+  private static class IntegerOrderedCoder extends FixedWidthOrderedCoder<Integer> {
+    private static final IntegerOrderedCoder INSTANCE = new IntegerOrderedCoder();
+
+    private IntegerOrderedCoder() {
+      super(4);
+    }
+
+    @Override
+    public void encode(Integer value, OutputStream outStream) throws IOException {
+      BitConverters.writeBigEndianInt(value ^ Integer.MIN_VALUE, outStream);
+    }
+
+    @Override
+    public Integer decode(InputStream inStream) throws IOException {
+      return BitConverters.readBigEndianInt(inStream) ^ Integer.MIN_VALUE;
+    }
+  }
+
+  private static class LongOrderedCoder extends FixedWidthOrderedCoder<Long> {
+    private static final LongOrderedCoder INSTANCE = new LongOrderedCoder();
+
+    private LongOrderedCoder() {
+      super(8);
+    }
+
+    @Override
+    public void encode(Long value, OutputStream outStream) throws IOException {
+      BitConverters.writeBigEndianLong(value ^ Long.MIN_VALUE, outStream);
+    }
+
+    @Override
+    public Long decode(InputStream inStream) throws IOException {
+      return BitConverters.readBigEndianLong(inStream) ^ Long.MIN_VALUE;
+    }
+  }
+
+  private static class FloatOrderedCoder extends FixedWidthOrderedCoder<Float> {
+    private static final FloatOrderedCoder INSTANCE = new FloatOrderedCoder();
+
+    private FloatOrderedCoder() {
+      super(4);
+    }
+
+    @Override
+    public void encode(Float value, OutputStream outStream) throws IOException {
+      // floatToIntBits collapses all NaNs into the canonical one, as Float.equals does.
+      int bits = Float.floatToIntBits(value);
+      BitConverters.writeBigEndianInt(bits < 0 ? ~bits : bits ^ Integer.MIN_VALUE, outStream);
+    }
+
+    @Override
+    public Float decode(InputStream inStream) throws IOException {
+      int bits = BitConverters.readBigEndianInt(inStream);
+      return Float.intBitsToFloat(bits < 0 ? bits ^ Integer.MIN_VALUE : ~bits);
+    }
+  }
+
+  private static class DoubleOrderedCoder extends FixedWidthOrderedCoder<Double> {
+    private static final DoubleOrderedCoder INSTANCE = new DoubleOrderedCoder();
+
+    private DoubleOrderedCoder() {
+      super(8);
+    }
+
+    @Override
+    public void encode(Double value, OutputStream outStream) throws IOException {
+      // doubleToLongBits collapses all NaNs into the canonical one, as Double.equals does.
+      long bits = Double.doubleToLongBits(value);
+      BitConverters.writeBigEndianLong(bits < 0 ? ~bits : bits ^ Long.MIN_VALUE, outStream);
+    }
+
+    @Override
+    public Double decode(InputStream inStream) throws IOException {
+      long bits = BitConverters.readBigEndianLong(inStream);
+      return Double.longBitsToDouble(bits < 0 ? bits ^ Long.MIN_VALUE : ~bits);
+    }
+  }
+
+  private static class BooleanOrderedCoder extends FixedWidthOrderedCoder<Boolean> {
+    private static final BooleanOrderedCoder INSTANCE = new BooleanOrderedCoder();
+
+    private BooleanOrderedCoder() {
+      super(1);
+    }
+
+    @Override
+    public void encode(Boolean value, OutputStream outStream) throws IOException {
+      outStream.write(value ? 1 : 0);
+    }
+
+    @Override
+    public Boolean decode(InputStream inStream) throws IOException {
+      int b = readByte(inStream);
+      if (b > 1) {
+        throw new CoderException("Invalid boolean encoding 0x" + Integer.toHexString(b));
+      }
+      return b == 1;
+    }
+  }
+
+  private static class InstantOrderedCoder extends FixedWidthOrderedCoder<Instant> {
+    private static final InstantOrderedCoder INSTANCE = new InstantOrderedCoder();
+
+    private InstantOrderedCoder() {
+      super(8);
+    }
+
+    @Override
+    public void encode(Instant value, OutputStream outStream) throws IOException {
+      BitConverters.writeBigEndianLong(value.getMillis() ^ Long.MIN_VALUE, outStream);
+    }
+
+    @Override
+    public Instant decode(InputStream inStream) throws IOException {
+      return new Instant(BitConverters.readBigEndianLong(inStream) ^ Long.MIN_VALUE);
+    }
+  }
+
+  private static class ByteArrayOrderedCoder extends OrderedCoder<byte[]> {
+    private static final ByteArrayOrderedCoder INSTANCE = new ByteArrayOrderedCoder();
+
+    @Override
+    public void encode(byte[] value, OutputStream outStream) throws IOException {
+      writeEscaped(value, outStream);
+    }
+
+    @Override
+    public byte[] decode(InputStream inStream) throws IOException {
+      return readEscaped(inStream);
+    }
+  }
+
+  private static class StringOrderedCoder extends OrderedCoder<String> {
+    private static final StringOrderedCoder INSTANCE = new StringOrderedCoder();
+
+    @Override
+    public void encode(String value, OutputStream outStream) throws IOException {
+      writeEscaped(value.getBytes(UTF_8), outStream);
+    }
+
+    @Override
+    public String decode(InputStream inStream) throws IOException {
+      return new String(readEscaped(inStream), UTF_8);
+    }
+
+    @Override
+    public boolean consistentWithEquals() {
+      return true;
+    }
+  }
+
+  private static class NullableOrderedCoder<T> extends OrderedCoder<@Nullable T> {
+    private static final int NULL = 0x00;
+    private static final int PRESENT = 0x01;
+
+    private final OrderedCoder<T> valueCoder;
+
+    private NullableOrderedCoder(OrderedCoder<T> valueCoder) {
+      this.valueCoder = valueCoder;
+    }
+
+    @Override
+    public void encode(@Nullable T value, OutputStream outStream) throws IOException {
+      if (value == null) {
+        outStream.write(NULL);
+      } else {
+        outStream.write(PRESENT);
+        valueCoder.encode(value, outStream);
+      }
+    }
+
+    @Override
+    public @Nullable T decode(InputStream inStream) throws IOException {
+      int b = readByte(inStream);
+      if (b == NULL) {
+        return null;
+      } else if (b == PRESENT) {
+        return valueCoder.decode(inStream);
+      }
+      throw new CoderException("Invalid null marker 0x" + Integer.toHexString(b));
+    }
+
+    @Override
+    public List<? extends Coder<?>> getCoderArguments() {
+      return Collections.singletonList(valueCoder);
+    }
+
+    @Override
+    public boolean consistentWithEquals() {
+      return valueCoder.consistentWithEquals();
+    }
+
+    @Override
+    public boolean equals(@Nullable Object other) {
+      return other instanceof NullableOrderedCoder
+          && valueCoder.equals(((NullableOrderedCoder<?>) other).valueCoder);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * getClass().hashCode() + valueCoder.hashCode();
+    }
+
+    @Override
+    public String toString() {
+      return "nullable(" + valueCoder + ")";
+    }
+  }
+
+  private static class ListOrderedCoder<T> extends OrderedCoder<List<T>> {
+    private static final int END = 0x00;
+    private static final int ELEMENT = 0x01;
+
+    private final OrderedCoder<T> elementCoder;
+
+    private ListOrderedCoder(OrderedCoder<T> elementCoder) {
+      this.elementCoder = elementCoder;
+    }
+
+    @Override
+    public void encode(List<T> value, OutputStream outStream) throws IOException {
+      for (T element : value) {
+        outStream.write(ELEMENT);
+        elementCoder.encode(element, outStream);
+      }
+      outStream.write(END);
+    }
+
+    @Override
+    public List<T> decode(InputStream inStream) throws IOException {
+      List<T> result = new ArrayList<>();
+      while (true) {
+        int b = readByte(inStream);
+        if (b == END) {
+          return result;
+        } else if (b != ELEMENT) {
+          throw new CoderException("Invalid list element marker 0x" + Integer.toHexString(b));
+        }
+        result.add(elementCoder.decode(inStream));
+      }
+    }
+
+    @Override
+    public List<? extends Coder<?>> getCoderArguments() {
+      return Collections.singletonList(elementCoder);
+    }
+
+    @Override
+    public boolean consistentWithEquals() {
+      return elementCoder.consistentWithEquals();
+    }
+
+    @Override
+    public boolean equals(@Nullable Object other) {
+      return other instanceof ListOrderedCoder
+          && elementCoder.equals(((ListOrderedCoder<?>) other).elementCoder);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * getClass().hashCode() + elementCoder.hashCode();
+    }
+
+    @Override
+    public String toString() {
+      return "lists(" + elementCoder + ")";
+    }
+  }
+
+  private static class DescendingOrderedCoder<T> extends OrderedCoder<T> {
+    private final OrderedCoder<T> ascendingCoder;
+
+    private DescendingOrderedCoder(OrderedCoder<T> ascendingCoder) {
+      this.ascendingCoder = ascendingCoder;
+    }
+
+    @Override
+    public void encode(T value, OutputStream outStream) throws IOException {
+      // Complementing every byte reverses the order because no encoding is a prefix of another.
+      byte[] encoded = CoderUtils.encodeToByteArray(ascendingCoder, value);
+      for (int i = 0; i < encoded.length; ++i) {
+        encoded[i] = (byte) ~encoded[i];
+      }
+      outStream.write(encoded);
+    }
+
+    @Override
+    public T decode(InputStream inStream) throws IOException {
+      return ascendingCoder.decode(new ComplementingInputStream(inStream));
+    }
+
+    @Override
+    public OrderedCoder<T> descending() {
+      return ascendingCoder;
+    }
+
+    @Override
+    public List<? extends Coder<?>> getCoderArguments() {
+      return Collections.singletonList(ascendingCoder);
+    }
+
+    @Override
+    public boolean consistentWithEquals() {
+      return ascendingCoder.consistentWithEquals();
+    }
+
+    @Override
+    public boolean equals(@Nullable Object other) {
+      return other instanceof DescendingOrderedCoder
+          && ascendingCoder.equals(((DescendingOrderedCoder<?>) other).ascendingCoder);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * getClass().hashCode() + ascendingCoder.hashCode();
+    }
+
+    @Override
+    public String toString() {
+      return ascendingCoder + ".descending()";
+    }
+  }
+
+  /** Returns the complement of every byte read from the underlying stream. */
+  private static class ComplementingInputStream extends FilterInputStream {
+    ComplementingInputStream(InputStream in) {
+      super(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+      int b = in.read();
+      return b < 0 ? b : ~b & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      int read = in.read(b, off, len);
+      for (int i = off; i < off + read; ++i) {
+        b[i] = (byte) ~b[i];
+      }
+      return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+      return in.skip(n);
+    }
+
+    @Override
+    public boolean markSupported() {
+      return false;
+    }
+  }
+}
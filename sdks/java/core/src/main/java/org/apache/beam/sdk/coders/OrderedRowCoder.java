@@ -0,0 +1,223 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.coders;
+
+import static org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.base.Preconditions.checkArgument;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import org.apache.beam.sdk.schemas.Schema;
+import org.apache.beam.sdk.schemas.Schema.FieldType;
+import org.apache.beam.sdk.values.Row;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * An {@link OrderedCoder} for {@link Row Rows} of a fixed {@link Schema}.
+ *
+ * <p>A row is encoded as the concatenation of the order-preserving encodings of its fields, so the
+ * encoded rows sort by their first sort field, then their second, and so on. The sort fields are
+ * given when creating the coder and each of them can be made descending with {@link
+ * #withDescending}. Fields that are not sort fields are encoded after the sort fields, in schema
+ * order, so that the row can be decoded.
+ *
+ * <p>Nullable fields sort nulls first (last when descending). Fields of type {@code BYTE}, {@code
+ * INT16}, {@code INT32}, {@code INT64}, {@code FLOAT}, {@code DOUBLE}, {@code BOOLEAN}, {@code
+ * STRING}, {@code BYTES}, {@code DATETIME}, {@code ARRAY}, {@code ITERABLE} and {@code ROW} are
+ * supported; other field types have no order-preserving encoding and are rejected.
+ */
+@SuppressWarnings({
+  "nullness", // TODO(https://github.com/apache/beam/issues/20497)
+  "rawtypes",
+  "unchecked"
+})
+public class OrderedRowCoder extends OrderedCoder<Row> {
+  private final Schema schema;
+  // Row indices of the fields in the order in which they are encoded.
+  private final int[] encodingOrder;
+  // Indexed by row index.
+  private final boolean[] descending;
+  private final OrderedCoder[] fieldCoders;
+
+  /** Returns a coder that sorts rows by all of their fields in schema order. */
+  public static OrderedRowCoder of(Schema schema) {
+    return of(schema, Collections.emptyList());
+  }
+
+  /**
+   * Returns a coder that sorts rows by the fields named in {@code sortFields}, in that order. Ties
+   * are broken by the remaining fields in schema order.
+   */
+  public static OrderedRowCoder of(Schema schema, List<String> sortFields) {
+    int fieldCount = schema.getFieldCount();
+    int[] encodingOrder = new int[fieldCount];
+    boolean[] isSortField = new boolean[fieldCount];
+    int next = 0;
+    for (String fieldName : sortFields) {
+      int index = schema.indexOf(fieldName);
+      checkArgument(!isSortField[index], "Field %s is listed more than once", fieldName);
+      isSortField[index] = true;
+      encodingOrder[next++] = index;
+    }
+    for (int index = 0; index < fieldCount; ++index) {
+      if (!isSortField[index]) {
+        encodingOrder[next++] = index;
+      }
+    }
+    return new OrderedRowCoder(schema, encodingOrder, new boolean[fieldCount]);
+  }
+
+  private OrderedRowCoder(Schema schema, int[] encodingOrder, boolean[] descending) {
+    this.schema = schema;
+    this.encodingOrder = encodingOrder;
+    this.descending = descending;
+    this.fieldCoders = new OrderedCoder[schema.getFieldCount()];
+    for (int index = 0; index < fieldCoders.length; ++index) {
+      OrderedCoder coder = coderForFieldType(schema.getField(index).getType());
+      fieldCoders[index] = descending[index] ? coder.descending() : coder;
+    }
+  }
+
+  /** Returns a copy of this coder that sorts the given fields in descending order. */
+  public OrderedRowCoder withDescending(String... fieldNames) {
+    boolean[] newDescending = Arrays.copyOf(descending, descending.length);
+    for (String fieldName : fieldNames) {
+      newDescending[schema.indexOf(fieldName)] = true;
+    }
+    return new OrderedRowCoder(schema, encodingOrder, newDescending);
+  }
+
+  /**
+   * Returns the {@link OrderedCoder} for values of the given field type.
+   *
+   * @throws IllegalArgumentException if the type has no order-preserving encoding
+   */
+  public static OrderedCoder<?> coderForFieldType(FieldType fieldType) {
+    OrderedCoder<?> coder;
+    switch (fieldType.getTypeName()) {
+      case BYTE:
+        coder = OrderedCoder.bytes();
+        break;
+      case INT16:
+        coder = OrderedCoder.shorts();
+        break;
+      case INT32:
+        coder = OrderedCoder.integers();
+        break;
+      case INT64:
+        coder = OrderedCoder.longs();
+        break;
+      case FLOAT:
+        coder = OrderedCoder.floats();
+        break;
+      case DOUBLE:
+        coder = OrderedCoder.doubles();
+        break;
+      case BOOLEAN:
+        coder = OrderedCoder.booleans();
+        break;
+      case STRING:
+        coder = OrderedCoder.strings();
+        break;
+      case BYTES:
+        coder = OrderedCoder.byteArrays();
+        break;
+      case DATETIME:
+        coder = OrderedCoder.instants();
+        break;
+      case ARRAY:
+      case ITERABLE:
+        coder = OrderedCoder.lists(coderForFieldType(fieldType.getCollectionElementType()));
+        break;
+      case ROW:
+        coder = OrderedRowCoder.of(fieldType.getRowSchema());
+        break;
+      default:
+        throw new IllegalArgumentException(
+            "Field type " + fieldType + " has no order-preserving encoding");
+    }
+    return fieldType.getNullable() ? OrderedCoder.nullable(coder) : coder;
+  }
+
+  public Schema getSchema() {
+    return schema;
+  }
+
+  @Override
+  public void encode(Row value, OutputStream outStream) throws IOException {
+    if (value.getFieldCount() != fieldCoders.length) {
+      throw new CoderException(
+          "Row has " + value.getFieldCount() + " fields, but its schema has " + fieldCoders.length);
+    }
+    for (int index : encodingOrder) {
+      Object fieldValue = value.getValue(index);
+      if (fieldValue instanceof Iterable && !(fieldValue instanceof List)) {
+        List<Object> list = new ArrayList<>();
+        ((Iterable<?>) fieldValue).forEach(list::add);
+        fieldValue = list;
+      }
+      fieldCoders[index].encode(fieldValue, outStream);
+    }
+  }
+
+  @Override
+  public Row decode(InputStream inStream) throws IOException {
+    Object[] values = new Object[fieldCoders.length];
+    for (int index : encodingOrder) {
+      values[index] = fieldCoders[index].decode(inStream);
+    }
+    return Row.withSchema(schema).attachValues(values);
+  }
+
+  @Override
+  public boolean equals(@Nullable Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    OrderedRowCoder that = (OrderedRowCoder) o;
+    return schema.equals(that.schema)
+        && Arrays.equals(encodingOrder, that.encodingOrder)
+        && Arrays.equals(descending, that.descending);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(schema, Arrays.hashCode(encodingOrder), Arrays.hashCode(descending));
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder("OrderedRowCoder{");
+    for (int i = 0; i < encodingOrder.length; ++i) {
+      int index = encodingOrder[i];
+      builder.append(i == 0 ? "" : ", ").append(schema.getField(index).getName());
+      if (descending[index]) {
+        builder.append(" DESC");
+      }
+    }
+    return builder.append('}').toString();
+  }
+}
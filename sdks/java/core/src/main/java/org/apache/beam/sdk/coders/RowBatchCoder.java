@@ -0,0 +1,315 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.coders;
+
+import static org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.base.Preconditions.checkArgument;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.BitSet;
+import java.util.Map;
+import java.util.Objects;
+import org.apache.beam.sdk.schemas.Schema;
+import org.apache.beam.sdk.schemas.Schema.Field;
+import org.apache.beam.sdk.schemas.Schema.TypeName;
+import org.apache.beam.sdk.schemas.SchemaCoder;
+import org.apache.beam.sdk.util.VarInt;
+import org.apache.beam.sdk.values.RowBatch;
+import org.apache.beam.sdk.values.RowBatch.ColumnVector;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * A {@link Coder} for {@link RowBatch} instances of a fixed {@link Schema}.
+ *
+ * <p>The encoding is columnar: a varint row count and a varint field count, followed by one column
+ * for each field in the order of its encoding position, as for {@link RowCoder}. Each column is a
+ * {@link BitSetCoder} encoded set of the null rows followed by the values of the non-null rows.
+ * Integral and floating point values are written as by their {@link RowCoder} field coders without
+ * boxing, boolean columns as a {@link BitSetCoder} encoded set of the true rows, and all other
+ * values with their {@link RowCoder} field coders. Decoding fills the column vectors of the
+ * resulting batch directly.
+ *
+ * <p>A coder returned by {@link #withStringDictionary} instead encodes the values of top-level
+ * {@link Schema.TypeName#STRING} fields with a dictionary scoped to the batch, so that a string
+ * repeated across the rows of a batch is written in full only once. Each string value is preceded
+ * by a varint tag as described for {@link DictionaryIterableCoder}. This encoding can only be
+ * decoded by a dictionary encoding {@link RowBatchCoder}.
+ */
+@SuppressWarnings({
+  "nullness", // TODO(https://github.com/apache/beam/issues/20497)
+  "rawtypes",
+  "unchecked"
+})
+public class RowBatchCoder extends CustomCoder<RowBatch> {
+  private static final BitSetCoder BIT_SET_CODER = BitSetCoder.of();
+  private static final BitSet EMPTY_BIT_SET = new BitSet(0);
+
+  private final RowCoder rowCoder;
+  // Negative if string fields are not dictionary encoded.
+  private final int maxStringDictionarySize;
+
+  // Indexed by encoding position. Null until first used.
+  private transient Coder[] fieldCoders;
+  private transient int[] encodingPosToRowIndex;
+  private transient TypeName[] typeNames;
+
+  public static RowBatchCoder of(Schema schema) {
+    return new RowBatchCoder(RowCoder.of(schema), -1);
+  }
+
+  private RowBatchCoder(RowCoder rowCoder, int maxStringDictionarySize) {
+    this.rowCoder = rowCoder;
+    this.maxStringDictionarySize = maxStringDictionarySize;
+  }
+
+  public Schema getSchema() {
+    return rowCoder.getSchema();
+  }
+
+  /**
+   * Returns a {@link RowBatchCoder} for the same schema that dictionary encodes string fields, with
+   * at most {@code maxDictionarySize} distinct strings in the dictionary of a batch.
+   */
+  public RowBatchCoder withStringDictionary(int maxDictionarySize) {
+    checkArgument(
+        maxDictionarySize >= 0, "maxDictionarySize must be non-negative: %s", maxDictionarySize);
+    return new RowBatchCoder(rowCoder, maxDictionarySize);
+  }
+
+  /** Returns a {@link RowBatchCoder} with the default maximum dictionary size. */
+  public RowBatchCoder withStringDictionary() {
+    return withStringDictionary(DictionaryIterableCoder.DEFAULT_MAX_DICTIONARY_SIZE);
+  }
+
+  @Override
+  public void encode(RowBatch value, OutputStream outStream) throws IOException {
+    initFieldCoders();
+    int rowCount = value.getRowCount();
+    VarInt.encode(rowCount, outStream);
+    VarInt.encode(fieldCoders.length, outStream);
+    DataOutputStream dataOutStream = new DataOutputStream(outStream);
+    DictionaryEncoding.Writer dictionary =
+        maxStringDictionarySize < 0
+            ? null
+            : new DictionaryEncoding.Writer(maxStringDictionarySize);
+    for (int encodingPos = 0; encodingPos < fieldCoders.length; ++encodingPos) {
+      encodeColumn(
+          encodingPos,
+          value.getColumn(encodingPosToRowIndex[encodingPos]),
+          rowCount,
+          dictionary,
+          dataOutStream);
+    }
+  }
+
+  @Override
+  public RowBatch decode(InputStream inStream) throws IOException {
+    initFieldCoders();
+    try {
+      int rowCount = VarInt.decodeInt(inStream);
+      if (rowCount < 0) {
+        throw new CoderException("Invalid RowBatch size " + rowCount);
+      }
+      int fieldCount = VarInt.decodeInt(inStream);
+      if (fieldCount != fieldCoders.length) {
+        throw new CoderException(
+            "RowBatch has " + fieldCount + " fields, but its schema has " + fieldCoders.length);
+      }
+      DataInputStream dataInStream = new DataInputStream(inStream);
+      DictionaryEncoding.Reader<String> dictionary =
+          maxStringDictionarySize < 0 ? null : new DictionaryEncoding.Reader<>();
+      ColumnVector[] columns = new ColumnVector[fieldCount];
+      for (int encodingPos = 0; encodingPos < fieldCount; ++encodingPos) {
+        columns[encodingPosToRowIndex[encodingPos]] =
+            decodeColumn(encodingPos, rowCount, dictionary, dataInStream);
+      }
+      return RowBatch.ofColumns(getSchema(), rowCount, columns);
+    } catch (EOFException e) {
+      throw new CoderException(e);
+    }
+  }
+
+  private void initFieldCoders() {
+    if (fieldCoders != null) {
+      return;
+    }
+    Schema schema = getSchema();
+    int fieldCount = schema.getFieldCount();
+    Coder[] coders = new Coder[fieldCount];
+    int[] rowIndices = new int[fieldCount];
+    TypeName[] types = new TypeName[fieldCount];
+    Map<String, Integer> encodingPositions = RowCoderGenerator.getEncodingPositions(schema);
+    for (int rowIndex = 0; rowIndex < fieldCount; ++rowIndex) {
+      Field field = schema.getField(rowIndex);
+      int encodingPos = encodingPositions.get(field.getName());
+      rowIndices[encodingPos] = rowIndex;
+      // Nulls are handled by the null bitmap of each column.
+      coders[encodingPos] = SchemaCoder.coderForFieldType(field.getType().withNullable(false));
+      types[encodingPos] = field.getType().getTypeName();
+    }
+    encodingPosToRowIndex = rowIndices;
+    typeNames = types;
+    fieldCoders = coders;
+  }
+
+  private void encodeColumn(
+      int encodingPos,
+      ColumnVector column,
+      int rowCount,
+      DictionaryEncoding.@Nullable Writer dictionary,
+      DataOutputStream outStream)
+      throws IOException {
+    BitSet nulls = EMPTY_BIT_SET;
+    if (column.hasNulls()) {
+      nulls = new BitSet(rowCount);
+      for (int i = 0; i < rowCount; ++i) {
+        if (column.isNull(i)) {
+          nulls.set(i);
+        }
+      }
+    }
+    BIT_SET_CODER.encode(nulls, outStream);
+    TypeName typeName = typeNames[encodingPos];
+    if (typeName == TypeName.BOOLEAN) {
+      BitSet values = new BitSet(rowCount);
+      for (int i = 0; i < rowCount; ++i) {
+        if (!nulls.get(i) && column.getBoolean(i)) {
+          values.set(i);
+        }
+      }
+      BIT_SET_CODER.encode(values, outStream);
+      return;
+    }
+    for (int i = nulls.nextClearBit(0); i < rowCount; i = nulls.nextClearBit(i + 1)) {
+      switch (typeName) {
+        case BYTE:
+          outStream.writeByte((int) column.getLong(i));
+          break;
+        case INT16:
+          outStream.writeShort((int) column.getLong(i));
+          break;
+        case INT32:
+          VarInt.encode((int) column.getLong(i), outStream);
+          break;
+        case INT64:
+          VarInt.encode(column.getLong(i), outStream);
+          break;
+        case FLOAT:
+          outStream.writeFloat((float) column.getDouble(i));
+          break;
+        case DOUBLE:
+          outStream.writeDouble(column.getDouble(i));
+          break;
+        default:
+          Object value = column.get(i);
+          if (typeName == TypeName.STRING
+              && dictionary != null
+              && dictionary.writeTag(value, outStream)) {
+            break;
+          }
+          fieldCoders[encodingPos].encode(value, outStream);
+      }
+    }
+  }
+
+  private ColumnVector decodeColumn(
+      int encodingPos,
+      int rowCount,
+      DictionaryEncoding.@Nullable Reader<String> dictionary,
+      DataInputStream inStream)
+      throws IOException {
+    BitSet nulls = BIT_SET_CODER.decode(inStream);
+    TypeName typeName = typeNames[encodingPos];
+    switch (typeName) {
+      case BYTE:
+      case INT16:
+      case INT32:
+      case INT64:
+        {
+          long[] values = new long[rowCount];
+          for (int i = nulls.nextClearBit(0); i < rowCount; i = nulls.nextClearBit(i + 1)) {
+            if (typeName == TypeName.BYTE) {
+              values[i] = inStream.readByte();
+            } else if (typeName == TypeName.INT16) {
+              values[i] = inStream.readShort();
+            } else if (typeName == TypeName.INT32) {
+              values[i] = VarInt.decodeInt(inStream);
+            } else {
+              values[i] = VarInt.decodeLong(inStream);
+            }
+          }
+          return ColumnVector.ofLongs(typeName, values, nulls);
+        }
+      case FLOAT:
+      case DOUBLE:
+        {
+          double[] values = new double[rowCount];
+          for (int i = nulls.nextClearBit(0); i < rowCount; i = nulls.nextClearBit(i + 1)) {
+            values[i] = typeName == TypeName.FLOAT ? inStream.readFloat() : inStream.readDouble();
+          }
+          return ColumnVector.ofDoubles(typeName, values, nulls);
+        }
+      case BOOLEAN:
+        return ColumnVector.ofBooleans(BIT_SET_CODER.decode(inStream), rowCount, nulls);
+      default:
+        {
+          Object[] values = new Object[rowCount];
+          for (int i = nulls.nextClearBit(0); i < rowCount; i = nulls.nextClearBit(i + 1)) {
+            if (typeName == TypeName.STRING && dictionary != null) {
+              int tag = dictionary.readTag(inStream);
+              values[i] =
+                  tag >= DictionaryEncoding.FIRST_REFERENCE
+                      ? dictionary.lookup(tag)
+                      : dictionary.literal(
+                          tag, (String) fieldCoders[encodingPos].decode(inStream));
+            } else {
+              values[i] = fieldCoders[encodingPos].decode(inStream);
+            }
+          }
+          return ColumnVector.ofObjects(typeName, values);
+        }
+    }
+  }
+
+  @Override
+  public void verifyDeterministic() throws NonDeterministicException {
+    rowCoder.verifyDeterministic();
+  }
+
+  @Override
+  public boolean equals(@Nullable Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    RowBatchCoder that = (RowBatchCoder) o;
+    return rowCoder.equals(that.rowCoder)
+        && maxStringDictionarySize == that.maxStringDictionarySize;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(rowCoder, maxStringDictionarySize);
+  }
+}
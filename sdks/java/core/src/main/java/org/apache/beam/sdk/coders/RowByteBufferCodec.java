@@ -0,0 +1,130 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.coders;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.BitSet;
+import java.util.Map;
+import org.apache.beam.sdk.schemas.Schema;
+import org.apache.beam.sdk.schemas.Schema.Field;
+import org.apache.beam.sdk.schemas.SchemaCoder;
+import org.apache.beam.sdk.util.CoderUtils;
+import org.apache.beam.sdk.util.VarInt;
+import org.apache.beam.sdk.values.LazyRow;
+import org.apache.beam.sdk.values.Row;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Encodes and decodes rows in the {@link RowCoder} format directly to and from a {@link
+ * ByteBuffer}. Mirrors the encoding implemented by the coders produced by {@link
+ * RowCoderGenerator}, with field values going through {@link CoderUtils#encodeToByteBuffer} so that
+ * field coders implementing {@link ByteBufferCoder} avoid the stream API.
+ */
+@SuppressWarnings({
+  "nullness", // TODO(https://github.com/apache/beam/issues/20497)
+  "rawtypes",
+  "unchecked"
+})
+class RowByteBufferCodec {
+  private static final BitSet EMPTY_BIT_SET = new BitSet(0);
+
+  private final Schema schema;
+  // Indexed by encoding position.
+  private final Coder[] coders;
+  private final int[] encodingPosToRowIndex;
+  private final boolean hasNullableFields;
+
+  RowByteBufferCodec(Schema schema) {
+    this.schema = schema;
+    int fieldCount = schema.getFieldCount();
+    this.coders = new Coder[fieldCount];
+    this.encodingPosToRowIndex = new int[fieldCount];
+    Map<String, Integer> encodingPositions = RowCoderGenerator.getEncodingPositions(schema);
+    boolean nullable = false;
+    for (int rowIndex = 0; rowIndex < fieldCount; ++rowIndex) {
+      Field field = schema.getField(rowIndex);
+      int encodingPos = encodingPositions.get(field.getName());
+      encodingPosToRowIndex[encodingPos] = rowIndex;
+      // Nulls are handled by the null bitmap, so the field coders need not handle them.
+      coders[encodingPos] = SchemaCoder.coderForFieldType(field.getType().withNullable(false));
+      nullable |= field.getType().getNullable();
+    }
+    this.hasNullableFields = nullable;
+  }
+
+  void encode(Row value, ByteBuffer buffer) throws IOException {
+    if (value instanceof LazyRow && ((LazyRow) value).isEncodedWith(schema)) {
+      buffer.put(((LazyRow) value).getEncoded());
+      return;
+    }
+    int fieldCount = value.getFieldCount();
+    if (fieldCount != coders.length) {
+      throw new CoderException(
+          "Row has " + fieldCount + " fields, but its schema has " + coders.length);
+    }
+    VarInt.encode(fieldCount, buffer);
+    BitSet nullFields = EMPTY_BIT_SET;
+    if (hasNullableFields) {
+      for (int encodingPos = 0; encodingPos < fieldCount; ++encodingPos) {
+        if (value.getValue(encodingPosToRowIndex[encodingPos]) == null) {
+          if (nullFields == EMPTY_BIT_SET) {
+            nullFields = new BitSet(fieldCount);
+          }
+          nullFields.set(encodingPos);
+        }
+      }
+    }
+    // Same layout as BitSetCoder: a length-prefixed byte array.
+    byte[] nullBytes = nullFields.toByteArray();
+    VarInt.encode(nullBytes.length, buffer);
+    buffer.put(nullBytes);
+    for (int encodingPos = 0; encodingPos < fieldCount; ++encodingPos) {
+      @Nullable Object fieldValue = value.getValue(encodingPosToRowIndex[encodingPos]);
+      if (fieldValue != null) {
+        CoderUtils.encodeToByteBuffer(coders[encodingPos], fieldValue, buffer);
+      }
+    }
+  }
+
+  Row decode(ByteBuffer buffer) throws IOException {
+    int fieldCount = VarInt.decodeInt(buffer);
+    int nullBytesLength = VarInt.decodeInt(buffer);
+    if (nullBytesLength < 0 || nullBytesLength > buffer.remaining()) {
+      throw new CoderException("Invalid null bitmap length " + nullBytesLength);
+    }
+    BitSet nullFields = EMPTY_BIT_SET;
+    if (nullBytesLength > 0) {
+      ByteBuffer nullBytes = buffer.slice();
+      nullBytes.limit(nullBytesLength);
+      nullFields = BitSet.valueOf(nullBytes);
+      buffer.position(buffer.position() + nullBytesLength);
+    }
+    Object[] fieldValues = new Object[coders.length];
+    // In the case of a schema change going backwards, fieldCount might be > coders.length, in which
+    // case we drop the extra fields. Fields added by a schema change are left null.
+    int decodedFields = Math.min(fieldCount, coders.length);
+    for (int encodingPos = 0; encodingPos < decodedFields; ++encodingPos) {
+      if (!nullFields.get(encodingPos)) {
+        fieldValues[encodingPosToRowIndex[encodingPos]] =
+            CoderUtils.decodeFromByteBuffer(coders[encodingPos], buffer);
+      }
+    }
+    return Row.withSchema(schema).attachValues(fieldValues);
+  }
+}
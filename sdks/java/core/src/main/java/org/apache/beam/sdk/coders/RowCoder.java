@@ -17,21 +17,51 @@
  */
 package org.apache.beam.sdk.coders;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.util.Map;
 import java.util.Objects;
 import java.util.UUID;
 import org.apache.beam.sdk.schemas.Schema;
 import org.apache.beam.sdk.schemas.SchemaCoder;
 import org.apache.beam.sdk.transforms.SerializableFunctions;
+import org.apache.beam.sdk.util.CoderUtils;
+import org.apache.beam.sdk.values.LazyRow;
 import org.apache.beam.sdk.values.Row;
 import org.apache.beam.sdk.values.TypeDescriptors;
 import org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.annotations.VisibleForTesting;
 import org.checkerframework.checker.nullness.qual.Nullable;
 
-/** A sub-class of SchemaCoder that can only encode {@link Row} instances. */
-public class RowCoder extends SchemaCoder<Row> {
+/**
+ * A sub-class of SchemaCoder that can only encode {@link Row} instances.
+ *
+ * <p>A {@link RowCoder} created with {@link #withLazyDecoding()} decodes into {@link LazyRow}s,
+ * which decode each field only when it is first read. This saves CPU and garbage for wide schemas
+ * where downstream transforms only access a few fields. Any {@link RowCoder} for the same schema
+ * re-encodes a {@link LazyRow} by copying its original bytes.
+ */
+public class RowCoder extends SchemaCoder<Row> implements ByteBufferCoder<Row> {
+  private final boolean lazyDecoding;
+  private transient @Nullable LazyRowDecoder lazyRowDecoder;
+  private transient @Nullable RowByteBufferCodec byteBufferCodec;
+
   public static RowCoder of(Schema schema) {
-    return new RowCoder(schema);
+    return new RowCoder(schema, false);
+  }
+
+  /**
+   * Returns a {@link RowCoder} with the same encoding as this one that decodes into {@link
+   * LazyRow}s.
+   */
+  public RowCoder withLazyDecoding() {
+    return lazyDecoding ? this : new RowCoder(schema, true);
+  }
+
+  /** Returns true if this coder decodes into {@link LazyRow}s. */
+  public boolean isLazyDecoding() {
+    return lazyDecoding;
   }
 
   /** Override encoding positions for the given schema. */
@@ -44,12 +74,72 @@ public class RowCoder extends SchemaCoder<Row> {
     RowCoderGenerator.clearRowCoderCache();
   }
 
-  private RowCoder(Schema schema) {
+  private RowCoder(Schema schema, boolean lazyDecoding) {
     super(
         schema,
         TypeDescriptors.rows(),
         SerializableFunctions.identity(),
         SerializableFunctions.identity());
+    this.lazyDecoding = lazyDecoding;
+  }
+
+  @Override
+  public void encode(Row value, OutputStream outStream) throws IOException {
+    if (value instanceof LazyRow && ((LazyRow) value).isEncodedWith(schema)) {
+      outStream.write(((LazyRow) value).getEncoded());
+    } else {
+      super.encode(value, outStream);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * @return {@code true} for a {@link LazyRow} that retains its encoding in this coder's format.
+   */
+  @Override
+  public boolean isRegisterByteSizeObserverCheap(Row value) {
+    return value instanceof LazyRow && ((LazyRow) value).isEncodedWith(schema);
+  }
+
+  @Override
+  protected long getEncodedElementByteSize(Row value) throws Exception {
+    if (value instanceof LazyRow && ((LazyRow) value).isEncodedWith(schema)) {
+      return ((LazyRow) value).getEncoded().length;
+    }
+    return super.getEncodedElementByteSize(value);
+  }
+
+  @Override
+  public Row decode(InputStream inStream) throws IOException {
+    if (!lazyDecoding) {
+      return super.decode(inStream);
+    }
+    if (lazyRowDecoder == null) {
+      lazyRowDecoder = new LazyRowDecoder(schema);
+    }
+    return lazyRowDecoder.decode(inStream);
+  }
+
+  @Override
+  public void encode(Row value, ByteBuffer buffer) throws IOException {
+    getByteBufferCodec().encode(value, buffer);
+  }
+
+  @Override
+  public Row decode(ByteBuffer buffer) throws IOException {
+    if (lazyDecoding) {
+      // Lazy rows retain their encoded bytes, which the stream decoder captures as it reads.
+      return decode(CoderUtils.asInputStream(buffer));
+    }
+    return getByteBufferCodec().decode(buffer);
+  }
+
+  private RowByteBufferCodec getByteBufferCodec() {
+    if (byteBufferCodec == null) {
+      byteBufferCodec = new RowByteBufferCodec(schema);
+    }
+    return byteBufferCodec;
   }
 
   @Override
@@ -61,11 +151,11 @@ public class RowCoder extends SchemaCoder<Row> {
       return false;
     }
     RowCoder rowCoder = (RowCoder) o;
-    return schema.equals(rowCoder.schema);
+    return schema.equals(rowCoder.schema) && lazyDecoding == rowCoder.lazyDecoding;
   }
 
   @Override
   public int hashCode() {
-    return Objects.hash(schema);
+    return Objects.hash(schema, lazyDecoding);
   }
 }
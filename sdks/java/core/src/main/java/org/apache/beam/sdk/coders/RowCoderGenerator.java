@@ -197,6 +197,22 @@ public abstract class RowCoderGenerator {
     }
   }
 
+  /**
+   * Returns the encoding positions used for {@code schema}, taking any overrides registered with
+   * {@link #overrideEncodingPositions} into account.
+   */
+  public static Map<String, Integer> getEncodingPositions(Schema schema) {
+    UUID uuid = Preconditions.checkNotNull(schema.getUUID());
+    synchronized (cacheLock) {
+      @Nullable
+      WithStackTrace<Map<String, Integer>> existingEncodingPositions =
+          ENCODING_POSITION_OVERRIDES.get(uuid);
+      return existingEncodingPositions == null
+          ? schema.getEncodingPositions()
+          : existingEncodingPositions.getValue();
+    }
+  }
+
   @SuppressWarnings("unchecked")
   public static Coder<Row> generate(Schema schema) {
     UUID uuid = Preconditions.checkNotNull(schema.getUUID());
@@ -213,13 +229,7 @@ public abstract class RowCoderGenerator {
       builder = implementMethods(schema, builder);
 
       int[] encodingPosToRowIndex = new int[schema.getFieldCount()];
-      @Nullable
-      WithStackTrace<Map<String, Integer>> existingEncodingPositions =
-          ENCODING_POSITION_OVERRIDES.get(uuid);
-      Map<String, Integer> encodingPositions =
-          existingEncodingPositions == null
-              ? schema.getEncodingPositions()
-              : existingEncodingPositions.getValue();
+      Map<String, Integer> encodingPositions = getEncodingPositions(schema);
       for (int recordIndex = 0; recordIndex < schema.getFieldCount(); ++recordIndex) {
         String name = schema.getField(recordIndex).getName();
         int encodingPosition = encodingPositions.get(name);
@@ -29,7 +29,8 @@ import org.apache.beam.sdk.values.TypeParameter;
  *
  * @param <T> the type of the elements of the set
  */
-public class SetCoder<T> extends IterableLikeCoder<T, Set<T>> {
+public class SetCoder<T> extends IterableLikeCoder<T, Set<T>>
+    implements ByteBufferCoder<Set<T>> {
 
   /** Produces a {@link SetCoder} with the given {@code elementCoder}. */
   public static <T> SetCoder<T> of(Coder<T> elementCoder) {
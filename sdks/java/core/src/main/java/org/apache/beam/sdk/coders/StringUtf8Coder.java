@@ -22,6 +22,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.UTFDataFormatException;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import org.apache.beam.sdk.util.ExposedByteArrayOutputStream;
 import org.apache.beam.sdk.util.StreamUtils;
@@ -34,7 +35,7 @@ import org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.io.ByteStreams
  * A {@link Coder} that encodes {@link String Strings} in UTF-8 encoding. If in a nested context,
  * prefixes the string with an integer length field, encoded via a {@link VarIntCoder}.
  */
-public class StringUtf8Coder extends AtomicCoder<String> {
+public class StringUtf8Coder extends AtomicCoder<String> implements ByteBufferCoder<String> {
 
   public static StringUtf8Coder of() {
     return INSTANCE;
@@ -106,6 +107,59 @@ public class StringUtf8Coder extends AtomicCoder<String> {
     }
   }
 
+  @Override
+  public void encode(String value, ByteBuffer buffer) throws CoderException {
+    if (value == null) {
+      throw new CoderException("cannot encode a null String");
+    }
+    int length = value.length();
+    if (isAscii(value)) {
+      // Every char is encoded as a single byte, so no intermediate array is needed.
+      VarInt.encode(length, buffer);
+      for (int i = 0; i < length; ++i) {
+        buffer.put((byte) value.charAt(i));
+      }
+    } else {
+      // Like the stream encoding, this replaces unpaired surrogates rather than failing on them.
+      byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+      VarInt.encode(bytes.length, buffer);
+      buffer.put(bytes);
+    }
+  }
+
+  private static boolean isAscii(String value) {
+    for (int i = 0; i < value.length(); ++i) {
+      if (value.charAt(i) >= 0x80) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public String decode(ByteBuffer buffer) throws IOException {
+    int len;
+    try {
+      len = VarInt.decodeInt(buffer);
+    } catch (EOFException exn) {
+      throw new CoderException(exn);
+    }
+    if (len < 0 || len > buffer.remaining()) {
+      throw new CoderException("Invalid encoded string length: " + len);
+    }
+    String value;
+    if (buffer.hasArray()) {
+      int offset = buffer.arrayOffset() + buffer.position();
+      value = new String(buffer.array(), offset, len, StandardCharsets.UTF_8);
+      buffer.position(buffer.position() + len);
+    } else {
+      byte[] bytes = new byte[len];
+      buffer.get(bytes);
+      value = new String(bytes, StandardCharsets.UTF_8);
+    }
+    return value;
+  }
+
   @Override
   public void verifyDeterministic() {}
 
@@ -22,6 +22,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.UTFDataFormatException;
+import java.nio.ByteBuffer;
 import org.apache.beam.sdk.util.VarInt;
 import org.apache.beam.sdk.values.TypeDescriptor;
 
@@ -30,7 +31,7 @@ import org.apache.beam.sdk.values.TypeDescriptor;
  * numbers always take 5 bytes, so {@link BigEndianIntegerCoder} may be preferable for integers that
  * are known to often be large or negative.
  */
-public class VarIntCoder extends AtomicCoder<Integer> {
+public class VarIntCoder extends AtomicCoder<Integer> implements ByteBufferCoder<Integer> {
 
   public static VarIntCoder of() {
     return INSTANCE;
@@ -62,6 +63,23 @@ public class VarIntCoder extends AtomicCoder<Integer> {
     }
   }
 
+  @Override
+  public void encode(Integer value, ByteBuffer buffer) throws CoderException {
+    if (value == null) {
+      throw new CoderException("cannot encode a null Integer");
+    }
+    VarInt.encode(value, buffer);
+  }
+
+  @Override
+  public Integer decode(ByteBuffer buffer) throws IOException {
+    try {
+      return VarInt.decodeInt(buffer);
+    } catch (EOFException exn) {
+      throw new CoderException(exn);
+    }
+  }
+
   @Override
   public void verifyDeterministic() {}
 
@@ -22,6 +22,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.UTFDataFormatException;
+import java.nio.ByteBuffer;
 import java.util.Collections;
 import java.util.List;
 import org.apache.beam.sdk.util.VarInt;
@@ -32,7 +33,7 @@ import org.apache.beam.sdk.values.TypeDescriptor;
  * always take 10 bytes, so {@link BigEndianLongCoder} may be preferable for longs that are known to
  * often be large or negative.
  */
-public class VarLongCoder extends StructuredCoder<Long> {
+public class VarLongCoder extends StructuredCoder<Long> implements ByteBufferCoder<Long> {
   public static VarLongCoder of() {
     return INSTANCE;
   }
@@ -63,6 +64,23 @@ public class VarLongCoder extends StructuredCoder<Long> {
     }
   }
 
+  @Override
+  public void encode(Long value, ByteBuffer buffer) throws CoderException {
+    if (value == null) {
+      throw new CoderException("cannot encode a null Long");
+    }
+    VarInt.encode(value, buffer);
+  }
+
+  @Override
+  public Long decode(ByteBuffer buffer) throws IOException {
+    try {
+      return VarInt.decodeLong(buffer);
+    } catch (EOFException exn) {
+      throw new CoderException(exn);
+    }
+  }
+
   @Override
   public List<? extends Coder<?>> getCoderArguments() {
     return Collections.emptyList();
@@ -17,9 +17,13 @@
  */
 package org.apache.beam.sdk.coders;
 
+import static org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.base.Preconditions.checkArgument;
+
 import com.github.luben.zstd.Zstd;
 import com.github.luben.zstd.ZstdCompressCtx;
 import com.github.luben.zstd.ZstdDecompressCtx;
+import com.github.luben.zstd.ZstdDictTrainer;
+import com.github.luben.zstd.ZstdException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -40,8 +44,16 @@ import org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.io.BaseEncodin
  * <p>This coder uses the Zstandard compression library's direct compression methods (from {@code
  * byte[]} to {@code byte[]}) and thus requires that the inner coder's encoded value must fit in a
  * {@code byte[]}.
+ *
+ * <p>Small values compress poorly on their own. For those, a dictionary can be trained from a
+ * sample of representative values with {@link #ofSample} or {@link #trainDictionary}. The
+ * dictionary is part of the coder, so it travels with the pipeline in the coder's serialized form
+ * and every worker compresses and decompresses with the same dictionary.
  */
 public class ZstdCoder<T> extends Coder<T> {
+  /** The default maximum size in bytes of a dictionary trained by {@link #ofSample}. */
+  public static final int DEFAULT_DICTIONARY_SIZE = 16 * 1024;
+
   private final Coder<T> innerCoder;
   private final @Nullable byte[] dict;
   private final int level;
@@ -66,6 +78,47 @@ public class ZstdCoder<T> extends Coder<T> {
     return new ZstdCoder<>(innerCoder, null, Zstd.defaultCompressionLevel());
   }
 
+  /**
+   * Wraps the given coder into a {@link ZstdCoder} that uses a dictionary of at most {@link
+   * #DEFAULT_DICTIONARY_SIZE} bytes trained from the given sample values.
+   *
+   * @see #trainDictionary
+   */
+  public static <T> ZstdCoder<T> ofSample(Coder<T> innerCoder, Iterable<T> sample)
+      throws CoderException {
+    return of(innerCoder, trainDictionary(innerCoder, sample, DEFAULT_DICTIONARY_SIZE));
+  }
+
+  /**
+   * Trains a Zstandard dictionary of at most {@code maxDictionarySize} bytes from the encodings of
+   * the given sample values, for use with {@link #of(Coder, byte[])}.
+   *
+   * <p>The sample should be representative of the values of the {@link
+   * org.apache.beam.sdk.values.PCollection} the coder is used for, and much larger than the
+   * dictionary; Zstandard recommends a total sample size of about 100 times the dictionary size.
+   * Samples beyond that size are ignored.
+   *
+   * @throws IllegalArgumentException if no dictionary can be trained from the sample, e.g. because
+   *     it contains too few values
+   */
+  public static <T> byte[] trainDictionary(
+      Coder<T> innerCoder, Iterable<T> sample, int maxDictionarySize) throws CoderException {
+    checkArgument(
+        maxDictionarySize > 0, "maxDictionarySize must be positive: %s", maxDictionarySize);
+    ZstdDictTrainer trainer =
+        new ZstdDictTrainer((int) Math.min(100L * maxDictionarySize, 1 << 30), maxDictionarySize);
+    for (T value : sample) {
+      if (!trainer.addSample(CoderUtils.encodeToByteArray(innerCoder, value))) {
+        break;
+      }
+    }
+    try {
+      return trainer.trainSamples();
+    } catch (ZstdException e) {
+      throw new IllegalArgumentException("Unable to train a Zstandard dictionary from sample", e);
+    }
+  }
+
   private ZstdCoder(Coder<T> innerCoder, @Nullable byte[] dict, int level) {
     this.innerCoder = innerCoder;
     this.dict = dict;
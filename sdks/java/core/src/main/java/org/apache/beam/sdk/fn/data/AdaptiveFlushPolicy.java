@@ -0,0 +1,68 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.fn.data;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * Chooses the buffer size at which a {@link BeamFnDataOutboundAggregator} flushes from the rate at
+ * which outbound data is produced.
+ *
+ * <p>The target size is the number of bytes produced within the target latency at the rate
+ * observed over recent flushes, bounded by {@link #MIN_TARGET_BYTES} and the static size limit.
+ * Sparse streams therefore send small frames soon after their elements are produced, while dense
+ * streams send large frames with less per-message overhead.
+ */
+@NotThreadSafe
+class AdaptiveFlushPolicy {
+  /** The smallest buffer size that triggers a flush, to bound the per-message overhead. */
+  static final int MIN_TARGET_BYTES = 4 * 1024;
+
+  // The weight of the most recent flush in the smoothed byte rate.
+  private static final double RATE_SMOOTHING = 0.25;
+
+  private final long targetLatencyNanos;
+  private final int maxTargetBytes;
+  private double bytesPerNano;
+  private long lastFlushNanos;
+  private long targetBytes;
+
+  AdaptiveFlushPolicy(long targetLatencyMillis, int maxTargetBytes, long nowNanos) {
+    this.targetLatencyNanos = targetLatencyMillis * 1_000_000L;
+    this.maxTargetBytes = Math.max(maxTargetBytes, MIN_TARGET_BYTES);
+    this.lastFlushNanos = nowNanos;
+    this.targetBytes = MIN_TARGET_BYTES;
+  }
+
+  /** Returns the buffer size in bytes that should trigger a flush. */
+  long getTargetBytes() {
+    return targetBytes;
+  }
+
+  /** Updates the observed byte rate and the target size after {@code bytes} were flushed. */
+  void recordFlush(long bytes, long nowNanos) {
+    long elapsedNanos = Math.max(nowNanos - lastFlushNanos, 1L);
+    lastFlushNanos = nowNanos;
+    double sample = (double) bytes / elapsedNanos;
+    bytesPerNano =
+        bytesPerNano == 0 ? sample : RATE_SMOOTHING * sample + (1 - RATE_SMOOTHING) * bytesPerNano;
+    targetBytes =
+        Math.min(
+            maxTargetBytes, Math.max(MIN_TARGET_BYTES, (long) (bytesPerNano * targetLatencyNanos)));
+  }
+}
@@ -28,15 +28,20 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Supplier;
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.NotThreadSafe;
 import org.apache.beam.model.fnexecution.v1.BeamFnApi.Elements;
 import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.fn.stream.DirectStreamObserver;
 import org.apache.beam.sdk.options.ExperimentalOptions;
 import org.apache.beam.sdk.options.PipelineOptions;
 import org.apache.beam.sdk.util.ByteStringOutputStream;
+import org.apache.beam.sdk.util.HistogramData;
 import org.apache.beam.vendor.grpc.v1p69p0.com.google.protobuf.ByteString;
+import org.apache.beam.vendor.grpc.v1p69p0.io.grpc.stub.CallStreamObserver;
 import org.apache.beam.vendor.grpc.v1p69p0.io.grpc.stub.StreamObserver;
 import org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.annotations.VisibleForTesting;
 import org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.util.concurrent.ThreadFactoryBuilder;
@@ -52,15 +57,25 @@ import org.slf4j.LoggerFactory;
  *
  * <p>The default time-based buffer threshold can be overridden by specifying the experiment {@code
  * data_buffer_time_limit_ms=<milliseconds>}
+ *
+ * <p>Specifying the experiment {@code data_buffer_target_latency_ms=<milliseconds>} enables
+ * adaptive buffering: the buffer is flushed once it holds about as much data as is produced within
+ * the target latency at the observed rate, see {@link AdaptiveFlushPolicy}. While the outbound
+ * stream is not ready to send, the buffer instead grows up to the size-based threshold. Unless a
+ * time-based threshold is specified, the buffer is also flushed periodically at the target
+ * latency. The size-based threshold always applies.
+ *
+ * <p>The sizes and latencies of the flushed data frames of each endpoint are recorded, see {@link
+ * #getAndResetFlushHistograms}.
  */
 @SuppressWarnings({
   "nullness" // TODO(https://github.com/apache/beam/issues/20497)
 })
-// The calling thread that invokes sendBufferedDataAndFinishOutboundStreams synchronizes on
-// flushLock effectively making the periodic flushing no longer read or mutate hasFlushedForBundle
-// and allowing the calling thread to read and mutate hasFlushedForBundle safely without needing to
-// create another memory barrier. Also note that flush is always invoked when synchronizing on
-// flushLock when there is a periodic flushing thread.
+// The calling thread that invokes sendBufferedDataAndFinishOutboundStreams holds flushLock
+// effectively making the periodic flushing no longer read or mutate hasFlushedForBundle and
+// allowing the calling thread to read and mutate hasFlushedForBundle safely without needing to
+// create another memory barrier. Also note that flush is always invoked when holding flushLock
+// when there is a periodic flushing thread.
 @NotThreadSafe
 public class BeamFnDataOutboundAggregator {
 
@@ -68,17 +83,21 @@ public class BeamFnDataOutboundAggregator {
   public static final int DEFAULT_BUFFER_LIMIT_BYTES = 1_000_000;
   public static final String DATA_BUFFER_TIME_LIMIT_MS = "data_buffer_time_limit_ms=";
   public static final long DEFAULT_BUFFER_LIMIT_TIME_MS = -1L;
+  public static final String DATA_BUFFER_TARGET_LATENCY_MS = "data_buffer_target_latency_ms";
 
   private static final Logger LOG = LoggerFactory.getLogger(BeamFnDataOutboundAggregator.class);
   private final int sizeLimit;
   private final long timeLimit;
+  private final @Nullable AdaptiveFlushPolicy flushPolicy;
   private final Supplier<String> processBundleRequestIdSupplier;
   @VisibleForTesting final Map<String, Receiver<?>> outputDataReceivers;
   @VisibleForTesting final Map<TimerEndpoint, Receiver<?>> outputTimersReceivers;
   private final StreamObserver<Elements> outboundObserver;
   @Nullable @VisibleForTesting ScheduledFuture<?> flushFuture;
   private long bytesWrittenSinceFlush;
-  private final Object flushLock;
+  // A lock rather than a monitor, since a flush may block on the outbound stream and virtual threads
+  // that block within a monitor pin their carrier thread.
+  private final Lock flushLock;
   private final boolean collectElementsIfNoFlushes;
   private boolean hasFlushedForBundle;
 
@@ -88,14 +107,22 @@ public class BeamFnDataOutboundAggregator {
       StreamObserver<Elements> outboundObserver,
       boolean collectElementsIfNoFlushes) {
     this.sizeLimit = getSizeLimit(options);
-    this.timeLimit = getTimeLimit(options);
+    long targetLatency = getTargetLatency(options);
+    if (targetLatency > 0) {
+      this.flushPolicy = new AdaptiveFlushPolicy(targetLatency, sizeLimit, System.nanoTime());
+      long timeLimit = getTimeLimit(options);
+      this.timeLimit = timeLimit > 0 ? timeLimit : targetLatency;
+    } else {
+      this.flushPolicy = null;
+      this.timeLimit = getTimeLimit(options);
+    }
     this.collectElementsIfNoFlushes = collectElementsIfNoFlushes;
     this.outputDataReceivers = new HashMap<>();
     this.outputTimersReceivers = new HashMap<>();
     this.outboundObserver = outboundObserver;
     this.processBundleRequestIdSupplier = processBundleRequestIdSupplier;
     this.bytesWrittenSinceFlush = 0L;
-    this.flushLock = new Object();
+    this.flushLock = new ReentrantLock();
     this.hasFlushedForBundle = false;
   }
 
@@ -126,8 +153,11 @@ public class BeamFnDataOutboundAggregator {
       outputDataReceivers.put(pTransformId, receiver);
       return data -> {
         checkFlushThreadException();
-        synchronized (flushLock) {
+        flushLock.lock();
+        try {
           receiver.accept(data);
+        } finally {
+          flushLock.unlock();
         }
       };
     }
@@ -151,8 +181,11 @@ public class BeamFnDataOutboundAggregator {
       outputTimersReceivers.put(timerKey, receiver);
       return timers -> {
         checkFlushThreadException();
-        synchronized (flushLock) {
+        flushLock.lock();
+        try {
           receiver.accept(timers);
+        } finally {
+          flushLock.unlock();
         }
       };
     }
@@ -160,11 +193,35 @@ public class BeamFnDataOutboundAggregator {
     return receiver;
   }
 
+  private boolean shouldFlush() {
+    if (bytesWrittenSinceFlush > sizeLimit) {
+      return true;
+    }
+    // Under backpressure, sending smaller frames would only block, so let the buffer grow.
+    return flushPolicy != null
+        && bytesWrittenSinceFlush >= flushPolicy.getTargetBytes()
+        && isOutboundReady();
+  }
+
+  private boolean isOutboundReady() {
+    if (outboundObserver instanceof DirectStreamObserver) {
+      return ((DirectStreamObserver<?>) outboundObserver).isReady();
+    }
+    if (outboundObserver instanceof CallStreamObserver) {
+      return ((CallStreamObserver<?>) outboundObserver).isReady();
+    }
+    return true;
+  }
+
   private void flushInternal() {
     if (bytesWrittenSinceFlush == 0) {
       return;
     }
+    long bytes = bytesWrittenSinceFlush;
     Elements.Builder elements = convertBufferForTransmission();
+    if (flushPolicy != null) {
+      flushPolicy.recordFlush(bytes, System.nanoTime());
+    }
     if (elements.getDataCount() > 0 || elements.getTimersCount() > 0) {
       outboundObserver.onNext(elements.build());
     }
@@ -183,8 +240,11 @@ public class BeamFnDataOutboundAggregator {
     }
     Elements.Builder bufferedElements;
     if (timeLimit > 0) {
-      synchronized (flushLock) {
+      flushLock.lock();
+      try {
         bufferedElements = convertBufferForTransmission();
+      } finally {
+        flushLock.unlock();
       }
     } else {
       bufferedElements = convertBufferForTransmission();
@@ -223,6 +283,39 @@ public class BeamFnDataOutboundAggregator {
     return null;
   }
 
+  /**
+   * Sends the data and timers buffered so far without closing the outbound streams, regardless of
+   * the buffer limits.
+   */
+  public void sendBufferedData() {
+    if (timeLimit > 0) {
+      flushLock.lock();
+      try {
+        flushInternal();
+      } finally {
+        flushLock.unlock();
+      }
+    } else {
+      flushInternal();
+    }
+  }
+
+  /**
+   * Returns the histograms of the data frames flushed for each outbound data endpoint since the
+   * last call, keyed by PTransform id, and resets them. Endpoints that flushed no data are
+   * omitted.
+   */
+  public Map<String, FlushHistograms> getAndResetFlushHistograms() {
+    Map<String, FlushHistograms> histograms = new HashMap<>();
+    for (Map.Entry<String, Receiver<?>> entry : outputDataReceivers.entrySet()) {
+      FlushHistograms endpointHistograms = entry.getValue().getAndResetFlushHistograms();
+      if (endpointHistograms.getSizeBytes().getTotalCount() > 0) {
+        histograms.put(entry.getKey(), endpointHistograms);
+      }
+    }
+    return histograms;
+  }
+
   // Send the elements to the StreamObserver associated with this aggregator.
   public void sendElements(Elements elements) {
     outboundObserver.onNext(elements);
@@ -236,10 +329,12 @@ public class BeamFnDataOutboundAggregator {
 
   private Elements.Builder convertBufferForTransmission() {
     Elements.Builder bufferedElements = Elements.newBuilder();
+    long nowNanos = System.nanoTime();
     for (Map.Entry<String, Receiver<?>> entry : outputDataReceivers.entrySet()) {
       if (entry.getValue().bufferedSize() == 0) {
         continue;
       }
+      entry.getValue().recordFlush(nowNanos);
       ByteString bytes = entry.getValue().toByteStringAndResetBuffer();
       bufferedElements
           .addDataBuilder()
@@ -265,8 +360,11 @@ public class BeamFnDataOutboundAggregator {
 
   void flush() {
     try {
-      synchronized (flushLock) {
+      flushLock.lock();
+      try {
         flushInternal();
+      } finally {
+        flushLock.unlock();
       }
     } catch (Throwable t) {
       throw new RuntimeException(t);
@@ -320,12 +418,45 @@ public class BeamFnDataOutboundAggregator {
     return DEFAULT_BUFFER_LIMIT_TIME_MS;
   }
 
+  private static long getTargetLatency(PipelineOptions options) {
+    String targetLatency =
+        ExperimentalOptions.getExperimentValue(options, DATA_BUFFER_TARGET_LATENCY_MS);
+    return targetLatency == null ? -1L : Long.parseLong(targetLatency);
+  }
+
+  /** Histograms of the data frames flushed for an outbound endpoint. */
+  public static class FlushHistograms {
+    private final HistogramData sizeBytes;
+    private final HistogramData latencyMillis;
+
+    FlushHistograms(HistogramData sizeBytes, HistogramData latencyMillis) {
+      this.sizeBytes = sizeBytes;
+      this.latencyMillis = latencyMillis;
+    }
+
+    /** The sizes in bytes of the flushed frames. */
+    public HistogramData getSizeBytes() {
+      return sizeBytes;
+    }
+
+    /**
+     * The times in milliseconds between buffering the first element of a frame and flushing the
+     * frame.
+     */
+    public HistogramData getLatencyMillis() {
+      return latencyMillis;
+    }
+  }
+
   @VisibleForTesting
   class Receiver<T> implements FnDataReceiver<T> {
     private final ByteStringOutputStream output;
     private final Coder<T> coder;
     private long perBundleByteCount;
     private long perBundleElementCount;
+    private long firstBufferedNanos;
+    private final HistogramData flushSizeBytes = HistogramData.exponential(0, 32);
+    private final HistogramData flushLatencyMillis = HistogramData.exponential(0, 32);
 
     public Receiver(Coder<T> coder) {
       this.output = new ByteStringOutputStream();
@@ -337,6 +468,9 @@ public class BeamFnDataOutboundAggregator {
     @Override
     public void accept(T input) throws Exception {
       int size = output.size();
+      if (size == 0) {
+        firstBufferedNanos = System.nanoTime();
+      }
       coder.encode(input, output);
       if (output.size() - size == 0) {
         output.write(0);
@@ -345,7 +479,7 @@ public class BeamFnDataOutboundAggregator {
       bytesWrittenSinceFlush += delta;
       perBundleByteCount += delta;
       perBundleElementCount += 1;
-      if (bytesWrittenSinceFlush > sizeLimit) {
+      if (shouldFlush()) {
         flushInternal();
       }
     }
@@ -362,6 +496,15 @@ public class BeamFnDataOutboundAggregator {
       return output.size();
     }
 
+    void recordFlush(long nowNanos) {
+      flushSizeBytes.record(output.size());
+      flushLatencyMillis.record(TimeUnit.NANOSECONDS.toMillis(nowNanos - firstBufferedNanos));
+    }
+
+    FlushHistograms getAndResetFlushHistograms() {
+      return new FlushHistograms(flushSizeBytes.getAndReset(), flushLatencyMillis.getAndReset());
+    }
+
     public ByteString toByteStringAndResetBuffer() {
       return this.output.toByteStringAndReset();
     }
@@ -0,0 +1,656 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.fn.data;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.UserPrincipal;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.apache.beam.model.fnexecution.v1.BeamFnApi.Elements;
+import org.apache.beam.vendor.grpc.v1p69p0.io.grpc.CallOptions;
+import org.apache.beam.vendor.grpc.v1p69p0.io.grpc.Channel;
+import org.apache.beam.vendor.grpc.v1p69p0.io.grpc.ClientCall;
+import org.apache.beam.vendor.grpc.v1p69p0.io.grpc.ClientInterceptor;
+import org.apache.beam.vendor.grpc.v1p69p0.io.grpc.Context;
+import org.apache.beam.vendor.grpc.v1p69p0.io.grpc.Contexts;
+import org.apache.beam.vendor.grpc.v1p69p0.io.grpc.ForwardingClientCall.SimpleForwardingClientCall;
+import org.apache.beam.vendor.grpc.v1p69p0.io.grpc.ForwardingClientCallListener.SimpleForwardingClientCallListener;
+import org.apache.beam.vendor.grpc.v1p69p0.io.grpc.ForwardingServerCall.SimpleForwardingServerCall;
+import org.apache.beam.vendor.grpc.v1p69p0.io.grpc.Metadata;
+import org.apache.beam.vendor.grpc.v1p69p0.io.grpc.MethodDescriptor;
+import org.apache.beam.vendor.grpc.v1p69p0.io.grpc.ServerCall;
+import org.apache.beam.vendor.grpc.v1p69p0.io.grpc.ServerCallHandler;
+import org.apache.beam.vendor.grpc.v1p69p0.io.grpc.ServerInterceptor;
+import org.apache.beam.vendor.grpc.v1p69p0.io.grpc.Status;
+import org.apache.beam.vendor.grpc.v1p69p0.io.grpc.stub.CallStreamObserver;
+import org.apache.beam.vendor.grpc.v1p69p0.io.grpc.stub.StreamObserver;
+import org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Carries the {@link Elements} of a Beam Fn data stream through a pair of {@link
+ * SharedMemoryRingBuffer}s when the runner and the SDK harness run on the same host, leaving the
+ * gRPC stream only to control the lifetime of the connection.
+ *
+ * <p>The channel is negotiated per data {@link
+ * org.apache.beam.model.pipeline.v1.Endpoints.ApiServiceDescriptor}, on the {@code Data} call to
+ * it. The descriptor itself has no field for transport capabilities, so the negotiation uses call
+ * metadata instead: the SDK harness {@link #create creates} the ring buffers in a new directory,
+ * preferably under {@code /dev/shm}, and offers the directory in a header of the call using {@link
+ * #offer}. A runner data service that supports the channel {@link #acceptOffer accepts} it if the
+ * directory is one that {@link #create} could have made for the same user and the ring buffers
+ * can be opened, and answers in the response headers before sending any element. Runners that do
+ * not know the header, or run on another host, ignore or decline the offer, in which case both
+ * sides keep using the gRPC stream.
+ *
+ * <p>Each direction switches to the ring buffers at a defined point of the stream:
+ *
+ * <ul>
+ *   <li>The runner answers before sending anything, so once it accepted all its elements go
+ *       through the ring buffer.
+ *   <li>The SDK harness starts sending on the gRPC stream without waiting for the answer. With the
+ *       first element it sends after the runner accepted, it sends a switch marker on the gRPC
+ *       stream, and all later elements go through the ring buffer. The runner starts reading the
+ *       ring buffer once it received the marker.
+ * </ul>
+ *
+ * <p>Once a side reads the inbound ring buffer, the completion or failure of the inbound gRPC stream
+ * is only passed on after all elements of the ring buffer were, because the other side finishes
+ * writing to the ring buffer before it completes the gRPC stream. Each side closes the channel once
+ * the gRPC stream completed in both directions and the inbound ring buffer was read, or failed.
+ */
+public class SharedMemoryDataChannel implements AutoCloseable {
+  private static final Logger LOG = LoggerFactory.getLogger(SharedMemoryDataChannel.class);
+
+  /** The default capacity in bytes of the ring buffer for each direction. */
+  public static final int DEFAULT_CAPACITY = 16 << 20;
+
+  private static final Metadata.Key<String> HEADER_KEY =
+      Metadata.Key.of("beam-fn-data-shared-memory", Metadata.ASCII_STRING_MARSHALLER);
+  private static final String ACCEPTED = "accepted";
+  private static final String DIRECTORY_PREFIX = "beam-fn-data-";
+  /**
+   * Sent by the SDK harness as its last element on the gRPC stream before switching to the ring
+   * buffer. Data of the multiplexer always has an instruction id, so the marker cannot be confused
+   * with elements.
+   */
+  private static final Elements SWITCH_MARKER =
+      Elements.newBuilder()
+          .addData(Elements.Data.newBuilder().setTransformId("beam:fn:data:shared_memory_switch"))
+          .build();
+  private static final Context.Key<Offer> CONTEXT_KEY =
+      Context.key("beam-fn-data-shared-memory");
+  private static final String SDK_TO_RUNNER = "sdk-to-runner";
+  private static final String RUNNER_TO_SDK = "runner-to-sdk";
+  private static final Path SHARED_MEMORY_DIRECTORY = Paths.get("/dev/shm");
+
+  /**
+   * Creates the ring buffers for an SDK harness in a new directory under {@code /dev/shm}, or
+   * under the temporary directory if {@code /dev/shm} is not available.
+   */
+  public static SharedMemoryDataChannel create(int capacity) throws IOException {
+    Path directory =
+        Files.isDirectory(SHARED_MEMORY_DIRECTORY) && Files.isWritable(SHARED_MEMORY_DIRECTORY)
+            ? Files.createTempDirectory(SHARED_MEMORY_DIRECTORY, DIRECTORY_PREFIX)
+            : Files.createTempDirectory(DIRECTORY_PREFIX);
+    try {
+      return new SharedMemoryDataChannel(
+          directory,
+          SharedMemoryRingBuffer.create(directory.resolve(SDK_TO_RUNNER), capacity),
+          SharedMemoryRingBuffer.create(directory.resolve(RUNNER_TO_SDK), capacity),
+          true);
+    } catch (IOException | RuntimeException e) {
+      deleteFiles(directory);
+      throw e;
+    }
+  }
+
+  /** Opens the ring buffers offered by an SDK harness on the runner side. */
+  public static SharedMemoryDataChannel open(Path directory) throws IOException {
+    return new SharedMemoryDataChannel(
+        directory,
+        SharedMemoryRingBuffer.open(directory.resolve(SDK_TO_RUNNER)),
+        SharedMemoryRingBuffer.open(directory.resolve(RUNNER_TO_SDK)),
+        false);
+  }
+
+  /**
+   * Accepts the channel offered for the current {@code Data} call on the runner side. Returns
+   * {@code null} if the SDK harness did not offer a channel, or offered a directory that {@link
+   * #create} would not have made for the user of this process, or its ring buffers cannot be
+   * opened, e.g. because the SDK harness runs on another host.
+   *
+   * <p>Must be called by the data service while the call is being started, and requires the
+   * server to intercept calls with {@link #serverInterceptor}. The caller must {@link #close} the
+   * returned channel, which {@link #inboundObserver} does once the stream completes or fails.
+   */
+  public static @Nullable SharedMemoryDataChannel acceptOffer() {
+    @Nullable Offer offer = CONTEXT_KEY.get();
+    if (offer == null) {
+      return null;
+    }
+    SharedMemoryDataChannel channel;
+    try {
+      channel = open(checkOfferedDirectory(offer.directory));
+    } catch (IOException | RuntimeException e) {
+      LOG.warn("Declining shared memory data channel at {}, using gRPC.", offer.directory, e);
+      return null;
+    }
+    LOG.info("Accepted shared memory data channel at {}.", offer.directory);
+    offer.channel = channel;
+    return channel;
+  }
+
+  /**
+   * Checks that an offered directory is a directory directly under {@code /dev/shm} or the
+   * temporary directory, named like those made by {@link #create} and owned by the user of this
+   * process, so that an SDK harness cannot make the runner map arbitrary files.
+   */
+  private static Path checkOfferedDirectory(String offered) throws IOException {
+    Path directory = Paths.get(offered);
+    @Nullable Path parent = directory.getParent();
+    @Nullable Path fileName = directory.getFileName();
+    if (!directory.isAbsolute()
+        || !directory.equals(directory.normalize())
+        || parent == null
+        || fileName == null
+        || !fileName.toString().startsWith(DIRECTORY_PREFIX)
+        || !(parent.equals(SHARED_MEMORY_DIRECTORY)
+            || parent.equals(Paths.get(System.getProperty("java.io.tmpdir", "/tmp"))))) {
+      throw new IOException(
+          String.format("%s is not a shared memory data channel directory", offered));
+    }
+    if (!Files.isDirectory(directory, LinkOption.NOFOLLOW_LINKS)) {
+      throw new IOException(String.format("%s is not a directory", offered));
+    }
+    UserPrincipal owner = Files.getOwner(directory, LinkOption.NOFOLLOW_LINKS);
+    UserPrincipal user =
+        directory
+            .getFileSystem()
+            .getUserPrincipalLookupService()
+            .lookupPrincipalByName(System.getProperty("user.name", ""));
+    if (!owner.equals(user)) {
+      throw new IOException(
+          String.format("%s is owned by %s instead of %s", offered, owner, user));
+    }
+    return directory;
+  }
+
+  /**
+   * Returns a {@link ServerInterceptor} that makes the offers of SDK harnesses available to {@link
+   * #acceptOffer} and answers them once the call is started. Calls without an offer pass through
+   * unchanged.
+   */
+  public static ServerInterceptor serverInterceptor() {
+    return SERVER_INTERCEPTOR;
+  }
+
+  private static final ServerInterceptor SERVER_INTERCEPTOR =
+      new ServerInterceptor() {
+        @Override
+        public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(
+            ServerCall<ReqT, RespT> call,
+            Metadata requestHeaders,
+            ServerCallHandler<ReqT, RespT> next) {
+          @Nullable String directory = requestHeaders.get(HEADER_KEY);
+          if (directory == null) {
+            return next.startCall(call, requestHeaders);
+          }
+          Offer offer = new Offer(directory);
+          AnsweringServerCall<ReqT, RespT> answeringCall = new AnsweringServerCall<>(call, offer);
+          ServerCall.Listener<ReqT> listener =
+              Contexts.interceptCall(
+                  Context.current().withValue(CONTEXT_KEY, offer),
+                  answeringCall,
+                  requestHeaders,
+                  next);
+          if (offer.channel != null) {
+            // Answer right away, the data service may not send anything for a while.
+            answeringCall.sendHeaders(new Metadata());
+          }
+          return listener;
+        }
+      };
+
+  /** A channel offered by an SDK harness, and the channel once it was accepted. */
+  private static class Offer {
+    private final String directory;
+    private volatile @Nullable SharedMemoryDataChannel channel;
+
+    private Offer(String directory) {
+      this.directory = directory;
+    }
+  }
+
+  /** Adds the acceptance of an offer to the response headers, which are sent exactly once. */
+  private static class AnsweringServerCall<ReqT, RespT>
+      extends SimpleForwardingServerCall<ReqT, RespT> {
+    private final Offer offer;
+    private boolean sentHeaders;
+
+    private AnsweringServerCall(ServerCall<ReqT, RespT> delegate, Offer offer) {
+      super(delegate);
+      this.offer = offer;
+    }
+
+    @Override
+    public synchronized void sendHeaders(Metadata headers) {
+      if (!sentHeaders) {
+        sentHeaders = true;
+        if (offer.channel != null) {
+          headers.put(HEADER_KEY, ACCEPTED);
+        }
+        super.sendHeaders(headers);
+      }
+    }
+  }
+
+  private final Path directory;
+  private final SharedMemoryRingBuffer outbound;
+  private final SharedMemoryRingBuffer inbound;
+  private final boolean sdkSide;
+  private final CompletableFuture<Boolean> accepted;
+  // Completed by the reader of the inbound ring buffer after it passed on all elements.
+  private final CompletableFuture<Void> inboundRead;
+  private volatile boolean readingInbound;
+  private boolean inboundCompleted;
+  private boolean outboundCompleted;
+  private volatile boolean closed;
+
+  private SharedMemoryDataChannel(
+      Path directory,
+      SharedMemoryRingBuffer sdkToRunner,
+      SharedMemoryRingBuffer runnerToSdk,
+      boolean sdkSide) {
+    this.directory = directory;
+    this.outbound = sdkSide ? sdkToRunner : runnerToSdk;
+    this.inbound = sdkSide ? runnerToSdk : sdkToRunner;
+    this.sdkSide = sdkSide;
+    this.accepted = new CompletableFuture<>();
+    this.inboundRead = new CompletableFuture<>();
+  }
+
+  public Path getDirectory() {
+    return directory;
+  }
+
+  /**
+   * Returns a {@link ClientInterceptor} for the SDK harness's {@code Data} call that offers this
+   * channel to the runner, see {@link #inboundObserver}, {@link #connect} and {@link
+   * #awaitAccepted}.
+   */
+  public ClientInterceptor offer() {
+    return new ClientInterceptor() {
+      @Override
+      public <ReqT, RespT> ClientCall<ReqT, RespT> interceptCall(
+          MethodDescriptor<ReqT, RespT> method, CallOptions callOptions, Channel next) {
+        return new SimpleForwardingClientCall<ReqT, RespT>(next.newCall(method, callOptions)) {
+          @Override
+          public void start(Listener<RespT> responseListener, Metadata headers) {
+            headers.put(HEADER_KEY, directory.toString());
+            super.start(
+                new SimpleForwardingClientCallListener<RespT>(responseListener) {
+                  @Override
+                  public void onHeaders(Metadata headers) {
+                    accepted.complete(ACCEPTED.equals(headers.get(HEADER_KEY)));
+                    super.onHeaders(headers);
+                  }
+
+                  @Override
+                  @SuppressWarnings("FutureReturnValueIgnored")
+                  public void onClose(Status status, Metadata trailers) {
+                    accepted.complete(false);
+                    if (status.isOk() && readingInbound) {
+                      // The runner finished writing before it completed the call.
+                      inboundRead.whenComplete((ignored, error) -> close());
+                    } else {
+                      close();
+                    }
+                    super.onClose(status, trailers);
+                  }
+                },
+                headers);
+          }
+        };
+      }
+    };
+  }
+
+  /**
+   * Waits for the runner to answer the {@link #offer}. Returns false if the runner declined or did
+   * not answer within the timeout, in which case the channel is closed.
+   */
+  public boolean awaitAccepted(Duration timeout) {
+    boolean result;
+    try {
+      result = accepted.get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      result = false;
+    } catch (ExecutionException | TimeoutException e) {
+      result = false;
+    }
+    if (result) {
+      // Both sides have mapped the files, so they no longer need to be reachable by name. This
+      // also avoids leaking them if either process dies.
+      deleteFiles(directory);
+    } else {
+      close();
+    }
+    return result;
+  }
+
+  /**
+   * Connects the SDK harness's side of the {@code Data} call without waiting for the runner to
+   * answer the {@link #offer}. The returned outbound observer starts on the given gRPC observer,
+   * whose call must have been started with an {@link #inboundObserver}. If the runner declines the
+   * channel is closed.
+   *
+   * <p>The outbound observer switches to the ring buffer with the first element sent after the
+   * runner accepted, by first sending the switch marker on the gRPC stream.
+   */
+  public CallStreamObserver<Elements> connect(CallStreamObserver<Elements> grpcObserver) {
+    accepted.thenAccept(
+        result -> {
+          if (result) {
+            LOG.info("Runner accepted shared memory data channel at {}.", directory);
+            // See awaitAccepted.
+            deleteFiles(directory);
+          } else {
+            LOG.info("Runner declined shared memory data channel at {}, using gRPC.", directory);
+            close();
+          }
+        });
+    return new SwitchingOutboundObserver(grpcObserver);
+  }
+
+  /**
+   * Returns an observer for the runner's side that writes to the outbound ring buffer and
+   * completes the given gRPC observer when it is completed. Completing it only closes the outbound
+   * ring buffer, so inbound elements keep arriving until the other side completes.
+   */
+  public CallStreamObserver<Elements> outboundObserver(StreamObserver<Elements> grpcObserver) {
+    return new OutboundObserver(grpcObserver);
+  }
+
+  /**
+   * Returns the observer for the elements received on the gRPC stream, which passes them to the
+   * given inbound observer until the inbound ring buffer is read instead. On the SDK harness's side
+   * that is once the runner accepted the {@link #offer}, on the runner's side once it received the
+   * switch marker. The channel is closed once both this observer and the outbound observer
+   * completed, or either of them failed.
+   *
+   * <p>On the SDK harness's side, the returned observer must be the one the {@code Data} call is
+   * started with.
+   */
+  public StreamObserver<Elements> inboundObserver(StreamObserver<Elements> inboundObserver) {
+    if (sdkSide) {
+      // The runner answers before sending anything, so all its elements are in the ring buffer.
+      // The answer is received before the call can complete, so the reader is started first.
+      accepted.thenAccept(
+          result -> {
+            if (result) {
+              startInbound(inboundObserver);
+            }
+          });
+    }
+    return new StreamObserver<Elements>() {
+      @Override
+      public void onNext(Elements value) {
+        if (!sdkSide && isSwitchMarker(value)) {
+          startInbound(inboundObserver);
+        } else {
+          inboundObserver.onNext(value);
+        }
+      }
+
+      @Override
+      public void onError(Throwable t) {
+        close();
+        afterInboundRead(() -> inboundObserver.onError(t));
+      }
+
+      @Override
+      public void onCompleted() {
+        afterInboundRead(
+            () -> {
+              completeDirection(true);
+              inboundObserver.onCompleted();
+            });
+      }
+    };
+  }
+
+  /**
+   * Runs the action once the inbound ring buffer was read, unless reading it failed, or right away
+   * if it is not read.
+   */
+  @SuppressWarnings("FutureReturnValueIgnored")
+  private void afterInboundRead(Runnable action) {
+    if (!readingInbound) {
+      action.run();
+      return;
+    }
+    inboundRead.whenComplete(
+        (ignored, error) -> {
+          if (error == null) {
+            action.run();
+          }
+        });
+  }
+
+  private static boolean isSwitchMarker(Elements value) {
+    return value.getDataCount() == 1
+        && value.getData(0).getInstructionId().isEmpty()
+        && SWITCH_MARKER.equals(value);
+  }
+
+  /** Closes the channel once both the inbound and the outbound direction completed. */
+  private synchronized void completeDirection(boolean inboundDirection) {
+    if (inboundDirection) {
+      inboundCompleted = true;
+    } else {
+      outboundCompleted = true;
+    }
+    if (inboundCompleted && outboundCompleted) {
+      close();
+    }
+  }
+
+  /** Starts a daemon thread that passes the elements of the inbound ring buffer to the observer. */
+  private void startInbound(StreamObserver<Elements> inboundObserver) {
+    readingInbound = true;
+    new ThreadFactoryBuilder()
+        .setDaemon(true)
+        .setNameFormat("SharedMemoryDataReader-" + directory.getFileName())
+        .build()
+        .newThread(() -> readInbound(inboundObserver))
+        .start();
+  }
+
+  private void readInbound(StreamObserver<Elements> inboundObserver) {
+    try {
+      // Records written before the channel was closed are still passed on.
+      for (byte[] record = inbound.read(); record != null; record = inbound.read()) {
+        inboundObserver.onNext(Elements.parseFrom(record));
+      }
+      inboundRead.complete(null);
+    } catch (IOException | RuntimeException e) {
+      if (closed) {
+        // The stream failed, which is passed on by the gRPC inbound observer.
+        inboundRead.complete(null);
+      } else {
+        LOG.error("Failed to read from shared memory data channel at {}", directory, e);
+        inboundObserver.onError(e);
+        inboundRead.completeExceptionally(e);
+      }
+    }
+  }
+
+  /** Returns whether this side closed the channel. */
+  public boolean isClosed() {
+    return closed;
+  }
+
+  @Override
+  public void close() {
+    closed = true;
+    outbound.close();
+    inbound.close();
+    if (sdkSide) {
+      deleteFiles(directory);
+    }
+  }
+
+  private static void deleteFiles(Path directory) {
+    try {
+      Files.deleteIfExists(directory.resolve(SDK_TO_RUNNER));
+      Files.deleteIfExists(directory.resolve(RUNNER_TO_SDK));
+      Files.deleteIfExists(directory);
+    } catch (IOException e) {
+      LOG.warn("Failed to delete shared memory data channel at {}", directory, e);
+    }
+  }
+
+  /**
+   * Sends outbound elements on the gRPC observer until the runner accepted the channel, and through
+   * the ring buffer after the switch marker from then on.
+   */
+  private class SwitchingOutboundObserver extends CallStreamObserver<Elements> {
+    private final CallStreamObserver<Elements> grpcObserver;
+    private final OutboundObserver ringObserver;
+    private volatile boolean switched;
+
+    private SwitchingOutboundObserver(CallStreamObserver<Elements> grpcObserver) {
+      this.grpcObserver = grpcObserver;
+      this.ringObserver = new OutboundObserver(grpcObserver);
+    }
+
+    @Override
+    public synchronized void onNext(Elements value) {
+      if (!switched && Boolean.TRUE.equals(accepted.getNow(false))) {
+        LOG.info("Sending elements through shared memory data channel at {}.", directory);
+        grpcObserver.onNext(SWITCH_MARKER);
+        switched = true;
+      }
+      if (switched) {
+        ringObserver.onNext(value);
+      } else {
+        grpcObserver.onNext(value);
+      }
+    }
+
+    @Override
+    public synchronized void onError(Throwable t) {
+      ringObserver.onError(t);
+    }
+
+    @Override
+    public synchronized void onCompleted() {
+      ringObserver.onCompleted();
+    }
+
+    @Override
+    public boolean isReady() {
+      return switched || grpcObserver.isReady();
+    }
+
+    @Override
+    public void setOnReadyHandler(Runnable onReadyHandler) {
+      grpcObserver.setOnReadyHandler(onReadyHandler);
+    }
+
+    @Override
+    public void disableAutoInboundFlowControl() {
+      grpcObserver.disableAutoInboundFlowControl();
+    }
+
+    @Override
+    public void request(int count) {
+      grpcObserver.request(count);
+    }
+
+    @Override
+    public void setMessageCompression(boolean enable) {
+      grpcObserver.setMessageCompression(enable);
+    }
+  }
+
+  /**
+   * Writes outbound elements to the ring buffer. The buffer applies backpressure by blocking
+   * writes, so the observer is always ready.
+   */
+  private class OutboundObserver extends CallStreamObserver<Elements> {
+    private final StreamObserver<Elements> grpcObserver;
+
+    private OutboundObserver(StreamObserver<Elements> grpcObserver) {
+      this.grpcObserver = grpcObserver;
+    }
+
+    @Override
+    public synchronized void onNext(Elements value) {
+      try {
+        outbound.write(value.toByteArray());
+      } catch (IOException e) {
+        throw Status.UNAVAILABLE
+            .withDescription("Shared memory data channel at " + directory + " is closed")
+            .withCause(e)
+            .asRuntimeException();
+      }
+    }
+
+    @Override
+    public void onError(Throwable t) {
+      close();
+      grpcObserver.onError(t);
+    }
+
+    @Override
+    public void onCompleted() {
+      outbound.close();
+      completeDirection(false);
+      grpcObserver.onCompleted();
+    }
+
+    @Override
+    public boolean isReady() {
+      return true;
+    }
+
+    @Override
+    public void setOnReadyHandler(Runnable onReadyHandler) {}
+
+    @Override
+    public void disableAutoInboundFlowControl() {}
+
+    @Override
+    public void request(int count) {}
+
+    @Override
+    public void setMessageCompression(boolean enable) {}
+  }
+}
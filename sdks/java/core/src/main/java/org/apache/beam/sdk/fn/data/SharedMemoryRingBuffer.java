@@ -0,0 +1,350 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.fn.data;
+
+import static org.apache.beam.sdk.util.Preconditions.checkStateNotNull;
+import static org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.base.Preconditions.checkArgument;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * A single-producer single-consumer ring buffer of byte records in a memory-mapped file, which
+ * allows two processes on the same host to exchange records without passing them through a socket.
+ *
+ * <p>The file starts with a header holding the capacity, the write and read positions and a closed
+ * flag, each on its own cache line. Positions are byte offsets that only grow. The producer
+ * publishes the write position after writing a record and the consumer publishes the read position
+ * after consuming one, so each side only ever reads memory the other side has finished with.
+ *
+ * <p>The Java memory model says nothing about memory that is shared with another process, so the
+ * header fields are accessed with plain {@link ByteBuffer} reads and writes surrounded by explicit
+ * memory fences, which order the accesses on the CPU itself. Publishing a field is preceded by a
+ * release fence, and reading one is followed by an acquire fence. The fences are those of {@code
+ * VarHandle} on Java 9 and later and those of {@code sun.misc.Unsafe} on Java 8, both looked up
+ * reflectively because neither is part of the Java 8 API.
+ *
+ * <p>Records are prefixed by their length and a flag and are 8 byte aligned. A record that does
+ * not fit before the end of the buffer is preceded by padding up to the end, and records larger
+ * than half the capacity are split into fragments.
+ *
+ * <p>Neither side is notified of progress by the other, so blocked reads and writes poll with a
+ * short backoff. Either side may {@link #close} the buffer, after which writes fail and reads
+ * return the records that were already written followed by {@code null}.
+ *
+ * <p>At most one thread may write and at most one thread may read at a time.
+ */
+public class SharedMemoryRingBuffer implements AutoCloseable {
+  private static final long MAGIC = 0x4245414d52494e47L; // "BEAMRING"
+  private static final int MAGIC_OFFSET = 0;
+  private static final int CAPACITY_OFFSET = 8;
+  private static final int WRITE_POSITION_OFFSET = 64;
+  private static final int READ_POSITION_OFFSET = 128;
+  private static final int CLOSED_OFFSET = 192;
+  private static final int HEADER_SIZE = 256;
+
+  private static final int RECORD_HEADER_SIZE = 8;
+  private static final int LAST_FRAGMENT = 0;
+  private static final int MORE_FRAGMENTS = 1;
+  private static final int PADDING = 2;
+
+  /** The smallest supported capacity. */
+  public static final int MIN_CAPACITY = 1024;
+
+  private static final int SPINS_BEFORE_PARKING = 100;
+  private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+  private static final MethodHandle ACQUIRE_FENCE = findFence("acquireFence", "loadFence");
+  private static final MethodHandle RELEASE_FENCE = findFence("releaseFence", "storeFence");
+
+  /** Creates a file of the given capacity in bytes, which must be a power of two. */
+  public static SharedMemoryRingBuffer create(Path path, int capacity) throws IOException {
+    checkArgument(
+        capacity >= MIN_CAPACITY && Integer.bitCount(capacity) == 1,
+        "capacity must be a power of two of at least %s: %s",
+        MIN_CAPACITY,
+        capacity);
+    MappedByteBuffer buffer;
+    try (FileChannel channel =
+        FileChannel.open(
+            path,
+            StandardOpenOption.CREATE_NEW,
+            StandardOpenOption.READ,
+            StandardOpenOption.WRITE)) {
+      buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) HEADER_SIZE + capacity);
+    }
+    buffer.order(ByteOrder.nativeOrder());
+    buffer.putLong(CAPACITY_OFFSET, capacity);
+    SharedMemoryRingBuffer ringBuffer = new SharedMemoryRingBuffer(buffer, capacity);
+    // Publish the magic last so that a reader that sees it also sees the rest of the header.
+    ringBuffer.putRelease(MAGIC_OFFSET, MAGIC);
+    return ringBuffer;
+  }
+
+  /** Opens a file that was created by {@link #create}, possibly in another process. */
+  public static SharedMemoryRingBuffer open(Path path) throws IOException {
+    MappedByteBuffer buffer;
+    try (FileChannel channel =
+        FileChannel.open(
+            path, StandardOpenOption.READ, StandardOpenOption.WRITE, LinkOption.NOFOLLOW_LINKS)) {
+      long size = channel.size();
+      if (size < HEADER_SIZE + MIN_CAPACITY || size - HEADER_SIZE > Integer.MAX_VALUE) {
+        throw new IOException(String.format("%s has an invalid size for a ring buffer", path));
+      }
+      buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+    }
+    buffer.order(ByteOrder.nativeOrder());
+    SharedMemoryRingBuffer ringBuffer =
+        new SharedMemoryRingBuffer(buffer, buffer.capacity() - HEADER_SIZE);
+    if (ringBuffer.getAcquire(MAGIC_OFFSET) != MAGIC) {
+      throw new IOException(String.format("%s is not a ring buffer", path));
+    }
+    long capacity = buffer.getLong(CAPACITY_OFFSET);
+    if (capacity != ringBuffer.capacity || Long.bitCount(capacity) != 1) {
+      throw new IOException(
+          String.format("%s has an invalid capacity %s for its size", path, capacity));
+    }
+    ringBuffer.writePosition = ringBuffer.getAcquire(WRITE_POSITION_OFFSET);
+    ringBuffer.readPosition = ringBuffer.getAcquire(READ_POSITION_OFFSET);
+    return ringBuffer;
+  }
+
+  private final ByteBuffer buffer;
+  private final int capacity;
+  private final int maxFragmentSize;
+  // Separate views so that the producer and consumer do not share the mutable buffer position.
+  private final ByteBuffer writeView;
+  private final ByteBuffer readView;
+  private long writePosition = 0;
+  private long readPosition = 0;
+
+  private SharedMemoryRingBuffer(ByteBuffer buffer, int capacity) {
+    this.buffer = buffer;
+    this.capacity = capacity;
+    this.maxFragmentSize = capacity / 2 - RECORD_HEADER_SIZE;
+    this.writeView = buffer.duplicate().order(ByteOrder.nativeOrder());
+    this.readView = buffer.duplicate().order(ByteOrder.nativeOrder());
+  }
+
+  public int getCapacity() {
+    return capacity;
+  }
+
+  /**
+   * Appends a record, blocking while the buffer does not have enough free space.
+   *
+   * @throws IOException if the buffer is closed
+   */
+  public void write(byte[] record) throws IOException {
+    int offset = 0;
+    do {
+      int length = Math.min(record.length - offset, maxFragmentSize);
+      boolean last = offset + length == record.length;
+      writeFragment(record, offset, length, last ? LAST_FRAGMENT : MORE_FRAGMENTS);
+      offset += length;
+    } while (offset < record.length);
+  }
+
+  private void writeFragment(byte[] record, int offset, int length, int flag) throws IOException {
+    int size = align(RECORD_HEADER_SIZE + length);
+    int index = index(writePosition);
+    int remaining = capacity - index;
+    if (remaining < size) {
+      awaitSpace(remaining);
+      writeView.putInt(HEADER_SIZE + index, remaining - RECORD_HEADER_SIZE);
+      writeView.putInt(HEADER_SIZE + index + 4, PADDING);
+      publishWritePosition(writePosition + remaining);
+      index = 0;
+    }
+    awaitSpace(size);
+    writeView.putInt(HEADER_SIZE + index, length);
+    writeView.putInt(HEADER_SIZE + index + 4, flag);
+    writeView.position(HEADER_SIZE + index + RECORD_HEADER_SIZE);
+    writeView.put(record, offset, length);
+    publishWritePosition(writePosition + size);
+  }
+
+  private void awaitSpace(int size) throws IOException {
+    for (int attempt = 0;
+        writePosition + size - getAcquire(READ_POSITION_OFFSET) > capacity;
+        ++attempt) {
+      if (isClosed()) {
+        throw new IOException("Ring buffer is closed");
+      }
+      backoff(attempt);
+    }
+    if (isClosed()) {
+      throw new IOException("Ring buffer is closed");
+    }
+  }
+
+  private void publishWritePosition(long position) {
+    writePosition = position;
+    putRelease(WRITE_POSITION_OFFSET, position);
+  }
+
+  /**
+   * Returns the next record, blocking until one is available. Returns {@code null} once the buffer
+   * is closed and all records written before that were read.
+   */
+  public byte @Nullable [] read() throws IOException {
+    @Nullable ByteArrayOutputStream fragments = null;
+    while (true) {
+      if (!awaitRecord()) {
+        if (fragments != null) {
+          throw new IOException("Ring buffer was closed within a fragmented record");
+        }
+        return null;
+      }
+      int index = index(readPosition);
+      int length = readView.getInt(HEADER_SIZE + index);
+      int flag = readView.getInt(HEADER_SIZE + index + 4);
+      if (length < 0 || RECORD_HEADER_SIZE + length > capacity - index || flag > PADDING) {
+        throw new IOException(
+            String.format("Corrupt ring buffer record of length %s and flag %s", length, flag));
+      }
+      if (flag == PADDING) {
+        publishReadPosition(readPosition + RECORD_HEADER_SIZE + length);
+        continue;
+      }
+      byte[] fragment = new byte[length];
+      readView.position(HEADER_SIZE + index + RECORD_HEADER_SIZE);
+      readView.get(fragment);
+      publishReadPosition(readPosition + align(RECORD_HEADER_SIZE + length));
+      if (flag == LAST_FRAGMENT && fragments == null) {
+        return fragment;
+      }
+      if (fragments == null) {
+        fragments = new ByteArrayOutputStream(2 * length);
+      }
+      fragments.write(fragment);
+      if (flag == LAST_FRAGMENT) {
+        return fragments.toByteArray();
+      }
+    }
+  }
+
+  private boolean awaitRecord() throws IOException {
+    for (int attempt = 0;
+        getAcquire(WRITE_POSITION_OFFSET) == readPosition;
+        ++attempt) {
+      if (isClosed()) {
+        // Records written before closing are visible once the closed flag is.
+        return getAcquire(WRITE_POSITION_OFFSET) != readPosition;
+      }
+      backoff(attempt);
+    }
+    return true;
+  }
+
+  private void publishReadPosition(long position) {
+    readPosition = position;
+    putRelease(READ_POSITION_OFFSET, position);
+  }
+
+  /** Returns whether either side closed the buffer. */
+  public boolean isClosed() {
+    return getAcquire(CLOSED_OFFSET) != 0;
+  }
+
+  /** Closes the buffer for both sides. */
+  @Override
+  public void close() {
+    putRelease(CLOSED_OFFSET, 1L);
+  }
+
+  /** Reads a header field, ordering the reads and writes that follow after it. */
+  private long getAcquire(int offset) {
+    long value = buffer.getLong(offset);
+    try {
+      ACQUIRE_FENCE.invokeExact();
+    } catch (Throwable t) {
+      throw new IllegalStateException("Acquire fence failed", t);
+    }
+    return value;
+  }
+
+  /** Writes a header field, ordering the reads and writes that precede it before it. */
+  private void putRelease(int offset, long value) {
+    try {
+      RELEASE_FENCE.invokeExact();
+    } catch (Throwable t) {
+      throw new IllegalStateException("Release fence failed", t);
+    }
+    buffer.putLong(offset, value);
+  }
+
+  /**
+   * Returns the static fence of {@code VarHandle} with the given name, or on Java 8 the fence of
+   * {@code sun.misc.Unsafe} with the given name bound to the Unsafe instance.
+   */
+  private static MethodHandle findFence(String varHandleFence, String unsafeFence) {
+    MethodHandles.Lookup lookup = MethodHandles.lookup();
+    MethodType type = MethodType.methodType(void.class);
+    try {
+      return lookup.findStatic(Class.forName("java.lang.invoke.VarHandle"), varHandleFence, type);
+    } catch (ReflectiveOperationException e) {
+      // Java 8, fall back to Unsafe.
+    }
+    try {
+      Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+      Field field = unsafeClass.getDeclaredField("theUnsafe");
+      field.setAccessible(true);
+      return lookup
+          .findVirtual(unsafeClass, unsafeFence, type)
+          .bindTo(checkStateNotNull(field.get(null)));
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      throw new ExceptionInInitializerError(e);
+    }
+  }
+
+  private int index(long position) {
+    return (int) (position & (capacity - 1));
+  }
+
+  private static int align(int size) {
+    return (size + 7) & ~7;
+  }
+
+  private static void backoff(int attempt) throws InterruptedIOException {
+    if (attempt < SPINS_BEFORE_PARKING) {
+      Thread.yield();
+      return;
+    }
+    LockSupport.parkNanos(
+        Math.min(MAX_PARK_NANOS, 1000L << Math.min(attempt - SPINS_BEFORE_PARKING, 10)));
+    if (Thread.currentThread().isInterrupted()) {
+      throw new InterruptedIOException("Interrupted while waiting on ring buffer");
+    }
+  }
+}
@@ -21,6 +21,7 @@ import java.io.IOException;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
 import org.apache.beam.model.pipeline.v1.Endpoints.ApiServiceDescriptor;
+import org.apache.beam.sdk.fn.data.SharedMemoryDataChannel;
 import org.apache.beam.vendor.grpc.v1p69p0.io.grpc.BindableService;
 import org.apache.beam.vendor.grpc.v1p69p0.io.grpc.Server;
 import org.apache.beam.vendor.grpc.v1p69p0.io.grpc.ServerInterceptors;
@@ -50,7 +51,9 @@ public class InProcessServerFactory extends ServerFactory {
             service ->
                 serverBuilder.addService(
                     ServerInterceptors.intercept(
-                        service, GrpcContextHeaderAccessorProvider.interceptor())));
+                        service,
+                        GrpcContextHeaderAccessorProvider.interceptor(),
+                        SharedMemoryDataChannel.serverInterceptor())));
     return serverBuilder.build().start();
   }
 
@@ -63,7 +66,9 @@ public class InProcessServerFactory extends ServerFactory {
             service ->
                 builder.addService(
                     ServerInterceptors.intercept(
-                        service, GrpcContextHeaderAccessorProvider.interceptor())));
+                        service,
+                        GrpcContextHeaderAccessorProvider.interceptor(),
+                        SharedMemoryDataChannel.serverInterceptor())));
     return builder.build().start();
   }
 }
@@ -29,6 +29,7 @@ import java.util.concurrent.TimeUnit;
 import java.util.function.Supplier;
 import org.apache.beam.model.pipeline.v1.Endpoints;
 import org.apache.beam.sdk.fn.channel.SocketAddressFactory;
+import org.apache.beam.sdk.fn.data.SharedMemoryDataChannel;
 import org.apache.beam.vendor.grpc.v1p69p0.io.grpc.BindableService;
 import org.apache.beam.vendor.grpc.v1p69p0.io.grpc.Server;
 import org.apache.beam.vendor.grpc.v1p69p0.io.grpc.ServerBuilder;
@@ -88,7 +89,8 @@ public abstract class ServerFactory {
    * server type dependent, which means the address may be a port for certain type of server, or a
    * file path for other certain types. The chosen address is accessible to the caller from the URL
    * set in the input {@link Endpoints.ApiServiceDescriptor.Builder}. Server applies {@link
-   * GrpcContextHeaderAccessorProvider#interceptor()} to all incoming requests.
+   * GrpcContextHeaderAccessorProvider#interceptor()} and {@link
+   * SharedMemoryDataChannel#serverInterceptor()} to all incoming requests.
    */
   public abstract Server allocateAddressAndCreate(
       List<BindableService> services, Endpoints.ApiServiceDescriptor.Builder builder)
@@ -97,7 +99,8 @@ public abstract class ServerFactory {
   /**
    * Creates an instance of this server at the address specified by the given service descriptor and
    * bound to multiple services. Server applies {@link
-   * GrpcContextHeaderAccessorProvider#interceptor()} to all incoming requests.
+   * GrpcContextHeaderAccessorProvider#interceptor()} and {@link
+   * SharedMemoryDataChannel#serverInterceptor()} to all incoming requests.
    */
   public abstract Server create(
       List<BindableService> services, Endpoints.ApiServiceDescriptor serviceDescriptor)
@@ -158,7 +161,9 @@ public abstract class ServerFactory {
               service ->
                   builder.addService(
                       ServerInterceptors.intercept(
-                          service, GrpcContextHeaderAccessorProvider.interceptor())));
+                          service,
+                          GrpcContextHeaderAccessorProvider.interceptor(),
+                          SharedMemoryDataChannel.serverInterceptor())));
       return builder.build().start();
     }
   }
@@ -212,7 +217,10 @@ public abstract class ServerFactory {
       for (BindableService service : services) {
         // Wrap the service to extract headers
         builder.addService(
-            ServerInterceptors.intercept(service, GrpcContextHeaderAccessorProvider.interceptor()));
+            ServerInterceptors.intercept(
+                service,
+                GrpcContextHeaderAccessorProvider.interceptor(),
+                SharedMemoryDataChannel.serverInterceptor()));
       }
       return builder.build().start();
     }
@@ -262,7 +270,10 @@ public abstract class ServerFactory {
       for (BindableService service : services) {
         // Wrap the service to extract headers
         builder.addService(
-            ServerInterceptors.intercept(service, GrpcContextHeaderAccessorProvider.interceptor()));
+            ServerInterceptors.intercept(
+                service,
+                GrpcContextHeaderAccessorProvider.interceptor(),
+                SharedMemoryDataChannel.serverInterceptor()));
       }
       return builder.build().start();
     }
@@ -20,6 +20,8 @@ package org.apache.beam.sdk.fn.stream;
 import java.util.concurrent.Phaser;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 import javax.annotation.concurrent.ThreadSafe;
 import org.apache.beam.vendor.grpc.v1p69p0.io.grpc.stub.CallStreamObserver;
 import org.apache.beam.vendor.grpc.v1p69p0.io.grpc.stub.StreamObserver;
@@ -52,7 +54,9 @@ public final class DirectStreamObserver<T> implements StreamObserver<T> {
    */
   private final int maxMessagesBeforeCheck;
 
-  private final Object lock = new Object();
+  // A lock rather than a monitor, since onNext may wait for the outbound observer to become ready
+  // and virtual threads that block within a monitor pin their carrier thread.
+  private final Lock lock = new ReentrantLock();
   private int numMessages;
 
   public DirectStreamObserver(Phaser phaser, CallStreamObserver<T> outboundObserver) {
@@ -68,7 +72,8 @@ public final class DirectStreamObserver<T> implements StreamObserver<T> {
 
   @Override
   public void onNext(T value) {
-    synchronized (lock) {
+    lock.lock();
+    try {
       if (numMessages >= maxMessagesBeforeCheck) {
         numMessages = 0;
         int waitSeconds = 1;
@@ -115,20 +120,36 @@ public final class DirectStreamObserver<T> implements StreamObserver<T> {
       }
       outboundObserver.onNext(value);
       numMessages += 1;
+    } finally {
+      lock.unlock();
     }
   }
 
+  /**
+   * Returns whether the underlying {@link CallStreamObserver} is ready to send messages without
+   * buffering them, see {@link CallStreamObserver#isReady()}.
+   */
+  public boolean isReady() {
+    return outboundObserver.isReady();
+  }
+
   @Override
   public void onError(Throwable t) {
-    synchronized (lock) {
+    lock.lock();
+    try {
       outboundObserver.onError(t);
+    } finally {
+      lock.unlock();
     }
   }
 
   @Override
   public void onCompleted() {
-    synchronized (lock) {
+    lock.lock();
+    try {
       outboundObserver.onCompleted();
+    } finally {
+      lock.unlock();
     }
   }
 }
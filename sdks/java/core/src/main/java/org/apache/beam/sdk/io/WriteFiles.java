@@ -40,6 +40,7 @@ import org.apache.beam.sdk.coders.ListCoder;
 import org.apache.beam.sdk.coders.ShardedKeyCoder;
 import org.apache.beam.sdk.coders.StringUtf8Coder;
 import org.apache.beam.sdk.coders.VarIntCoder;
+import org.apache.beam.sdk.coders.ZstdCoder;
 import org.apache.beam.sdk.io.FileBasedSink.DynamicDestinations;
 import org.apache.beam.sdk.io.FileBasedSink.FileResult;
 import org.apache.beam.sdk.io.FileBasedSink.FileResultCoder;
@@ -173,6 +174,7 @@ public abstract class WriteFiles<UserT, DestinationT, OutputT>
         .setMaxNumWritersPerBundle(DEFAULT_MAX_NUM_WRITERS_PER_BUNDLE)
         .setSideInputs(sink.getDynamicDestinations().getSideInputs())
         .setSkipIfEmpty(false)
+        .setCompressBatches(false)
         .setBadRecordErrorHandler(new DefaultErrorHandler<>())
         .setBadRecordRouter(BadRecordRouter.THROWING_ROUTER)
         .build();
@@ -202,6 +204,8 @@ public abstract class WriteFiles<UserT, DestinationT, OutputT>
 
   abstract @Nullable Duration getBatchMaxBufferingDuration();
 
+  abstract boolean getCompressBatches();
+
   abstract List<PCollectionView<?>> getSideInputs();
 
   public abstract @Nullable ShardingFunction<UserT, DestinationT> getShardingFunction();
@@ -240,6 +244,8 @@ public abstract class WriteFiles<UserT, DestinationT, OutputT>
     abstract Builder<UserT, DestinationT, OutputT> setBatchMaxBufferingDuration(
         @Nullable Duration batchMaxBufferingDuration);
 
+    abstract Builder<UserT, DestinationT, OutputT> setCompressBatches(boolean compressBatches);
+
     abstract Builder<UserT, DestinationT, OutputT> setSideInputs(
         List<PCollectionView<?>> sideInputs);
 
@@ -339,6 +345,18 @@ public abstract class WriteFiles<UserT, DestinationT, OutputT>
     return toBuilder().setBatchMaxBufferingDuration(batchMaxBufferingDuration).build();
   }
 
+  /**
+   * Returns a new {@link WriteFiles} that compresses each batch of input records as a whole with
+   * {@link ZstdCoder} while it is passed from the batching step to the step that writes it to a
+   * temp file. Compressing whole batches rather than individual records is effective even when the
+   * records are small, at the cost of CPU time to compress and decompress them.
+   *
+   * <p>This option is used only for writing unbounded data with auto-sharding.
+   */
+  public WriteFiles<UserT, DestinationT, OutputT> withCompressedBatches() {
+    return toBuilder().setCompressBatches(true).build();
+  }
+
   public WriteFiles<UserT, DestinationT, OutputT> withSideInputs(
       List<PCollectionView<?>> sideInputs) {
     return toBuilder().setSideInputs(sideInputs).build();
@@ -976,6 +994,10 @@ public abstract class WriteFiles<UserT, DestinationT, OutputT>
       // TODO(https://github.com/apache/beam/issues/20928): The implementation doesn't currently
       // work with merging windows.
       TupleTag<KV<Integer, UserT>> shardTag = new TupleTag<>("shardTag");
+      Coder<Iterable<UserT>> batchCoder =
+          getCompressBatches()
+              ? ZstdCoder.of(IterableCoder.of(input.getCoder()))
+              : IterableCoder.of(input.getCoder());
 
       PCollectionTuple shardedElements =
           input.apply(
@@ -996,8 +1018,7 @@ public abstract class WriteFiles<UserT, DestinationT, OutputT>
                       .withShardedKey())
               .setCoder(
                   KvCoder.of(
-                      org.apache.beam.sdk.util.ShardedKey.Coder.of(VarIntCoder.of()),
-                      IterableCoder.of(input.getCoder())));
+                      org.apache.beam.sdk.util.ShardedKey.Coder.of(VarIntCoder.of()), batchCoder));
 
       TupleTag<FileResult<DestinationT>> writtenRecordsTag = new TupleTag<>("writtenRecords");
       // Write grouped elements to temp files.
@@ -1020,9 +1041,7 @@ public abstract class WriteFiles<UserT, DestinationT, OutputT>
                               input.getValue());
                         }
                       }))
-              .setCoder(
-                  KvCoder.of(
-                      ShardedKeyCoder.of(VarIntCoder.of()), IterableCoder.of(input.getCoder())))
+              .setCoder(KvCoder.of(ShardedKeyCoder.of(VarIntCoder.of()), batchCoder))
               .apply(
                   "WriteShardsIntoTempFiles",
                   ParDo.of(new WriteShardsIntoTempFilesFn(input.getCoder()))
@@ -36,6 +36,7 @@ import org.apache.beam.sdk.util.InstanceBuilder;
 import org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.annotations.VisibleForTesting;
 import org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.collect.ImmutableMap;
 import org.checkerframework.checker.index.qual.NonNegative;
+import org.checkerframework.checker.nullness.qual.Nullable;
 
 /** Options that are used to control configuration of the SDK harness. */
 @Description("Options that are used to control configuration of the SDK harness.")
@@ -123,6 +124,58 @@ public interface SdkHarnessOptions extends PipelineOptions, MemoryMonitorOptions
 
   void setEnableLogViaFnApi(boolean enableLogViaFnApi);
 
+  /** The behavior of the SDK harness when log entries are produced faster than they can be sent. */
+  enum LogBufferOverflowPolicy {
+    /** Blocks the logging thread until there is space to buffer the log entry. */
+    BLOCK,
+
+    /** Drops log entries which do not fit in the buffer without blocking the logging thread. */
+    DROP
+  }
+
+  /**
+   * This option controls what happens to log entries when the buffer of entries waiting to be sent
+   * via the FnApi is full. Dropped log entries are counted and reported in a log entry once the
+   * buffer has space again.
+   */
+  @Description(
+      "Controls what happens to log entries when the buffer of entries waiting to be sent via the "
+          + "FnApi is full. BLOCK blocks the logging thread until there is space, which stalls "
+          + "processing while the logging service is slow. DROP drops the log entries without "
+          + "blocking and reports how many were dropped once there is space again.")
+  @Default.Enum("BLOCK")
+  LogBufferOverflowPolicy getLogBufferOverflowPolicy();
+
+  void setLogBufferOverflowPolicy(LogBufferOverflowPolicy value);
+
+  /**
+   * The maximum number of log entries per second sent via the FnApi for each logger, or for each
+   * value of the {@link #getLogRateLimitMdcKey() logRateLimitMdcKey} MDC key if set. Entries beyond
+   * the limit are dropped and counted. Defaults to 0, which does not limit the rate of log entries.
+   */
+  @Description(
+      "The maximum number of log entries per second sent via the FnApi for each logger, or for "
+          + "each value of the MDC key given by --logRateLimitMdcKey. Entries beyond the limit are "
+          + "dropped and counted. Defaults to 0, which does not limit the rate of log entries.")
+  @Default.Integer(0)
+  @NonNegative
+  int getMaxLogEntriesPerSecond();
+
+  void setMaxLogEntriesPerSecond(@NonNegative int value);
+
+  /**
+   * An SLF4J MDC key whose values {@link #getMaxLogEntriesPerSecond() maxLogEntriesPerSecond}
+   * limits separately instead of limiting each logger. Log entries without a value for the key are
+   * limited per logger.
+   */
+  @Description(
+      "An SLF4J MDC key whose values --maxLogEntriesPerSecond limits separately instead of "
+          + "limiting each logger. Log entries without a value for the key are limited per logger.")
+  @Nullable
+  String getLogRateLimitMdcKey();
+
+  void setLogRateLimitMdcKey(@Nullable String value);
+
   /**
    * Size (in MB) of each grouping table used to pre-combine elements. Larger values may reduce the
    * amount of data shuffled. If unset, defaults to 100 MB.
@@ -207,6 +260,28 @@ public interface SdkHarnessOptions extends PipelineOptions, MemoryMonitorOptions
 
   void setMaxCacheMemoryUsageMbClass(Class<? extends MaxCacheMemoryUsageMb> kls);
 
+  /**
+   * Size (in MB) of direct memory outside of the Java heap used by the process wide cache within
+   * the SDK harness to store encoded values, such as pages of side inputs and user state.
+   *
+   * <p>Storing these values off-heap reduces garbage collection pauses caused by large caches and
+   * accounts for their exact encoded size. Values which cannot be stored in encoded form remain on
+   * the heap and are limited by {@link #getMaxCacheMemoryUsageMb() maxCacheMemoryUsageMb}. The JVM
+   * must allow at least this much direct memory, see {@code -XX:MaxDirectMemorySize}. Defaults to
+   * 0, which stores all cached values on the heap.
+   */
+  @Description(
+      "The size (in MB) of direct memory outside of the Java heap used by the process wide cache "
+          + "within the SDK harness to store encoded values such as pages of side inputs and user "
+          + "state. Values which cannot be stored in encoded form remain on the heap and are "
+          + "limited by --maxCacheMemoryUsageMb. Defaults to 0, which stores all cached values on "
+          + "the heap.")
+  @Default.Integer(0)
+  @NonNegative
+  int getMaxOffHeapCacheMemoryUsageMb();
+
+  void setMaxOffHeapCacheMemoryUsageMb(@NonNegative int value);
+
   /**
    * A {@link DefaultValueFactory} which constructs an instance of the class specified by {@link
    * #getMaxCacheMemoryUsageMbClass maxCacheMemoryUsageMbClass} to compute the maximum amount of
@@ -444,6 +519,20 @@ public interface SdkHarnessOptions extends PipelineOptions, MemoryMonitorOptions
 
   void setElementProcessingTimeoutMinutes(int value);
 
+  /**
+   * Whether the SDK harness processes instructions on virtual threads, so that {@code DoFn}s which
+   * block on I/O release their carrier thread while waiting instead of occupying a platform thread.
+   * Requires Java 21 or later and is ignored on older JVMs.
+   */
+  @Description(
+      "If true, the SDK harness processes bundles on virtual threads, so that DoFns blocking on "
+          + "I/O do not occupy a platform thread while waiting. Requires Java 21 or later and is "
+          + "ignored on older JVMs.")
+  @Default.Boolean(false)
+  boolean getEnableVirtualThreads();
+
+  void setEnableVirtualThreads(boolean value);
+
   /**
    * The Avro spec supports the `java-class` schema annotation, which allows fields to be serialized
    * and deserialized via their toString/String constructor. As of Avro 1.11.4+, allowed Java
@@ -88,18 +88,29 @@ class FromRowUsingCreator<T> implements SerializableFunction<Row, T>, Function<R
         return (T) target;
       }
     }
+    Object[] params = new Object[row.getFieldCount()];
+    for (int i = 0; i < row.getFieldCount(); ++i) {
+      params[i] = row.getValue(i);
+    }
+    return fromFieldValues(row.getSchema(), params);
+  }
+
+  /**
+   * Creates an instance from the field values of a row with the given schema, as returned by {@link
+   * Row#getValue}. The values are converted in place.
+   */
+  @SuppressWarnings("unchecked")
+  T fromFieldValues(Schema schema, Object[] values) {
     if (fieldConverters == null) {
-      initFieldConverters(row.getSchema());
+      initFieldConverters(schema);
     }
-    checkState(fieldConverters.length == row.getFieldCount(), "Unexpected field count");
+    checkState(fieldConverters.length == values.length, "Unexpected field count");
 
-    Object[] params = new Object[row.getFieldCount()];
-    for (int i = 0; i < row.getFieldCount(); ++i) {
-      params[i] = fieldConverters[i].apply(row.getValue(i));
+    for (int i = 0; i < values.length; ++i) {
+      values[i] = fieldConverters[i].apply(values[i]);
     }
-    SchemaUserTypeCreator creator =
-        schemaTypeCreatorFactory.create(typeDescriptor, row.getSchema());
-    return (T) creator.create(params);
+    SchemaUserTypeCreator creator = schemaTypeCreatorFactory.create(typeDescriptor, schema);
+    return (T) creator.create(values);
   }
 
   private synchronized void initFieldConverters(Schema schema) {
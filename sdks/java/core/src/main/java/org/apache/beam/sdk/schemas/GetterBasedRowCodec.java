@@ -0,0 +1,314 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.schemas;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import org.apache.beam.sdk.coders.BitSetCoder;
+import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.coders.CoderException;
+import org.apache.beam.sdk.coders.RowCoder;
+import org.apache.beam.sdk.coders.RowCoderGenerator;
+import org.apache.beam.sdk.schemas.Schema.Field;
+import org.apache.beam.sdk.schemas.Schema.TypeName;
+import org.apache.beam.sdk.util.VarInt;
+import org.apache.beam.sdk.values.Row;
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Encodes objects with a getter based schema in the {@link RowCoder} format straight from the
+ * object, without creating an intermediate {@link org.apache.beam.sdk.values.Row}.
+ *
+ * <p>Fields whose getter implements {@link PrimitiveFieldValueGetter} are read and written without
+ * boxing. Other fields are read through their {@link FieldValueGetter}, exactly as a {@link
+ * org.apache.beam.sdk.values.RowWithGetters} would read them, and encoded with the coder for their
+ * field type. The bytes produced are identical to encoding the result of the schema's {@code
+ * toRowFunction} with {@link RowCoder}. The size of that encoding can also be computed from the
+ * field values without encoding them.
+ */
+@SuppressWarnings({
+  "nullness", // TODO(https://github.com/apache/beam/issues/20497)
+  "rawtypes",
+  "unchecked"
+})
+class GetterBasedRowCodec<T extends @NonNull Object> {
+  private static final BitSetCoder NULL_LIST_CODER = BitSetCoder.of();
+  private static final BitSet EMPTY_BIT_SET = new BitSet(0);
+
+  // Null if the codec is only used for decoding.
+  private final GetterBasedSchemaProvider.@Nullable ToRowWithValueGetters<T> toRowFunction;
+  private final int fieldCount;
+  // Indexed by encoding position.
+  private final int[] encodingPosToRowIndex;
+  private final Field[] fields;
+  private final Coder[] coders;
+  private final @Nullable Class<?>[] primitiveTypes;
+
+  // Getters for the most recently seen class of values.
+  private volatile @Nullable Accessors<T> accessors;
+
+  GetterBasedRowCodec(
+      Schema schema, GetterBasedSchemaProvider.@Nullable ToRowWithValueGetters<T> toRowFunction) {
+    this.toRowFunction = toRowFunction;
+    this.fieldCount = schema.getFieldCount();
+    this.encodingPosToRowIndex = new int[fieldCount];
+    this.fields = new Field[fieldCount];
+    this.coders = new Coder[fieldCount];
+    this.primitiveTypes = new Class<?>[fieldCount];
+    Map<String, Integer> encodingPositions = RowCoderGenerator.getEncodingPositions(schema);
+    for (int rowIndex = 0; rowIndex < fieldCount; ++rowIndex) {
+      Field field = schema.getField(rowIndex);
+      int encodingPos = encodingPositions.get(field.getName());
+      encodingPosToRowIndex[encodingPos] = rowIndex;
+      fields[encodingPos] = field;
+      // Nulls are handled by the null bitmap, as in RowCoderGenerator.
+      coders[encodingPos] = SchemaCoder.coderForFieldType(field.getType().withNullable(false));
+      primitiveTypes[encodingPos] =
+          field.getType().getNullable() ? null : primitiveType(field.getType().getTypeName());
+    }
+  }
+
+  /** Returns the Java primitive type whose values the coder for {@code typeName} encodes. */
+  private static @Nullable Class<?> primitiveType(TypeName typeName) {
+    switch (typeName) {
+      case BOOLEAN:
+        return boolean.class;
+      case BYTE:
+        return byte.class;
+      case INT16:
+        return short.class;
+      case INT32:
+        return int.class;
+      case INT64:
+        return long.class;
+      case FLOAT:
+        return float.class;
+      case DOUBLE:
+        return double.class;
+      default:
+        return null;
+    }
+  }
+
+  /** The getters for one class of values, indexed by encoding position. */
+  private static class Accessors<T extends @NonNull Object> {
+    final Class<?> valueClass;
+    final FieldValueGetter<T, Object>[] getters;
+    // Null for fields that must be read through the boxing getter.
+    final @Nullable PrimitiveFieldValueGetter<T>[] primitiveGetters;
+
+    Accessors(
+        Class<?> valueClass,
+        List<FieldValueGetter<T, Object>> rowGetters,
+        int[] encodingPosToRowIndex,
+        @Nullable Class<?>[] primitiveTypes) {
+      this.valueClass = valueClass;
+      this.getters = new FieldValueGetter[rowGetters.size()];
+      this.primitiveGetters = new PrimitiveFieldValueGetter[rowGetters.size()];
+      for (int encodingPos = 0; encodingPos < getters.length; ++encodingPos) {
+        FieldValueGetter<T, Object> getter = rowGetters.get(encodingPosToRowIndex[encodingPos]);
+        getters[encodingPos] = getter;
+        if (getter instanceof PrimitiveFieldValueGetter
+            && primitiveTypes[encodingPos] != null
+            && primitiveTypes[encodingPos].equals(
+                ((PrimitiveFieldValueGetter<T>) getter).primitiveType())) {
+          primitiveGetters[encodingPos] = (PrimitiveFieldValueGetter<T>) getter;
+        }
+      }
+    }
+  }
+
+  private Accessors<T> getAccessors(Class<?> valueClass) {
+    Accessors<T> current = accessors;
+    if (current == null || !current.valueClass.equals(valueClass)) {
+      List<FieldValueGetter<T, Object>> rowGetters = toRowFunction.getGetters(valueClass);
+      if (rowGetters.size() != fieldCount) {
+        throw new IllegalStateException(
+            "Expected " + fieldCount + " getters for " + valueClass + ", got " + rowGetters.size());
+      }
+      current = new Accessors<>(valueClass, rowGetters, encodingPosToRowIndex, primitiveTypes);
+      accessors = current;
+    }
+    return current;
+  }
+
+  void encode(T value, OutputStream outStream) throws IOException {
+    Accessors<T> current = getAccessors(value.getClass());
+    VarInt.encode(fieldCount, outStream);
+
+    // Read the boxed values once, so that both the null bitmap and the encoding can share them.
+    @Nullable Object[] boxedValues = new Object[fieldCount];
+    BitSet nullFields = EMPTY_BIT_SET;
+    for (int encodingPos = 0; encodingPos < fieldCount; ++encodingPos) {
+      if (current.primitiveGetters[encodingPos] == null) {
+        @Nullable Object fieldValue = current.getters[encodingPos].get(value);
+        if (fieldValue == null) {
+          if (!fields[encodingPos].getType().getNullable()) {
+            throw new RuntimeException(
+                "Null value set on non-nullable field " + fields[encodingPos]);
+          }
+          if (nullFields == EMPTY_BIT_SET) {
+            nullFields = new BitSet(fieldCount);
+          }
+          nullFields.set(encodingPos);
+        }
+        boxedValues[encodingPos] = fieldValue;
+      }
+    }
+    NULL_LIST_CODER.encode(nullFields, outStream);
+
+    for (int encodingPos = 0; encodingPos < fieldCount; ++encodingPos) {
+      @Nullable
+      PrimitiveFieldValueGetter<T> primitiveGetter = current.primitiveGetters[encodingPos];
+      if (primitiveGetter != null) {
+        encodePrimitive(primitiveGetter, primitiveTypes[encodingPos], value, outStream);
+      } else if (boxedValues[encodingPos] != null) {
+        coders[encodingPos].encode(boxedValues[encodingPos], outStream);
+      }
+    }
+  }
+
+  /** Returns the size of the encoding of {@code value}, computed without encoding it. */
+  long getEncodedSize(T value) throws Exception {
+    Accessors<T> current = getAccessors(value.getClass());
+    int highestNullPos = -1;
+    long fieldsSize = 0;
+    for (int encodingPos = 0; encodingPos < fieldCount; ++encodingPos) {
+      @Nullable
+      PrimitiveFieldValueGetter<T> primitiveGetter = current.primitiveGetters[encodingPos];
+      if (primitiveGetter != null) {
+        fieldsSize += primitiveSize(primitiveGetter, primitiveTypes[encodingPos], value);
+        continue;
+      }
+      @Nullable Object fieldValue = current.getters[encodingPos].get(value);
+      if (fieldValue == null) {
+        highestNullPos = encodingPos;
+      } else {
+        fieldsSize += Coder.getEncodedElementByteSizeUsingCoder(coders[encodingPos], fieldValue);
+      }
+    }
+    return VarInt.getLength(fieldCount) + nullFieldsSize(highestNullPos) + fieldsSize;
+  }
+
+  /**
+   * Returns the size of the {@link RowCoder} encoding of {@code row}, which must have the schema of
+   * this codec, computed without encoding it.
+   */
+  long getEncodedRowSize(Row row) throws Exception {
+    int highestNullPos = -1;
+    long fieldsSize = 0;
+    for (int encodingPos = 0; encodingPos < fieldCount; ++encodingPos) {
+      @Nullable Object fieldValue = row.getValue(encodingPosToRowIndex[encodingPos]);
+      if (fieldValue == null) {
+        highestNullPos = encodingPos;
+      } else {
+        fieldsSize += Coder.getEncodedElementByteSizeUsingCoder(coders[encodingPos], fieldValue);
+      }
+    }
+    return VarInt.getLength(row.getFieldCount()) + nullFieldsSize(highestNullPos) + fieldsSize;
+  }
+
+  // The size of the BitSetCoder encoding of a null bitmap whose highest set bit is highestNullPos.
+  private static long nullFieldsSize(int highestNullPos) {
+    int bitmapBytes = highestNullPos < 0 ? 0 : highestNullPos / 8 + 1;
+    return VarInt.getLength(bitmapBytes) + bitmapBytes;
+  }
+
+  // The number of bytes encodePrimitive writes for the field.
+  private static <T extends @NonNull Object> long primitiveSize(
+      PrimitiveFieldValueGetter<T> getter, Class<?> type, T value) throws CoderException {
+    if (type == int.class) {
+      return VarInt.getLength(getter.getInt(value));
+    } else if (type == long.class) {
+      return VarInt.getLength(getter.getLong(value));
+    } else if (type == double.class) {
+      return 8;
+    } else if (type == float.class) {
+      return 4;
+    } else if (type == short.class) {
+      return 2;
+    } else if (type == boolean.class || type == byte.class) {
+      return 1;
+    } else {
+      throw new CoderException("Unsupported primitive type " + type);
+    }
+  }
+
+  // Writes the same bytes as the coders SchemaCoder uses for these types.
+  private static <T extends @NonNull Object> void encodePrimitive(
+      PrimitiveFieldValueGetter<T> getter, Class<?> type, T value, OutputStream outStream)
+      throws IOException {
+    if (type == int.class) {
+      VarInt.encode(getter.getInt(value), outStream);
+    } else if (type == long.class) {
+      VarInt.encode(getter.getLong(value), outStream);
+    } else if (type == double.class) {
+      writeBigEndianLong(Double.doubleToLongBits(getter.getDouble(value)), outStream);
+    } else if (type == float.class) {
+      writeBigEndianInt(Float.floatToIntBits(getter.getFloat(value)), outStream);
+    } else if (type == boolean.class) {
+      outStream.write(getter.getBoolean(value) ? 1 : 0);
+    } else if (type == short.class) {
+      short s = getter.getShort(value);
+      outStream.write(s >>> 8);
+      outStream.write(s);
+    } else if (type == byte.class) {
+      outStream.write(getter.getByte(value));
+    } else {
+      throw new CoderException("Unsupported primitive type " + type);
+    }
+  }
+
+  private static void writeBigEndianInt(int value, OutputStream outStream) throws IOException {
+    outStream.write(value >>> 24);
+    outStream.write(value >>> 16);
+    outStream.write(value >>> 8);
+    outStream.write(value);
+  }
+
+  private static void writeBigEndianLong(long value, OutputStream outStream) throws IOException {
+    writeBigEndianInt((int) (value >>> 32), outStream);
+    writeBigEndianInt((int) value, outStream);
+  }
+
+  /**
+   * Decodes the field values of a row in the {@link RowCoder} format, in schema order, as {@link
+   * org.apache.beam.sdk.values.Row#getValue} would return them.
+   */
+  @Nullable
+  Object[] decodeValues(InputStream inStream) throws IOException {
+    int encodedFieldCount = VarInt.decodeInt(inStream);
+    BitSet nullFields = NULL_LIST_CODER.decode(inStream);
+    @Nullable Object[] values = new Object[fieldCount];
+    // In the case of a schema change going backwards, the encoded field count might be larger than
+    // the schema's, in which case we drop the extra fields. Fields added by a schema change are
+    // left null.
+    int decodedFields = Math.min(encodedFieldCount, fieldCount);
+    for (int encodingPos = 0; encodingPos < decodedFields; ++encodingPos) {
+      if (!nullFields.get(encodingPos)) {
+        values[encodingPosToRowIndex[encodingPos]] = coders[encodingPos].decode(inStream);
+      }
+    }
+    return values;
+  }
+}
@@ -113,7 +113,7 @@ public abstract class GetterBasedSchemaProvider implements SchemaProvider {
     return schemaTypeCreator(targetTypeDescriptor.getRawType(), schema);
   }
 
-  private class ToRowWithValueGetters<T extends @NonNull Object>
+  class ToRowWithValueGetters<T extends @NonNull Object>
       implements SerializableFunction<T, Row> {
     private final Schema schema;
     private final Factory<List<FieldValueGetter<T, Object>>> getterFactory;
@@ -137,6 +137,11 @@ public abstract class GetterBasedSchemaProvider implements SchemaProvider {
       return Row.withSchema(schema).withFieldValueGetters(getterFactory, input);
     }
 
+    /** Returns the getters that a {@link Row} for an instance of {@code targetClass} reads. */
+    List<FieldValueGetter<T, Object>> getGetters(Class<?> targetClass) {
+      return getterFactory.create(TypeDescriptor.of(targetClass), schema);
+    }
+
     private GetterBasedSchemaProvider getOuter() {
       return GetterBasedSchemaProvider.this;
     }
@@ -0,0 +1,64 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.schemas;
+
+import org.apache.beam.sdk.annotations.Internal;
+import org.checkerframework.checker.nullness.qual.NonNull;
+
+/**
+ * <b><i>For internal use only; no backwards-compatibility guarantees.</i></b>
+ *
+ * <p>Implemented in addition to {@link FieldValueGetter} by generated getters whose field has a
+ * primitive Java type, to read the field without boxing it.
+ *
+ * <p>Only the method matching {@link #primitiveType()} is implemented; the others throw {@link
+ * UnsupportedOperationException}.
+ */
+@Internal
+public interface PrimitiveFieldValueGetter<ObjectT extends @NonNull Object> {
+  /** Returns the primitive type of the field, e.g. {@code int.class}. */
+  Class<?> primitiveType();
+
+  default boolean getBoolean(ObjectT object) {
+    throw new UnsupportedOperationException("Field is not a boolean");
+  }
+
+  default byte getByte(ObjectT object) {
+    throw new UnsupportedOperationException("Field is not a byte");
+  }
+
+  default short getShort(ObjectT object) {
+    throw new UnsupportedOperationException("Field is not a short");
+  }
+
+  default int getInt(ObjectT object) {
+    throw new UnsupportedOperationException("Field is not an int");
+  }
+
+  default long getLong(ObjectT object) {
+    throw new UnsupportedOperationException("Field is not a long");
+  }
+
+  default float getFloat(ObjectT object) {
+    throw new UnsupportedOperationException("Field is not a float");
+  }
+
+  default double getDouble(ObjectT object) {
+    throw new UnsupportedOperationException("Field is not a double");
+  }
+}
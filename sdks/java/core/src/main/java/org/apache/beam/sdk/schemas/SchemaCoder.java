@@ -27,6 +27,7 @@ import java.util.Objects;
 import java.util.UUID;
 import org.apache.beam.sdk.coders.Coder;
 import org.apache.beam.sdk.coders.CustomCoder;
+import org.apache.beam.sdk.coders.RowBatchCoder;
 import org.apache.beam.sdk.coders.RowCoder;
 import org.apache.beam.sdk.coders.RowCoderGenerator;
 import org.apache.beam.sdk.schemas.Schema.Field;
@@ -34,13 +35,16 @@ import org.apache.beam.sdk.schemas.Schema.FieldType;
 import org.apache.beam.sdk.transforms.SerializableFunction;
 import org.apache.beam.sdk.util.SerializableUtils;
 import org.apache.beam.sdk.values.Row;
+import org.apache.beam.sdk.values.RowBatch;
 import org.apache.beam.sdk.values.TypeDescriptor;
 import org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.collect.ImmutableList;
 import org.checkerframework.checker.nullness.qual.Nullable;
 
 /** {@link SchemaCoder} is used as the coder for types that have schemas registered. */
 @SuppressWarnings({
-  "nullness" // TODO(https://github.com/apache/beam/issues/20497)
+  "nullness", // TODO(https://github.com/apache/beam/issues/20497)
+  "rawtypes",
+  "unchecked"
 })
 public class SchemaCoder<T> extends CustomCoder<T> {
   protected final Schema schema;
@@ -48,6 +52,7 @@ public class SchemaCoder<T> extends CustomCoder<T> {
   private final SerializableFunction<T, Row> toRowFunction;
   private final SerializableFunction<Row, T> fromRowFunction;
   private transient @Nullable Coder<Row> delegateCoder;
+  private transient @Nullable GetterBasedRowCodec getterBasedCodec;
 
   protected SchemaCoder(
       Schema schema,
@@ -107,6 +112,15 @@ public class SchemaCoder<T> extends CustomCoder<T> {
     return toRowFunction;
   }
 
+  /**
+   * Returns a {@link Coder} that encodes and decodes whole {@link RowBatch}es of this coder's
+   * schema. The values of each field are encoded together, with the same field encodings as this
+   * coder.
+   */
+  public RowBatchCoder getRowBatchCoder() {
+    return RowBatchCoder.of(schema);
+  }
+
   private Coder<Row> getDelegateCoder() {
     if (delegateCoder == null) {
       // RowCoderGenerator caches based on id, so if a new instance of this RowCoder is
@@ -116,16 +130,50 @@ public class SchemaCoder<T> extends CustomCoder<T> {
     return delegateCoder;
   }
 
+  // Used instead of the delegate coder when the conversion functions come from a
+  // GetterBasedSchemaProvider, so that values are encoded and decoded without an intermediate Row.
+  private GetterBasedRowCodec getGetterBasedCodec() {
+    if (getterBasedCodec == null) {
+      getterBasedCodec =
+          new GetterBasedRowCodec<>(
+              schema,
+              toRowFunction instanceof GetterBasedSchemaProvider.ToRowWithValueGetters
+                  ? (GetterBasedSchemaProvider.ToRowWithValueGetters) toRowFunction
+                  : null);
+    }
+    return getterBasedCodec;
+  }
+
   @Override
   public void encode(T value, OutputStream outStream) throws IOException {
-    getDelegateCoder().encode(toRowFunction.apply(value), outStream);
+    if (toRowFunction instanceof GetterBasedSchemaProvider.ToRowWithValueGetters) {
+      getGetterBasedCodec().encode(value, outStream);
+    } else {
+      getDelegateCoder().encode(toRowFunction.apply(value), outStream);
+    }
   }
 
   @Override
   public T decode(InputStream inStream) throws IOException {
+    if (fromRowFunction instanceof FromRowUsingCreator) {
+      return ((FromRowUsingCreator<T>) fromRowFunction)
+          .fromFieldValues(schema, getGetterBasedCodec().decodeValues(inStream));
+    }
     return fromRowFunction.apply(getDelegateCoder().decode(inStream));
   }
 
+  /**
+   * Overridden to compute the size from the field values and the coders for their types, instead of
+   * encoding the value and counting the bytes.
+   */
+  @Override
+  protected long getEncodedElementByteSize(T value) throws Exception {
+    if (toRowFunction instanceof GetterBasedSchemaProvider.ToRowWithValueGetters) {
+      return getGetterBasedCodec().getEncodedSize(value);
+    }
+    return getGetterBasedCodec().getEncodedRowSize(toRowFunction.apply(value));
+  }
+
   @Override
   public void verifyDeterministic()
       throws org.apache.beam.sdk.coders.Coder.NonDeterministicException {
@@ -35,8 +35,11 @@ import org.apache.beam.sdk.schemas.utils.SchemaZipFold;
 import org.apache.beam.sdk.transforms.DoFn;
 import org.apache.beam.sdk.transforms.PTransform;
 import org.apache.beam.sdk.transforms.ParDo;
+import org.apache.beam.sdk.transforms.SerializableFunction;
+import org.apache.beam.sdk.transforms.windowing.BoundedWindow;
 import org.apache.beam.sdk.values.PCollection;
 import org.apache.beam.sdk.values.Row;
+import org.apache.beam.sdk.values.TimestampedValue;
 import org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.base.Joiner;
 import org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.collect.ImmutableList;
 import org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.collect.Iterables;
@@ -289,6 +292,7 @@ public abstract class Cast<T> extends PTransform<PCollection<T>, PCollection<Row
 
     verifyCompatibility(inputSchema);
 
+    SerializableFunction<T, Row> toRowFunction = input.getToRowFunction();
     return input
         .apply(
             ParDo.of(
@@ -306,10 +310,48 @@ public abstract class Cast<T> extends PTransform<PCollection<T>, PCollection<Row
                     Row output = castRow(input, inputSchema, outputSchema());
                     r.output(output);
                   }
+
+                  @ProcessBatch
+                  public Iterable<TimestampedValue<Row>> processBatch(
+                      List<TimestampedValue<T>> elements, BoundedWindow window) {
+                    return castBatch(elements, toRowFunction, inputSchema, outputSchema());
+                  }
                 }))
         .setRowSchema(outputSchema());
   }
 
+  /**
+   * Casts a batch of elements like {@link #castRow}, but looks up the input field of each output
+   * field once for the whole batch rather than once per row.
+   */
+  private static <T> List<TimestampedValue<Row>> castBatch(
+      List<TimestampedValue<T>> elements,
+      SerializableFunction<T, Row> toRowFunction,
+      Schema inputSchema,
+      Schema outputSchema) {
+    int fieldCount = outputSchema.getFieldCount();
+    int[] fromFieldIdx = new int[fieldCount];
+    FieldType[] inputTypes = new FieldType[fieldCount];
+    FieldType[] outputTypes = new FieldType[fieldCount];
+    for (int i = 0; i < fieldCount; i++) {
+      Schema.Field outputField = outputSchema.getField(i);
+      fromFieldIdx[i] = inputSchema.indexOf(outputField.getName());
+      inputTypes[i] = inputSchema.getField(fromFieldIdx[i]).getType();
+      outputTypes[i] = outputField.getType();
+    }
+
+    List<TimestampedValue<Row>> outputs = new ArrayList<>(elements.size());
+    for (TimestampedValue<T> element : elements) {
+      Row input = toRowFunction.apply(element.getValue());
+      Row.Builder output = Row.withSchema(outputSchema);
+      for (int i = 0; i < fieldCount; i++) {
+        output.addValue(castValue(input.getValue(fromFieldIdx[i]), inputTypes[i], outputTypes[i]));
+      }
+      outputs.add(TimestampedValue.of(output.build(), element.getTimestamp()));
+    }
+    return outputs;
+  }
+
   public static Row castRow(Row input, Schema inputSchema, Schema outputSchema) {
     if (input == null) {
       return null;
@@ -19,6 +19,7 @@ package org.apache.beam.sdk.schemas.transforms;
 
 import com.google.auto.value.AutoValue;
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.stream.Collectors;
 import org.apache.beam.sdk.schemas.FieldAccessDescriptor;
@@ -29,8 +30,10 @@ import org.apache.beam.sdk.transforms.DoFn;
 import org.apache.beam.sdk.transforms.PTransform;
 import org.apache.beam.sdk.transforms.ParDo;
 import org.apache.beam.sdk.transforms.SerializableFunction;
+import org.apache.beam.sdk.transforms.windowing.BoundedWindow;
 import org.apache.beam.sdk.values.PCollection;
 import org.apache.beam.sdk.values.Row;
+import org.apache.beam.sdk.values.TimestampedValue;
 import org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.collect.Lists;
 import org.checkerframework.checker.nullness.qual.Nullable;
 
@@ -181,6 +184,17 @@ public class Filter {
       return this;
     }
 
+    /**
+     * Returns the fields read by the predicates of this filter. Elements that pass the filter are
+     * output unchanged, so all other fields are only accessed by downstream transforms.
+     */
+    public FieldAccessDescriptor getFieldAccessDescriptor() {
+      return FieldAccessDescriptor.union(
+          filters.stream()
+              .map(FilterDescription::getFieldAccessDescriptor)
+              .collect(Collectors.toList()));
+    }
+
     @Override
     public PCollection<T> expand(PCollection<T> input) {
       Schema inputSchema = input.getSchema();
@@ -202,29 +216,50 @@ public class Filter {
                           .build())
               .collect(Collectors.toList());
 
+      SerializableFunction<T, Row> toRowFunction = input.getToRowFunction();
       return input.apply(
           ParDo.of(
               new DoFn<T, T>() {
                 @ProcessElement
                 public void process(@Element Row row, OutputReceiver<Row> o) {
+                  if (matches(row)) {
+                    o.output(row);
+                  }
+                }
+
+                // Passing elements are output as they are, without converting them back from
+                // Rows.
+                @ProcessBatch
+                public Iterable<TimestampedValue<T>> processBatch(
+                    List<TimestampedValue<T>> elements, BoundedWindow window) {
+                  List<TimestampedValue<T>> passed = new ArrayList<>(elements.size());
+                  for (TimestampedValue<T> element : elements) {
+                    if (matches(toRowFunction.apply(element.getValue()))) {
+                      passed.add(element);
+                    }
+                  }
+                  return passed;
+                }
+
+                private boolean matches(Row row) {
                   for (FilterDescription filter : resolvedFilters) {
                     Row selected = filter.getRowSelector().select(row);
                     if (filter.getSelectsSingleField()) {
                       SerializableFunction<Object, Boolean> predicate =
                           (SerializableFunction<Object, Boolean>) filter.getPredicate();
                       if (!predicate.apply(selected.getValue(0))) {
-                        return;
+                        return false;
                       }
                     } else {
                       SerializableFunction<Row, Boolean> predicate =
                           (SerializableFunction<Row, Boolean>) filter.getPredicate();
                       if (!predicate.apply(selected)) {
-                        return;
+                        return false;
                       }
                     }
                   }
-                  // All filters passed. Output the row.
-                  o.output(row);
+                  // All filters passed.
+                  return true;
                 }
               }));
     }
@@ -25,7 +25,10 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.stream.IntStream;
+import org.apache.beam.sdk.coders.RowBatchCoder;
 import org.apache.beam.sdk.schemas.FieldAccessDescriptor;
+import org.apache.beam.sdk.schemas.FieldAccessDescriptor.FieldDescriptor;
 import org.apache.beam.sdk.schemas.Schema;
 import org.apache.beam.sdk.schemas.Schema.Field;
 import org.apache.beam.sdk.schemas.Schema.FieldType;
@@ -38,6 +41,7 @@ import org.apache.beam.sdk.transforms.ParDo;
 import org.apache.beam.sdk.transforms.SerializableFunction;
 import org.apache.beam.sdk.values.PCollection;
 import org.apache.beam.sdk.values.Row;
+import org.apache.beam.sdk.values.RowBatch;
 import org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.base.MoreObjects;
 import org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.base.Preconditions;
 import org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.collect.ImmutableMap;
@@ -82,6 +86,14 @@ import org.checkerframework.checker.nullness.qual.Nullable;
  * PCollection<Location> rows = event.apply(Select.fieldNames("location")
  *                              .apply(Convert.to(Location.class));
  * }</pre>
+ *
+ * <p>Top-level fields can also be selected from a {@link PCollection} of columnar {@link
+ * RowBatch}es, which shares the selected columns rather than copying every row:
+ *
+ * <pre>{@code
+ * PCollection<RowBatch> batches = readUserEventBatches();
+ * PCollection<RowBatch> ids = batches.apply(Select.fieldNames("userId", "eventId").onBatches());
+ * }</pre>
  */
 @SuppressWarnings({
   "nullness" // TODO(https://github.com/apache/beam/issues/20497)
@@ -148,7 +160,11 @@ public class Select {
 
   @AutoValue
   public abstract static class Fields<T> extends PTransform<PCollection<T>, PCollection<Row>> {
-    abstract FieldAccessDescriptor getFieldAccessDescriptor();
+    /**
+     * Returns the fields selected by this transform. They are only resolved against the input
+     * schema when the transform is expanded.
+     */
+    public abstract FieldAccessDescriptor getFieldAccessDescriptor();
 
     abstract @Nullable Schema getOutputSchema();
 
@@ -184,6 +200,17 @@ public class Select {
       return toBuilder().setOutputSchema(schema).build();
     }
 
+    /**
+     * Returns a transform that applies this selection to every {@link RowBatch} of its input, which
+     * must be encoded with a {@link RowBatchCoder}. The selected columns are shared with the input
+     * batches rather than copied, so only top-level fields can be selected. The input batches are
+     * built by the pipeline, for example with {@link RowBatch#of}; no runner batches a {@link
+     * PCollection} of {@link Row}s for this transform.
+     */
+    public PTransform<PCollection<RowBatch>, PCollection<RowBatch>> onBatches() {
+      return new SelectBatches(getFieldAccessDescriptor(), getOutputSchema());
+    }
+
     @Override
     public PCollection<Row> expand(PCollection<T> input) {
       Schema inputSchema = input.getSchema();
@@ -209,6 +236,66 @@ public class Select {
     }
   }
 
+  private static class SelectBatchDoFn extends DoFn<RowBatch, RowBatch> {
+    private final Schema outputSchema;
+    private final int[] fieldIndices;
+
+    SelectBatchDoFn(Schema outputSchema, int[] fieldIndices) {
+      this.outputSchema = outputSchema;
+      this.fieldIndices = fieldIndices;
+    }
+
+    @ProcessElement
+    public void process(@Element RowBatch batch, OutputReceiver<RowBatch> r) {
+      r.output(batch.select(outputSchema, fieldIndices));
+    }
+  }
+
+  /** See {@link Fields#onBatches()}. */
+  private static class SelectBatches
+      extends PTransform<PCollection<RowBatch>, PCollection<RowBatch>> {
+    private final FieldAccessDescriptor fieldAccessDescriptor;
+    private final @Nullable Schema outputSchema;
+
+    SelectBatches(FieldAccessDescriptor fieldAccessDescriptor, @Nullable Schema outputSchema) {
+      this.fieldAccessDescriptor = fieldAccessDescriptor;
+      this.outputSchema = outputSchema;
+    }
+
+    @Override
+    public PCollection<RowBatch> expand(PCollection<RowBatch> input) {
+      Preconditions.checkArgument(
+          input.getCoder() instanceof RowBatchCoder,
+          "Selecting from batches requires a RowBatchCoder, but the input has coder %s",
+          input.getCoder());
+      Schema inputSchema = ((RowBatchCoder) input.getCoder()).getSchema();
+      FieldAccessDescriptor resolved = fieldAccessDescriptor.resolve(inputSchema);
+      Preconditions.checkArgument(
+          resolved.getNestedFieldsAccessed().isEmpty(),
+          "Only top-level fields can be selected from batches, but got %s",
+          resolved);
+      int[] fieldIndices =
+          resolved.getAllFields()
+              ? IntStream.range(0, inputSchema.getFieldCount()).toArray()
+              : resolved.getFieldsAccessed().stream()
+                  .mapToInt(FieldDescriptor::getFieldId)
+                  .toArray();
+      Schema schema = SelectHelpers.getOutputSchema(inputSchema, resolved);
+      if (outputSchema != null) {
+        Preconditions.checkArgument(
+            outputSchema.typesEqual(schema),
+            "Types not equal. provided output schema: "
+                + outputSchema
+                + " Schema inferred from select: "
+                + schema);
+        schema = outputSchema;
+      }
+      return input
+          .apply(ParDo.of(new SelectBatchDoFn(schema, fieldIndices)))
+          .setCoder(RowBatchCoder.of(schema));
+    }
+  }
+
   private static Schema uniquifyNames(Schema schema) {
     Schema.Builder builder = new Schema.Builder();
     for (Field field : schema.getFields()) {
@@ -49,6 +49,7 @@ import net.bytebuddy.description.type.TypeDescription;
 import net.bytebuddy.description.type.TypeDescription.ForLoadedType;
 import net.bytebuddy.dynamic.DynamicType;
 import net.bytebuddy.dynamic.scaffold.InstrumentedType;
+import net.bytebuddy.implementation.FixedValue;
 import net.bytebuddy.implementation.Implementation;
 import net.bytebuddy.implementation.Implementation.Context;
 import net.bytebuddy.implementation.bytecode.ByteCodeAppender;
@@ -78,6 +79,7 @@ import org.apache.beam.sdk.schemas.FieldValueGetter;
 import org.apache.beam.sdk.schemas.FieldValueHaver;
 import org.apache.beam.sdk.schemas.FieldValueSetter;
 import org.apache.beam.sdk.schemas.FieldValueTypeInformation;
+import org.apache.beam.sdk.schemas.PrimitiveFieldValueGetter;
 import org.apache.beam.sdk.util.Preconditions;
 import org.apache.beam.sdk.util.common.ReflectHelpers;
 import org.apache.beam.sdk.values.TypeDescriptor;
@@ -85,6 +87,7 @@ import org.apache.beam.sdk.values.TypeParameter;
 import org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.base.Function;
 import org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.base.Verify;
 import org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.collect.Collections2;
+import org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.collect.ImmutableMap;
 import org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.collect.Iterables;
 import org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.collect.Lists;
 import org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.collect.Maps;
@@ -222,6 +225,79 @@ public class ByteBuddyUtils {
         byteBuddy.with(new InjectPackageStrategy((Class) objectType)).subclass(getterGenericType);
   }
 
+  // The PrimitiveFieldValueGetter method implemented for each primitive type.
+  private static final Map<Class<?>, String> PRIMITIVE_GETTER_METHODS =
+      ImmutableMap.<Class<?>, String>builder()
+          .put(boolean.class, "getBoolean")
+          .put(byte.class, "getByte")
+          .put(short.class, "getShort")
+          .put(int.class, "getInt")
+          .put(long.class, "getLong")
+          .put(float.class, "getFloat")
+          .put(double.class, "getDouble")
+          .build();
+
+  /**
+   * If {@code valueType} is a primitive type, makes the getter also implement {@link
+   * PrimitiveFieldValueGetter}, returning the value read by {@code readValue} without boxing it.
+   * {@code readValue} reads the value from an instance of {@code objectType} on top of the stack.
+   */
+  public static <ObjectT, ValueT>
+      DynamicType.Builder<FieldValueGetter<@NonNull ObjectT, ValueT>> implementPrimitiveGetter(
+          DynamicType.Builder<FieldValueGetter<@NonNull ObjectT, ValueT>> builder,
+          Class<?> objectType,
+          Class<?> valueType,
+          StackManipulation readValue) {
+    @Nullable String methodName = PRIMITIVE_GETTER_METHODS.get(valueType);
+    if (methodName == null) {
+      return builder;
+    }
+    return builder
+        .implement(
+            TypeDescription.Generic.Builder.parameterizedType(
+                    PrimitiveFieldValueGetter.class, objectType)
+                .build())
+        .method(ElementMatchers.named("primitiveType"))
+        .intercept(FixedValue.value(TypeDescription.ForLoadedType.of(valueType)))
+        .method(ElementMatchers.named(methodName))
+        .intercept(new ReadPrimitiveInstruction(objectType, valueType, readValue));
+  }
+
+  // Implements a PrimitiveFieldValueGetter method, returning the unboxed value.
+  private static class ReadPrimitiveInstruction implements Implementation {
+    private final Class<?> objectType;
+    private final Class<?> valueType;
+    private final StackManipulation readValue;
+
+    ReadPrimitiveInstruction(Class<?> objectType, Class<?> valueType, StackManipulation readValue) {
+      this.objectType = objectType;
+      this.valueType = valueType;
+      this.readValue = readValue;
+    }
+
+    @Override
+    public InstrumentedType prepare(InstrumentedType instrumentedType) {
+      return instrumentedType;
+    }
+
+    @Override
+    public ByteCodeAppender appender(final Target implementationTarget) {
+      return (methodVisitor, implementationContext, instrumentedMethod) -> {
+        // this + method parameters.
+        int numLocals = 1 + instrumentedMethod.getParameters().size();
+        StackManipulation stackManipulation =
+            new StackManipulation.Compound(
+                // Method param is offset 1 (offset 0 is the this parameter).
+                MethodVariableAccess.REFERENCE.loadFrom(1),
+                TypeCasting.to(TypeDescription.ForLoadedType.of(objectType)),
+                readValue,
+                MethodReturn.of(TypeDescription.ForLoadedType.of(valueType)));
+        StackManipulation.Size size = stackManipulation.apply(methodVisitor, implementationContext);
+        return new ByteCodeAppender.Size(size.getMaximalSize(), numLocals);
+      };
+    }
+  }
+
   // Create a new FieldValueSetter subclass.
   @SuppressWarnings("unchecked")
   public static <ObjectT, ValueT>
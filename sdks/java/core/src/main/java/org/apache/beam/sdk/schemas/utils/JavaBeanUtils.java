@@ -183,6 +183,12 @@ public class JavaBeanUtils {
             m.getDeclaringClass(),
             typeConversionsFactory.createTypeConversion(false).convert(typeInformation.getType()));
     builder = implementGetterMethods(builder, typeInformation, typeConversionsFactory);
+    builder =
+        ByteBuddyUtils.implementPrimitiveGetter(
+            builder,
+            m.getDeclaringClass(),
+            m.getReturnType(),
+            MethodInvocation.invoke(new ForLoadedMethod(m)));
     try {
       return builder
           .visit(new AsmVisitorWrapper.ForDeclaredMethods().writerFlags(ClassWriter.COMPUTE_FRAMES))
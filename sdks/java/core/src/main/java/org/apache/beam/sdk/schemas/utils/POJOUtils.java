@@ -303,6 +303,12 @@ public class POJOUtils {
             field.getDeclaringClass(),
             typeConversionsFactory.createTypeConversion(false).convert(typeInformation.getType()));
     builder = implementGetterMethods(builder, typeInformation, typeConversionsFactory);
+    builder =
+        ByteBuddyUtils.implementPrimitiveGetter(
+            builder,
+            field.getDeclaringClass(),
+            field.getType(),
+            FieldAccess.forField(new ForLoadedField(field)).read());
     try {
       return builder
           .visit(new AsmVisitorWrapper.ForDeclaredMethods().writerFlags(ClassWriter.COMPUTE_FRAMES))
@@ -816,6 +816,36 @@ public abstract class DoFn<InputT extends @Nullable Object, OutputT extends @Nul
   @Target(ElementType.METHOD)
   public @interface ProcessElement {}
 
+  /**
+   * Annotation for an optional method that processes several elements of a single window in one
+   * call. A {@link DoFn} with this method must still have a {@link ProcessElement} method.
+   *
+   * <p>Signature: {@code Iterable<TimestampedValue<OutputT>> processBatch(
+   * List<TimestampedValue<InputT>> elements, BoundedWindow window);}
+   *
+   * <p>Runners that support this method buffer contiguous input elements that are in the same
+   * single window and pane, and pass them to this method together instead of calling the {@link
+   * ProcessElement} method once per element. The returned values are output to the main output in
+   * the window and pane of the batch. Elements that cannot be batched are passed to the {@link
+   * ProcessElement} method, as are all elements on runners that do not support this method, so
+   * both methods must produce the same outputs. All batches are processed before the {@link
+   * FinishBundle} method is called.
+   *
+   * <p>The window parameter may be declared as a subtype of {@link BoundedWindow}, which must match
+   * the type of windows on the input {@link PCollection}.
+   *
+   * <p>This method may not be declared by a splittable {@link DoFn}, by a {@link DoFn} that uses
+   * state or timers, or by a {@link DoFn} whose {@link ProcessElement} method requires stable or
+   * time sorted input.
+   */
+  @Documented
+  @Retention(RetentionPolicy.RUNTIME)
+  @Target(ElementType.METHOD)
+  public @interface ProcessBatch {
+    /** The maximum number of elements passed to a single call of the method. */
+    int maxBatchSize() default 1000;
+  }
+
   /**
    * Parameter annotation for the input element for {@link ProcessElement}, {@link
    * GetInitialRestriction}, {@link GetSize}, {@link SplitRestriction}, {@link
@@ -590,6 +590,16 @@ public class ParDo {
     for (DoFnSignature.OnTimerFamilyMethod method : signature.onTimerFamilyMethods().values()) {
       validateWindowTypeForMethod(actualWindowT, method);
     }
+    DoFnSignature.ProcessBatchMethod processBatch = signature.processBatch();
+    if (processBatch != null) {
+      checkArgument(
+          processBatch.windowT().isSupertypeOf(actualWindowT),
+          "%s unable to provide window -- expected window type from parameter (%s) is not a "
+              + "supertype of actual window type assigned by windowing (%s)",
+          processBatch.targetMethod(),
+          processBatch.windowT(),
+          actualWindowT);
+    }
   }
 
   private static void validateWindowTypeForMethod(
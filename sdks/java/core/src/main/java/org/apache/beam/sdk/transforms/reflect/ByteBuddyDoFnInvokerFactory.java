@@ -483,6 +483,8 @@ class ByteBuddyDoFnInvokerFactory implements DoFnInvokerFactory {
             //   }
             .method(ElementMatchers.named("invokeProcessElement"))
             .intercept(new ProcessElementDelegation(clazzDescription, signature.processElement()))
+            .method(ElementMatchers.named("invokeProcessBatch"))
+            .intercept(processBatchDelegation(clazzDescription, signature.processBatch()))
 
             //   public invokeStartBundle(Context c) { delegate.<@StartBundle>(c); }
             //   ... etc ...
@@ -658,6 +660,15 @@ class ByteBuddyDoFnInvokerFactory implements DoFnInvokerFactory {
     }
   }
 
+  private static Implementation processBatchDelegation(
+      TypeDescription doFnType, DoFnSignature.@Nullable ProcessBatchMethod signature) {
+    if (signature == null) {
+      return ExceptionMethod.throwing(UnsupportedOperationException.class);
+    } else {
+      return new DowncastingParametersMethodDelegation(doFnType, signature.targetMethod());
+    }
+  }
+
   private static Implementation getSizeDelegation(
       TypeDescription doFnType, DoFnSignature.@Nullable GetSizeMethod signature) {
     if (signature == null) {
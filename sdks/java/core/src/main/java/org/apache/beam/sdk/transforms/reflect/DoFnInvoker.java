@@ -17,6 +17,7 @@
  */
 package org.apache.beam.sdk.transforms.reflect;
 
+import java.util.List;
 import org.apache.beam.sdk.annotations.Internal;
 import org.apache.beam.sdk.coders.Coder;
 import org.apache.beam.sdk.coders.CoderRegistry;
@@ -42,6 +43,7 @@ import org.apache.beam.sdk.transforms.splittabledofn.WatermarkEstimator;
 import org.apache.beam.sdk.transforms.windowing.BoundedWindow;
 import org.apache.beam.sdk.transforms.windowing.PaneInfo;
 import org.apache.beam.sdk.values.Row;
+import org.apache.beam.sdk.values.TimestampedValue;
 import org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.annotations.VisibleForTesting;
 import org.checkerframework.checker.nullness.qual.Nullable;
 import org.joda.time.Instant;
@@ -78,6 +80,17 @@ public interface DoFnInvoker<InputT, OutputT> {
    */
   DoFn.ProcessContinuation invokeProcessElement(ArgumentProvider<InputT, OutputT> extra);
 
+  /**
+   * Invoke the {@link DoFn.ProcessBatch} method on the bound {@link DoFn}.
+   *
+   * @param elements The elements of the batch, all of which are in {@code window}.
+   * @return The outputs returned by the underlying method.
+   * @throws UnsupportedOperationException if the bound {@link DoFn} has no {@link
+   *     DoFn.ProcessBatch} method.
+   */
+  Iterable<TimestampedValue<OutputT>> invokeProcessBatch(
+      List<TimestampedValue<InputT>> elements, BoundedWindow window);
+
   /** Invoke the appropriate {@link DoFn.OnTimer} method on the bound {@link DoFn}. */
   void invokeOnTimer(
       String timerId, String timerFamilyId, ArgumentProvider<InputT, OutputT> arguments);
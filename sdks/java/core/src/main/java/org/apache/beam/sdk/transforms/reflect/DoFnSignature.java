@@ -79,6 +79,10 @@ public abstract class DoFnSignature {
   @Pure
   public abstract ProcessElementMethod processElement();
 
+  /** Details about this {@link DoFn}'s {@link DoFn.ProcessBatch} method. */
+  @Pure
+  public abstract @Nullable ProcessBatchMethod processBatch();
+
   /** Details about the state cells that this {@link DoFn} declares. Immutable. */
   @Pure
   public abstract Map<String, StateDeclaration> stateDeclarations();
@@ -192,6 +196,8 @@ public abstract class DoFnSignature {
 
     abstract Builder setProcessElement(ProcessElementMethod processElement);
 
+    abstract Builder setProcessBatch(ProcessBatchMethod processBatch);
+
     abstract Builder setStartBundle(BundleMethod startBundle);
 
     abstract Builder setFinishBundle(BundleMethod finishBundle);
@@ -1512,6 +1518,29 @@ public abstract class DoFnSignature {
     }
   }
 
+  /** Describes a {@link DoFn.ProcessBatch} method. */
+  @AutoValue
+  public abstract static class ProcessBatchMethod implements DoFnMethod {
+    /** The annotated method itself. */
+    @Override
+    @Pure
+    public abstract Method targetMethod();
+
+    /** The type of window expected by the method. */
+    @Pure
+    public abstract TypeDescriptor<? extends BoundedWindow> windowT();
+
+    /** The maximum number of elements passed to a single call of the method. */
+    @Pure
+    public abstract int maxBatchSize();
+
+    @Pure
+    static ProcessBatchMethod create(
+        Method targetMethod, TypeDescriptor<? extends BoundedWindow> windowT, int maxBatchSize) {
+      return new AutoValue_DoFnSignature_ProcessBatchMethod(targetMethod, windowT, maxBatchSize);
+    }
+  }
+
   /** Describes a {@link DoFn.GetRestrictionCoder} method. */
   @AutoValue
   public abstract static class GetRestrictionCoderMethod implements DoFnMethod {
@@ -94,6 +94,7 @@ import org.apache.beam.sdk.util.common.ReflectHelpers;
 import org.apache.beam.sdk.values.KV;
 import org.apache.beam.sdk.values.PCollection;
 import org.apache.beam.sdk.values.Row;
+import org.apache.beam.sdk.values.TimestampedValue;
 import org.apache.beam.sdk.values.TypeDescriptor;
 import org.apache.beam.sdk.values.TypeDescriptors;
 import org.apache.beam.sdk.values.TypeParameter;
@@ -537,6 +538,8 @@ public class DoFnSignatures {
 
     Method processElementMethod =
         findAnnotatedMethod(errors, DoFn.ProcessElement.class, fnClass, true);
+    Method processBatchMethod =
+        findAnnotatedMethod(errors, DoFn.ProcessBatch.class, fnClass, false);
     Method startBundleMethod = findAnnotatedMethod(errors, DoFn.StartBundle.class, fnClass, false);
     Method finishBundleMethod =
         findAnnotatedMethod(errors, DoFn.FinishBundle.class, fnClass, false);
@@ -646,6 +649,27 @@ public class DoFnSignatures {
             processElementErrors, fnT, processElementMethod, inputT, outputT, fnContext);
     signatureBuilder.setProcessElement(processElement);
 
+    if (processBatchMethod != null) {
+      ErrorReporter processBatchErrors =
+          errors.forMethod(DoFn.ProcessBatch.class, processBatchMethod);
+      processBatchErrors.checkArgument(
+          !processElement.isSplittable(), "Must not be declared by a splittable DoFn");
+      processBatchErrors.checkArgument(
+          fnContext.getStateDeclarations().isEmpty()
+              && fnContext.getTimerDeclarations().isEmpty()
+              && fnContext.getTimerFamilyDeclarations().isEmpty(),
+          "Must not be declared by a DoFn that uses state or timers");
+      processBatchErrors.checkArgument(
+          !processElement.requiresStableInput() && !processElement.requiresTimeSortedInput(),
+          "Must not be declared by a DoFn that requires stable or time sorted input");
+      processBatchErrors.checkArgument(
+          processElement.extraParameters().stream()
+              .noneMatch(Parameter.SideInputParameter.class::isInstance),
+          "Must not be declared by a DoFn that reads side inputs");
+      signatureBuilder.setProcessBatch(
+          analyzeProcessBatchMethod(processBatchErrors, fnT, processBatchMethod, inputT, outputT));
+    }
+
     if (startBundleMethod != null) {
       ErrorReporter startBundleErrors = errors.forMethod(DoFn.StartBundle.class, startBundleMethod);
       signatureBuilder.setStartBundle(
@@ -1588,6 +1612,73 @@ public class DoFnSignatures {
     return annotations.stream().anyMatch(a -> a.annotationType().equals(annotation));
   }
 
+  @VisibleForTesting
+  static DoFnSignature.ProcessBatchMethod analyzeProcessBatchMethod(
+      ErrorReporter errors,
+      TypeDescriptor<? extends DoFn<?, ?>> fnT,
+      Method m,
+      TypeDescriptor<?> inputT,
+      TypeDescriptor<?> outputT) {
+    // Method is of the form:
+    // @ProcessBatch
+    // Iterable<TimestampedValue<OutputT>> processBatch(
+    //     List<TimestampedValue<InputT>> elements, BoundedWindow window);
+    for (Annotation[] paramAnnotations : m.getParameterAnnotations()) {
+      errors.checkArgument(
+          !hasAnnotation(DoFn.SideInput.class, Arrays.asList(paramAnnotations)),
+          "Side input parameters are not supported");
+    }
+    Type[] params = m.getGenericParameterTypes();
+    errors.checkArgument(
+        params.length == 2, "Must have exactly two arguments, the elements and their window");
+
+    TypeDescriptor<?> elementsT = fnT.resolveType(params[0]);
+    TypeDescriptor<?> expectedElementsT = timestampedValueListTypeOf(inputT);
+    errors.checkArgument(
+        elementsT.equals(expectedElementsT),
+        "First argument must have type %s, but has type %s",
+        format(expectedElementsT),
+        format(elementsT));
+
+    TypeDescriptor<?> windowT = fnT.resolveType(params[1]);
+    errors.checkArgument(
+        windowT.isSubtypeOf(TypeDescriptor.of(BoundedWindow.class)),
+        "Second argument must be a subtype of %s, but has type %s",
+        format(BoundedWindow.class),
+        format(windowT));
+
+    TypeDescriptor<?> returnT = fnT.resolveType(m.getGenericReturnType());
+    TypeDescriptor<?> expectedReturnT = timestampedValueIterableTypeOf(outputT);
+    errors.checkArgument(
+        returnT.isSubtypeOf(expectedReturnT),
+        "Must return %s, but returns %s",
+        format(expectedReturnT),
+        format(returnT));
+
+    int maxBatchSize = m.getAnnotation(DoFn.ProcessBatch.class).maxBatchSize();
+    errors.checkArgument(
+        maxBatchSize > 0, "maxBatchSize must be positive, but was %s", maxBatchSize);
+
+    return DoFnSignature.ProcessBatchMethod.create(
+        m, (TypeDescriptor<? extends BoundedWindow>) windowT, maxBatchSize);
+  }
+
+  /** Generates a {@link TypeDescriptor} for {@code List<TimestampedValue<T>>} given {@code T}. */
+  private static <T> TypeDescriptor<List<TimestampedValue<T>>> timestampedValueListTypeOf(
+      TypeDescriptor<T> elementT) {
+    return new TypeDescriptor<List<TimestampedValue<T>>>() {}.where(
+        new TypeParameter<T>() {}, elementT);
+  }
+
+  /**
+   * Generates a {@link TypeDescriptor} for {@code Iterable<TimestampedValue<T>>} given {@code T}.
+   */
+  private static <T> TypeDescriptor<Iterable<TimestampedValue<T>>> timestampedValueIterableTypeOf(
+      TypeDescriptor<T> elementT) {
+    return new TypeDescriptor<Iterable<TimestampedValue<T>>>() {}.where(
+        new TypeParameter<T>() {}, elementT);
+  }
+
   private static @Nullable TypeDescriptor<? extends BoundedWindow> getWindowType(
       TypeDescriptor<?> fnClass, Method method) {
     Type[] params = method.getGenericParameterTypes();
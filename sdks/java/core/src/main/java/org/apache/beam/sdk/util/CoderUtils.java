@@ -19,11 +19,15 @@ package org.apache.beam.sdk.util;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.lang.ref.SoftReference;
 import java.lang.reflect.ParameterizedType;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import org.apache.beam.sdk.coders.ByteBufferCoder;
 import org.apache.beam.sdk.coders.Coder;
 import org.apache.beam.sdk.coders.CoderException;
 import org.apache.beam.sdk.values.TypeDescriptor;
@@ -158,6 +162,97 @@ public final class CoderUtils {
     return stream;
   }
 
+  /**
+   * Encodes {@code value} into {@code buffer} at its current position, using the nested encoding
+   * of {@code coder}.
+   *
+   * <p>Uses {@link ByteBufferCoder#encode(Object, ByteBuffer)} if {@code coder} implements it, and
+   * otherwise encodes through a stream writing into the buffer.
+   *
+   * @throws java.nio.BufferOverflowException if the buffer does not have enough space remaining
+   */
+  @SuppressWarnings("unchecked")
+  public static <T> void encodeToByteBuffer(Coder<T> coder, T value, ByteBuffer buffer)
+      throws IOException {
+    if (coder instanceof ByteBufferCoder) {
+      ((ByteBufferCoder<T>) coder).encode(value, buffer);
+    } else {
+      coder.encode(value, asOutputStream(buffer));
+    }
+  }
+
+  /**
+   * Decodes a value from {@code buffer} starting at its current position, using the nested
+   * encoding of {@code coder}.
+   *
+   * <p>Uses {@link ByteBufferCoder#decode(ByteBuffer)} if {@code coder} implements it, and
+   * otherwise decodes through a stream reading from the buffer.
+   */
+  @SuppressWarnings("unchecked")
+  public static <T> T decodeFromByteBuffer(Coder<T> coder, ByteBuffer buffer) throws IOException {
+    if (coder instanceof ByteBufferCoder) {
+      try {
+        return ((ByteBufferCoder<T>) coder).decode(buffer);
+      } catch (BufferUnderflowException exn) {
+        throw new CoderException(new EOFException("Unexpected end of buffer"));
+      }
+    }
+    return coder.decode(asInputStream(buffer));
+  }
+
+  /**
+   * Returns an {@link OutputStream} that writes into {@code buffer} at its current position. Writes
+   * throw {@link java.nio.BufferOverflowException} once the buffer is full.
+   */
+  public static OutputStream asOutputStream(ByteBuffer buffer) {
+    return new OutputStream() {
+      @Override
+      public void write(int b) {
+        buffer.put((byte) b);
+      }
+
+      @Override
+      public void write(byte[] b, int off, int len) {
+        buffer.put(b, off, len);
+      }
+    };
+  }
+
+  /** Returns an {@link InputStream} that reads from {@code buffer} starting at its position. */
+  public static InputStream asInputStream(ByteBuffer buffer) {
+    return new InputStream() {
+      @Override
+      public int read() {
+        return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+      }
+
+      @Override
+      public int read(byte[] b, int off, int len) {
+        if (len == 0) {
+          return 0;
+        }
+        if (!buffer.hasRemaining()) {
+          return -1;
+        }
+        int read = Math.min(len, buffer.remaining());
+        buffer.get(b, off, read);
+        return read;
+      }
+
+      @Override
+      public long skip(long n) {
+        int skipped = (int) Math.min(Math.max(n, 0), buffer.remaining());
+        buffer.position(buffer.position() + skipped);
+        return skipped;
+      }
+
+      @Override
+      public int available() {
+        return buffer.remaining();
+      }
+    };
+  }
+
   /**
    * Clones the given value by encoding and then decoding it with the specified Coder.
    *
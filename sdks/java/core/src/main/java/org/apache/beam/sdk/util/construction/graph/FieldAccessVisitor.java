@@ -17,46 +17,213 @@
  */
 package org.apache.beam.sdk.util.construction.graph;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import org.apache.beam.sdk.Pipeline.PipelineVisitor;
 import org.apache.beam.sdk.runners.TransformHierarchy.Node;
 import org.apache.beam.sdk.schemas.FieldAccessDescriptor;
+import org.apache.beam.sdk.schemas.ProjectionProducer;
+import org.apache.beam.sdk.schemas.transforms.Filter;
+import org.apache.beam.sdk.schemas.transforms.Select;
 import org.apache.beam.sdk.transforms.DoFn;
+import org.apache.beam.sdk.transforms.Flatten;
 import org.apache.beam.sdk.transforms.PTransform;
 import org.apache.beam.sdk.transforms.ParDo;
 import org.apache.beam.sdk.transforms.ParDo.MultiOutput;
+import org.apache.beam.sdk.transforms.Reshuffle;
 import org.apache.beam.sdk.values.PCollection;
 import org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.collect.ImmutableList;
 import org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.collect.ImmutableMap;
 import org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.collect.Iterables;
+import org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.collect.Lists;
+import org.checkerframework.checker.nullness.qual.Nullable;
 
-/** Computes which Schema fields are (or conversely, are not) accessed in a pipeline. */
+/**
+ * Computes which Schema fields are (or conversely, are not) accessed in a pipeline.
+ *
+ * <p>Field access is propagated backwards through transforms that output their input elements
+ * unchanged: {@link Flatten}, {@link Reshuffle#viaRandomKey()} and the schema {@link Filter}. The
+ * fields accessed on the input of such a transform are the fields accessed on its output, plus any
+ * fields the transform reads itself. This lets a source learn the union of the fields read by all
+ * transforms downstream of it, not only by its direct consumers. All inputs of a {@link Flatten}
+ * are given the same field access, so that they are narrowed to the same schema.
+ *
+ * <p>This only applies where every input of the transform can be narrowed, that is, where it is
+ * produced by a {@link ProjectionProducer} applied to {@code PBegin}, possibly through other such
+ * transforms. {@link ProjectionPushdownOptimizer} then re-applies the transforms to their narrowed
+ * inputs.
+ *
+ * <p>{@link Select#fieldNames Select} reads the fields it selects, which it only resolves against
+ * its input schema when expanded, so its own ParDo declares access to all fields. The fields are
+ * therefore taken from the transform, which is not entered, and {@link ProjectionPushdownOptimizer}
+ * re-applies it to the narrowed input. A {@link Select} or {@link Filter} that refers to fields by
+ * id is treated as reading all fields, as the ids would refer to different fields of a narrowed
+ * schema.
+ */
 class FieldAccessVisitor extends PipelineVisitor.Defaults {
   private final Map<PCollection<?>, FieldAccessDescriptor> pCollectionFieldAccess = new HashMap<>();
 
+  // Transforms that output their input elements unchanged, in topological order.
+  private final List<PassThrough> passThroughs = new ArrayList<>();
+
+  // PCollections whose elements may be narrowed by projection pushdown.
+  private final Set<PCollection<?>> projectable = new HashSet<>();
+
+  /** A transform whose output elements are a subset of the elements of its inputs. */
+  private static class PassThrough {
+    private final Collection<PCollection<?>> inputs;
+    private final PCollection<?> output;
+    private final @Nullable FieldAccessDescriptor ownFieldAccess;
+    private final boolean projectable;
+
+    PassThrough(
+        Collection<PCollection<?>> inputs,
+        PCollection<?> output,
+        @Nullable FieldAccessDescriptor ownFieldAccess,
+        boolean projectable) {
+      this.inputs = inputs;
+      this.output = output;
+      this.ownFieldAccess = ownFieldAccess;
+      this.projectable = projectable;
+    }
+  }
+
   /** Returns a map from PCollection to fields accessed by that PCollection. */
   ImmutableMap<PCollection<?>, FieldAccessDescriptor> getPCollectionFieldAccess() {
-    return ImmutableMap.copyOf(pCollectionFieldAccess);
+    Map<PCollection<?>, FieldAccessDescriptor> fieldAccess = new HashMap<>(pCollectionFieldAccess);
+    // Visit pass-through transforms in reverse topological order, so that the field access of each
+    // output is complete before it is propagated to the inputs. Giving the inputs of a Flatten the
+    // same field access may add fields to PCollections that were already propagated, so repeat
+    // until nothing changes. Field access only grows, so this terminates.
+    boolean changed = true;
+    while (changed) {
+      changed = false;
+      for (PassThrough passThrough : Lists.reverse(passThroughs)) {
+        FieldAccessDescriptor outputFieldAccess = fieldAccess.get(passThrough.output);
+        if (outputFieldAccess == null) {
+          // Without known consumers of the output, conservatively assume all fields are accessed.
+          outputFieldAccess = FieldAccessDescriptor.withAllFields();
+        }
+        List<FieldAccessDescriptor> inputFieldAccess = new ArrayList<>();
+        if (!passThrough.projectable) {
+          // The output can't be narrowed along with the inputs, so it keeps all fields.
+          inputFieldAccess.add(FieldAccessDescriptor.withAllFields());
+        } else {
+          inputFieldAccess.add(outputFieldAccess);
+          if (passThrough.ownFieldAccess != null) {
+            inputFieldAccess.add(passThrough.ownFieldAccess);
+          }
+          for (PCollection<?> input : passThrough.inputs) {
+            FieldAccessDescriptor previous = fieldAccess.get(input);
+            if (previous != null) {
+              inputFieldAccess.add(previous);
+            }
+          }
+        }
+        for (PCollection<?> input : passThrough.inputs) {
+          FieldAccessDescriptor previous = fieldAccess.get(input);
+          // Union with the previous field access first, so that fields keep their order and an
+          // unchanged field access compares equal.
+          FieldAccessDescriptor updated =
+              previous == null
+                  ? FieldAccessDescriptor.union(inputFieldAccess)
+                  : FieldAccessDescriptor.union(
+                      Iterables.concat(ImmutableList.of(previous), inputFieldAccess));
+          if (!updated.equals(previous)) {
+            fieldAccess.put(input, updated);
+            changed = true;
+          }
+        }
+      }
+    }
+    return ImmutableMap.copyOf(fieldAccess);
+  }
+
+  @Override
+  public CompositeBehavior enterCompositeTransform(Node node) {
+    PTransform<?, ?> transform = node.getTransform();
+    // See ProjectionProducerVisitor.
+    if (!node.isRootNode()
+        && node.getInputs().isEmpty()
+        && transform instanceof ProjectionProducer
+        && ((ProjectionProducer<?>) transform).supportsProjectionPushdown()) {
+      projectable.addAll(node.getOutputs().values());
+    }
+    if (transform instanceof Reshuffle.ViaRandomKey) {
+      recordPassThrough(node, null);
+      return CompositeBehavior.DO_NOT_ENTER_TRANSFORM;
+    }
+    if (transform instanceof Filter.Inner) {
+      FieldAccessDescriptor filterFieldAccess =
+          ((Filter.Inner<?>) transform).getFieldAccessDescriptor();
+      if (referencesFieldsByName(filterFieldAccess)) {
+        PCollection<?> input = Iterables.getOnlyElement(node.getInputs().values());
+        recordPassThrough(node, filterFieldAccess.resolve(input.getSchema()));
+        return CompositeBehavior.DO_NOT_ENTER_TRANSFORM;
+      }
+    }
+    if (transform instanceof Select.Fields) {
+      FieldAccessDescriptor selectFieldAccess =
+          ((Select.Fields<?>) transform).getFieldAccessDescriptor();
+      if (referencesFieldsByName(selectFieldAccess)) {
+        PCollection<?> input = Iterables.getOnlyElement(node.getInputs().values());
+        addFieldAccess(
+            pCollectionFieldAccess, input, selectFieldAccess.resolve(input.getSchema()));
+        return CompositeBehavior.DO_NOT_ENTER_TRANSFORM;
+      }
+    }
+    return CompositeBehavior.ENTER_TRANSFORM;
   }
 
   @Override
   public void visitPrimitiveTransform(Node node) {
+    if (node.getTransform() instanceof Flatten.PCollections) {
+      recordPassThrough(node, null);
+      return;
+    }
     Map<PCollection<?>, FieldAccessDescriptor> currentFieldAccess = getFieldAccess(node);
     for (Entry<PCollection<?>, FieldAccessDescriptor> entry : currentFieldAccess.entrySet()) {
-      FieldAccessDescriptor previousFieldAccess = pCollectionFieldAccess.get(entry.getKey());
-      FieldAccessDescriptor newFieldAccess =
-          previousFieldAccess == null
-              ? entry.getValue()
-              : FieldAccessDescriptor.union(
-                  ImmutableList.of(previousFieldAccess, entry.getValue()));
-      pCollectionFieldAccess.put(entry.getKey(), newFieldAccess);
+      addFieldAccess(pCollectionFieldAccess, entry.getKey(), entry.getValue());
     }
   }
 
+  private void recordPassThrough(Node node, @Nullable FieldAccessDescriptor ownFieldAccess) {
+    Collection<PCollection<?>> inputs = node.getInputs().values();
+    PCollection<?> output = Iterables.getOnlyElement(node.getOutputs().values());
+    boolean outputProjectable = !inputs.isEmpty() && projectable.containsAll(inputs);
+    if (outputProjectable) {
+      projectable.add(output);
+    }
+    passThroughs.add(new PassThrough(inputs, output, ownFieldAccess, outputProjectable));
+  }
+
+  private static boolean referencesFieldsByName(FieldAccessDescriptor fieldAccess) {
+    return Stream.concat(
+            fieldAccess.getFieldsAccessed().stream(),
+            fieldAccess.getNestedFieldsAccessed().keySet().stream())
+        .allMatch(field -> field.getFieldName() != null);
+  }
+
+  private static void addFieldAccess(
+      Map<PCollection<?>, FieldAccessDescriptor> fieldAccess,
+      PCollection<?> pCollection,
+      FieldAccessDescriptor newFieldAccess) {
+    FieldAccessDescriptor previousFieldAccess = fieldAccess.get(pCollection);
+    fieldAccess.put(
+        pCollection,
+        previousFieldAccess == null
+            ? newFieldAccess
+            : FieldAccessDescriptor.union(ImmutableList.of(previousFieldAccess, newFieldAccess)));
+  }
+
   private static Map<PCollection<?>, FieldAccessDescriptor> getFieldAccess(Node node) {
     PTransform<?, ?> transform = node.getTransform();
     HashMap<PCollection<?>, FieldAccessDescriptor> access = new HashMap<>();
@@ -0,0 +1,119 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.util.construction.graph;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.apache.beam.sdk.Pipeline.PipelineVisitor;
+import org.apache.beam.sdk.runners.TransformHierarchy.Node;
+import org.apache.beam.sdk.schemas.transforms.Filter;
+import org.apache.beam.sdk.schemas.transforms.Select;
+import org.apache.beam.sdk.transforms.Flatten;
+import org.apache.beam.sdk.transforms.PTransform;
+import org.apache.beam.sdk.transforms.ParDo;
+import org.apache.beam.sdk.transforms.Reshuffle;
+import org.apache.beam.sdk.values.PCollection;
+
+/**
+ * A {@link PipelineVisitor} to find, in topological order, the transforms that consume
+ * PCollections whose elements were narrowed by projection pushdown.
+ *
+ * <p>A {@link ParDo#of single-output ParDo} and the transforms recognized by {@link
+ * FieldAccessVisitor}, {@link Select}, {@link Filter} and {@link Reshuffle#viaRandomKey()}, are
+ * found as a whole, other transforms by their primitives. The outputs of transforms that output
+ * their input elements unchanged are narrowed as well, so their consumers are found too.
+ */
+class NarrowedConsumerVisitor extends PipelineVisitor.Defaults {
+  private final Set<PCollection<?>> narrowed;
+  private final List<Consumer> consumers = new ArrayList<>();
+
+  /** An application of a transform with a narrowed input. */
+  static class Consumer {
+    private final String fullName;
+    private final PTransform<?, ?> transform;
+    private final boolean passThrough;
+
+    Consumer(String fullName, PTransform<?, ?> transform, boolean passThrough) {
+      this.fullName = fullName;
+      this.transform = transform;
+      this.passThrough = passThrough;
+    }
+
+    String getFullName() {
+      return fullName;
+    }
+
+    PTransform<?, ?> getTransform() {
+      return transform;
+    }
+
+    /** Whether the transform outputs its input elements unchanged. */
+    boolean isPassThrough() {
+      return passThrough;
+    }
+  }
+
+  /** @param narrowed The PCollections whose elements were narrowed. */
+  NarrowedConsumerVisitor(Collection<PCollection<?>> narrowed) {
+    this.narrowed = new HashSet<>(narrowed);
+  }
+
+  /** Returns the consumers of narrowed PCollections, in topological order. */
+  List<Consumer> getConsumers() {
+    return Collections.unmodifiableList(consumers);
+  }
+
+  @Override
+  public CompositeBehavior enterCompositeTransform(Node node) {
+    if (!consumesNarrowed(node)) {
+      return CompositeBehavior.ENTER_TRANSFORM;
+    }
+    PTransform<?, ?> transform = node.getTransform();
+    if (transform instanceof Reshuffle.ViaRandomKey || transform instanceof Filter.Inner) {
+      record(node, true);
+      return CompositeBehavior.DO_NOT_ENTER_TRANSFORM;
+    }
+    if (transform instanceof Select.Fields || transform instanceof ParDo.SingleOutput) {
+      record(node, false);
+      return CompositeBehavior.DO_NOT_ENTER_TRANSFORM;
+    }
+    return CompositeBehavior.ENTER_TRANSFORM;
+  }
+
+  @Override
+  public void visitPrimitiveTransform(Node node) {
+    if (consumesNarrowed(node)) {
+      record(node, node.getTransform() instanceof Flatten.PCollections);
+    }
+  }
+
+  private boolean consumesNarrowed(Node node) {
+    return node.getInputs().values().stream().anyMatch(narrowed::contains);
+  }
+
+  private void record(Node node, boolean passThrough) {
+    consumers.add(new Consumer(node.getFullName(), node.getTransform(), passThrough));
+    if (passThrough) {
+      narrowed.addAll(node.getOutputs().values());
+    }
+  }
+}
@@ -17,10 +17,9 @@
  */
 package org.apache.beam.sdk.util.construction.graph;
 
-import java.util.AbstractMap.SimpleEntry;
+import java.util.IdentityHashMap;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.stream.Collectors;
 import org.apache.beam.sdk.Pipeline.PipelineVisitor;
 import org.apache.beam.sdk.runners.TransformHierarchy.Node;
 import org.apache.beam.sdk.schemas.FieldAccessDescriptor;
@@ -48,10 +47,10 @@ class PCollectionOutputTagVisitor extends PipelineVisitor.Defaults {
   private final Map<
           ProjectionProducer<PTransform<?, ?>>, Map<PCollection<?>, FieldAccessDescriptor>>
       pCollFieldAccess;
-  private final ImmutableMap.Builder<
+  private final Map<
           ProjectionProducer<PTransform<?, ?>>,
           ImmutableMap.Builder<TupleTag<?>, FieldAccessDescriptor>>
-      tagFieldAccess = ImmutableMap.builder();
+      tagFieldAccess = new IdentityHashMap<>();
 
   PCollectionOutputTagVisitor(
       Map<ProjectionProducer<PTransform<?, ?>>, Map<PCollection<?>, FieldAccessDescriptor>>
@@ -61,9 +60,15 @@ class PCollectionOutputTagVisitor extends PipelineVisitor.Defaults {
 
   Map<ProjectionProducer<PTransform<?, ?>>, Map<TupleTag<?>, FieldAccessDescriptor>>
       getTaggedFieldAccess() {
-    return tagFieldAccess.build().entrySet().stream()
-        .map(e -> new SimpleEntry<>(e.getKey(), e.getValue().build()))
-        .collect(Collectors.toMap(Entry::getKey, Entry::getValue));
+    Map<ProjectionProducer<PTransform<?, ?>>, Map<TupleTag<?>, FieldAccessDescriptor>> result =
+        new IdentityHashMap<>();
+    for (Entry<
+            ProjectionProducer<PTransform<?, ?>>,
+            ImmutableMap.Builder<TupleTag<?>, FieldAccessDescriptor>>
+        entry : tagFieldAccess.entrySet()) {
+      result.put(entry.getKey(), entry.getValue().build());
+    }
+    return result;
   }
 
   @Override
@@ -79,13 +84,9 @@ class PCollectionOutputTagVisitor extends PipelineVisitor.Defaults {
       TupleTag<?> tag = outputs.get(value);
       Preconditions.checkArgumentNotNull(
           tag, "PCollection %s not found in outputs of producer %s", value, producer);
-      ImmutableMap.Builder<TupleTag<?>, FieldAccessDescriptor> tagEntryBuilder =
-          tagFieldAccess.build().get(entry.getKey());
-      if (tagEntryBuilder == null) {
-        tagEntryBuilder = ImmutableMap.builder();
-        tagFieldAccess.put(entry.getKey(), tagEntryBuilder);
-      }
-      tagEntryBuilder.put(tag, fieldAccess);
+      tagFieldAccess
+          .computeIfAbsent(entry.getKey(), unused -> ImmutableMap.builder())
+          .put(tag, fieldAccess);
     }
   }
 }
@@ -17,6 +17,8 @@
  */
 package org.apache.beam.sdk.util.construction.graph;
 
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.Map;
 import org.apache.beam.sdk.Pipeline.PipelineVisitor;
 import org.apache.beam.sdk.runners.TransformHierarchy.Node;
@@ -29,9 +31,11 @@ import org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.collect.Immuta
 /** A {@link PipelineVisitor} to discover projection pushdown opportunities. */
 class ProjectionProducerVisitor extends PipelineVisitor.Defaults {
   private final Map<PCollection<?>, FieldAccessDescriptor> pCollectionFieldAccess;
-  private final ImmutableMap.Builder<
+  // Keyed by identity, as sources that are equal but applied separately may feed the same
+  // Flatten.
+  private final Map<
           ProjectionProducer<PTransform<?, ?>>, Map<PCollection<?>, FieldAccessDescriptor>>
-      pushdownOpportunities = ImmutableMap.builder();
+      pushdownOpportunities = new IdentityHashMap<>();
 
   /**
    * @param pCollectionFieldAccess A map from PCollection to the fields the pipeline accesses on
@@ -49,7 +53,7 @@ class ProjectionProducerVisitor extends PipelineVisitor.Defaults {
    */
   Map<ProjectionProducer<PTransform<?, ?>>, Map<PCollection<?>, FieldAccessDescriptor>>
       getPushdownOpportunities() {
-    return pushdownOpportunities.build();
+    return Collections.unmodifiableMap(pushdownOpportunities);
   }
 
   @Override
@@ -81,7 +85,14 @@ class ProjectionProducerVisitor extends PipelineVisitor.Defaults {
     if (localOpportunities.isEmpty()) {
       return CompositeBehavior.ENTER_TRANSFORM;
     }
-    pushdownOpportunities.put(pushdownProjector, localOpportunities);
+    pushdownOpportunities.merge(
+        pushdownProjector,
+        localOpportunities,
+        (previous, current) ->
+            ImmutableMap.<PCollection<?>, FieldAccessDescriptor>builder()
+                .putAll(previous)
+                .putAll(current)
+                .build());
     // If there are nested PushdownProjector implementations, apply only the outermost one.
     return CompositeBehavior.DO_NOT_ENTER_TRANSFORM;
   }
@@ -17,9 +17,14 @@
  */
 package org.apache.beam.sdk.util.construction.graph;
 
-import java.util.AbstractMap.SimpleEntry;
+import static org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.base.Preconditions.checkState;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 import java.util.stream.Collectors;
 import org.apache.beam.sdk.Pipeline;
 import org.apache.beam.sdk.runners.AppliedPTransform;
@@ -28,12 +33,19 @@ import org.apache.beam.sdk.runners.PTransformOverride;
 import org.apache.beam.sdk.runners.PTransformOverrideFactory;
 import org.apache.beam.sdk.schemas.FieldAccessDescriptor;
 import org.apache.beam.sdk.schemas.ProjectionProducer;
+import org.apache.beam.sdk.schemas.transforms.Select;
+import org.apache.beam.sdk.transforms.Create;
+import org.apache.beam.sdk.transforms.Flatten;
 import org.apache.beam.sdk.transforms.PTransform;
 import org.apache.beam.sdk.util.Preconditions;
+import org.apache.beam.sdk.util.construction.ReplacementOutputs;
 import org.apache.beam.sdk.values.PBegin;
 import org.apache.beam.sdk.values.PCollection;
+import org.apache.beam.sdk.values.PCollectionList;
+import org.apache.beam.sdk.values.PCollectionTuple;
+import org.apache.beam.sdk.values.PInput;
 import org.apache.beam.sdk.values.POutput;
-import org.apache.beam.sdk.values.TaggedPValue;
+import org.apache.beam.sdk.values.PValues;
 import org.apache.beam.sdk.values.TupleTag;
 import org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.collect.ImmutableList;
 import org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.collect.Iterables;
@@ -54,6 +66,16 @@ public class ProjectionPushdownOptimizer {
    * calling {@link ProjectionProducer#actuateProjectionPushdown(Map)} on that producer with those
    * PCollections/fields.
    *
+   * <p>Consumers that don't declare their field access are assumed to access all fields. Field
+   * access is traced through {@link Select} and through transforms that output their input elements
+   * unchanged, such as {@link Flatten}, see {@link FieldAccessVisitor}.
+   *
+   * <p>The narrowed outputs of the replacement are new PCollections, with coders of the narrowed
+   * schema. The consumers of the original outputs are re-applied to them, in topological order, so
+   * that their own outputs are new PCollections as well, and so on through the transforms that
+   * output their input elements unchanged. The original PCollections are then left as the outputs
+   * of empty {@link Create} transforms without consumers.
+   *
    * <p>Currently only supports pushdown on {@link ProjectionProducer} instances that are applied
    * directly to {@link PBegin} (https://github.com/apache/beam/issues/21359).
    */
@@ -78,7 +100,8 @@ public class ProjectionPushdownOptimizer {
         taggedFieldAccess = outputTagVisitor.getTaggedFieldAccess();
 
     // For each eligible transform, replace it with a modified transform that omits the unused
-    // fields.
+    // fields. Maps each original output that was narrowed to the PCollection that replaces it.
+    Map<PCollection<?>, PCollection<?>> substitutes = new HashMap<>();
     for (Entry<ProjectionProducer<PTransform<?, ?>>, Map<TupleTag<?>, FieldAccessDescriptor>>
         entry : taggedFieldAccess.entrySet()) {
       for (Entry<TupleTag<?>, FieldAccessDescriptor> outputFields : entry.getValue().entrySet()) {
@@ -90,9 +113,41 @@ public class ProjectionPushdownOptimizer {
       }
       PTransformMatcher matcher = application -> application.getTransform() == entry.getKey();
       PushdownOverrideFactory<?, ?> overrideFactory =
-          new PushdownOverrideFactory<>(entry.getValue());
+          new PushdownOverrideFactory<>(entry.getValue(), substitutes);
       pipeline.replaceAll(ImmutableList.of(PTransformOverride.of(matcher, overrideFactory)));
     }
+    if (substitutes.isEmpty()) {
+      return;
+    }
+
+    // Re-apply the consumers of the narrowed outputs to their substitutes, so that the outputs of
+    // the consumers and the PCollections within them get coders of the narrowed schema.
+    NarrowedConsumerVisitor consumerVisitor = new NarrowedConsumerVisitor(substitutes.keySet());
+    pipeline.traverseTopologically(consumerVisitor);
+    for (NarrowedConsumerVisitor.Consumer consumer : consumerVisitor.getConsumers()) {
+      LOG.info(
+          "Re-applying transform {} to inputs with reduced field sets", consumer.getFullName());
+      PTransformMatcher matcher =
+          application ->
+              application.getTransform() == consumer.getTransform()
+                  && application.getFullName().equals(consumer.getFullName());
+      pipeline.replaceAll(
+          ImmutableList.of(
+              PTransformOverride.of(
+                  matcher, new ReapplyOverrideFactory<>(consumer.isPassThrough(), substitutes))));
+    }
+  }
+
+  private static PCollection<?> substitute(
+      PCollection<?> original, Map<PCollection<?>, PCollection<?>> substitutes) {
+    PCollection<?> substitute = substitutes.get(original);
+    return substitute == null ? original : substitute;
+  }
+
+  /** Applies an empty transform that stands in for the producer of a substituted PCollection. */
+  private static <T> PCollection<T> applyStandIn(
+      PBegin begin, String name, PCollection<T> original) {
+    return begin.apply(name, Create.empty(original.getCoder()));
   }
 
   // TODO(https://github.com/apache/beam/issues/21359) Support inputs other than PBegin.
@@ -100,9 +155,13 @@ public class ProjectionPushdownOptimizer {
           OutputT extends POutput, TransformT extends PTransform<PBegin, OutputT>>
       implements PTransformOverrideFactory<PBegin, OutputT, TransformT> {
     private final Map<TupleTag<?>, FieldAccessDescriptor> fields;
+    private final Map<PCollection<?>, PCollection<?>> substitutes;
 
-    PushdownOverrideFactory(Map<TupleTag<?>, FieldAccessDescriptor> fields) {
+    PushdownOverrideFactory(
+        Map<TupleTag<?>, FieldAccessDescriptor> fields,
+        Map<PCollection<?>, PCollection<?>> substitutes) {
       this.fields = fields;
+      this.substitutes = substitutes;
     }
 
     @Override
@@ -110,37 +169,181 @@ public class ProjectionPushdownOptimizer {
         AppliedPTransform<PBegin, OutputT, TransformT> transform) {
       return PTransformReplacement.of(
           transform.getPipeline().begin(),
-          ((ProjectionProducer<PTransform<PBegin, OutputT>>) transform.getTransform())
-              .actuateProjectionPushdown(fields));
+          new Projected<>(
+              ((ProjectionProducer<PTransform<PBegin, OutputT>>) transform.getTransform())
+                  .actuateProjectionPushdown(fields),
+              transform.getOutputs(),
+              fields.keySet(),
+              substitutes));
     }
 
     @Override
     public Map<PCollection<?>, ReplacementOutput> mapOutputs(
         Map<TupleTag<?>, PCollection<?>> outputs, OutputT newOutput) {
-      return outputs.entrySet().stream()
-          .map(
-              oldOutput -> {
-                PCollection<?> newOutputPColl;
-                if (newOutput.expand().size() == 1) {
-                  // If output is a single PCollection, use it directly.
-                  newOutputPColl =
-                      (PCollection<?>) Iterables.getOnlyElement(newOutput.expand().values());
-                } else {
-                  // Output is a PCollectionTuple, look up component PCollections using the original
-                  // output tags.
-                  newOutputPColl =
-                      Preconditions.checkArgumentNotNull(
-                          (PCollection<?>) newOutput.expand().get(oldOutput.getKey()),
-                          "No PCollection found for output tag %s. Were output tags changed in actuateProjectionPushdown?",
-                          oldOutput.getKey());
-                }
-                return new SimpleEntry<>(
-                    newOutputPColl,
-                    ReplacementOutput.of(
-                        TaggedPValue.ofExpandedValue(oldOutput.getValue()),
-                        TaggedPValue.ofExpandedValue(newOutputPColl)));
-              })
-          .collect(Collectors.toMap(Entry::getKey, Entry::getValue));
+      return outputs.size() == 1
+          ? ReplacementOutputs.singleton(outputs, newOutput)
+          : ReplacementOutputs.tagged(outputs, newOutput);
+    }
+  }
+
+  /**
+   * Applies a projected {@link ProjectionProducer}, see {@link PushdownOverrideFactory}. Its
+   * narrowed outputs are recorded as substitutes for the original outputs, which are given empty
+   * stand-ins, as the original PCollections keep the coders of the full schema.
+   */
+  private static class Projected<OutputT extends POutput> extends PTransform<PBegin, OutputT> {
+    private final PTransform<PBegin, OutputT> projected;
+    private final Map<TupleTag<?>, PCollection<?>> originalOutputs;
+    private final Set<TupleTag<?>> narrowedTags;
+    private final Map<PCollection<?>, PCollection<?>> substitutes;
+
+    Projected(
+        PTransform<PBegin, OutputT> projected,
+        Map<TupleTag<?>, PCollection<?>> originalOutputs,
+        Set<TupleTag<?>> narrowedTags,
+        Map<PCollection<?>, PCollection<?>> substitutes) {
+      this.projected = projected;
+      this.originalOutputs = originalOutputs;
+      this.narrowedTags = narrowedTags;
+      this.substitutes = substitutes;
+    }
+
+    @Override
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public OutputT expand(PBegin input) {
+      Map<TupleTag<?>, PCollection<?>> projectedOutputs =
+          PValues.expandOutput(input.apply("Projected", projected));
+      PCollectionTuple outputs = PCollectionTuple.empty(input.getPipeline());
+      for (Entry<TupleTag<?>, PCollection<?>> original : originalOutputs.entrySet()) {
+        PCollection<?> projectedOutput;
+        if (projectedOutputs.size() == 1) {
+          // If output is a single PCollection, use it directly.
+          projectedOutput = Iterables.getOnlyElement(projectedOutputs.values());
+        } else {
+          // Output is a PCollectionTuple, look up component PCollections using the original
+          // output tags.
+          projectedOutput =
+              Preconditions.checkArgumentNotNull(
+                  projectedOutputs.get(original.getKey()),
+                  "No PCollection found for output tag %s. Were output tags changed in actuateProjectionPushdown?",
+                  original.getKey());
+        }
+        PCollection<?> output = projectedOutput;
+        if (narrowedTags.contains(original.getKey())) {
+          substitutes.put(original.getValue(), projectedOutput);
+          String name =
+              originalOutputs.size() == 1 ? "Empty" : "Empty " + original.getKey().getId();
+          output = applyStandIn(input, name, original.getValue());
+        }
+        outputs = outputs.and((TupleTag) original.getKey(), (PCollection) output);
+      }
+      if (originalOutputs.size() == 1) {
+        return (OutputT) Iterables.getOnlyElement(outputs.getAll().values());
+      }
+      return (OutputT) outputs;
+    }
+  }
+
+  /**
+   * Re-applies a transform to the substitutes of its narrowed inputs. The original transform is
+   * nested within a new composite of the same name, as a replacement must be a different
+   * transform.
+   */
+  private static class ReapplyOverrideFactory<InputT extends PInput, OutputT extends POutput>
+      implements PTransformOverrideFactory<InputT, OutputT, PTransform<InputT, OutputT>> {
+    private final boolean passThrough;
+    private final Map<PCollection<?>, PCollection<?>> substitutes;
+
+    ReapplyOverrideFactory(boolean passThrough, Map<PCollection<?>, PCollection<?>> substitutes) {
+      this.passThrough = passThrough;
+      this.substitutes = substitutes;
+    }
+
+    @Override
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public PTransformReplacement<InputT, OutputT> getReplacementTransform(
+        AppliedPTransform<InputT, OutputT, PTransform<InputT, OutputT>> transform) {
+      List<PCollection<?>> inputs =
+          transform.getMainInputs().values().stream()
+              .map(input -> substitute(input, substitutes))
+              .collect(Collectors.toList());
+      InputT input;
+      if (transform.getTransform() instanceof Flatten.PCollections) {
+        checkState(
+            inputs.stream().map(PCollection::getCoder).distinct().count() <= 1,
+            "Inputs of %s were narrowed to different coders",
+            transform.getFullName());
+        input = (InputT) PCollectionList.of((Collection) inputs);
+      } else {
+        input = (InputT) Iterables.getOnlyElement(inputs);
+      }
+      String fullName = transform.getFullName();
+      String name = fullName.substring(fullName.lastIndexOf('/') + 1);
+      PTransform<InputT, OutputT> replacement;
+      if (passThrough) {
+        replacement =
+            new ReapplyPassThrough(
+                name,
+                transform.getTransform(),
+                Iterables.getOnlyElement(transform.getOutputs().values()),
+                substitutes);
+      } else {
+        replacement = new Reapply<>(name, transform.getTransform());
+      }
+      return PTransformReplacement.of(input, replacement);
+    }
+
+    @Override
+    public Map<PCollection<?>, ReplacementOutput> mapOutputs(
+        Map<TupleTag<?>, PCollection<?>> outputs, OutputT newOutput) {
+      return outputs.size() == 1
+          ? ReplacementOutputs.singleton(outputs, newOutput)
+          : ReplacementOutputs.tagged(outputs, newOutput);
+    }
+  }
+
+  /** Applies a transform as the only part of a composite, see {@link ReapplyOverrideFactory}. */
+  private static class Reapply<InputT extends PInput, OutputT extends POutput>
+      extends PTransform<InputT, OutputT> {
+    private final PTransform<InputT, OutputT> transform;
+
+    Reapply(String name, PTransform<InputT, OutputT> transform) {
+      super(name);
+      this.transform = transform;
+    }
+
+    @Override
+    public OutputT expand(InputT input) {
+      return Pipeline.applyTransform(getName(), input, transform);
+    }
+  }
+
+  /**
+   * Applies a transform that outputs its input elements unchanged, and records its output as the
+   * substitute for the original output, which is given an empty stand-in. See {@link
+   * ReapplyOverrideFactory}.
+   */
+  private static class ReapplyPassThrough<InputT extends PInput, T>
+      extends PTransform<InputT, PCollection<T>> {
+    private final PTransform<InputT, PCollection<T>> transform;
+    private final PCollection<T> original;
+    private final Map<PCollection<?>, PCollection<?>> substitutes;
+
+    ReapplyPassThrough(
+        String name,
+        PTransform<InputT, PCollection<T>> transform,
+        PCollection<T> original,
+        Map<PCollection<?>, PCollection<?>> substitutes) {
+      super(name);
+      this.transform = transform;
+      this.original = original;
+      this.substitutes = substitutes;
+    }
+
+    @Override
+    public PCollection<T> expand(InputT input) {
+      substitutes.put(original, Pipeline.applyTransform(getName(), input, transform));
+      return applyStandIn(PBegin.in(input.getPipeline()), "Empty", original);
     }
   }
 }
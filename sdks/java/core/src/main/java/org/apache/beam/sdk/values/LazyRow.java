@@ -0,0 +1,140 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.values;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.UUID;
+import org.apache.beam.sdk.annotations.Internal;
+import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.schemas.Schema;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * A concrete subclass of {@link Row} that keeps the encoded form of the row and decodes each field
+ * only when it is first accessed.
+ *
+ * <p>The row holds the encoded bytes together with the offset of every field within them. Fields
+ * that are never read are never decoded, and a row that is re-encoded with a coder for the same
+ * schema is written out by copying the original bytes.
+ *
+ * <p>Instances are created by {@link org.apache.beam.sdk.coders.RowCoder#withLazyDecoding()}.
+ */
+@Internal
+@SuppressWarnings("rawtypes")
+public class LazyRow extends Row {
+  // Offset used for fields that are null in the encoded row.
+  public static final int NULL_OFFSET = -1;
+
+  private static final Object NOT_DECODED = new Object();
+
+  private final byte[] encoded;
+  private final int[] fieldOffsets;
+  private final Coder[] fieldCoders;
+  private final @Nullable Object[] values;
+  private final boolean reencodable;
+
+  /**
+   * Creates a lazily decoded row.
+   *
+   * @param schema the schema of the row
+   * @param encoded the encoded row
+   * @param fieldOffsets the offset into {@code encoded} for each field, in row order, or {@link
+   *     #NULL_OFFSET} if the field is null
+   * @param fieldCoders non-nullable coders for each field, in row order
+   * @param decodedValues values that were already decoded while scanning the row, in row order.
+   *     Entries are {@code null} for fields that are still to be decoded.
+   * @param reencodable whether {@code encoded} is exactly the encoding of this row for the
+   *     schema's current encoding positions
+   */
+  public LazyRow(
+      Schema schema,
+      byte[] encoded,
+      int[] fieldOffsets,
+      Coder[] fieldCoders,
+      @Nullable Object[] decodedValues,
+      boolean reencodable) {
+    super(schema);
+    this.encoded = encoded;
+    this.fieldOffsets = fieldOffsets;
+    this.fieldCoders = fieldCoders;
+    this.values = decodedValues;
+    this.reencodable = reencodable;
+    for (int i = 0; i < values.length; ++i) {
+      if (values[i] == null && fieldOffsets[i] != NULL_OFFSET) {
+        values[i] = NOT_DECODED;
+      }
+    }
+  }
+
+  @Override
+  @SuppressWarnings({"TypeParameterUnusedInFormals", "unchecked"})
+  public <T extends @Nullable Object> T getValue(int fieldIdx) {
+    if (fieldIdx >= values.length) {
+      throw new IllegalArgumentException("No field at index " + fieldIdx);
+    }
+    @Nullable Object value = values[fieldIdx];
+    if (value == NOT_DECODED) {
+      value = decodeField(fieldIdx);
+      values[fieldIdx] = value;
+    }
+    return (T) value;
+  }
+
+  private Object decodeField(int fieldIdx) {
+    int offset = fieldOffsets[fieldIdx];
+    try {
+      return fieldCoders[fieldIdx].decode(
+          new ByteArrayInputStream(encoded, offset, encoded.length - offset));
+    } catch (IOException e) {
+      throw new UncheckedIOException(
+          "Unable to decode field " + getSchema().getField(fieldIdx).getName(), e);
+    }
+  }
+
+  @Override
+  public int getFieldCount() {
+    return values.length;
+  }
+
+  @Override
+  public List<@Nullable Object> getValues() {
+    List<@Nullable Object> result = new ArrayList<>(values.length);
+    for (int i = 0; i < values.length; ++i) {
+      result.add(getValue(i));
+    }
+    return result;
+  }
+
+  /**
+   * Returns true if {@link #getEncoded()} can be written out as-is by a coder for {@code schema}.
+   */
+  public boolean isEncodedWith(Schema schema) {
+    UUID uuid = getSchema().getUUID();
+    return reencodable && uuid != null && Objects.equals(uuid, schema.getUUID());
+  }
+
+  /** Returns the encoded bytes backing this row. The returned array must not be modified. */
+  public byte[] getEncoded() {
+    return encoded;
+  }
+}
@@ -0,0 +1,736 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.values;
+
+import static org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.base.Preconditions.checkArgument;
+import static org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.base.Preconditions.checkState;
+
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import org.apache.beam.sdk.schemas.Schema;
+import org.apache.beam.sdk.schemas.Schema.Field;
+import org.apache.beam.sdk.schemas.Schema.TypeName;
+import org.apache.beam.sdk.transforms.SerializableFunction;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * A columnar batch of {@link Row}s that share a single {@link Schema}.
+ *
+ * <p>Each field of the schema is stored in its own {@link ColumnVector}. Integral fields ({@code
+ * BYTE}, {@code INT16}, {@code INT32}, {@code INT64}) are stored in a {@code long[]}, floating
+ * point fields in a {@code double[]} and boolean fields in a bitmap, so that transforms operating
+ * on a whole batch avoid boxing every value. All other field types are stored as objects. Nulls are
+ * tracked in a per-column bitmap.
+ *
+ * <p>A {@link RowBatch} is immutable once built. {@link #getRow(int)} returns a lightweight {@link
+ * Row} view over the batch, so per-row consumers can fall back to the existing {@link Row} API
+ * without materializing a copy of the values.
+ *
+ * <p>Batches are encoded column by column with {@link org.apache.beam.sdk.coders.RowBatchCoder},
+ * and can be projected without copying by {@link
+ * org.apache.beam.sdk.schemas.transforms.Select.Fields#onBatches()}.
+ */
+@SuppressWarnings({
+  "nullness", // TODO(https://github.com/apache/beam/issues/20497)
+})
+public final class RowBatch implements Iterable<Row>, Serializable {
+  private final Schema schema;
+  private final int rowCount;
+  private final ColumnVector[] columns;
+
+  private RowBatch(Schema schema, int rowCount, ColumnVector[] columns) {
+    this.schema = schema;
+    this.rowCount = rowCount;
+    this.columns = columns;
+  }
+
+  /** Returns a {@link Builder} for a batch with the given schema. */
+  public static Builder builder(Schema schema) {
+    return new Builder(schema, Builder.DEFAULT_CAPACITY);
+  }
+
+  /** Returns a {@link Builder} for a batch with the given schema and initial row capacity. */
+  public static Builder builder(Schema schema, int initialCapacity) {
+    return new Builder(schema, initialCapacity);
+  }
+
+  /**
+   * Returns a batch of {@code rowCount} rows made of the given columns, one for each field of the
+   * schema in order. The columns are shared with the batch and not copied.
+   */
+  public static RowBatch ofColumns(Schema schema, int rowCount, ColumnVector... columns) {
+    checkArgument(
+        columns.length == schema.getFieldCount(),
+        "Got %s columns but batch schema has %s fields",
+        columns.length,
+        schema.getFieldCount());
+    for (int i = 0; i < columns.length; ++i) {
+      TypeName typeName = schema.getField(i).getType().getTypeName();
+      checkArgument(
+          columns[i].getTypeName() == typeName,
+          "Column %s is of type %s but its field is of type %s",
+          i,
+          columns[i].getTypeName(),
+          typeName);
+      checkArgument(
+          columns[i].capacity() >= rowCount,
+          "Column %s has %s values but the batch has %s rows",
+          i,
+          columns[i].capacity(),
+          rowCount);
+    }
+    return new RowBatch(schema, rowCount, columns);
+  }
+
+  /** Builds a {@link RowBatch} containing all of the given rows. */
+  public static RowBatch of(Schema schema, Iterable<Row> rows) {
+    Builder builder = builder(schema);
+    for (Row row : rows) {
+      builder.addRow(row);
+    }
+    return builder.build();
+  }
+
+  public Schema getSchema() {
+    return schema;
+  }
+
+  public int getRowCount() {
+    return rowCount;
+  }
+
+  /** Returns the column for the field at {@code fieldIdx}. */
+  public ColumnVector getColumn(int fieldIdx) {
+    return columns[fieldIdx];
+  }
+
+  /** Returns the column for the field named {@code fieldName}. */
+  public ColumnVector getColumn(String fieldName) {
+    return columns[schema.indexOf(fieldName)];
+  }
+
+  /** Returns a {@link Row} view of the row at {@code rowIdx}. */
+  public Row getRow(int rowIdx) {
+    checkArgument(
+        rowIdx >= 0 && rowIdx < rowCount, "Row %s out of range [0, %s)", rowIdx, rowCount);
+    return new RowView(this, rowIdx);
+  }
+
+  @Override
+  public Iterator<Row> iterator() {
+    return new Iterator<Row>() {
+      private int next = 0;
+
+      @Override
+      public boolean hasNext() {
+        return next < rowCount;
+      }
+
+      @Override
+      public Row next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        return getRow(next++);
+      }
+    };
+  }
+
+  /**
+   * Returns a batch containing only the given fields, in the given order. Columns are shared with
+   * this batch and not copied.
+   */
+  public RowBatch select(Schema projectedSchema, int... fieldIndices) {
+    checkArgument(
+        projectedSchema.getFieldCount() == fieldIndices.length,
+        "Projected schema has %s fields but %s field indices were given",
+        projectedSchema.getFieldCount(),
+        fieldIndices.length);
+    ColumnVector[] projected = new ColumnVector[fieldIndices.length];
+    for (int i = 0; i < fieldIndices.length; ++i) {
+      projected[i] = columns[fieldIndices[i]];
+    }
+    return new RowBatch(projectedSchema, rowCount, projected);
+  }
+
+  /** Returns a batch containing only the rows whose index is set in {@code selection}. */
+  public RowBatch filter(BitSet selection) {
+    int[] selected = selection.stream().filter(i -> i < rowCount).toArray();
+    if (selected.length == rowCount) {
+      return this;
+    }
+    ColumnVector[] filtered = new ColumnVector[columns.length];
+    for (int i = 0; i < columns.length; ++i) {
+      filtered[i] = columns[i].gather(selected);
+    }
+    return new RowBatch(schema, selected.length, filtered);
+  }
+
+  /** Returns a batch containing only the rows that match {@code predicate}. */
+  public RowBatch filter(SerializableFunction<Row, Boolean> predicate) {
+    BitSet selection = new BitSet(rowCount);
+    for (int i = 0; i < rowCount; ++i) {
+      if (predicate.apply(new RowView(this, i))) {
+        selection.set(i);
+      }
+    }
+    return filter(selection);
+  }
+
+  @Override
+  public boolean equals(@Nullable Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof RowBatch)) {
+      return false;
+    }
+    RowBatch other = (RowBatch) o;
+    if (!schema.equals(other.schema) || rowCount != other.rowCount) {
+      return false;
+    }
+    for (int i = 0; i < rowCount; ++i) {
+      if (!getRow(i).equals(other.getRow(i))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public int hashCode() {
+    int hash = Objects.hash(schema, rowCount);
+    for (int i = 0; i < rowCount; ++i) {
+      hash = 31 * hash + getRow(i).hashCode();
+    }
+    return hash;
+  }
+
+  @Override
+  public String toString() {
+    return "RowBatch{schema=" + schema + ", rowCount=" + rowCount + "}";
+  }
+
+  /** Builder for a {@link RowBatch}. Values are appended row by row. */
+  public static class Builder {
+    private static final int DEFAULT_CAPACITY = 1024;
+
+    private final Schema schema;
+    private final ColumnVector[] columns;
+    private int rowCount = 0;
+    private boolean built = false;
+
+    private Builder(Schema schema, int initialCapacity) {
+      this.schema = schema;
+      this.columns = new ColumnVector[schema.getFieldCount()];
+      int capacity = Math.max(initialCapacity, 1);
+      for (int i = 0; i < columns.length; ++i) {
+        columns[i] = ColumnVector.forField(schema.getField(i), capacity);
+      }
+    }
+
+    /** Appends the values of {@code row}, which must have the batch's schema. */
+    public Builder addRow(Row row) {
+      checkArgument(
+          row.getFieldCount() == columns.length,
+          "Row has %s fields but batch schema has %s",
+          row.getFieldCount(),
+          columns.length);
+      checkState(!built, "Builder has already been built");
+      for (int i = 0; i < columns.length; ++i) {
+        columns[i].append(rowCount, row.getValue(i));
+      }
+      ++rowCount;
+      return this;
+    }
+
+    /** Appends a row given its field values in schema order. */
+    public Builder addValues(@Nullable Object... values) {
+      checkArgument(
+          values.length == columns.length,
+          "Got %s values but batch schema has %s fields",
+          values.length,
+          columns.length);
+      checkState(!built, "Builder has already been built");
+      for (int i = 0; i < columns.length; ++i) {
+        columns[i].append(rowCount, values[i]);
+      }
+      ++rowCount;
+      return this;
+    }
+
+    public int getRowCount() {
+      return rowCount;
+    }
+
+    public RowBatch build() {
+      built = true;
+      for (ColumnVector column : columns) {
+        column.trim(rowCount);
+      }
+      return new RowBatch(schema, rowCount, columns);
+    }
+  }
+
+  /**
+   * A single column of a {@link RowBatch}. Typed accessors such as {@link #getLong(int)} avoid
+   * boxing; {@link #get(int)} returns the value in the same representation as {@link
+   * Row#getValue(int)}.
+   */
+  public abstract static class ColumnVector implements Serializable {
+    protected final TypeName typeName;
+    private long[] nulls;
+    private boolean hasNulls = false;
+
+    ColumnVector(TypeName typeName, int capacity) {
+      this.typeName = typeName;
+      this.nulls = new long[words(capacity)];
+    }
+
+    /**
+     * Returns a column of an integral type over {@code values}, which are not copied. The values of
+     * rows set in {@code nulls} are null.
+     */
+    public static ColumnVector ofLongs(TypeName typeName, long[] values, BitSet nulls) {
+      checkArgument(
+          typeName == TypeName.BYTE
+              || typeName == TypeName.INT16
+              || typeName == TypeName.INT32
+              || typeName == TypeName.INT64,
+          "%s is not an integral type",
+          typeName);
+      LongColumnVector column = new LongColumnVector(typeName, 0);
+      column.values = values;
+      column.setNulls(nulls, values.length);
+      return column;
+    }
+
+    /**
+     * Returns a column of a floating point type over {@code values}, which are not copied. The
+     * values of rows set in {@code nulls} are null.
+     */
+    public static ColumnVector ofDoubles(TypeName typeName, double[] values, BitSet nulls) {
+      checkArgument(
+          typeName == TypeName.FLOAT || typeName == TypeName.DOUBLE,
+          "%s is not a floating point type",
+          typeName);
+      DoubleColumnVector column = new DoubleColumnVector(typeName, 0);
+      column.values = values;
+      column.setNulls(nulls, values.length);
+      return column;
+    }
+
+    /**
+     * Returns a boolean column of {@code size} values, which are true for the rows set in {@code
+     * values}. The values of rows set in {@code nulls} are null.
+     */
+    public static ColumnVector ofBooleans(BitSet values, int size, BitSet nulls) {
+      BooleanColumnVector column = new BooleanColumnVector(0);
+      column.values = values;
+      column.capacity = size;
+      column.setNulls(nulls, size);
+      return column;
+    }
+
+    /**
+     * Returns a column of any other type over {@code values}, which are not copied. Null values are
+     * null.
+     */
+    public static ColumnVector ofObjects(TypeName typeName, @Nullable Object[] values) {
+      checkArgument(
+          forTypeName(typeName, 0) instanceof ObjectColumnVector,
+          "Values of type %s are not stored as objects",
+          typeName);
+      ObjectColumnVector column = new ObjectColumnVector(typeName, 0);
+      column.values = values;
+      BitSet nulls = new BitSet(values.length);
+      for (int i = 0; i < values.length; ++i) {
+        if (values[i] == null) {
+          nulls.set(i);
+        }
+      }
+      column.setNulls(nulls, values.length);
+      return column;
+    }
+
+    static ColumnVector forField(Field field, int capacity) {
+      return forTypeName(field.getType().getTypeName(), capacity);
+    }
+
+    private static ColumnVector forTypeName(TypeName typeName, int capacity) {
+      switch (typeName) {
+        case BYTE:
+        case INT16:
+        case INT32:
+        case INT64:
+          return new LongColumnVector(typeName, capacity);
+        case FLOAT:
+        case DOUBLE:
+          return new DoubleColumnVector(typeName, capacity);
+        case BOOLEAN:
+          return new BooleanColumnVector(capacity);
+        default:
+          return new ObjectColumnVector(typeName, capacity);
+      }
+    }
+
+    public TypeName getTypeName() {
+      return typeName;
+    }
+
+    /** Returns true if any value in this column is null. */
+    public boolean hasNulls() {
+      return hasNulls;
+    }
+
+    public boolean isNull(int rowIdx) {
+      return hasNulls && (nulls[rowIdx >>> 6] & (1L << rowIdx)) != 0;
+    }
+
+    /** Returns the value at {@code rowIdx}, boxed if the column is primitive. */
+    public abstract @Nullable Object get(int rowIdx);
+
+    /** Returns the value of an integral column. Undefined if the value is null. */
+    public long getLong(int rowIdx) {
+      throw new UnsupportedOperationException("Column of type " + typeName + " is not integral");
+    }
+
+    /** Returns the value of a floating point column. Undefined if the value is null. */
+    public double getDouble(int rowIdx) {
+      throw new UnsupportedOperationException(
+          "Column of type " + typeName + " is not floating point");
+    }
+
+    /** Returns the value of a boolean column. Undefined if the value is null. */
+    public boolean getBoolean(int rowIdx) {
+      throw new UnsupportedOperationException("Column of type " + typeName + " is not boolean");
+    }
+
+    final void append(int rowIdx, @Nullable Object value) {
+      int capacity = capacity();
+      if (rowIdx >= capacity) {
+        int newCapacity = Math.max(capacity * 2, rowIdx + 1);
+        grow(newCapacity);
+        nulls = Arrays.copyOf(nulls, words(newCapacity));
+      }
+      if (value == null) {
+        nulls[rowIdx >>> 6] |= 1L << rowIdx;
+        hasNulls = true;
+      } else {
+        set(rowIdx, value);
+      }
+    }
+
+    private void setNulls(BitSet nulls, int capacity) {
+      this.nulls = Arrays.copyOf(nulls.toLongArray(), words(capacity));
+      this.hasNulls = !nulls.isEmpty();
+    }
+
+    final ColumnVector gather(int[] rowIndices) {
+      ColumnVector result = forType(rowIndices.length);
+      for (int i = 0; i < rowIndices.length; ++i) {
+        int rowIdx = rowIndices[i];
+        if (isNull(rowIdx)) {
+          result.nulls[i >>> 6] |= 1L << i;
+          result.hasNulls = true;
+        } else {
+          result.copyFrom(this, rowIdx, i);
+        }
+      }
+      return result;
+    }
+
+    abstract int capacity();
+
+    abstract void grow(int newCapacity);
+
+    abstract void trim(int size);
+
+    abstract void set(int rowIdx, Object value);
+
+    abstract ColumnVector forType(int capacity);
+
+    abstract void copyFrom(ColumnVector source, int sourceIdx, int targetIdx);
+
+    private static int words(int capacity) {
+      return (capacity + 63) >>> 6;
+    }
+  }
+
+  private static final class LongColumnVector extends ColumnVector {
+    private long[] values;
+
+    LongColumnVector(TypeName typeName, int capacity) {
+      super(typeName, capacity);
+      this.values = new long[capacity];
+    }
+
+    @Override
+    public long getLong(int rowIdx) {
+      return values[rowIdx];
+    }
+
+    @Override
+    public @Nullable Object get(int rowIdx) {
+      if (isNull(rowIdx)) {
+        return null;
+      }
+      long value = values[rowIdx];
+      switch (typeName) {
+        case BYTE:
+          return (byte) value;
+        case INT16:
+          return (short) value;
+        case INT32:
+          return (int) value;
+        default:
+          return value;
+      }
+    }
+
+    @Override
+    int capacity() {
+      return values.length;
+    }
+
+    @Override
+    void grow(int newCapacity) {
+      values = Arrays.copyOf(values, newCapacity);
+    }
+
+    @Override
+    void trim(int size) {
+      if (size < values.length) {
+        values = Arrays.copyOf(values, size);
+      }
+    }
+
+    @Override
+    void set(int rowIdx, Object value) {
+      values[rowIdx] = ((Number) value).longValue();
+    }
+
+    @Override
+    ColumnVector forType(int capacity) {
+      return new LongColumnVector(typeName, capacity);
+    }
+
+    @Override
+    void copyFrom(ColumnVector source, int sourceIdx, int targetIdx) {
+      values[targetIdx] = ((LongColumnVector) source).values[sourceIdx];
+    }
+  }
+
+  private static final class DoubleColumnVector extends ColumnVector {
+    private double[] values;
+
+    DoubleColumnVector(TypeName typeName, int capacity) {
+      super(typeName, capacity);
+      this.values = new double[capacity];
+    }
+
+    @Override
+    public double getDouble(int rowIdx) {
+      return values[rowIdx];
+    }
+
+    @Override
+    public @Nullable Object get(int rowIdx) {
+      if (isNull(rowIdx)) {
+        return null;
+      }
+      return typeName == TypeName.FLOAT ? (Object) (float) values[rowIdx] : values[rowIdx];
+    }
+
+    @Override
+    int capacity() {
+      return values.length;
+    }
+
+    @Override
+    void grow(int newCapacity) {
+      values = Arrays.copyOf(values, newCapacity);
+    }
+
+    @Override
+    void trim(int size) {
+      if (size < values.length) {
+        values = Arrays.copyOf(values, size);
+      }
+    }
+
+    @Override
+    void set(int rowIdx, Object value) {
+      values[rowIdx] = ((Number) value).doubleValue();
+    }
+
+    @Override
+    ColumnVector forType(int capacity) {
+      return new DoubleColumnVector(typeName, capacity);
+    }
+
+    @Override
+    void copyFrom(ColumnVector source, int sourceIdx, int targetIdx) {
+      values[targetIdx] = ((DoubleColumnVector) source).values[sourceIdx];
+    }
+  }
+
+  private static final class BooleanColumnVector extends ColumnVector {
+    private BitSet values;
+    private int capacity;
+
+    BooleanColumnVector(int capacity) {
+      super(TypeName.BOOLEAN, capacity);
+      this.values = new BitSet(capacity);
+      this.capacity = capacity;
+    }
+
+    @Override
+    public boolean getBoolean(int rowIdx) {
+      return values.get(rowIdx);
+    }
+
+    @Override
+    public @Nullable Object get(int rowIdx) {
+      return isNull(rowIdx) ? null : values.get(rowIdx);
+    }
+
+    @Override
+    int capacity() {
+      return capacity;
+    }
+
+    @Override
+    void grow(int newCapacity) {
+      capacity = newCapacity;
+    }
+
+    @Override
+    void trim(int size) {
+      capacity = size;
+    }
+
+    @Override
+    void set(int rowIdx, Object value) {
+      values.set(rowIdx, (Boolean) value);
+    }
+
+    @Override
+    ColumnVector forType(int capacity) {
+      return new BooleanColumnVector(capacity);
+    }
+
+    @Override
+    void copyFrom(ColumnVector source, int sourceIdx, int targetIdx) {
+      values.set(targetIdx, ((BooleanColumnVector) source).values.get(sourceIdx));
+    }
+  }
+
+  private static final class ObjectColumnVector extends ColumnVector {
+    private Object[] values;
+
+    ObjectColumnVector(TypeName typeName, int capacity) {
+      super(typeName, capacity);
+      this.values = new Object[capacity];
+    }
+
+    @Override
+    public @Nullable Object get(int rowIdx) {
+      return values[rowIdx];
+    }
+
+    @Override
+    int capacity() {
+      return values.length;
+    }
+
+    @Override
+    void grow(int newCapacity) {
+      values = Arrays.copyOf(values, newCapacity);
+    }
+
+    @Override
+    void trim(int size) {
+      if (size < values.length) {
+        values = Arrays.copyOf(values, size);
+      }
+    }
+
+    @Override
+    void set(int rowIdx, Object value) {
+      values[rowIdx] = value;
+    }
+
+    @Override
+    ColumnVector forType(int capacity) {
+      return new ObjectColumnVector(typeName, capacity);
+    }
+
+    @Override
+    void copyFrom(ColumnVector source, int sourceIdx, int targetIdx) {
+      values[targetIdx] = ((ObjectColumnVector) source).values[sourceIdx];
+    }
+  }
+
+  /** A {@link Row} that reads its values from one row of a {@link RowBatch}. */
+  static final class RowView extends Row {
+    private final RowBatch batch;
+    private final int rowIdx;
+
+    RowView(RowBatch batch, int rowIdx) {
+      super(batch.getSchema());
+      this.batch = batch;
+      this.rowIdx = rowIdx;
+    }
+
+    @Override
+    @SuppressWarnings("TypeParameterUnusedInFormals")
+    public <T extends @Nullable Object> T getValue(int fieldIdx) {
+      if (fieldIdx >= batch.columns.length) {
+        throw new IllegalArgumentException("No field at index " + fieldIdx);
+      }
+      return (T) batch.columns[fieldIdx].get(rowIdx);
+    }
+
+    @Override
+    public int getFieldCount() {
+      return batch.columns.length;
+    }
+
+    @Override
+    public List<@Nullable Object> getValues() {
+      return new AbstractList<@Nullable Object>() {
+        @Override
+        public @Nullable Object get(int index) {
+          return batch.columns[index].get(rowIdx);
+        }
+
+        @Override
+        public int size() {
+          return batch.columns.length;
+        }
+      };
+    }
+  }
+}
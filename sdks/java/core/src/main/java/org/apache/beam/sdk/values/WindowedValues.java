@@ -48,6 +48,7 @@ import org.apache.beam.sdk.transforms.windowing.BoundedWindow;
 import org.apache.beam.sdk.transforms.windowing.GlobalWindow;
 import org.apache.beam.sdk.transforms.windowing.PaneInfo;
 import org.apache.beam.sdk.transforms.windowing.PaneInfo.PaneInfoCoder;
+import org.apache.beam.sdk.util.VarInt;
 import org.apache.beam.sdk.util.WindowedValueReceiver;
 import org.apache.beam.sdk.util.common.ElementByteSizeObserver;
 import org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.base.MoreObjects;
@@ -968,15 +969,52 @@ public class WindowedValues {
           this, "FullWindowedValueCoder requires a deterministic windowCoder", windowCoder);
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * @return {@code true} if the value coder can size the value cheaply, since the timestamp,
+     *     windows and pane are sized without encoding them.
+     */
+    @Override
+    public boolean isRegisterByteSizeObserverCheap(WindowedValue<T> value) {
+      return valueCoder.isRegisterByteSizeObserverCheap(value.getValue());
+    }
+
     @Override
     public void registerByteSizeObserver(WindowedValue<T> value, ElementByteSizeObserver observer)
         throws Exception {
-      InstantCoder.of().registerByteSizeObserver(value.getTimestamp(), observer);
-      windowsCoder.registerByteSizeObserver(value.getWindows(), observer);
-      PaneInfoCoder.INSTANCE.registerByteSizeObserver(value.getPaneInfo(), observer);
+      observer.update(getEncodedMetadataByteSize(value));
       valueCoder.registerByteSizeObserver(value.getValue(), observer);
     }
 
+    @Override
+    protected long getEncodedElementByteSize(WindowedValue<T> value) throws Exception {
+      return getEncodedMetadataByteSize(value)
+          + getEncodedElementByteSizeUsingCoder(valueCoder, value.getValue());
+    }
+
+    // The size of everything encode writes before the value.
+    private long getEncodedMetadataByteSize(WindowedValue<T> value) throws Exception {
+      boolean metadataSupported = isMetadataSupported();
+      PaneInfo paneInfo = value.getPaneInfo().withElementMetadata(metadataSupported);
+      long size =
+          getEncodedElementByteSizeUsingCoder(InstantCoder.of(), value.getTimestamp())
+              + getEncodedElementByteSizeUsingCoder(windowsCoder, value.getWindows())
+              + getEncodedElementByteSizeUsingCoder(PaneInfoCoder.INSTANCE, paneInfo);
+      if (metadataSupported) {
+        int elementMetadataSize =
+            BeamFnApi.Elements.ElementMetadata.newBuilder()
+                .setDrain(
+                    value.causedByDrain()
+                        ? BeamFnApi.Elements.DrainMode.Enum.DRAINING
+                        : BeamFnApi.Elements.DrainMode.Enum.NOT_DRAINING)
+                .build()
+                .getSerializedSize();
+        size += VarInt.getLength(elementMetadataSize) + elementMetadataSize;
+      }
+      return size;
+    }
+
     /**
      * {@inheritDoc}.
      *
@@ -1050,12 +1088,22 @@ public class WindowedValues {
           this, "ValueOnlyWindowedValueCoder requires a deterministic valueCoder", valueCoder);
     }
 
+    @Override
+    public boolean isRegisterByteSizeObserverCheap(WindowedValue<T> value) {
+      return valueCoder.isRegisterByteSizeObserverCheap(value.getValue());
+    }
+
     @Override
     public void registerByteSizeObserver(WindowedValue<T> value, ElementByteSizeObserver observer)
         throws Exception {
       valueCoder.registerByteSizeObserver(value.getValue(), observer);
     }
 
+    @Override
+    protected long getEncodedElementByteSize(WindowedValue<T> value) throws Exception {
+      return getEncodedElementByteSizeUsingCoder(valueCoder, value.getValue());
+    }
+
     @Override
     public List<? extends Coder<?>> getCoderArguments() {
       return Collections.singletonList(valueCoder);
@@ -1160,12 +1208,22 @@ public class WindowedValues {
           this, "ParamWindowedValueCoder requires a deterministic valueCoder", valueCoder);
     }
 
+    @Override
+    public boolean isRegisterByteSizeObserverCheap(WindowedValue<T> value) {
+      return valueCoder.isRegisterByteSizeObserverCheap(value.getValue());
+    }
+
     @Override
     public void registerByteSizeObserver(WindowedValue<T> value, ElementByteSizeObserver observer)
         throws Exception {
       valueCoder.registerByteSizeObserver(value.getValue(), observer);
     }
 
+    @Override
+    protected long getEncodedElementByteSize(WindowedValue<T> value) throws Exception {
+      return getEncodedElementByteSizeUsingCoder(valueCoder, value.getValue());
+    }
+
     public Instant getTimestamp() {
       return windowedValuePrototype.getTimestamp();
     }
@@ -0,0 +1,199 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.coders;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.math.BigDecimal;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.apache.beam.sdk.schemas.Schema;
+import org.apache.beam.sdk.schemas.Schema.FieldType;
+import org.apache.beam.sdk.util.CoderUtils;
+import org.apache.beam.sdk.values.KV;
+import org.apache.beam.sdk.values.Row;
+import org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.collect.FluentIterable;
+import org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.collect.ImmutableList;
+import org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.collect.ImmutableMap;
+import org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.collect.Lists;
+import org.joda.time.Instant;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link ByteBufferCoder} implementations and the {@link CoderUtils} helpers. */
+@RunWith(JUnit4.class)
+public class ByteBufferCoderTest {
+
+  private static <T> void assertBufferEncodingMatchesStream(Coder<T> coder, T value)
+      throws Exception {
+    ByteArrayOutputStream stream = new ByteArrayOutputStream();
+    coder.encode(value, stream);
+    byte[] expected = stream.toByteArray();
+
+    // Use a non-zero starting position to check offsets are respected.
+    ByteBuffer buffer = ByteBuffer.allocate(expected.length + 3);
+    buffer.put((byte) 7);
+    CoderUtils.encodeToByteBuffer(coder, value, buffer);
+    assertEquals(expected.length + 1, buffer.position());
+    byte[] actual = Arrays.copyOfRange(buffer.array(), 1, buffer.position());
+    assertArrayEquals(expected, actual);
+
+    buffer.flip();
+    buffer.get();
+    T decoded = CoderUtils.decodeFromByteBuffer(coder, buffer);
+    assertEquals(0, buffer.remaining());
+    assertEquals(coder.structuralValue(value), coder.structuralValue(decoded));
+  }
+
+  @Test
+  public void testPrimitiveCoders() throws Exception {
+    for (int value : new int[] {0, 1, -1, 127, 128, Integer.MAX_VALUE, Integer.MIN_VALUE}) {
+      assertBufferEncodingMatchesStream(VarIntCoder.of(), value);
+      assertBufferEncodingMatchesStream(BigEndianIntegerCoder.of(), value);
+    }
+    for (long value : new long[] {0, 1, -1, 1L << 40, Long.MAX_VALUE, Long.MIN_VALUE}) {
+      assertBufferEncodingMatchesStream(VarLongCoder.of(), value);
+      assertBufferEncodingMatchesStream(BigEndianLongCoder.of(), value);
+    }
+    assertBufferEncodingMatchesStream(BigEndianShortCoder.of(), (short) -1234);
+    assertBufferEncodingMatchesStream(ByteCoder.of(), (byte) -3);
+    assertBufferEncodingMatchesStream(DoubleCoder.of(), -1.5e100);
+    assertBufferEncodingMatchesStream(FloatCoder.of(), 3.25f);
+    assertBufferEncodingMatchesStream(BooleanCoder.of(), true);
+    assertBufferEncodingMatchesStream(BooleanCoder.of(), false);
+  }
+
+  @Test
+  public void testStringUtf8Coder() throws Exception {
+    assertBufferEncodingMatchesStream(StringUtf8Coder.of(), "");
+    assertBufferEncodingMatchesStream(StringUtf8Coder.of(), "ascii only");
+    assertBufferEncodingMatchesStream(StringUtf8Coder.of(), "\u00e9t\u00e9 \u2603 \ud83d\ude00");
+  }
+
+  @Test
+  public void testStringUtf8CoderUnpairedSurrogate() throws Exception {
+    String value = "a\ud83d b";
+    ByteArrayOutputStream stream = new ByteArrayOutputStream();
+    StringUtf8Coder.of().encode(value, stream);
+    ByteBuffer buffer = ByteBuffer.allocate(16);
+    StringUtf8Coder.of().encode(value, buffer);
+    assertArrayEquals(stream.toByteArray(), Arrays.copyOf(buffer.array(), buffer.position()));
+  }
+
+  @Test
+  public void testStringUtf8CoderDirectBuffer() throws Exception {
+    ByteBuffer buffer = ByteBuffer.allocateDirect(64);
+    StringUtf8Coder.of().encode("caf\u00e9", buffer);
+    buffer.flip();
+    assertEquals("caf\u00e9", StringUtf8Coder.of().decode(buffer));
+  }
+
+  @Test
+  public void testKvCoder() throws Exception {
+    assertBufferEncodingMatchesStream(
+        KvCoder.of(StringUtf8Coder.of(), VarLongCoder.of()), KV.of("key", 42L));
+    // The value coder does not implement ByteBufferCoder, so falls back to the stream API.
+    assertBufferEncodingMatchesStream(
+        KvCoder.of(VarIntCoder.of(), NullableCoder.of(StringUtf8Coder.of())), KV.of(1, null));
+  }
+
+  @Test
+  public void testIterableCoders() throws Exception {
+    List<String> values = ImmutableList.of("a", "bb", "ccc");
+    assertBufferEncodingMatchesStream(ListCoder.of(StringUtf8Coder.of()), values);
+    assertBufferEncodingMatchesStream(
+        ListCoder.of(StringUtf8Coder.of()), Collections.<String>emptyList());
+    assertBufferEncodingMatchesStream(IterableCoder.of(StringUtf8Coder.of()), values);
+    // A non-collection iterable uses the block based encoding.
+    assertBufferEncodingMatchesStream(
+        IterableCoder.of(StringUtf8Coder.of()), FluentIterable.from(values));
+    assertBufferEncodingMatchesStream(
+        IterableCoder.of(KvCoder.of(VarIntCoder.of(), DoubleCoder.of())),
+        Lists.newArrayList(KV.of(1, 1.0), KV.of(2, 2.0)));
+  }
+
+  @Test
+  public void testRowCoder() throws Exception {
+    Schema nested = Schema.builder().addInt32Field("f1").addStringField("f2").build();
+    Schema schema =
+        Schema.builder()
+            .addInt64Field("f_int64")
+            .addNullableField("f_string", FieldType.STRING)
+            .addDecimalField("f_decimal")
+            .addDateTimeField("f_datetime")
+            .addArrayField("f_array", FieldType.INT32)
+            .addMapField("f_map", FieldType.STRING, FieldType.DOUBLE)
+            .addNullableField("f_row", FieldType.row(nested))
+            .build();
+    RowCoder coder = RowCoder.of(schema);
+
+    Row full =
+        Row.withSchema(schema)
+            .addValues(
+                -5L,
+                "str",
+                new BigDecimal("1.25"),
+                new Instant(1234567L),
+                ImmutableList.of(1, 2, 3),
+                ImmutableMap.of("k", 1.0),
+                Row.withSchema(nested).addValues(1, "n").build())
+            .build();
+    Row withNulls =
+        Row.withSchema(schema)
+            .addValues(
+                1L,
+                null,
+                BigDecimal.ONE,
+                new Instant(0L),
+                ImmutableList.of(),
+                ImmutableMap.of(),
+                null)
+            .build();
+
+    assertBufferEncodingMatchesStream(coder, full);
+    assertBufferEncodingMatchesStream(coder, withNulls);
+    assertBufferEncodingMatchesStream(coder.withLazyDecoding(), full);
+  }
+
+  @Test
+  public void testEncodeOverflow() {
+    ByteBuffer buffer = ByteBuffer.allocate(3);
+    assertThrows(
+        BufferOverflowException.class,
+        () -> CoderUtils.encodeToByteBuffer(StringUtf8Coder.of(), "too long", buffer));
+  }
+
+  @Test
+  public void testDecodeUnderflow() {
+    ByteBuffer buffer = ByteBuffer.allocate(2);
+    CoderException e =
+        assertThrows(
+            CoderException.class,
+            () -> CoderUtils.decodeFromByteBuffer(BigEndianLongCoder.of(), buffer));
+    assertTrue(e.getCause() instanceof EOFException);
+  }
+}
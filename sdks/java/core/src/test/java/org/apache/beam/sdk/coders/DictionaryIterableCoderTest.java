@@ -0,0 +1,168 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.coders;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.apache.beam.sdk.testing.CoderProperties;
+import org.apache.beam.sdk.util.CoderUtils;
+import org.apache.beam.sdk.values.TypeDescriptor;
+import org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.collect.FluentIterable;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link DictionaryIterableCoder}. */
+@RunWith(JUnit4.class)
+public class DictionaryIterableCoderTest {
+  private static final Coder<Iterable<String>> TEST_CODER =
+      DictionaryIterableCoder.of(StringUtf8Coder.of());
+
+  private static List<String> repetitive(int count) {
+    String[] statuses = {"PENDING", "SHIPPED", "DELIVERED", "RETURNED"};
+    List<String> values = new ArrayList<>();
+    for (int i = 0; i < count; ++i) {
+      values.add(statuses[(i * 7) % statuses.length]);
+    }
+    return values;
+  }
+
+  @Test
+  public void testDecodeEncodeContentsInSameOrder() throws Exception {
+    CoderProperties.coderDecodeEncodeContentsInSameOrder(TEST_CODER, Collections.emptyList());
+    CoderProperties.coderDecodeEncodeContentsInSameOrder(TEST_CODER, Arrays.asList("a", "b", "a"));
+    CoderProperties.coderDecodeEncodeContentsInSameOrder(TEST_CODER, repetitive(1000));
+  }
+
+  @Test
+  public void testNonCollectionIterable() throws Exception {
+    Iterable<String> iterable = FluentIterable.from(repetitive(100)).filter(s -> !s.isEmpty());
+    assertEquals(
+        repetitive(100),
+        CoderUtils.decodeFromByteArray(
+            TEST_CODER, CoderUtils.encodeToByteArray(TEST_CODER, iterable)));
+  }
+
+  @Test
+  public void testRepeatedValuesAreReferenced() throws Exception {
+    byte[] encoded = CoderUtils.encodeToByteArray(TEST_CODER, Arrays.asList("abc", "de", "abc"));
+    // Literal "abc", literal "de", reference to id 0 and the end tag.
+    assertArrayEquals(new byte[] {1, 3, 'a', 'b', 'c', 1, 2, 'd', 'e', 3, 0}, encoded);
+
+    List<String> values = repetitive(10000);
+    assertTrue(
+        CoderUtils.encodeToByteArray(TEST_CODER, values).length
+            < CoderUtils.encodeToByteArray(IterableCoder.of(StringUtf8Coder.of()), values).length
+                / 5);
+  }
+
+  @Test
+  public void testFullDictionary() throws Exception {
+    Coder<Iterable<String>> coder = DictionaryIterableCoder.of(StringUtf8Coder.of(), 2);
+    CoderProperties.coderDecodeEncodeContentsInSameOrder(coder, repetitive(100));
+    CoderProperties.coderDecodeEncodeContentsInSameOrder(
+        DictionaryIterableCoder.of(StringUtf8Coder.of(), 0), repetitive(100));
+  }
+
+  @Test
+  public void testElementsComparedByEncoding() throws Exception {
+    // Byte arrays are not consistent with equals, so they are deduplicated by their encoding.
+    Coder<Iterable<byte[]>> coder = DictionaryIterableCoder.of(ByteArrayCoder.of());
+    List<byte[]> values = Arrays.asList(new byte[] {1, 2}, new byte[] {1, 2}, new byte[] {3});
+    byte[] encoded = CoderUtils.encodeToByteArray(coder, values);
+    assertArrayEquals(new byte[] {1, 2, 1, 2, 3, 1, 1, 3, 0}, encoded);
+    Iterable<byte[]> decoded = CoderUtils.decodeFromByteArray(coder, encoded);
+    assertEquals(coder.structuralValue(values), coder.structuralValue(decoded));
+  }
+
+  @Test
+  public void testMutatingDecodedDuplicate() throws Exception {
+    // Lists are consistent with equals, but mutable, so duplicates must not share an instance.
+    Coder<Iterable<List<String>>> coder =
+        DictionaryIterableCoder.of(ListCoder.of(StringUtf8Coder.of()));
+    List<String> value = Arrays.asList("a", "b");
+    List<List<String>> decoded =
+        (List<List<String>>)
+            CoderUtils.decodeFromByteArray(
+                coder, CoderUtils.encodeToByteArray(coder, Arrays.asList(value, value, value)));
+    decoded.get(1).set(0, "c");
+    assertEquals(Arrays.asList(value, Arrays.asList("c", "b"), value), decoded);
+
+    Coder<Iterable<byte[]>> bytesCoder = DictionaryIterableCoder.of(ByteArrayCoder.of());
+    List<byte[]> decodedBytes =
+        (List<byte[]>)
+            CoderUtils.decodeFromByteArray(
+                bytesCoder,
+                CoderUtils.encodeToByteArray(
+                    bytesCoder, Arrays.asList(new byte[] {1, 2}, new byte[] {1, 2})));
+    decodedBytes.get(0)[0] = 3;
+    assertArrayEquals(new byte[] {1, 2}, decodedBytes.get(1));
+  }
+
+  @Test
+  public void testImmutableDuplicatesShareInstance() throws Exception {
+    List<String> decoded =
+        (List<String>)
+            CoderUtils.decodeFromByteArray(
+                TEST_CODER,
+                CoderUtils.encodeToByteArray(TEST_CODER, Arrays.asList("abc", "abc")));
+    assertSame(decoded.get(0), decoded.get(1));
+  }
+
+  @Test
+  public void testNullableElements() throws Exception {
+    CoderProperties.coderDecodeEncodeContentsInSameOrder(
+        DictionaryIterableCoder.of(NullableCoder.of(StringUtf8Coder.of())),
+        Arrays.asList(null, "a", null, "a"));
+  }
+
+  @Test
+  public void testInvalidReference() {
+    assertThrows(
+        CoderException.class,
+        () -> CoderUtils.decodeFromByteArray(TEST_CODER, new byte[] {4, 0}));
+  }
+
+  @Test
+  public void testEquals() {
+    assertEquals(TEST_CODER, DictionaryIterableCoder.of(StringUtf8Coder.of()));
+    assertEquals(
+        TEST_CODER.hashCode(), DictionaryIterableCoder.of(StringUtf8Coder.of()).hashCode());
+    assertNotEquals(TEST_CODER, DictionaryIterableCoder.of(StringUtf8Coder.of(), 10));
+    assertNotEquals(TEST_CODER, IterableCoder.of(StringUtf8Coder.of()));
+  }
+
+  @Test
+  public void testCoderSerializable() throws Exception {
+    CoderProperties.coderSerializable(TEST_CODER);
+  }
+
+  @Test
+  public void testEncodedTypeDescriptor() throws Exception {
+    assertEquals(new TypeDescriptor<Iterable<String>>() {}, TEST_CODER.getEncodedTypeDescriptor());
+  }
+}
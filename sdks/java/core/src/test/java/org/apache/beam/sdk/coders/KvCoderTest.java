@@ -112,6 +112,15 @@ public class KvCoderTest {
     CoderProperties.coderEncodesBase64(TEST_CODER, TEST_VALUES, TEST_ENCODINGS);
   }
 
+  @Test
+  public void testEncodedSize() throws Exception {
+    for (KV<String, Integer> value : TEST_VALUES) {
+      assertThat(
+          TEST_CODER.getEncodedElementByteSize(value),
+          equalTo((long) CoderUtils.encodeToByteArray(TEST_CODER, value).length));
+    }
+  }
+
   @Rule public ExpectedException thrown = ExpectedException.none();
 
   @Test
@@ -22,6 +22,9 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.Arrays;
 import java.util.List;
 import org.apache.beam.sdk.testing.CoderProperties;
@@ -61,7 +64,20 @@ public class LengthPrefixCoderTest {
 
   @Test
   public void testEncodedSize() throws Exception {
-    assertEquals(5L, TEST_CODER.getEncodedElementByteSize(TEST_VALUES.get(0)));
+    for (byte[] value : TEST_VALUES) {
+      assertEquals(
+          CoderUtils.encodeToByteArray(TEST_CODER, value).length,
+          TEST_CODER.getEncodedElementByteSize(value));
+    }
+  }
+
+  @Test
+  public void testEncodedSizeOfStrings() throws Exception {
+    LengthPrefixCoder<String> coder = LengthPrefixCoder.of(StringUtf8Coder.of());
+    for (String value : Arrays.asList("", "hello", "\u00e9t\u00e9")) {
+      long size = coder.getEncodedElementByteSize(value);
+      assertEquals(CoderUtils.encodeToByteArray(coder, value).length, size);
+    }
   }
 
   @Test
@@ -77,6 +93,31 @@ public class LengthPrefixCoderTest {
     assertFalse(coder.isRegisterByteSizeObserverCheap(ImmutableList.of("hi", "test")));
   }
 
+  @Test
+  public void testEncodedSizeOfValueNotSizedCheaply() throws Exception {
+    LengthPrefixCoder<String> coder = LengthPrefixCoder.of(new NotCheaplySizedCoder());
+    String value = "hello";
+
+    long size = coder.getEncodedElementByteSize(value);
+    byte[] encoded = CoderUtils.encodeToByteArray(coder, value);
+
+    assertEquals(encoded.length, size);
+    assertEquals(value, CoderUtils.decodeFromByteArray(coder, encoded));
+  }
+
+  /** A {@link StringUtf8Coder} that cannot size values cheaply. */
+  private static class NotCheaplySizedCoder extends CustomCoder<String> {
+    @Override
+    public void encode(String value, OutputStream outStream) throws IOException {
+      StringUtf8Coder.of().encode(value, outStream);
+    }
+
+    @Override
+    public String decode(InputStream inStream) throws IOException {
+      return StringUtf8Coder.of().decode(inStream);
+    }
+  }
+
   @Test
   public void testDecodeEncodeEquals() throws Exception {
     for (byte[] value : TEST_VALUES) {
@@ -68,6 +68,15 @@ public class ListCoderTest {
     CoderProperties.coderDecodeEncodeEqual(coder, list);
   }
 
+  @Test
+  public void testEncodedSize() throws Exception {
+    for (List<Integer> value : TEST_VALUES) {
+      assertThat(
+          TEST_CODER.getEncodedElementByteSize(value),
+          equalTo((long) CoderUtils.encodeToByteArray(TEST_CODER, value).length));
+    }
+  }
+
   @Test
   public void testCoderSerializable() throws Exception {
     CoderProperties.coderSerializable(TEST_CODER);
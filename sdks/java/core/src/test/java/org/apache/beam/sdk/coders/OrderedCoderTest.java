@@ -0,0 +1,214 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.coders;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import org.apache.beam.sdk.testing.CoderProperties;
+import org.apache.beam.sdk.util.CoderUtils;
+import org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.primitives.UnsignedBytes;
+import org.joda.time.Instant;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link OrderedCoder}. */
+@RunWith(JUnit4.class)
+public class OrderedCoderTest {
+
+  /**
+   * Checks that every value round trips through {@code coder} and that comparing the encodings of
+   * any two values as unsigned bytes agrees with {@code comparator}.
+   */
+  static <T> void assertOrderPreserving(
+      OrderedCoder<T> coder, Comparator<? super T> comparator, List<T> values) throws Exception {
+    for (T value : values) {
+      CoderProperties.coderDecodeEncodeEqual(coder, value);
+    }
+    Comparator<byte[]> bytesComparator = UnsignedBytes.lexicographicalComparator();
+    for (T left : values) {
+      byte[] leftBytes = CoderUtils.encodeToByteArray(coder, left);
+      for (T right : values) {
+        byte[] rightBytes = CoderUtils.encodeToByteArray(coder, right);
+        assertEquals(
+            "Comparing " + left + " and " + right,
+            Integer.signum(comparator.compare(left, right)),
+            Integer.signum(bytesComparator.compare(leftBytes, rightBytes)));
+      }
+    }
+  }
+
+  @Test
+  public void testIntegralTypes() throws Exception {
+    assertOrderPreserving(
+        OrderedCoder.bytes(),
+        Comparator.naturalOrder(),
+        Arrays.asList((byte) 0, (byte) 1, (byte) -1, Byte.MIN_VALUE, Byte.MAX_VALUE));
+    assertOrderPreserving(
+        OrderedCoder.shorts(),
+        Comparator.naturalOrder(),
+        Arrays.asList((short) 0, (short) 255, (short) -256, Short.MIN_VALUE, Short.MAX_VALUE));
+    assertOrderPreserving(
+        OrderedCoder.integers(),
+        Comparator.naturalOrder(),
+        Arrays.asList(0, 1, -1, 256, -65536, Integer.MIN_VALUE, Integer.MAX_VALUE));
+    assertOrderPreserving(
+        OrderedCoder.longs(),
+        Comparator.naturalOrder(),
+        Arrays.asList(0L, 1L, -1L, 1L << 40, -(1L << 40), Long.MIN_VALUE, Long.MAX_VALUE));
+  }
+
+  @Test
+  public void testFloatingPointTypes() throws Exception {
+    assertOrderPreserving(
+        OrderedCoder.doubles(),
+        Comparator.naturalOrder(),
+        Arrays.asList(
+            0.0,
+            -0.0,
+            1.5,
+            -1.5,
+            Double.MIN_VALUE,
+            -Double.MIN_VALUE,
+            Double.MAX_VALUE,
+            -Double.MAX_VALUE,
+            Double.POSITIVE_INFINITY,
+            Double.NEGATIVE_INFINITY,
+            Double.NaN));
+    assertOrderPreserving(
+        OrderedCoder.floats(),
+        Comparator.naturalOrder(),
+        Arrays.asList(
+            0.0f,
+            -0.0f,
+            3.25f,
+            -3.25f,
+            Float.MIN_VALUE,
+            Float.MAX_VALUE,
+            Float.NEGATIVE_INFINITY,
+            Float.POSITIVE_INFINITY,
+            Float.NaN));
+  }
+
+  @Test
+  public void testStrings() throws Exception {
+    assertOrderPreserving(
+        OrderedCoder.strings(),
+        Comparator.naturalOrder(),
+        Arrays.asList("", "a", "ab", "a\u0000", "a\u0000b", "b", "\u00e9", "\u4e2d", "\uffff"));
+  }
+
+  @Test
+  public void testByteArrays() throws Exception {
+    assertOrderPreserving(
+        OrderedCoder.byteArrays(),
+        UnsignedBytes.lexicographicalComparator(),
+        Arrays.asList(
+            new byte[] {},
+            new byte[] {0},
+            new byte[] {0, 0},
+            new byte[] {0, 1},
+            new byte[] {1},
+            new byte[] {(byte) 0xFF},
+            new byte[] {(byte) 0xFF, 0}));
+  }
+
+  @Test
+  public void testBooleansAndInstants() throws Exception {
+    assertOrderPreserving(
+        OrderedCoder.booleans(), Comparator.naturalOrder(), Arrays.asList(false, true));
+    assertOrderPreserving(
+        OrderedCoder.instants(),
+        Comparator.naturalOrder(),
+        Arrays.asList(
+            new Instant(0), new Instant(-1), new Instant(1), new Instant(Long.MAX_VALUE)));
+  }
+
+  @Test
+  public void testInstantsMatchInstantCoder() throws Exception {
+    Instant instant = new Instant(1234567L);
+    assertArrayEquals(
+        CoderUtils.encodeToByteArray(InstantCoder.of(), instant),
+        CoderUtils.encodeToByteArray(OrderedCoder.instants(), instant));
+  }
+
+  @Test
+  public void testNullable() throws Exception {
+    assertOrderPreserving(
+        OrderedCoder.nullable(OrderedCoder.longs()),
+        Comparator.nullsFirst(Comparator.naturalOrder()),
+        Arrays.asList(null, Long.MIN_VALUE, 0L, Long.MAX_VALUE));
+  }
+
+  @Test
+  public void testLists() throws Exception {
+    Comparator<List<String>> lexicographic =
+        (left, right) -> {
+          for (int i = 0; i < Math.min(left.size(), right.size()); ++i) {
+            int result = left.get(i).compareTo(right.get(i));
+            if (result != 0) {
+              return result;
+            }
+          }
+          return Integer.compare(left.size(), right.size());
+        };
+    assertOrderPreserving(
+        OrderedCoder.lists(OrderedCoder.strings()),
+        lexicographic,
+        Arrays.asList(
+            Collections.emptyList(),
+            Collections.singletonList(""),
+            Arrays.asList("", ""),
+            Arrays.asList("a", "b"),
+            Arrays.asList("a", "b", "c"),
+            Collections.singletonList("b")));
+  }
+
+  @Test
+  public void testDescending() throws Exception {
+    assertOrderPreserving(
+        OrderedCoder.strings().descending(),
+        Comparator.<String>reverseOrder(),
+        Arrays.asList("", "a", "a\u0000", "ab", "b"));
+    assertOrderPreserving(
+        OrderedCoder.nullable(OrderedCoder.doubles()).descending(),
+        Comparator.nullsFirst(Comparator.<Double>naturalOrder()).reversed(),
+        Arrays.asList(null, -1.0, 0.0, 2.0));
+    assertEquals(OrderedCoder.longs(), OrderedCoder.longs().descending().descending());
+  }
+
+  @Test
+  public void testDecodeInvalidEscape() {
+    assertThrows(
+        CoderException.class,
+        () -> CoderUtils.decodeFromByteArray(OrderedCoder.strings(), new byte[] {'a', 0, 2}));
+  }
+
+  @Test
+  public void testCoderSerializable() {
+    CoderProperties.coderSerializable(OrderedCoder.strings().descending());
+    CoderProperties.coderSerializable(
+        OrderedCoder.lists(OrderedCoder.nullable(OrderedCoder.longs())));
+  }
+}
@@ -0,0 +1,132 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.coders;
+
+import static org.apache.beam.sdk.coders.OrderedCoderTest.assertOrderPreserving;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertThrows;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import org.apache.beam.sdk.schemas.Schema;
+import org.apache.beam.sdk.schemas.Schema.FieldType;
+import org.apache.beam.sdk.testing.CoderProperties;
+import org.apache.beam.sdk.values.Row;
+import org.joda.time.Instant;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link OrderedRowCoder}. */
+@RunWith(JUnit4.class)
+public class OrderedRowCoderTest {
+  private static final Schema SCHEMA =
+      Schema.builder()
+          .addStringField("name")
+          .addInt64Field("count")
+          .addNullableField("score", FieldType.DOUBLE)
+          .build();
+
+  private static Row row(String name, long count, Double score) {
+    return Row.withSchema(SCHEMA).addValues(name, count, score).build();
+  }
+
+  private static final Comparator<Row> BY_NAME = Comparator.comparing(r -> r.getString("name"));
+  private static final Comparator<Row> BY_COUNT = Comparator.comparing(r -> r.getInt64("count"));
+  private static final Comparator<Row> BY_SCORE =
+      Comparator.comparing(
+          r -> r.getDouble("score"), Comparator.nullsFirst(Comparator.naturalOrder()));
+
+  @Test
+  public void testSchemaOrder() throws Exception {
+    assertOrderPreserving(
+        OrderedRowCoder.of(SCHEMA),
+        BY_NAME.thenComparing(BY_COUNT).thenComparing(BY_SCORE),
+        Arrays.asList(
+            row("a", 1, null),
+            row("a", 1, -2.0),
+            row("a", 2, null),
+            row("a", -5, 1.0),
+            row("ab", 0, 0.0),
+            row("b", Long.MIN_VALUE, 3.0)));
+  }
+
+  @Test
+  public void testSortFieldsAndDescending() throws Exception {
+    assertOrderPreserving(
+        OrderedRowCoder.of(SCHEMA, Arrays.asList("score", "count")).withDescending("score"),
+        BY_SCORE.reversed().thenComparing(BY_COUNT).thenComparing(BY_NAME),
+        Arrays.asList(
+            row("a", 1, null),
+            row("b", 1, null),
+            row("a", 2, null),
+            row("a", 1, 5.0),
+            row("c", 0, 5.0),
+            row("a", -1, -5.0)));
+  }
+
+  @Test
+  public void testNestedTypes() throws Exception {
+    Schema nested = Schema.builder().addInt32Field("id").addDateTimeField("ts").build();
+    Schema schema =
+        Schema.builder()
+            .addRowField("nested", nested)
+            .addArrayField("tags", FieldType.STRING)
+            .addByteArrayField("payload")
+            .build();
+    Row value =
+        Row.withSchema(schema)
+            .addValues(
+                Row.withSchema(nested).addValues(7, new Instant(1000L)).build(),
+                Arrays.asList("x", "y"),
+                new byte[] {0, 1, 2})
+            .build();
+    CoderProperties.coderDecodeEncodeEqual(OrderedRowCoder.of(schema), value);
+  }
+
+  @Test
+  public void testUnsupportedFieldType() {
+    Schema schema = Schema.builder().addDecimalField("amount").build();
+    assertThrows(IllegalArgumentException.class, () -> OrderedRowCoder.of(schema));
+  }
+
+  @Test
+  public void testUnknownSortField() {
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> OrderedRowCoder.of(SCHEMA, Collections.singletonList("missing")));
+  }
+
+  @Test
+  public void testEquals() {
+    assertEquals(OrderedRowCoder.of(SCHEMA), OrderedRowCoder.of(SCHEMA));
+    assertEquals(
+        OrderedRowCoder.of(SCHEMA).hashCode(),
+        OrderedRowCoder.of(SCHEMA, Arrays.asList("name", "count")).hashCode());
+    assertNotEquals(
+        OrderedRowCoder.of(SCHEMA), OrderedRowCoder.of(SCHEMA, Collections.singletonList("count")));
+    assertNotEquals(OrderedRowCoder.of(SCHEMA), OrderedRowCoder.of(SCHEMA).withDescending("name"));
+  }
+
+  @Test
+  public void testCoderSerializable() {
+    CoderProperties.coderSerializable(OrderedRowCoder.of(SCHEMA).withDescending("count"));
+  }
+}
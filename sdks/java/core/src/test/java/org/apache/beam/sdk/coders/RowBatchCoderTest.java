@@ -0,0 +1,204 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.coders;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.BitSet;
+import org.apache.beam.sdk.schemas.Schema;
+import org.apache.beam.sdk.testing.CoderProperties;
+import org.apache.beam.sdk.util.CoderUtils;
+import org.apache.beam.sdk.util.VarInt;
+import org.apache.beam.sdk.values.Row;
+import org.apache.beam.sdk.values.RowBatch;
+import org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.collect.ImmutableList;
+import org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.collect.Lists;
+import org.joda.time.Instant;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link RowBatchCoder}. */
+@RunWith(JUnit4.class)
+public class RowBatchCoderTest {
+  private static final Schema SCHEMA =
+      Schema.builder()
+          .addInt64Field("f_int64")
+          .addNullableField("f_double", Schema.FieldType.DOUBLE)
+          .addStringField("f_string")
+          .build();
+
+  private static RowBatch batch(int count) {
+    RowBatch.Builder builder = RowBatch.builder(SCHEMA);
+    for (int i = 0; i < count; ++i) {
+      builder.addValues((long) i, i % 2 == 0 ? null : i * 1.5, "str" + i);
+    }
+    return builder.build();
+  }
+
+  @Test
+  public void testDecodeEncodeEqual() throws Exception {
+    RowBatchCoder coder = RowBatchCoder.of(SCHEMA);
+    CoderProperties.coderDecodeEncodeEqual(coder, batch(0));
+    CoderProperties.coderDecodeEncodeEqual(coder, batch(1));
+    CoderProperties.coderDecodeEncodeEqual(coder, batch(3000));
+  }
+
+  @Test
+  public void testEncodingIsColumnar() throws Exception {
+    RowBatch batch = batch(3);
+    byte[] encoded = CoderUtils.encodeToByteArray(RowBatchCoder.of(SCHEMA), batch);
+
+    ByteArrayOutputStream expected = new ByteArrayOutputStream();
+    DataOutputStream data = new DataOutputStream(expected);
+    VarInt.encode(3, expected);
+    VarInt.encode(3, expected);
+    // f_int64 has no nulls.
+    BitSetCoder.of().encode(new BitSet(), expected);
+    for (long i = 0; i < 3; ++i) {
+      VarInt.encode(i, expected);
+    }
+    // f_double is null in the even rows.
+    BitSet nulls = new BitSet();
+    nulls.set(0);
+    nulls.set(2);
+    BitSetCoder.of().encode(nulls, expected);
+    data.writeDouble(1.5);
+    // f_string
+    BitSetCoder.of().encode(new BitSet(), expected);
+    for (int i = 0; i < 3; ++i) {
+      StringUtf8Coder.of().encode("str" + i, expected);
+    }
+    assertArrayEquals(expected.toByteArray(), encoded);
+  }
+
+  @Test
+  public void testAllFieldTypes() throws Exception {
+    Schema nested = Schema.builder().addInt32Field("f1").addStringField("f2").build();
+    Schema schema =
+        Schema.builder()
+            .addNullableField("f_byte", Schema.FieldType.BYTE)
+            .addInt16Field("f_int16")
+            .addNullableField("f_int32", Schema.FieldType.INT32)
+            .addInt64Field("f_int64")
+            .addNullableField("f_float", Schema.FieldType.FLOAT)
+            .addDoubleField("f_double")
+            .addNullableField("f_boolean", Schema.FieldType.BOOLEAN)
+            .addNullableField("f_string", Schema.FieldType.STRING)
+            .addDecimalField("f_decimal")
+            .addDateTimeField("f_datetime")
+            .addArrayField("f_array", Schema.FieldType.INT32)
+            .addNullableField("f_row", Schema.FieldType.row(nested))
+            .build();
+    RowBatch.Builder builder = RowBatch.builder(schema);
+    for (int i = 0; i < 200; ++i) {
+      boolean isNull = i % 7 == 0;
+      builder.addValues(
+          isNull ? null : (byte) -i,
+          (short) (i * -300),
+          isNull ? null : i * -70000,
+          (long) i << 40,
+          isNull ? null : i * 0.5f,
+          i * -0.25,
+          isNull ? null : i % 3 == 0,
+          isNull ? null : "str" + i % 5,
+          new BigDecimal(i).movePointLeft(2),
+          new Instant(i * 1000L),
+          ImmutableList.of(i, i + 1),
+          isNull ? null : Row.withSchema(nested).addValues(i, "n" + i).build());
+    }
+    RowBatch batch = builder.build();
+
+    CoderProperties.coderDecodeEncodeEqual(RowBatchCoder.of(schema), batch);
+    CoderProperties.coderDecodeEncodeEqual(
+        RowBatchCoder.of(schema).withStringDictionary(), batch);
+    RowBatchCoder coder = RowBatchCoder.of(schema);
+    RowBatch decoded =
+        CoderUtils.decodeFromByteArray(coder, CoderUtils.encodeToByteArray(coder, batch));
+    assertEquals(Lists.newArrayList(batch), Lists.newArrayList(decoded));
+  }
+
+  @Test
+  public void testDecodeTruncated() throws Exception {
+    byte[] encoded = CoderUtils.encodeToByteArray(RowBatchCoder.of(SCHEMA), batch(10));
+    assertThrows(
+        CoderException.class,
+        () ->
+            RowBatchCoder.of(SCHEMA)
+                .decode(new ByteArrayInputStream(Arrays.copyOf(encoded, encoded.length - 3))));
+  }
+
+  @Test
+  public void testDeterministic() throws Exception {
+    RowBatchCoder.of(SCHEMA).verifyDeterministic();
+  }
+
+  @Test
+  public void testFromSchemaCoder() throws Exception {
+    RowBatch batch = RowBatch.of(SCHEMA, ImmutableList.copyOf(batch(5)));
+    CoderProperties.coderDecodeEncodeEqual(RowCoder.of(SCHEMA).getRowBatchCoder(), batch);
+  }
+
+  private static RowBatch repetitiveBatch(int count) {
+    RowBatch.Builder builder = RowBatch.builder(SCHEMA);
+    String[] countries = {"US", "DE", "FR"};
+    for (int i = 0; i < count; ++i) {
+      builder.addValues((long) i, i % 2 == 0 ? null : i * 1.5, countries[i % countries.length]);
+    }
+    return builder.build();
+  }
+
+  @Test
+  public void testStringDictionary() throws Exception {
+    RowBatchCoder coder = RowBatchCoder.of(SCHEMA).withStringDictionary();
+    CoderProperties.coderDecodeEncodeEqual(coder, batch(0));
+    CoderProperties.coderDecodeEncodeEqual(coder, batch(100));
+    CoderProperties.coderDecodeEncodeEqual(coder, repetitiveBatch(1000));
+    CoderProperties.coderSerializable(coder);
+
+    RowBatch batch = repetitiveBatch(1000);
+    assertTrue(
+        CoderUtils.encodeToByteArray(coder, batch).length
+            < CoderUtils.encodeToByteArray(RowBatchCoder.of(SCHEMA), batch).length);
+  }
+
+  @Test
+  public void testStringDictionaryFull() throws Exception {
+    RowBatchCoder coder = RowBatchCoder.of(SCHEMA).withStringDictionary(2);
+    CoderProperties.coderDecodeEncodeEqual(coder, repetitiveBatch(10));
+    CoderProperties.coderDecodeEncodeEqual(
+        RowBatchCoder.of(SCHEMA).withStringDictionary(0), batch(10));
+  }
+
+  @Test
+  public void testStringDictionaryEquals() {
+    assertEquals(
+        RowBatchCoder.of(SCHEMA).withStringDictionary(5),
+        RowBatchCoder.of(SCHEMA).withStringDictionary(5));
+    assertNotEquals(RowBatchCoder.of(SCHEMA), RowBatchCoder.of(SCHEMA).withStringDictionary());
+  }
+}
@@ -17,7 +17,10 @@
  */
 package org.apache.beam.sdk.coders;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
@@ -35,11 +38,14 @@ import org.apache.beam.sdk.schemas.Schema.LogicalType;
 import org.apache.beam.sdk.schemas.logicaltypes.EnumerationType;
 import org.apache.beam.sdk.schemas.logicaltypes.EnumerationType.Value;
 import org.apache.beam.sdk.testing.CoderProperties;
+import org.apache.beam.sdk.util.CoderUtils;
+import org.apache.beam.sdk.values.LazyRow;
 import org.apache.beam.sdk.values.Row;
 import org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.collect.ImmutableList;
 import org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.collect.ImmutableMap;
 import org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.collect.Lists;
 import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
 import org.junit.Assume;
@@ -626,4 +632,141 @@ public class RowCoderTest {
     Row decoded = RowCoder.of(schema2).decode(new ByteArrayInputStream(os.toByteArray()));
     assertEquals(expected, decoded);
   }
+
+  private static final Schema LAZY_NESTED_SCHEMA =
+      Schema.builder().addInt32Field("f1_int").addStringField("f1_str").build();
+
+  private static final Schema LAZY_SCHEMA =
+      Schema.builder()
+          .addByteField("f_byte")
+          .addInt16Field("f_int16")
+          .addInt32Field("f_int32")
+          .addNullableField("f_int64", FieldType.INT64)
+          .addDecimalField("f_decimal")
+          .addFloatField("f_float")
+          .addDoubleField("f_double")
+          .addNullableField("f_string", FieldType.STRING)
+          .addDateTimeField("f_datetime")
+          .addBooleanField("f_boolean")
+          .addByteArrayField("f_bytes")
+          .addArrayField("f_array", FieldType.STRING)
+          .addMapField("f_map", FieldType.STRING, FieldType.INT32)
+          .addRowField("f_row", LAZY_NESTED_SCHEMA)
+          .addStringField("f_last")
+          .build();
+
+  private static Row lazySchemaRow(@Nullable Long int64, @Nullable String string) {
+    DateTime dateTime =
+        new DateTime().withDate(1979, 3, 14).withTime(1, 2, 3, 4).withZone(DateTimeZone.UTC);
+    return Row.withSchema(LAZY_SCHEMA)
+        .addValues(
+            (byte) -3,
+            (short) 1000,
+            -2,
+            int64,
+            new BigDecimal("-12345.6789"),
+            1.2f,
+            3.0d,
+            string,
+            dateTime,
+            true,
+            "bytes".getBytes(StandardCharsets.UTF_8),
+            ImmutableList.of("a", "bb"),
+            ImmutableMap.of("k", 1),
+            Row.withSchema(LAZY_NESTED_SCHEMA).addValues(18, "foobar").build(),
+            "last")
+        .build();
+  }
+
+  @Test
+  public void testLazyDecoding() throws Exception {
+    RowCoder coder = RowCoder.of(LAZY_SCHEMA).withLazyDecoding();
+    CoderProperties.coderDecodeEncodeEqual(coder, lazySchemaRow(Long.MAX_VALUE, "str"));
+    CoderProperties.coderDecodeEncodeEqual(coder, lazySchemaRow(null, null));
+    CoderProperties.coderSerializable(coder);
+  }
+
+  @Test
+  public void testLazyDecodingReadsSingleFields() throws Exception {
+    RowCoder coder = RowCoder.of(LAZY_SCHEMA);
+    Row row = lazySchemaRow(-7L, "str");
+    byte[] encoded = CoderUtils.encodeToByteArray(coder, row);
+
+    Row decoded = CoderUtils.decodeFromByteArray(coder.withLazyDecoding(), encoded);
+
+    assertTrue(decoded instanceof LazyRow);
+    assertEquals("last", decoded.getString("f_last"));
+    assertEquals(Long.valueOf(-7L), decoded.getInt64("f_int64"));
+    assertEquals(new BigDecimal("-12345.6789"), decoded.getDecimal("f_decimal"));
+    assertEquals(row, decoded);
+  }
+
+  @Test
+  public void testLazyRowIsReencodedFromOriginalBytes() throws Exception {
+    RowCoder coder = RowCoder.of(LAZY_SCHEMA);
+    byte[] encoded = CoderUtils.encodeToByteArray(coder, lazySchemaRow(null, "str"));
+
+    Row decoded = CoderUtils.decodeFromByteArray(coder.withLazyDecoding(), encoded);
+    assertTrue(((LazyRow) decoded).isEncodedWith(coder.getSchema()));
+
+    assertArrayEquals(encoded, CoderUtils.encodeToByteArray(coder, decoded));
+    assertArrayEquals(encoded, CoderUtils.encodeToByteArray(coder.withLazyDecoding(), decoded));
+  }
+
+  @Test
+  public void testLazyDecodingEncodingPositionReorderFields() throws Exception {
+    Schema schema1 =
+        Schema.builder()
+            .addNullableField("f_int32", FieldType.INT32)
+            .addNullableField("f_string", FieldType.STRING)
+            .build();
+    Schema schema2 =
+        Schema.builder()
+            .addNullableField("f_string", FieldType.STRING)
+            .addNullableField("f_int32", FieldType.INT32)
+            .build();
+    schema2.setEncodingPositions(ImmutableMap.of("f_int32", 0, "f_string", 1));
+    Row row = Row.withSchema(schema1).addValues(42, "hello world!").build();
+    Row expected = Row.withSchema(schema2).addValues("hello world!", 42).build();
+
+    byte[] encoded = CoderUtils.encodeToByteArray(RowCoder.of(schema1), row);
+    Row decoded = CoderUtils.decodeFromByteArray(RowCoder.of(schema2).withLazyDecoding(), encoded);
+
+    assertEquals(expected, decoded);
+  }
+
+  @Test
+  public void testLazyDecodingEncodingPositionAddNewFields() throws Exception {
+    Schema schema1 = Schema.builder().addNullableField("f_int32", FieldType.INT32).build();
+    Schema schema2 =
+        Schema.builder()
+            .addNullableField("f_int32", FieldType.INT32)
+            .addNullableField("f_string", FieldType.STRING)
+            .build();
+    Row row = Row.withSchema(schema1).addValues(42).build();
+    Row expected = Row.withSchema(schema2).addValues(42, null).build();
+
+    RowCoder coder2 = RowCoder.of(schema2);
+    byte[] encoded = CoderUtils.encodeToByteArray(RowCoder.of(schema1), row);
+    Row decoded = CoderUtils.decodeFromByteArray(coder2.withLazyDecoding(), encoded);
+
+    assertEquals(expected, decoded);
+    // The encoded bytes were written with a different field count, so they cannot be copied.
+    assertFalse(((LazyRow) decoded).isEncodedWith(coder2.getSchema()));
+    byte[] reencoded = CoderUtils.encodeToByteArray(coder2, decoded);
+    assertEquals(expected, CoderUtils.decodeFromByteArray(coder2, reencoded));
+  }
+
+  @Test
+  public void testEncodedSize() throws Exception {
+    RowCoder coder = RowCoder.of(LAZY_SCHEMA);
+    for (Row row : Arrays.asList(lazySchemaRow(-7L, "str"), lazySchemaRow(null, null))) {
+      byte[] encoded = CoderUtils.encodeToByteArray(coder, row);
+      assertEquals(encoded.length, coder.getEncodedElementByteSize(row));
+
+      Row decoded = CoderUtils.decodeFromByteArray(coder.withLazyDecoding(), encoded);
+      assertTrue(coder.isRegisterByteSizeObserverCheap(decoded));
+      assertEquals(encoded.length, coder.getEncodedElementByteSize(decoded));
+    }
+  }
 }
@@ -19,12 +19,16 @@ package org.apache.beam.sdk.coders;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
 
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import org.apache.beam.sdk.testing.CoderProperties;
 import org.apache.beam.sdk.transforms.windowing.GlobalWindow;
+import org.apache.beam.sdk.util.CoderUtils;
 import org.apache.beam.sdk.values.KV;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -167,4 +171,46 @@ public class ZstdCoderTest {
         "ZstdCoder{innerCoder=TextualIntegerCoder, dict=base64:AA==, level=2}",
         ZstdCoder.of(TextualIntegerCoder.of(), new byte[1], 2).toString());
   }
+
+  private static List<String> jsonSample(int count) {
+    List<String> sample = new ArrayList<>();
+    for (int i = 0; i < count; ++i) {
+      sample.add(
+          String.format(
+              "{\"user_id\":%d,\"country\":\"%s\",\"event\":\"page_view\",\"ok\":%b}",
+              i * 7919, i % 3 == 0 ? "DE" : "US", i % 2 == 0));
+    }
+    return sample;
+  }
+
+  @Test
+  public void testTrainedDictionary() throws Exception {
+    List<String> sample = jsonSample(2000);
+    ZstdCoder<String> coder = ZstdCoder.ofSample(StringUtf8Coder.of(), sample);
+    for (String value : TEST_VALUES) {
+      CoderProperties.coderDecodeEncodeEqual(coder, value);
+    }
+
+    String value = sample.get(1234);
+    CoderProperties.coderDecodeEncodeEqual(coder, value);
+    assertTrue(
+        CoderUtils.encodeToByteArray(coder, value).length
+            < CoderUtils.encodeToByteArray(TEST_CODER, value).length);
+
+    // The dictionary is carried in the serialized coder.
+    CoderProperties.coderSerializable(coder);
+    assertEquals(
+        coder,
+        ZstdCoder.of(
+            StringUtf8Coder.of(),
+            ZstdCoder.trainDictionary(
+                StringUtf8Coder.of(), sample, ZstdCoder.DEFAULT_DICTIONARY_SIZE)));
+  }
+
+  @Test
+  public void testTrainDictionaryInvalidSize() {
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> ZstdCoder.trainDictionary(StringUtf8Coder.of(), jsonSample(10), 0));
+  }
 }
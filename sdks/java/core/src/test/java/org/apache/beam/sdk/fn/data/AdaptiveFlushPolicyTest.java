@@ -0,0 +1,64 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.fn.data;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link AdaptiveFlushPolicy}. */
+@RunWith(JUnit4.class)
+public class AdaptiveFlushPolicyTest {
+  private static final long MILLIS = TimeUnit.MILLISECONDS.toNanos(1);
+
+  @Test
+  public void testInitialTarget() {
+    AdaptiveFlushPolicy policy = new AdaptiveFlushPolicy(10, 1_000_000, 0);
+    assertEquals(AdaptiveFlushPolicy.MIN_TARGET_BYTES, policy.getTargetBytes());
+  }
+
+  @Test
+  public void testTargetFollowsRate() {
+    AdaptiveFlushPolicy policy = new AdaptiveFlushPolicy(10, 1_000_000, 0);
+    // 10 KB per millisecond for a 10 millisecond target latency.
+    long now = 0;
+    for (int i = 0; i < 20; ++i) {
+      now += MILLIS;
+      policy.recordFlush(10_000, now);
+    }
+    assertEquals(100_000, policy.getTargetBytes(), 1);
+  }
+
+  @Test
+  public void testTargetIsBounded() {
+    AdaptiveFlushPolicy fast = new AdaptiveFlushPolicy(10, 50_000, 0);
+    fast.recordFlush(1_000_000, MILLIS);
+    assertEquals(50_000, fast.getTargetBytes());
+
+    AdaptiveFlushPolicy slow = new AdaptiveFlushPolicy(10, 50_000, 0);
+    slow.recordFlush(100, 1000 * MILLIS);
+    assertEquals(AdaptiveFlushPolicy.MIN_TARGET_BYTES, slow.getTargetBytes());
+
+    AdaptiveFlushPolicy small = new AdaptiveFlushPolicy(10, 100, 0);
+    small.recordFlush(1_000_000, MILLIS);
+    assertEquals(AdaptiveFlushPolicy.MIN_TARGET_BYTES, small.getTargetBytes());
+  }
+}
@@ -19,6 +19,7 @@ package org.apache.beam.sdk.fn.data;
 
 import static org.hamcrest.Matchers.empty;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.io.IOException;
@@ -26,6 +27,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
@@ -34,6 +36,7 @@ import org.apache.beam.model.fnexecution.v1.BeamFnApi.Elements;
 import org.apache.beam.sdk.coders.ByteArrayCoder;
 import org.apache.beam.sdk.coders.Coder;
 import org.apache.beam.sdk.coders.LengthPrefixCoder;
+import org.apache.beam.sdk.fn.data.BeamFnDataOutboundAggregator.FlushHistograms;
 import org.apache.beam.sdk.fn.data.BeamFnDataOutboundAggregator.Receiver;
 import org.apache.beam.sdk.fn.test.TestStreams;
 import org.apache.beam.sdk.options.ExperimentalOptions;
@@ -368,6 +371,49 @@ public class BeamFnDataOutboundAggregatorTest {
     }
   }
 
+  @Test
+  public void testConfiguredTargetLatency() throws Exception {
+    List<BeamFnApi.Elements> values = new ArrayList<>();
+    AtomicBoolean isReady = new AtomicBoolean(true);
+    PipelineOptions options = PipelineOptionsFactory.create();
+    options
+        .as(ExperimentalOptions.class)
+        .setExperiments(Arrays.asList("data_buffer_target_latency_ms=60000"));
+    BeamFnDataOutboundAggregator aggregator =
+        new BeamFnDataOutboundAggregator(
+            options,
+            endpoint::getInstructionId,
+            TestStreams.<Elements>withOnNext(values::add).withIsReady(isReady::get).build(),
+            false);
+    FnDataReceiver<byte[]> dataReceiver = registerOutputLocation(aggregator, endpoint, CODER);
+    aggregator.start();
+
+    // Test that the buffer grows past the initial target size while the stream is not ready.
+    isReady.set(false);
+    dataReceiver.accept(new byte[AdaptiveFlushPolicy.MIN_TARGET_BYTES]);
+    MatcherAssert.assertThat(values, empty());
+
+    // Test that we emit once the stream is ready again.
+    isReady.set(true);
+    dataReceiver.accept(new byte[1]);
+    assertEquals(
+        messageWithData(new byte[AdaptiveFlushPolicy.MIN_TARGET_BYTES], new byte[1]),
+        values.get(0));
+
+    aggregator.sendOrCollectBufferedDataAndFinishOutboundStreams();
+    assertEquals(endMessage(), values.get(1));
+
+    Map<String, FlushHistograms> histograms = aggregator.getAndResetFlushHistograms();
+    if (endpoint.isTimer()) {
+      assertTrue(histograms.isEmpty());
+    } else {
+      FlushHistograms flushes = histograms.get(endpoint.getTransformId());
+      assertEquals(1, flushes.getSizeBytes().getTotalCount());
+      assertEquals(1, flushes.getLatencyMillis().getTotalCount());
+      assertTrue(aggregator.getAndResetFlushHistograms().isEmpty());
+    }
+  }
+
   BeamFnApi.Elements messageWithData(byte[]... datum) throws IOException {
     return messageWithDataBuilder(datum).build();
   }
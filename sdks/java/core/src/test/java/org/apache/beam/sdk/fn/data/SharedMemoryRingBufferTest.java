@@ -0,0 +1,168 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.fn.data;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.rules.Timeout;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link SharedMemoryRingBuffer}. */
+@RunWith(JUnit4.class)
+public class SharedMemoryRingBufferTest {
+  @Rule public TemporaryFolder tmp = new TemporaryFolder();
+  @Rule public Timeout globalTimeout = Timeout.seconds(60);
+
+  @Test
+  public void testWriteAndRead() throws Exception {
+    Path path = tmp.getRoot().toPath().resolve("ring");
+    SharedMemoryRingBuffer writer = SharedMemoryRingBuffer.create(path, 1024);
+    SharedMemoryRingBuffer reader = SharedMemoryRingBuffer.open(path);
+    assertEquals(1024, reader.getCapacity());
+
+    writer.write(new byte[] {1, 2, 3});
+    writer.write(new byte[0]);
+    assertArrayEquals(new byte[] {1, 2, 3}, reader.read());
+    assertArrayEquals(new byte[0], reader.read());
+  }
+
+  @Test
+  public void testWrapAroundAndFragments() throws Exception {
+    Path path = tmp.getRoot().toPath().resolve("ring");
+    SharedMemoryRingBuffer writer = SharedMemoryRingBuffer.create(path, 1024);
+    SharedMemoryRingBuffer reader = SharedMemoryRingBuffer.open(path);
+
+    Random random = new Random(0);
+    List<byte[]> records = new ArrayList<>();
+    for (int i = 0; i < 2000; ++i) {
+      // Mostly small records that wrap around at varying offsets, and some larger than the buffer.
+      byte[] record = new byte[random.nextInt(i % 50 == 0 ? 3000 : 300)];
+      random.nextBytes(record);
+      records.add(record);
+    }
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      Future<?> writes =
+          executor.submit(
+              () -> {
+                for (byte[] record : records) {
+                  writer.write(record);
+                }
+                writer.close();
+                return null;
+              });
+      for (byte[] record : records) {
+        assertArrayEquals(record, reader.read());
+      }
+      assertNull(reader.read());
+      writes.get();
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testConcurrentProducerAndConsumer() throws Exception {
+    Path path = tmp.getRoot().toPath().resolve("ring");
+    SharedMemoryRingBuffer writer = SharedMemoryRingBuffer.create(path, 4096);
+    SharedMemoryRingBuffer reader = SharedMemoryRingBuffer.open(path);
+
+    // Each record repeats its sequence number, so a reader that sees the published write position
+    // before the payload, or a writer that overwrites a record before it was read, is detected.
+    int records = 200_000;
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      Future<?> writes =
+          executor.submit(
+              () -> {
+                for (int i = 0; i < records; ++i) {
+                  ByteBuffer record = ByteBuffer.allocate(4 * (1 + i % 97));
+                  while (record.hasRemaining()) {
+                    record.putInt(i);
+                  }
+                  writer.write(record.array());
+                }
+                writer.close();
+                return null;
+              });
+      Future<?> reads =
+          executor.submit(
+              () -> {
+                for (int i = 0; i < records; ++i) {
+                  byte[] record = reader.read();
+                  assertNotNull(record);
+                  assertEquals(4 * (1 + i % 97), record.length);
+                  ByteBuffer buffer = ByteBuffer.wrap(record);
+                  while (buffer.hasRemaining()) {
+                    assertEquals(i, buffer.getInt());
+                  }
+                }
+                assertNull(reader.read());
+                return null;
+              });
+      writes.get();
+      reads.get();
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testClose() throws Exception {
+    Path path = tmp.getRoot().toPath().resolve("ring");
+    SharedMemoryRingBuffer writer = SharedMemoryRingBuffer.create(path, 1024);
+    SharedMemoryRingBuffer reader = SharedMemoryRingBuffer.open(path);
+
+    writer.write(new byte[] {1});
+    reader.close();
+    assertTrue(writer.isClosed());
+    assertThrows(IOException.class, () -> writer.write(new byte[] {2}));
+    // Records written before closing are still read.
+    assertArrayEquals(new byte[] {1}, reader.read());
+    assertNull(reader.read());
+  }
+
+  @Test
+  public void testInvalidFiles() throws Exception {
+    Path path = tmp.getRoot().toPath().resolve("ring");
+    assertThrows(
+        IllegalArgumentException.class, () -> SharedMemoryRingBuffer.create(path, 1000));
+    Files.write(path, new byte[4096]);
+    assertThrows(IOException.class, () -> SharedMemoryRingBuffer.open(path));
+    assertThrows(IOException.class, () -> SharedMemoryRingBuffer.create(path, 1024));
+  }
+}
@@ -349,6 +349,21 @@ public class WriteFilesTest {
         true);
   }
 
+  @Test
+  @Category({NeedsRunner.class, UsesUnboundedPCollections.class})
+  public void testWithAutoShardingAndCompressedBatches() throws IOException {
+    runShardedWrite(
+        Arrays.asList("one", "two", "three", "four", "five", "six"),
+        Window.into(FixedWindows.of(Duration.standardSeconds(10))),
+        getBaseOutputFilename(),
+        WriteFiles.to(makeSimpleSink())
+            .withWindowedWrites()
+            .withAutoSharding()
+            .withCompressedBatches(),
+        null,
+        true);
+  }
+
   @Test
   @Category({NeedsRunner.class, UsesUnboundedPCollections.class})
   public void testWriteUnboundedWithCustomBatchParameters() throws IOException {
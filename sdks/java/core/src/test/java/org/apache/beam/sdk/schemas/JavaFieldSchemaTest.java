@@ -38,6 +38,7 @@ import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.containsString;
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertThrows;
@@ -49,6 +50,8 @@ import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.coders.RowCoder;
 import org.apache.beam.sdk.schemas.Schema.Field;
 import org.apache.beam.sdk.schemas.Schema.FieldType;
 import org.apache.beam.sdk.schemas.logicaltypes.EnumerationType;
@@ -74,8 +77,10 @@ import org.apache.beam.sdk.schemas.utils.TestPOJOs.SelfNestedPOJO;
 import org.apache.beam.sdk.schemas.utils.TestPOJOs.SimplePOJO;
 import org.apache.beam.sdk.schemas.utils.TestPOJOs.StaticCreationSimplePojo;
 import org.apache.beam.sdk.transforms.SerializableFunction;
+import org.apache.beam.sdk.util.CoderUtils;
 import org.apache.beam.sdk.util.SerializableUtils;
 import org.apache.beam.sdk.values.Row;
+import org.apache.beam.sdk.values.TypeDescriptor;
 import org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.collect.ImmutableList;
 import org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.collect.ImmutableMap;
 import org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.collect.Lists;
@@ -298,6 +303,69 @@ public class JavaFieldSchemaTest {
     assertSame(pojo, extracted);
   }
 
+  @Test
+  public void testSchemaCoderMatchesRowCoder() throws Exception {
+    SchemaRegistry registry = SchemaRegistry.createDefault();
+    SchemaCoder<SimplePOJO> coder = registry.getSchemaCoder(SimplePOJO.class);
+    SimplePOJO pojo = createSimple("string");
+    Row row = coder.getToRowFunction().apply(pojo);
+
+    // The pojo is encoded straight from its getters, but must produce the same bytes as its row.
+    byte[] encoded = CoderUtils.encodeToByteArray(coder, pojo);
+    assertArrayEquals(CoderUtils.encodeToByteArray(RowCoder.of(coder.getSchema()), row), encoded);
+    SimplePOJO decoded = CoderUtils.decodeFromByteArray(coder, encoded);
+    assertEquals(row, coder.getToRowFunction().apply(decoded));
+  }
+
+  @Test
+  public void testNullableSchemaCoderMatchesRowCoder() throws Exception {
+    SchemaRegistry registry = SchemaRegistry.createDefault();
+    SchemaCoder<NullablePOJO> coder = registry.getSchemaCoder(NullablePOJO.class);
+    NullablePOJO pojo = createNullable();
+    Row row = coder.getToRowFunction().apply(pojo);
+
+    byte[] encoded = CoderUtils.encodeToByteArray(coder, pojo);
+    assertArrayEquals(CoderUtils.encodeToByteArray(RowCoder.of(coder.getSchema()), row), encoded);
+    NullablePOJO decoded = CoderUtils.decodeFromByteArray(coder, encoded);
+    assertNull(decoded.anInt);
+    assertNull(decoded.str);
+  }
+
+  @Test
+  public void testSchemaCoderEncodedSize() throws Exception {
+    SchemaRegistry registry = SchemaRegistry.createDefault();
+    SchemaCoder<SimplePOJO> simpleCoder = registry.getSchemaCoder(SimplePOJO.class);
+    SimplePOJO simple = createSimple("string");
+    assertEquals(
+        CoderUtils.encodeToByteArray(simpleCoder, simple).length,
+        Coder.getEncodedElementByteSizeUsingCoder(simpleCoder, simple));
+
+    SchemaCoder<NullablePOJO> nullableCoder = registry.getSchemaCoder(NullablePOJO.class);
+    NullablePOJO nullable = createNullable();
+    assertEquals(
+        CoderUtils.encodeToByteArray(nullableCoder, nullable).length,
+        Coder.getEncodedElementByteSizeUsingCoder(nullableCoder, nullable));
+  }
+
+  @Test
+  public void testPrimitiveGetters() throws NoSuchSchemaException {
+    SchemaRegistry registry = SchemaRegistry.createDefault();
+    Schema schema = registry.getSchema(SimplePOJO.class);
+    List<FieldValueGetter<SimplePOJO, Object>> getters =
+        new JavaFieldSchema().fieldValueGetters(TypeDescriptor.of(SimplePOJO.class), schema);
+    SimplePOJO pojo = createSimple("string");
+
+    FieldValueGetter<SimplePOJO, Object> intGetter = getters.get(schema.indexOf("anInt"));
+    assertTrue(intGetter instanceof PrimitiveFieldValueGetter);
+    PrimitiveFieldValueGetter<SimplePOJO> primitiveGetter =
+        (PrimitiveFieldValueGetter<SimplePOJO>) intGetter;
+    assertEquals(int.class, primitiveGetter.primitiveType());
+    assertEquals(3, primitiveGetter.getInt(pojo));
+    assertThrows(UnsupportedOperationException.class, () -> primitiveGetter.getLong(pojo));
+
+    assertFalse(getters.get(schema.indexOf("str")) instanceof PrimitiveFieldValueGetter);
+  }
+
   @Test
   public void testRecursiveGetters() throws NoSuchSchemaException {
     SchemaRegistry registry = SchemaRegistry.createDefault();
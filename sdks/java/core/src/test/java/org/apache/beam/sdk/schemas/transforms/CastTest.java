@@ -20,7 +20,9 @@ package org.apache.beam.sdk.schemas.transforms;
 import static org.hamcrest.Matchers.containsString;
 import static org.junit.Assert.assertEquals;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import org.apache.beam.sdk.schemas.Schema;
 import org.apache.beam.sdk.testing.NeedsRunner;
 import org.apache.beam.sdk.testing.PAssert;
@@ -73,6 +75,39 @@ public class CastTest {
     pipeline.run();
   }
 
+  @Test
+  @Category(NeedsRunner.class)
+  public void testProjectionManyRows() {
+    Schema inputSchema =
+        Schema.of(
+            Schema.Field.of("f0", Schema.FieldType.INT16),
+            Schema.Field.of("f1", Schema.FieldType.INT32),
+            Schema.Field.of("f2", Schema.FieldType.STRING));
+
+    // remove f0, reorder f1 and f2 and widen f1
+    Schema outputSchema =
+        Schema.of(
+            Schema.Field.of("f2", Schema.FieldType.STRING),
+            Schema.Field.of("f1", Schema.FieldType.INT64));
+
+    // Enough rows for runners that support @ProcessBatch to cast them in batches.
+    List<Row> input = new ArrayList<>();
+    List<Row> expected = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      input.add(Row.withSchema(inputSchema).addValues((short) i, i, "row" + i).build());
+      expected.add(Row.withSchema(outputSchema).addValues("row" + i, (long) i).build());
+    }
+
+    PCollection<Row> output =
+        pipeline
+            .apply(Create.of(input).withRowSchema(inputSchema))
+            .apply(Cast.widening(outputSchema));
+
+    PAssert.that(output).containsInAnyOrder(expected);
+
+    pipeline.run();
+  }
+
   @Test
   @Category(NeedsRunner.class)
   public void testTypeWiden() {
@@ -18,6 +18,8 @@
 package org.apache.beam.sdk.schemas.transforms;
 
 import com.google.auto.value.AutoValue;
+import java.util.ArrayList;
+import java.util.List;
 import org.apache.beam.sdk.schemas.AutoValueSchema;
 import org.apache.beam.sdk.schemas.annotations.DefaultSchema;
 import org.apache.beam.sdk.testing.NeedsRunner;
@@ -140,4 +142,29 @@ public class FilterTest {
             new AutoValue_FilterTest_Simple("", 70, 33));
     pipeline.run();
   }
+
+  @Test
+  @Category(NeedsRunner.class)
+  public void testFilterManyElements() {
+    // Enough elements for runners that support @ProcessBatch to filter them in batches.
+    List<AutoValue_FilterTest_Simple> elements = new ArrayList<>();
+    List<AutoValue_FilterTest_Simple> expected = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      AutoValue_FilterTest_Simple element =
+          new AutoValue_FilterTest_Simple(i % 2 == 0 ? "pass" : "fail", i, i);
+      elements.add(element);
+      if (i % 2 == 0 && i > 50) {
+        expected.add(element);
+      }
+    }
+    PCollection<AutoValue_FilterTest_Simple> filtered =
+        pipeline
+            .apply(Create.of(elements))
+            .apply(
+                Filter.<AutoValue_FilterTest_Simple>create()
+                    .whereFieldName("field1", s -> "pass".equals(s))
+                    .whereFieldName("field2", (Integer i) -> i > 50));
+    PAssert.that(filtered).containsInAnyOrder(expected);
+    pipeline.run();
+  }
 }
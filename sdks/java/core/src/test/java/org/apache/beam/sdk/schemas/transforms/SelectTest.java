@@ -17,14 +17,19 @@
  */
 package org.apache.beam.sdk.schemas.transforms;
 
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
 import static org.junit.Assert.assertEquals;
 
 import com.google.auto.value.AutoValue;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
+import org.apache.beam.sdk.coders.RowBatchCoder;
+import org.apache.beam.sdk.coders.SerializableCoder;
 import org.apache.beam.sdk.schemas.AutoValueSchema;
 import org.apache.beam.sdk.schemas.Schema;
 import org.apache.beam.sdk.schemas.Schema.FieldType;
@@ -36,6 +41,7 @@ import org.apache.beam.sdk.testing.UsesSchema;
 import org.apache.beam.sdk.transforms.Create;
 import org.apache.beam.sdk.values.PCollection;
 import org.apache.beam.sdk.values.Row;
+import org.apache.beam.sdk.values.RowBatch;
 import org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.collect.ImmutableList;
 import org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.collect.ImmutableMap;
 import org.junit.Rule;
@@ -886,4 +892,95 @@ public class SelectTest {
 
     pipeline.run();
   }
+
+  private static final Schema BATCH_SCHEMA =
+      Schema.builder()
+          .addInt64Field("id")
+          .addNullableField("name", FieldType.STRING)
+          .addDoubleField("score")
+          .build();
+
+  private static RowBatch batch(Schema schema, int start, int count) {
+    RowBatch.Builder builder = RowBatch.builder(schema);
+    for (int i = start; i < start + count; ++i) {
+      builder.addValues((long) i, i % 2 == 0 ? null : "name" + i, i * 0.5);
+    }
+    return builder.build();
+  }
+
+  @Test
+  @Category(NeedsRunner.class)
+  public void testSelectOnBatches() {
+    PCollection<RowBatch> selected =
+        pipeline
+            .apply(
+                Create.of(batch(BATCH_SCHEMA, 0, 10), batch(BATCH_SCHEMA, 10, 5))
+                    .withCoder(RowBatchCoder.of(BATCH_SCHEMA)))
+            .apply(Select.fieldNames("score", "id").onBatches());
+
+    Schema expectedSchema = Schema.builder().addDoubleField("score").addInt64Field("id").build();
+    assertEquals(RowBatchCoder.of(expectedSchema), selected.getCoder());
+    PAssert.that(selected)
+        .satisfies(
+            batches -> {
+              List<Row> rows = new ArrayList<>();
+              for (RowBatch batch : batches) {
+                assertEquals(expectedSchema, batch.getSchema());
+                batch.forEach(rows::add);
+              }
+              List<Row> expected = new ArrayList<>();
+              for (int i = 0; i < 15; ++i) {
+                expected.add(Row.withSchema(expectedSchema).addValues(i * 0.5, (long) i).build());
+              }
+              assertThat(rows, containsInAnyOrder(expected.toArray()));
+              return null;
+            });
+    pipeline.run();
+  }
+
+  @Test
+  @Category(NeedsRunner.class)
+  public void testSelectOnBatchesRenamed() {
+    PCollection<RowBatch> selected =
+        pipeline
+            .apply(Create.of(batch(BATCH_SCHEMA, 0, 4)).withCoder(RowBatchCoder.of(BATCH_SCHEMA)))
+            .apply(Select.fieldNames("name").withFieldNameAs("id", "key").onBatches());
+
+    Schema expectedSchema =
+        Schema.builder().addNullableField("name", FieldType.STRING).addInt64Field("key").build();
+    RowBatch expected =
+        RowBatch.builder(expectedSchema)
+            .addValues(null, 0L)
+            .addValues("name1", 1L)
+            .addValues(null, 2L)
+            .addValues("name3", 3L)
+            .build();
+    PAssert.that(selected).containsInAnyOrder(expected);
+    pipeline.run();
+  }
+
+  @Test
+  public void testSelectNestedFieldOnBatchesFails() {
+    Schema nestedSchema = Schema.builder().addRowField("nested", BATCH_SCHEMA).build();
+    pipeline.enableAbandonedNodeEnforcement(false);
+    PCollection<RowBatch> batches =
+        pipeline.apply(
+            Create.of(RowBatch.builder(nestedSchema).build())
+                .withCoder(RowBatchCoder.of(nestedSchema)));
+
+    thrown.expect(IllegalArgumentException.class);
+    batches.apply(Select.fieldNames("nested.id").onBatches());
+  }
+
+  @Test
+  public void testSelectOnBatchesRequiresRowBatchCoder() {
+    pipeline.enableAbandonedNodeEnforcement(false);
+    PCollection<RowBatch> batches =
+        pipeline.apply(
+            Create.of(batch(BATCH_SCHEMA, 0, 1))
+                .withCoder(SerializableCoder.of(RowBatch.class)));
+
+    thrown.expect(IllegalArgumentException.class);
+    batches.apply(Select.fieldNames("id").onBatches());
+  }
 }
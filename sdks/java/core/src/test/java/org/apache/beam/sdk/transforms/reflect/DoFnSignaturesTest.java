@@ -32,6 +32,7 @@ import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.lang.reflect.Field;
+import java.util.Collections;
 import java.util.List;
 import org.apache.beam.sdk.coders.StringUtf8Coder;
 import org.apache.beam.sdk.coders.VarIntCoder;
@@ -76,10 +77,12 @@ import org.apache.beam.sdk.transforms.reflect.DoFnSignatures.FnAnalysisContext;
 import org.apache.beam.sdk.transforms.reflect.DoFnSignaturesTestUtils.FakeDoFn;
 import org.apache.beam.sdk.transforms.splittabledofn.RestrictionTracker;
 import org.apache.beam.sdk.transforms.windowing.BoundedWindow;
+import org.apache.beam.sdk.transforms.windowing.IntervalWindow;
 import org.apache.beam.sdk.transforms.windowing.PaneInfo;
 import org.apache.beam.sdk.transforms.windowing.TimestampCombiner;
 import org.apache.beam.sdk.values.KV;
 import org.apache.beam.sdk.values.Row;
+import org.apache.beam.sdk.values.TimestampedValue;
 import org.apache.beam.sdk.values.TypeDescriptor;
 import org.apache.beam.sdk.values.TypeDescriptors;
 import org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.collect.Lists;
@@ -282,6 +285,116 @@ public class DoFnSignaturesTest {
     assertThat(sig.processElement().requiresStableInput(), is(true));
   }
 
+  @Test
+  public void testProcessBatch() throws Exception {
+    DoFnSignature sig =
+        DoFnSignatures.getSignature(
+            new DoFn<String, Integer>() {
+              @ProcessElement
+              public void process(@Element String element, OutputReceiver<Integer> receiver) {}
+
+              @ProcessBatch(maxBatchSize = 10)
+              public List<TimestampedValue<Integer>> processBatch(
+                  List<TimestampedValue<String>> elements, IntervalWindow window) {
+                return Collections.emptyList();
+              }
+            }.getClass());
+
+    assertThat(sig.processBatch(), notNullValue());
+    assertEquals(10, sig.processBatch().maxBatchSize());
+    assertEquals(TypeDescriptor.of(IntervalWindow.class), sig.processBatch().windowT());
+  }
+
+  @Test
+  public void testProcessBatchWrongElementsType() throws Exception {
+    thrown.expect(IllegalArgumentException.class);
+    thrown.expectMessage("First argument must have type");
+    DoFnSignatures.getSignature(
+        new DoFn<String, Integer>() {
+          @ProcessElement
+          public void process(@Element String element) {}
+
+          @ProcessBatch
+          public List<TimestampedValue<Integer>> processBatch(
+              List<TimestampedValue<Integer>> elements, BoundedWindow window) {
+            return Collections.emptyList();
+          }
+        }.getClass());
+  }
+
+  @Test
+  public void testProcessBatchWrongReturnType() throws Exception {
+    thrown.expect(IllegalArgumentException.class);
+    thrown.expectMessage("Must return");
+    DoFnSignatures.getSignature(
+        new DoFn<String, Integer>() {
+          @ProcessElement
+          public void process(@Element String element) {}
+
+          @ProcessBatch
+          public List<Integer> processBatch(
+              List<TimestampedValue<String>> elements, BoundedWindow window) {
+            return Collections.emptyList();
+          }
+        }.getClass());
+  }
+
+  @Test
+  public void testProcessBatchWithState() throws Exception {
+    thrown.expect(IllegalArgumentException.class);
+    thrown.expectMessage("Must not be declared by a DoFn that uses state or timers");
+    DoFnSignatures.getSignature(
+        new DoFn<KV<String, Integer>, Integer>() {
+          @StateId("count")
+          private final StateSpec<ValueState<Integer>> count = StateSpecs.value();
+
+          @ProcessElement
+          public void process(@StateId("count") ValueState<Integer> count) {}
+
+          @ProcessBatch
+          public List<TimestampedValue<Integer>> processBatch(
+              List<TimestampedValue<KV<String, Integer>>> elements, BoundedWindow window) {
+            return Collections.emptyList();
+          }
+        }.getClass());
+  }
+
+  @Test
+  public void testProcessBatchWithSideInputs() throws Exception {
+    thrown.expect(IllegalArgumentException.class);
+    thrown.expectMessage("Must not be declared by a DoFn that reads side inputs");
+    DoFnSignatures.getSignature(
+        new DoFn<String, Integer>() {
+          @ProcessElement
+          public void process(@Element String element, @SideInput("limit") Integer limit) {}
+
+          @ProcessBatch
+          public List<TimestampedValue<Integer>> processBatch(
+              List<TimestampedValue<String>> elements, BoundedWindow window) {
+            return Collections.emptyList();
+          }
+        }.getClass());
+  }
+
+  @Test
+  public void testProcessBatchWithSideInputParameter() throws Exception {
+    thrown.expect(IllegalArgumentException.class);
+    thrown.expectMessage("Side input parameters are not supported");
+    DoFnSignatures.getSignature(
+        new DoFn<String, Integer>() {
+          @ProcessElement
+          public void process(@Element String element) {}
+
+          @ProcessBatch
+          public List<TimestampedValue<Integer>> processBatch(
+              List<TimestampedValue<String>> elements,
+              BoundedWindow window,
+              @SideInput("limit") Integer limit) {
+            return Collections.emptyList();
+          }
+        }.getClass());
+  }
+
   @Test
   public void testBadExtraContext() throws Exception {
     thrown.expect(IllegalArgumentException.class);
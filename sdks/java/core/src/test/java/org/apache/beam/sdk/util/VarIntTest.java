@@ -25,6 +25,7 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.EOFException;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
@@ -308,4 +309,58 @@ public class VarIntTest {
     thrown.expect(IOException.class);
     VarInt.decodeInt(inStream);
   }
+
+  @Test
+  public void encodeAndDecodeByteBuffer() throws IOException {
+    for (int i = 0; i < LONG_VALUES.length; ++i) {
+      ByteBuffer buffer = ByteBuffer.allocate(10);
+      VarInt.encode(LONG_VALUES[i], buffer);
+      buffer.flip();
+      byte[] encoded = new byte[buffer.remaining()];
+      buffer.duplicate().get(encoded);
+      assertThat(encoded, equalTo(LONG_ENCODED[i]));
+      assertEquals(LONG_VALUES[i], VarInt.decodeLong(buffer));
+      assertEquals(0, buffer.remaining());
+    }
+
+    for (int i = 0; i < INT_VALUES.length; ++i) {
+      ByteBuffer buffer = ByteBuffer.allocate(5);
+      VarInt.encode(INT_VALUES[i], buffer);
+      buffer.flip();
+      assertEquals(INT_ENCODED[i].length, buffer.remaining());
+      assertEquals(INT_VALUES[i], VarInt.decodeInt(buffer));
+    }
+  }
+
+  @Test
+  public void decodeByteBufferThrowsExceptionForOverflow() throws IOException {
+    byte[] tooLargeNumber = {
+      (byte) 0xff,
+      (byte) 0xff,
+      (byte) 0xff,
+      (byte) 0xff,
+      (byte) 0xff,
+      (byte) 0xff,
+      (byte) 0xff,
+      (byte) 0xff,
+      (byte) 0xff,
+      0x02
+    };
+
+    thrown.expect(IOException.class);
+    VarInt.decodeLong(ByteBuffer.wrap(tooLargeNumber));
+  }
+
+  @Test
+  public void decodeByteBufferThrowsExceptionForNonterminated() throws IOException {
+    thrown.expect(IOException.class);
+    thrown.expectMessage("varint not terminated");
+    VarInt.decodeLong(ByteBuffer.wrap(new byte[] {(byte) 0xff, (byte) 0xff}));
+  }
+
+  @Test
+  public void endOfByteBufferThrowsException() throws Exception {
+    thrown.expect(EOFException.class);
+    VarInt.decodeInt(ByteBuffer.allocate(0));
+  }
 }
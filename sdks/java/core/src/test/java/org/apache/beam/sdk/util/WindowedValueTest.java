@@ -107,6 +107,39 @@ public class WindowedValueTest {
     Assert.assertTrue(value.causedByDrain());
   }
 
+  @Test
+  public void testFullWindowedValueCoderEncodedSize() throws Exception {
+    Instant timestamp = new Instant(1234);
+    WindowedValue<String> value =
+        WindowedValues.of(
+            "abc",
+            timestamp,
+            Arrays.asList(
+                new IntervalWindow(timestamp, timestamp.plus(Duration.millis(1000))),
+                new IntervalWindow(
+                    timestamp.plus(Duration.millis(1000)), timestamp.plus(Duration.millis(2000)))),
+            PaneInfo.createPane(false, true, Timing.ON_TIME, 3, 0),
+            null,
+            null,
+            true);
+    Coder<WindowedValue<String>> windowedValueCoder =
+        WindowedValues.getFullCoder(StringUtf8Coder.of(), IntervalWindow.getCoder());
+
+    for (WindowedValue<String> element :
+        Arrays.asList(value, WindowedValues.valueInGlobalWindow("de"))) {
+      long encodedSize =
+          CoderUtils.encodeToByteArray(windowedValueCoder, element, Coder.Context.NESTED).length;
+      Assert.assertEquals(
+          encodedSize, Coder.getEncodedElementByteSizeUsingCoder(windowedValueCoder, element));
+
+      CoderProperties.TestElementByteSizeObserver observer =
+          new CoderProperties.TestElementByteSizeObserver();
+      windowedValueCoder.registerByteSizeObserver(element, observer);
+      observer.advance();
+      Assert.assertEquals(encodedSize, observer.getSum());
+    }
+  }
+
   @Test
   public void testFullWindowedValueCoderIsSerializableWithWellKnownCoderType() {
     CoderProperties.coderSerializable(
@@ -17,6 +17,12 @@
  */
 package org.apache.beam.sdk.util.construction.graph;
 
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import org.apache.beam.sdk.Pipeline;
@@ -26,12 +32,21 @@ import org.apache.beam.sdk.schemas.FieldAccessDescriptor;
 import org.apache.beam.sdk.schemas.FieldAccessDescriptor.FieldDescriptor;
 import org.apache.beam.sdk.schemas.ProjectionProducer;
 import org.apache.beam.sdk.schemas.Schema;
+import org.apache.beam.sdk.schemas.transforms.Filter;
+import org.apache.beam.sdk.schemas.transforms.Select;
+import org.apache.beam.sdk.testing.NeedsRunner;
+import org.apache.beam.sdk.testing.PAssert;
+import org.apache.beam.sdk.testing.TestPipeline;
+import org.apache.beam.sdk.transforms.Create;
 import org.apache.beam.sdk.transforms.DoFn;
+import org.apache.beam.sdk.transforms.Flatten;
 import org.apache.beam.sdk.transforms.Impulse;
 import org.apache.beam.sdk.transforms.PTransform;
 import org.apache.beam.sdk.transforms.ParDo;
+import org.apache.beam.sdk.transforms.Reshuffle;
 import org.apache.beam.sdk.values.PBegin;
 import org.apache.beam.sdk.values.PCollection;
+import org.apache.beam.sdk.values.PCollectionList;
 import org.apache.beam.sdk.values.PCollectionTuple;
 import org.apache.beam.sdk.values.PInput;
 import org.apache.beam.sdk.values.Row;
@@ -39,13 +54,16 @@ import org.apache.beam.sdk.values.TupleTag;
 import org.apache.beam.sdk.values.TupleTagList;
 import org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.collect.Iterables;
 import org.junit.Assert;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.experimental.categories.Category;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
 
 /** Unit tests for {@link ProjectionPushdownOptimizer}. */
 @RunWith(JUnit4.class)
 public class ProjectionPushdownOptimizerTest {
+  @Rule public final transient TestPipeline pipeline = TestPipeline.create();
 
   @Test
   public void testSourceDoesNotImplementPushdownProjector() {
@@ -92,6 +110,199 @@ public class ProjectionPushdownOptimizerTest {
     Assert.assertFalse(pipelineHasTransform(p, originalSource));
   }
 
+  @Test
+  public void testProjectionPushdownThroughFilterAndReshuffle() {
+    Pipeline p = Pipeline.create();
+    SimpleSourceWithPushdown originalSource =
+        new SimpleSourceWithPushdown(FieldAccessDescriptor.withFieldNames("foo", "bar", "baz"));
+    PCollection<Row> filtered =
+        p.apply(originalSource)
+            .apply(Filter.<Row>create().whereFieldName("baz", (String baz) -> !baz.isEmpty()));
+    PCollection<Row> reshuffled = filtered.apply(Reshuffle.viaRandomKey());
+    PCollection<Row> result =
+        reshuffled.apply(new FieldAccessTransform(FieldAccessDescriptor.withFieldNames("foo")));
+
+    ProjectionPushdownOptimizer.optimize(p);
+    Assert.assertTrue(
+        pipelineHasTransform(
+            p, new SimpleSourceWithPushdown(FieldAccessDescriptor.withFieldNames("foo", "baz"))));
+    Assert.assertFalse(pipelineHasTransform(p, originalSource));
+    // The pass-through transforms are re-applied, so the consumer reads the narrowed schema.
+    assertThat(consumedFieldNames(p, result), containsInAnyOrder("foo", "baz"));
+  }
+
+  @Test
+  public void testProjectionPushdownThroughFlatten() {
+    Pipeline p = Pipeline.create();
+    FieldAccessDescriptor allFields = FieldAccessDescriptor.withFieldNames("foo", "bar", "baz");
+    SimpleSourceWithPushdown originalSource1 = new SimpleSourceWithPushdown(allFields);
+    SimpleSourceWithPushdown originalSource2 = new SimpleSourceWithPushdown(allFields);
+    PCollection<Row> source1 = p.apply("Source1", originalSource1);
+    PCollection<Row> source2 = p.apply("Source2", originalSource2);
+    PCollection<Row> flattened =
+        PCollectionList.of(source1).and(source2).apply(Flatten.pCollections());
+    PCollection<Row> flattenedResult =
+        flattened.apply(new FieldAccessTransform(FieldAccessDescriptor.withFieldNames("foo")));
+    PCollection<Row> source2Result =
+        source2.apply(new FieldAccessTransform(FieldAccessDescriptor.withFieldNames("foo")));
+
+    ProjectionPushdownOptimizer.optimize(p);
+    Assert.assertFalse(pipelineHasTransform(p, originalSource1));
+    Assert.assertFalse(pipelineHasTransform(p, originalSource2));
+    assertThat(consumedFieldNames(p, flattenedResult), contains("foo"));
+    assertThat(consumedFieldNames(p, source2Result), contains("foo"));
+  }
+
+  @Test
+  public void testProjectionPushdownThroughSelect() {
+    Pipeline p = Pipeline.create();
+    SimpleSourceWithPushdown originalSource =
+        new SimpleSourceWithPushdown(FieldAccessDescriptor.withFieldNames("foo", "bar", "baz"));
+    PCollection<Row> selected = p.apply(originalSource).apply(Select.fieldNames("foo"));
+
+    ProjectionPushdownOptimizer.optimize(p);
+    Assert.assertTrue(
+        pipelineHasTransform(
+            p, new SimpleSourceWithPushdown(FieldAccessDescriptor.withFieldNames("foo"))));
+    Assert.assertFalse(pipelineHasTransform(p, originalSource));
+    assertThat(consumedFieldNames(p, selected), contains("foo"));
+  }
+
+  @Test
+  public void testProjectionPushdownThroughFlattenAndSelect() {
+    Pipeline p = Pipeline.create();
+    FieldAccessDescriptor allFields = FieldAccessDescriptor.withFieldNames("foo", "bar", "baz");
+    SimpleSourceWithPushdown originalSource1 = new SimpleSourceWithPushdown(allFields);
+    SimpleSourceWithPushdown originalSource2 = new SimpleSourceWithPushdown(allFields);
+    PCollection<Row> selected =
+        PCollectionList.of(p.apply("Source1", originalSource1))
+            .and(p.apply("Source2", originalSource2))
+            .apply(Flatten.pCollections())
+            .apply(Select.fieldNames("foo", "baz"));
+
+    ProjectionPushdownOptimizer.optimize(p);
+    Assert.assertFalse(pipelineHasTransform(p, originalSource1));
+    Assert.assertFalse(pipelineHasTransform(p, originalSource2));
+    Assert.assertTrue(
+        pipelineHasTransform(
+            p, new SimpleSourceWithPushdown(FieldAccessDescriptor.withFieldNames("foo", "baz"))));
+    assertThat(consumedFieldNames(p, selected), containsInAnyOrder("foo", "baz"));
+  }
+
+  @Test
+  public void testNoProjectionPushdownThroughSelectByFieldId() {
+    Pipeline p = Pipeline.create();
+    SimpleSourceWithPushdown originalSource =
+        new SimpleSourceWithPushdown(FieldAccessDescriptor.withFieldNames("foo", "bar", "baz"));
+    p.apply(originalSource).apply(Select.fieldIds(2));
+
+    // The field id would refer to another field of a narrowed schema.
+    ProjectionPushdownOptimizer.optimize(p);
+    Assert.assertTrue(pipelineHasTransform(p, originalSource));
+  }
+
+  @Test
+  public void testNoProjectionPushdownThroughFlattenWithOtherInputs() {
+    Pipeline p = Pipeline.create();
+    FieldAccessDescriptor allFields = FieldAccessDescriptor.withFieldNames("foo", "bar", "baz");
+    SimpleSourceWithPushdown originalSource = new SimpleSourceWithPushdown(allFields);
+    PCollection<Row> source1 = p.apply("Source1", originalSource);
+    PCollection<Row> source2 = p.apply("Source2", new SimpleSource(allFields));
+    PCollectionList.of(source1)
+        .and(source2)
+        .apply(Flatten.pCollections())
+        .apply(new FieldAccessTransform(FieldAccessDescriptor.withFieldNames("foo")));
+
+    // The input that can't be narrowed would have a different schema than the one that can.
+    ProjectionPushdownOptimizer.optimize(p);
+    Assert.assertTrue(pipelineHasTransform(p, originalSource));
+  }
+
+  @Test
+  public void testNoProjectionPushdownThroughFilterByFieldId() {
+    Pipeline p = Pipeline.create();
+    SimpleSourceWithPushdown originalSource =
+        new SimpleSourceWithPushdown(FieldAccessDescriptor.withFieldNames("foo", "bar", "baz"));
+    p.apply(originalSource)
+        .apply(Filter.<Row>create().whereFieldId(2, (String baz) -> !baz.isEmpty()))
+        .apply(new FieldAccessTransform(FieldAccessDescriptor.withFieldNames("foo")));
+
+    // The field id would refer to another field of a narrowed schema.
+    ProjectionPushdownOptimizer.optimize(p);
+    Assert.assertTrue(pipelineHasTransform(p, originalSource));
+  }
+
+  @Test
+  @Category(NeedsRunner.class)
+  public void testOptimizedPipelineThroughFilter() {
+    FieldAccessDescriptor fields = FieldAccessDescriptor.withFieldNames("foo", "bar", "baz");
+    PCollection<Row> filtered =
+        pipeline
+            .apply(new RowSourceWithPushdown(fields))
+            .apply(Filter.<Row>create().whereFieldName("baz", (String baz) -> baz.equals("baz1")));
+    PCollection<String> foo = readFoo(filtered);
+    PAssert.that(foo).containsInAnyOrder("foo1");
+
+    ProjectionPushdownOptimizer.optimize(pipeline);
+    assertThat(consumedFieldNames(pipeline, foo), containsInAnyOrder("foo", "baz"));
+    pipeline.run();
+  }
+
+  @Test
+  @Category(NeedsRunner.class)
+  public void testOptimizedPipelineThroughReshuffle() {
+    PCollection<Row> reshuffled =
+        pipeline
+            .apply(new RowSourceWithPushdown(FieldAccessDescriptor.withFieldNames("foo", "bar")))
+            .apply(Reshuffle.viaRandomKey());
+    PCollection<String> foo = readFoo(reshuffled);
+    PAssert.that(foo).containsInAnyOrder("foo1", "foo2");
+
+    ProjectionPushdownOptimizer.optimize(pipeline);
+    assertThat(consumedFieldNames(pipeline, foo), contains("foo"));
+    pipeline.run();
+  }
+
+  @Test
+  @Category(NeedsRunner.class)
+  public void testOptimizedPipelineThroughFlatten() {
+    FieldAccessDescriptor fields = FieldAccessDescriptor.withFieldNames("foo", "bar");
+    PCollection<Row> source1 = pipeline.apply("Source1", new RowSourceWithPushdown(fields));
+    PCollection<Row> source2 = pipeline.apply("Source2", new RowSourceWithPushdown(fields));
+    PCollection<Row> flattened =
+        PCollectionList.of(source1).and(source2).apply(Flatten.pCollections());
+    PCollection<String> foo = readFoo(flattened);
+    PAssert.that(foo).containsInAnyOrder("foo1", "foo2", "foo1", "foo2");
+    // A direct consumer of a source which only reads one of its fields.
+    PAssert.that(readFoo(source1)).containsInAnyOrder("foo1", "foo2");
+
+    ProjectionPushdownOptimizer.optimize(pipeline);
+    assertThat(consumedFieldNames(pipeline, foo), contains("foo"));
+    pipeline.run();
+  }
+
+  @Test
+  @Category(NeedsRunner.class)
+  public void testOptimizedPipelineThroughFlattenAndSelect() {
+    FieldAccessDescriptor fields = FieldAccessDescriptor.withFieldNames("foo", "bar");
+    PCollection<Row> selected =
+        PCollectionList.of(pipeline.apply("Source1", new RowSourceWithPushdown(fields)))
+            .and(pipeline.apply("Source2", new RowSourceWithPushdown(fields)))
+            .apply(Flatten.pCollections())
+            .apply(Select.fieldNames("foo"));
+    Schema fooSchema = Schema.builder().addStringField("foo").build();
+    PAssert.that(selected)
+        .containsInAnyOrder(
+            Row.withSchema(fooSchema).addValue("foo1").build(),
+            Row.withSchema(fooSchema).addValue("foo2").build(),
+            Row.withSchema(fooSchema).addValue("foo1").build(),
+            Row.withSchema(fooSchema).addValue("foo2").build());
+
+    ProjectionPushdownOptimizer.optimize(pipeline);
+    assertThat(consumedFieldNames(pipeline, selected), contains("foo"));
+    pipeline.run();
+  }
+
   @Test
   public void testIntermediateProducer() {
     Pipeline p = Pipeline.create();
@@ -141,6 +352,25 @@ public class ProjectionPushdownOptimizerTest {
     Assert.assertFalse(pipelineHasTransform(p, originalSource));
   }
 
+  /**
+   * Returns the field names of the schema read by the primitive transform that produces the given
+   * PCollection.
+   */
+  private static List<String> consumedFieldNames(Pipeline p, PCollection<?> output) {
+    List<String> fieldNames = new ArrayList<>();
+    p.traverseTopologically(
+        new Defaults() {
+          @Override
+          public void visitPrimitiveTransform(Node node) {
+            if (node.getOutputs().containsValue(output)) {
+              fieldNames.addAll(
+                  Iterables.getOnlyElement(node.getInputs().values()).getSchema().getFieldNames());
+            }
+          }
+        });
+    return fieldNames;
+  }
+
   private static boolean pipelineHasTransform(Pipeline p, PTransform<?, ?> t) {
     HasTransformVisitor hasTransformVisitor = new HasTransformVisitor(t);
     p.traverseTopologically(hasTransformVisitor);
@@ -194,6 +424,23 @@ public class ProjectionPushdownOptimizerTest {
     }
   }
 
+  /** Reads the {@code foo} field of the rows, which lets a source project the others. */
+  private static PCollection<String> readFoo(PCollection<Row> rows) {
+    return rows.apply("Read" + rows.getName(), ParDo.of(new ReadFooFn()));
+  }
+
+  private static class ReadFooFn extends DoFn<Row, String> {
+    @SuppressWarnings("unused") // used by reflection
+    @FieldAccess("foo")
+    private final FieldAccessDescriptor fieldAccessDescriptor =
+        FieldAccessDescriptor.withFieldNames("foo");
+
+    @ProcessElement
+    public void processElement(@FieldAccess("foo") Row row, OutputReceiver<String> r) {
+      r.output(row.getString("foo"));
+    }
+  }
+
   private static Schema createStringSchema(FieldAccessDescriptor fieldAccessDescriptor) {
     Schema.Builder schemaBuilder = Schema.builder();
     for (FieldDescriptor field : fieldAccessDescriptor.getFieldsAccessed()) {
@@ -264,6 +511,42 @@ public class ProjectionPushdownOptimizerTest {
     }
   }
 
+  /**
+   * A source of two rows with the value of each field being its name followed by the number of the
+   * row.
+   */
+  private static class RowSourceWithPushdown extends SchemaSourceTransform<PBegin>
+      implements ProjectionProducer<PTransform<PBegin, PCollection<Row>>> {
+
+    RowSourceWithPushdown(FieldAccessDescriptor fieldAccessDescriptor) {
+      super(fieldAccessDescriptor);
+    }
+
+    @Override
+    public PCollection<Row> expand(PBegin input) {
+      List<Row> rows = new ArrayList<>();
+      for (int i = 1; i <= 2; ++i) {
+        Row.Builder row = Row.withSchema(schema);
+        for (String field : schema.getFieldNames()) {
+          row.addValue(field + i);
+        }
+        rows.add(row.build());
+      }
+      return input.apply(Create.of(rows).withRowSchema(schema));
+    }
+
+    @Override
+    public boolean supportsProjectionPushdown() {
+      return true;
+    }
+
+    @Override
+    public PTransform<PBegin, PCollection<Row>> actuateProjectionPushdown(
+        Map<TupleTag<?>, FieldAccessDescriptor> fields) {
+      return new RowSourceWithPushdown(Iterables.getOnlyElement(fields.values()));
+    }
+  }
+
   private static class IntermediateTransformWithPushdown
       extends SchemaSourceTransform<PCollection<Row>>
       implements ProjectionProducer<PTransform<PCollection<Row>, PCollection<Row>>> {
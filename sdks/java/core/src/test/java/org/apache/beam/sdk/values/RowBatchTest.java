@@ -0,0 +1,194 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.values;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.util.BitSet;
+import java.util.List;
+import org.apache.beam.sdk.schemas.Schema;
+import org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.collect.ImmutableList;
+import org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.collect.Lists;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link RowBatch}. */
+@RunWith(JUnit4.class)
+public class RowBatchTest {
+  private static final Schema SCHEMA =
+      Schema.builder()
+          .addByteField("f_byte")
+          .addInt32Field("f_int32")
+          .addNullableField("f_int64", Schema.FieldType.INT64)
+          .addFloatField("f_float")
+          .addDoubleField("f_double")
+          .addBooleanField("f_boolean")
+          .addNullableField("f_string", Schema.FieldType.STRING)
+          .build();
+
+  private static List<Row> rows(int count) {
+    List<Row> rows = Lists.newArrayList();
+    for (int i = 0; i < count; ++i) {
+      rows.add(
+          Row.withSchema(SCHEMA)
+              .addValues(
+                  (byte) i,
+                  i,
+                  i % 3 == 0 ? null : (long) i * 1000,
+                  i * 0.5f,
+                  i * 0.25d,
+                  i % 2 == 0,
+                  i % 5 == 0 ? null : "str" + i)
+              .build());
+    }
+    return rows;
+  }
+
+  @Test
+  public void testRoundTripRows() {
+    // Larger than the default capacity to exercise growing the columns.
+    List<Row> rows = rows(2500);
+    RowBatch batch = RowBatch.of(SCHEMA, rows);
+
+    assertEquals(rows.size(), batch.getRowCount());
+    assertEquals(rows, Lists.newArrayList(batch));
+    for (int i = 0; i < rows.size(); ++i) {
+      assertEquals(rows.get(i), batch.getRow(i));
+      assertEquals(rows.get(i).hashCode(), batch.getRow(i).hashCode());
+    }
+  }
+
+  @Test
+  public void testPrimitiveColumns() {
+    RowBatch batch = RowBatch.of(SCHEMA, rows(10));
+
+    RowBatch.ColumnVector int64 = batch.getColumn("f_int64");
+    assertTrue(int64.hasNulls());
+    assertTrue(int64.isNull(3));
+    assertNull(int64.get(3));
+    assertEquals(4000L, int64.getLong(4));
+
+    assertFalse(batch.getColumn("f_int32").hasNulls());
+    assertEquals(7L, batch.getColumn("f_int32").getLong(7));
+    assertEquals(7, batch.getColumn("f_int32").get(7));
+    assertEquals(1.5d, batch.getColumn("f_double").getDouble(6), 0.0);
+    assertEquals(3.0f, batch.getColumn("f_float").get(6));
+    assertTrue(batch.getColumn("f_boolean").getBoolean(4));
+    assertFalse(batch.getColumn("f_boolean").getBoolean(5));
+  }
+
+  @Test
+  public void testSelect() {
+    RowBatch batch = RowBatch.of(SCHEMA, rows(10));
+    Schema projected =
+        Schema.builder()
+            .addNullableField("f_string", Schema.FieldType.STRING)
+            .addInt32Field("f_int32")
+            .build();
+
+    RowBatch selected = batch.select(projected, 6, 1);
+
+    assertEquals(10, selected.getRowCount());
+    assertEquals(Row.withSchema(projected).addValues("str3", 3).build(), selected.getRow(3));
+    assertEquals(Row.withSchema(projected).addValues(null, 5).build(), selected.getRow(5));
+  }
+
+  @Test
+  public void testFilter() {
+    List<Row> rows = rows(100);
+    RowBatch batch = RowBatch.of(SCHEMA, rows);
+
+    RowBatch filtered = batch.filter(row -> row.getInt32("f_int32") % 3 == 0);
+
+    List<Row> expected = Lists.newArrayList();
+    for (Row row : rows) {
+      if (row.getInt32("f_int32") % 3 == 0) {
+        expected.add(row);
+      }
+    }
+    assertEquals(expected, Lists.newArrayList(filtered));
+    assertTrue(filtered.getColumn("f_int64").hasNulls());
+  }
+
+  @Test
+  public void testFilterAllSelectedReturnsSameBatch() {
+    RowBatch batch = RowBatch.of(SCHEMA, rows(5));
+    BitSet all = new BitSet();
+    all.set(0, 5);
+    assertSame(batch, batch.filter(all));
+  }
+
+  @Test
+  public void testOfColumns() {
+    Schema schema =
+        Schema.builder()
+            .addNullableField("f_int64", Schema.FieldType.INT64)
+            .addDoubleField("f_double")
+            .addBooleanField("f_boolean")
+            .addNullableField("f_string", Schema.FieldType.STRING)
+            .build();
+    BitSet nulls = new BitSet();
+    nulls.set(1);
+    BitSet trues = new BitSet();
+    trues.set(0);
+    RowBatch batch =
+        RowBatch.ofColumns(
+            schema,
+            2,
+            RowBatch.ColumnVector.ofLongs(Schema.TypeName.INT64, new long[] {1, 0}, nulls),
+            RowBatch.ColumnVector.ofDoubles(
+                Schema.TypeName.DOUBLE, new double[] {0.5, 1.5}, new BitSet()),
+            RowBatch.ColumnVector.ofBooleans(trues, 2, new BitSet()),
+            RowBatch.ColumnVector.ofObjects(Schema.TypeName.STRING, new Object[] {null, "b"}));
+
+    assertEquals(
+        ImmutableList.of(
+            Row.withSchema(schema).addValues(1L, 0.5, true, null).build(),
+            Row.withSchema(schema).addValues(null, 1.5, false, "b").build()),
+        Lists.newArrayList(batch));
+    assertTrue(batch.getColumn("f_string").hasNulls());
+    assertFalse(batch.getColumn("f_double").hasNulls());
+  }
+
+  @Test
+  public void testOfColumnsRejectsMismatchedColumns() {
+    Schema schema = Schema.builder().addInt64Field("f_int64").build();
+    RowBatch.ColumnVector int32 =
+        RowBatch.ColumnVector.ofLongs(Schema.TypeName.INT32, new long[] {1}, new BitSet());
+    assertThrows(IllegalArgumentException.class, () -> RowBatch.ofColumns(schema, 1, int32));
+    RowBatch.ColumnVector int64 =
+        RowBatch.ColumnVector.ofLongs(Schema.TypeName.INT64, new long[] {1}, new BitSet());
+    assertThrows(IllegalArgumentException.class, () -> RowBatch.ofColumns(schema, 2, int64));
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> RowBatch.ColumnVector.ofObjects(Schema.TypeName.INT64, new Object[] {1L}));
+  }
+
+  @Test
+  public void testEmptyBatch() {
+    RowBatch batch = RowBatch.of(SCHEMA, ImmutableList.of());
+    assertEquals(0, batch.getRowCount());
+    assertFalse(batch.iterator().hasNext());
+  }
+}
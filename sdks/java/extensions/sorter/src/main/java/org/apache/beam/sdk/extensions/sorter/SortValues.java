@@ -49,6 +49,12 @@ import org.apache.beam.sdk.values.PCollection;
  * representations it requires the input PCollection to use a {@link KvCoder} for its input, an
  * {@link IterableCoder} for its input values and a {@link KvCoder} for its secondary key-value
  * pairs.
+ *
+ * <p>Most coders do not encode values in an order that matches the order of the values themselves.
+ * To sort by the natural order of the secondary keys, encode them with an {@link
+ * org.apache.beam.sdk.coders.OrderedCoder}, such as {@link
+ * org.apache.beam.sdk.coders.OrderedCoder#longs()} or {@link
+ * org.apache.beam.sdk.coders.OrderedRowCoder}.
  */
 public class SortValues<PrimaryKeyT, SecondaryKeyT, ValueT>
     extends PTransform<
@@ -21,11 +21,15 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Random;
+import java.util.function.IntFunction;
 import org.apache.beam.fn.harness.Cache;
 import org.apache.beam.fn.harness.Caches;
 import org.apache.beam.fn.harness.Caches.ClearableCache;
+import org.apache.beam.fn.harness.GroupingTable;
 import org.apache.beam.fn.harness.PrecombineGroupingTable;
+import org.apache.beam.fn.harness.PrimitivePrecombineGroupingTable;
 import org.apache.beam.sdk.coders.StringUtf8Coder;
+import org.apache.beam.sdk.coders.VarLongCoder;
 import org.apache.beam.sdk.options.PipelineOptions;
 import org.apache.beam.sdk.options.PipelineOptionsFactory;
 import org.apache.beam.sdk.transforms.Combine;
@@ -63,25 +67,47 @@ public class PrecombineGroupingTableBenchmark {
 
     @Setup(Level.Trial)
     public void setUp() {
-      this.elements = generateTestData(distribution);
+      this.elements = generateTestData(distribution, key -> KV.of(Integer.toString(key), key));
     }
   }
 
-  private static List<WindowedValue<KV<String, Integer>>> generateTestData(String distribution) {
+  @State(Scope.Benchmark)
+  public static class SumLongCombine {
+    final Combine.BinaryCombineLongFn sumLongs = Sum.ofLongs();
+    final PipelineOptions options = PipelineOptionsFactory.create();
+
+    final Cache<Object, Object> cache = Caches.fromOptions(options);
+
+    List<WindowedValue<KV<Long, Long>>> elements;
+
+    @Param({"generic", "primitive"})
+    public String table;
+
+    @Param({"uniform", "normal", "hotKey", "uniqueKeys"})
+    public String distribution;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+      this.elements = generateTestData(distribution, key -> KV.of((long) key, (long) key));
+    }
+  }
+
+  private static <K, V> List<WindowedValue<KV<K, V>>> generateTestData(
+      String distribution, IntFunction<KV<K, V>> keyToElement) {
     // Use a stable seed to ensure consistency across benchmark runs
     Random random = new Random(-2134890234);
-    List<WindowedValue<KV<String, Integer>>> elements = new ArrayList<>();
+    List<WindowedValue<KV<K, V>>> elements = new ArrayList<>();
     switch (distribution) {
       case "uniform":
         for (int i = 0; i < TOTAL_VALUES; ++i) {
           int key = random.nextInt(KEY_SPACE);
-          elements.add(WindowedValues.valueInGlobalWindow(KV.of(Integer.toString(key), key)));
+          elements.add(WindowedValues.valueInGlobalWindow(keyToElement.apply(key)));
         }
         break;
       case "normal":
         for (int i = 0; i < TOTAL_VALUES; ++i) {
           int key = (int) (random.nextGaussian() * KEY_SPACE);
-          elements.add(WindowedValues.valueInGlobalWindow(KV.of(Integer.toString(key), key)));
+          elements.add(WindowedValues.valueInGlobalWindow(keyToElement.apply(key)));
         }
         break;
       case "hotKey":
@@ -92,12 +118,12 @@ public class PrecombineGroupingTableBenchmark {
           } else {
             key = random.nextInt(KEY_SPACE);
           }
-          elements.add(WindowedValues.valueInGlobalWindow(KV.of(Integer.toString(key), key)));
+          elements.add(WindowedValues.valueInGlobalWindow(keyToElement.apply(key)));
         }
         break;
       case "uniqueKeys":
         for (int i = 0; i < TOTAL_VALUES; ++i) {
-          elements.add(WindowedValues.valueInGlobalWindow(KV.of(Integer.toString(i), i)));
+          elements.add(WindowedValues.valueInGlobalWindow(keyToElement.apply(i)));
         }
         Collections.shuffle(elements, random);
         break;
@@ -127,4 +153,25 @@ public class PrecombineGroupingTableBenchmark {
     groupingTable.flush(blackhole::consume);
     cache.clear();
   }
+
+  @Benchmark
+  @Threads(16)
+  public void sumLongCombine(SumLongCombine table, Blackhole blackhole) throws Exception {
+    ClearableCache<Object, Object> cache =
+        new ClearableCache<>(Caches.subCache(table.cache, Thread.currentThread().getName()));
+    GroupingTable<Long, Long, long[]> groupingTable;
+    if ("primitive".equals(table.table)) {
+      groupingTable =
+          PrimitivePrecombineGroupingTable.combining(cache, table.sumLongs, VarLongCoder.of());
+    } else {
+      groupingTable =
+          PrecombineGroupingTable.combiningAndSampling(
+              table.options, cache, table.sumLongs, VarLongCoder.of(), .001, true);
+    }
+    for (int i = 0, size = table.elements.size(); i < size; ++i) {
+      groupingTable.put(table.elements.get(i), blackhole::consume);
+    }
+    groupingTable.flush(blackhole::consume);
+    cache.clear();
+  }
 }
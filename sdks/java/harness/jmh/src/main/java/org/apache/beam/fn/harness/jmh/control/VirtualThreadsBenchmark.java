@@ -0,0 +1,139 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.fn.harness.jmh.control;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.apache.beam.fn.harness.VirtualThreads;
+import org.apache.beam.fn.harness.control.ExecutionStateSampler;
+import org.apache.beam.fn.harness.control.ExecutionStateSampler.ExecutionState;
+import org.apache.beam.fn.harness.control.ExecutionStateSampler.ExecutionStateTracker;
+import org.apache.beam.model.fnexecution.v1.BeamFnApi.Elements;
+import org.apache.beam.sdk.coders.StringUtf8Coder;
+import org.apache.beam.sdk.fn.data.BeamFnDataOutboundAggregator;
+import org.apache.beam.sdk.fn.data.FnDataReceiver;
+import org.apache.beam.sdk.options.PipelineOptions;
+import org.apache.beam.sdk.options.PipelineOptionsFactory;
+import org.apache.beam.vendor.grpc.v1p69p0.io.grpc.stub.StreamObserver;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Benchmarks the throughput of bundles whose {@code DoFn}s block on I/O, when the bundles are
+ * processed on a fixed number of platform threads and on virtual threads.
+ *
+ * <p>Each bundle tracks its execution state, blocks for {@link #IO_LATENCY_MICROS} per element to
+ * simulate a remote call and writes its outputs through a {@link BeamFnDataOutboundAggregator}.
+ * The virtual thread variant requires Java 21 or later.
+ */
+public class VirtualThreadsBenchmark {
+  private static final int BUNDLES = 1024;
+  private static final int ELEMENTS_PER_BUNDLE = 4;
+  private static final long IO_LATENCY_MICROS = 1000;
+
+  @State(Scope.Benchmark)
+  public static class Harness {
+    @Param({"platform_16", "platform_256", "virtual"})
+    public String threads;
+
+    public ExecutorService executor;
+    public ExecutionStateSampler sampler;
+    public PipelineOptions options;
+
+    @Setup(Level.Trial)
+    public void setup() {
+      options = PipelineOptionsFactory.create();
+      sampler = new ExecutionStateSampler(options, System::currentTimeMillis, null);
+      if ("virtual".equals(threads)) {
+        executor = VirtualThreads.newThreadPerTaskExecutor("benchmark-");
+      } else {
+        executor =
+            Executors.newFixedThreadPool(
+                Integer.parseInt(threads.substring("platform_".length())));
+      }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+      executor.shutdownNow();
+      sampler.stop();
+    }
+  }
+
+  private static final StreamObserver<Elements> DISCARDING_OBSERVER =
+      new StreamObserver<Elements>() {
+        @Override
+        public void onNext(Elements elements) {}
+
+        @Override
+        public void onError(Throwable t) {}
+
+        @Override
+        public void onCompleted() {}
+      };
+
+  private static Void processBundle(Harness harness, int bundle) throws Exception {
+    ExecutionStateTracker tracker = harness.sampler.create();
+    ExecutionState state = tracker.create("shortId", "ptransform", "ptransformName", "process");
+    BeamFnDataOutboundAggregator aggregator =
+        new BeamFnDataOutboundAggregator(
+            harness.options, () -> "bundle" + bundle, DISCARDING_OBSERVER, false);
+    FnDataReceiver<String> receiver =
+        aggregator.registerOutputDataLocation("ptransform", StringUtf8Coder.of());
+    tracker.start("bundle" + bundle);
+    try {
+      for (int i = 0; i < ELEMENTS_PER_BUNDLE; ++i) {
+        state.activate();
+        try {
+          // A blocking remote call made by the DoFn.
+          TimeUnit.MICROSECONDS.sleep(IO_LATENCY_MICROS);
+          receiver.accept("output" + i);
+        } finally {
+          state.deactivate();
+        }
+      }
+      aggregator.sendOrCollectBufferedDataAndFinishOutboundStreams();
+    } finally {
+      tracker.reset();
+    }
+    return null;
+  }
+
+  @Benchmark
+  @OutputTimeUnit(TimeUnit.SECONDS)
+  public void testBlockingBundles(Harness harness) throws Exception {
+    List<Future<Void>> bundles = new ArrayList<>(BUNDLES);
+    for (int i = 0; i < BUNDLES; ++i) {
+      int bundle = i;
+      bundles.add(harness.executor.submit(() -> processBundle(harness, bundle)));
+    }
+    for (Future<Void> bundle : bundles) {
+      bundle.get();
+    }
+  }
+}
@@ -0,0 +1,86 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.fn.harness.jmh.debug;
+
+import java.util.List;
+import org.apache.beam.fn.harness.debug.ElementSample;
+import org.apache.beam.fn.harness.debug.OutputSampler;
+import org.apache.beam.model.fnexecution.v1.BeamFnApi;
+import org.apache.beam.sdk.coders.StringUtf8Coder;
+import org.apache.beam.sdk.values.WindowedValue;
+import org.apache.beam.sdk.values.WindowedValues;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+/**
+ * Benchmarks for {@link OutputSampler} which measure the overhead data sampling adds to every
+ * element output by bundle processing threads.
+ */
+public class OutputSamplerBenchmark {
+  /** An {@link OutputSampler} configured like the one created by the {@code DataSampler}. */
+  @State(Scope.Benchmark)
+  public static class Sampler {
+    @Param({"1", "1000"})
+    public int sampleEveryN;
+
+    @Param({"false", "true"})
+    public boolean onlySampleExceptions;
+
+    public OutputSampler<String> outputSampler;
+    public WindowedValue<String> element;
+
+    @Setup
+    public void setup() {
+      outputSampler =
+          new OutputSampler<>(StringUtf8Coder.of(), 10, sampleEveryN, onlySampleExceptions);
+      element = WindowedValues.valueInGlobalWindow("some element which is being sampled");
+    }
+  }
+
+  @Benchmark
+  @Threads(1)
+  public ElementSample<String> testSampleSingleThread(Sampler sampler) {
+    return sampler.outputSampler.sample(sampler.element);
+  }
+
+  @Benchmark
+  @Threads(16) // Use several threads since samples are taken by all bundle processing threads.
+  public ElementSample<String> testSampleManyThreads(Sampler sampler) {
+    return sampler.outputSampler.sample(sampler.element);
+  }
+
+  @Benchmark
+  @Group("sampleWhileQuerying")
+  @GroupThreads(15)
+  public ElementSample<String> testSampleWhileQuerying(Sampler sampler) {
+    return sampler.outputSampler.sample(sampler.element);
+  }
+
+  @Benchmark
+  @Group("sampleWhileQuerying")
+  @GroupThreads(1)
+  public List<BeamFnApi.SampledElement> testQueryWhileSampling(Sampler sampler) throws Exception {
+    return sampler.outputSampler.samples();
+  }
+}
@@ -87,6 +87,10 @@ public class BeamFnLoggingClientBenchmark {
     public final Server server;
 
     public ManageLoggingClientAndService() {
+      this(new String[0]);
+    }
+
+    protected ManageLoggingClientAndService(String[] args) {
       try {
         ApiServiceDescriptor apiServiceDescriptor =
             ApiServiceDescriptor.newBuilder()
@@ -101,7 +105,7 @@ public class BeamFnLoggingClientBenchmark {
         server.start();
         loggingClient =
             LoggingClientFactory.createAndStart(
-                PipelineOptionsFactory.create(),
+                PipelineOptionsFactory.fromArgs(args).create(),
                 apiServiceDescriptor,
                 managedChannelFactory::forDescriptor);
       } catch (Exception e) {
@@ -154,6 +158,38 @@ public class BeamFnLoggingClientBenchmark {
     }
   }
 
+  /**
+   * A {@link ManageLoggingClientAndService} which drops log entries instead of blocking when the
+   * buffer is full, and validates that more than zero calls made it to the service.
+   */
+  @State(Scope.Benchmark)
+  public static class DroppingLoggingClientAndService extends ManageLoggingClientAndService {
+    public DroppingLoggingClientAndService() {
+      super(new String[] {"--logBufferOverflowPolicy=DROP"});
+    }
+
+    @Override
+    @TearDown
+    public void tearDown() throws Exception {
+      super.tearDown();
+      if (loggingService.callCount.get() <= 0) {
+        throw new IllegalStateException(
+            "Server expected greater then zero calls. Benchmark misconfigured?");
+      }
+    }
+  }
+
+  /**
+   * A {@link ManageLoggingClientAndService} which drops log entries instead of blocking and limits
+   * the rate of log entries of each logger.
+   */
+  @State(Scope.Benchmark)
+  public static class RateLimitedLoggingClientAndService extends ManageLoggingClientAndService {
+    public RateLimitedLoggingClientAndService() {
+      super(new String[] {"--logBufferOverflowPolicy=DROP", "--maxLogEntriesPerSecond=1000"});
+    }
+  }
+
   /** Sets up the {@link ExecutionStateTracker} and an execution state. */
   @State(Scope.Benchmark)
   public static class ManageExecutionState {
@@ -226,6 +262,18 @@ public class BeamFnLoggingClientBenchmark {
     }
   }
 
+  @Benchmark
+  @Threads(16) // Use several threads since we expect contention during logging
+  public void testLoggingWithDropPolicy(DroppingLoggingClientAndService client) {
+    LOG.warn("log me");
+  }
+
+  @Benchmark
+  @Threads(16) // Use several threads since we expect contention during logging
+  public void testRateLimitedLogging(RateLimitedLoggingClientAndService client) {
+    LOG.warn("log me");
+  }
+
   @Benchmark
   @Threads(16) // Use several threads since we expect contention during logging
   public void testSkippedLogging(ZeroExpectedCallsLoggingClientAndService client) {
@@ -0,0 +1,136 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.fn.harness.jmh.state;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.beam.fn.harness.state.BatchingBeamFnStateClient;
+import org.apache.beam.fn.harness.state.BeamFnStateClient;
+import org.apache.beam.fn.harness.state.BeamFnStateGrpcClientCache;
+import org.apache.beam.model.fnexecution.v1.BeamFnApi.StateAppendRequest;
+import org.apache.beam.model.fnexecution.v1.BeamFnApi.StateClearRequest;
+import org.apache.beam.model.fnexecution.v1.BeamFnApi.StateKey;
+import org.apache.beam.model.fnexecution.v1.BeamFnApi.StateRequest;
+import org.apache.beam.model.fnexecution.v1.BeamFnApi.StateResponse;
+import org.apache.beam.runners.fnexecution.state.GrpcStateService;
+import org.apache.beam.sdk.fn.IdGenerators;
+import org.apache.beam.sdk.fn.channel.ManagedChannelFactory;
+import org.apache.beam.sdk.fn.server.GrpcFnServer;
+import org.apache.beam.sdk.fn.server.ServerFactory;
+import org.apache.beam.sdk.fn.stream.OutboundObserverFactory;
+import org.apache.beam.vendor.grpc.v1p69p0.com.google.protobuf.ByteString;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Benchmarks the number of state mutations per second the SDK harness sends to a runner when it
+ * persists the state of many keys at the end of a bundle, with and without {@link
+ * BatchingBeamFnStateClient}.
+ *
+ * <p>Each persisted key clears and appends to a bag user state, like {@code BagUserState} does for
+ * a bag that was cleared and added to during the bundle.
+ */
+public class StateMutationBatchingBenchmark {
+  private static final String INSTRUCTION_ID = "instruction";
+  private static final int KEYS = 1000;
+
+  @State(Scope.Benchmark)
+  public static class StateClientAndService {
+    @Param({"false", "true"})
+    public boolean batching;
+
+    public GrpcFnServer<GrpcStateService> stateServer;
+    public BeamFnStateClient stateClient;
+    public final AtomicLong handledRequests = new AtomicLong();
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+      GrpcStateService stateService = GrpcStateService.create();
+      stateService.registerForProcessBundleInstructionId(
+          INSTRUCTION_ID,
+          request -> {
+            handledRequests.incrementAndGet();
+            return CompletableFuture.completedFuture(StateResponse.newBuilder());
+          });
+      stateServer =
+          GrpcFnServer.allocatePortAndCreateFor(stateService, ServerFactory.createDefault());
+      BeamFnStateClient grpcClient =
+          new BeamFnStateGrpcClientCache(
+                  IdGenerators.incrementingLongs(),
+                  ManagedChannelFactory.createDefault(),
+                  OutboundObserverFactory.clientDirect())
+              .forApiServiceDescriptor(stateServer.getApiServiceDescriptor());
+      stateClient = batching ? new BatchingBeamFnStateClient(grpcClient) : grpcClient;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+      stateServer.close();
+      if (handledRequests.get() <= 0) {
+        throw new IllegalStateException(
+            "Server expected greater then zero calls. Benchmark misconfigured?");
+      }
+    }
+  }
+
+  private static StateRequest.Builder bagUserStateRequest(int key) {
+    return StateRequest.newBuilder()
+        .setInstructionId(INSTRUCTION_ID)
+        .setStateKey(
+            StateKey.newBuilder()
+                .setBagUserState(
+                    StateKey.BagUserState.newBuilder()
+                        .setTransformId("transform")
+                        .setUserStateId("state")
+                        .setWindow(ByteString.copyFromUtf8("window"))
+                        .setKey(ByteString.copyFromUtf8(Integer.toString(key)))));
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(2 * KEYS)
+  @OutputTimeUnit(TimeUnit.SECONDS)
+  public void testPersistBagUserStates(StateClientAndService state) throws Exception {
+    List<CompletableFuture<StateResponse>> responses = new ArrayList<>(2 * KEYS);
+    for (int key = 0; key < KEYS; ++key) {
+      responses.add(
+          state.stateClient.handle(
+              bagUserStateRequest(key).setClear(StateClearRequest.getDefaultInstance())));
+      responses.add(
+          state.stateClient.handle(
+              bagUserStateRequest(key)
+                  .setAppend(
+                      StateAppendRequest.newBuilder().setData(ByteString.copyFromUtf8("value")))));
+    }
+    if (state.stateClient instanceof BatchingBeamFnStateClient) {
+      ((BatchingBeamFnStateClient) state.stateClient).flush();
+    }
+    for (CompletableFuture<StateResponse> response : responses) {
+      response.get();
+    }
+  }
+}
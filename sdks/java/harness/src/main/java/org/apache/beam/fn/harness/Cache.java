@@ -17,6 +17,9 @@
  */
 package org.apache.beam.fn.harness;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.function.Function;
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.ThreadSafe;
@@ -53,6 +56,36 @@ public interface Cache<K, V> {
     V shrink();
   }
 
+  /**
+   * An interface that marks an object that can be stored in an encoded form, for example outside of
+   * the Java heap, instead of by reference.
+   *
+   * <p>Caches which store the encoded form return a decoded copy of the object on lookup. Objects
+   * must therefore not be mutated once they have been inserted into a cache.
+   */
+  interface Encodable<V> {
+    /** Encodes this object such that {@link #getDecoder()} decodes it to an equivalent object. */
+    void encode(OutputStream outStream) throws IOException;
+
+    /** Returns a decoder for the encoded form of this object. */
+    Decoder<V> getDecoder();
+
+    /**
+     * Returns whether caches should store the encoded form of this object. Objects which are soon
+     * replaced by a larger version of themselves should be kept by reference instead, since every
+     * replacement would encode their content again.
+     */
+    default boolean storeEncoded() {
+      return true;
+    }
+  }
+
+  /** Decodes the encoded form of an {@link Encodable} object. */
+  @FunctionalInterface
+  interface Decoder<V> {
+    V decode(InputStream inStream) throws IOException;
+  }
+
   /** Looks up the specified key returning {@code null} if the value is not within the cache. */
   @Nullable
   V peek(K key);
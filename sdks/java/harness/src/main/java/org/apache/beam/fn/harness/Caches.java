@@ -161,8 +161,10 @@ public final class Caches {
    * parameters within {@link SdkHarnessOptions}.
    */
   public static <K, V> Cache<K, V> fromOptions(PipelineOptions options) {
+    SdkHarnessOptions sdkHarnessOptions = options.as(SdkHarnessOptions.class);
     return forMaximumBytes(
-        ((long) options.as(SdkHarnessOptions.class).getMaxCacheMemoryUsageMb()) << 20);
+        ((long) sdkHarnessOptions.getMaxCacheMemoryUsageMb()) << 20,
+        ((long) sdkHarnessOptions.getMaxOffHeapCacheMemoryUsageMb()) << 20);
   }
 
   /**
@@ -178,7 +180,8 @@ public final class Caches {
           ((SubCache<?, ?>) cache).cache,
           ((SubCache<?, ?>) cache).keyPrefix.subKey(keyPrefix, additionalKeyPrefix),
           ((SubCache<?, ?>) cache).maxWeightInBytes,
-          ((SubCache<?, ?>) cache).weightInBytes);
+          ((SubCache<?, ?>) cache).weightInBytes,
+          ((SubCache<?, ?>) cache).offHeapStore);
     }
     throw new IllegalArgumentException(
         String.format(
@@ -188,6 +191,18 @@ public final class Caches {
 
   @VisibleForTesting
   static <K, V> Cache<K, V> forMaximumBytes(long maximumBytes) {
+    return forMaximumBytes(maximumBytes, 0L);
+  }
+
+  /**
+   * Returns a cache which stores {@link Cache.Encodable} values in up to {@code
+   * maximumOffHeapBytes} of direct memory and all other values on the heap in up to {@code
+   * maximumBytes}.
+   *
+   * <p>If {@code maximumOffHeapBytes} is zero, all values are stored on the heap.
+   */
+  @VisibleForTesting
+  static <K, V> Cache<K, V> forMaximumBytes(long maximumBytes, long maximumOffHeapBytes) {
     // We specifically use Guava cache since it allows for recursive computeIfAbsent calls
     // preventing deadlock from occurring when a loading function mutates the underlying cache
     LongAdder weightInBytes = new LongAdder();
@@ -234,7 +249,8 @@ public final class Caches {
             .getCache(),
         CompositeKeyPrefix.ROOT,
         maximumBytes,
-        weightInBytes);
+        weightInBytes,
+        maximumOffHeapBytes > 0 ? new OffHeapCacheStore(maximumOffHeapBytes) : null);
   }
 
   private static WeightedValue<Object> addWeightedValue(
@@ -259,6 +275,15 @@ public final class Caches {
    *
    * <p>All lookups, insertions, and removals into the parent {@link Cache} will be prefixed by the
    * specified prefixes.
+   *
+   * <p>If an off-heap store is configured, {@link Cache.Encodable} values which {@link
+   * Cache.Encodable#storeEncoded() should be stored encoded} are stored in encoded form within it
+   * instead of on the heap. Such values are loaded through the heap cache and moved to the off-heap
+   * store once loaded, unless the key was written to in the meantime.
+   *
+   * <p>Writes update the heap cache before the off-heap store, and a loaded value is moved by adding
+   * it to the off-heap store before removing it from the heap cache, so a concurrent write is never
+   * overwritten by the value being moved.
    */
   private static class SubCache<K, V> implements Cache<K, V> {
     private final org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.cache.Cache<
@@ -267,6 +292,7 @@ public final class Caches {
     private final CompositeKeyPrefix keyPrefix;
     private final long maxWeightInBytes;
     private final LongAdder weightInBytes;
+    private final OffHeapCacheStore offHeapStore;
 
     SubCache(
         org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.cache.Cache<
@@ -274,16 +300,25 @@ public final class Caches {
             cache,
         CompositeKeyPrefix keyPrefix,
         long maxWeightInBytes,
-        LongAdder weightInBytes) {
+        LongAdder weightInBytes,
+        OffHeapCacheStore offHeapStore) {
       this.cache = cache;
       this.keyPrefix = keyPrefix;
       this.maxWeightInBytes = maxWeightInBytes;
       this.weightInBytes = weightInBytes;
+      this.offHeapStore = offHeapStore;
     }
 
     @Override
     public V peek(K key) {
-      WeightedValue<Object> value = cache.getIfPresent(keyPrefix.valueKey(key));
+      CompositeKey compositeKey = keyPrefix.valueKey(key);
+      if (offHeapStore != null) {
+        Object value = offHeapStore.get(compositeKey);
+        if (value != null) {
+          return (V) value;
+        }
+      }
+      WeightedValue<Object> value = cache.getIfPresent(compositeKey);
       if (value == null) {
         return null;
       }
@@ -292,42 +327,96 @@ public final class Caches {
 
     @Override
     public V computeIfAbsent(K key, Function<K, V> loadingFunction) {
+      CompositeKey compositeKey = keyPrefix.valueKey(key);
+      if (offHeapStore != null) {
+        Object value = offHeapStore.get(compositeKey);
+        if (value != null) {
+          return (V) value;
+        }
+      }
+      WeightedValue<Object> weightedValue;
       try {
-        CompositeKey compositeKey = keyPrefix.valueKey(key);
-        return (V)
-            cache
-                .get(
-                    compositeKey,
-                    () -> addWeightedValue(compositeKey, loadingFunction.apply(key), weightInBytes))
-                .getValue();
+        weightedValue =
+            cache.get(
+                compositeKey,
+                () -> addWeightedValue(compositeKey, loadingFunction.apply(key), weightInBytes));
       } catch (ExecutionException e) {
         throw new RuntimeException(e);
       }
+      V value = (V) weightedValue.getValue();
+      // Loading through the heap cache ensures concurrent lookups of the key wait for a single
+      // load, the value is moved to the off-heap store afterwards.
+      if (isStoredOffHeap(value)) {
+        moveOffHeap(compositeKey, weightedValue);
+      }
+      return value;
+    }
+
+    /**
+     * Moves a loaded value from the heap cache to the off-heap store, unless the key was written to
+     * since it was loaded.
+     */
+    private void moveOffHeap(CompositeKey compositeKey, WeightedValue<Object> weightedValue) {
+      Cache.Encodable<?> value = (Cache.Encodable<?>) weightedValue.getValue();
+      if (!offHeapStore.putIfAbsent(compositeKey, value)) {
+        // A newer value was stored off-heap, or the value was not admitted.
+        cache.asMap().remove(compositeKey, weightedValue);
+        return;
+      }
+      if (!cache.asMap().remove(compositeKey, weightedValue)) {
+        // The key was written to or evicted before the value was stored off-heap.
+        offHeapStore.remove(compositeKey, value);
+      }
+    }
+
+    private boolean isStoredOffHeap(Object value) {
+      return offHeapStore != null
+          && value instanceof Cache.Encodable
+          && ((Cache.Encodable<?>) value).storeEncoded();
     }
 
     @Override
     public void put(K key, V value) {
       CompositeKey compositeKey = keyPrefix.valueKey(key);
+      if (isStoredOffHeap(value)) {
+        // Values which are not admitted to the off-heap store are not cached.
+        cache.invalidate(compositeKey);
+        offHeapStore.put(compositeKey, (Cache.Encodable<?>) value);
+        return;
+      }
       cache.put(compositeKey, addWeightedValue(compositeKey, value, weightInBytes));
+      if (offHeapStore != null) {
+        offHeapStore.remove(compositeKey);
+      }
     }
 
     @Override
     public void remove(K key) {
-      cache.invalidate(keyPrefix.valueKey(key));
+      CompositeKey compositeKey = keyPrefix.valueKey(key);
+      cache.invalidate(compositeKey);
+      if (offHeapStore != null) {
+        offHeapStore.remove(compositeKey);
+      }
     }
 
     @Override
     public String describeStats() {
       CacheStats stats = cache.stats();
-      return String.format(
-          "used/max %d/%d MB, hit %.2f%%, lookups %d, avg load time %.0f ns, loads %d, evictions %d",
-          weightInBytes.longValue() >> 20,
-          maxWeightInBytes >> 20,
-          stats.hitRate() * 100.,
-          stats.requestCount(),
-          stats.averageLoadPenalty(),
-          stats.loadCount(),
-          stats.evictionCount());
+      String heapStats =
+          String.format(
+              "used/max %d/%d MB, hit %.2f%%, lookups %d, avg load time %.0f ns, loads %d,"
+                  + " evictions %d",
+              weightInBytes.longValue() >> 20,
+              maxWeightInBytes >> 20,
+              stats.hitRate() * 100.,
+              stats.requestCount(),
+              stats.averageLoadPenalty(),
+              stats.loadCount(),
+              stats.evictionCount());
+      if (offHeapStore == null) {
+        return heapStats;
+      }
+      return heapStats + "; " + offHeapStore.describeStats();
     }
   }
 
@@ -442,7 +531,8 @@ public final class Caches {
           ((SubCache<K, V>) cache).cache,
           ((SubCache<CompositeKey, V>) cache).keyPrefix,
           ((SubCache<CompositeKey, V>) cache).maxWeightInBytes,
-          ((SubCache<CompositeKey, V>) cache).weightInBytes);
+          ((SubCache<CompositeKey, V>) cache).weightInBytes,
+          ((SubCache<CompositeKey, V>) cache).offHeapStore);
       // We specifically use a weak hash map so that once the key is no longer referenced we don't
       // have to keep track of it anymore and the weak hash map will garbage collect it for us.
       this.weakHashSet = Collections.newSetFromMap(new WeakHashMap<>());
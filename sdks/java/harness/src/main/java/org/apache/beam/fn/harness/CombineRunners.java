@@ -75,7 +75,7 @@ public class CombineRunners {
     private final CombineFn<InputT, AccumT, ?> combineFn;
     private final FnDataReceiver<WindowedValue<KV<KeyT, AccumT>>> output;
     private final Coder<KeyT> keyCoder;
-    private @Nullable PrecombineGroupingTable<KeyT, InputT, AccumT> groupingTable;
+    private @Nullable GroupingTable<KeyT, InputT, AccumT> groupingTable;
     private boolean isGloballyWindowed;
 
     PrecombineRunner(
@@ -105,21 +105,26 @@ public class CombineRunners {
       this.isGloballyWindowed = isGloballyWindowed;
     }
 
-    private PrecombineGroupingTable<KeyT, InputT, AccumT> getGroupingTable() {
+    private GroupingTable<KeyT, InputT, AccumT> getGroupingTable() {
       return checkStateNotNull(
           this.groupingTable,
           "groupingTable not initialized. Did you call this outside of the context of bundle processing?");
     }
 
     void startBundle() {
-      groupingTable =
-          PrecombineGroupingTable.combiningAndSampling(
-              options,
-              Caches.subCache(bundleCache.get(), ptransformId),
-              combineFn,
-              keyCoder,
-              0.001 /*sizeEstimatorSampleRate*/,
-              isGloballyWindowed);
+      Cache<Object, Object> cache = Caches.subCache(bundleCache.get(), ptransformId);
+      if (PrimitivePrecombineGroupingTable.isSupported(combineFn, keyCoder, isGloballyWindowed)) {
+        groupingTable = PrimitivePrecombineGroupingTable.combining(cache, combineFn, keyCoder);
+      } else {
+        groupingTable =
+            PrecombineGroupingTable.combiningAndSampling(
+                options,
+                cache,
+                combineFn,
+                keyCoder,
+                0.001 /*sizeEstimatorSampleRate*/,
+                isGloballyWindowed);
+      }
     }
 
     void processElement(WindowedValue<KV<KeyT, InputT>> elem) throws Exception {
@@ -52,6 +52,7 @@ import org.apache.beam.model.pipeline.v1.RunnerApi.ParDoPayload;
 import org.apache.beam.model.pipeline.v1.RunnerApi.TimerFamilySpec;
 import org.apache.beam.runners.core.DoFnRunner;
 import org.apache.beam.runners.core.LateDataUtils;
+import org.apache.beam.runners.core.ProcessBatchBuffer;
 import org.apache.beam.runners.core.metrics.MonitoringInfoConstants;
 import org.apache.beam.runners.core.metrics.ShortIdMap;
 import org.apache.beam.runners.core.metrics.SimpleMonitoringInfoBuilder;
@@ -106,6 +107,7 @@ import org.apache.beam.sdk.values.KV;
 import org.apache.beam.sdk.values.OutputBuilder;
 import org.apache.beam.sdk.values.PCollectionView;
 import org.apache.beam.sdk.values.Row;
+import org.apache.beam.sdk.values.TimestampedValue;
 import org.apache.beam.sdk.values.TupleTag;
 import org.apache.beam.sdk.values.WindowedValue;
 import org.apache.beam.sdk.values.WindowedValues;
@@ -225,6 +227,9 @@ public class FnApiDoFnRunner<InputT, RestrictionT, PositionT, WatermarkEstimator
   private final DoFnInvoker<InputT, OutputT> doFnInvoker;
   private final StartBundleArgumentProvider startBundleArgumentProvider;
   private final ProcessBundleContextBase processContext;
+
+  /** Buffers input for the {@link DoFn.ProcessBatch} method of a ParDo, null otherwise. */
+  private @Nullable ProcessBatchBuffer<InputT, OutputT> processBatchBuffer;
   private final OnTimerContext<?> onTimerContext;
   private final OnWindowExpirationContext<?> onWindowExpirationContext;
   private final FinishBundleArgumentProvider finishBundleArgumentProvider;
@@ -458,7 +463,7 @@ public class FnApiDoFnRunner<InputT, RestrictionT, PositionT, WatermarkEstimator
     } catch (IOException e) {
       throw new RuntimeException(e);
     }
-    final FnDataReceiver<WindowedValue> mainInputConsumer;
+    FnDataReceiver<WindowedValue> mainInputConsumer;
     switch (pTransform.getSpec().getUrn()) {
       case PTransformTranslation.PAR_DO_TRANSFORM_URN:
         if (doFnSignature.processElement().observesWindow() || !sideInputMapping.isEmpty()) {
@@ -468,6 +473,15 @@ public class FnApiDoFnRunner<InputT, RestrictionT, PositionT, WatermarkEstimator
           mainInputConsumer = this::processElementForParDo;
           this.processContext = new NonWindowObservingProcessBundleContext();
         }
+        if (doFnSignature.processBatch() != null) {
+          this.processBatchBuffer =
+              new ProcessBatchBuffer<>(
+                  doFnInvoker,
+                  doFnSignature.processBatch(),
+                  new BatchReceiver((FnDataReceiver) mainInputConsumer));
+          addResetFunction.accept(processBatchBuffer::clear);
+          mainInputConsumer = this::processElementForBatchingParDo;
+        }
         break;
       case PTransformTranslation.SPLITTABLE_PROCESS_SIZED_ELEMENTS_AND_RESTRICTIONS_URN:
         if (doFnSignature.processElement().observesWindow()
@@ -629,6 +643,17 @@ public class FnApiDoFnRunner<InputT, RestrictionT, PositionT, WatermarkEstimator
     }
   }
 
+  private void processElementForBatchingParDo(WindowedValue<InputT> elem) {
+    // Adding an element may process a batch, which runs user code.
+    try {
+      for (WindowedValue<InputT> windowedElem : elem.explodeWindows()) {
+        processBatchBuffer.add(windowedElem);
+      }
+    } catch (Exception e) {
+      throw UserCodeException.wrap(e);
+    }
+  }
+
   private void processElementForWindowObservingParDo(WindowedValue<InputT> elem) {
     currentElement = elem;
     try {
@@ -1300,6 +1325,14 @@ public class FnApiDoFnRunner<InputT, RestrictionT, PositionT, WatermarkEstimator
       timerBundleTracker.outputTimers(outboundTimerReceivers::get);
     }
 
+    if (processBatchBuffer != null) {
+      try {
+        processBatchBuffer.flush();
+      } catch (Exception e) {
+        throw UserCodeException.wrap(e);
+      }
+    }
+
     doFnInvoker.invokeFinishBundle(finishBundleArgumentProvider);
 
     this.stateAccessor.finalizeState();
@@ -1309,6 +1342,47 @@ public class FnApiDoFnRunner<InputT, RestrictionT, PositionT, WatermarkEstimator
     doFnInvoker.invokeTeardown();
   }
 
+  /** Processes and outputs the batches of a {@link DoFn.ProcessBatch} method. */
+  private class BatchReceiver implements ProcessBatchBuffer.Receiver<InputT, OutputT> {
+    private final FnDataReceiver<WindowedValue<InputT>> elementConsumer;
+
+    BatchReceiver(FnDataReceiver<WindowedValue<InputT>> elementConsumer) {
+      this.elementConsumer = elementConsumer;
+    }
+
+    @Override
+    public void processElement(WindowedValue<InputT> element) {
+      try {
+        elementConsumer.accept(element);
+      } catch (Exception e) {
+        throw UserCodeException.wrap(e);
+      }
+    }
+
+    @Override
+    public void outputBatch(
+        WindowedValue<InputT> earliest, Iterable<TimestampedValue<OutputT>> outputs) {
+      currentElement = earliest;
+      currentWindow = Iterables.getOnlyElement(earliest.getWindows());
+      try {
+        for (TimestampedValue<OutputT> output : outputs) {
+          checkTimestamp(output.getTimestamp());
+          outputTo(
+              mainOutputConsumer,
+              WindowedValues.of(
+                  output.getValue(),
+                  output.getTimestamp(),
+                  currentWindow,
+                  earliest.getPaneInfo(),
+                  earliest.causedByDrain()));
+        }
+      } finally {
+        currentElement = null;
+        currentWindow = null;
+      }
+    }
+  }
+
   /** Outputs the given element to the specified set of consumers wrapping any exceptions. */
   private <T> void outputTo(FnDataReceiver<WindowedValue<T>> consumer, WindowedValue<T> output) {
     if (currentWatermarkEstimator instanceof TimestampObservingWatermarkEstimator) {
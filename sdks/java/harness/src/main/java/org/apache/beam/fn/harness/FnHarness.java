@@ -29,6 +29,7 @@ import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
 import java.util.function.Function;
 import javax.annotation.Nullable;
 import org.apache.beam.fn.harness.control.BeamFnControlClient;
@@ -278,6 +279,12 @@ public class FnHarness {
     ShortIdMap metricsShortIds = new ShortIdMap();
     UnboundedScheduledExecutorService executorService = new UnboundedScheduledExecutorService();
     options.as(ExecutorOptions.class).setScheduledExecutorService(executorService);
+    // With virtual threads, instructions and thereby DoFns that block on I/O do not occupy a
+    // platform thread while waiting.
+    ExecutorService instructionExecutorService =
+        VirtualThreads.isEnabled(options)
+            ? VirtualThreads.newThreadPerTaskExecutor("InstructionProcessor-thread-")
+            : executorService;
     CompletableFuture<Void> samplerTerminationFuture = new CompletableFuture<>();
     ExecutionStateSampler executionStateSampler =
         new ExecutionStateSampler(
@@ -417,7 +424,7 @@ public class FnHarness {
           new BeamFnControlClient(
               controlStub.withExecutor(MoreExecutors.directExecutor()),
               outboundObserverFactory,
-              executorService,
+              instructionExecutorService,
               handlers);
       if (options.as(SdkHarnessOptions.class).getEnableLogViaFnApi()) {
         CompletableFuture.anyOf(
@@ -436,6 +443,9 @@ public class FnHarness {
     } finally {
       LOG.info("Shutting SDK harness down.");
       executionStateSampler.stop();
+      if (instructionExecutorService != executorService) {
+        instructionExecutorService.shutdown();
+      }
       executorService.shutdown();
     }
   }
@@ -0,0 +1,42 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.fn.harness;
+
+import org.apache.beam.sdk.fn.data.FnDataReceiver;
+import org.apache.beam.sdk.values.KV;
+import org.apache.beam.sdk.values.WindowedValue;
+
+/**
+ * A table which combines values with the same key and window into accumulators, outputting
+ * accumulators when the table is full or flushed.
+ *
+ * <p>Implementations need not be thread safe; {@link #put} and {@link #flush} are called from the
+ * bundle processing thread.
+ */
+public interface GroupingTable<K, InputT, AccumT> {
+  /**
+   * Adds the key and value to this table, possibly outputting some accumulators to the receiver if
+   * the table is full.
+   */
+  void put(
+      WindowedValue<KV<K, InputT>> value, FnDataReceiver<WindowedValue<KV<K, AccumT>>> receiver)
+      throws Exception;
+
+  /** Outputs all accumulators in this table to the receiver. */
+  void flush(FnDataReceiver<WindowedValue<KV<K, AccumT>>> receiver) throws Exception;
+}
@@ -0,0 +1,372 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.fn.harness;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import javax.annotation.concurrent.ThreadSafe;
+import org.apache.beam.fn.harness.Cache.Decoder;
+import org.apache.beam.fn.harness.Cache.Encodable;
+import org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.annotations.VisibleForTesting;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Stores the encoded form of {@link Encodable} values in direct memory outside of the Java heap.
+ *
+ * <p>Direct memory is allocated lazily in chunks of up to {@link #MAX_CHUNK_BYTES} which are split
+ * into pages of {@link #PAGE_SIZE} bytes. An entry occupies as many pages as its encoded form
+ * needs, which gives exact weights without measuring object graphs and keeps the cached bytes out
+ * of reach of the garbage collector.
+ *
+ * <p>Entries are evicted in least recently used order. Evicting entries to make room for a new
+ * entry is subject to a TinyLFU admission policy: the new entry is rejected if it was used less
+ * frequently than one of the entries it would evict, which prevents scans from flushing frequently
+ * used entries from the store.
+ */
+@ThreadSafe
+class OffHeapCacheStore {
+  @VisibleForTesting static final int PAGE_SIZE = 4096;
+  private static final int MAX_CHUNK_BYTES = 1 << 30;
+  private static final int PAGES_PER_CHUNK = MAX_CHUNK_BYTES / PAGE_SIZE;
+
+  private final int maxPages;
+  private final Lock lock;
+  private final FrequencySketch sketch;
+  // Guarded by lock.
+  private final LinkedHashMap<Object, Entry> entries;
+  private final List<ByteBuffer> chunks;
+  private int[] freePages;
+  private int freePageCount;
+  private int unallocatedPage;
+  private long hits;
+  private long misses;
+  private long evictions;
+  private long rejections;
+
+  OffHeapCacheStore(long maximumBytes) {
+    this.maxPages = (int) Math.min(Integer.MAX_VALUE, maximumBytes / PAGE_SIZE);
+    this.lock = new ReentrantLock();
+    this.sketch = new FrequencySketch(maxPages);
+    this.entries = new LinkedHashMap<>(16, 0.75f, true);
+    this.chunks = new ArrayList<>();
+    this.freePages = new int[16];
+  }
+
+  /** Returns the decoded value stored for the key, or {@code null} if there is none. */
+  @Nullable
+  Object get(Object key) {
+    Entry entry;
+    Decoder<?> decoder;
+    byte[] bytes;
+    lock.lock();
+    try {
+      sketch.increment(key);
+      entry = entries.get(key);
+      if (entry == null) {
+        misses += 1;
+        return null;
+      }
+      hits += 1;
+      Object decoded = entry.decoded.get();
+      if (decoded != null) {
+        return decoded;
+      }
+      decoder = entry.decoder;
+      bytes = read(entry);
+    } finally {
+      lock.unlock();
+    }
+    try {
+      Object decoded = decoder.decode(new ByteArrayInputStream(bytes));
+      entry.decoded = new WeakReference<>(decoded);
+      return decoded;
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Stores the encoded form of the value for the key, replacing any existing value.
+   *
+   * <p>Returns {@code false} if the value was not admitted, in which case any existing value for
+   * the key has been removed.
+   */
+  boolean put(Object key, Encodable<?> value) {
+    return store(key, value, true);
+  }
+
+  /**
+   * Stores the encoded form of the value for the key unless a value is already stored for it.
+   *
+   * <p>Returns {@code false} if a value was already stored or the value was not admitted.
+   */
+  boolean putIfAbsent(Object key, Encodable<?> value) {
+    return store(key, value, false);
+  }
+
+  private boolean store(Object key, Encodable<?> value, boolean replace) {
+    ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+    try {
+      value.encode(encoded);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    byte[] bytes = encoded.toByteArray();
+    int pagesNeeded = (bytes.length + PAGE_SIZE - 1) / PAGE_SIZE;
+
+    lock.lock();
+    try {
+      sketch.increment(key);
+      if (!replace && entries.containsKey(key)) {
+        return false;
+      }
+      Entry existing = entries.remove(key);
+      if (existing != null) {
+        release(existing);
+      }
+      if (pagesNeeded > maxPages || !makeRoom(key, pagesNeeded)) {
+        rejections += 1;
+        return false;
+      }
+      int[] pages = new int[pagesNeeded];
+      for (int i = 0; i < pagesNeeded; ++i) {
+        pages[i] = allocatePage();
+        int offset = i * PAGE_SIZE;
+        pageBuffer(pages[i]).put(bytes, offset, Math.min(PAGE_SIZE, bytes.length - offset));
+      }
+      Entry entry = new Entry(key, pages, bytes.length, value.getDecoder());
+      entry.decoded = new WeakReference<>(value);
+      entries.put(key, entry);
+      return true;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /** Removes any value stored for the key. */
+  void remove(Object key) {
+    lock.lock();
+    try {
+      Entry entry = entries.remove(key);
+      if (entry != null) {
+        release(entry);
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Removes the value stored for the key if it was stored by putting the given value, which the
+   * caller still references.
+   */
+  void remove(Object key, Encodable<?> value) {
+    lock.lock();
+    try {
+      Entry entry = entries.get(key);
+      // Decoded values are only replaced once they are no longer referenced.
+      if (entry != null && entry.decoded.get() == value) {
+        entries.remove(key);
+        release(entry);
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /** Returns the number of bytes of direct memory used by the stored entries. */
+  long getWeightInBytes() {
+    lock.lock();
+    try {
+      return ((long) unallocatedPage - freePageCount) * PAGE_SIZE;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  String describeStats() {
+    lock.lock();
+    try {
+      long lookups = hits + misses;
+      return String.format(
+          "off-heap used/max %d/%d MB, hit %.2f%%, lookups %d, entries %d, evictions %d,"
+              + " rejections %d",
+          (((long) unallocatedPage - freePageCount) * PAGE_SIZE) >> 20,
+          ((long) maxPages * PAGE_SIZE) >> 20,
+          lookups == 0 ? 100. : hits * 100. / lookups,
+          lookups,
+          entries.size(),
+          evictions,
+          rejections);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Evicts the least recently used entries until the requested number of pages are available.
+   * Returns {@code false} without evicting anything if any of those entries were used more
+   * frequently than the candidate key.
+   */
+  private boolean makeRoom(Object candidateKey, int pagesNeeded) {
+    int available = maxPages - unallocatedPage + freePageCount;
+    if (available >= pagesNeeded) {
+      return true;
+    }
+    int candidateFrequency = sketch.frequency(candidateKey);
+    int victims = 0;
+    Iterator<Entry> iterator = entries.values().iterator();
+    while (available < pagesNeeded) {
+      Entry victim = iterator.next();
+      if (sketch.frequency(victim.key) > candidateFrequency) {
+        return false;
+      }
+      available += victim.pages.length;
+      victims += 1;
+    }
+    iterator = entries.values().iterator();
+    for (int i = 0; i < victims; ++i) {
+      Entry victim = iterator.next();
+      iterator.remove();
+      release(victim);
+      evictions += 1;
+    }
+    return true;
+  }
+
+  private int allocatePage() {
+    if (freePageCount > 0) {
+      freePageCount -= 1;
+      return freePages[freePageCount];
+    }
+    int page = unallocatedPage;
+    if (page % PAGES_PER_CHUNK == 0) {
+      int chunkPages = Math.min(PAGES_PER_CHUNK, maxPages - page);
+      chunks.add(ByteBuffer.allocateDirect(chunkPages * PAGE_SIZE));
+    }
+    unallocatedPage += 1;
+    return page;
+  }
+
+  private void release(Entry entry) {
+    if (freePageCount + entry.pages.length > freePages.length) {
+      int capacity = Math.max(freePages.length * 2, freePageCount + entry.pages.length);
+      freePages = Arrays.copyOf(freePages, capacity);
+    }
+    System.arraycopy(entry.pages, 0, freePages, freePageCount, entry.pages.length);
+    freePageCount += entry.pages.length;
+  }
+
+  private byte[] read(Entry entry) {
+    byte[] bytes = new byte[entry.length];
+    for (int i = 0; i < entry.pages.length; ++i) {
+      int offset = i * PAGE_SIZE;
+      pageBuffer(entry.pages[i]).get(bytes, offset, Math.min(PAGE_SIZE, entry.length - offset));
+    }
+    return bytes;
+  }
+
+  /** Returns a buffer positioned at the start of the page which is independent of other readers. */
+  private ByteBuffer pageBuffer(int page) {
+    ByteBuffer buffer = chunks.get(page / PAGES_PER_CHUNK).duplicate();
+    buffer.position((page % PAGES_PER_CHUNK) * PAGE_SIZE);
+    return buffer;
+  }
+
+  private static class Entry {
+    private final Object key;
+    private final int[] pages;
+    private final int length;
+    private final Decoder<?> decoder;
+    // A recently decoded value which avoids decoding again while it is still referenced elsewhere.
+    private volatile WeakReference<Object> decoded;
+
+    Entry(Object key, int[] pages, int length, Decoder<?> decoder) {
+      this.key = key;
+      this.pages = pages;
+      this.length = length;
+      this.decoder = decoder;
+    }
+  }
+
+  /**
+   * A count-min sketch of 4 bit counters which estimates how frequently keys were used. Counters
+   * are halved periodically such that the estimates favour recent use.
+   */
+  @VisibleForTesting
+  static class FrequencySketch {
+    private static final int MAX_COUNT = 15;
+    private static final int[] SEEDS = {0x97cb3127, 0xc1d1b5f5, 0x5a4b3ba9, 0x2f9d3b25};
+
+    private final byte[] counters;
+    private final int mask;
+    private final int sampleSize;
+    private int additions;
+
+    FrequencySketch(int expectedEntries) {
+      int size =
+          Integer.highestOneBit(Math.max(64, Math.min(1 << 24, expectedEntries)) - 1) << 1;
+      this.counters = new byte[size];
+      this.mask = size - 1;
+      this.sampleSize = 10 * size;
+    }
+
+    void increment(Object key) {
+      int hash = key.hashCode();
+      boolean added = false;
+      for (int seed : SEEDS) {
+        int index = index(hash, seed);
+        if (counters[index] < MAX_COUNT) {
+          counters[index] += 1;
+          added = true;
+        }
+      }
+      if (added && ++additions >= sampleSize) {
+        for (int i = 0; i < counters.length; ++i) {
+          counters[i] >>= 1;
+        }
+        additions /= 2;
+      }
+    }
+
+    int frequency(Object key) {
+      int hash = key.hashCode();
+      int frequency = MAX_COUNT;
+      for (int seed : SEEDS) {
+        frequency = Math.min(frequency, counters[index(hash, seed)]);
+      }
+      return frequency;
+    }
+
+    private int index(int hash, int seed) {
+      int h = hash * seed;
+      return (h ^ (h >>> 16)) & mask;
+    }
+  }
+}
@@ -0,0 +1,391 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.fn.harness;
+
+import java.util.Arrays;
+import javax.annotation.concurrent.NotThreadSafe;
+import org.apache.beam.sdk.coders.BigEndianIntegerCoder;
+import org.apache.beam.sdk.coders.BigEndianLongCoder;
+import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.coders.DoubleCoder;
+import org.apache.beam.sdk.coders.VarIntCoder;
+import org.apache.beam.sdk.coders.VarLongCoder;
+import org.apache.beam.sdk.fn.data.FnDataReceiver;
+import org.apache.beam.sdk.transforms.Combine.BinaryCombineDoubleFn;
+import org.apache.beam.sdk.transforms.Combine.BinaryCombineIntegerFn;
+import org.apache.beam.sdk.transforms.Combine.BinaryCombineLongFn;
+import org.apache.beam.sdk.transforms.Combine.CombineFn;
+import org.apache.beam.sdk.transforms.Count;
+import org.apache.beam.sdk.transforms.Max;
+import org.apache.beam.sdk.transforms.Min;
+import org.apache.beam.sdk.transforms.Sum;
+import org.apache.beam.sdk.util.Weighted;
+import org.apache.beam.sdk.values.KV;
+import org.apache.beam.sdk.values.WindowedValue;
+import org.apache.beam.sdk.values.WindowedValues;
+import org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.annotations.VisibleForTesting;
+import org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.collect.ImmutableSet;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * A grouping table for globally windowed numeric combiners keyed by numbers, which stores keys and
+ * accumulators in primitive arrays instead of a map of boxed objects.
+ *
+ * <p>Keys and accumulators are represented as {@code long}s in an open addressing hash table with
+ * linear probing. This avoids allocating a grouping key, table entry and accumulator per key and
+ * gives the table an exact weight without estimating object sizes. When the table reaches its
+ * maximum number of keys, all accumulators are output.
+ *
+ * <p>Use {@link #isSupported} to check whether a combiner can use this table, and fall back to
+ * {@link PrecombineGroupingTable} otherwise. Supported are the numeric {@link Sum}, {@link Min}
+ * and {@link Max} combiners and {@link Count#combineFn()}, with keys encoded by {@link
+ * VarLongCoder}, {@link BigEndianLongCoder}, {@link VarIntCoder}, {@link BigEndianIntegerCoder} or
+ * {@link DoubleCoder}. Other subclasses of {@link BinaryCombineLongFn}, {@link
+ * BinaryCombineIntegerFn} and {@link BinaryCombineDoubleFn} are not supported, because they may
+ * override methods such as {@link CombineFn#addInput} that this table does not call.
+ */
+@NotThreadSafe
+public class PrimitivePrecombineGroupingTable<K, InputT, AccumT>
+    implements GroupingTable<K, InputT, AccumT>, Weighted {
+  private static final Class<?> COUNT_FN_CLASS = Count.combineFn().getClass();
+  private static final ImmutableSet<Class<?>> BINARY_COMBINE_FN_CLASSES =
+      ImmutableSet.of(
+          Sum.ofLongs().getClass(),
+          Sum.ofIntegers().getClass(),
+          Sum.ofDoubles().getClass(),
+          Min.ofLongs().getClass(),
+          Min.ofIntegers().getClass(),
+          Min.ofDoubles().getClass(),
+          Max.ofLongs().getClass(),
+          Max.ofIntegers().getClass(),
+          Max.ofDoubles().getClass());
+
+  private static final int INITIAL_CAPACITY = 1 << 10;
+  @VisibleForTesting static final int MAX_CAPACITY = 1 << 16;
+
+  /**
+   * Returns whether a {@link PrimitivePrecombineGroupingTable} supports the combiner and key coder.
+   */
+  public static boolean isSupported(
+      CombineFn<?, ?, ?> combineFn, Coder<?> keyCoder, boolean isGloballyWindowed) {
+    return isGloballyWindowed && combinerFor(combineFn) != null && keysFor(keyCoder) != null;
+  }
+
+  /**
+   * Returns a grouping table that combines inputs into a primitive accumulator. The combiner and key
+   * coder must be {@link #isSupported supported}.
+   */
+  public static <K, InputT, AccumT>
+      PrimitivePrecombineGroupingTable<K, InputT, AccumT> combining(
+          Cache<Object, Object> cache,
+          CombineFn<InputT, AccumT, ?> combineFn,
+          Coder<K> keyCoder) {
+    @Nullable PrimitiveCombiner<InputT, AccumT> combiner =
+        (PrimitiveCombiner<InputT, AccumT>) combinerFor(combineFn);
+    @Nullable PrimitiveKeys<K> keys = (PrimitiveKeys<K>) keysFor(keyCoder);
+    if (combiner == null || keys == null) {
+      throw new IllegalArgumentException(
+          String.format(
+              "Unsupported combiner %s or key coder %s.", combineFn.getClass(), keyCoder));
+    }
+    PrimitivePrecombineGroupingTable<K, InputT, AccumT> table =
+        new PrimitivePrecombineGroupingTable<>(cache, combiner, keys);
+    // The cache accounts for the memory used by the table, which changes only when it grows.
+    table.cache.put(Key.INSTANCE, table);
+    return table;
+  }
+
+  private static final class Key implements Weighted {
+    private static final Key INSTANCE = new Key();
+
+    @Override
+    public long getWeight() {
+      // Ignore the actual size of this singleton because it is trivial and because
+      // the weight reported here will be counted many times as it is present in
+      // many different state subcaches.
+      return 0;
+    }
+  }
+
+  private final Cache<Key, PrimitivePrecombineGroupingTable<K, InputT, AccumT>> cache;
+  private final PrimitiveCombiner<InputT, AccumT> combiner;
+  private final PrimitiveKeys<K> keys;
+  private long[] keyTable;
+  private long[] accumulatorTable;
+  private boolean[] occupied;
+  private int size;
+
+  private PrimitivePrecombineGroupingTable(
+      Cache<?, ?> cache, PrimitiveCombiner<InputT, AccumT> combiner, PrimitiveKeys<K> keys) {
+    this.cache = (Cache<Key, PrimitivePrecombineGroupingTable<K, InputT, AccumT>>) cache;
+    this.combiner = combiner;
+    this.keys = keys;
+    this.keyTable = new long[INITIAL_CAPACITY];
+    this.accumulatorTable = new long[INITIAL_CAPACITY];
+    this.occupied = new boolean[INITIAL_CAPACITY];
+  }
+
+  @Override
+  public long getWeight() {
+    return 64 + keyTable.length * (8L + 8L + 1L);
+  }
+
+  @Override
+  public void put(
+      WindowedValue<KV<K, InputT>> value, FnDataReceiver<WindowedValue<KV<K, AccumT>>> receiver)
+      throws Exception {
+    long key = keys.toLong(value.getValue().getKey());
+    int mask = keyTable.length - 1;
+    int slot = mix(key) & mask;
+    while (occupied[slot]) {
+      if (keyTable[slot] == key) {
+        accumulatorTable[slot] =
+            combiner.addInput(accumulatorTable[slot], value.getValue().getValue());
+        return;
+      }
+      slot = (slot + 1) & mask;
+    }
+    occupied[slot] = true;
+    keyTable[slot] = key;
+    accumulatorTable[slot] = combiner.addInput(combiner.identity(), value.getValue().getValue());
+    size += 1;
+
+    // Keep the load factor at or below one half so that probe sequences remain short.
+    if (size * 2 > keyTable.length) {
+      if (keyTable.length < MAX_CAPACITY) {
+        grow();
+      } else {
+        flush(receiver);
+        cache.put(Key.INSTANCE, this);
+      }
+    }
+  }
+
+  @Override
+  public void flush(FnDataReceiver<WindowedValue<KV<K, AccumT>>> receiver) throws Exception {
+    cache.remove(Key.INSTANCE);
+    for (int slot = 0; slot < keyTable.length; ++slot) {
+      if (occupied[slot]) {
+        receiver.accept(
+            WindowedValues.valueInGlobalWindow(
+                KV.of(
+                    keys.fromLong(keyTable[slot]),
+                    combiner.toAccumulator(accumulatorTable[slot]))));
+      }
+    }
+    Arrays.fill(occupied, false);
+    size = 0;
+  }
+
+  private void grow() {
+    long[] oldKeys = keyTable;
+    long[] oldAccumulators = accumulatorTable;
+    boolean[] oldOccupied = occupied;
+    keyTable = new long[oldKeys.length * 2];
+    accumulatorTable = new long[oldKeys.length * 2];
+    occupied = new boolean[oldKeys.length * 2];
+    int mask = keyTable.length - 1;
+    for (int i = 0; i < oldKeys.length; ++i) {
+      if (oldOccupied[i]) {
+        int slot = mix(oldKeys[i]) & mask;
+        while (occupied[slot]) {
+          slot = (slot + 1) & mask;
+        }
+        occupied[slot] = true;
+        keyTable[slot] = oldKeys[i];
+        accumulatorTable[slot] = oldAccumulators[i];
+      }
+    }
+    cache.put(Key.INSTANCE, this);
+  }
+
+  private static int mix(long key) {
+    long hash = key * 0x9E3779B97F4A7C15L;
+    return (int) (hash ^ (hash >>> 32));
+  }
+
+  private static @Nullable PrimitiveCombiner<?, ?> combinerFor(CombineFn<?, ?, ?> combineFn) {
+    if (COUNT_FN_CLASS.equals(combineFn.getClass())) {
+      return new CountCombiner();
+    } else if (!BINARY_COMBINE_FN_CLASSES.contains(combineFn.getClass())) {
+      // Only apply() and identity() are called, so subclasses must not override anything else.
+      return null;
+    } else if (combineFn instanceof BinaryCombineLongFn) {
+      return new LongCombiner((BinaryCombineLongFn) combineFn);
+    } else if (combineFn instanceof BinaryCombineIntegerFn) {
+      return new IntegerCombiner((BinaryCombineIntegerFn) combineFn);
+    } else if (combineFn instanceof BinaryCombineDoubleFn) {
+      return new DoubleCombiner((BinaryCombineDoubleFn) combineFn);
+    }
+    return null;
+  }
+
+  private static @Nullable PrimitiveKeys<?> keysFor(Coder<?> keyCoder) {
+    if (keyCoder instanceof VarLongCoder || keyCoder instanceof BigEndianLongCoder) {
+      return new LongKeys();
+    } else if (keyCoder instanceof VarIntCoder || keyCoder instanceof BigEndianIntegerCoder) {
+      return new IntegerKeys();
+    } else if (keyCoder instanceof DoubleCoder) {
+      return new DoubleKeys();
+    }
+    return null;
+  }
+
+  /** Combines inputs into an accumulator which is represented as a {@code long}. */
+  private interface PrimitiveCombiner<InputT, AccumT> {
+    long identity();
+
+    long addInput(long accumulator, InputT input);
+
+    AccumT toAccumulator(long accumulator);
+  }
+
+  private static class LongCombiner implements PrimitiveCombiner<Long, long[]> {
+    private final BinaryCombineLongFn combineFn;
+
+    LongCombiner(BinaryCombineLongFn combineFn) {
+      this.combineFn = combineFn;
+    }
+
+    @Override
+    public long identity() {
+      return combineFn.identity();
+    }
+
+    @Override
+    public long addInput(long accumulator, Long input) {
+      return combineFn.apply(accumulator, input);
+    }
+
+    @Override
+    public long[] toAccumulator(long accumulator) {
+      return new long[] {accumulator};
+    }
+  }
+
+  private static class IntegerCombiner implements PrimitiveCombiner<Integer, int[]> {
+    private final BinaryCombineIntegerFn combineFn;
+
+    IntegerCombiner(BinaryCombineIntegerFn combineFn) {
+      this.combineFn = combineFn;
+    }
+
+    @Override
+    public long identity() {
+      return combineFn.identity();
+    }
+
+    @Override
+    public long addInput(long accumulator, Integer input) {
+      return combineFn.apply((int) accumulator, input);
+    }
+
+    @Override
+    public int[] toAccumulator(long accumulator) {
+      return new int[] {(int) accumulator};
+    }
+  }
+
+  private static class DoubleCombiner implements PrimitiveCombiner<Double, double[]> {
+    private final BinaryCombineDoubleFn combineFn;
+
+    DoubleCombiner(BinaryCombineDoubleFn combineFn) {
+      this.combineFn = combineFn;
+    }
+
+    @Override
+    public long identity() {
+      return Double.doubleToRawLongBits(combineFn.identity());
+    }
+
+    @Override
+    public long addInput(long accumulator, Double input) {
+      return Double.doubleToRawLongBits(
+          combineFn.apply(Double.longBitsToDouble(accumulator), input));
+    }
+
+    @Override
+    public double[] toAccumulator(long accumulator) {
+      return new double[] {Double.longBitsToDouble(accumulator)};
+    }
+  }
+
+  private static class CountCombiner implements PrimitiveCombiner<Object, long[]> {
+    @Override
+    public long identity() {
+      return 0;
+    }
+
+    @Override
+    public long addInput(long accumulator, Object input) {
+      return accumulator + 1;
+    }
+
+    @Override
+    public long[] toAccumulator(long accumulator) {
+      return new long[] {accumulator};
+    }
+  }
+
+  /**
+   * Represents keys as {@code long}s such that two keys are represented by the same {@code long}
+   * if and only if their structural values are equal.
+   */
+  private interface PrimitiveKeys<K> {
+    long toLong(K key);
+
+    K fromLong(long key);
+  }
+
+  private static class LongKeys implements PrimitiveKeys<Long> {
+    @Override
+    public long toLong(Long key) {
+      return key;
+    }
+
+    @Override
+    public Long fromLong(long key) {
+      return key;
+    }
+  }
+
+  private static class IntegerKeys implements PrimitiveKeys<Integer> {
+    @Override
+    public long toLong(Integer key) {
+      return key;
+    }
+
+    @Override
+    public Integer fromLong(long key) {
+      return (int) key;
+    }
+  }
+
+  private static class DoubleKeys implements PrimitiveKeys<Double> {
+    @Override
+    public long toLong(Double key) {
+      // Matches Double#equals, which collapses all NaNs and distinguishes 0.0 from -0.0.
+      return Double.doubleToLongBits(key);
+    }
+
+    @Override
+    public Double fromLong(long key) {
+      return Double.longBitsToDouble(key);
+    }
+  }
+}
@@ -0,0 +1,137 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.fn.harness;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import org.apache.beam.sdk.options.PipelineOptions;
+import org.apache.beam.sdk.options.SdkHarnessOptions;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Creates executors that run each task on a new virtual thread.
+ *
+ * <p>Virtual threads are available from Java 21 on. The SDK is compiled for older Java versions,
+ * so the virtual thread API is looked up reflectively and {@link #isSupported()} is false on older
+ * JVMs.
+ */
+public final class VirtualThreads {
+  private static final Logger LOG = LoggerFactory.getLogger(VirtualThreads.class);
+
+  // Thread.ofVirtual().name(prefix, 0).factory(), bound to (String, long) -> ThreadFactory.
+  private static final @Nullable MethodHandle VIRTUAL_THREAD_FACTORY;
+  // Executors.newThreadPerTaskExecutor(ThreadFactory).
+  private static final @Nullable MethodHandle NEW_THREAD_PER_TASK_EXECUTOR;
+
+  static {
+    MethodHandle virtualThreadFactory = null;
+    MethodHandle newThreadPerTaskExecutor = null;
+    try {
+      MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+      Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+      Class<?> virtualBuilderClass = Class.forName("java.lang.Thread$Builder$OfVirtual");
+      MethodHandle ofVirtual =
+          lookup.findStatic(Thread.class, "ofVirtual", MethodType.methodType(virtualBuilderClass));
+      MethodHandle name =
+          lookup.findVirtual(
+              virtualBuilderClass,
+              "name",
+              MethodType.methodType(virtualBuilderClass, String.class, long.class));
+      MethodHandle factory =
+          lookup.findVirtual(builderClass, "factory", MethodType.methodType(ThreadFactory.class));
+      // (String, long) -> ofVirtual().name(String, long).factory()
+      virtualThreadFactory =
+          MethodHandles.filterReturnValue(
+              MethodHandles.foldArguments(name, ofVirtual),
+              factory.asType(MethodType.methodType(ThreadFactory.class, virtualBuilderClass)));
+      newThreadPerTaskExecutor =
+          lookup.findStatic(
+              Executors.class,
+              "newThreadPerTaskExecutor",
+              MethodType.methodType(ExecutorService.class, ThreadFactory.class));
+    } catch (ReflectiveOperationException e) {
+      // Virtual threads are not available before Java 21.
+      virtualThreadFactory = null;
+      newThreadPerTaskExecutor = null;
+    }
+    VIRTUAL_THREAD_FACTORY = virtualThreadFactory;
+    NEW_THREAD_PER_TASK_EXECUTOR = newThreadPerTaskExecutor;
+  }
+
+  private VirtualThreads() {}
+
+  /** Returns whether the JVM supports virtual threads. */
+  public static boolean isSupported() {
+    return NEW_THREAD_PER_TASK_EXECUTOR != null;
+  }
+
+  /**
+   * Returns whether {@link SdkHarnessOptions#getEnableVirtualThreads()} is set and the JVM supports
+   * virtual threads. Logs a warning if they are requested but not supported.
+   */
+  public static boolean isEnabled(PipelineOptions options) {
+    if (!options.as(SdkHarnessOptions.class).getEnableVirtualThreads()) {
+      return false;
+    }
+    if (!isSupported()) {
+      LOG.warn(
+          "Virtual threads were requested with --enableVirtualThreads but are not supported by "
+              + "Java {}. Using platform threads instead.",
+          System.getProperty("java.version"));
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Returns a factory for virtual threads named with the given prefix followed by a counter.
+   *
+   * @throws UnsupportedOperationException if the JVM does not support virtual threads
+   */
+  public static ThreadFactory newThreadFactory(String namePrefix) {
+    if (VIRTUAL_THREAD_FACTORY == null) {
+      throw new UnsupportedOperationException("Virtual threads require Java 21 or later.");
+    }
+    try {
+      return (ThreadFactory) VIRTUAL_THREAD_FACTORY.invoke(namePrefix, 0L);
+    } catch (Throwable t) {
+      throw new IllegalStateException("Failed to create a virtual thread factory", t);
+    }
+  }
+
+  /**
+   * Returns an executor that runs each task on a new virtual thread named with the given prefix
+   * followed by a counter.
+   *
+   * @throws UnsupportedOperationException if the JVM does not support virtual threads
+   */
+  public static ExecutorService newThreadPerTaskExecutor(String namePrefix) {
+    ThreadFactory threadFactory = newThreadFactory(namePrefix);
+    try {
+      return (ExecutorService) NEW_THREAD_PER_TASK_EXECUTOR.invoke(threadFactory);
+    } catch (Throwable t) {
+      throw new IllegalStateException("Failed to create a virtual thread executor", t);
+    }
+  }
+}
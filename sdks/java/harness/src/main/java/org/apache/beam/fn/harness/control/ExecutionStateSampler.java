@@ -31,6 +31,8 @@ import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Consumer;
 import javax.annotation.concurrent.GuardedBy;
 import org.apache.beam.fn.harness.logging.BeamFnLoggingMDC;
@@ -86,7 +88,11 @@ public class ExecutionStateSampler {
   private final long userSpecifiedLullTimeMsForRestart;
   private final boolean userSpecifiedTimeoutForRestart;
 
-  @GuardedBy("activeStateTrackers")
+  // A lock rather than a monitor, since virtual threads that block on entering a monitor pin their
+  // carrier thread while the sampler holds it.
+  private final Lock activeStateTrackersLock;
+
+  @GuardedBy("activeStateTrackersLock")
   private final Set<ExecutionStateTracker> activeStateTrackers;
 
   private final Future<Void> stateSamplingThread;
@@ -105,6 +111,7 @@ public class ExecutionStateSampler {
             ? DEFAULT_SAMPLING_PERIOD_MS
             : Integer.parseInt(samplingPeriodMills);
     this.clock = clock;
+    this.activeStateTrackersLock = new ReentrantLock();
     this.activeStateTrackers = new HashSet<>();
 
     int timeoutOption = options.as(SdkHarnessOptions.class).getElementProcessingTimeoutMinutes();
@@ -208,12 +215,15 @@ public class ExecutionStateSampler {
       } else {
         long millisSinceLastSample = currentTimeMillis - lastSampleTimeMillis;
         Optional<String> timeoutMsg = Optional.empty();
-        synchronized (activeStateTrackers) {
+        activeStateTrackersLock.lock();
+        try {
           for (ExecutionStateTracker activeTracker : activeStateTrackers) {
             if (!timeoutMsg.isPresent()) {
               timeoutMsg = activeTracker.takeSample(currentTimeMillis, millisSinceLastSample);
             }
           }
+        } finally {
+          activeStateTrackersLock.unlock();
         }
         if (timeoutMsg.isPresent() && this.onTimeoutExceededCallback != null) {
           this.onTimeoutExceededCallback.accept(timeoutMsg.get());
@@ -632,8 +642,11 @@ public class ExecutionStateSampler {
       this.startTimeMillis.lazySet(nowMillis);
       this.lastTransitionTimeMillis.lazySet(nowMillis);
       this.trackedThread.lazySet(Thread.currentThread());
-      synchronized (activeStateTrackers) {
+      activeStateTrackersLock.lock();
+      try {
         activeStateTrackers.add(this);
+      } finally {
+        activeStateTrackersLock.unlock();
       }
     }
 
@@ -657,12 +670,15 @@ public class ExecutionStateSampler {
      */
     @Override
     public void reset() {
-      synchronized (activeStateTrackers) {
+      activeStateTrackersLock.lock();
+      try {
         activeStateTrackers.remove(this);
         for (ExecutionStateImpl executionState : executionStates) {
           executionState.reset();
         }
         this.transitionsAtLastSample = 0;
+      } finally {
+        activeStateTrackersLock.unlock();
       }
       this.processBundleId.lazySet(null);
       this.trackedThread.lazySet(null);
@@ -0,0 +1,747 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.fn.harness.control;
+
+import static org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.base.Preconditions.checkState;
+import static org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.base.Preconditions.checkStateNotNull;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+import javax.annotation.concurrent.GuardedBy;
+import org.apache.beam.fn.harness.VirtualThreads;
+import org.apache.beam.fn.harness.control.ExecutionStateSampler.ExecutionStateTracker;
+import org.apache.beam.fn.harness.control.FinalizeBundleHandler.CallbackRegistration;
+import org.apache.beam.fn.harness.control.ProcessBundleHandler.BundleProcessor;
+import org.apache.beam.fn.harness.data.BeamFnDataClient;
+import org.apache.beam.model.fnexecution.v1.BeamFnApi.Elements;
+import org.apache.beam.model.fnexecution.v1.BeamFnApi.InstructionRequest;
+import org.apache.beam.model.fnexecution.v1.BeamFnApi.ProcessBundleDescriptor;
+import org.apache.beam.model.pipeline.v1.Endpoints.ApiServiceDescriptor;
+import org.apache.beam.model.pipeline.v1.RunnerApi.PTransform;
+import org.apache.beam.model.pipeline.v1.RunnerApi.ParDoPayload;
+import org.apache.beam.runners.core.metrics.MonitoringInfoConstants.TypeUrns;
+import org.apache.beam.runners.core.metrics.MonitoringInfoEncodings;
+import org.apache.beam.runners.core.metrics.ShortIdMap;
+import org.apache.beam.sdk.fn.data.BeamFnDataOutboundAggregator;
+import org.apache.beam.sdk.fn.data.CloseableFnDataReceiver;
+import org.apache.beam.sdk.function.ThrowingFunction;
+import org.apache.beam.sdk.function.ThrowingRunnable;
+import org.apache.beam.sdk.options.ExperimentalOptions;
+import org.apache.beam.sdk.options.PipelineOptions;
+import org.apache.beam.sdk.util.HistogramData;
+import org.apache.beam.sdk.util.construction.PTransformTranslation;
+import org.apache.beam.vendor.grpc.v1p69p0.com.google.protobuf.ByteString;
+import org.apache.beam.vendor.grpc.v1p69p0.com.google.protobuf.InvalidProtocolBufferException;
+import org.apache.beam.vendor.grpc.v1p69p0.io.grpc.stub.StreamObserver;
+import org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.collect.ImmutableList;
+import org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.collect.ImmutableSet;
+import org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.collect.Lists;
+import org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Processes the inbound data of a single {@link
+ * org.apache.beam.model.fnexecution.v1.BeamFnApi.ProcessBundleRequest} on several threads.
+ *
+ * <p>This is enabled by the {@code intra_bundle_parallelism=<N>} experiment for bundles whose only
+ * input is a single data channel and whose transforms are all stateless: ParDos without state,
+ * timers, side inputs or restrictions, flattens and window functions. The {@link BundleProcessor}
+ * chosen for the request coordinates the bundle. It runs its own start and finish bundle functions
+ * and closes the outbound streams, while the inbound data is decoded and processed by {@code N}
+ * workers that each own a copy of the bundle's transforms. Each chunk of inbound data, the data of
+ * one {@link Elements} message, is handed to the next idle worker and the workers send their
+ * outputs through the coordinator's {@link BeamFnDataOutboundAggregator}s.
+ *
+ * <p>By default the outputs of the chunks are sent in the order in which the chunks were received,
+ * so each outbound stream contains the elements in the same order as with sequential processing.
+ * Only the outputs of the workers' finish bundle functions, which are sent after the outputs of all
+ * chunks, are not ordered. The {@code intra_bundle_parallelism_unordered} experiment sends the
+ * outputs of a worker as soon as they are flushed instead, so that workers never wait for a slower
+ * worker, at the expense of interleaving the outputs of different chunks.
+ *
+ * <p>Each worker runs the start and finish bundle functions of its transforms once per bundle, and
+ * the final monitoring data of the workers is merged into the coordinator's. Bundles that are
+ * processed in parallel can not be split, and progress reports only cover the coordinator.
+ */
+class ParallelBundleExecutor {
+  static final String INTRA_BUNDLE_PARALLELISM = "intra_bundle_parallelism";
+  static final String INTRA_BUNDLE_PARALLELISM_UNORDERED = "intra_bundle_parallelism_unordered";
+
+  private static final Logger LOG = LoggerFactory.getLogger(ParallelBundleExecutor.class);
+
+  private static final String DATA_INPUT_URN = "beam:runner:source:v1";
+  private static final String DATA_OUTPUT_URN = "beam:runner:sink:v1";
+  private static final Set<String> STATELESS_URNS =
+      ImmutableSet.of(
+          DATA_INPUT_URN,
+          DATA_OUTPUT_URN,
+          PTransformTranslation.PAR_DO_TRANSFORM_URN,
+          PTransformTranslation.FLATTEN_TRANSFORM_URN,
+          PTransformTranslation.ASSIGN_WINDOWS_TRANSFORM_URN,
+          PTransformTranslation.MAP_WINDOWS_TRANSFORM_URN);
+
+  // How long a blocked worker or receiver waits before checking whether the bundle failed.
+  private static final long FAILURE_CHECK_INTERVAL_MILLIS = 100;
+
+  /** Creates the copy of a bundle's transforms that is owned by a worker. */
+  interface WorkerFactory {
+    BundleProcessor create(
+        String processBundleDescriptorId, InstructionRequest request, BeamFnDataClient dataClient)
+        throws IOException;
+  }
+
+  /**
+   * Returns an executor if the {@code intra_bundle_parallelism} experiment requests more than one
+   * worker per bundle, otherwise {@code null}.
+   */
+  static @Nullable ParallelBundleExecutor create(
+      PipelineOptions options,
+      BeamFnDataClient beamFnDataClient,
+      ShortIdMap shortIds,
+      WorkerFactory workerFactory,
+      ThrowingFunction<BundleProcessor, Map<String, ByteString>> finalMonitoringData) {
+    String parallelism =
+        ExperimentalOptions.getExperimentValue(options, INTRA_BUNDLE_PARALLELISM);
+    if (parallelism == null || Integer.parseInt(parallelism) <= 1) {
+      return null;
+    }
+    return new ParallelBundleExecutor(
+        options,
+        Integer.parseInt(parallelism),
+        !ExperimentalOptions.hasExperiment(options, INTRA_BUNDLE_PARALLELISM_UNORDERED),
+        beamFnDataClient,
+        shortIds,
+        workerFactory,
+        finalMonitoringData);
+  }
+
+  private final PipelineOptions options;
+  private final int parallelism;
+  private final boolean ordered;
+  private final BeamFnDataClient beamFnDataClient;
+  private final ShortIdMap shortIds;
+  private final WorkerFactory workerFactory;
+  private final ThrowingFunction<BundleProcessor, Map<String, ByteString>> finalMonitoringData;
+  private final Map<ProcessBundleDescriptor, Boolean> statelessDescriptors;
+  private final Map<String, ConcurrentLinkedQueue<Worker>> idleWorkers;
+  private final ExecutorService executor;
+
+  private ParallelBundleExecutor(
+      PipelineOptions options,
+      int parallelism,
+      boolean ordered,
+      BeamFnDataClient beamFnDataClient,
+      ShortIdMap shortIds,
+      WorkerFactory workerFactory,
+      ThrowingFunction<BundleProcessor, Map<String, ByteString>> finalMonitoringData) {
+    this.options = options;
+    this.parallelism = parallelism;
+    this.ordered = ordered;
+    this.beamFnDataClient = beamFnDataClient;
+    this.shortIds = shortIds;
+    this.workerFactory = workerFactory;
+    this.finalMonitoringData = finalMonitoringData;
+    this.statelessDescriptors = new ConcurrentHashMap<>();
+    this.idleWorkers = new ConcurrentHashMap<>();
+    this.executor =
+        VirtualThreads.isEnabled(options)
+            ? VirtualThreads.newThreadPerTaskExecutor("IntraBundleWorker-thread-")
+            : Executors.newCachedThreadPool(
+                new ThreadFactoryBuilder()
+                    .setDaemon(true)
+                    .setNameFormat("IntraBundleWorker-thread-%d")
+                    .build());
+  }
+
+  /** Returns whether the bundles of the given descriptor are processed in parallel. */
+  boolean canProcessInParallel(ProcessBundleDescriptor descriptor) {
+    return statelessDescriptors.computeIfAbsent(descriptor, ParallelBundleExecutor::isStateless);
+  }
+
+  private static boolean isStateless(ProcessBundleDescriptor descriptor) {
+    int dataInputs = 0;
+    for (PTransform transform : descriptor.getTransformsMap().values()) {
+      String urn = transform.getSpec().getUrn();
+      if (!STATELESS_URNS.contains(urn)) {
+        return false;
+      }
+      if (DATA_INPUT_URN.equals(urn)) {
+        dataInputs += 1;
+      } else if (PTransformTranslation.PAR_DO_TRANSFORM_URN.equals(urn)) {
+        ParDoPayload payload;
+        try {
+          payload = ParDoPayload.parseFrom(transform.getSpec().getPayload());
+        } catch (InvalidProtocolBufferException e) {
+          return false;
+        }
+        if (payload.getStateSpecsCount() > 0
+            || payload.getTimerFamilySpecsCount() > 0
+            || payload.getSideInputsCount() > 0
+            || !payload.getRestrictionCoderId().isEmpty()
+            || payload.getRequiresStableInput()
+            || payload.getRequiresTimeSortedInput()) {
+          return false;
+        }
+      }
+    }
+    return dataInputs == 1;
+  }
+
+  /**
+   * Processes the inbound data of the request with the workers, sending their outputs through the
+   * outbound aggregators of the coordinator. The coordinator must have been set up for the request
+   * and have run its start bundle functions. Returns once all workers finished.
+   */
+  Result process(InstructionRequest request, BundleProcessor coordinator) throws Exception {
+    String instructionId = request.getInstructionId();
+    String descriptorId = request.getProcessBundle().getProcessBundleDescriptorId();
+    ParallelBundle bundle = new ParallelBundle(instructionId, coordinator);
+    List<Future<WorkerResult>> workerResults = new ArrayList<>(parallelism);
+    try {
+      for (int i = 0; i < parallelism; ++i) {
+        Worker worker = acquireWorker(descriptorId, request);
+        workerResults.add(
+            executor.submit(() -> processOnWorker(descriptorId, worker, request, bundle)));
+      }
+      beamFnDataClient.registerReceiver(
+          instructionId, coordinator.getInboundEndpointApiServiceDescriptors(), bundle);
+    } catch (Exception e) {
+      bundle.abort(e);
+      throw e;
+    }
+
+    try {
+      Result result = new Result(shortIds);
+      for (Future<WorkerResult> workerResult : workerResults) {
+        try {
+          result.add(workerResult.get());
+        } catch (ExecutionException e) {
+          // The failure is recorded by the bundle, which reports the first one below.
+        } catch (InterruptedException e) {
+          bundle.abort(e);
+          Thread.currentThread().interrupt();
+          throw e;
+        }
+      }
+      bundle.throwIfFailed();
+      return result;
+    } finally {
+      beamFnDataClient.unregisterReceiver(
+          instructionId, coordinator.getInboundEndpointApiServiceDescriptors());
+    }
+  }
+
+  private Worker acquireWorker(String descriptorId, InstructionRequest request)
+      throws IOException {
+    Worker worker =
+        idleWorkers.computeIfAbsent(descriptorId, id -> new ConcurrentLinkedQueue<>()).poll();
+    if (worker == null) {
+      WorkerDataClient dataClient = new WorkerDataClient(options);
+      worker = new Worker(workerFactory.create(descriptorId, request, dataClient), dataClient);
+    }
+    return worker;
+  }
+
+  private WorkerResult processOnWorker(
+      String descriptorId, Worker worker, InstructionRequest request, ParallelBundle bundle)
+      throws Exception {
+    BundleProcessor processor = worker.processor;
+    WorkerOutput output = new WorkerOutput(bundle);
+    worker.dataClient.output = output;
+    WorkerResult result;
+    try {
+      // The metrics environment is bound to the thread that sets up the bundle processor.
+      processor.setupForProcessBundleRequest(request);
+      try (HandleStateCallsForBundle beamFnStateClient = processor.getBeamFnStateClient()) {
+        ExecutionStateTracker stateTracker = processor.getStateTracker();
+        stateTracker.start(request.getInstructionId());
+        try {
+          for (ThrowingRunnable startFunction :
+              processor.getStartFunctionRegistry().getFunctions()) {
+            startFunction.run();
+          }
+          for (Chunk chunk = bundle.take(); chunk != Chunk.END; chunk = bundle.take()) {
+            processor
+                .getInboundObserver()
+                .multiplexElements(chunk.data.iterator(), Collections.emptyIterator());
+            sendBufferedData(processor);
+            output.publish(chunk.sequence);
+          }
+          for (ThrowingRunnable finishFunction :
+              Lists.reverse(processor.getFinishFunctionRegistry().getFunctions())) {
+            finishFunction.run();
+          }
+          sendBufferedData(processor);
+          output.publishFinal();
+
+          // Held until the bundle processor is reset, which has to happen on this thread.
+          processor.getProgressRequestLock().lock();
+          result =
+              new WorkerResult(
+                  finalMonitoringData.apply(processor),
+                  ImmutableList.copyOf(processor.getBundleFinalizationCallbackRegistrations()));
+        } finally {
+          stateTracker.reset();
+        }
+      }
+    } catch (Exception e) {
+      bundle.abort(e);
+      worker.dataClient.output = null;
+      processor.discard();
+      throw e;
+    }
+
+    worker.dataClient.output = null;
+    try {
+      processor.reset();
+      idleWorkers.computeIfAbsent(descriptorId, id -> new ConcurrentLinkedQueue<>()).add(worker);
+    } catch (Exception e) {
+      LOG.warn(
+          "Was unable to reset bundle processor of intra bundle worker safely. Bundle processor "
+              + "will be discarded and re-instantiated for descriptor {}.",
+          descriptorId,
+          e);
+    }
+    return result;
+  }
+
+  private static void sendBufferedData(BundleProcessor processor) {
+    for (BeamFnDataOutboundAggregator aggregator : processor.getOutboundAggregators().values()) {
+      aggregator.sendBufferedData();
+    }
+  }
+
+  /** Stops the workers and runs the tearDown() functions of the idle ones. */
+  void shutdown() {
+    executor.shutdownNow();
+    for (ConcurrentLinkedQueue<Worker> workers : idleWorkers.values()) {
+      for (Worker worker = workers.poll(); worker != null; worker = workers.poll()) {
+        worker.processor.shutdown();
+      }
+    }
+  }
+
+  /** The outcome of the workers of a bundle, which is merged into the coordinator's. */
+  static class Result {
+    private final ShortIdMap shortIds;
+    private final Map<String, ByteString> monitoringData;
+    private final List<CallbackRegistration> bundleFinalizationCallbackRegistrations;
+
+    private Result(ShortIdMap shortIds) {
+      this.shortIds = shortIds;
+      this.monitoringData = new HashMap<>();
+      this.bundleFinalizationCallbackRegistrations = new ArrayList<>();
+    }
+
+    private void add(WorkerResult workerResult) {
+      mergeMonitoringDataInto(workerResult.monitoringData, monitoringData);
+      bundleFinalizationCallbackRegistrations.addAll(
+          workerResult.bundleFinalizationCallbackRegistrations);
+    }
+
+    /** Merges the monitoring data of the workers into the given monitoring data. */
+    void mergeMonitoringDataInto(Map<String, ByteString> target) {
+      mergeMonitoringDataInto(monitoringData, target);
+    }
+
+    private void mergeMonitoringDataInto(
+        Map<String, ByteString> source, Map<String, ByteString> target) {
+      for (Map.Entry<String, ByteString> entry : source.entrySet()) {
+        target.merge(
+            entry.getKey(),
+            entry.getValue(),
+            (first, second) -> combine(shortIds.get(entry.getKey()).getType(), first, second));
+      }
+    }
+
+    List<CallbackRegistration> getBundleFinalizationCallbackRegistrations() {
+      return bundleFinalizationCallbackRegistrations;
+    }
+  }
+
+  /**
+   * Combines two payloads of a monitoring info type. Types that can not be combined keep the first
+   * payload.
+   */
+  static ByteString combine(String type, ByteString first, ByteString second) {
+    switch (type) {
+      case TypeUrns.SUM_INT64_TYPE:
+        return MonitoringInfoEncodings.encodeInt64Counter(
+            MonitoringInfoEncodings.decodeInt64Counter(first)
+                + MonitoringInfoEncodings.decodeInt64Counter(second));
+      case TypeUrns.SUM_DOUBLE_TYPE:
+        return MonitoringInfoEncodings.encodeDoubleCounter(
+            MonitoringInfoEncodings.decodeDoubleCounter(first)
+                + MonitoringInfoEncodings.decodeDoubleCounter(second));
+      case TypeUrns.DISTRIBUTION_INT64_TYPE:
+        return MonitoringInfoEncodings.encodeInt64Distribution(
+            MonitoringInfoEncodings.decodeInt64Distribution(first)
+                .combine(MonitoringInfoEncodings.decodeInt64Distribution(second)));
+      case TypeUrns.LATEST_INT64_TYPE:
+        return MonitoringInfoEncodings.encodeInt64Gauge(
+            MonitoringInfoEncodings.decodeInt64Gauge(first)
+                .combine(MonitoringInfoEncodings.decodeInt64Gauge(second)));
+      case TypeUrns.SET_STRING_TYPE:
+        return MonitoringInfoEncodings.encodeStringSet(
+            MonitoringInfoEncodings.decodeStringSet(first)
+                .combine(MonitoringInfoEncodings.decodeStringSet(second)));
+      case TypeUrns.BOUNDED_TRIE_TYPE:
+        return MonitoringInfoEncodings.encodeBoundedTrie(
+            MonitoringInfoEncodings.decodeBoundedTrie(first)
+                .combine(MonitoringInfoEncodings.decodeBoundedTrie(second)));
+      case TypeUrns.HISTOGRAM_TYPE:
+        HistogramData histogram = MonitoringInfoEncodings.decodeInt64Histogram(first);
+        histogram.update(MonitoringInfoEncodings.decodeInt64Histogram(second));
+        return MonitoringInfoEncodings.encodeInt64Histogram(histogram);
+      default:
+        return first;
+    }
+  }
+
+  private static class WorkerResult {
+    private final Map<String, ByteString> monitoringData;
+    private final List<CallbackRegistration> bundleFinalizationCallbackRegistrations;
+
+    private WorkerResult(
+        Map<String, ByteString> monitoringData,
+        List<CallbackRegistration> bundleFinalizationCallbackRegistrations) {
+      this.monitoringData = monitoringData;
+      this.bundleFinalizationCallbackRegistrations = bundleFinalizationCallbackRegistrations;
+    }
+  }
+
+  private static class Worker {
+    private final BundleProcessor processor;
+    private final WorkerDataClient dataClient;
+
+    private Worker(BundleProcessor processor, WorkerDataClient dataClient) {
+      this.processor = processor;
+      this.dataClient = dataClient;
+    }
+  }
+
+  /** The data of one inbound {@link Elements} message, numbered in the order of arrival. */
+  private static class Chunk {
+    private static final Chunk END = new Chunk(-1, Collections.emptyList());
+
+    private final long sequence;
+    private final List<Elements.Data> data;
+
+    private Chunk(long sequence, List<Elements.Data> data) {
+      this.sequence = sequence;
+      this.data = data;
+    }
+  }
+
+  /**
+   * Receives the inbound data of a bundle and hands it out to the workers in chunks, and orders the
+   * outputs of the chunks.
+   */
+  private class ParallelBundle implements CloseableFnDataReceiver<Elements> {
+    private final String instructionId;
+    private final BundleProcessor coordinator;
+    private final BlockingQueue<Chunk> chunks;
+    // A lock rather than a monitor, since workers on virtual threads that wait within a monitor pin
+    // their carrier thread.
+    private final Lock sequenceLock;
+    // Signalled when nextSequence or totalChunks advances, or the bundle fails.
+    private final Condition sequenceChanged;
+    private long receivedChunks;
+    private volatile boolean inputFinished;
+
+    @GuardedBy("sequenceLock")
+    private long nextSequence;
+
+    @GuardedBy("sequenceLock")
+    private long totalChunks;
+
+    private volatile @Nullable Throwable failure;
+
+    private ParallelBundle(String instructionId, BundleProcessor coordinator) {
+      this.instructionId = instructionId;
+      this.coordinator = coordinator;
+      this.chunks = new ArrayBlockingQueue<>(2 * parallelism);
+      this.sequenceLock = new ReentrantLock();
+      this.sequenceChanged = sequenceLock.newCondition();
+      this.totalChunks = -1;
+    }
+
+    @Override
+    public void accept(Elements elements) throws Exception {
+      checkState(
+          !inputFinished,
+          "Received data after the end of the inbound data for instruction %s.",
+          instructionId);
+      checkState(
+          elements.getTimersCount() == 0,
+          "Received timers for instruction %s which is processed in parallel.",
+          instructionId);
+      List<Elements.Data> data = new ArrayList<>(elements.getDataCount());
+      boolean isLast = false;
+      for (Elements.Data entry : elements.getDataList()) {
+        if (!entry.getData().isEmpty()) {
+          // Only the coordinator tracks the end of the inbound data.
+          data.add(entry.getIsLast() ? entry.toBuilder().setIsLast(false).build() : entry);
+        }
+        isLast |= entry.getIsLast();
+      }
+      if (!data.isEmpty()) {
+        put(new Chunk(receivedChunks++, data));
+      }
+      if (isLast) {
+        inputFinished = true;
+        sequenceLock.lock();
+        try {
+          totalChunks = receivedChunks;
+          sequenceChanged.signalAll();
+        } finally {
+          sequenceLock.unlock();
+        }
+        for (int i = 0; i < parallelism; ++i) {
+          put(Chunk.END);
+        }
+      }
+    }
+
+    private void put(Chunk chunk) throws Exception {
+      while (!chunks.offer(chunk, FAILURE_CHECK_INTERVAL_MILLIS, TimeUnit.MILLISECONDS)) {
+        throwIfFailed();
+      }
+    }
+
+    private Chunk take() throws Exception {
+      Chunk chunk = chunks.take();
+      throwIfFailed();
+      return chunk;
+    }
+
+    /**
+     * Never called, the data client only flushes outbound receivers. Like {@link
+     * org.apache.beam.sdk.fn.data.BeamFnDataInboundObserver}, this receiver hands out the inbound
+     * data as it arrives, so there is nothing to flush.
+     */
+    @Override
+    public void flush() throws Exception {
+      throw new UnsupportedOperationException("Inbound data receivers are not flushed.");
+    }
+
+    @Override
+    public void close() throws Exception {
+      if (!inputFinished) {
+        abort(
+            new CancellationException(
+                String.format("Inbound data of instruction %s was closed.", instructionId)));
+      }
+    }
+
+    /** Fails the bundle, waking up all workers. */
+    private void abort(Throwable t) {
+      sequenceLock.lock();
+      try {
+        if (failure == null) {
+          failure = t;
+        }
+        sequenceChanged.signalAll();
+      } finally {
+        sequenceLock.unlock();
+      }
+      chunks.clear();
+      for (int i = 0; i < parallelism; ++i) {
+        chunks.offer(Chunk.END);
+      }
+    }
+
+    private void throwIfFailed() throws Exception {
+      Throwable t = failure;
+      if (t instanceof Exception) {
+        throw (Exception) t;
+      } else if (t != null) {
+        throw new RuntimeException(t);
+      }
+    }
+
+    private void send(ApiServiceDescriptor apiServiceDescriptor, Elements elements) {
+      checkStateNotNull(
+              coordinator.getOutboundAggregators().get(apiServiceDescriptor),
+              "No outbound aggregator for %s",
+              apiServiceDescriptor)
+          .sendElements(elements);
+    }
+
+    /** Sends the outputs of a chunk after the outputs of all preceding chunks. */
+    private void publish(long sequence, List<Runnable> sends) throws Exception {
+      sequenceLock.lock();
+      try {
+        while (nextSequence != sequence) {
+          throwIfFailed();
+          sequenceChanged.await(FAILURE_CHECK_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        }
+        throwIfFailed();
+        sends.forEach(Runnable::run);
+        nextSequence += 1;
+        sequenceChanged.signalAll();
+      } finally {
+        sequenceLock.unlock();
+      }
+    }
+
+    /** Sends the outputs of a finish bundle function after the outputs of all chunks. */
+    private void publishFinal(List<Runnable> sends) throws Exception {
+      sequenceLock.lock();
+      try {
+        while (totalChunks < 0 || nextSequence != totalChunks) {
+          throwIfFailed();
+          sequenceChanged.await(FAILURE_CHECK_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        }
+        throwIfFailed();
+        sends.forEach(Runnable::run);
+      } finally {
+        sequenceLock.unlock();
+      }
+    }
+  }
+
+  /** Routes the flushed outputs of a worker to the coordinator for the current bundle. */
+  private class WorkerOutput {
+    private final ParallelBundle bundle;
+    // A lock rather than a monitor, see ParallelBundle#sequenceLock.
+    private final Lock pendingSendsLock;
+
+    @GuardedBy("pendingSendsLock")
+    private final List<Runnable> pendingSends;
+
+    private WorkerOutput(ParallelBundle bundle) {
+      this.bundle = bundle;
+      this.pendingSendsLock = new ReentrantLock();
+      this.pendingSends = new ArrayList<>();
+    }
+
+    private void accept(ApiServiceDescriptor apiServiceDescriptor, Elements elements) {
+      pendingSendsLock.lock();
+      try {
+        if (ordered) {
+          pendingSends.add(() -> bundle.send(apiServiceDescriptor, elements));
+        } else {
+          bundle.send(apiServiceDescriptor, elements);
+        }
+      } finally {
+        pendingSendsLock.unlock();
+      }
+    }
+
+    private List<Runnable> drain() {
+      pendingSendsLock.lock();
+      try {
+        List<Runnable> sends = new ArrayList<>(pendingSends);
+        pendingSends.clear();
+        return sends;
+      } finally {
+        pendingSendsLock.unlock();
+      }
+    }
+
+    private void publish(long sequence) throws Exception {
+      if (ordered) {
+        bundle.publish(sequence, drain());
+      }
+    }
+
+    private void publishFinal() throws Exception {
+      if (ordered) {
+        bundle.publishFinal(drain());
+      }
+    }
+  }
+
+  /**
+   * The {@link BeamFnDataClient} of a worker, which receives no inbound data and creates outbound
+   * aggregators that forward their flushes to the worker's current {@link WorkerOutput}.
+   */
+  private static class WorkerDataClient implements BeamFnDataClient {
+    private final PipelineOptions options;
+    private volatile @Nullable WorkerOutput output;
+
+    private WorkerDataClient(PipelineOptions options) {
+      this.options = options;
+    }
+
+    @Override
+    public void registerReceiver(
+        String instructionId,
+        List<ApiServiceDescriptor> apiServiceDescriptors,
+        CloseableFnDataReceiver<Elements> receiver) {
+      throw new UnsupportedOperationException("Workers receive their data from the coordinator.");
+    }
+
+    @Override
+    public void unregisterReceiver(
+        String instructionId, List<ApiServiceDescriptor> apiServiceDescriptors) {
+      throw new UnsupportedOperationException("Workers receive their data from the coordinator.");
+    }
+
+    @Override
+    public void poisonInstructionId(String instructionId) {
+      throw new UnsupportedOperationException("Workers receive their data from the coordinator.");
+    }
+
+    @Override
+    public BeamFnDataOutboundAggregator createOutboundAggregator(
+        ApiServiceDescriptor apiServiceDescriptor,
+        Supplier<String> processBundleRequestIdSupplier,
+        boolean collectElementsIfNoFlushes) {
+      return new BeamFnDataOutboundAggregator(
+          options,
+          processBundleRequestIdSupplier,
+          new StreamObserver<Elements>() {
+            @Override
+            public void onNext(Elements elements) {
+              checkStateNotNull(output, "Worker produced output outside of a bundle")
+                  .accept(apiServiceDescriptor, elements);
+            }
+
+            @Override
+            public void onError(Throwable t) {}
+
+            @Override
+            public void onCompleted() {}
+          },
+          false);
+    }
+  }
+}
@@ -34,6 +34,7 @@ import java.util.WeakHashMap;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Phaser;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.BiConsumer;
@@ -53,6 +54,7 @@ import org.apache.beam.fn.harness.data.BeamFnDataClient;
 import org.apache.beam.fn.harness.data.PCollectionConsumerRegistry;
 import org.apache.beam.fn.harness.data.PTransformFunctionRegistry;
 import org.apache.beam.fn.harness.debug.DataSampler;
+import org.apache.beam.fn.harness.state.BatchingBeamFnStateClient;
 import org.apache.beam.fn.harness.state.BeamFnStateClient;
 import org.apache.beam.fn.harness.state.BeamFnStateGrpcClientCache;
 import org.apache.beam.model.fnexecution.v1.BeamFnApi;
@@ -68,17 +70,21 @@ import org.apache.beam.model.pipeline.v1.Endpoints.ApiServiceDescriptor;
 import org.apache.beam.model.pipeline.v1.RunnerApi;
 import org.apache.beam.model.pipeline.v1.RunnerApi.PTransform;
 import org.apache.beam.model.pipeline.v1.RunnerApi.StandardRunnerProtocols;
+import org.apache.beam.runners.core.metrics.MetricsContainerImpl;
 import org.apache.beam.runners.core.metrics.MonitoringInfoConstants.Urns;
 import org.apache.beam.runners.core.metrics.ShortIdMap;
 import org.apache.beam.sdk.fn.data.BeamFnDataInboundObserver;
 import org.apache.beam.sdk.fn.data.BeamFnDataOutboundAggregator;
+import org.apache.beam.sdk.fn.data.BeamFnDataOutboundAggregator.FlushHistograms;
 import org.apache.beam.sdk.fn.data.DataEndpoint;
 import org.apache.beam.sdk.fn.data.FnDataReceiver;
 import org.apache.beam.sdk.fn.data.TimerEndpoint;
 import org.apache.beam.sdk.function.ThrowingRunnable;
+import org.apache.beam.sdk.metrics.MetricName;
 import org.apache.beam.sdk.metrics.MetricsContainer;
 import org.apache.beam.sdk.metrics.MetricsEnvironment;
 import org.apache.beam.sdk.metrics.MetricsEnvironment.MetricsEnvironmentState;
+import org.apache.beam.sdk.options.ExperimentalOptions;
 import org.apache.beam.sdk.options.PipelineOptions;
 import org.apache.beam.sdk.options.SdkHarnessOptions;
 import org.apache.beam.sdk.transforms.DoFn.BundleFinalizer;
@@ -131,6 +137,17 @@ public class ProcessBundleHandler {
   public static final String JAVA_SOURCE_URN = "beam:source:java:0.1";
 
   private static final Logger LOG = LoggerFactory.getLogger(ProcessBundleHandler.class);
+
+  // The experiment which sets the maximum number of chunks of a paginated state stream fetched
+  // ahead of the consumer.
+  static final String STATE_READAHEAD_PAGES = "state_readahead_pages";
+
+  // Histograms of the data frames sent by each outbound data endpoint, reported for the endpoint's
+  // PTransform.
+  private static final MetricName OUTBOUND_FLUSH_SIZE_BYTES =
+      MetricName.named(BeamFnDataOutboundAggregator.class, "flush_size_bytes");
+  private static final MetricName OUTBOUND_FLUSH_LATENCY_MSECS =
+      MetricName.named(BeamFnDataOutboundAggregator.class, "flush_latency_msecs");
   @VisibleForTesting static final Map<String, PTransformRunnerFactory> REGISTERED_RUNNER_FACTORIES;
 
   static {
@@ -154,6 +171,7 @@ public class ProcessBundleHandler {
   private final FinalizeBundleHandler finalizeBundleHandler;
   private final ShortIdMap shortIds;
   private final boolean runnerAcceptsShortIds;
+  private final boolean runnerAcceptsStateMutationBatches;
   private final ExecutionStateSampler executionStateSampler;
   private final Map<String, PTransformRunnerFactory> urnToPTransformRunnerFactoryMap;
   private final PTransformRunnerFactory defaultPTransformRunnerFactory;
@@ -161,6 +179,8 @@ public class ProcessBundleHandler {
   @VisibleForTesting final BundleProcessorCache bundleProcessorCache;
   private final Set<String> runnerCapabilities;
   private final @Nullable DataSampler dataSampler;
+  private final @Nullable ParallelBundleExecutor parallelBundleExecutor;
+  private final int maxStateReadaheadPages;
 
   public ProcessBundleHandler(
       PipelineOptions options,
@@ -213,6 +233,9 @@ public class ProcessBundleHandler {
     this.runnerAcceptsShortIds =
         runnerCapabilities.contains(
             BeamUrns.getUrn(StandardRunnerProtocols.Enum.MONITORING_INFO_SHORT_IDS));
+    this.runnerAcceptsStateMutationBatches =
+        runnerCapabilities.contains(
+            BeamUrns.getUrn(StandardRunnerProtocols.Enum.STATE_MUTATION_BATCHING));
     this.executionStateSampler = executionStateSampler;
     this.urnToPTransformRunnerFactoryMap = urnToPTransformRunnerFactoryMap;
     this.defaultPTransformRunnerFactory =
@@ -220,6 +243,22 @@ public class ProcessBundleHandler {
     this.processWideCache = processWideCache;
     this.bundleProcessorCache = bundleProcessorCache;
     this.dataSampler = dataSampler;
+    this.parallelBundleExecutor =
+        ParallelBundleExecutor.create(
+            options,
+            beamFnDataClient,
+            shortIds,
+            (bundleDescriptorId, request, dataClient) ->
+                createBundleProcessor(
+                    bundleDescriptorId, request.getProcessBundle(), dataClient),
+            this::finalMonitoringData);
+    this.maxStateReadaheadPages = getMaxStateReadaheadPages(options);
+  }
+
+  private static int getMaxStateReadaheadPages(PipelineOptions options) {
+    String maxReadaheadPages =
+        ExperimentalOptions.getExperimentValue(options, STATE_READAHEAD_PAGES);
+    return maxReadaheadPages == null ? 1 : Math.max(1, Integer.parseInt(maxReadaheadPages));
   }
 
   private void addRunnerAndConsumersForPTransformRecursively(
@@ -509,7 +548,8 @@ public class ProcessBundleHandler {
                     try {
                       return createBundleProcessor(
                           request.getProcessBundle().getProcessBundleDescriptorId(),
-                          request.getProcessBundle());
+                          request.getProcessBundle(),
+                          beamFnDataClient);
                     } catch (IOException e) {
                       throw new RuntimeException(e);
                     }
@@ -520,6 +560,7 @@ public class ProcessBundleHandler {
           bundleProcessor.getFinishFunctionRegistry();
       ExecutionStateTracker stateTracker = bundleProcessor.getStateTracker();
       ProcessBundleResponse.Builder response = ProcessBundleResponse.newBuilder();
+      @Nullable ParallelBundleExecutor.Result parallelResult = null;
       try (HandleStateCallsForBundle beamFnStateClient = bundleProcessor.getBeamFnStateClient()) {
         stateTracker.start(request.getInstructionId());
         try {
@@ -542,6 +583,11 @@ public class ProcessBundleHandler {
                       + "all data and timer inputs. Unterminated endpoints: "
                       + bundleProcessor.getInboundObserver().getUnfinishedEndpoints());
             }
+          } else if (parallelBundleExecutor != null
+              && !bundleProcessor.getInboundEndpointApiServiceDescriptors().isEmpty()
+              && parallelBundleExecutor.canProcessInParallel(
+                  bundleProcessor.getProcessBundleDescriptor())) {
+            parallelResult = parallelBundleExecutor.process(request, bundleProcessor);
           } else if (!bundleProcessor.getInboundEndpointApiServiceDescriptors().isEmpty()) {
             BeamFnDataInboundObserver observer = bundleProcessor.getInboundObserver();
             beamFnDataClient.registerReceiver(
@@ -561,8 +607,11 @@ public class ProcessBundleHandler {
             finishFunction.run();
           }
 
-          // If bundleProcessor has not flushed any elements, embed them in response.
-          embedOutboundElementsIfApplicable(response, bundleProcessor);
+          // If bundleProcessor has not flushed any elements, embed them in response. The outputs of
+          // parallel workers were already sent over the data stream, so the end of the streams is
+          // sent there as well.
+          embedOutboundElementsIfApplicable(response, bundleProcessor, parallelResult == null);
+          recordOutboundFlushHistograms(bundleProcessor);
 
           // Add all checkpointed residuals to the response.
           response.addAllResidualRoots(bundleProcessor.getSplitListener().getResidualRoots());
@@ -570,6 +619,12 @@ public class ProcessBundleHandler {
           // Add all metrics to the response.
           bundleProcessor.getProgressRequestLock().lock();
           Map<String, ByteString> monitoringData = finalMonitoringData(bundleProcessor);
+          if (parallelResult != null) {
+            parallelResult.mergeMonitoringDataInto(monitoringData);
+            bundleProcessor
+                .getBundleFinalizationCallbackRegistrations()
+                .addAll(parallelResult.getBundleFinalizationCallbackRegistrations());
+          }
           if (runnerAcceptsShortIds) {
             response.putAllMonitoringData(monitoringData);
           } else {
@@ -613,13 +668,15 @@ public class ProcessBundleHandler {
   }
 
   private void embedOutboundElementsIfApplicable(
-      ProcessBundleResponse.Builder response, BundleProcessor bundleProcessor) {
+      ProcessBundleResponse.Builder response,
+      BundleProcessor bundleProcessor,
+      boolean allowEmbedding) {
     if (bundleProcessor.getOutboundAggregators().isEmpty()) {
       return;
     }
     List<Elements> collectedElements =
         new ArrayList<>(bundleProcessor.getOutboundAggregators().size());
-    boolean hasFlushedAggregator = false;
+    boolean hasFlushedAggregator = !allowEmbedding;
     for (BeamFnDataOutboundAggregator aggregator :
         bundleProcessor.getOutboundAggregators().values()) {
       Elements elements = aggregator.sendOrCollectBufferedDataAndFinishOutboundStreams();
@@ -649,6 +706,28 @@ public class ProcessBundleHandler {
     }
   }
 
+  private void recordOutboundFlushHistograms(BundleProcessor bundleProcessor) {
+    for (BeamFnDataOutboundAggregator aggregator :
+        bundleProcessor.getOutboundAggregators().values()) {
+      for (Map.Entry<String, FlushHistograms> entry :
+          aggregator.getAndResetFlushHistograms().entrySet()) {
+        MetricsContainerImpl container =
+            bundleProcessor
+                .getStateTracker()
+                .getMetricsContainerRegistry()
+                .getContainer(entry.getKey());
+        FlushHistograms histograms = entry.getValue();
+        container
+            .getHistogram(OUTBOUND_FLUSH_SIZE_BYTES, histograms.getSizeBytes().getBucketType())
+            .update(histograms.getSizeBytes());
+        container
+            .getHistogram(
+                OUTBOUND_FLUSH_LATENCY_MSECS, histograms.getLatencyMillis().getBucketType())
+            .update(histograms.getLatencyMillis());
+      }
+    }
+  }
+
   public BeamFnApi.InstructionResponse.Builder progress(InstructionRequest request)
       throws Exception {
     BundleProcessor bundleProcessor =
@@ -746,6 +825,14 @@ public class ProcessBundleHandler {
       return BeamFnApi.InstructionResponse.newBuilder()
           .setProcessBundleSplit(BeamFnApi.ProcessBundleSplitResponse.getDefaultInstance());
     }
+    if (parallelBundleExecutor != null
+        && parallelBundleExecutor.canProcessInParallel(
+            bundleProcessor.getProcessBundleDescriptor())) {
+      // Bundles that may be processed in parallel are not split, since the progress of their
+      // inbound data is spread over several workers.
+      return BeamFnApi.InstructionResponse.newBuilder()
+          .setProcessBundleSplit(BeamFnApi.ProcessBundleSplitResponse.getDefaultInstance());
+    }
 
     for (BeamFnDataReadRunner<?> channelRoot : bundleProcessor.getChannelRoots()) {
       channelRoot.trySplit(request.getProcessBundleSplit(), response);
@@ -756,6 +843,9 @@ public class ProcessBundleHandler {
   /** Shutdown the bundles, running the tearDown() functions. */
   public void shutdown() throws Exception {
     bundleProcessorCache.shutdown();
+    if (parallelBundleExecutor != null) {
+      parallelBundleExecutor.shutdown();
+    }
   }
 
   @VisibleForTesting
@@ -778,7 +868,8 @@ public class ProcessBundleHandler {
   }
 
   private BundleProcessor createBundleProcessor(
-      String bundleId, ProcessBundleRequest processBundleRequest) throws IOException {
+      String bundleId, ProcessBundleRequest processBundleRequest, BeamFnDataClient dataClient)
+      throws IOException {
     ProcessBundleDescriptor bundleDescriptor = fnApiRegistry.apply(bundleId);
 
     SetMultimap<String, String> pCollectionIdsToConsumingPTransforms = HashMultimap.create();
@@ -818,7 +909,9 @@ public class ProcessBundleHandler {
       BeamFnStateClient underlyingClient =
           beamFnStateGrpcClientCache.forApiServiceDescriptor(
               bundleDescriptor.getStateApiServiceDescriptor());
-      beamFnStateClient = new BlockTillStateCallsFinish(underlyingClient);
+      beamFnStateClient =
+          new BlockTillStateCallsFinish(
+              underlyingClient, runnerAcceptsStateMutationBatches, maxStateReadaheadPages);
     } else {
       beamFnStateClient = new FailAllStateCallsForBundle(processBundleRequest);
     }
@@ -875,7 +968,7 @@ public class ProcessBundleHandler {
 
       addRunnerAndConsumersForPTransformRecursively(
           beamFnStateClient,
-          beamFnDataClient,
+          dataClient,
           entry.getKey(),
           entry.getValue(),
           bundleProcessor::getInstructionId,
@@ -1221,20 +1314,34 @@ public class ProcessBundleHandler {
   /**
    * A {@link BeamFnStateClient} which counts the number of outstanding {@link StateRequest}s and
    * blocks till they are all finished.
+   *
+   * <p>If the runner accepts batches of state mutations, the mutations are buffered and sent in
+   * batches, at the latest when the bundle finishes. Requests are counted once they are sent, as
+   * waiting on a buffered mutation would send it.
    */
   private static class BlockTillStateCallsFinish extends HandleStateCallsForBundle {
+    private final CountStateCalls countingClient;
+    private final @Nullable BatchingBeamFnStateClient batchingClient;
     private final BeamFnStateClient beamFnStateClient;
+    private final int maxReadaheadPages;
     private final Phaser phaser;
     private int currentPhase;
 
-    private BlockTillStateCallsFinish(BeamFnStateClient beamFnStateClient) {
-      this.beamFnStateClient = beamFnStateClient;
+    private BlockTillStateCallsFinish(
+        BeamFnStateClient beamFnStateClient, boolean batchMutations, int maxReadaheadPages) {
       this.phaser = new Phaser(1 /* initial party is the process bundle handler */);
       this.currentPhase = phaser.getPhase();
+      this.countingClient = new CountStateCalls(beamFnStateClient, phaser);
+      this.batchingClient = batchMutations ? new BatchingBeamFnStateClient(countingClient) : null;
+      this.beamFnStateClient = batchingClient != null ? batchingClient : countingClient;
+      this.maxReadaheadPages = maxReadaheadPages;
     }
 
     @Override
     public void close() throws Exception {
+      if (batchingClient != null) {
+        batchingClient.flush();
+      }
       int unarrivedParties = phaser.getUnarrivedParties();
       if (unarrivedParties > 0) {
         LOG.debug(
@@ -1243,19 +1350,72 @@ public class ProcessBundleHandler {
             currentPhase);
       }
       currentPhase = phaser.arriveAndAwaitAdvance();
+      @Nullable Throwable mutationFailure = countingClient.takeMutationFailure();
+      if (mutationFailure != null) {
+        throw new IllegalStateException("Failed to persist state mutations.", mutationFailure);
+      }
+    }
+
+    @Override
+    public CompletableFuture<StateResponse> handle(StateRequest.Builder requestBuilder) {
+      return beamFnStateClient.handle(requestBuilder);
+    }
+
+    @Override
+    public int getMaxReadaheadPages() {
+      return maxReadaheadPages;
+    }
+  }
+
+  /**
+   * A {@link BeamFnStateClient} which registers each request with a {@link Phaser}, and remembers
+   * the first failed mutation since callers do not wait on mutations.
+   */
+  private static class CountStateCalls implements BeamFnStateClient {
+    private final BeamFnStateClient beamFnStateClient;
+    private final Phaser phaser;
+    private final AtomicReference<@Nullable Throwable> mutationFailure;
+
+    private CountStateCalls(BeamFnStateClient beamFnStateClient, Phaser phaser) {
+      this.beamFnStateClient = beamFnStateClient;
+      this.phaser = phaser;
+      this.mutationFailure = new AtomicReference<>();
     }
 
     @Override
     @SuppressWarnings("FutureReturnValueIgnored") // async arriveAndDeregister task doesn't need
     // monitoring.
     public CompletableFuture<StateResponse> handle(StateRequest.Builder requestBuilder) {
+      boolean isMutation = isMutation(requestBuilder.getRequestCase());
       // Register each request with the phaser and arrive and deregister each time a request
       // completes.
       CompletableFuture<StateResponse> response = beamFnStateClient.handle(requestBuilder);
       phaser.register();
-      response.whenComplete((stateResponse, throwable) -> phaser.arriveAndDeregister());
+      response.whenComplete(
+          (stateResponse, throwable) -> {
+            if (throwable != null && isMutation) {
+              mutationFailure.compareAndSet(null, throwable);
+            }
+            phaser.arriveAndDeregister();
+          });
       return response;
     }
+
+    /** Returns and resets the first failure of a mutation since the last call. */
+    private @Nullable Throwable takeMutationFailure() {
+      return mutationFailure.getAndSet(null);
+    }
+
+    private static boolean isMutation(StateRequest.RequestCase requestCase) {
+      switch (requestCase) {
+        case APPEND:
+        case CLEAR:
+        case MUTATION_BATCH:
+          return true;
+        default:
+          return false;
+      }
+    }
   }
 
   /**
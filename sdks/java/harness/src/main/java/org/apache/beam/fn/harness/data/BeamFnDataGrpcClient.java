@@ -17,6 +17,9 @@
  */
 package org.apache.beam.fn.harness.data;
 
+import static org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.base.Preconditions.checkArgument;
+
+import java.io.IOException;
 import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
@@ -29,26 +32,52 @@ import org.apache.beam.model.pipeline.v1.Endpoints.ApiServiceDescriptor;
 import org.apache.beam.sdk.fn.data.BeamFnDataGrpcMultiplexer;
 import org.apache.beam.sdk.fn.data.BeamFnDataOutboundAggregator;
 import org.apache.beam.sdk.fn.data.CloseableFnDataReceiver;
+import org.apache.beam.sdk.fn.data.SharedMemoryDataChannel;
 import org.apache.beam.sdk.fn.stream.OutboundObserverFactory;
+import org.apache.beam.sdk.options.ExperimentalOptions;
 import org.apache.beam.sdk.options.PipelineOptions;
+import org.apache.beam.vendor.grpc.v1p69p0.io.grpc.CompressorRegistry;
 import org.apache.beam.vendor.grpc.v1p69p0.io.grpc.ManagedChannel;
+import org.apache.beam.vendor.grpc.v1p69p0.io.grpc.stub.CallStreamObserver;
+import org.apache.beam.vendor.grpc.v1p69p0.io.grpc.stub.StreamObserver;
+import org.checkerframework.checker.nullness.qual.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * A {@link BeamFnDataClient} that uses gRPC for sending and receiving data.
  *
+ * <p>The {@code data_plane_compression=<name>} experiment, e.g. {@code
+ * data_plane_compression=gzip}, makes the client compress each outbound {@link Elements} message
+ * with the named gRPC compressor. Compressing whole messages, which carry the encoded elements
+ * buffered by {@link BeamFnDataOutboundAggregator}, compresses far better than compressing each
+ * element on its own. The runner decompresses the messages transparently in its gRPC stack, so the
+ * encoding of the elements themselves is unchanged. The experiment only applies to messages sent by
+ * the client. Whether the messages sent by the runner are compressed is up to the runner, and gRPC
+ * decompresses them if they are.
+ *
+ * <p>The {@code data_plane_shared_memory} experiment makes the client offer a {@link
+ * SharedMemoryDataChannel} to the runner for each data endpoint. The client starts on the gRPC
+ * stream without waiting for an answer. If the runner runs on the same host and accepts the offer,
+ * elements are exchanged through memory-mapped ring buffers from then on and the gRPC stream only
+ * controls the lifetime of the connection. Otherwise the client keeps using the gRPC stream.
+ *
  * <p>TODO: Handle closing clients that are currently not a consumer nor are being consumed.
  */
 public class BeamFnDataGrpcClient implements BeamFnDataClient {
 
   private static final Logger LOG = LoggerFactory.getLogger(BeamFnDataGrpcClient.class);
 
+  public static final String DATA_PLANE_COMPRESSION = "data_plane_compression";
+  public static final String DATA_PLANE_SHARED_MEMORY = "data_plane_shared_memory";
+
   private final ConcurrentMap<Endpoints.ApiServiceDescriptor, BeamFnDataGrpcMultiplexer>
       multiplexerCache;
   private final Function<Endpoints.ApiServiceDescriptor, ManagedChannel> channelFactory;
   private final OutboundObserverFactory outboundObserverFactory;
   private final PipelineOptions options;
+  private final @Nullable String compression;
+  private final boolean sharedMemory;
 
   public BeamFnDataGrpcClient(
       PipelineOptions options,
@@ -58,6 +87,8 @@ public class BeamFnDataGrpcClient implements BeamFnDataClient {
     this.channelFactory = channelFactory;
     this.outboundObserverFactory = outboundObserverFactory;
     this.multiplexerCache = new ConcurrentHashMap<>();
+    this.compression = getCompression(options);
+    this.sharedMemory = ExperimentalOptions.hasExperiment(options, DATA_PLANE_SHARED_MEMORY);
   }
 
   @Override
@@ -110,6 +141,43 @@ public class BeamFnDataGrpcClient implements BeamFnDataClient {
             new BeamFnDataGrpcMultiplexer(
                 descriptor,
                 outboundObserverFactory,
-                BeamFnDataGrpc.newStub(channelFactory.apply(apiServiceDescriptor))::data));
+                sharedMemory
+                    ? inboundObserver -> connectSharedMemory(descriptor, inboundObserver)
+                    : newStub(apiServiceDescriptor)::data));
+  }
+
+  private StreamObserver<Elements> connectSharedMemory(
+      ApiServiceDescriptor apiServiceDescriptor, StreamObserver<Elements> inboundObserver) {
+    SharedMemoryDataChannel channel;
+    try {
+      channel = SharedMemoryDataChannel.create(SharedMemoryDataChannel.DEFAULT_CAPACITY);
+    } catch (IOException e) {
+      LOG.warn("Failed to create shared memory data channel, using gRPC.", e);
+      return newStub(apiServiceDescriptor).data(inboundObserver);
+    }
+    // This runs while the multiplexer for the endpoint is created, so it must not wait for the
+    // runner to answer the offer.
+    CallStreamObserver<Elements> grpcObserver =
+        (CallStreamObserver<Elements>)
+            newStub(apiServiceDescriptor)
+                .withInterceptors(channel.offer())
+                .data(channel.inboundObserver(inboundObserver));
+    return channel.connect(grpcObserver);
+  }
+
+  private BeamFnDataGrpc.BeamFnDataStub newStub(ApiServiceDescriptor apiServiceDescriptor) {
+    BeamFnDataGrpc.BeamFnDataStub stub =
+        BeamFnDataGrpc.newStub(channelFactory.apply(apiServiceDescriptor));
+    return compression == null ? stub : stub.withCompression(compression);
+  }
+
+  private static @Nullable String getCompression(PipelineOptions options) {
+    String compression = ExperimentalOptions.getExperimentValue(options, DATA_PLANE_COMPRESSION);
+    checkArgument(
+        compression == null
+            || CompressorRegistry.getDefaultInstance().lookupCompressor(compression) != null,
+        "Unknown data plane compression %s",
+        compression);
+    return compression;
   }
 }
@@ -18,31 +18,49 @@
 package org.apache.beam.fn.harness.debug;
 
 import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.atomic.AtomicLong;
-import javax.annotation.Nullable;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 import org.apache.beam.model.fnexecution.v1.BeamFnApi;
 import org.apache.beam.sdk.coders.Coder;
 import org.apache.beam.sdk.util.ByteStringOutputStream;
 import org.apache.beam.sdk.values.WindowedValue;
 import org.apache.beam.sdk.values.WindowedValues;
+import org.checkerframework.checker.nullness.qual.Nullable;
 
 /**
  * This class holds samples for a single PCollection until queried by the parent DataSampler. This
  * class is meant to hold only a limited number of elements in memory. So old values are constantly
  * being overridden in a circular buffer.
  *
+ * <p>Each thread which samples elements writes to its own circular buffer without taking any locks
+ * or contending on shared memory beyond the sampling counter. The buffers are drained and the
+ * samples encoded by the thread handling a sample request, off the processing hot path.
+ *
  * @param <T> the element type of the PCollection.
  */
 public class OutputSampler<T> {
 
-  // Temporarily holds elements until the SDK receives a sample data request.
-  private List<ElementSample<T>> buffer;
+  // Temporarily holds elements of the current thread until the SDK receives a sample data request.
+  private final ThreadLocal<@Nullable SampleBuffer<T>> threadBuffer = new ThreadLocal<>();
+
+  // All buffers that may hold samples, in the order they were registered.
+  private final ConcurrentLinkedQueue<SampleBuffer<T>> buffers = new ConcurrentLinkedQueue<>();
+
+  // Guards exceptions and draining the buffers. Never taken when sampling an element.
+  private final Lock lock = new ReentrantLock();
 
   // Temporarily holds exceptional elements. These elements can also be duplicated in the main
   // buffer. This is in order to always track exceptional elements even if the number of samples in
@@ -58,9 +76,6 @@ public class OutputSampler<T> {
   // Total number of samples taken.
   private final AtomicLong numSamples = new AtomicLong();
 
-  // Index into the buffer of where to overwrite samples.
-  private int resampleIndex = 0;
-
   // If true, only takes samples when exceptions in UDFs occur.
   private final Boolean onlySampleExceptions;
 
@@ -72,7 +87,6 @@ public class OutputSampler<T> {
       Coder<?> coder, int maxElements, int sampleEveryN, boolean onlySampleExceptions) {
     this.maxElements = maxElements;
     this.sampleEveryN = sampleEveryN;
-    this.buffer = new ArrayList<>(this.maxElements);
     this.onlySampleExceptions = onlySampleExceptions;
 
     // The samples taken and encoded should match exactly to the specification from the
@@ -113,17 +127,12 @@ public class OutputSampler<T> {
       return elementSample;
     }
 
-    synchronized (this) {
-      // Fill buffer until maxElements.
-      if (buffer.size() < maxElements) {
-        buffer.add(elementSample);
-      } else {
-        // Then rewrite sampled elements as a circular buffer.
-        buffer.set(resampleIndex, elementSample);
-        resampleIndex = (resampleIndex + 1) % maxElements;
-      }
+    SampleBuffer<T> buffer = threadBuffer.get();
+    if (buffer == null) {
+      buffer = registerBuffer();
+      threadBuffer.set(buffer);
     }
-
+    buffer.add(elementSample);
     return elementSample;
   }
 
@@ -142,7 +151,8 @@ public class OutputSampler<T> {
       return;
     }
 
-    synchronized (this) {
+    lock.lock();
+    try {
       exceptions.computeIfAbsent(
           processBundleId,
           pbId -> {
@@ -150,7 +160,33 @@ public class OutputSampler<T> {
                 new ElementSample.ExceptionMetadata(e.toString(), ptransformId);
             return elementSample;
           });
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Creates and registers the buffer of the calling thread. Buffers of terminated threads are kept
+   * until they are drained, but at most {@code maxElements} of them are retained since together
+   * they can not contribute more samples than that.
+   */
+  private SampleBuffer<T> registerBuffer() {
+    int retainedTerminated = 0;
+    for (SampleBuffer<T> buffer : buffers) {
+      if (buffer.isOwnerTerminated()) {
+        retainedTerminated += 1;
+      }
     }
+    Iterator<SampleBuffer<T>> iterator = buffers.iterator();
+    while (retainedTerminated > maxElements && iterator.hasNext()) {
+      if (iterator.next().isOwnerTerminated()) {
+        iterator.remove();
+        retainedTerminated -= 1;
+      }
+    }
+    SampleBuffer<T> buffer = new SampleBuffer<>(Thread.currentThread(), maxElements);
+    buffers.add(buffer);
+    return buffer;
   }
 
   /**
@@ -201,20 +237,31 @@ public class OutputSampler<T> {
   public List<BeamFnApi.SampledElement> samples() throws IOException {
     List<BeamFnApi.SampledElement> ret = new ArrayList<>();
 
-    // Serializing can take a lot of CPU time for larger or complex elements. Copy the array here
-    // so as to not slow down the main processing hot path.
+    // Serializing can take a lot of CPU time for larger or complex elements. Drain the buffers
+    // here so as to not slow down the main processing hot path.
     List<ElementSample<T>> bufferToSend;
     Map<String, ElementSample<T>> exceptionsToSend;
-    int sampleIndex = 0;
-    synchronized (this) {
-      bufferToSend = buffer;
-      buffer = new ArrayList<>(maxElements);
+    lock.lock();
+    try {
+      List<Deque<ElementSample<T>>> drained = new ArrayList<>();
+      for (Iterator<SampleBuffer<T>> iterator = buffers.iterator(); iterator.hasNext(); ) {
+        SampleBuffer<T> buffer = iterator.next();
+        // Check before draining such that no samples are written after the buffer was drained.
+        boolean ownerTerminated = buffer.isOwnerTerminated();
+        Deque<ElementSample<T>> samples = buffer.drain();
+        if (!samples.isEmpty()) {
+          drained.add(samples);
+        }
+        if (ownerTerminated) {
+          iterator.remove();
+        }
+      }
+      bufferToSend = mostRecent(drained);
 
       exceptionsToSend = exceptions;
       exceptions = new HashMap<>(exceptions.size());
-
-      sampleIndex = resampleIndex;
-      resampleIndex = 0;
+    } finally {
+      lock.unlock();
     }
 
     // An element can live in both the main samples and exception buffer. Use a small look up table
@@ -229,10 +276,7 @@ public class OutputSampler<T> {
       ret.add(sampleToProto(sample, stream, processBundleId));
     }
 
-    for (int i = 0; i < bufferToSend.size(); i++) {
-      int index = (sampleIndex + i) % bufferToSend.size();
-
-      ElementSample<T> sample = bufferToSend.get(index);
+    for (ElementSample<T> sample : bufferToSend) {
       if (seen.contains(sample.id)) {
         continue;
       }
@@ -242,4 +286,103 @@ public class OutputSampler<T> {
 
     return ret;
   }
+
+  /**
+   * Returns at most {@code maxElements} of the drained samples, taking the most recent samples of
+   * each thread in turn. Samples of the same thread are kept in the order they were taken.
+   */
+  private List<ElementSample<T>> mostRecent(List<Deque<ElementSample<T>>> drained) {
+    int total = 0;
+    for (Deque<ElementSample<T>> samples : drained) {
+      total += samples.size();
+    }
+    if (total <= maxElements) {
+      List<ElementSample<T>> ret = new ArrayList<>(total);
+      for (Deque<ElementSample<T>> samples : drained) {
+        ret.addAll(samples);
+      }
+      return ret;
+    }
+
+    List<Deque<ElementSample<T>>> kept = new ArrayList<>(drained.size());
+    for (int i = 0; i < drained.size(); i++) {
+      kept.add(new ArrayDeque<>());
+    }
+    int remaining = maxElements;
+    while (remaining > 0) {
+      for (int i = 0; i < drained.size() && remaining > 0; i++) {
+        ElementSample<T> sample = drained.get(i).pollLast();
+        if (sample != null) {
+          kept.get(i).addFirst(sample);
+          remaining -= 1;
+        }
+      }
+    }
+    List<ElementSample<T>> ret = new ArrayList<>(maxElements);
+    for (Deque<ElementSample<T>> samples : kept) {
+      ret.addAll(samples);
+    }
+    return ret;
+  }
+
+  /**
+   * A circular buffer which is written to by a single thread and drained by the thread handling a
+   * sample request without either of them blocking.
+   *
+   * <p>Every slot records the position it was written at. The draining thread only accepts samples
+   * from the positions written since the last drain, which keeps samples in order even when the
+   * writer overwrites slots while they are being drained.
+   */
+  private static class SampleBuffer<T> {
+    private final WeakReference<Thread> owner;
+    private final AtomicReferenceArray<@Nullable Slot<T>> slots;
+    // The number of samples written. Only updated by the owning thread.
+    private final AtomicLong written = new AtomicLong();
+    // The number of samples written at the time of the last drain. Guarded by the sampler lock.
+    private long drained;
+
+    SampleBuffer(Thread owner, int capacity) {
+      this.owner = new WeakReference<>(owner);
+      this.slots = new AtomicReferenceArray<>(capacity);
+    }
+
+    void add(ElementSample<T> sample) {
+      long position = written.get();
+      slots.lazySet((int) (position % slots.length()), new Slot<>(position, sample));
+      // Publishes the slot to the draining thread.
+      written.lazySet(position + 1);
+    }
+
+    boolean isOwnerTerminated() {
+      Thread thread = owner.get();
+      return thread == null || !thread.isAlive();
+    }
+
+    Deque<ElementSample<T>> drain() {
+      long end = written.get();
+      Deque<ElementSample<T>> samples = new ArrayDeque<>();
+      for (long position = Math.max(drained, end - slots.length()); position < end; position++) {
+        int index = (int) (position % slots.length());
+        Slot<T> slot = slots.get(index);
+        // Slots overwritten since reading the end hold newer samples for the next drain.
+        if (slot != null && slot.position == position) {
+          samples.add(slot.sample);
+          // Release the sample unless it was overwritten in the meantime.
+          slots.compareAndSet(index, slot, null);
+        }
+      }
+      drained = end;
+      return samples;
+    }
+  }
+
+  private static class Slot<T> {
+    private final long position;
+    private final ElementSample<T> sample;
+
+    Slot(long position, ElementSample<T> sample) {
+      this.position = position;
+      this.sample = sample;
+    }
+  }
 }
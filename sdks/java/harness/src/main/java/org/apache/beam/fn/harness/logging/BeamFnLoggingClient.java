@@ -17,6 +17,7 @@
  */
 package org.apache.beam.fn.harness.logging;
 
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
 import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.base.Preconditions.checkNotNull;
 import static org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.base.Throwables.getStackTraceAsString;
@@ -26,8 +27,6 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
@@ -42,14 +41,17 @@ import java.util.logging.Logger;
 import java.util.logging.SimpleFormatter;
 import org.apache.beam.fn.harness.control.ExecutionStateSampler;
 import org.apache.beam.model.fnexecution.v1.BeamFnApi;
-import org.apache.beam.model.fnexecution.v1.BeamFnApi.LogEntry;
 import org.apache.beam.model.fnexecution.v1.BeamFnLoggingGrpc;
 import org.apache.beam.model.pipeline.v1.Endpoints;
 import org.apache.beam.sdk.fn.stream.AdvancingPhaser;
 import org.apache.beam.sdk.fn.stream.DirectStreamObserver;
+import org.apache.beam.sdk.metrics.Counter;
+import org.apache.beam.sdk.metrics.DelegatingCounter;
+import org.apache.beam.sdk.metrics.MetricName;
 import org.apache.beam.sdk.options.ExecutorOptions;
 import org.apache.beam.sdk.options.PipelineOptions;
 import org.apache.beam.sdk.options.SdkHarnessOptions;
+import org.apache.beam.sdk.options.SdkHarnessOptions.LogBufferOverflowPolicy;
 import org.apache.beam.vendor.grpc.v1p69p0.com.google.protobuf.Struct;
 import org.apache.beam.vendor.grpc.v1p69p0.com.google.protobuf.Timestamp;
 import org.apache.beam.vendor.grpc.v1p69p0.com.google.protobuf.Value;
@@ -58,6 +60,7 @@ import org.apache.beam.vendor.grpc.v1p69p0.io.grpc.stub.CallStreamObserver;
 import org.apache.beam.vendor.grpc.v1p69p0.io.grpc.stub.ClientCallStreamObserver;
 import org.apache.beam.vendor.grpc.v1p69p0.io.grpc.stub.ClientResponseObserver;
 import org.apache.beam.vendor.grpc.v1p69p0.io.grpc.stub.StreamObserver;
+import org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.annotations.VisibleForTesting;
 import org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.base.MoreObjects;
 import org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.collect.ImmutableMap;
 import org.checkerframework.checker.initialization.qual.UnderInitialization;
@@ -67,6 +70,11 @@ import org.slf4j.MDC;
 
 /**
  * Configures {@link java.util.logging} to send all {@link LogRecord}s via the Beam Fn Logging API.
+ *
+ * <p>Log entries are buffered and sent in batches by a background thread. When the buffer is full,
+ * logging threads either block or drop their log entries depending on {@link
+ * SdkHarnessOptions#getLogBufferOverflowPolicy()}. The number of dropped log entries is reported in
+ * a log entry of its own.
  */
 public class BeamFnLoggingClient implements LoggingClient {
   private static final String ROOT_LOGGER_NAME = "";
@@ -91,6 +99,25 @@ public class BeamFnLoggingClient implements LoggingClient {
    */
   private static final int MAX_BUFFERED_LOG_ENTRY_COUNT = 10_000;
 
+  /** The maximum serialized size of the log entries sent together in a single message. */
+  private static final long MAX_BATCH_BYTES = 1 << 20;
+
+  /** How long to wait for further log entries to send together with the first of a batch. */
+  private static final long MAX_BATCH_DELAY_NANOS = 20_000_000;
+
+  @VisibleForTesting
+  static final MetricName DROPPED_LOG_ENTRIES =
+      MetricName.named(BeamFnLoggingClient.class, "dropped_log_entries");
+
+  @VisibleForTesting
+  static final MetricName DELAYED_LOG_ENTRIES =
+      MetricName.named(BeamFnLoggingClient.class, "delayed_log_entries");
+
+  private static final Counter DROPPED_LOG_ENTRIES_COUNTER =
+      new DelegatingCounter(DROPPED_LOG_ENTRIES, true);
+  private static final Counter DELAYED_LOG_ENTRIES_COUNTER =
+      new DelegatingCounter(DELAYED_LOG_ENTRIES, true);
+
   private static final Object COMPLETED = new Object();
 
   private final Endpoints.ApiServiceDescriptor apiServiceDescriptor;
@@ -104,8 +131,8 @@ public class BeamFnLoggingClient implements LoggingClient {
    * so if they are garbage collected, our hierarchical configuration will be lost. */
   private final Collection<Logger> configuredLoggers = new ArrayList<>();
 
-  private final BlockingQueue<LogEntry> bufferedLogEntries =
-      new ArrayBlockingQueue<>(MAX_BUFFERED_LOG_ENTRY_COUNT);
+  private final LogEntryBuffer bufferedLogEntries =
+      new LogEntryBuffer(MAX_BUFFERED_LOG_ENTRY_COUNT);
 
   /**
    * Future that completes with the background thread consuming logs from bufferedLogEntries.
@@ -127,7 +154,6 @@ public class BeamFnLoggingClient implements LoggingClient {
         new BeamFnLoggingClient(
             apiServiceDescriptor,
             new StreamWriter(channelFactory.apply(apiServiceDescriptor)),
-            options.as(SdkHarnessOptions.class).getLogMdc(),
             options.as(ExecutorOptions.class).getScheduledExecutorService(),
             options.as(SdkHarnessOptions.class));
     return client;
@@ -136,12 +162,18 @@ public class BeamFnLoggingClient implements LoggingClient {
   private BeamFnLoggingClient(
       Endpoints.ApiServiceDescriptor apiServiceDescriptor,
       StreamWriter streamWriter,
-      boolean logMdc,
       ScheduledExecutorService executorService,
       SdkHarnessOptions options) {
     this.apiServiceDescriptor = apiServiceDescriptor;
     this.streamWriter = streamWriter;
-    this.logRecordHandler = new LogRecordHandler(logMdc);
+    this.logRecordHandler =
+        new LogRecordHandler(
+            options.getLogMdc(),
+            options.getLogBufferOverflowPolicy(),
+            options.getMaxLogEntriesPerSecond() > 0
+                ? new LogRateLimiter(options.getMaxLogEntriesPerSecond())
+                : null,
+            options.getLogRateLimitMdcKey());
     logRecordHandler.setLevel(Level.ALL);
     logRecordHandler.setFormatter(DEFAULT_FORMATTER);
 
@@ -222,30 +254,33 @@ public class BeamFnLoggingClient implements LoggingClient {
               (CallStreamObserver<BeamFnApi.LogEntry.List>) stub.logging(inboundObserver));
     }
 
-    public void drainQueueToStream(BlockingQueue<BeamFnApi.LogEntry> bufferedLogEntries) {
+    public void drainQueueToStream(LogEntryBuffer bufferedLogEntries) {
       Throwable thrown = null;
       try {
-        List<BeamFnApi.LogEntry> additionalLogEntries =
-            new ArrayList<>(MAX_BUFFERED_LOG_ENTRY_COUNT);
+        List<BeamFnApi.LogEntry> batch = new ArrayList<>();
         // As long as we haven't yet terminated the stream, then attempt to send on it.
         while (!streamPhaser.isTerminated()) {
           // We wait for a limited period so that we can evaluate if the stream closed or if
           // we are gracefully closing the client.
           BeamFnApi.LogEntry logEntry = bufferedLogEntries.poll(1, SECONDS);
-          if (logEntry == null) {
+          if (logEntry != null) {
+            batch.add(logEntry);
+            fillBatch(bufferedLogEntries, batch, logEntry.getSerializedSize());
+          }
+          long dropped = bufferedLogEntries.takeDropped();
+          if (dropped > 0) {
+            batch.add(droppedLogEntry(dropped));
+          }
+          if (batch.isEmpty()) {
             if (softClosing.isDone()) {
               break;
             }
             continue;
           }
 
-          // Batch together as many log messages as possible that are held within the buffer
-          BeamFnApi.LogEntry.List.Builder builder =
-              BeamFnApi.LogEntry.List.newBuilder().addLogEntries(logEntry);
-          bufferedLogEntries.drainTo(additionalLogEntries);
-          builder.addAllLogEntries(additionalLogEntries);
-          outboundObserver.onNext(builder.build());
-          additionalLogEntries.clear();
+          outboundObserver.onNext(
+              BeamFnApi.LogEntry.List.newBuilder().addAllLogEntries(batch).build());
+          batch.clear();
         }
         if (inboundObserverCompletion.isDone()) {
           try {
@@ -288,6 +323,35 @@ public class BeamFnLoggingClient implements LoggingClient {
       }
     }
 
+    /**
+     * Batches together as many log messages as possible that are held within the buffer or arrive
+     * shortly after the first log message of the batch. A log message which would exceed the byte
+     * limit of the batch is left in the buffer for the next batch.
+     */
+    private void fillBatch(
+        LogEntryBuffer bufferedLogEntries, List<BeamFnApi.LogEntry> batch, long batchBytes)
+        throws InterruptedException {
+      long deadline = System.nanoTime() + MAX_BATCH_DELAY_NANOS;
+      while (true) {
+        batchBytes +=
+            bufferedLogEntries.drainTo(
+                batch, MAX_BUFFERED_LOG_ENTRY_COUNT - batch.size(), MAX_BATCH_BYTES - batchBytes);
+        long remaining = deadline - System.nanoTime();
+        if (remaining <= 0
+            || batch.size() >= MAX_BUFFERED_LOG_ENTRY_COUNT
+            || batchBytes >= MAX_BATCH_BYTES
+            // The next log message does not fit into this batch.
+            || !bufferedLogEntries.isEmpty()
+            || softClosing.isDone()
+            || streamPhaser.isTerminated()) {
+          return;
+        }
+        if (!bufferedLogEntries.await(remaining, NANOSECONDS)) {
+          return;
+        }
+      }
+    }
+
     public void softClose() {
       softClosing.complete(COMPLETED);
     }
@@ -364,8 +428,12 @@ public class BeamFnLoggingClient implements LoggingClient {
 
   @RequiresNonNull("bufferedLogEntries")
   void flushFinalLogs(@UnderInitialization BeamFnLoggingClient this) {
-    List<BeamFnApi.LogEntry> finalLogEntries = new ArrayList<>(MAX_BUFFERED_LOG_ENTRY_COUNT);
-    bufferedLogEntries.drainTo(finalLogEntries);
+    List<BeamFnApi.LogEntry> finalLogEntries = new ArrayList<>();
+    bufferedLogEntries.drainTo(finalLogEntries, Integer.MAX_VALUE, Long.MAX_VALUE);
+    long dropped = bufferedLogEntries.takeDropped();
+    if (dropped > 0) {
+      finalLogEntries.add(droppedLogEntry(dropped));
+    }
     for (BeamFnApi.LogEntry logEntry : finalLogEntries) {
       LogRecord logRecord =
           new LogRecord(
@@ -383,6 +451,24 @@ public class BeamFnLoggingClient implements LoggingClient {
     }
   }
 
+  private static BeamFnApi.LogEntry droppedLogEntry(long dropped) {
+    long millis = System.currentTimeMillis();
+    return BeamFnApi.LogEntry.newBuilder()
+        .setSeverity(BeamFnApi.LogEntry.Severity.Enum.WARN)
+        .setMessage(
+            String.format(
+                "Dropped %d log entries because the log buffer was full or they exceeded "
+                    + "--maxLogEntriesPerSecond.",
+                dropped))
+        .setThread(Long.toString(Thread.currentThread().getId()))
+        .setTimestamp(
+            Timestamp.newBuilder()
+                .setSeconds(millis / 1000)
+                .setNanos((int) (millis % 1000) * 1_000_000))
+        .setLogLocation(BeamFnLoggingClient.class.getName())
+        .build();
+  }
+
   @Override
   public CompletableFuture<?> terminationFuture() {
     checkNotNull(bufferedLogConsumer, "BeamFnLoggingClient not fully started");
@@ -398,9 +484,19 @@ public class BeamFnLoggingClient implements LoggingClient {
 
   private class LogRecordHandler extends Handler {
     private final boolean logMdc;
-
-    LogRecordHandler(boolean logMdc) {
+    private final LogBufferOverflowPolicy overflowPolicy;
+    private final @Nullable LogRateLimiter rateLimiter;
+    private final @Nullable String rateLimitMdcKey;
+
+    LogRecordHandler(
+        boolean logMdc,
+        LogBufferOverflowPolicy overflowPolicy,
+        @Nullable LogRateLimiter rateLimiter,
+        @Nullable String rateLimitMdcKey) {
       this.logMdc = logMdc;
+      this.overflowPolicy = overflowPolicy;
+      this.rateLimiter = rateLimiter;
+      this.rateLimitMdcKey = rateLimitMdcKey;
     }
 
     @Override
@@ -412,6 +508,11 @@ public class BeamFnLoggingClient implements LoggingClient {
       if (record == null) {
         return;
       }
+      if (rateLimiter != null
+          && !rateLimiter.tryAcquire(rateLimitKey(record), record.getMillis())) {
+        dropped();
+        return;
+      }
       String messageString = getFormatter().formatMessage(record);
 
       BeamFnApi.LogEntry.Builder builder =
@@ -459,22 +560,37 @@ public class BeamFnLoggingClient implements LoggingClient {
       }
 
       // The thread that sends log records should never perform a blocking publish and
-      if (Thread.currentThread() != logEntryHandlerThread) {
+      if (Thread.currentThread() != logEntryHandlerThread
+          && overflowPolicy == LogBufferOverflowPolicy.BLOCK) {
         // Blocks caller till enough space exists to publish this log entry.
         try {
-          bufferedLogEntries.put(builder.build());
+          if (bufferedLogEntries.put(builder.build())) {
+            DELAYED_LOG_ENTRIES_COUNTER.inc();
+          }
         } catch (InterruptedException e) {
           Thread.currentThread().interrupt();
           throw new RuntimeException(e);
         }
-      } else {
-        // Never blocks caller, will drop log message if buffer is full.
-        dropIfBufferFull(builder.build());
+      } else if (!bufferedLogEntries.offer(builder.build())) {
+        // Never blocks caller, drops the log message if buffer is full.
+        dropped();
+      }
+    }
+
+    private String rateLimitKey(LogRecord record) {
+      if (rateLimitMdcKey != null) {
+        String value = MDC.get(rateLimitMdcKey);
+        if (value != null) {
+          return value;
+        }
       }
+      String loggerName = record.getLoggerName();
+      return loggerName == null ? ROOT_LOGGER_NAME : loggerName;
     }
 
-    private boolean dropIfBufferFull(BeamFnApi.LogEntry logEntry) {
-      return bufferedLogEntries.offer(logEntry);
+    private void dropped() {
+      bufferedLogEntries.recordDropped();
+      DROPPED_LOG_ENTRIES_COUNTER.inc();
     }
 
     @Override
@@ -0,0 +1,164 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.fn.harness.logging;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import javax.annotation.concurrent.ThreadSafe;
+import org.apache.beam.model.fnexecution.v1.BeamFnApi.LogEntry;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * A bounded buffer of {@link LogEntry}s which many logging threads add to and a single thread
+ * drains.
+ *
+ * <p>Adding and removing log entries does not take any locks unless a thread has to wait, either
+ * for space in a full buffer or for log entries in an empty buffer. The buffer also counts the log
+ * entries which were dropped instead of being buffered, such that the draining thread can report
+ * them.
+ */
+@ThreadSafe
+class LogEntryBuffer {
+  private final ConcurrentLinkedQueue<LogEntry> entries;
+  private final Semaphore capacity;
+  private final AtomicLong dropped;
+  private volatile @Nullable Thread waitingConsumer;
+
+  LogEntryBuffer(int capacity) {
+    this.entries = new ConcurrentLinkedQueue<>();
+    this.capacity = new Semaphore(capacity);
+    this.dropped = new AtomicLong();
+  }
+
+  /** Adds the log entry if there is space for it without waiting. */
+  boolean offer(LogEntry logEntry) {
+    if (!capacity.tryAcquire()) {
+      return false;
+    }
+    add(logEntry);
+    return true;
+  }
+
+  /**
+   * Adds the log entry, waiting for space if the buffer is full. Returns whether it had to wait.
+   */
+  boolean put(LogEntry logEntry) throws InterruptedException {
+    boolean waited = false;
+    if (!capacity.tryAcquire()) {
+      waited = true;
+      capacity.acquire();
+    }
+    add(logEntry);
+    return waited;
+  }
+
+  private void add(LogEntry logEntry) {
+    entries.add(logEntry);
+    Thread consumer = waitingConsumer;
+    if (consumer != null) {
+      LockSupport.unpark(consumer);
+    }
+  }
+
+  /**
+   * Removes the oldest log entry, waiting up to the timeout for one to be added if the buffer is
+   * empty. Must only be called by the draining thread.
+   */
+  @Nullable
+  LogEntry poll(long timeout, TimeUnit unit) throws InterruptedException {
+    if (!await(timeout, unit)) {
+      return null;
+    }
+    LogEntry logEntry = entries.remove();
+    capacity.release();
+    return logEntry;
+  }
+
+  /**
+   * Waits up to the timeout for a log entry to be added if the buffer is empty, without removing
+   * it. Returns whether the buffer holds a log entry. Must only be called by the draining thread.
+   */
+  boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+    if (!entries.isEmpty()) {
+      return true;
+    }
+    long deadline = System.nanoTime() + unit.toNanos(timeout);
+    // Publish the waiting thread before checking for entries again, such that a concurrent add
+    // either is observed by the check or unparks this thread.
+    waitingConsumer = Thread.currentThread();
+    try {
+      while (entries.isEmpty()) {
+        long remaining = deadline - System.nanoTime();
+        if (remaining <= 0) {
+          return false;
+        }
+        LockSupport.parkNanos(this, remaining);
+        if (Thread.interrupted()) {
+          throw new InterruptedException();
+        }
+      }
+      return true;
+    } finally {
+      waitingConsumer = null;
+    }
+  }
+
+  /** Returns whether the buffer holds no log entries. */
+  boolean isEmpty() {
+    return entries.isEmpty();
+  }
+
+  /**
+   * Removes log entries in the order they were added until either limit would be exceeded. Must
+   * only be called by the draining thread.
+   *
+   * @return the serialized size of the removed log entries.
+   */
+  long drainTo(Collection<? super LogEntry> collection, int maxEntries, long maxBytes) {
+    int count = 0;
+    long bytes = 0;
+    LogEntry logEntry;
+    while (count < maxEntries && (logEntry = entries.peek()) != null) {
+      int size = logEntry.getSerializedSize();
+      if (bytes + size > maxBytes) {
+        break;
+      }
+      collection.add(entries.remove());
+      count += 1;
+      bytes += size;
+    }
+    if (count > 0) {
+      capacity.release(count);
+    }
+    return bytes;
+  }
+
+  /** Records that a log entry was dropped instead of being added. */
+  void recordDropped() {
+    dropped.incrementAndGet();
+  }
+
+  /** Returns the number of dropped log entries since the last call. */
+  long takeDropped() {
+    return dropped.getAndSet(0);
+  }
+}
@@ -0,0 +1,72 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.fn.harness.logging;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.concurrent.ThreadSafe;
+import org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.annotations.VisibleForTesting;
+
+/**
+ * Limits the number of log entries per second for each key, such as a logger name.
+ *
+ * <p>The count of each key is kept in a single {@link AtomicLong} together with the second it
+ * belongs to, such that checking the limit never takes locks.
+ */
+@ThreadSafe
+class LogRateLimiter {
+  private static final int COUNT_BITS = 20;
+  private static final long COUNT_MASK = (1L << COUNT_BITS) - 1;
+
+  // Bounds the memory used when keys are taken from unbounded values such as MDC values.
+  @VisibleForTesting static final int MAX_KEYS = 10_000;
+
+  private final long maxEntriesPerSecond;
+  private final ConcurrentHashMap<String, AtomicLong> windows;
+
+  LogRateLimiter(int maxEntriesPerSecond) {
+    this.maxEntriesPerSecond = Math.min(maxEntriesPerSecond, COUNT_MASK);
+    this.windows = new ConcurrentHashMap<>();
+  }
+
+  /** Returns whether a log entry for the key may be logged at the given time. */
+  boolean tryAcquire(String key, long nowMillis) {
+    AtomicLong window = windows.get(key);
+    if (window == null) {
+      if (windows.size() >= MAX_KEYS) {
+        windows.clear();
+      }
+      window = windows.computeIfAbsent(key, k -> new AtomicLong());
+    }
+    long second = nowMillis / 1000;
+    while (true) {
+      long current = window.get();
+      long next;
+      if (current >>> COUNT_BITS != second) {
+        next = (second << COUNT_BITS) | 1;
+      } else if ((current & COUNT_MASK) >= maxEntriesPerSecond) {
+        return false;
+      } else {
+        next = current + 1;
+      }
+      if (window.compareAndSet(current, next)) {
+        return true;
+      }
+    }
+  }
+}
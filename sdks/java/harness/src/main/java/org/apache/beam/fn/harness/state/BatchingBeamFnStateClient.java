@@ -0,0 +1,471 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.fn.harness.state;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import org.apache.beam.model.fnexecution.v1.BeamFnApi.StateAppendResponse;
+import org.apache.beam.model.fnexecution.v1.BeamFnApi.StateClearResponse;
+import org.apache.beam.model.fnexecution.v1.BeamFnApi.StateMutationBatchRequest;
+import org.apache.beam.model.fnexecution.v1.BeamFnApi.StateRequest;
+import org.apache.beam.model.fnexecution.v1.BeamFnApi.StateResponse;
+import org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.annotations.VisibleForTesting;
+
+/**
+ * A {@link BeamFnStateClient} which coalesces append and clear requests into {@link
+ * StateMutationBatchRequest}s, which runners advertising the {@code
+ * beam:protocol:state_mutation_batching:v1} capability answer with a single response.
+ *
+ * <p>Mutations are buffered until {@link #flush} is called, until the buffer reaches its size
+ * limits, or until a request which is not a mutation is made. Requests are therefore sent in the
+ * order they were made. Waiting on the response of a buffered mutation with {@link
+ * CompletableFuture#get} or {@link CompletableFuture#join}, or registering a dependent stage on it
+ * such as with {@link CompletableFuture#thenApply} or {@link CompletableFuture#whenComplete},
+ * flushes the buffer, since the dependent stage could otherwise be waited on until the bundle
+ * finishes. Callers which do not need the response should therefore ignore it.
+ */
+public class BatchingBeamFnStateClient implements BeamFnStateClient {
+  @VisibleForTesting static final int DEFAULT_MAX_BATCH_REQUESTS = 1000;
+  @VisibleForTesting static final long DEFAULT_MAX_BATCH_BYTES = 1 << 20;
+
+  private final BeamFnStateClient beamFnStateClient;
+  private final int maxBatchRequests;
+  private final long maxBatchBytes;
+  private final Lock lock;
+  // Guarded by lock.
+  private List<StateRequest> bufferedRequests;
+  private List<CompletableFuture<StateResponse>> bufferedResponses;
+  private long bufferedBytes;
+
+  public BatchingBeamFnStateClient(BeamFnStateClient beamFnStateClient) {
+    this(beamFnStateClient, DEFAULT_MAX_BATCH_REQUESTS, DEFAULT_MAX_BATCH_BYTES);
+  }
+
+  @VisibleForTesting
+  BatchingBeamFnStateClient(
+      BeamFnStateClient beamFnStateClient, int maxBatchRequests, long maxBatchBytes) {
+    this.beamFnStateClient = beamFnStateClient;
+    this.maxBatchRequests = maxBatchRequests;
+    this.maxBatchBytes = maxBatchBytes;
+    this.lock = new ReentrantLock();
+    this.bufferedRequests = new ArrayList<>();
+    this.bufferedResponses = new ArrayList<>();
+  }
+
+  @Override
+  public CompletableFuture<StateResponse> handle(StateRequest.Builder requestBuilder) {
+    lock.lock();
+    try {
+      switch (requestBuilder.getRequestCase()) {
+        case APPEND:
+        case CLEAR:
+          StateRequest request = requestBuilder.build();
+          if (!bufferedRequests.isEmpty()
+              && !bufferedRequests.get(0).getInstructionId().equals(request.getInstructionId())) {
+            flushLocked();
+          }
+          CompletableFuture<StateResponse> response = new BufferedResponse();
+          bufferedRequests.add(request);
+          bufferedResponses.add(response);
+          bufferedBytes += request.getSerializedSize();
+          if (bufferedRequests.size() >= maxBatchRequests || bufferedBytes >= maxBatchBytes) {
+            flushLocked();
+          }
+          return response;
+        default:
+          // Send the buffered mutations first so that this request observes them.
+          flushLocked();
+          return beamFnStateClient.handle(requestBuilder);
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public int getMaxReadaheadPages() {
+    return beamFnStateClient.getMaxReadaheadPages();
+  }
+
+  /** Sends all buffered mutations. */
+  public void flush() {
+    lock.lock();
+    try {
+      flushLocked();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @SuppressWarnings("FutureReturnValueIgnored") // responses are forwarded to the buffered futures.
+  private void flushLocked() {
+    if (bufferedRequests.isEmpty()) {
+      return;
+    }
+    List<StateRequest> requests = bufferedRequests;
+    List<CompletableFuture<StateResponse>> responses = bufferedResponses;
+    bufferedRequests = new ArrayList<>();
+    bufferedResponses = new ArrayList<>();
+    bufferedBytes = 0;
+
+    CompletableFuture<StateResponse> batchResponse;
+    try {
+      if (requests.size() == 1) {
+        // Avoid the overhead of a batch for a single request.
+        batchResponse = beamFnStateClient.handle(requests.get(0).toBuilder());
+      } else {
+        batchResponse =
+            beamFnStateClient.handle(
+                StateRequest.newBuilder()
+                    .setInstructionId(requests.get(0).getInstructionId())
+                    .setMutationBatch(
+                        StateMutationBatchRequest.newBuilder().addAllRequests(requests)));
+      }
+    } catch (RuntimeException e) {
+      for (CompletableFuture<StateResponse> response : responses) {
+        response.completeExceptionally(e);
+      }
+      throw e;
+    }
+    batchResponse.whenComplete(
+        (stateResponse, throwable) -> {
+          for (int i = 0; i < requests.size(); ++i) {
+            if (throwable != null) {
+              responses.get(i).completeExceptionally(throwable);
+            } else {
+              responses.get(i).complete(responseFor(requests.get(i), stateResponse));
+            }
+          }
+        });
+  }
+
+  private static StateResponse responseFor(StateRequest request, StateResponse batchResponse) {
+    StateResponse.Builder response = StateResponse.newBuilder().setId(batchResponse.getId());
+    switch (request.getRequestCase()) {
+      case APPEND:
+        return response.setAppend(StateAppendResponse.getDefaultInstance()).build();
+      case CLEAR:
+        return response.setClear(StateClearResponse.getDefaultInstance()).build();
+      default:
+        throw new IllegalStateException(
+            String.format("Unexpected buffered request %s.", request.getRequestCase()));
+    }
+  }
+
+  /**
+   * The response to a buffered mutation, which sends the buffer when it is waited on or when a
+   * dependent stage is registered on it.
+   */
+  private class BufferedResponse extends CompletableFuture<StateResponse> {
+    @Override
+    public StateResponse get() throws InterruptedException, ExecutionException {
+      flushIfPending();
+      return super.get();
+    }
+
+    @Override
+    public StateResponse get(long timeout, TimeUnit unit)
+        throws InterruptedException, ExecutionException, TimeoutException {
+      flushIfPending();
+      return super.get(timeout, unit);
+    }
+
+    @Override
+    public StateResponse join() {
+      flushIfPending();
+      return super.join();
+    }
+
+    @Override
+    public <U> CompletableFuture<U> thenApply(Function<? super StateResponse, ? extends U> fn) {
+      flushIfPending();
+      return super.thenApply(fn);
+    }
+
+    @Override
+    public <U> CompletableFuture<U> thenApplyAsync(
+        Function<? super StateResponse, ? extends U> fn) {
+      flushIfPending();
+      return super.thenApplyAsync(fn);
+    }
+
+    @Override
+    public <U> CompletableFuture<U> thenApplyAsync(
+        Function<? super StateResponse, ? extends U> fn, Executor executor) {
+      flushIfPending();
+      return super.thenApplyAsync(fn, executor);
+    }
+
+    @Override
+    public CompletableFuture<Void> thenAccept(Consumer<? super StateResponse> action) {
+      flushIfPending();
+      return super.thenAccept(action);
+    }
+
+    @Override
+    public CompletableFuture<Void> thenAcceptAsync(Consumer<? super StateResponse> action) {
+      flushIfPending();
+      return super.thenAcceptAsync(action);
+    }
+
+    @Override
+    public CompletableFuture<Void> thenAcceptAsync(
+        Consumer<? super StateResponse> action, Executor executor) {
+      flushIfPending();
+      return super.thenAcceptAsync(action, executor);
+    }
+
+    @Override
+    public CompletableFuture<Void> thenRun(Runnable action) {
+      flushIfPending();
+      return super.thenRun(action);
+    }
+
+    @Override
+    public CompletableFuture<Void> thenRunAsync(Runnable action) {
+      flushIfPending();
+      return super.thenRunAsync(action);
+    }
+
+    @Override
+    public CompletableFuture<Void> thenRunAsync(Runnable action, Executor executor) {
+      flushIfPending();
+      return super.thenRunAsync(action, executor);
+    }
+
+    @Override
+    public <U, V> CompletableFuture<V> thenCombine(
+        CompletionStage<? extends U> other,
+        BiFunction<? super StateResponse, ? super U, ? extends V> fn) {
+      flushIfPending();
+      return super.thenCombine(other, fn);
+    }
+
+    @Override
+    public <U, V> CompletableFuture<V> thenCombineAsync(
+        CompletionStage<? extends U> other,
+        BiFunction<? super StateResponse, ? super U, ? extends V> fn) {
+      flushIfPending();
+      return super.thenCombineAsync(other, fn);
+    }
+
+    @Override
+    public <U, V> CompletableFuture<V> thenCombineAsync(
+        CompletionStage<? extends U> other,
+        BiFunction<? super StateResponse, ? super U, ? extends V> fn,
+        Executor executor) {
+      flushIfPending();
+      return super.thenCombineAsync(other, fn, executor);
+    }
+
+    @Override
+    public <U> CompletableFuture<Void> thenAcceptBoth(
+        CompletionStage<? extends U> other, BiConsumer<? super StateResponse, ? super U> action) {
+      flushIfPending();
+      return super.thenAcceptBoth(other, action);
+    }
+
+    @Override
+    public <U> CompletableFuture<Void> thenAcceptBothAsync(
+        CompletionStage<? extends U> other, BiConsumer<? super StateResponse, ? super U> action) {
+      flushIfPending();
+      return super.thenAcceptBothAsync(other, action);
+    }
+
+    @Override
+    public <U> CompletableFuture<Void> thenAcceptBothAsync(
+        CompletionStage<? extends U> other,
+        BiConsumer<? super StateResponse, ? super U> action,
+        Executor executor) {
+      flushIfPending();
+      return super.thenAcceptBothAsync(other, action, executor);
+    }
+
+    @Override
+    public CompletableFuture<Void> runAfterBoth(CompletionStage<?> other, Runnable action) {
+      flushIfPending();
+      return super.runAfterBoth(other, action);
+    }
+
+    @Override
+    public CompletableFuture<Void> runAfterBothAsync(CompletionStage<?> other, Runnable action) {
+      flushIfPending();
+      return super.runAfterBothAsync(other, action);
+    }
+
+    @Override
+    public CompletableFuture<Void> runAfterBothAsync(
+        CompletionStage<?> other, Runnable action, Executor executor) {
+      flushIfPending();
+      return super.runAfterBothAsync(other, action, executor);
+    }
+
+    @Override
+    public <U> CompletableFuture<U> applyToEither(
+        CompletionStage<? extends StateResponse> other, Function<? super StateResponse, U> fn) {
+      flushIfPending();
+      return super.applyToEither(other, fn);
+    }
+
+    @Override
+    public <U> CompletableFuture<U> applyToEitherAsync(
+        CompletionStage<? extends StateResponse> other, Function<? super StateResponse, U> fn) {
+      flushIfPending();
+      return super.applyToEitherAsync(other, fn);
+    }
+
+    @Override
+    public <U> CompletableFuture<U> applyToEitherAsync(
+        CompletionStage<? extends StateResponse> other,
+        Function<? super StateResponse, U> fn,
+        Executor executor) {
+      flushIfPending();
+      return super.applyToEitherAsync(other, fn, executor);
+    }
+
+    @Override
+    public CompletableFuture<Void> acceptEither(
+        CompletionStage<? extends StateResponse> other, Consumer<? super StateResponse> action) {
+      flushIfPending();
+      return super.acceptEither(other, action);
+    }
+
+    @Override
+    public CompletableFuture<Void> acceptEitherAsync(
+        CompletionStage<? extends StateResponse> other, Consumer<? super StateResponse> action) {
+      flushIfPending();
+      return super.acceptEitherAsync(other, action);
+    }
+
+    @Override
+    public CompletableFuture<Void> acceptEitherAsync(
+        CompletionStage<? extends StateResponse> other,
+        Consumer<? super StateResponse> action,
+        Executor executor) {
+      flushIfPending();
+      return super.acceptEitherAsync(other, action, executor);
+    }
+
+    @Override
+    public CompletableFuture<Void> runAfterEither(CompletionStage<?> other, Runnable action) {
+      flushIfPending();
+      return super.runAfterEither(other, action);
+    }
+
+    @Override
+    public CompletableFuture<Void> runAfterEitherAsync(CompletionStage<?> other, Runnable action) {
+      flushIfPending();
+      return super.runAfterEitherAsync(other, action);
+    }
+
+    @Override
+    public CompletableFuture<Void> runAfterEitherAsync(
+        CompletionStage<?> other, Runnable action, Executor executor) {
+      flushIfPending();
+      return super.runAfterEitherAsync(other, action, executor);
+    }
+
+    @Override
+    public <U> CompletableFuture<U> thenCompose(
+        Function<? super StateResponse, ? extends CompletionStage<U>> fn) {
+      flushIfPending();
+      return super.thenCompose(fn);
+    }
+
+    @Override
+    public <U> CompletableFuture<U> thenComposeAsync(
+        Function<? super StateResponse, ? extends CompletionStage<U>> fn) {
+      flushIfPending();
+      return super.thenComposeAsync(fn);
+    }
+
+    @Override
+    public <U> CompletableFuture<U> thenComposeAsync(
+        Function<? super StateResponse, ? extends CompletionStage<U>> fn, Executor executor) {
+      flushIfPending();
+      return super.thenComposeAsync(fn, executor);
+    }
+
+    @Override
+    public CompletableFuture<StateResponse> whenComplete(
+        BiConsumer<? super StateResponse, ? super Throwable> action) {
+      flushIfPending();
+      return super.whenComplete(action);
+    }
+
+    @Override
+    public CompletableFuture<StateResponse> whenCompleteAsync(
+        BiConsumer<? super StateResponse, ? super Throwable> action) {
+      flushIfPending();
+      return super.whenCompleteAsync(action);
+    }
+
+    @Override
+    public CompletableFuture<StateResponse> whenCompleteAsync(
+        BiConsumer<? super StateResponse, ? super Throwable> action, Executor executor) {
+      flushIfPending();
+      return super.whenCompleteAsync(action, executor);
+    }
+
+    @Override
+    public <U> CompletableFuture<U> handle(
+        BiFunction<? super StateResponse, Throwable, ? extends U> fn) {
+      flushIfPending();
+      return super.handle(fn);
+    }
+
+    @Override
+    public <U> CompletableFuture<U> handleAsync(
+        BiFunction<? super StateResponse, Throwable, ? extends U> fn) {
+      flushIfPending();
+      return super.handleAsync(fn);
+    }
+
+    @Override
+    public <U> CompletableFuture<U> handleAsync(
+        BiFunction<? super StateResponse, Throwable, ? extends U> fn, Executor executor) {
+      flushIfPending();
+      return super.handleAsync(fn, executor);
+    }
+
+    @Override
+    public CompletableFuture<StateResponse> exceptionally(
+        Function<Throwable, ? extends StateResponse> fn) {
+      flushIfPending();
+      return super.exceptionally(fn);
+    }
+
+    private void flushIfPending() {
+      if (!isDone()) {
+        flush();
+      }
+    }
+  }
+}
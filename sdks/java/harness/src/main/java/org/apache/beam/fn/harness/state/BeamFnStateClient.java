@@ -33,4 +33,12 @@ public interface BeamFnStateClient {
    * @param requestBuilder A partially completed state request. The id will be populated the client.
    */
   CompletableFuture<StateResponse> handle(BeamFnApi.StateRequest.Builder requestBuilder);
+
+  /**
+   * Returns the maximum number of chunks that iterators over a paginated state stream may fetch
+   * ahead of their consumer. Defaults to a single chunk.
+   */
+  default int getMaxReadaheadPages() {
+    return 1;
+  }
 }
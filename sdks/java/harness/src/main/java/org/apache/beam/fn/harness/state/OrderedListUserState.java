@@ -32,14 +32,12 @@ import java.util.Comparator;
 import java.util.List;
 import java.util.Map.Entry;
 import java.util.NavigableMap;
-import java.util.concurrent.CompletableFuture;
 import org.apache.beam.fn.harness.Cache;
 import org.apache.beam.fn.harness.Caches;
 import org.apache.beam.fn.harness.state.StateFetchingIterators.CachingStateIterable;
 import org.apache.beam.model.fnexecution.v1.BeamFnApi.StateClearRequest;
 import org.apache.beam.model.fnexecution.v1.BeamFnApi.StateKey;
 import org.apache.beam.model.fnexecution.v1.BeamFnApi.StateRequest;
-import org.apache.beam.model.fnexecution.v1.BeamFnApi.StateResponse;
 import org.apache.beam.sdk.coders.Coder;
 import org.apache.beam.sdk.coders.KvCoder;
 import org.apache.beam.sdk.coders.LengthPrefixCoder;
@@ -281,9 +279,12 @@ public class OrderedListUserState<T> {
     pendingAdds.clear();
   }
 
+  @SuppressWarnings("FutureReturnValueIgnored")
   public void asyncClose() throws Exception {
     isClosed = true;
 
+    // Like other user state, the responses are not waited on here so that the requests of all
+    // keys can be sent in batches. Failures are reported when the bundle finishes.
     if (!pendingRemoves.isEmpty()) {
       for (Range<Instant> r : pendingRemoves.asRanges()) {
         StateRequest.Builder stateRequest = this.requestTemplate.toBuilder();
@@ -295,10 +296,7 @@ public class OrderedListUserState<T> {
             .setStart(r.lowerEndpoint().getMillis())
             .setEnd(r.upperEndpoint().getMillis());
 
-        CompletableFuture<StateResponse> response = beamFnStateClient.handle(stateRequest);
-        if (!response.get().getError().isEmpty()) {
-          throw new IllegalStateException(response.get().getError());
-        }
+        beamFnStateClient.handle(stateRequest);
       }
       pendingRemoves.clear();
     }
@@ -319,10 +317,7 @@ public class OrderedListUserState<T> {
       StateRequest.Builder stateRequest = this.requestTemplate.toBuilder();
       stateRequest.getAppendBuilder().setData(outStream.toByteString());
 
-      CompletableFuture<StateResponse> response = beamFnStateClient.handle(stateRequest);
-      if (!response.get().getError().isEmpty()) {
-        throw new IllegalStateException(response.get().getError());
-      }
+      beamFnStateClient.handle(stateRequest);
       pendingAdds.clear();
     }
   }
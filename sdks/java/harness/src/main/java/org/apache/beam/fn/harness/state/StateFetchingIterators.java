@@ -22,8 +22,11 @@ import static org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.base.Pr
 import com.google.auto.value.AutoValue;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
@@ -31,6 +34,7 @@ import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 import javax.annotation.Nullable;
 import org.apache.beam.fn.harness.Cache;
 import org.apache.beam.fn.harness.Cache.Shrinkable;
@@ -44,11 +48,18 @@ import org.apache.beam.sdk.fn.data.WeightedList;
 import org.apache.beam.sdk.fn.stream.DataStreams.DataStreamDecoder;
 import org.apache.beam.sdk.fn.stream.PrefetchableIterables;
 import org.apache.beam.sdk.fn.stream.PrefetchableIterator;
+import org.apache.beam.sdk.metrics.DelegatingDistribution;
+import org.apache.beam.sdk.metrics.Distribution;
+import org.apache.beam.sdk.metrics.MetricName;
+import org.apache.beam.sdk.util.ByteStringOutputStream;
+import org.apache.beam.sdk.util.VarInt;
 import org.apache.beam.sdk.util.Weighted;
 import org.apache.beam.vendor.grpc.v1p69p0.com.google.protobuf.ByteString;
+import org.apache.beam.vendor.grpc.v1p69p0.com.google.protobuf.UnsafeByteOperations;
 import org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.annotations.VisibleForTesting;
 import org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.base.Throwables;
 import org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.collect.AbstractIterator;
+import org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.io.ByteStreams;
 
 /**
  * Adapters which convert a logical series of chunks using continuation tokens over the Beam Fn
@@ -202,13 +213,101 @@ public class StateFetchingIterators {
   /** A mutable iterable that supports prefetch and is backed by a cache. */
   static class CachingStateIterable<T> extends PrefetchableIterables.Default<T> {
 
-    /** Represents a set of elements. */
-    abstract static class Blocks<T> implements Weighted {
+    /**
+     * Represents a set of elements.
+     *
+     * <p>Blocks are {@link Cache.Encodable} with the value coder such that caches may store them
+     * outside of the Java heap.
+     */
+    abstract static class Blocks<T> implements Weighted, Cache.Encodable<Blocks<T>> {
+      private static final int EMPTY = 0;
+      private static final int MUTATED = 1;
+      private static final int PREFIX = 2;
+
+      private final int type;
+      final Coder<T> valueCoder;
+
+      Blocks(int type, Coder<T> valueCoder) {
+        this.type = type;
+        this.valueCoder = valueCoder;
+      }
 
       public abstract List<Block<T>> getBlocks();
+
+      @Override
+      public void encode(OutputStream outStream) throws IOException {
+        outStream.write(type);
+        if (type == EMPTY) {
+          return;
+        }
+        List<Block<T>> blocks = getBlocks();
+        VarInt.encode(blocks.size(), outStream);
+        for (Block<T> block : blocks) {
+          ByteString nextToken = block.getNextToken();
+          if (nextToken == null) {
+            outStream.write(0);
+          } else {
+            outStream.write(1);
+            VarInt.encode(nextToken.size(), outStream);
+            nextToken.writeTo(outStream);
+          }
+          VarInt.encode(block.getValues().size(), outStream);
+          ByteString encodedValues = block.getEncodedValues(valueCoder);
+          VarInt.encode(encodedValues.size(), outStream);
+          encodedValues.writeTo(outStream);
+        }
+      }
+
+      @Override
+      public Cache.Decoder<Blocks<T>> getDecoder() {
+        return inStream -> decode(valueCoder, inStream);
+      }
+
+      private static <T> Blocks<T> decode(Coder<T> valueCoder, InputStream inStream)
+          throws IOException {
+        int type = inStream.read();
+        if (type == EMPTY) {
+          return new EmptyBlocks<>(valueCoder);
+        }
+        int size = VarInt.decodeInt(inStream);
+        List<Block<T>> blocks = new ArrayList<>(size);
+        for (int i = 0; i < size; ++i) {
+          ByteString nextToken = inStream.read() == 1 ? readBytes(inStream) : null;
+          int valueCount = VarInt.decodeInt(inStream);
+          ByteString encodedValues = readBytes(inStream);
+          List<T> values = new ArrayList<>(valueCount);
+          InputStream valuesStream = encodedValues.newInput();
+          for (int j = 0; j < valueCount; ++j) {
+            values.add(valueCoder.decode(valuesStream));
+          }
+          Block<T> block =
+              Block.fromValues(WeightedList.of(values, encodedValues.size()), nextToken);
+          block.encodedValues = encodedValues;
+          blocks.add(block);
+        }
+        switch (type) {
+          case MUTATED:
+            checkState(size == 1, "Expected a single mutated block but found %s.", size);
+            return new MutatedBlocks<>(valueCoder, blocks.get(0));
+          case PREFIX:
+            return new BlocksPrefix<>(valueCoder, blocks);
+          default:
+            throw new IOException(String.format("Unknown type of blocks %s.", type));
+        }
+      }
+
+      private static ByteString readBytes(InputStream inStream) throws IOException {
+        byte[] bytes = new byte[VarInt.decodeInt(inStream)];
+        ByteStreams.readFully(inStream, bytes);
+        return UnsafeByteOperations.unsafeWrap(bytes);
+      }
     }
 
     static class EmptyBlocks<T> extends Blocks<T> {
+      EmptyBlocks(Coder<T> valueCoder) {
+        super(EMPTY, valueCoder);
+      }
+
       @Override
       public List<Block<T>> getBlocks() {
         return Collections.singletonList(Block.emptyBlock());
@@ -224,7 +323,8 @@ public class StateFetchingIterators {
 
       private final Block<T> wholeBlock;
 
-      MutatedBlocks(Block<T> wholeBlock) {
+      MutatedBlocks(Coder<T> valueCoder, Block<T> wholeBlock) {
+        super(MUTATED, valueCoder);
         this.wholeBlock = wholeBlock;
       }
 
@@ -260,10 +360,20 @@ public class StateFetchingIterators {
         }
       }
 
-      BlocksPrefix(List<Block<T>> blocks) {
+      BlocksPrefix(Coder<T> valueCoder, List<Block<T>> blocks) {
+        super(PREFIX, valueCoder);
         this.blocks = blocks;
       }
 
+      /**
+       * Only the complete stream is stored encoded. A partial prefix grows by a block for each
+       * chunk loaded, encoding it each time would take time quadratic in the length of the stream.
+       */
+      @Override
+      public boolean storeEncoded() {
+        return !blocks.isEmpty() && blocks.get(blocks.size() - 1).getNextToken() == null;
+      }
+
       @Override
       public BlocksPrefix<T> shrink() {
         // Copy the list to not hold a reference to the tail of the original list.
@@ -271,7 +381,7 @@ public class StateFetchingIterators {
         if (subList.isEmpty()) {
           return null;
         }
-        return new BlocksPrefix<>(subList);
+        return new BlocksPrefix<>(valueCoder, subList);
       }
 
       @Override
@@ -316,12 +426,29 @@ public class StateFetchingIterators {
             values.getBacking(), nextToken, weight);
       }
 
+      // The encoded values once they have been computed, which avoids encoding the same block
+      // again whenever a cached prefix of blocks grows by one block.
+      private @Nullable ByteString encodedValues;
+
       abstract List<T> getValues();
 
       abstract @Nullable ByteString getNextToken();
 
       @Override
       public abstract long getWeight();
+
+      ByteString getEncodedValues(Coder<T> valueCoder) throws IOException {
+        ByteString result = encodedValues;
+        if (result == null) {
+          ByteStringOutputStream outStream = new ByteStringOutputStream();
+          for (T value : getValues()) {
+            valueCoder.encode(value, outStream);
+          }
+          result = outStream.toByteString();
+          encodedValues = result;
+        }
+        return result;
+      }
     }
 
     private final Cache<IterableCacheKey, Blocks<T>> cache;
@@ -393,7 +520,9 @@ public class StateFetchingIterators {
         }
       }
 
-      cache.put(IterableCacheKey.INSTANCE, new MutatedBlocks<>(Block.mutatedBlock(allValues)));
+      cache.put(
+          IterableCacheKey.INSTANCE,
+          new MutatedBlocks<>(valueCoder, Block.mutatedBlock(allValues)));
     }
 
     /**
@@ -406,9 +535,10 @@ public class StateFetchingIterators {
      */
     public void clearAndAppend(List<T> values) {
       if (values.isEmpty()) {
-        cache.put(IterableCacheKey.INSTANCE, new EmptyBlocks<>());
+        cache.put(IterableCacheKey.INSTANCE, new EmptyBlocks<>(valueCoder));
       } else {
-        cache.put(IterableCacheKey.INSTANCE, new MutatedBlocks<>(Block.mutatedBlock(values)));
+        cache.put(
+            IterableCacheKey.INSTANCE, new MutatedBlocks<>(valueCoder, Block.mutatedBlock(values)));
       }
     }
 
@@ -423,9 +553,10 @@ public class StateFetchingIterators {
      */
     public void clearAndAppend(WeightedList<T> values) {
       if (values.isEmpty()) {
-        cache.put(IterableCacheKey.INSTANCE, new EmptyBlocks<>());
+        cache.put(IterableCacheKey.INSTANCE, new EmptyBlocks<>(valueCoder));
       } else {
-        cache.put(IterableCacheKey.INSTANCE, new MutatedBlocks<>(Block.mutatedBlock(values)));
+        cache.put(
+            IterableCacheKey.INSTANCE, new MutatedBlocks<>(valueCoder, Block.mutatedBlock(values)));
       }
     }
 
@@ -498,7 +629,9 @@ public class StateFetchingIterators {
       }
       allValues.addAll(newValues, newWeight);
 
-      cache.put(IterableCacheKey.INSTANCE, new MutatedBlocks<>(Block.mutatedBlock(allValues)));
+      cache.put(
+          IterableCacheKey.INSTANCE,
+          new MutatedBlocks<>(valueCoder, Block.mutatedBlock(allValues)));
     }
 
     class CachingStateIterator implements PrefetchableIterator<T> {
@@ -590,7 +723,7 @@ public class StateFetchingIterators {
             if (isFirstBlock) {
               cache.put(
                   IterableCacheKey.INSTANCE,
-                  new BlocksPrefix<>(Collections.singletonList(currentBlock)));
+                  new BlocksPrefix<>(valueCoder, Collections.singletonList(currentBlock)));
             }
           } else if (isFirstBlock) {
             currentBlock = existing.getBlocks().get(0);
@@ -627,7 +760,7 @@ public class StateFetchingIterators {
                 List<Block<T>> newBlocks = new ArrayList<>(currentBlockIndex + 1);
                 newBlocks.addAll(existing.getBlocks());
                 newBlocks.add(currentBlock);
-                cache.put(IterableCacheKey.INSTANCE, new BlocksPrefix<>(newBlocks));
+                cache.put(IterableCacheKey.INSTANCE, new BlocksPrefix<>(valueCoder, newBlocks));
               }
             }
           }
@@ -660,23 +793,81 @@ public class StateFetchingIterators {
    * An {@link Iterator} which fetches {@link ByteString} chunks using the State API.
    *
    * <p>This iterator will only request a chunk on first access. Subsequently it eagerly pre-fetches
-   * one future chunk at a time.
+   * future chunks, keeping up to {@link BeamFnStateClient#getMaxReadaheadPages()} chunks fetched
+   * or in flight ahead of the consumer. The continuation token of a chunk is only known once the
+   * previous chunk has arrived, so each chunk is requested as soon as the response for the previous
+   * one is received instead of when the consumer asks for it. The size of the window follows the
+   * ratio of the observed fetch latency to the time the consumer spends on each chunk.
+   *
+   * <p>Each chunk the consumer takes allows at most {@link #FETCHES_PER_CHUNK_TAKEN} further chunks
+   * to be requested, which grows the window by one chunk at a time. Once the consumer stops taking
+   * chunks, e.g. because it abandoned the iterator, readahead stops after those chunks instead of
+   * filling the window.
+   *
+   * <p>The latency of each fetch and the time the consumer spent blocked waiting for a chunk are
+   * reported as distributions of the current metrics container.
    */
   @VisibleForTesting
   static class LazyBlockingStateFetchingIterator implements PrefetchableIterator<ByteString> {
+    @VisibleForTesting
+    static final MetricName FETCH_LATENCY_MICROS =
+        MetricName.named(StateFetchingIterators.class, "state_fetch_latency_micros");
+
+    @VisibleForTesting
+    static final MetricName STALL_MICROS =
+        MetricName.named(StateFetchingIterators.class, "state_fetch_stall_micros");
+
+    private static final Distribution FETCH_LATENCY_MICROS_DISTRIBUTION =
+        new DelegatingDistribution(FETCH_LATENCY_MICROS);
+    private static final Distribution STALL_MICROS_DISTRIBUTION =
+        new DelegatingDistribution(STALL_MICROS);
+
+    // The weight of the latest observation in the moving averages which size the readahead window.
+    private static final double AVERAGE_WEIGHT = 0.25;
+
+    // The number of chunks which may be requested ahead of the consumer for each chunk it takes.
+    private static final int FETCHES_PER_CHUNK_TAKEN = 2;
 
     private final BeamFnStateClient beamFnStateClient;
     private final StateRequest stateRequestForFirstChunk;
+    private final int maxReadaheadPages;
+    // Guards pages, fetchesAllowed and Page#successorRequested. Chunks are appended by response
+    // callbacks while only the consumer removes them.
+    private final Object lock = new Object();
+    // The chunks fetched or in flight ahead of the consumer, in stream order. The first chunk is
+    // the one for the current continuation token.
+    private final Deque<Page> pages = new ArrayDeque<>();
+    // The number of chunks readahead may still request before the consumer takes another chunk.
+    private int fetchesAllowed;
+    private volatile int readaheadPages;
     private ByteString continuationToken;
-    private CompletableFuture<StateResponse> prefetchedResponse;
+    private double averageFetchLatencyNanos = -1;
+    private double averageConsumeNanos = -1;
+    private long lastNextNanos = -1;
 
     LazyBlockingStateFetchingIterator(
         BeamFnStateClient beamFnStateClient, StateRequest stateRequestForFirstChunk) {
       this.beamFnStateClient = beamFnStateClient;
       this.stateRequestForFirstChunk = stateRequestForFirstChunk;
+      this.maxReadaheadPages = Math.max(1, beamFnStateClient.getMaxReadaheadPages());
+      this.readaheadPages = 1;
       this.continuationToken = stateRequestForFirstChunk.getGet().getContinuationToken();
     }
 
+    /** A chunk of the state stream which has been requested. */
+    private static class Page {
+      private final ByteString continuationToken;
+      private final CompletableFuture<StateResponse> response;
+      private long requestNanos;
+      private long responseNanos;
+      private boolean successorRequested;
+
+      private Page(ByteString continuationToken) {
+        this.continuationToken = continuationToken;
+        this.response = new CompletableFuture<>();
+      }
+    }
+
     /**
      * Returns the continuation token used to load the value returned by the previous call to {@link
      * #next}. Returns {@code null} if there are no more values.
@@ -685,6 +876,12 @@ public class StateFetchingIterators {
       return continuationToken;
     }
 
+    /** Returns the number of chunks currently allowed to be fetched ahead of the consumer. */
+    @VisibleForTesting
+    int getReadaheadPages() {
+      return readaheadPages;
+    }
+
     /**
      * Repositions this {@link Iterator} such that the value returned by {@link #next} uses the
      * continuation token.
@@ -692,30 +889,48 @@ public class StateFetchingIterators {
      * <p>Passing in {@code null} seeks to the end of the stream.
      *
      * <p>This is a no-op if the continuation token passed in is the same as the current
-     * continuation token.
+     * continuation token. Chunks which have already been fetched ahead of the continuation token
+     * are kept.
      */
     public void seekToContinuationToken(@Nullable ByteString continuationToken) {
-      // Don't clear the prefetched response if no seeking is required.
+      // Don't clear the prefetched responses if no seeking is required.
       if (Objects.equals(this.continuationToken, continuationToken)) {
         return;
       }
       this.continuationToken = continuationToken;
-      this.prefetchedResponse = null;
+      synchronized (lock) {
+        while (!pages.isEmpty()
+            && !pages.peekFirst().continuationToken.equals(continuationToken)) {
+          pages.removeFirst();
+        }
+      }
     }
 
     @Override
     public boolean isReady() {
-      if (prefetchedResponse == null) {
-        return continuationToken == null;
+      synchronized (lock) {
+        Page page = pages.peekFirst();
+        if (page == null) {
+          return continuationToken == null;
+        }
+        return page.response.isDone();
       }
-      return prefetchedResponse.isDone();
     }
 
     @Override
     public void prefetch() {
-      if (continuationToken != null && prefetchedResponse == null) {
-        prefetchedResponse = loadPrefetchedResponse(continuationToken);
+      if (continuationToken == null) {
+        return;
       }
+      Page page;
+      synchronized (lock) {
+        if (!pages.isEmpty()) {
+          return;
+        }
+        page = new Page(continuationToken);
+        pages.addLast(page);
+      }
+      fetch(page);
     }
 
     public CompletableFuture<StateResponse> loadPrefetchedResponse(ByteString continuationToken) {
@@ -725,6 +940,56 @@ public class StateFetchingIterators {
               .setGet(StateGetRequest.newBuilder().setContinuationToken(continuationToken)));
     }
 
+    @SuppressWarnings("FutureReturnValueIgnored") // the response is forwarded to the page.
+    private void fetch(Page page) {
+      page.requestNanos = System.nanoTime();
+      CompletableFuture<StateResponse> response;
+      try {
+        response = loadPrefetchedResponse(page.continuationToken);
+      } catch (RuntimeException e) {
+        page.response.completeExceptionally(e);
+        throw e;
+      }
+      response.whenComplete(
+          (stateResponse, throwable) -> {
+            page.responseNanos = System.nanoTime();
+            if (throwable != null) {
+              page.response.completeExceptionally(throwable);
+            } else {
+              page.response.complete(stateResponse);
+              readAhead();
+            }
+          });
+    }
+
+    /**
+     * Requests the chunk following the last fetched chunk if that chunk has arrived, the readahead
+     * window is not full and the consumer has taken enough chunks to allow another request.
+     */
+    private void readAhead() {
+      Page page;
+      synchronized (lock) {
+        Page last = pages.peekLast();
+        if (last == null
+            || last.successorRequested
+            || fetchesAllowed <= 0
+            || pages.size() >= readaheadPages
+            || !last.response.isDone()
+            || last.response.isCompletedExceptionally()) {
+          return;
+        }
+        ByteString nextToken = last.response.getNow(null).getGet().getContinuationToken();
+        if (ByteString.EMPTY.equals(nextToken)) {
+          return;
+        }
+        last.successorRequested = true;
+        fetchesAllowed -= 1;
+        page = new Page(nextToken);
+        pages.addLast(page);
+      }
+      fetch(page);
+    }
+
     @Override
     public boolean hasNext() {
       return continuationToken != null;
@@ -736,10 +1001,18 @@ public class StateFetchingIterators {
         throw new NoSuchElementException();
       }
 
+      long startNanos = System.nanoTime();
+      if (lastNextNanos >= 0) {
+        averageConsumeNanos = average(averageConsumeNanos, startNanos - lastNextNanos);
+      }
       prefetch();
+      Page page;
+      synchronized (lock) {
+        page = pages.peekFirst();
+      }
       StateResponse stateResponse;
       try {
-        stateResponse = prefetchedResponse.get();
+        stateResponse = page.response.get();
       } catch (InterruptedException e) {
         Thread.currentThread().interrupt();
         throw new IllegalStateException(e);
@@ -750,7 +1023,21 @@ public class StateFetchingIterators {
         Throwables.throwIfUnchecked(e.getCause());
         throw new IllegalStateException(e.getCause());
       }
-      prefetchedResponse = null;
+      lastNextNanos = System.nanoTime();
+      synchronized (lock) {
+        pages.removeFirst();
+        fetchesAllowed = FETCHES_PER_CHUNK_TAKEN;
+      }
+
+      long fetchLatencyNanos = page.responseNanos - page.requestNanos;
+      FETCH_LATENCY_MICROS_DISTRIBUTION.update(TimeUnit.NANOSECONDS.toMicros(fetchLatencyNanos));
+      STALL_MICROS_DISTRIBUTION.update(TimeUnit.NANOSECONDS.toMicros(lastNextNanos - startNanos));
+      averageFetchLatencyNanos = average(averageFetchLatencyNanos, fetchLatencyNanos);
+      if (maxReadaheadPages > 1 && averageConsumeNanos >= 0) {
+        double pagesToCoverLatency =
+            Math.ceil(averageFetchLatencyNanos / Math.max(1, averageConsumeNanos));
+        readaheadPages = (int) Math.max(1, Math.min(maxReadaheadPages, pagesToCoverLatency));
+      }
 
       ByteString tokenFromResponse = stateResponse.getGet().getContinuationToken();
 
@@ -760,9 +1047,17 @@ public class StateFetchingIterators {
       } else {
         continuationToken = tokenFromResponse;
         prefetch();
+        readAhead();
       }
 
       return stateResponse.getGet().getData();
     }
+
+    private static double average(double average, long observation) {
+      if (average < 0) {
+        return observation;
+      }
+      return average + AVERAGE_WEIGHT * (observation - average);
+    }
   }
 }
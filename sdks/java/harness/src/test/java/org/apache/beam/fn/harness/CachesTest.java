@@ -24,8 +24,16 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.apache.beam.fn.harness.Cache.Shrinkable;
 import org.apache.beam.fn.harness.Caches.ClearableCache;
+import org.apache.beam.fn.harness.OffHeapCacheStoreTest.EncodableString;
 import org.apache.beam.sdk.options.PipelineOptionsFactory;
 import org.apache.beam.sdk.util.Weighted;
 import org.apache.beam.sdk.util.WeightedValue;
@@ -148,6 +156,137 @@ public class CachesTest {
     assertEquals("untrackedValue", parent.peek("untracked"));
   }
 
+  @Test
+  public void testOffHeapCache() throws Exception {
+    testCache(Caches.forMaximumBytes(MB, MB));
+    testCache(Caches.subCache(Caches.forMaximumBytes(MB, MB), "prefix"));
+
+    Cache<String, Object> cache = Caches.forMaximumBytes(MB, MB);
+
+    // Encodable values are stored off-heap and replace values stored on the heap.
+    EncodableString encodable = new EncodableString("encodable");
+    cache.put("key1", "value1");
+    cache.put("key1", encodable);
+    assertEquals(encodable, cache.peek("key1"));
+    assertEquals(
+        encodable, cache.computeIfAbsent("key3", (unused) -> new EncodableString("encodable")));
+    assertThat(cache.describeStats(), containsString("off-heap used/max 0/1 MB"));
+    assertThat(cache.describeStats(), containsString("entries 2"));
+
+    // Other values are stored on the heap and replace values stored off-heap.
+    cache.put("key1", "value1");
+    assertEquals("value1", cache.peek("key1"));
+    assertThat(cache.describeStats(), containsString("entries 1"));
+
+    cache.remove("key3");
+    assertNull(cache.peek("key3"));
+    assertThat(cache.describeStats(), containsString("entries 0"));
+  }
+
+  @Test
+  public void testOffHeapCacheKeepsValuesNotStoredEncodedOnHeap() throws Exception {
+    Cache<String, Object> cache = Caches.forMaximumBytes(MB, MB);
+    EncodableString growing =
+        new EncodableString("growing") {
+          @Override
+          public boolean storeEncoded() {
+            return false;
+          }
+        };
+    cache.put("key1", growing);
+    assertSame(growing, cache.peek("key1"));
+    assertSame(growing, cache.computeIfAbsent("key2", (unused) -> growing));
+    assertSame(growing, cache.peek("key2"));
+    assertThat(cache.describeStats(), containsString("entries 0"));
+  }
+
+  @Test
+  public void testOffHeapCacheLoadsConcurrentLookupsOnce() throws Exception {
+    Cache<String, Object> cache = Caches.forMaximumBytes(MB, MB);
+    CountDownLatch loading = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    AtomicInteger loads = new AtomicInteger();
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      Future<Object> first =
+          executor.submit(
+              () ->
+                  cache.computeIfAbsent(
+                      "key",
+                      (unused) -> {
+                        loads.incrementAndGet();
+                        loading.countDown();
+                        try {
+                          release.await();
+                        } catch (InterruptedException e) {
+                          throw new RuntimeException(e);
+                        }
+                        return "value";
+                      }));
+      loading.await();
+      Future<Object> second =
+          executor.submit(
+              () ->
+                  cache.computeIfAbsent(
+                      "key",
+                      (unused) -> {
+                        loads.incrementAndGet();
+                        return "other";
+                      }));
+      Thread.sleep(50);
+      release.countDown();
+      assertEquals("value", first.get());
+      assertEquals("value", second.get());
+      assertEquals(1, loads.get());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testOffHeapCacheDoesNotOverwriteConcurrentPutWithLoadedValue() throws Exception {
+    for (Object newer : new Object[] {new EncodableString("newer"), "newer"}) {
+      Cache<String, Object> cache = Caches.forMaximumBytes(MB, MB);
+      CountDownLatch moving = new CountDownLatch(1);
+      CountDownLatch release = new CountDownLatch(1);
+      // Blocks while the loaded value is encoded to be moved off-heap.
+      EncodableString loaded =
+          new EncodableString("loaded") {
+            @Override
+            public void encode(OutputStream outStream) throws IOException {
+              moving.countDown();
+              try {
+                release.await();
+              } catch (InterruptedException e) {
+                throw new IOException(e);
+              }
+              super.encode(outStream);
+            }
+          };
+      ExecutorService executor = Executors.newSingleThreadExecutor();
+      try {
+        Future<Object> computed =
+            executor.submit(() -> cache.computeIfAbsent("key", (unused) -> loaded));
+        moving.await();
+        cache.put("key", newer);
+        release.countDown();
+        assertSame(loaded, computed.get());
+        assertEquals(newer, cache.peek("key"));
+      } finally {
+        executor.shutdownNow();
+      }
+    }
+  }
+
+  @Test
+  public void testOffHeapClearableCacheClearing() {
+    Cache<String, Object> parent = Caches.forMaximumBytes(MB, MB);
+    ClearableCache<String, Object> cache = new ClearableCache<>(parent);
+    cache.put("tracked", new EncodableString("value"));
+    cache.clear();
+    assertNull(parent.peek("tracked"));
+  }
+
   private void testCache(Cache<String, String> cache) {
     assertNull(cache.peek("key1"));
 
@@ -127,6 +127,7 @@ import org.apache.beam.sdk.values.KV;
 import org.apache.beam.sdk.values.PCollection;
 import org.apache.beam.sdk.values.PCollectionTuple;
 import org.apache.beam.sdk.values.PCollectionView;
+import org.apache.beam.sdk.values.TimestampedValue;
 import org.apache.beam.sdk.values.TupleTag;
 import org.apache.beam.sdk.values.TupleTagList;
 import org.apache.beam.sdk.values.WindowedValue;
@@ -2700,6 +2701,65 @@ public class FnApiDoFnRunnerTest implements Serializable {
                       PeriodFormat.getDefault().print(Duration.ZERO.toPeriod())))));
     }
 
+    /** A {@link DoFn} whose {@link DoFn.ProcessBatch} method fails. */
+    private static class ThrowingBatchDoFn extends DoFn<String, String> {
+      @ProcessElement
+      public void processElement(ProcessContext context) {
+        context.output(context.element());
+      }
+
+      @ProcessBatch(maxBatchSize = 2)
+      public List<TimestampedValue<String>> processBatch(
+          List<TimestampedValue<String>> elements, BoundedWindow window) {
+        throw new IllegalStateException("Expected exception");
+      }
+    }
+
+    @Test
+    public void testProcessBatchExceptionsWrappedAsUserCodeException() throws Exception {
+      Pipeline p = Pipeline.create();
+      PCollection<String> valuePCollection = p.apply(Create.of("0", "1"));
+      PCollection<String> outputPCollection =
+          valuePCollection.apply(TEST_TRANSFORM_ID, ParDo.of(new ThrowingBatchDoFn()));
+
+      SdkComponents sdkComponents = SdkComponents.create(p.getOptions());
+      RunnerApi.Pipeline pProto = PipelineTranslation.toProto(p, sdkComponents);
+      String inputPCollectionId = sdkComponents.registerPCollection(valuePCollection);
+      String outputPCollectionId = sdkComponents.registerPCollection(outputPCollection);
+      RunnerApi.PTransform pTransform =
+          pProto
+              .getComponents()
+              .getTransformsOrThrow(
+                  pProto
+                      .getComponents()
+                      .getTransformsOrThrow(TEST_TRANSFORM_ID)
+                      .getSubtransforms(0));
+
+      PTransformRunnerFactoryTestContext context =
+          PTransformRunnerFactoryTestContext.builder(TEST_TRANSFORM_ID, pTransform)
+              .processBundleInstructionId("57")
+              .components(
+                  RunnerApi.Components.newBuilder()
+                      .putAllCoders(pProto.getComponents().getCodersMap())
+                      .putAllEnvironments(Collections.emptyMap())
+                      .putAllWindowingStrategies(pProto.getComponents().getWindowingStrategiesMap())
+                      .putAllPcollections(pProto.getComponentsOrBuilder().getPcollectionsMap())
+                      .build())
+              .build();
+      List<WindowedValue<String>> mainOutputValues = new ArrayList<>();
+      context.addPCollectionConsumer(
+          outputPCollectionId, (FnDataReceiver) new OutputFnDataReceiver(mainOutputValues));
+
+      new FnApiDoFnRunner.Factory<>().addRunnerForPTransform(context);
+
+      FnDataReceiver<WindowedValue<?>> mainInput =
+          context.getPCollectionConsumer(inputPCollectionId);
+      mainInput.accept(valueInGlobalWindow("0"));
+      UserCodeException exception =
+          assertThrows(UserCodeException.class, () -> mainInput.accept(valueInGlobalWindow("1")));
+      assertThat(exception.getCause(), instanceOf(IllegalStateException.class));
+    }
+
     @Test
     public void testDoFnSkewAllowed() throws Exception {
       Pipeline p = Pipeline.create();
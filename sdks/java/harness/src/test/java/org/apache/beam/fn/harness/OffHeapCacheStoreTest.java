@@ -0,0 +1,175 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.fn.harness;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import org.apache.beam.fn.harness.Cache.Decoder;
+import org.apache.beam.fn.harness.Cache.Encodable;
+import org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.base.Strings;
+import org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.io.ByteStreams;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link OffHeapCacheStore}. */
+@RunWith(JUnit4.class)
+public class OffHeapCacheStoreTest {
+  private static final int PAGE_SIZE = OffHeapCacheStore.PAGE_SIZE;
+
+  /** A string which is stored in its UTF-8 encoded form. */
+  static class EncodableString implements Encodable<EncodableString> {
+    private final String value;
+
+    EncodableString(String value) {
+      this.value = value;
+    }
+
+    @Override
+    public void encode(OutputStream outStream) throws IOException {
+      outStream.write(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public Decoder<EncodableString> getDecoder() {
+      return inStream ->
+          new EncodableString(
+              new String(ByteStreams.toByteArray(inStream), StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return o instanceof EncodableString && value.equals(((EncodableString) o).value);
+    }
+
+    @Override
+    public int hashCode() {
+      return value.hashCode();
+    }
+  }
+
+  private static EncodableString ofSize(char c, int size) {
+    return new EncodableString(Strings.repeat(Character.toString(c), size));
+  }
+
+  @Test
+  public void testPutGetAndRemove() {
+    OffHeapCacheStore store = new OffHeapCacheStore(16 * PAGE_SIZE);
+    assertNull(store.get("key"));
+
+    EncodableString value = ofSize('a', 3 * PAGE_SIZE + 1);
+    assertTrue(store.put("key", value));
+    assertEquals(value, store.get("key"));
+    assertEquals(4 * PAGE_SIZE, store.getWeightInBytes());
+
+    // Replacing the value releases the pages of the previous value.
+    assertTrue(store.put("key", ofSize('b', 10)));
+    assertEquals(ofSize('b', 10), store.get("key"));
+    assertEquals(PAGE_SIZE, store.getWeightInBytes());
+
+    store.remove("key");
+    assertNull(store.get("key"));
+    assertEquals(0, store.getWeightInBytes());
+  }
+
+  @Test
+  public void testPutIfAbsentAndConditionalRemove() {
+    OffHeapCacheStore store = new OffHeapCacheStore(16 * PAGE_SIZE);
+    EncodableString first = ofSize('a', 10);
+    EncodableString second = ofSize('b', 10);
+    assertTrue(store.putIfAbsent("key", first));
+    assertFalse(store.putIfAbsent("key", second));
+    assertEquals(first, store.get("key"));
+
+    // Only the value that was put is removed, not an equal or a newer one.
+    store.remove("key", ofSize('a', 10));
+    assertEquals(first, store.get("key"));
+    store.put("key", second);
+    store.remove("key", first);
+    assertEquals(second, store.get("key"));
+    store.remove("key", second);
+    assertNull(store.get("key"));
+    assertEquals(0, store.getWeightInBytes());
+  }
+
+  @Test
+  public void testValuesAreDecodedFromTheStoredBytes() {
+    OffHeapCacheStore store = new OffHeapCacheStore(16 * PAGE_SIZE);
+    EncodableString value = ofSize('a', 2 * PAGE_SIZE);
+    store.put("key", value);
+    // Once the inserted value is no longer referenced the store decodes it from the stored bytes.
+    value = null;
+    System.gc();
+    assertEquals(ofSize('a', 2 * PAGE_SIZE), store.get("key"));
+  }
+
+  @Test
+  public void testEvictsLeastRecentlyUsed() {
+    OffHeapCacheStore store = new OffHeapCacheStore(4 * PAGE_SIZE);
+    store.put("a", ofSize('a', 2 * PAGE_SIZE));
+    store.put("b", ofSize('b', 2 * PAGE_SIZE));
+    store.get("a");
+    assertTrue(store.put("c", ofSize('c', PAGE_SIZE)));
+
+    assertNull(store.get("b"));
+    assertEquals(ofSize('a', 2 * PAGE_SIZE), store.get("a"));
+    assertEquals(ofSize('c', PAGE_SIZE), store.get("c"));
+    assertThat(store.describeStats(), containsString("evictions 1"));
+  }
+
+  @Test
+  public void testDoesNotAdmitValuesUsedLessFrequentlyThanVictims() {
+    OffHeapCacheStore store = new OffHeapCacheStore(2 * PAGE_SIZE);
+    store.put("frequent", ofSize('a', 2 * PAGE_SIZE));
+    for (int i = 0; i < 5; ++i) {
+      store.get("frequent");
+    }
+
+    assertFalse(store.put("rare", ofSize('b', PAGE_SIZE)));
+    assertNull(store.get("rare"));
+    assertEquals(ofSize('a', 2 * PAGE_SIZE), store.get("frequent"));
+    assertThat(store.describeStats(), containsString("rejections 1"));
+  }
+
+  @Test
+  public void testDoesNotAdmitValuesLargerThanTheStore() {
+    OffHeapCacheStore store = new OffHeapCacheStore(2 * PAGE_SIZE);
+    assertFalse(store.put("key", ofSize('a', 2 * PAGE_SIZE + 1)));
+    assertNull(store.get("key"));
+    assertEquals(0, store.getWeightInBytes());
+  }
+
+  @Test
+  public void testDescribeStats() {
+    OffHeapCacheStore store = new OffHeapCacheStore(1 << 20);
+    store.put("key", ofSize('a', 10));
+    store.get("key");
+    store.get("missing");
+    assertThat(store.describeStats(), containsString("off-heap used/max 0/1 MB"));
+    assertThat(store.describeStats(), containsString("lookups 2"));
+    assertThat(store.describeStats(), containsString("entries 1"));
+  }
+}
@@ -0,0 +1,208 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.fn.harness;
+
+import static org.apache.beam.sdk.values.WindowedValues.valueInGlobalWindow;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.beam.sdk.coders.BigEndianIntegerCoder;
+import org.apache.beam.sdk.coders.DoubleCoder;
+import org.apache.beam.sdk.coders.StringUtf8Coder;
+import org.apache.beam.sdk.coders.VarIntCoder;
+import org.apache.beam.sdk.coders.VarLongCoder;
+import org.apache.beam.sdk.options.PipelineOptionsFactory;
+import org.apache.beam.sdk.transforms.Combine.BinaryCombineLongFn;
+import org.apache.beam.sdk.transforms.Combine.CombineFn;
+import org.apache.beam.sdk.transforms.Count;
+import org.apache.beam.sdk.transforms.Max;
+import org.apache.beam.sdk.transforms.Mean;
+import org.apache.beam.sdk.transforms.Min;
+import org.apache.beam.sdk.transforms.Sum;
+import org.apache.beam.sdk.values.KV;
+import org.apache.beam.sdk.values.WindowedValue;
+import org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.collect.ImmutableMap;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link PrimitivePrecombineGroupingTable}. */
+@RunWith(JUnit4.class)
+public class PrimitivePrecombineGroupingTableTest {
+
+  @Test
+  public void testIsSupported() {
+    assertTrue(
+        PrimitivePrecombineGroupingTable.isSupported(Sum.ofLongs(), VarLongCoder.of(), true));
+    assertTrue(
+        PrimitivePrecombineGroupingTable.isSupported(
+            Min.ofIntegers(), BigEndianIntegerCoder.of(), true));
+    assertTrue(
+        PrimitivePrecombineGroupingTable.isSupported(Max.ofDoubles(), DoubleCoder.of(), true));
+    assertTrue(
+        PrimitivePrecombineGroupingTable.isSupported(Count.combineFn(), VarIntCoder.of(), true));
+
+    assertFalse(
+        PrimitivePrecombineGroupingTable.isSupported(Sum.ofLongs(), VarLongCoder.of(), false));
+    assertFalse(
+        PrimitivePrecombineGroupingTable.isSupported(Sum.ofLongs(), StringUtf8Coder.of(), true));
+    assertFalse(PrimitivePrecombineGroupingTable.isSupported(Mean.of(), VarLongCoder.of(), true));
+  }
+
+  @Test
+  public void testSubclassesOverridingCombineFnMethodsAreNotSupported() {
+    assertFalse(
+        PrimitivePrecombineGroupingTable.isSupported(
+            new CappedSumLongFn(), VarLongCoder.of(), true));
+  }
+
+  @Test
+  public void testCombinesValuesPerKey() throws Exception {
+    GroupingTable<Long, Long, long[]> table =
+        PrimitivePrecombineGroupingTable.combining(
+            Caches.eternal(), Sum.ofLongs(), VarLongCoder.of());
+    List<WindowedValue<KV<Long, long[]>>> output = new ArrayList<>();
+
+    table.put(valueInGlobalWindow(KV.of(1L, 1L)), output::add);
+    table.put(valueInGlobalWindow(KV.of(-2L, 9L)), output::add);
+    table.put(valueInGlobalWindow(KV.of(1L, 2L)), output::add);
+    table.put(valueInGlobalWindow(KV.of(-2L, 2L)), output::add);
+    table.put(valueInGlobalWindow(KV.of(1L, 4L)), output::add);
+    assertTrue(output.isEmpty());
+    table.flush(output::add);
+
+    assertEquals(ImmutableMap.of(1L, 7L, -2L, 11L), sums(output));
+    assertTrue(output.stream().allMatch(value -> value.getWindows().size() == 1));
+  }
+
+  @Test
+  @SuppressWarnings({"rawtypes", "unchecked"}) // The accumulator type of Count is not public.
+  public void testCountsAndDoubleKeys() throws Exception {
+    CombineFn<String, long[], Long> countFn = (CombineFn) Count.<String>combineFn();
+    GroupingTable<Double, String, long[]> table =
+        PrimitivePrecombineGroupingTable.combining(Caches.eternal(), countFn, DoubleCoder.of());
+    List<WindowedValue<KV<Double, long[]>>> output = new ArrayList<>();
+
+    table.put(valueInGlobalWindow(KV.of(0.5, "A")), output::add);
+    table.put(valueInGlobalWindow(KV.of(Double.NaN, "B")), output::add);
+    table.put(valueInGlobalWindow(KV.of(0.5, "C")), output::add);
+    table.put(valueInGlobalWindow(KV.of(Double.NaN, "D")), output::add);
+    table.put(valueInGlobalWindow(KV.of(-0.0, "E")), output::add);
+    table.flush(output::add);
+
+    assertEquals(ImmutableMap.of(0.5, 2L, Double.NaN, 2L, -0.0, 1L), sums(output));
+  }
+
+  @Test
+  public void testIntegerAndDoubleAccumulators() throws Exception {
+    GroupingTable<Integer, Integer, int[]> maxTable =
+        PrimitivePrecombineGroupingTable.combining(
+            Caches.eternal(), Max.ofIntegers(), VarIntCoder.of());
+    List<WindowedValue<KV<Integer, int[]>>> maxOutput = new ArrayList<>();
+    maxTable.put(valueInGlobalWindow(KV.of(1, -5)), maxOutput::add);
+    maxTable.put(valueInGlobalWindow(KV.of(1, -3)), maxOutput::add);
+    maxTable.flush(maxOutput::add);
+    assertEquals(1, maxOutput.size());
+    assertEquals(-3, maxOutput.get(0).getValue().getValue()[0]);
+
+    GroupingTable<Integer, Double, double[]> sumTable =
+        PrimitivePrecombineGroupingTable.combining(
+            Caches.eternal(), Sum.ofDoubles(), VarIntCoder.of());
+    List<WindowedValue<KV<Integer, double[]>>> sumOutput = new ArrayList<>();
+    sumTable.put(valueInGlobalWindow(KV.of(1, 0.25)), sumOutput::add);
+    sumTable.put(valueInGlobalWindow(KV.of(1, 0.5)), sumOutput::add);
+    sumTable.flush(sumOutput::add);
+    assertEquals(1, sumOutput.size());
+    assertEquals(0.75, sumOutput.get(0).getValue().getValue()[0], 0.0);
+  }
+
+  @Test
+  public void testOutputsWhenFull() throws Exception {
+    GroupingTable<Long, Long, long[]> table =
+        PrimitivePrecombineGroupingTable.combining(
+            Caches.eternal(), Sum.ofLongs(), VarLongCoder.of());
+    List<WindowedValue<KV<Long, long[]>>> output = new ArrayList<>();
+
+    int maxKeys = PrimitivePrecombineGroupingTable.MAX_CAPACITY / 2;
+    for (long key = 0; key <= maxKeys; ++key) {
+      table.put(valueInGlobalWindow(KV.of(key, 1L)), output::add);
+    }
+    assertEquals(maxKeys + 1, output.size());
+    table.put(valueInGlobalWindow(KV.of(0L, 1L)), output::add);
+    table.flush(output::add);
+    assertEquals(maxKeys + 2, output.size());
+  }
+
+  @Test
+  public void testOutputMatchesGenericTable() throws Exception {
+    List<WindowedValue<KV<Long, long[]>>> primitiveOutput = new ArrayList<>();
+    List<WindowedValue<KV<Long, long[]>>> genericOutput = new ArrayList<>();
+    GroupingTable<Long, Long, long[]> primitive =
+        PrimitivePrecombineGroupingTable.combining(
+            Caches.eternal(), Sum.ofLongs(), VarLongCoder.of());
+    GroupingTable<Long, Long, long[]> generic =
+        PrecombineGroupingTable.combining(
+            PipelineOptionsFactory.create(),
+            Caches.eternal(),
+            Sum.ofLongs(),
+            VarLongCoder.of(),
+            true);
+    for (long i = 0; i < 10_000; ++i) {
+      WindowedValue<KV<Long, Long>> value = valueInGlobalWindow(KV.of(i % 1000, i));
+      primitive.put(value, primitiveOutput::add);
+      generic.put(value, genericOutput::add);
+    }
+    primitive.flush(primitiveOutput::add);
+    generic.flush(genericOutput::add);
+    assertEquals(sums(genericOutput), sums(primitiveOutput));
+    assertEquals(genericOutput.get(0).getWindows(), primitiveOutput.get(0).getWindows());
+  }
+
+  /** A sum whose accumulator never exceeds 10, which the table cannot see through apply(). */
+  private static class CappedSumLongFn extends BinaryCombineLongFn {
+    @Override
+    public long apply(long left, long right) {
+      return left + right;
+    }
+
+    @Override
+    public long identity() {
+      return 0;
+    }
+
+    @Override
+    public long[] addInput(long[] accumulator, Long input) {
+      accumulator[0] = Math.min(10, accumulator[0] + input);
+      return accumulator;
+    }
+  }
+
+  /** Returns the sum of the output accumulators per key. */
+  private static <K> Map<K, Long> sums(List<WindowedValue<KV<K, long[]>>> output) {
+    Map<K, Long> sums = new HashMap<>();
+    for (WindowedValue<KV<K, long[]>> value : output) {
+      sums.merge(value.getValue().getKey(), value.getValue().getValue()[0], Long::sum);
+    }
+    return sums;
+  }
+}
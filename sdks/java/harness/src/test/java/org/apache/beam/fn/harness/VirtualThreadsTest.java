@@ -0,0 +1,81 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.fn.harness;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeFalse;
+import static org.junit.Assume.assumeTrue;
+
+import java.util.concurrent.ExecutorService;
+import org.apache.beam.sdk.options.PipelineOptions;
+import org.apache.beam.sdk.options.PipelineOptionsFactory;
+import org.apache.beam.sdk.options.SdkHarnessOptions;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link VirtualThreads}. */
+@RunWith(JUnit4.class)
+public class VirtualThreadsTest {
+  private static final boolean JAVA_21 = javaFeatureVersion() >= 21;
+
+  // Runtime.version() is not available in Java 8, which reports its specification version as 1.8.
+  private static int javaFeatureVersion() {
+    String version = System.getProperty("java.specification.version", "1.8");
+    if (version.startsWith("1.")) {
+      version = version.substring(2);
+    }
+    return Integer.parseInt(version);
+  }
+
+  @Test
+  public void testSupportedFromJava21() {
+    assertEquals(JAVA_21, VirtualThreads.isSupported());
+  }
+
+  @Test
+  public void testIsEnabled() {
+    PipelineOptions options = PipelineOptionsFactory.create();
+    assertFalse(VirtualThreads.isEnabled(options));
+    options.as(SdkHarnessOptions.class).setEnableVirtualThreads(true);
+    assertEquals(JAVA_21, VirtualThreads.isEnabled(options));
+  }
+
+  @Test
+  public void testThreadPerTaskExecutorUnsupportedBeforeJava21() {
+    assumeFalse(JAVA_21);
+    assertThrows(
+        UnsupportedOperationException.class,
+        () -> VirtualThreads.newThreadPerTaskExecutor("test-"));
+  }
+
+  @Test
+  public void testThreadPerTaskExecutor() throws Exception {
+    assumeTrue(JAVA_21);
+    ExecutorService executor = VirtualThreads.newThreadPerTaskExecutor("test-");
+    try {
+      String name = executor.submit(() -> Thread.currentThread().getName()).get();
+      assertTrue(name, name.startsWith("test-"));
+    } finally {
+      executor.shutdown();
+    }
+  }
+}
@@ -0,0 +1,509 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.fn.harness.control;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import org.apache.beam.fn.harness.control.ExecutionStateSampler.ExecutionStateTracker;
+import org.apache.beam.fn.harness.control.ProcessBundleHandler.BundleProcessor;
+import org.apache.beam.fn.harness.data.BeamFnDataClient;
+import org.apache.beam.fn.harness.data.PTransformFunctionRegistry;
+import org.apache.beam.model.fnexecution.v1.BeamFnApi.Elements;
+import org.apache.beam.model.fnexecution.v1.BeamFnApi.InstructionRequest;
+import org.apache.beam.model.fnexecution.v1.BeamFnApi.ProcessBundleDescriptor;
+import org.apache.beam.model.fnexecution.v1.BeamFnApi.ProcessBundleRequest;
+import org.apache.beam.model.pipeline.v1.Endpoints.ApiServiceDescriptor;
+import org.apache.beam.model.pipeline.v1.MetricsApi.MonitoringInfo;
+import org.apache.beam.model.pipeline.v1.RunnerApi.FunctionSpec;
+import org.apache.beam.model.pipeline.v1.RunnerApi.PTransform;
+import org.apache.beam.model.pipeline.v1.RunnerApi.ParDoPayload;
+import org.apache.beam.model.pipeline.v1.RunnerApi.StateSpec;
+import org.apache.beam.runners.core.metrics.DistributionData;
+import org.apache.beam.runners.core.metrics.MonitoringInfoConstants.TypeUrns;
+import org.apache.beam.runners.core.metrics.MonitoringInfoEncodings;
+import org.apache.beam.runners.core.metrics.ShortIdMap;
+import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.coders.StringUtf8Coder;
+import org.apache.beam.sdk.fn.data.BeamFnDataInboundObserver;
+import org.apache.beam.sdk.fn.data.BeamFnDataOutboundAggregator;
+import org.apache.beam.sdk.fn.data.CloseableFnDataReceiver;
+import org.apache.beam.sdk.fn.data.DataEndpoint;
+import org.apache.beam.sdk.fn.data.FnDataReceiver;
+import org.apache.beam.sdk.options.PipelineOptions;
+import org.apache.beam.sdk.options.PipelineOptionsFactory;
+import org.apache.beam.sdk.util.ByteStringOutputStream;
+import org.apache.beam.sdk.util.construction.PTransformTranslation;
+import org.apache.beam.vendor.grpc.v1p69p0.com.google.protobuf.ByteString;
+import org.apache.beam.vendor.grpc.v1p69p0.io.grpc.stub.StreamObserver;
+import org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.collect.ImmutableMap;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link ParallelBundleExecutor}. */
+@RunWith(JUnit4.class)
+public class ParallelBundleExecutorTest {
+  private static final String DATA_INPUT_URN = "beam:runner:source:v1";
+  private static final String DATA_OUTPUT_URN = "beam:runner:sink:v1";
+  private static final String INSTRUCTION_ID = "instruction";
+  private static final String INPUT_ID = "read";
+  private static final String OUTPUT_ID = "write";
+  private static final Coder<String> CODER = StringUtf8Coder.of();
+  private static final ApiServiceDescriptor DATA_ENDPOINT =
+      ApiServiceDescriptor.newBuilder().setUrl("data").build();
+
+  private static ParallelBundleExecutor create(String... experiments) {
+    PipelineOptions options =
+        PipelineOptionsFactory.fromArgs("--experiments=" + String.join(",", experiments)).create();
+    return ParallelBundleExecutor.create(
+        options,
+        mock(BeamFnDataClient.class),
+        new ShortIdMap(),
+        (descriptorId, request, dataClient) -> {
+          throw new UnsupportedOperationException();
+        },
+        bundleProcessor -> {
+          throw new UnsupportedOperationException();
+        });
+  }
+
+  private static PTransform transform(String urn, ByteString payload) {
+    return PTransform.newBuilder()
+        .setSpec(FunctionSpec.newBuilder().setUrn(urn).setPayload(payload))
+        .build();
+  }
+
+  private static ProcessBundleDescriptor descriptor(PTransform parDo) {
+    return ProcessBundleDescriptor.newBuilder()
+        .putTransforms("read", transform(DATA_INPUT_URN, ByteString.EMPTY))
+        .putTransforms("parDo", parDo)
+        .putTransforms("write", transform(DATA_OUTPUT_URN, ByteString.EMPTY))
+        .build();
+  }
+
+  @Test
+  public void testDisabledByDefault() {
+    assertNull(create("other"));
+    assertNull(create(ParallelBundleExecutor.INTRA_BUNDLE_PARALLELISM + "=1"));
+    assertNotNull(create(ParallelBundleExecutor.INTRA_BUNDLE_PARALLELISM + "=4"));
+  }
+
+  @Test
+  public void testOnlyStatelessBundlesAreProcessedInParallel() {
+    ParallelBundleExecutor executor =
+        create(ParallelBundleExecutor.INTRA_BUNDLE_PARALLELISM + "=4");
+    PTransform stateless =
+        transform(
+            PTransformTranslation.PAR_DO_TRANSFORM_URN,
+            ParDoPayload.getDefaultInstance().toByteString());
+    assertTrue(executor.canProcessInParallel(descriptor(stateless)));
+
+    PTransform stateful =
+        transform(
+            PTransformTranslation.PAR_DO_TRANSFORM_URN,
+            ParDoPayload.newBuilder()
+                .putStateSpecs("state", StateSpec.getDefaultInstance())
+                .build()
+                .toByteString());
+    assertFalse(executor.canProcessInParallel(descriptor(stateful)));
+
+    PTransform splittable =
+        transform(
+            PTransformTranslation.PAR_DO_TRANSFORM_URN,
+            ParDoPayload.newBuilder().setRestrictionCoderId("coder").build().toByteString());
+    assertFalse(executor.canProcessInParallel(descriptor(splittable)));
+
+    PTransform groupByKey =
+        transform(PTransformTranslation.GROUP_BY_KEY_TRANSFORM_URN, ByteString.EMPTY);
+    assertFalse(executor.canProcessInParallel(descriptor(groupByKey)));
+
+    ProcessBundleDescriptor twoInputs =
+        descriptor(stateless).toBuilder()
+            .putTransforms("read2", transform(DATA_INPUT_URN, ByteString.EMPTY))
+            .build();
+    assertFalse(executor.canProcessInParallel(twoInputs));
+  }
+
+  /**
+   * Runs bundles on workers whose only transform outputs each input element, sleeping for elements
+   * starting with "slow" and failing for "fail". Each worker counts the elements it processed in
+   * its final monitoring data.
+   */
+  private static class Harness {
+    private final ShortIdMap shortIds = new ShortIdMap();
+    private final String counterId =
+        shortIds.getOrCreateShortId(
+            MonitoringInfo.newBuilder()
+                .setUrn("beam:metric:user:sum_int64:v1")
+                .setType(TypeUrns.SUM_INT64_TYPE)
+                .putLabels("NAME", "elements")
+                .build());
+    private final BeamFnDataClient dataClient = mock(BeamFnDataClient.class);
+    private final ExecutorService feeder = Executors.newCachedThreadPool();
+    private final Map<BundleProcessor, AtomicLong> elementCounts = new ConcurrentHashMap<>();
+    private final AtomicInteger createdWorkers = new AtomicInteger();
+    private final AtomicInteger resetWorkers = new AtomicInteger();
+    private final List<BundleProcessor> discardedWorkers = new CopyOnWriteArrayList<>();
+    private final ParallelBundleExecutor executor;
+
+    private Harness(String... experiments) {
+      PipelineOptions options =
+          PipelineOptionsFactory.fromArgs("--experiments=" + String.join(",", experiments))
+              .create();
+      executor =
+          ParallelBundleExecutor.create(
+              options,
+              dataClient,
+              shortIds,
+              (descriptorId, request, workerDataClient) -> createWorker(workerDataClient),
+              processor ->
+                  ImmutableMap.of(
+                      counterId,
+                      MonitoringInfoEncodings.encodeInt64Counter(
+                          elementCounts.get(processor).get())));
+    }
+
+    private BundleProcessor createWorker(BeamFnDataClient workerDataClient) {
+      createdWorkers.incrementAndGet();
+      BundleProcessor processor = mock(BundleProcessor.class);
+      AtomicLong elementCount = new AtomicLong();
+      elementCounts.put(processor, elementCount);
+
+      BeamFnDataOutboundAggregator aggregator =
+          workerDataClient.createOutboundAggregator(DATA_ENDPOINT, () -> "unused", false);
+      FnDataReceiver<String> output = aggregator.registerOutputDataLocation(OUTPUT_ID, CODER);
+      aggregator.start();
+      BeamFnDataInboundObserver inboundObserver =
+          BeamFnDataInboundObserver.forConsumers(
+              Collections.singletonList(
+                  DataEndpoint.create(
+                      INPUT_ID,
+                      CODER,
+                      value -> {
+                        if (value.equals("fail")) {
+                          throw new IllegalStateException("Failed to process " + value);
+                        } else if (value.startsWith("slow")) {
+                          Thread.sleep(20);
+                        }
+                        elementCount.incrementAndGet();
+                        output.accept(value);
+                      })),
+              Collections.emptyList());
+      Lock progressRequestLock = new ReentrantLock();
+
+      when(processor.getStateTracker()).thenReturn(mock(ExecutionStateTracker.class));
+      when(processor.getStartFunctionRegistry()).thenReturn(mock(PTransformFunctionRegistry.class));
+      when(processor.getFinishFunctionRegistry())
+          .thenReturn(mock(PTransformFunctionRegistry.class));
+      when(processor.getInboundObserver()).thenReturn(inboundObserver);
+      when(processor.getOutboundAggregators())
+          .thenReturn(ImmutableMap.of(DATA_ENDPOINT, aggregator));
+      when(processor.getProgressRequestLock()).thenReturn(progressRequestLock);
+      try {
+        doAnswer(
+                invocation -> {
+                  resetWorkers.incrementAndGet();
+                  elementCount.set(0);
+                  progressRequestLock.unlock();
+                  return null;
+                })
+            .when(processor)
+            .reset();
+      } catch (Exception e) {
+        throw new RuntimeException(e);
+      }
+      doAnswer(
+              invocation -> {
+                discardedWorkers.add(processor);
+                return null;
+              })
+          .when(processor)
+          .discard();
+      return processor;
+    }
+
+    /**
+     * Processes a bundle whose inbound data consists of one chunk for each list of values, and
+     * returns the outputs sent through the coordinator. If {@code closeEarly} is set, the inbound
+     * data is closed instead of being terminated.
+     */
+    private List<String> process(
+        List<ParallelBundleExecutor.Result> results,
+        boolean closeEarly,
+        List<List<String>> chunks)
+        throws Exception {
+      List<Elements> sent = new CopyOnWriteArrayList<>();
+      BundleProcessor coordinator = mock(BundleProcessor.class);
+      BeamFnDataOutboundAggregator aggregator =
+          new BeamFnDataOutboundAggregator(
+              PipelineOptionsFactory.create(),
+              () -> "unused",
+              new StreamObserver<Elements>() {
+                @Override
+                public void onNext(Elements elements) {
+                  sent.add(elements);
+                }
+
+                @Override
+                public void onError(Throwable t) {}
+
+                @Override
+                public void onCompleted() {}
+              },
+              false);
+      when(coordinator.getInboundEndpointApiServiceDescriptors())
+          .thenReturn(Collections.singletonList(DATA_ENDPOINT));
+      when(coordinator.getOutboundAggregators())
+          .thenReturn(ImmutableMap.of(DATA_ENDPOINT, aggregator));
+
+      doAnswer(
+              invocation -> {
+                CloseableFnDataReceiver<Elements> receiver = invocation.getArgument(2);
+                feeder.submit(
+                    () -> {
+                      for (List<String> chunk : chunks) {
+                        receiver.accept(elements(chunk, false));
+                      }
+                      if (closeEarly) {
+                        receiver.close();
+                      } else {
+                        receiver.accept(elements(Collections.emptyList(), true));
+                      }
+                      return null;
+                    });
+                return null;
+              })
+          .when(dataClient)
+          .registerReceiver(eq(INSTRUCTION_ID), any(), any());
+
+      InstructionRequest request =
+          InstructionRequest.newBuilder()
+              .setInstructionId(INSTRUCTION_ID)
+              .setProcessBundle(
+                  ProcessBundleRequest.newBuilder().setProcessBundleDescriptorId("descriptor"))
+              .build();
+      results.add(executor.process(request, coordinator));
+
+      List<String> outputs = new ArrayList<>();
+      for (Elements elements : sent) {
+        for (Elements.Data data : elements.getDataList()) {
+          assertEquals(OUTPUT_ID, data.getTransformId());
+          InputStream inputStream = data.getData().newInput();
+          while (inputStream.available() > 0) {
+            outputs.add(CODER.decode(inputStream));
+          }
+        }
+      }
+      return outputs;
+    }
+
+    private long mergedElementCount(ParallelBundleExecutor.Result result) {
+      Map<String, ByteString> monitoringData = new HashMap<>();
+      result.mergeMonitoringDataInto(monitoringData);
+      return MonitoringInfoEncodings.decodeInt64Counter(monitoringData.get(counterId));
+    }
+
+    private void shutdown() {
+      executor.shutdown();
+      feeder.shutdownNow();
+    }
+  }
+
+  private static Elements elements(List<String> values, boolean isLast) throws IOException {
+    ByteStringOutputStream output = new ByteStringOutputStream();
+    for (String value : values) {
+      CODER.encode(value, output);
+    }
+    return Elements.newBuilder()
+        .addData(
+            Elements.Data.newBuilder()
+                .setInstructionId(INSTRUCTION_ID)
+                .setTransformId(INPUT_ID)
+                .setData(output.toByteString())
+                .setIsLast(isLast))
+        .build();
+  }
+
+  private static List<List<String>> chunks(int count, int slowChunks) {
+    List<List<String>> chunks = new ArrayList<>();
+    for (int i = 0; i < count; ++i) {
+      String prefix = i < slowChunks ? "slow" : "value";
+      chunks.add(Arrays.asList(prefix + i + "a", prefix + i + "b"));
+    }
+    return chunks;
+  }
+
+  @Test
+  public void testProcessPublishesChunksInOrder() throws Exception {
+    Harness harness = new Harness(ParallelBundleExecutor.INTRA_BUNDLE_PARALLELISM + "=4");
+    try {
+      // The first chunks are slow, so the workers finish the later chunks first.
+      List<List<String>> chunks = chunks(12, 2);
+      List<ParallelBundleExecutor.Result> results = new ArrayList<>();
+      List<String> outputs = harness.process(results, false, chunks);
+
+      List<String> expected = new ArrayList<>();
+      chunks.forEach(expected::addAll);
+      assertEquals(expected, outputs);
+      assertEquals(expected.size(), harness.mergedElementCount(results.get(0)));
+      verify(harness.dataClient)
+          .unregisterReceiver(INSTRUCTION_ID, Collections.singletonList(DATA_ENDPOINT));
+    } finally {
+      harness.shutdown();
+    }
+  }
+
+  @Test
+  public void testProcessUnordered() throws Exception {
+    Harness harness =
+        new Harness(
+            ParallelBundleExecutor.INTRA_BUNDLE_PARALLELISM + "=4",
+            ParallelBundleExecutor.INTRA_BUNDLE_PARALLELISM_UNORDERED);
+    try {
+      List<List<String>> chunks = chunks(12, 2);
+      List<ParallelBundleExecutor.Result> results = new ArrayList<>();
+      List<String> outputs = harness.process(results, false, chunks);
+
+      List<String> expected = new ArrayList<>();
+      chunks.forEach(expected::addAll);
+      assertThat(outputs, containsInAnyOrder(expected.toArray()));
+      assertEquals(expected.size(), harness.mergedElementCount(results.get(0)));
+    } finally {
+      harness.shutdown();
+    }
+  }
+
+  @Test
+  public void testProcessReusesAndResetsWorkers() throws Exception {
+    Harness harness = new Harness(ParallelBundleExecutor.INTRA_BUNDLE_PARALLELISM + "=2");
+    try {
+      List<ParallelBundleExecutor.Result> results = new ArrayList<>();
+      for (int i = 0; i < 3; ++i) {
+        List<List<String>> chunks = chunks(6, 0);
+        List<String> expected = new ArrayList<>();
+        chunks.forEach(expected::addAll);
+        assertEquals(expected, harness.process(results, false, chunks));
+        // The element counts of the workers start from zero for each bundle.
+        assertEquals(expected.size(), harness.mergedElementCount(results.get(i)));
+      }
+      assertEquals(2, harness.createdWorkers.get());
+      assertEquals(6, harness.resetWorkers.get());
+    } finally {
+      harness.shutdown();
+    }
+  }
+
+  @Test
+  public void testProcessFailure() throws Exception {
+    Harness harness = new Harness(ParallelBundleExecutor.INTRA_BUNDLE_PARALLELISM + "=2");
+    try {
+      List<List<String>> chunks = new ArrayList<>(chunks(6, 0));
+      chunks.set(3, Collections.singletonList("fail"));
+      IllegalStateException e =
+          assertThrows(
+              IllegalStateException.class,
+              () -> harness.process(new ArrayList<>(), false, chunks));
+      assertEquals("Failed to process fail", e.getMessage());
+      // The failure aborts the other worker too, both are discarded and the receiver is
+      // unregistered.
+      assertEquals(2, harness.discardedWorkers.size());
+      verify(harness.dataClient)
+          .unregisterReceiver(INSTRUCTION_ID, Collections.singletonList(DATA_ENDPOINT));
+
+      // The discarded workers are replaced for the next bundle.
+      List<List<String>> nextChunks = chunks(4, 0);
+      List<String> expected = new ArrayList<>();
+      nextChunks.forEach(expected::addAll);
+      assertEquals(expected, harness.process(new ArrayList<>(), false, nextChunks));
+      assertEquals(4, harness.createdWorkers.get());
+    } finally {
+      harness.shutdown();
+    }
+  }
+
+  @Test
+  public void testProcessAbortedWhenInboundDataIsClosed() throws Exception {
+    Harness harness = new Harness(ParallelBundleExecutor.INTRA_BUNDLE_PARALLELISM + "=2");
+    try {
+      assertThrows(
+          CancellationException.class,
+          () -> harness.process(new ArrayList<>(), true, chunks(3, 0)));
+      assertEquals(2, harness.discardedWorkers.size());
+      verify(harness.dataClient)
+          .unregisterReceiver(INSTRUCTION_ID, Collections.singletonList(DATA_ENDPOINT));
+    } finally {
+      harness.shutdown();
+    }
+  }
+
+  @Test
+  public void testCombineMonitoringData() {
+    assertEquals(
+        MonitoringInfoEncodings.encodeInt64Counter(5),
+        ParallelBundleExecutor.combine(
+            TypeUrns.SUM_INT64_TYPE,
+            MonitoringInfoEncodings.encodeInt64Counter(2),
+            MonitoringInfoEncodings.encodeInt64Counter(3)));
+    assertEquals(
+        DistributionData.create(10, 3, 1, 7),
+        MonitoringInfoEncodings.decodeInt64Distribution(
+            ParallelBundleExecutor.combine(
+                TypeUrns.DISTRIBUTION_INT64_TYPE,
+                MonitoringInfoEncodings.encodeInt64Distribution(
+                    DistributionData.create(3, 2, 1, 2)),
+                MonitoringInfoEncodings.encodeInt64Distribution(
+                    DistributionData.create(7, 1, 7, 7)))));
+    // Types that can not be combined keep the first payload.
+    assertEquals(
+        ByteString.copyFromUtf8("first"),
+        ParallelBundleExecutor.combine(
+            TypeUrns.PROGRESS_TYPE,
+            ByteString.copyFromUtf8("first"),
+            ByteString.copyFromUtf8("second")));
+  }
+}
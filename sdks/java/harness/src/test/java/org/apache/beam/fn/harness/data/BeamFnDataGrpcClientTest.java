@@ -23,6 +23,7 @@ import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.empty;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -374,6 +375,29 @@ public class BeamFnDataGrpcClientTest {
 
   @Test
   public void testForOutboundConsumer() throws Exception {
+    assertOutboundConsumer("--experiments=data_buffer_size_limit=20");
+  }
+
+  @Test
+  public void testForOutboundConsumerWithCompression() throws Exception {
+    assertOutboundConsumer("--experiments=data_buffer_size_limit=20,data_plane_compression=gzip");
+  }
+
+  @Test
+  public void testUnknownCompression() {
+    assertThrows(
+        IllegalArgumentException.class,
+        () ->
+            new BeamFnDataGrpcClient(
+                PipelineOptionsFactory.fromArgs("--experiments=data_plane_compression=unknown")
+                    .create(),
+                descriptor -> {
+                  throw new UnsupportedOperationException();
+                },
+                OutboundObserverFactory.trivial()));
+  }
+
+  private void assertOutboundConsumer(String experiments) throws Exception {
     CountDownLatch waitForInboundServerValuesCompletion = new CountDownLatch(2);
     Collection<BeamFnApi.Elements> inboundServerValues = new ConcurrentLinkedQueue<>();
     CallStreamObserver<BeamFnApi.Elements> inboundServerObserver =
@@ -406,9 +430,7 @@ public class BeamFnDataGrpcClientTest {
 
       BeamFnDataGrpcClient clientFactory =
           new BeamFnDataGrpcClient(
-              PipelineOptionsFactory.fromArgs(
-                      new String[] {"--experiments=data_buffer_size_limit=20"})
-                  .create(),
+              PipelineOptionsFactory.fromArgs(experiments).create(),
               (Endpoints.ApiServiceDescriptor descriptor) -> channel,
               OutboundObserverFactory.trivial());
       BeamFnDataOutboundAggregator aggregator =
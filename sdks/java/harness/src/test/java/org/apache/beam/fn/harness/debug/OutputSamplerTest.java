@@ -18,6 +18,7 @@
 package org.apache.beam.fn.harness.debug;
 
 import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertTrue;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.containsInAnyOrder;
 
@@ -163,6 +164,57 @@ public class OutputSamplerTest {
     assertThat(samples, containsInAnyOrder(expected.toArray()));
   }
 
+  /**
+   * Test that samples are only returned once.
+   *
+   * @throws IOException when encoding fails (shouldn't happen).
+   */
+  @Test
+  public void testSamplesAreOnlyReturnedOnce() throws IOException {
+    VarIntCoder coder = VarIntCoder.of();
+    OutputSampler<Integer> outputSampler = new OutputSampler<>(coder, 5, 20, false);
+
+    for (int i = 0; i < 3; ++i) {
+      outputSampler.sample(WindowedValues.valueInGlobalWindow(i));
+    }
+    assertThat(
+        outputSampler.samples(), containsInAnyOrder(encodeInt(0), encodeInt(1), encodeInt(2)));
+    assertTrue(outputSampler.samples().isEmpty());
+
+    outputSampler.sample(WindowedValues.valueInGlobalWindow(3));
+    assertThat(outputSampler.samples(), containsInAnyOrder(encodeInt(3)));
+  }
+
+  /**
+   * Test that the samples of many threads are limited to `maxSamples` in total, keeping the most
+   * recent samples of each thread, including threads which have terminated.
+   *
+   * @throws Exception when encoding fails or the threads are interrupted (shouldn't happen).
+   */
+  @Test
+  public void testSamplesFromManyThreadsAreLimited() throws Exception {
+    VarIntCoder coder = VarIntCoder.of();
+    OutputSampler<Integer> outputSampler = new OutputSampler<>(coder, 4, 1, false);
+
+    Thread sampleThreadA =
+        new Thread(
+            () -> {
+              for (int i = 0; i < 10; ++i) {
+                outputSampler.sample(WindowedValues.valueInGlobalWindow(i));
+              }
+            });
+    sampleThreadA.start();
+    sampleThreadA.join();
+    for (int i = 100; i < 110; ++i) {
+      outputSampler.sample(WindowedValues.valueInGlobalWindow(i));
+    }
+
+    assertThat(
+        outputSampler.samples(),
+        containsInAnyOrder(encodeInt(8), encodeInt(9), encodeInt(108), encodeInt(109)));
+    assertTrue(outputSampler.samples().isEmpty());
+  }
+
   /**
    * Test that elements with exceptions can be sampled. TODO: test that the exception metadata is
    * set.
@@ -20,12 +20,15 @@ package org.apache.beam.fn.harness.logging;
 import static org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.base.Throwables.getStackTraceAsString;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.startsWith;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentLinkedQueue;
@@ -240,6 +243,71 @@ public class BeamFnLoggingClientTest {
     }
   }
 
+  @Test
+  public void testRateLimitedLogging() throws Exception {
+    Collection<BeamFnApi.LogEntry> values = new ConcurrentLinkedQueue<>();
+    AtomicReference<StreamObserver<BeamFnApi.LogControl>> outboundServerObserver =
+        new AtomicReference<>();
+    CallStreamObserver<BeamFnApi.LogEntry.List> inboundServerObserver =
+        TestStreams.withOnNext(
+                (BeamFnApi.LogEntry.List logEntries) ->
+                    values.addAll(logEntries.getLogEntriesList()))
+            .withOnCompleted(() -> outboundServerObserver.get().onCompleted())
+            .build();
+
+    Endpoints.ApiServiceDescriptor apiServiceDescriptor =
+        Endpoints.ApiServiceDescriptor.newBuilder()
+            .setUrl(this.getClass().getName() + "-" + UUID.randomUUID().toString())
+            .build();
+    Server server =
+        InProcessServerBuilder.forName(apiServiceDescriptor.getUrl())
+            .addService(
+                new BeamFnLoggingGrpc.BeamFnLoggingImplBase() {
+                  @Override
+                  public StreamObserver<BeamFnApi.LogEntry.List> logging(
+                      StreamObserver<BeamFnApi.LogControl> outboundObserver) {
+                    outboundServerObserver.set(outboundObserver);
+                    return inboundServerObserver;
+                  }
+                })
+            .build();
+    server.start();
+
+    ManagedChannel channel = InProcessChannelBuilder.forName(apiServiceDescriptor.getUrl()).build();
+    try {
+      BeamFnLoggingClient client =
+          BeamFnLoggingClient.createAndStart(
+              PipelineOptionsFactory.fromArgs(
+                      new String[] {
+                        "--defaultSdkHarnessLogLevel=OFF",
+                        "--sdkHarnessLogLevelOverrides={\"ConfiguredLogger\": \"DEBUG\"}",
+                        "--logBufferOverflowPolicy=DROP",
+                        "--maxLogEntriesPerSecond=2"
+                      })
+                  .create(),
+              apiServiceDescriptor,
+              (Endpoints.ApiServiceDescriptor descriptor) -> channel);
+
+      Logger configuredLogger = LogManager.getLogManager().getLogger("ConfiguredLogger");
+      // All records are logged within the same second, so only the first two are sent.
+      for (int i = 0; i < 3; ++i) {
+        configuredLogger.log(TEST_RECORD);
+      }
+      client.close();
+
+      List<String> messages = new ArrayList<>();
+      for (BeamFnApi.LogEntry value : values) {
+        messages.add(value.getMessage());
+      }
+      assertEquals(3, messages.size());
+      assertEquals("Message", messages.get(0));
+      assertEquals("Message", messages.get(1));
+      assertThat(messages.get(2), startsWith("Dropped 1 log entries"));
+    } finally {
+      server.shutdownNow();
+    }
+  }
+
   @Test
   public void testWhenServerFailsThatClientIsAbleToCleanup() throws Exception {
     BeamFnLoggingMDC.setInstructionId("instruction-1");
@@ -0,0 +1,117 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.fn.harness.logging;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.apache.beam.model.fnexecution.v1.BeamFnApi.LogEntry;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link LogEntryBuffer}. */
+@RunWith(JUnit4.class)
+public class LogEntryBufferTest {
+  private static LogEntry entry(String message) {
+    return LogEntry.newBuilder().setMessage(message).build();
+  }
+
+  @Test
+  public void testOfferDoesNotExceedCapacity() throws Exception {
+    LogEntryBuffer buffer = new LogEntryBuffer(2);
+    assertTrue(buffer.offer(entry("A")));
+    assertTrue(buffer.offer(entry("B")));
+    assertFalse(buffer.offer(entry("C")));
+
+    assertEquals(entry("A"), buffer.poll(0, TimeUnit.SECONDS));
+    assertTrue(buffer.offer(entry("C")));
+    assertEquals(entry("B"), buffer.poll(0, TimeUnit.SECONDS));
+    assertEquals(entry("C"), buffer.poll(0, TimeUnit.SECONDS));
+    assertNull(buffer.poll(0, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void testPutWaitsForCapacity() throws Exception {
+    LogEntryBuffer buffer = new LogEntryBuffer(1);
+    assertFalse(buffer.put(entry("A")));
+    CompletableFuture<Boolean> waited =
+        CompletableFuture.supplyAsync(
+            () -> {
+              try {
+                return buffer.put(entry("B"));
+              } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+              }
+            });
+    assertEquals(entry("A"), buffer.poll(10, TimeUnit.SECONDS));
+    assertTrue(waited.get());
+    assertEquals(entry("B"), buffer.poll(10, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void testPollWaitsForEntries() throws Exception {
+    LogEntryBuffer buffer = new LogEntryBuffer(1);
+    CompletableFuture.runAsync(() -> buffer.offer(entry("A")));
+    assertEquals(entry("A"), buffer.poll(10, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void testAwaitDoesNotRemoveEntries() throws Exception {
+    LogEntryBuffer buffer = new LogEntryBuffer(1);
+    assertFalse(buffer.await(0, TimeUnit.SECONDS));
+    CompletableFuture.runAsync(() -> buffer.offer(entry("A")));
+    assertTrue(buffer.await(10, TimeUnit.SECONDS));
+    assertFalse(buffer.isEmpty());
+    assertFalse(buffer.offer(entry("B")));
+    assertEquals(entry("A"), buffer.poll(0, TimeUnit.SECONDS));
+    assertTrue(buffer.isEmpty());
+  }
+
+  @Test
+  public void testDrainToRespectsLimits() throws Exception {
+    LogEntryBuffer buffer = new LogEntryBuffer(10);
+    for (String message : Arrays.asList("A", "B", "C", "D")) {
+      buffer.offer(entry(message));
+    }
+    int entrySize = entry("A").getSerializedSize();
+
+    List<LogEntry> drained = new ArrayList<>();
+    assertEquals(entrySize, buffer.drainTo(drained, 1, Long.MAX_VALUE));
+    assertEquals(2 * entrySize, buffer.drainTo(drained, 10, 2 * entrySize + 1));
+    assertEquals(Arrays.asList(entry("A"), entry("B"), entry("C")), drained);
+    assertEquals(entrySize, buffer.drainTo(drained, 10, Long.MAX_VALUE));
+    assertEquals(0, buffer.drainTo(drained, 10, Long.MAX_VALUE));
+  }
+
+  @Test
+  public void testCountsDroppedEntries() {
+    LogEntryBuffer buffer = new LogEntryBuffer(1);
+    buffer.recordDropped();
+    buffer.recordDropped();
+    assertEquals(2, buffer.takeDropped());
+    assertEquals(0, buffer.takeDropped());
+  }
+}
@@ -0,0 +1,51 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.fn.harness.logging;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link LogRateLimiter}. */
+@RunWith(JUnit4.class)
+public class LogRateLimiterTest {
+  @Test
+  public void testLimitsEachKeyPerSecond() {
+    LogRateLimiter rateLimiter = new LogRateLimiter(2);
+    assertTrue(rateLimiter.tryAcquire("A", 1000));
+    assertTrue(rateLimiter.tryAcquire("A", 1500));
+    assertFalse(rateLimiter.tryAcquire("A", 1999));
+    assertTrue(rateLimiter.tryAcquire("B", 1999));
+
+    // The limit applies again in the next second.
+    assertTrue(rateLimiter.tryAcquire("A", 2000));
+    assertTrue(rateLimiter.tryAcquire("A", 2001));
+    assertFalse(rateLimiter.tryAcquire("A", 2002));
+  }
+
+  @Test
+  public void testManyKeys() {
+    LogRateLimiter rateLimiter = new LogRateLimiter(1);
+    for (int i = 0; i < 2 * LogRateLimiter.MAX_KEYS; ++i) {
+      assertTrue(rateLimiter.tryAcquire(Integer.toString(i), 1000));
+    }
+  }
+}
@@ -0,0 +1,172 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.fn.harness.state;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import org.apache.beam.model.fnexecution.v1.BeamFnApi.StateAppendRequest;
+import org.apache.beam.model.fnexecution.v1.BeamFnApi.StateClearRequest;
+import org.apache.beam.model.fnexecution.v1.BeamFnApi.StateGetRequest;
+import org.apache.beam.model.fnexecution.v1.BeamFnApi.StateGetResponse;
+import org.apache.beam.model.fnexecution.v1.BeamFnApi.StateKey;
+import org.apache.beam.model.fnexecution.v1.BeamFnApi.StateMutationBatchResponse;
+import org.apache.beam.model.fnexecution.v1.BeamFnApi.StateRequest;
+import org.apache.beam.model.fnexecution.v1.BeamFnApi.StateResponse;
+import org.apache.beam.vendor.grpc.v1p69p0.com.google.protobuf.ByteString;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link BatchingBeamFnStateClient}. */
+@RunWith(JUnit4.class)
+public class BatchingBeamFnStateClientTest {
+  private final List<StateRequest> sentRequests = new ArrayList<>();
+  private final List<CompletableFuture<StateResponse>> sentResponses = new ArrayList<>();
+  private final BeamFnStateClient recordingClient =
+      requestBuilder -> {
+        CompletableFuture<StateResponse> response = new CompletableFuture<>();
+        sentRequests.add(requestBuilder.build());
+        sentResponses.add(response);
+        return response;
+      };
+
+  private static StateRequest.Builder append(String key) {
+    return StateRequest.newBuilder()
+        .setInstructionId("instruction")
+        .setStateKey(
+            StateKey.newBuilder()
+                .setBagUserState(
+                    StateKey.BagUserState.newBuilder().setKey(ByteString.copyFromUtf8(key))))
+        .setAppend(StateAppendRequest.newBuilder().setData(ByteString.copyFromUtf8("value")));
+  }
+
+  private static StateRequest.Builder clear(String key) {
+    return append(key).setClear(StateClearRequest.getDefaultInstance());
+  }
+
+  private static StateResponse batchResponse() {
+    return StateResponse.newBuilder()
+        .setMutationBatch(StateMutationBatchResponse.getDefaultInstance())
+        .build();
+  }
+
+  @Test
+  public void testMutationsAreBatchedUntilFlush() throws Exception {
+    BatchingBeamFnStateClient client = new BatchingBeamFnStateClient(recordingClient);
+    CompletableFuture<StateResponse> clearA = client.handle(clear("A"));
+    CompletableFuture<StateResponse> appendA = client.handle(append("A"));
+    CompletableFuture<StateResponse> appendB = client.handle(append("B"));
+    assertTrue(sentRequests.isEmpty());
+
+    client.flush();
+    assertEquals(1, sentRequests.size());
+    StateRequest batch = sentRequests.get(0);
+    assertEquals("instruction", batch.getInstructionId());
+    assertEquals(
+        Arrays.asList(clear("A").build(), append("A").build(), append("B").build()),
+        batch.getMutationBatch().getRequestsList());
+    assertFalse(clearA.isDone());
+
+    sentResponses.get(0).complete(batchResponse());
+    assertTrue(clearA.get().hasClear());
+    assertTrue(appendA.get().hasAppend());
+    assertTrue(appendB.get().hasAppend());
+  }
+
+  @Test
+  public void testSingleMutationIsNotBatched() throws Exception {
+    BatchingBeamFnStateClient client = new BatchingBeamFnStateClient(recordingClient);
+    client.handle(append("A"));
+    client.flush();
+    assertEquals(Arrays.asList(append("A").build()), sentRequests);
+  }
+
+  @Test
+  public void testGetSendsBufferedMutationsFirst() throws Exception {
+    BatchingBeamFnStateClient client = new BatchingBeamFnStateClient(recordingClient);
+    client.handle(clear("A"));
+    client.handle(append("A"));
+    StateRequest.Builder get = append("A").setGet(StateGetRequest.getDefaultInstance());
+    client.handle(get);
+    assertEquals(2, sentRequests.size());
+    assertEquals(2, sentRequests.get(0).getMutationBatch().getRequestsCount());
+    assertEquals(get.build(), sentRequests.get(1));
+  }
+
+  @Test
+  public void testBatchIsSentWhenFull() throws Exception {
+    BatchingBeamFnStateClient client =
+        new BatchingBeamFnStateClient(recordingClient, 2, Long.MAX_VALUE);
+    client.handle(append("A"));
+    assertTrue(sentRequests.isEmpty());
+    client.handle(append("B"));
+    assertEquals(1, sentRequests.size());
+    client.handle(append("C"));
+    assertEquals(1, sentRequests.size());
+
+    client = new BatchingBeamFnStateClient(recordingClient, Integer.MAX_VALUE, 1);
+    client.handle(append("D"));
+    assertEquals(2, sentRequests.size());
+  }
+
+  @Test
+  public void testWaitingOnBufferedMutationSendsBatch() throws Exception {
+    BatchingBeamFnStateClient client =
+        new BatchingBeamFnStateClient(
+            requestBuilder ->
+                CompletableFuture.completedFuture(
+                    StateResponse.newBuilder()
+                        .setGet(StateGetResponse.getDefaultInstance())
+                        .build()));
+    client.handle(clear("A"));
+    CompletableFuture<StateResponse> append = client.handle(append("A"));
+    // Would block forever if the buffered mutations were not sent.
+    assertTrue(append.get().hasAppend());
+    assertTrue(client.handle(append("B")).join().hasAppend());
+  }
+
+  @Test
+  public void testDependentStageSendsBatch() throws Exception {
+    BatchingBeamFnStateClient client = new BatchingBeamFnStateClient(recordingClient);
+    client.handle(clear("A"));
+    CompletableFuture<Boolean> hasAppend = client.handle(append("A")).thenApply(r -> r.hasAppend());
+    assertEquals(1, sentRequests.size());
+
+    sentResponses.get(0).complete(batchResponse());
+    assertTrue(hasAppend.get());
+  }
+
+  @Test
+  public void testFailedBatchFailsAllMutations() throws Exception {
+    BatchingBeamFnStateClient client = new BatchingBeamFnStateClient(recordingClient);
+    CompletableFuture<StateResponse> appendA = client.handle(append("A"));
+    CompletableFuture<StateResponse> appendB = client.handle(append("B"));
+    client.flush();
+    sentResponses.get(0).completeExceptionally(new IllegalStateException("Failed"));
+    assertThrows(ExecutionException.class, appendA::get);
+    assertThrows(ExecutionException.class, appendB::get);
+  }
+}
@@ -19,13 +19,16 @@ package org.apache.beam.fn.harness.state;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.instanceOf;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
+import java.io.Closeable;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
@@ -33,6 +36,9 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import org.apache.beam.fn.harness.Cache;
 import org.apache.beam.fn.harness.Caches;
@@ -40,15 +46,25 @@ import org.apache.beam.fn.harness.state.StateFetchingIterators.CachingStateItera
 import org.apache.beam.fn.harness.state.StateFetchingIterators.CachingStateIterable.Block;
 import org.apache.beam.fn.harness.state.StateFetchingIterators.CachingStateIterable.Blocks;
 import org.apache.beam.fn.harness.state.StateFetchingIterators.CachingStateIterable.BlocksPrefix;
+import org.apache.beam.fn.harness.state.StateFetchingIterators.CachingStateIterable.EmptyBlocks;
+import org.apache.beam.fn.harness.state.StateFetchingIterators.CachingStateIterable.MutatedBlocks;
 import org.apache.beam.fn.harness.state.StateFetchingIterators.LazyBlockingStateFetchingIterator;
 import org.apache.beam.model.fnexecution.v1.BeamFnApi.StateGetRequest;
 import org.apache.beam.model.fnexecution.v1.BeamFnApi.StateGetResponse;
 import org.apache.beam.model.fnexecution.v1.BeamFnApi.StateKey;
 import org.apache.beam.model.fnexecution.v1.BeamFnApi.StateRequest;
 import org.apache.beam.model.fnexecution.v1.BeamFnApi.StateResponse;
+import org.apache.beam.runners.core.metrics.MetricsContainerImpl;
 import org.apache.beam.sdk.coders.BigEndianIntegerCoder;
+import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.coders.StringUtf8Coder;
 import org.apache.beam.sdk.fn.data.WeightedList;
 import org.apache.beam.sdk.fn.stream.PrefetchableIterator;
+import org.apache.beam.sdk.metrics.MetricsEnvironment;
+import org.apache.beam.sdk.options.PipelineOptions;
+import org.apache.beam.sdk.options.PipelineOptionsFactory;
+import org.apache.beam.sdk.options.SdkHarnessOptions;
+import org.apache.beam.sdk.util.ByteStringOutputStream;
 import org.apache.beam.vendor.grpc.v1p69p0.com.google.protobuf.ByteString;
 import org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.collect.ImmutableMap;
 import org.apache.beam.vendor.guava.v32_1_2_jre.com.google.common.primitives.Ints;
@@ -269,7 +285,7 @@ public class StateFetchingIteratorsTest {
               Block.fromValues(Arrays.asList("D"), null),
               Block.fromValues(Arrays.asList("E"), null),
               Block.fromValues(Arrays.asList("F"), null));
-      BlocksPrefix<String> blocks = new BlocksPrefix<>(originalBlocks);
+      BlocksPrefix<String> blocks = new BlocksPrefix<>(StringUtf8Coder.of(), originalBlocks);
       BlocksPrefix<String> abcBlocks = blocks.shrink();
       BlocksPrefix<String> aBlocks = abcBlocks.shrink();
 
@@ -288,15 +304,87 @@ public class StateFetchingIteratorsTest {
               Block.mutatedBlock(WeightedList.of(Arrays.asList("B"), Long.MAX_VALUE / 2)),
               Block.mutatedBlock(WeightedList.of(Arrays.asList("C"), Long.MAX_VALUE / 2)),
               Block.mutatedBlock(WeightedList.of(Arrays.asList("D"), 5)));
-      BlocksPrefix<String> blocks = new BlocksPrefix<>(originalBlocks.subList(0, 2));
+      BlocksPrefix<String> blocks =
+          new BlocksPrefix<>(StringUtf8Coder.of(), originalBlocks.subList(0, 2));
       assertTrue(10_000 + Long.MAX_VALUE / 2 < blocks.getWeight());
       assertTrue(blocks.getWeight() < 10_000 + Long.MAX_VALUE / 2 + 100);
 
-      BlocksPrefix<String> blocksOverflow = new BlocksPrefix<>(originalBlocks);
+      BlocksPrefix<String> blocksOverflow =
+          new BlocksPrefix<>(StringUtf8Coder.of(), originalBlocks);
       assertEquals(Long.MAX_VALUE, blocksOverflow.getWeight());
     }
 
+    @Test
+    public void testBlocksEncoding() throws Exception {
+      Coder<String> coder = StringUtf8Coder.of();
+      List<Blocks<String>> allBlocks =
+          Arrays.asList(
+              new EmptyBlocks<>(coder),
+              new MutatedBlocks<>(coder, Block.mutatedBlock(Arrays.asList("A", "B"))),
+              new BlocksPrefix<>(
+                  coder,
+                  Arrays.asList(
+                      Block.fromValues(Arrays.asList("C"), ByteString.copyFromUtf8("token")),
+                      Block.fromValues(Arrays.asList("D", "E"), ByteString.EMPTY))));
+      for (Blocks<String> blocks : allBlocks) {
+        ByteStringOutputStream outStream = new ByteStringOutputStream();
+        blocks.encode(outStream);
+        Blocks<String> decoded = blocks.getDecoder().decode(outStream.toByteString().newInput());
+        assertEquals(blocks.getClass(), decoded.getClass());
+        assertEquals(blocks.getBlocks().size(), decoded.getBlocks().size());
+        for (int i = 0; i < blocks.getBlocks().size(); ++i) {
+          assertEquals(
+              blocks.getBlocks().get(i).getValues(), decoded.getBlocks().get(i).getValues());
+          assertEquals(
+              blocks.getBlocks().get(i).getNextToken(),
+              decoded.getBlocks().get(i).getNextToken());
+        }
+      }
+    }
+
+    @Test
+    public void testCachingWithOffHeapCache() throws Exception {
+      int[] expected = new int[] {0, 1, 2, 3, 4, 5};
+      Cache<StateFetchingIterators.IterableCacheKey, Blocks<Integer>> cache =
+          Caches.subCache(Caches.fromOptions(offHeapCacheOptions()), "prefix");
+      CachingStateIterable<Integer> iterable = create(cache, 2, expected);
+
+      // A partially loaded prefix stays on the heap, only the complete stream is stored off-heap.
+      Iterator<Integer> partial = iterable.iterator();
+      for (int i = 0; i < 3; ++i) {
+        assertEquals(expected[i], (int) partial.next());
+      }
+      assertThat(
+          cache.peek(StateFetchingIterators.IterableCacheKey.INSTANCE),
+          is(instanceOf(BlocksPrefix.class)));
+      assertThat(cache.describeStats(), containsString("entries 0"));
+
+      verifyFetch(iterable.iterator(), expected);
+      assertThat(
+          cache.peek(StateFetchingIterators.IterableCacheKey.INSTANCE),
+          is(instanceOf(BlocksPrefix.class)));
+      assertThat(cache.describeStats(), containsString("entries 1"));
+
+      iterable.append(Arrays.asList(6, 7));
+      verifyFetch(iterable.iterator(), 0, 1, 2, 3, 4, 5, 6, 7);
+      iterable.clearAndAppend(Arrays.asList(8));
+      verifyFetch(iterable.iterator(), 8);
+    }
+
+    private static PipelineOptions offHeapCacheOptions() {
+      PipelineOptions options = PipelineOptionsFactory.create();
+      options.as(SdkHarnessOptions.class).setMaxOffHeapCacheMemoryUsageMb(1);
+      return options;
+    }
+
     private CachingStateIterable<Integer> create(int chunkSize, int... values) {
+      return create(Caches.eternal(), chunkSize, values);
+    }
+
+    private CachingStateIterable<Integer> create(
+        Cache<StateFetchingIterators.IterableCacheKey, Blocks<Integer>> cache,
+        int chunkSize,
+        int... values) {
       StateRequest requestForFirstChunk =
           StateRequest.newBuilder()
               .setStateKey(
@@ -317,7 +405,7 @@ public class StateFetchingIteratorsTest {
 
       CachingStateIterable<Integer> iterable =
           new CachingStateIterable<>(
-              Caches.eternal(), fakeStateClient, requestForFirstChunk, BigEndianIntegerCoder.of());
+              cache, fakeStateClient, requestForFirstChunk, BigEndianIntegerCoder.of());
 
       Iterator<?> ignored = iterable.iterator();
       assertEquals(0, fakeStateClient.getCallCount()); // Ensure it's fully lazy.
@@ -464,6 +552,93 @@ public class StateFetchingIteratorsTest {
       assertEquals(ByteString.copyFromUtf8("value" + 44), byteStrings.next());
     }
 
+    @Test
+    public void testReadaheadWindowFollowsFetchLatency() throws Exception {
+      int maxReadaheadPages = 4;
+      AtomicInteger callCount = new AtomicInteger();
+      ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+      BeamFnStateClient fakeStateClient =
+          new BeamFnStateClient() {
+            @Override
+            public CompletableFuture<StateResponse> handle(StateRequest.Builder requestBuilder) {
+              callCount.incrementAndGet();
+              int token = 0;
+              if (!ByteString.EMPTY.equals(requestBuilder.getGet().getContinuationToken())) {
+                token =
+                    Integer.parseInt(requestBuilder.getGet().getContinuationToken().toStringUtf8());
+              }
+              StateResponse response =
+                  StateResponse.newBuilder()
+                      .setGet(
+                          StateGetResponse.newBuilder()
+                              .setData(ByteString.copyFromUtf8("value" + token))
+                              .setContinuationToken(
+                                  ByteString.copyFromUtf8(Integer.toString(token + 1))))
+                      .build();
+              // Responses take much longer to arrive than the consumer takes for each chunk.
+              CompletableFuture<StateResponse> future = new CompletableFuture<>();
+              executor.schedule(() -> future.complete(response), 10, TimeUnit.MILLISECONDS);
+              return future;
+            }
+
+            @Override
+            public int getMaxReadaheadPages() {
+              return maxReadaheadPages;
+            }
+          };
+      try {
+        LazyBlockingStateFetchingIterator byteStrings =
+            new LazyBlockingStateFetchingIterator(
+                fakeStateClient, StateRequest.getDefaultInstance());
+        assertEquals(1, byteStrings.getReadaheadPages());
+        for (int i = 0; i < 3; ++i) {
+          assertEquals(ByteString.copyFromUtf8("value" + i), byteStrings.next());
+        }
+        assertEquals(maxReadaheadPages, byteStrings.getReadaheadPages());
+
+        // While the consumer is idle, the readahead chain stops after the chunks allowed by the
+        // chunks taken so far rather than filling the window.
+        Thread.sleep(50);
+        int requested = callCount.get();
+        assertThat(requested, lessThan(3 + maxReadaheadPages));
+        Thread.sleep(50);
+        assertEquals(requested, callCount.get());
+        for (int i = 3; i < 3 + maxReadaheadPages; ++i) {
+          assertEquals(ByteString.copyFromUtf8("value" + i), byteStrings.next());
+        }
+      } finally {
+        executor.shutdownNow();
+      }
+    }
+
+    @Test
+    public void testReportsFetchLatencyAndStallTime() throws Exception {
+      AtomicInteger callCount = new AtomicInteger();
+      BeamFnStateClient fakeStateClient =
+          fakeStateClient(callCount, ByteString.copyFromUtf8("A"), ByteString.copyFromUtf8("B"));
+      MetricsContainerImpl metricsContainer = new MetricsContainerImpl("ptransformId");
+      try (Closeable closeable = MetricsEnvironment.scopedMetricsContainer(metricsContainer)) {
+        Iterator<ByteString> byteStrings =
+            new LazyBlockingStateFetchingIterator(
+                fakeStateClient, StateRequest.getDefaultInstance());
+        while (byteStrings.hasNext()) {
+          byteStrings.next();
+        }
+      }
+      assertEquals(
+          2,
+          metricsContainer
+              .getDistribution(LazyBlockingStateFetchingIterator.FETCH_LATENCY_MICROS)
+              .getCumulative()
+              .count());
+      assertEquals(
+          2,
+          metricsContainer
+              .getDistribution(LazyBlockingStateFetchingIterator.STALL_MICROS)
+              .getCumulative()
+              .count());
+    }
+
     private void testFetch(ByteString... expected) {
       AtomicInteger callCount = new AtomicInteger();
       BeamFnStateClient fakeStateClient = fakeStateClient(callCount, expected);